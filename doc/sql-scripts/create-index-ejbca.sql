@@ -47,12 +47,14 @@ CREATE UNIQUE INDEX certificatedata_idx12 ON CertificateData (serialNumber, issu
 -- Keyfactor Gateway Connector for Keyfactor Remote trying to query/page through 1.5 mill certs with the REST Api on a Hardware Appliance (even 2020XL)
 CREATE INDEX certificatedata_idx15 ON CertificateData (issuerDN,notBefore);
 CREATE INDEX certificatedata_idx16 ON CertificateData (issuerDN,revocationDate);
--- Index for base CRL generation
-CREATE INDEX certificatedata_idx17 ON CertificateData (issuerDN, status, crlPartitionIndex);
+-- Index for base CRL generation. Revoked certificates are read in batches ordered by fingerprint, so the fingerprint
+-- column lets the database seek directly to the start of each batch.
+CREATE INDEX certificatedata_idx17 ON CertificateData (issuerDN, status, crlPartitionIndex, fingerprint);
 -- Index for delta CRL generation
 CREATE INDEX certificatedata_idx18 ON CertificateData (issuerDN, status, crlPartitionIndex, revocationDate);
--- Optimized index for CRL generation on Microsoft SQL Server (should be used instead of certificatedata_idx17 and certificatedata_idx18).
--- CREATE NONCLUSTERED INDEX certificatedata_idx19 ON CertificateData (issuerDN, status, revocationDate, fingerprint, crlPartitionIndex) INCLUDE (expireDate, revocationReason, serialNumber);
+-- Optimized index for base CRL generation on Microsoft SQL Server (should be used instead of certificatedata_idx17, certificatedata_idx18 is still used
+-- for delta CRL generation). The fingerprint is a key column, so that each batch ordered by fingerprint can be read with an index seek.
+-- CREATE NONCLUSTERED INDEX certificatedata_idx19 ON CertificateData (issuerDN, status, crlPartitionIndex, fingerprint) INCLUDE (revocationDate, expireDate, revocationReason, serialNumber);
 -- Index useful when searching for certificates with an invalidity date.
 -- CREATE INDEX certificatedata_idx20 ON CertificateData (invalidityDate);
 -- The following indexes can be beneficial to perfomance for certificate search in RA web and REST AAPI
@@ -88,12 +90,13 @@ CREATE INDEX noconflictcertificatedata_idx1 ON NoConflictCertificateData (serial
 CREATE INDEX noconflictcertificatedata_idx2 ON NoConflictCertificateData (fingerprint);
 CREATE INDEX noconflictcertificatedata_idx3 ON NoConflictCertificateData (issuerDN,status);
 CREATE INDEX noconflictcertificatedata_idx4 ON NoConflictCertificateData (certificateProfileId);
--- Index for base CRL generation
-CREATE INDEX noconflictcertificatedata_idx5 ON NoConflictCertificateData (issuerDN, status, crlPartitionIndex);
+-- Index for base CRL generation (revoked certificates are read in batches ordered by id)
+CREATE INDEX noconflictcertificatedata_idx5 ON NoConflictCertificateData (issuerDN, status, crlPartitionIndex, id);
 -- Index for delta CRL generation
 CREATE INDEX noconflictcertificatedata_idx6 ON NoConflictCertificateData (issuerDN, status, crlPartitionIndex, revocationDate);
--- Optimized index for CRL generation on Microsoft SQL Server (should be used instead of noconflictcertificatedata_idx5 and noconflictcertificatedata_idx6).
--- CREATE NONCLUSTERED INDEX noconflictcertificatedata_idx7 ON NoConflictCertificateData (issuerDN, status, revocationDate, fingerprint, crlPartitionIndex) INCLUDE (expireDate, revocationReason, serialNumber);
+-- Optimized index for base CRL generation on Microsoft SQL Server (should be used instead of noconflictcertificatedata_idx5, noconflictcertificatedata_idx6
+-- is still used for delta CRL generation). NoConflictCertificateData is read in batches ordered by id, so id is the last key column.
+-- CREATE NONCLUSTERED INDEX noconflictcertificatedata_idx7 ON NoConflictCertificateData (issuerDN, status, crlPartitionIndex, id) INCLUDE (fingerprint, revocationDate, expireDate, revocationReason, serialNumber);
 
 -- Index for searching for ACME accounts by public key
 CREATE INDEX acmeaccountdata_idx1 ON AcmeAccountData (currentKeyId);
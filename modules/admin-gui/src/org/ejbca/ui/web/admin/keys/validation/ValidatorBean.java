@@ -13,6 +13,7 @@
 
 package org.ejbca.ui.web.admin.keys.validation;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -58,7 +59,9 @@ import org.cesecore.util.ui.DynamicUiModel;
 import org.cesecore.util.ui.DynamicUiModelAware;
 import org.cesecore.util.ui.DynamicUiModelException;
 import org.ejbca.config.GlobalConfiguration;
+import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
 import org.ejbca.core.model.authorization.AccessRulesConstants;
+import org.ejbca.core.model.validation.DomainBlacklistValidator;
 import org.ejbca.ui.psm.jsf.JsfDynamicUiPsmFactory;
 import org.ejbca.ui.web.admin.BaseManagedBean;
 
@@ -526,6 +529,13 @@ public class ValidatorBean extends BaseManagedBean implements Serializable {
             if (stagedValidator instanceof DynamicUiModelAware) {
                 ((DynamicUiModelAware) stagedValidator).getDynamicUiModel().writeProperties(((ValidatorBase) stagedValidator).getRawData());
             }
+            if (stagedValidator instanceof DomainBlacklistValidator) {
+                final GlobalUpgradeConfiguration upgradeConfig = (GlobalUpgradeConfiguration) configurationSession.getCachedConfiguration(GlobalUpgradeConfiguration.CONFIGURATION_ID);
+                if (!upgradeConfig.isDomainBlacklistIndexOnly()) {
+                    // Nodes that have not been upgraded yet only read the block list in the old format
+                    ((DomainBlacklistValidator) stagedValidator).writeLegacyBlacklist();
+                }
+            }
             if (validatorId == -1) {
                 //Check that we don't overwrite an existing validator
                 if(existingValidators.keySet().contains(stagedValidator.getProfileName())) {
@@ -557,6 +567,8 @@ public class ValidatorBean extends BaseManagedBean implements Serializable {
             } else {
                 addNonTranslatedErrorMessage("An exception occured: " + e.getMessage());
             }
+        } catch (IOException e) {
+            addNonTranslatedErrorMessage("Failed to save domain list validator. " + e.getMessage());
         }
         return StringUtils.EMPTY;
     }
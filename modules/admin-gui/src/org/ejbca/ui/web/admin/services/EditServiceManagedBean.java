@@ -46,6 +46,7 @@ import org.ejbca.core.model.services.workers.CRLDownloadWorker;
 import org.ejbca.core.model.services.workers.CRLUpdateWorker;
 import org.ejbca.core.model.services.workers.CertificateExpirationNotifierWorker;
 import org.ejbca.core.model.services.workers.HsmKeepAliveWorker;
+import org.ejbca.core.model.services.workers.OcspResponseRefreshWorker;
 import org.ejbca.core.model.services.workers.PreCertificateRevocationWorkerConstants;
 import org.ejbca.core.model.services.workers.PublishQueueProcessWorker;
 import org.ejbca.core.model.services.workers.RenewCAWorker;
@@ -64,6 +65,7 @@ import org.ejbca.ui.web.admin.services.servicetypes.CustomActionType;
 import org.ejbca.ui.web.admin.services.servicetypes.CustomIntervalType;
 import org.ejbca.ui.web.admin.services.servicetypes.CustomWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.HsmKeepAliveWorkerType;
+import org.ejbca.ui.web.admin.services.servicetypes.OcspResponseRefreshWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.IntervalType;
 import org.ejbca.ui.web.admin.services.servicetypes.MailActionType;
 import org.ejbca.ui.web.admin.services.servicetypes.PeriodicalIntervalType;
@@ -276,6 +278,9 @@ public class EditServiceManagedBean extends BaseManagedBean {
         if ((cp != null) && cp.equals(HsmKeepAliveWorker.class.getName())) {
             ret = HsmKeepAliveWorkerType.NAME;
         }
+        if ((cp != null) && cp.equals(OcspResponseRefreshWorker.class.getName())) {
+            ret = OcspResponseRefreshWorkerType.NAME;
+        }
         if ((cp != null) && cp.equals(PreCertificateRevocationWorkerConstants.WORKER_CLASS)) {
             ret = PreCertificateRevocationWorkerType.NAME;
         }
@@ -302,6 +307,12 @@ public class EditServiceManagedBean extends BaseManagedBean {
         return (CRLDownloadWorkerType) serviceConfigurationView.getServiceTypeManager().getServiceTypeByName(name);
     }
 
+    /** Help method used to edit data in the OcspResponseRefreshWorkerType. */
+    public OcspResponseRefreshWorkerType getOcspResponseRefreshWorkerType() {
+        String name = OcspResponseRefreshWorkerType.NAME;
+        return (OcspResponseRefreshWorkerType) serviceConfigurationView.getServiceTypeManager().getServiceTypeByName(name);
+    }
+
     /** Help method used to edit data in the PreCertificateRevocationWorkerType. */
     public PreCertificateRevocationWorkerType getPreCertificateRevocationWorkerType() {
         String name = PreCertificateRevocationWorkerType.NAME;
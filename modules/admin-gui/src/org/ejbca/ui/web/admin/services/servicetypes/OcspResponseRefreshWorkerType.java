@@ -0,0 +1,86 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.admin.services.servicetypes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.ejbca.core.model.services.workers.OcspResponseRefreshWorker;
+
+/**
+ * Class managing the view of the OCSP Response Refresh Worker
+ */
+public class OcspResponseRefreshWorkerType extends BaseEmailNotifyingWorkerType {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String NAME = "OCSPRESPONSEREFRESHWORKER";
+
+    private static final String OCSPRESPONSEREFRESHWORKER_SUB_PAGE = "ocspresponserefreshworker.xhtml";
+
+    private int batchSize = OcspResponseRefreshWorker.DEFAULT_BATCH_SIZE;
+    private boolean includeExpired = false;
+
+    public OcspResponseRefreshWorkerType() {
+        super(NAME, OCSPRESPONSEREFRESHWORKER_SUB_PAGE, OcspResponseRefreshWorker.class.getName());
+        // No action available for this worker
+        deleteAllCompatibleActionTypes();
+        addCompatibleActionTypeName(NoActionType.NAME);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isIncludeExpired() {
+        return includeExpired;
+    }
+
+    public void setIncludeExpired(boolean includeExpired) {
+        this.includeExpired = includeExpired;
+    }
+
+    /** Overrides
+     * @see org.ejbca.ui.web.admin.services.servicetypes.ServiceType#getProperties
+     */
+    @Override
+    public Properties getProperties(ArrayList<String> errorMessages) throws IOException {
+        Properties ret = super.getProperties(errorMessages);
+        if (batchSize < 1) {
+            errorMessages.add("OCSPRESPONSEREFRESHBATCHSIZEERROR");
+        }
+        ret.setProperty(OcspResponseRefreshWorker.PROP_BATCH_SIZE, Integer.toString(batchSize));
+        ret.setProperty(OcspResponseRefreshWorker.PROP_INCLUDE_EXPIRED, includeExpired ? "TRUE" : "FALSE");
+        return ret;
+    }
+
+    /** Overrides
+     * @see org.ejbca.ui.web.admin.services.servicetypes.ServiceType#setProperties(java.util.Properties)
+     */
+    @Override
+    public void setProperties(Properties properties) throws IOException {
+        super.setProperties(properties);
+        try {
+            batchSize = Integer.parseInt(properties.getProperty(OcspResponseRefreshWorker.PROP_BATCH_SIZE,
+                    Integer.toString(OcspResponseRefreshWorker.DEFAULT_BATCH_SIZE)));
+        } catch (NumberFormatException e) {
+            batchSize = OcspResponseRefreshWorker.DEFAULT_BATCH_SIZE;
+        }
+        includeExpired = properties.getProperty(OcspResponseRefreshWorker.PROP_INCLUDE_EXPIRED, "").equalsIgnoreCase("TRUE");
+    }
+}
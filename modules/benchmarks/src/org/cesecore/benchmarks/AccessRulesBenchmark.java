@@ -0,0 +1,94 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.roles.AccessRulesHelper;
+import org.cesecore.roles.AccessRulesMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Authorization checks of typical resources against the access rules of an administrator, with the access rules map
+ * ({@link AccessRulesHelper}) and with the compiled access rules ({@link AccessRulesMatcher}). The rule count is the number
+ * of CAs and end entity profiles the administrator has access to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessRulesBenchmark {
+
+    private static final int RESOURCE_COUNT = 400;
+
+    @Param({ "10", "200" })
+    public int ruleCount;
+
+    private HashMap<String, Boolean> accessRules;
+    private AccessRulesMatcher accessRulesMatcher;
+    private String[] resources;
+
+    @Setup
+    public void setup() {
+        accessRules = new HashMap<>();
+        for (int i = 0; i < ruleCount; i++) {
+            accessRules.put("/ca/" + i + "/", Boolean.TRUE);
+            accessRules.put("/endentityprofilesrules/" + i + "/view_end_entity/", Boolean.TRUE);
+        }
+        accessRules.put("/administrator/", Boolean.TRUE);
+        accessRules.put("/ra_functionality/", Boolean.TRUE);
+        accessRules.put("/ra_functionality/revoke_end_entity/", Boolean.FALSE);
+        accessRulesMatcher = new AccessRulesMatcher(accessRules);
+        final List<String> resourceList = new ArrayList<>(RESOURCE_COUNT);
+        for (int i = 0; resourceList.size() < RESOURCE_COUNT; i += 3) {
+            resourceList.add("/ca/" + (i % (ruleCount * 2)));
+            resourceList.add("/endentityprofilesrules/" + (i % (ruleCount * 2)) + "/view_end_entity");
+            resourceList.add("/ra_functionality/revoke_end_entity");
+            resourceList.add("/system_functionality/edit_systemconfiguration");
+        }
+        resources = resourceList.toArray(new String[RESOURCE_COUNT]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESOURCE_COUNT)
+    public void accessRulesHelper(final Blackhole blackhole) {
+        for (final String resource : resources) {
+            blackhole.consume(AccessRulesHelper.hasAccessToResource(accessRules, resource));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESOURCE_COUNT)
+    public void accessRulesMatcher(final Blackhole blackhole) {
+        for (final String resource : resources) {
+            blackhole.consume(accessRulesMatcher.hasAccessToResource(resource));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.bouncycastle.jce.X509KeyUsage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CAFactory;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.ca.catoken.CAToken;
+import org.cesecore.certificates.ca.catoken.CATokenConstants;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoCollection;
+import org.cesecore.keys.token.CryptoTokenFactory;
+import org.cesecore.keys.token.SoftCryptoToken;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.StringTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.token.CryptoToken;
+
+/**
+ * In-memory fixtures for the benchmarks. Everything is created with a soft crypto token, so no database or application server is needed.
+ */
+final class BenchmarkFixtures {
+
+    static final String CA_DN = "CN=Benchmark CA,O=EJBCA,C=SE";
+    static final String SIGNATURE_ALGORITHM = AlgorithmConstants.SIGALG_SHA256_WITH_RSA;
+
+    private BenchmarkFixtures() {}
+
+    /** @return a new empty soft auto-activated CryptoToken */
+    static CryptoToken createCryptoToken() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final Properties cryptoTokenProperties = new Properties();
+        cryptoTokenProperties.setProperty(CryptoToken.AUTOACTIVATE_PIN_PROPERTY, "foo1234");
+        return CryptoTokenFactory.createCryptoToken(SoftCryptoToken.class.getName(), cryptoTokenProperties, null, 17, "Benchmark CryptoToken");
+    }
+
+    /** @return an active self-signed RSA 2048 X509 CA, with its keys in the given crypto token */
+    static X509CA createX509Ca(final CryptoToken cryptoToken) throws Exception {
+        cryptoToken.generateKeyPair("2048", CAToken.SOFTPRIVATESIGNKEYALIAS);
+        cryptoToken.generateKeyPair("2048", CAToken.SOFTPRIVATEDECKEYALIAS);
+        final Properties caTokenProperties = new Properties();
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CERTSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CRLSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_DEFAULT_STRING, CAToken.SOFTPRIVATEDECKEYALIAS);
+        final CAToken caToken = new CAToken(cryptoToken.getId(), caTokenProperties);
+        caToken.setKeySequence(CAToken.DEFAULT_KEYSEQUENCE);
+        caToken.setKeySequenceFormat(StringTools.KEY_SEQUENCE_FORMAT_NUMERIC);
+        caToken.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+        caToken.setEncryptionAlgorithm(SIGNATURE_ALGORITHM);
+        final X509CAInfo caInfo = X509CAInfo.getDefaultX509CAInfo(CA_DN, "Benchmark CA", CAConstants.CA_ACTIVE,
+                CertificateProfileConstants.CERTPROFILE_FIXED_ROOTCA, "3650d", CAInfo.SELFSIGNED, null, caToken);
+        final X509CA x509ca = (X509CA) CAFactory.INSTANCE.getX509CAImpl(caInfo);
+        x509ca.setCAToken(caToken);
+        final PublicKey publicKey = cryptoToken.getPublicKey(CAToken.SOFTPRIVATESIGNKEYALIAS);
+        final PrivateKey privateKey = cryptoToken.getPrivateKey(CAToken.SOFTPRIVATESIGNKEYALIAS);
+        final X509Certificate caCertificate = CertTools.genSelfCertForPurpose(CA_DN, 3650L, null, privateKey, publicKey, SIGNATURE_ALGORITHM, true,
+                X509KeyUsage.keyCertSign + X509KeyUsage.cRLSign, null, null, BouncyCastleProvider.PROVIDER_NAME);
+        x509ca.setCertificateChain(Collections.<Certificate>singletonList(caCertificate));
+        return x509ca;
+    }
+
+    /** @return the given number of revoked certificates, with distinct serial numbers and a mix of revocation reasons */
+    static RevokedCertInfoCollection createRevokedCertInfos(final int count) {
+        final RevokedCertInfoCollection revokedCertInfos = new RevokedCertInfoCollection(count);
+        final long now = System.currentTimeMillis();
+        final int[] reasons = { RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE,
+                RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, RevokedCertInfo.REVOCATION_REASON_CESSATIONOFOPERATION };
+        for (int i = 0; i < count; i++) {
+            // 16 byte serial numbers, like the ones generated by the CA
+            final BigInteger serialNumber = BigInteger.valueOf(i).shiftLeft(64).or(BigInteger.valueOf(0x5DEECE66DL * (i + 1)).abs());
+            final byte[] fingerprint = String.format("%040x", i).getBytes();
+            revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber.toByteArray(), now - i * 1000L, reasons[i % reasons.length],
+                    now + 365L * 24 * 3600 * 1000));
+        }
+        revokedCertInfos.closeForWrite();
+        return revokedCertInfos;
+    }
+}
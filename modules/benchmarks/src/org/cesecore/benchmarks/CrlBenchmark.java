@@ -0,0 +1,67 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.X509CRLHolder;
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.crl.RevokedCertInfoCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keyfactor.util.keys.token.CryptoToken;
+
+/**
+ * CRL generation with {@link X509CA#generateCRL} for CAs with many revoked certificates. Measures the time to build, sign and
+ * encode one CRL. Use -Dbenchmark.args="-p revokedCount=10000" to skip the largest CRLs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CrlBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int revokedCount;
+
+    private CryptoToken cryptoToken;
+    private X509CA x509ca;
+    private RevokedCertInfoCollection revokedCertInfos;
+    private int crlNumber = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        cryptoToken = BenchmarkFixtures.createCryptoToken();
+        x509ca = BenchmarkFixtures.createX509Ca(cryptoToken);
+        revokedCertInfos = BenchmarkFixtures.createRevokedCertInfos(revokedCount);
+    }
+
+    @Benchmark
+    public byte[] generateCrl() throws Exception {
+        final X509CRLHolder crl = x509ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, revokedCertInfos, ++crlNumber, null);
+        return crl.getEncoded();
+    }
+}
@@ -0,0 +1,110 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.ejbca.core.model.SecConst;
+import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
+import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
+import org.ejbca.core.model.ra.raadmin.EndEntityValidationHelper;
+import org.ejbca.core.model.ra.raadmin.validators.RegexFieldValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keyfactor.util.certificate.DnComponents;
+
+/**
+ * Validation of an end entity against a profile with 40 OUs with lists of allowed values and 30 DNS names with regex validators. The
+ * validation plan of the profile is either compiled once, like for a profile from the end entity profile cache, or compiled again for
+ * each end entity, which costs about as much as reading the field definitions from the data map did before the plan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndEntityProfileValidationBenchmark {
+
+    private static final int CA_ID = 2;
+    private static final int ORGANIZATIONAL_UNITS = 40;
+    private static final int DNS_NAMES = 30;
+    private static final int ALLOWED_VALUES = 20;
+
+    private EndEntityProfile profile;
+    private CertificateProfile certificateProfile;
+    private String dn;
+    private String altName;
+
+    @Setup
+    public void setup() {
+        profile = new EndEntityProfile();
+        profile.setAvailableCAs(Collections.singletonList(CA_ID));
+        profile.addField(DnComponents.COUNTRY);
+        for (int i = 0; i < ORGANIZATIONAL_UNITS; i++) {
+            profile.addField(DnComponents.ORGANIZATIONALUNIT);
+            profile.setRequired(DnComponents.ORGANIZATIONALUNIT, i, true);
+            profile.setModifyable(DnComponents.ORGANIZATIONALUNIT, i, false);
+            final StringBuilder allowedValues = new StringBuilder();
+            for (int j = 0; j < ALLOWED_VALUES; j++) {
+                allowedValues.append(j == 0 ? "" : EndEntityProfile.SPLITCHAR).append("OU").append(i).append('-').append(j);
+            }
+            profile.setValue(DnComponents.ORGANIZATIONALUNIT, i, allowedValues.toString());
+        }
+        for (int i = 0; i < DNS_NAMES; i++) {
+            profile.addField(DnComponents.DNSNAME);
+            profile.setValidation(DnComponents.DNSNAME, i,
+                    EndEntityValidationHelper.getValidationMapFromRegex("[a-z0-9-]+\\.example\\.com", RegexFieldValidator.class.getName()));
+        }
+        certificateProfile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        final StringBuilder dnBuilder = new StringBuilder("CN=John Smith");
+        for (int i = 0; i < ORGANIZATIONAL_UNITS; i++) {
+            dnBuilder.append(",OU=OU").append(i).append('-').append(i % ALLOWED_VALUES);
+        }
+        dn = dnBuilder.append(",C=SE").toString();
+        final StringBuilder altNameBuilder = new StringBuilder();
+        for (int i = 0; i < DNS_NAMES; i++) {
+            altNameBuilder.append(i == 0 ? "" : ", ").append("dNSName=host").append(i).append(".example.com");
+        }
+        altName = altNameBuilder.toString();
+    }
+
+    @Benchmark
+    public void validateWithCompiledPlan() throws EndEntityProfileValidationException {
+        validate();
+    }
+
+    @Benchmark
+    public void validateWithRecompiledPlan() throws EndEntityProfileValidationException {
+        // Changing a field discards the plan, so it is compiled again by the validation
+        profile.setValue(DnComponents.COUNTRY, 0, "SE");
+        validate();
+    }
+
+    private void validate() throws EndEntityProfileValidationException {
+        profile.doesUserFulfillEndEntityProfile("user1", "foo123", dn, altName, "", "", CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER,
+                false, false, false, SecConst.TOKEN_SOFT_BROWSERGEN, CA_ID, null, certificateProfile, null);
+    }
+}
@@ -0,0 +1,112 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.jce.X509KeyUsage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Building and signing OCSP responses with {@link BasicOCSPRespBuilder}, the way the OCSP responder does for a cached signing entry.
+ * The signer key, certificate chain and responder id are prepared once, like in the OCSP signing cache, and only the single response
+ * is created for each request. Signing with a signer that is created for each response is measured for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OcspResponseBenchmark {
+
+    private static final long VALIDITY_MILLIS = 10 * 60 * 1000L;
+
+    private KeyPair signerKeyPair;
+    private RespID respId;
+    private X509CertificateHolder[] signerChain;
+    private ContentSigner cachedContentSigner;
+    private CertificateID certificateId;
+    private long serialNumber = 1;
+
+    @Setup
+    public void setup() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        signerKeyPair = KeyTools.genKeys("2048", AlgorithmConstants.KEYALGORITHM_RSA);
+        final X509Certificate signerCertificate = CertTools.genSelfCertForPurpose("CN=Benchmark OCSP Signer", 365L, null,
+                signerKeyPair.getPrivate(), signerKeyPair.getPublic(), BenchmarkFixtures.SIGNATURE_ALGORITHM, true, X509KeyUsage.digitalSignature,
+                null, null, BouncyCastleProvider.PROVIDER_NAME);
+        final X509CertificateHolder signerCertificateHolder = new JcaX509CertificateHolder(signerCertificate);
+        respId = new RespID(signerCertificateHolder.getSubject());
+        signerChain = new X509CertificateHolder[] { signerCertificateHolder };
+        cachedContentSigner = createContentSigner();
+        final DigestCalculatorProvider digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+        certificateId = new CertificateID(digestCalculatorProvider.get(CertificateID.HASH_SHA1), signerCertificateHolder, BigInteger.ONE);
+    }
+
+    @Benchmark
+    public byte[] signWithCachedSigner() throws Exception {
+        return createResponse(cachedContentSigner);
+    }
+
+    @Benchmark
+    public byte[] signWithNewSigner() throws Exception {
+        return createResponse(createContentSigner());
+    }
+
+    private byte[] createResponse(final ContentSigner contentSigner) throws Exception {
+        final Date now = new Date();
+        final BasicOCSPRespBuilder basicOcspRespBuilder = new BasicOCSPRespBuilder(respId);
+        // A new serial number for each response, like requests for different certificates
+        final CertificateID singleCertificateId = CertificateID.deriveCertificateID(certificateId, BigInteger.valueOf(serialNumber++));
+        basicOcspRespBuilder.addResponse(singleCertificateId, CertificateStatus.GOOD, now, new Date(now.getTime() + VALIDITY_MILLIS), null);
+        final BasicOCSPResp basicOcspResp = basicOcspRespBuilder.build(contentSigner, signerChain, now);
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicOcspResp).getEncoded();
+    }
+
+    private ContentSigner createContentSigner() throws Exception {
+        return new JcaContentSignerBuilder(BenchmarkFixtures.SIGNATURE_ALGORITHM).setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                .build(signerKeyPair.getPrivate());
+    }
+}
@@ -0,0 +1,105 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPublicKey;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.keys.validation.RocaBrokenKey;
+import org.cesecore.keys.validation.SmallPrimeProductTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Per key cost of the RSA key validator checks of the public key modulus: the smallest factor check with the CA/B Forum minimum
+ * factor 752, with one GCD with the primorial ({@link SmallPrimeProductTree}) and with trial division by every odd number, and the
+ * ROCA check ({@link RocaBrokenKey}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RsaKeyValidatorBenchmark {
+
+    private static final int KEY_COUNT = 8;
+    private static final int MIN_FACTOR = 752;
+
+    @Param({ "2048", "4096" })
+    public int keySize;
+
+    private BigInteger[] moduli;
+
+    @Setup
+    public void setup() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        moduli = new BigInteger[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            moduli[i] = ((RSAPublicKey) KeyTools.genKeys(String.valueOf(keySize), AlgorithmConstants.KEYALGORITHM_RSA).getPublic()).getModulus();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEY_COUNT)
+    public void smallFactorProductTree(final Blackhole blackhole) {
+        for (final BigInteger modulus : moduli) {
+            blackhole.consume(SmallPrimeProductTree.forPrimesUpTo(MIN_FACTOR - 1).hasCommonFactor(modulus));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEY_COUNT)
+    public void smallFactorTrialDivision(final Blackhole blackhole) {
+        for (final BigInteger modulus : moduli) {
+            blackhole.consume(hasSmallerFactorThan(modulus, MIN_FACTOR + 1));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEY_COUNT)
+    public void roca(final Blackhole blackhole) {
+        for (final BigInteger modulus : moduli) {
+            blackhole.consume(RocaBrokenKey.isAffected(modulus));
+        }
+    }
+
+    /** The check of the RSA key validator before the product tree, for comparison */
+    private static boolean hasSmallerFactorThan(final BigInteger n, final int intFactor) {
+        if (!n.testBit(0)) {
+            return true;
+        }
+        for (int i = intFactor; i > 2; i = i - 2) {
+            if (n.mod(BigInteger.valueOf(i)).equals(BigInteger.ZERO)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.cesecore.certificates.endentity.EndEntityType;
+import org.cesecore.certificates.endentity.EndEntityTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+import com.keyfactor.util.keys.token.CryptoToken;
+
+/**
+ * Certificate issuance with {@link X509CA#generateCertificate}, signed with a soft crypto token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class X509CaBenchmark {
+
+    private final AvailableCustomCertificateExtensionsConfiguration cceConfig = new AvailableCustomCertificateExtensionsConfiguration();
+    private CryptoToken cryptoToken;
+    private X509CA x509ca;
+    private CertificateProfile certificateProfile;
+    private EndEntityInformation endEntityInformation;
+    private KeyPair keyPair;
+
+    @Setup
+    public void setup() throws Exception {
+        cryptoToken = BenchmarkFixtures.createCryptoToken();
+        x509ca = BenchmarkFixtures.createX509Ca(cryptoToken);
+        certificateProfile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        endEntityInformation = new EndEntityInformation("benchmark", "CN=Benchmark User,O=EJBCA,C=SE", x509ca.getCAId(),
+                "dnsName=benchmark.example.com,rfc822Name=benchmark@example.com", "benchmark@example.com", new EndEntityType(EndEntityTypes.ENDUSER),
+                EndEntityConstants.EMPTY_END_ENTITY_PROFILE, CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER, EndEntityConstants.TOKEN_USERGEN,
+                null);
+        keyPair = KeyTools.genKeys("2048", AlgorithmConstants.KEYALGORITHM_RSA);
+    }
+
+    @Benchmark
+    public Certificate generateCertificate() throws Exception {
+        return x509ca.generateCertificate(cryptoToken, endEntityInformation, keyPair.getPublic(), 0, null, "365d", certificateProfile, "00000",
+                cceConfig);
+    }
+}
@@ -0,0 +1,105 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.DataMapSerializer;
+import org.cesecore.util.XmlSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of the XML data of a certificate profile with {@link XmlSerializer}, as done when profiles are stored
+ * and loaded, compared with the binary format of {@link DataMapSerializer}. The binary decoding is measured both with only the
+ * keys decoded, and with all values read. The profile size is the number of available CAs and used certificate extensions in
+ * the profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class XmlSerializerBenchmark {
+
+    @Param({ "10", "1000" })
+    public int profileSize;
+
+    private Map<String, Object> profileData;
+    private String encodedProfileData;
+    private Map<Object, Object> base64ProfileData;
+    private String binaryProfileData;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        final CertificateProfile certificateProfile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        final List<Integer> ids = new ArrayList<>(profileSize);
+        for (int i = 0; i < profileSize; i++) {
+            ids.add(Integer.valueOf(-1000000 - i * 7919));
+        }
+        certificateProfile.setAvailableCAs(ids);
+        certificateProfile.setUsedCertificateExtensions(ids);
+        certificateProfile.setCRLDistributionPointURI("http://crl.example.com/crl?issuer=CN%3DBenchmark%20CA,O%3DEJBCA,C%3DSE");
+        profileData = new LinkedHashMap<>();
+        profileData.putAll((Map<String, Object>) (Map<?, ?>) certificateProfile.saveData());
+        encodedProfileData = XmlSerializer.encode(profileData);
+        base64ProfileData = new Base64PutHashMap();
+        base64ProfileData.putAll(profileData);
+        binaryProfileData = DataMapSerializer.encodeBinary(base64ProfileData);
+    }
+
+    @Benchmark
+    public String encode() {
+        return XmlSerializer.encode(profileData);
+    }
+
+    @Benchmark
+    public Map<String, Object> decode() {
+        return XmlSerializer.decode(encodedProfileData);
+    }
+
+    @Benchmark
+    public String encodeBinary() {
+        return DataMapSerializer.encodeBinary(base64ProfileData);
+    }
+
+    @Benchmark
+    public Map<Object, Object> decodeBinary() throws IOException {
+        return DataMapSerializer.decode(binaryProfileData);
+    }
+
+    @Benchmark
+    public String decodeBinaryAllValues() throws IOException {
+        // Reads every value, like when the profile is edited or its integrity protection is verified
+        return DataMapSerializer.decode(binaryProfileData).toString();
+    }
+}
@@ -0,0 +1,50 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link AuditLogVerificationCheckpoint}.
+ */
+public class AuditLogVerificationCheckpointUnitTest {
+
+    @Test
+    public void testUnverifiedNode() {
+        assertEquals(-1L, new AuditLogVerificationCheckpoint().getLastVerifiedSequenceNumber("node1"));
+    }
+
+    @Test
+    public void testCheckpointOnlyMovesForward() {
+        final AuditLogVerificationCheckpoint checkpoint = new AuditLogVerificationCheckpoint();
+        checkpoint.setLastVerifiedSequenceNumber("node1", 100L);
+        checkpoint.setLastVerifiedSequenceNumber("node1", 50L);
+        checkpoint.setLastVerifiedSequenceNumber("node2", 7L);
+        assertEquals(100L, checkpoint.getLastVerifiedSequenceNumber("node1"));
+        assertEquals(7L, checkpoint.getLastVerifiedSequenceNumber("node2"));
+        assertEquals(2, checkpoint.getAsProperties().size());
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        final AuditLogVerificationCheckpoint checkpoint = new AuditLogVerificationCheckpoint();
+        checkpoint.setLastVerifiedSequenceNumber("node1", 123456789012L);
+        final AuditLogVerificationCheckpoint loaded = (AuditLogVerificationCheckpoint) new AuditLogVerificationCheckpointCache()
+                .getConfiguration((HashMap<?, ?>) checkpoint.saveData());
+        assertEquals(123456789012L, loaded.getLastVerifiedSequenceNumber("node1"));
+    }
+}
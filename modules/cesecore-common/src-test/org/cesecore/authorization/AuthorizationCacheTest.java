@@ -13,8 +13,10 @@
 package org.cesecore.authorization;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -36,6 +38,7 @@ import org.cesecore.authorization.AuthorizationCache.AuthorizationCacheCallback;
 import org.cesecore.authorization.AuthorizationCache.AuthorizationResult;
 import org.cesecore.authorization.access.AuthorizationCacheReload;
 import org.cesecore.authorization.access.AuthorizationCacheReloadListener;
+import org.cesecore.roles.AccessRulesMatcher;
 import org.junit.Test;
 
 /**
@@ -103,10 +106,17 @@ public class AuthorizationCacheTest {
         AuthorizationCache.INSTANCE.refresh(callback, updateNumber.get());
         assertNotNull(AuthorizationCache.INSTANCE.get(at1, callback));
         assertEquals(1, AuthorizationCache.INSTANCE.get(at1, callback).size());
+        // The compiled access rules are reused until the access rules are reloaded
+        final AccessRulesMatcher accessRulesMatcher = AuthorizationCache.INSTANCE.getAccessRulesMatcher(at1, callback);
+        assertSame(accessRulesMatcher, AuthorizationCache.INSTANCE.getAccessRulesMatcher(at1, callback));
+        assertTrue(accessRulesMatcher.hasAccessToResource("/rule1"));
+        assertFalse(accessRulesMatcher.hasAccessToResource("/rule2"));
         updateNumber.incrementAndGet();
         AuthorizationCache.INSTANCE.refresh(callback, updateNumber.get());
         assertNotNull(AuthorizationCache.INSTANCE.get(at1, callback));
         assertEquals(2, AuthorizationCache.INSTANCE.get(at1, callback).size());
+        assertTrue(AuthorizationCache.INSTANCE.getAccessRulesMatcher(at1, callback).hasAccessToResource("/rule2"));
+        assertFalse(AuthorizationCache.INSTANCE.getAccessRulesMatcher(null, callback).hasAccessToResource("/rule1"));
         // When the cache is refreshed, even if the updateNumber is not changed, unused entries will be removed
         accessRules1.clear();
         Thread.sleep(100L);
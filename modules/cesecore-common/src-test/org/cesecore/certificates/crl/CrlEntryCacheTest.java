@@ -0,0 +1,212 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit tests for {@link CrlEntryCache} and {@link IncrementalCrlEntries}.
+ */
+public class CrlEntryCacheTest {
+
+    private static final String ISSUER_DN = "CN=CrlEntryCacheTest,O=EJBCA";
+    private static final long NOW = 1700000000000L;
+    private static final long LAST_BASE_CRL_DATE = NOW - 3600000L;
+
+    private static KeyPair keyPair;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", "RSA");
+    }
+
+    @Test
+    public void incrementalCrlIsTheSameAsFullCrl() throws Exception {
+        final CrlEntryCache cache = new CrlEntryCache(folder.getRoot().toPath());
+        final RevokedCertInfoCollection full = new RevokedCertInfoCollection();
+        full.add(revokedCertInfo("aa", 300, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, NOW + 86400000L));
+        full.add(revokedCertInfo("bb", 1, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, LAST_BASE_CRL_DATE - 1000L));
+        full.add(revokedCertInfo("cc", 4711, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, NOW + 86400000L));
+        final IncrementalCrlEntries first = cache.createEntries(ISSUER_DN, 0, false, false, full, LAST_BASE_CRL_DATE - 60000L,
+                LAST_BASE_CRL_DATE - 7200000L);
+        assertFalse(first.isIncremental());
+        assertEquals(3, first.size());
+        assertArrayEquals(encode(sorted(full)), encode(first));
+        first.commit(5);
+
+        final List<Long> changesAfter = new ArrayList<>();
+        final IncrementalCrlEntries second = cache.updateEntries(ISSUER_DN, 0, false, false, 5, 0, time -> {
+            changesAfter.add(time);
+            final RevokedCertInfoCollection changes = new RevokedCertInfoCollection();
+            // Re-activated, and removed from the CRL
+            changes.add(revokedCertInfo("cc", 4711, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, NOW + 86400000L));
+            // Newly revoked, with the latest change last
+            changes.add(revokedCertInfo("dd", 20, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, NOW + 86400000L));
+            changes.add(revokedCertInfo("dd", 20, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, NOW + 86400000L));
+            return changes;
+        }, () -> 3, LAST_BASE_CRL_DATE);
+        try {
+            assertNotNull("The cached entries should be used.", second);
+            assertTrue(second.isIncremental());
+            assertEquals(Collections.singletonList(LAST_BASE_CRL_DATE - 60000L), changesAfter);
+            // The expired entry is included one last time, like for CRLs created from all revoked certificates
+            assertEquals(Collections.singletonList("bb"), second.getExpiredFingerprints());
+            final RevokedCertInfoCollection expected = new RevokedCertInfoCollection();
+            expected.add(revokedCertInfo("aa", 300, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, NOW + 86400000L));
+            expected.add(revokedCertInfo("bb", 1, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, LAST_BASE_CRL_DATE - 1000L));
+            expected.add(revokedCertInfo("dd", 20, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, NOW + 86400000L));
+            assertEquals(3, second.size());
+            assertArrayEquals(encode(sorted(expected)), encode(second));
+            // The entries can also be decoded
+            final List<String> decoded = new ArrayList<>();
+            for (final RevokedCertInfo revokedCertInfo : second) {
+                decoded.add(revokedCertInfo.getCertificateFingerprint() + ":" + revokedCertInfo.getUserCertificate() + ":" + revokedCertInfo.getReason());
+            }
+            assertEquals(Arrays.asList("bb:1:0", "dd:20:4", "aa:300:1"), decoded);
+            second.commit(6);
+        } finally {
+            second.discard();
+        }
+        // Only the files of the last CRL are kept
+        assertEquals(2, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void expiredEntriesAreLeftOutOfTheNextCrl() throws Exception {
+        final CrlEntryCache cache = new CrlEntryCache(folder.getRoot().toPath());
+        final RevokedCertInfoCollection full = new RevokedCertInfoCollection();
+        full.add(revokedCertInfo("aa", 300, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, NOW + 86400000L));
+        full.add(revokedCertInfo("bb", 1, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, LAST_BASE_CRL_DATE - 1000L));
+        // The expired entry is included one last time, and its certificate is archived by the caller
+        final IncrementalCrlEntries first = cache.createEntries(ISSUER_DN, 0, false, false, full, NOW, LAST_BASE_CRL_DATE);
+        assertEquals(2, first.size());
+        first.commit(1);
+        // Archiving is not seen as a change, e.g. when the certificate is in NoConflictCertificateData
+        final IncrementalCrlEntries second = cache.updateEntries(ISSUER_DN, 0, false, false, 1, 0, time -> new RevokedCertInfoCollection(), () -> 1, NOW);
+        try {
+            assertEquals("The expired entry should have been left out.", 1, second.size());
+            assertTrue(second.getExpiredFingerprints().isEmpty());
+            final RevokedCertInfoCollection expected = new RevokedCertInfoCollection();
+            expected.add(revokedCertInfo("aa", 300, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, NOW + 86400000L));
+            assertArrayEquals(encode(expected), encode(second));
+        } finally {
+            second.discard();
+        }
+    }
+
+    @Test
+    public void changeCommittedLateIsDetected() throws Exception {
+        final CrlEntryCache cache = new CrlEntryCache(folder.getRoot().toPath());
+        final RevokedCertInfoCollection full = new RevokedCertInfoCollection();
+        full.add(revokedCertInfo("aa", 300, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, NOW + 86400000L));
+        full.add(revokedCertInfo("bb", 400, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, NOW + 86400000L));
+        cache.createEntries(ISSUER_DN, 0, false, false, full, NOW, LAST_BASE_CRL_DATE).commit(1);
+        // Certificate "cc" was revoked in a transaction that committed long after its update time, so it is not read as a change,
+        // but it is counted as revoked
+        final RevokedCertInfoCollection changes = new RevokedCertInfoCollection();
+        changes.add(revokedCertInfo("dd", 500, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, NOW + 86400000L));
+        assertNull("Cached entries should not be used when a change was missed.",
+                cache.updateEntries(ISSUER_DN, 0, false, false, 1, 0, time -> changes, () -> 4, NOW));
+        assertEquals("The entries that were not used should be deleted.", 2, folder.getRoot().list().length);
+        // The same if a certificate that is no longer revoked was missed
+        assertNull(cache.updateEntries(ISSUER_DN, 0, false, false, 1, 0, time -> changes, () -> 2, NOW));
+        final IncrementalCrlEntries entries = cache.updateEntries(ISSUER_DN, 0, false, false, 1, 0, time -> changes, () -> 3, NOW);
+        try {
+            assertNotNull("Cached entries should be used when the number of revoked certificates matches.", entries);
+            assertEquals(3, entries.size());
+        } finally {
+            entries.discard();
+        }
+    }
+
+    @Test
+    public void cachedEntriesAreOnlyUsedForTheLastBaseCrl() throws Exception {
+        final CrlEntryCache cache = new CrlEntryCache(folder.getRoot().toPath());
+        assertNull("There are no cached entries yet.", cache.updateEntries(ISSUER_DN, 0, false, false, 5, 0, time -> new RevokedCertInfoCollection(), () -> 1, NOW));
+        final RevokedCertInfoCollection full = new RevokedCertInfoCollection();
+        full.add(revokedCertInfo("aa", 300, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, NOW + 86400000L));
+        cache.createEntries(ISSUER_DN, 0, false, false, full, NOW, LAST_BASE_CRL_DATE).commit(5);
+        assertNull("Last base CRL was created on another node.", cache.updateEntries(ISSUER_DN, 0, false, false, 6, 0, time -> new RevokedCertInfoCollection(), () -> 1, NOW));
+        assertNull("CA settings have changed.", cache.updateEntries(ISSUER_DN, 0, true, false, 5, 0, time -> new RevokedCertInfoCollection(), () -> 1, NOW));
+        assertNull("Other CRL partition.", cache.updateEntries(ISSUER_DN, 1, false, false, 5, 0, time -> new RevokedCertInfoCollection(), () -> 1, NOW));
+        assertNull("Every base CRL should be a full one.", cache.updateEntries(ISSUER_DN, 0, false, false, 5, 1, time -> new RevokedCertInfoCollection(), () -> 1, NOW));
+        final IncrementalCrlEntries entries = cache.updateEntries(ISSUER_DN, 0, false, false, 5, 2, time -> new RevokedCertInfoCollection(), () -> 1, NOW);
+        assertNotNull(entries);
+        entries.discard();
+        assertEquals("Discarded entries should be deleted.", 2, folder.getRoot().list().length);
+        final IncrementalCrlEntries next = cache.updateEntries(ISSUER_DN, 0, false, false, 5, 2, time -> new RevokedCertInfoCollection(), () -> 1, NOW);
+        next.commit(6);
+        assertNull("Every second base CRL should be a full one.", cache.updateEntries(ISSUER_DN, 0, false, false, 6, 2, time -> new RevokedCertInfoCollection(), () -> 1, NOW));
+    }
+
+    @Test
+    public void keepExpiredCertsOnCrl() throws Exception {
+        final Path directory = new File(folder.getRoot(), "crlentries").toPath();
+        final CrlEntryCache cache = new CrlEntryCache(directory);
+        final RevokedCertInfoCollection full = new RevokedCertInfoCollection();
+        full.add(revokedCertInfo("aa", 300, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, LAST_BASE_CRL_DATE - 1000L));
+        cache.createEntries(ISSUER_DN, 0, true, false, full, NOW, LAST_BASE_CRL_DATE).commit(1);
+        final IncrementalCrlEntries entries = cache.updateEntries(ISSUER_DN, 0, true, false, 1, 0, time -> new RevokedCertInfoCollection(), () -> 1, LAST_BASE_CRL_DATE);
+        try {
+            assertEquals(1, entries.size());
+            assertTrue("Expired certificates should not be archived.", entries.getExpiredFingerprints().isEmpty());
+        } finally {
+            entries.discard();
+        }
+    }
+
+    private static RevokedCertInfo revokedCertInfo(final String fingerprint, final long serialNumber, final int reason, final long expireDate) {
+        return new RevokedCertInfo(fingerprint.getBytes(), BigInteger.valueOf(serialNumber).toByteArray(), NOW - serialNumber * 1000L, reason, expireDate);
+    }
+
+    private static RevokedCertInfoCollection sorted(final RevokedCertInfoCollection revokedCertInfos) {
+        revokedCertInfos.sortBySerialNumber();
+        return revokedCertInfos;
+    }
+
+    private static byte[] encode(final Collection<RevokedCertInfo> revokedCertInfos) throws Exception {
+        final ContentSigner signer = new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate());
+        return new StreamingCrlEncoder(new X500Name(ISSUER_DN), new Date(NOW), new Date(NOW + 3600000L), null).encode(revokedCertInfos, signer);
+    }
+}
@@ -0,0 +1,165 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RevokedCertInfoCollection}.
+ */
+public class RevokedCertInfoCollectionTest {
+
+    private static final String FINGERPRINT = "0a1b2c3d4e5f60718293a4b5c6d7e8f901234567";
+
+    @Test
+    public void addAndIterate() {
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection(1);
+        collection.add(new RevokedCertInfo(FINGERPRINT.getBytes(), BigInteger.valueOf(4711).toByteArray(), 1000L,
+                RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 2000L, 1500L));
+        // Fingerprints that are not lower case hexadecimal are stored as is
+        collection.add(new RevokedCertInfo("ABC-not hex".getBytes(), new BigInteger("-123456789abcdef0123", 16).toByteArray(), 3000L,
+                RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, 4000L));
+        collection.add(new RevokedCertInfo(null, BigInteger.ZERO.toByteArray(), 0L, RevokedCertInfo.NOT_REVOKED, 0L));
+        assertEquals(3, collection.size());
+        final Iterator<RevokedCertInfo> iterator = collection.iterator();
+        RevokedCertInfo revokedCertInfo = iterator.next();
+        assertEquals(FINGERPRINT, revokedCertInfo.getCertificateFingerprint());
+        assertEquals(BigInteger.valueOf(4711), revokedCertInfo.getUserCertificate());
+        assertEquals(1000L, revokedCertInfo.getRevocationDate().getTime());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revokedCertInfo.getReason());
+        assertEquals(2000L, revokedCertInfo.getExpireDate().getTime());
+        assertEquals(1500L, revokedCertInfo.getInvalidityDate().getTime());
+        revokedCertInfo = iterator.next();
+        assertEquals("ABC-not hex", revokedCertInfo.getCertificateFingerprint());
+        assertEquals(new BigInteger("-123456789abcdef0123", 16), revokedCertInfo.getUserCertificate());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, revokedCertInfo.getReason());
+        assertNull(revokedCertInfo.getInvalidityDate());
+        revokedCertInfo = iterator.next();
+        assertNull(revokedCertInfo.getCertificateFingerprint());
+        assertEquals(BigInteger.ZERO, revokedCertInfo.getUserCertificate());
+        assertFalse(revokedCertInfo.isRevocationDateSet());
+        assertEquals(RevokedCertInfo.NOT_REVOKED, revokedCertInfo.getReason());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void closedForWriteUntilCleared() {
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection();
+        collection.add(revokedCertInfo(1, 1000L, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED));
+        collection.closeForWrite();
+        try {
+            collection.add(revokedCertInfo(2, 1000L, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED));
+            fail("Should not be possible to add entries after closeForWrite()");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        collection.clear();
+        assertTrue(collection.isEmpty());
+        collection.add(revokedCertInfo(3, 1000L, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED));
+        assertEquals(Arrays.asList(BigInteger.valueOf(3)), serialNumbers(collection));
+    }
+
+    @Test
+    public void sortBySerialNumber() {
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection();
+        final long[] serialNumbers = { 300, -5, 0, 70000, 127, 128, -129, 2, Long.MAX_VALUE, Long.MIN_VALUE, 127 };
+        for (int i = 0; i < serialNumbers.length; i++) {
+            collection.add(revokedCertInfo(serialNumbers[i], i, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED));
+        }
+        collection.sortBySerialNumber();
+        final List<BigInteger> expected = new ArrayList<>();
+        for (final long serialNumber : new long[] { Long.MIN_VALUE, -129, -5, 0, 2, 127, 127, 128, 300, 70000, Long.MAX_VALUE }) {
+            expected.add(BigInteger.valueOf(serialNumber));
+        }
+        assertEquals(expected, serialNumbers(collection));
+        // The sort is stable
+        assertEquals(4, collection.getRevocationDate(5));
+        assertEquals(10, collection.getRevocationDate(6));
+    }
+
+    @Test
+    public void merge() {
+        final RevokedCertInfoCollection a = new RevokedCertInfoCollection();
+        a.add(revokedCertInfo(5, 5000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        a.add(revokedCertInfo(1, 1000L, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD));
+        a.add(revokedCertInfo(3, 3000L, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED));
+        final RevokedCertInfoCollection b = new RevokedCertInfoCollection();
+        // Older permanent revocation wins
+        b.add(revokedCertInfo(5, 4000L, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED));
+        // Permanent revocation wins over temporary
+        b.add(revokedCertInfo(1, 500L, RevokedCertInfo.REVOCATION_REASON_CESSATIONOFOPERATION));
+        // Newer permanent revocation loses
+        b.add(revokedCertInfo(3, 3500L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        // Most recent temporary status change wins, and is dropped from a base CRL when it is a re-activation
+        b.add(revokedCertInfo(2, 2000L, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL));
+        b.add(revokedCertInfo(2, 1000L, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD));
+        b.add(revokedCertInfo(4, 1000L, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD));
+        final Collection<RevokedCertInfo> merged = RevokedCertInfo.mergeByDateAndStatus(a, b, 0);
+        assertEquals(Arrays.asList(BigInteger.valueOf(1), BigInteger.valueOf(3), BigInteger.valueOf(4), BigInteger.valueOf(5)), serialNumbers(merged));
+        final List<Integer> reasons = new ArrayList<>();
+        for (final RevokedCertInfo revokedCertInfo : merged) {
+            reasons.add(revokedCertInfo.getReason());
+        }
+        assertEquals(Arrays.asList(RevokedCertInfo.REVOCATION_REASON_CESSATIONOFOPERATION, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED,
+                RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED), reasons);
+        // A re-activation after the last base CRL is kept in delta CRLs
+        assertEquals(5, RevokedCertInfo.mergeByDateAndStatus(a, b, 1500L).size());
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection();
+        collection.add(new RevokedCertInfo(FINGERPRINT.getBytes(), BigInteger.TEN.toByteArray(), 1000L, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED,
+                2000L, 1500L));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(collection);
+        }
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            final RevokedCertInfoCollection copy = (RevokedCertInfoCollection) ois.readObject();
+            assertEquals(1, copy.size());
+            assertEquals(FINGERPRINT, copy.getCertificateFingerprint(0));
+            assertEquals(BigInteger.TEN, copy.get(0).getUserCertificate());
+            assertEquals(Long.valueOf(1500L), copy.getInvalidityDate(0));
+        }
+    }
+
+    private static RevokedCertInfo revokedCertInfo(final long serialNumber, final long revocationDate, final int reason) {
+        return new RevokedCertInfo(FINGERPRINT.getBytes(), BigInteger.valueOf(serialNumber).toByteArray(), revocationDate, reason, revocationDate + 1000L);
+    }
+
+    private static List<BigInteger> serialNumbers(final Collection<RevokedCertInfo> revokedCertInfos) {
+        final List<BigInteger> serialNumbers = new ArrayList<>();
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            serialNumbers.add(revokedCertInfo.getUserCertificate());
+        }
+        return serialNumbers;
+    }
+}
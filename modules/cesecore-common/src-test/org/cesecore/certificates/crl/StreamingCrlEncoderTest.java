@@ -0,0 +1,160 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.util.Collection;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.util.CompressedCollection;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Tests that StreamingCrlEncoder produces the same encoding as BouncyCastle's X509v2CRLBuilder.
+ */
+public class StreamingCrlEncoderTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=StreamingCrlEncoderTest,O=EJBCA");
+    // RSA PKCS#1 v1.5 signatures are deterministic, so the CRLs can be compared byte by byte
+    private static final String SIGNATURE_ALGORITHM = "SHA256WithRSA";
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", "RSA");
+    }
+
+    @Test
+    public void testEmptyCrl() throws Exception {
+        assertSameAsCrlBuilder(new CompressedCollection<>(RevokedCertInfo.class), false);
+        assertSameAsCrlBuilder(null, false);
+    }
+
+    @Test
+    public void testCrlEntries() throws Exception {
+        final CompressedCollection<RevokedCertInfo> revokedCertInfos = new CompressedCollection<>(RevokedCertInfo.class);
+        final long now = System.currentTimeMillis();
+        revokedCertInfos.add(revokedCertInfo(BigInteger.ONE, now - 1000, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, null));
+        revokedCertInfos.add(revokedCertInfo(new BigInteger("123456789abcdef0123456789abcdef", 16), now, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, null));
+        revokedCertInfos.add(revokedCertInfo(BigInteger.valueOf(4711), now, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, now - 3600000L));
+        revokedCertInfos.add(revokedCertInfo(BigInteger.valueOf(4712), now, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, now - 7200000L));
+        // Revocation date after 2049 is encoded as GeneralizedTime
+        revokedCertInfos.add(revokedCertInfo(BigInteger.valueOf(4713), 2556143999000L, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, null));
+        assertSameAsCrlBuilder(revokedCertInfos, true);
+    }
+
+    @Test
+    public void testRevokedCertInfoCollection() throws Exception {
+        // Entries of a RevokedCertInfoCollection are encoded from the packed arrays
+        final RevokedCertInfoCollection revokedCertInfos = new RevokedCertInfoCollection();
+        final long now = System.currentTimeMillis();
+        revokedCertInfos.add(revokedCertInfo(new BigInteger("123456789abcdef0123456789abcdef", 16), now, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, null));
+        revokedCertInfos.add(revokedCertInfo(BigInteger.valueOf(4711), now, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, now - 3600000L));
+        revokedCertInfos.add(revokedCertInfo(BigInteger.ONE, 2556143999000L, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, null));
+        revokedCertInfos.sortBySerialNumber();
+        assertSameAsCrlBuilder(revokedCertInfos, true);
+    }
+
+    @Test
+    public void testLargeCrl() throws Exception {
+        // More than 64 KiB of entries, so that long form lengths and several buffers are used
+        final CompressedCollection<RevokedCertInfo> revokedCertInfos = new CompressedCollection<>(RevokedCertInfo.class);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 5000; i++) {
+            revokedCertInfos.add(revokedCertInfo(BigInteger.valueOf(1000000L + i), now - i, i % 2 == 0 ? RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE
+                    : RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, null));
+        }
+        final byte[] encoded = assertSameAsCrlBuilder(revokedCertInfos, true);
+        assertEquals(5000, CertTools.getCRLfromByteArray(encoded).getRevokedCertificates().size());
+    }
+
+    @Test
+    public void testStreamAndVerify() throws Exception {
+        final CompressedCollection<RevokedCertInfo> revokedCertInfos = new CompressedCollection<>(RevokedCertInfo.class);
+        revokedCertInfos.add(revokedCertInfo(BigInteger.TEN, System.currentTimeMillis(), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, null));
+        final Date thisUpdate = new Date();
+        final StreamingCrlEncoder encoder = new StreamingCrlEncoder(ISSUER, thisUpdate, new Date(thisUpdate.getTime() + 3600000L), null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long length = encoder.encode(revokedCertInfos, getSigner(), out);
+        final byte[] encoded = out.toByteArray();
+        assertEquals(encoded.length, length);
+        assertTrue("Signature should verify.", StreamingCrlEncoder.isSignatureValid(encoded, CertTools.genContentVerifierProvider(keyPair.getPublic())));
+        final X509CRLHolder holder = StreamingCrlEncoder.toX509CRLHolder(encoded);
+        assertEquals(ISSUER, holder.getIssuer());
+        assertArrayEquals("Lazily parsed CRL should have the same encoding.", encoded, holder.getEncoded());
+        assertEquals(1, holder.getRevokedCertificates().size());
+        // Tamper with the last byte of the signature
+        encoded[encoded.length - 1] ^= 1;
+        assertFalse("Signature should not verify.", StreamingCrlEncoder.isSignatureValid(encoded, CertTools.genContentVerifierProvider(keyPair.getPublic())));
+    }
+
+    private byte[] assertSameAsCrlBuilder(final Collection<RevokedCertInfo> revokedCertInfos, final boolean withExtensions) throws Exception {
+        final Date thisUpdate = new Date();
+        final Date nextUpdate = new Date(thisUpdate.getTime() + 24 * 3600000L);
+        final ExtensionsGenerator extensionsGenerator = new ExtensionsGenerator();
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+        crlBuilder.setNextUpdate(nextUpdate);
+        if (withExtensions) {
+            extensionsGenerator.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(17)));
+            crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(17)));
+        }
+        if (revokedCertInfos != null) {
+            for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+                if (revokedCertInfo.getInvalidityDate() != null) {
+                    crlBuilder.addCRLEntry(revokedCertInfo.getUserCertificate(), revokedCertInfo.getRevocationDate(), revokedCertInfo.getReason(),
+                            revokedCertInfo.getInvalidityDate());
+                } else {
+                    crlBuilder.addCRLEntry(revokedCertInfo.getUserCertificate(), revokedCertInfo.getRevocationDate(), revokedCertInfo.getReason());
+                }
+            }
+        }
+        final byte[] expected = crlBuilder.build(getSigner()).getEncoded();
+        final StreamingCrlEncoder encoder = new StreamingCrlEncoder(ISSUER, thisUpdate, nextUpdate,
+                extensionsGenerator.isEmpty() ? null : extensionsGenerator.generate());
+        final byte[] actual = encoder.encode(revokedCertInfos, getSigner());
+        assertArrayEquals("Streamed CRL should be identical to the one built by X509v2CRLBuilder.", expected, actual);
+        return actual;
+    }
+
+    private ContentSigner getSigner() throws Exception {
+        return new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPrivate());
+    }
+
+    private static RevokedCertInfo revokedCertInfo(final BigInteger serialNumber, final long revocationDate, final int reason, final Long invalidityDate) {
+        return new RevokedCertInfo(new byte[] { 1, 2, 3, 4 }, serialNumber.toByteArray(), revocationDate, reason, revocationDate + 365L * 24 * 3600000L,
+                invalidityDate);
+    }
+}
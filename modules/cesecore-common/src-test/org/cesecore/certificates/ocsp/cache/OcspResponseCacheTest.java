@@ -0,0 +1,177 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the in-memory cache of signed OCSP responses.
+ */
+public class OcspResponseCacheTest {
+
+    private static final byte[] RESPONSE = new byte[1000];
+    private static final long MAX_AGE = 30000L;
+
+    private String defaultMaxEntries;
+    private String defaultMaxSize;
+
+    @Before
+    public void before() {
+        OcspResponseCache.INSTANCE.flush();
+        defaultMaxEntries = ConfigurationHolder.getString(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES);
+        defaultMaxSize = ConfigurationHolder.getString(OcspConfiguration.RESPONSE_CACHE_MAX_SIZE);
+    }
+
+    @After
+    public void after() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES, defaultMaxEntries);
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_SIZE, defaultMaxSize);
+        OcspResponseCache.INSTANCE.flush();
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        final CertificateID certId = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(4711));
+        final long hits = OcspResponseCache.INSTANCE.getHits();
+        final long misses = OcspResponseCache.INSTANCE.getMisses();
+        assertNull("Cache should be empty from start.", OcspResponseCache.INSTANCE.getResponse(certId));
+        assertTrue(put(certId, System.currentTimeMillis() + 60000L));
+        final OcspResponseCacheEntry entry = OcspResponseCache.INSTANCE.getResponse(certId);
+        assertNotNull("Response should have been cached.", entry);
+        assertEquals(MAX_AGE, entry.getMaxAge());
+        assertEquals(hits + 1, OcspResponseCache.INSTANCE.getHits());
+        assertEquals(misses + 1, OcspResponseCache.INSTANCE.getMisses());
+        // Same serial number from another issuer or with another hash algorithm is another response
+        assertNull(OcspResponseCache.INSTANCE.getResponse(makeCertId(OIWObjectIdentifiers.idSHA1, 2, BigInteger.valueOf(4711))));
+        assertNull(OcspResponseCache.INSTANCE.getResponse(makeCertId(NISTObjectIdentifiers.id_sha256, 1, BigInteger.valueOf(4711))));
+    }
+
+    @Test
+    public void testExpiredResponse() {
+        final CertificateID certId = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(4712));
+        assertFalse("Already expired response should not be cached.", put(certId, System.currentTimeMillis() - 1));
+        assertTrue(put(certId, System.currentTimeMillis() + 50));
+        assertEquals(1, OcspResponseCache.INSTANCE.size());
+        final long expirations = OcspResponseCache.INSTANCE.getExpirations();
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assertNull("Response past nextUpdate should not be served.", OcspResponseCache.INSTANCE.getResponse(certId));
+        assertEquals(expirations + 1, OcspResponseCache.INSTANCE.getExpirations());
+        assertEquals(0, OcspResponseCache.INSTANCE.size());
+    }
+
+    @Test
+    public void testInvalidateSerialNumber() {
+        final CertificateID sha1CertId = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(4713));
+        final CertificateID sha256CertId = makeCertId(NISTObjectIdentifiers.id_sha256, 1, BigInteger.valueOf(4713));
+        final CertificateID otherCertId = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(4714));
+        final long nextUpdate = System.currentTimeMillis() + 60000L;
+        assertTrue(put(sha1CertId, nextUpdate));
+        assertTrue(put(sha256CertId, nextUpdate));
+        assertTrue(put(otherCertId, nextUpdate));
+        OcspResponseCache.INSTANCE.invalidate(BigInteger.valueOf(4713));
+        assertNull(OcspResponseCache.INSTANCE.getResponse(sha1CertId));
+        assertNull(OcspResponseCache.INSTANCE.getResponse(sha256CertId));
+        assertNotNull("Other serial numbers should not be affected.", OcspResponseCache.INSTANCE.getResponse(otherCertId));
+        assertEquals((long) RESPONSE.length + OcspResponseCacheEntry.ENTRY_OVERHEAD, OcspResponseCache.INSTANCE.getCurrentSize());
+    }
+
+    @Test
+    public void testNotCachedAfterConcurrentInvalidation() {
+        final CertificateID certId = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(4715));
+        final long generation = OcspResponseCache.INSTANCE.getGeneration();
+        // Status changes while the response is being produced
+        OcspResponseCache.INSTANCE.invalidate(BigInteger.valueOf(4715));
+        assertFalse("Response produced before an invalidation should not be cached.", OcspResponseCache.INSTANCE.putResponse(certId, RESPONSE,
+                System.currentTimeMillis() + 60000L, MAX_AGE, null, generation));
+        assertNull(OcspResponseCache.INSTANCE.getResponse(certId));
+    }
+
+    @Test
+    public void testEvictionByCount() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES, "2");
+        final long nextUpdate = System.currentTimeMillis() + 60000L;
+        final CertificateID first = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(1));
+        final CertificateID second = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(2));
+        final CertificateID third = makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(3));
+        final long evictions = OcspResponseCache.INSTANCE.getEvictions();
+        assertTrue(put(first, nextUpdate));
+        assertTrue(put(second, nextUpdate));
+        // Use the first entry, so that the second one is the least recently used
+        assertNotNull(OcspResponseCache.INSTANCE.getResponse(first));
+        assertTrue(put(third, nextUpdate));
+        assertEquals(2, OcspResponseCache.INSTANCE.size());
+        assertEquals(evictions + 1, OcspResponseCache.INSTANCE.getEvictions());
+        assertNotNull(OcspResponseCache.INSTANCE.getResponse(first));
+        assertNull("Least recently used entry should have been evicted.", OcspResponseCache.INSTANCE.getResponse(second));
+        assertNotNull(OcspResponseCache.INSTANCE.getResponse(third));
+    }
+
+    @Test
+    public void testEvictionBySize() {
+        final long entrySize = RESPONSE.length + OcspResponseCacheEntry.ENTRY_OVERHEAD;
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_SIZE, String.valueOf(3 * entrySize));
+        final long nextUpdate = System.currentTimeMillis() + 60000L;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(put(makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(100 + i)), nextUpdate));
+        }
+        assertEquals(3, OcspResponseCache.INSTANCE.size());
+        assertEquals(3 * entrySize, OcspResponseCache.INSTANCE.getCurrentSize());
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_SIZE, String.valueOf(entrySize - 1));
+        assertFalse("Response larger than the cache should not be cached.", put(makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.ONE), nextUpdate));
+    }
+
+    @Test
+    public void testFlush() {
+        assertTrue(put(makeCertId(OIWObjectIdentifiers.idSHA1, 1, BigInteger.valueOf(4716)), System.currentTimeMillis() + 60000L));
+        OcspResponseCache.INSTANCE.flush();
+        assertEquals(0, OcspResponseCache.INSTANCE.size());
+        assertEquals(0, OcspResponseCache.INSTANCE.getCurrentSize());
+    }
+
+    private boolean put(final CertificateID certId, final long nextUpdate) {
+        return OcspResponseCache.INSTANCE.putResponse(certId, RESPONSE, nextUpdate, MAX_AGE, null, OcspResponseCache.INSTANCE.getGeneration());
+    }
+
+    private CertificateID makeCertId(final org.bouncycastle.asn1.ASN1ObjectIdentifier hashAlgorithm, final int issuer, final BigInteger serialNumber) {
+        final byte[] issuerNameHash = new byte[20];
+        final byte[] issuerKeyHash = new byte[20];
+        issuerNameHash[0] = (byte) issuer;
+        issuerKeyHash[0] = (byte) issuer;
+        return new CertificateID(new CertID(new AlgorithmIdentifier(hashAlgorithm, DERNull.INSTANCE), new DEROctetString(issuerNameHash),
+                new DEROctetString(issuerKeyHash), new ASN1Integer(serialNumber)));
+    }
+}
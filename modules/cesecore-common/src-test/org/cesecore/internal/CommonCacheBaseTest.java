@@ -0,0 +1,190 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test of {@link CommonCacheBase}
+ *
+ * @version $Id$
+ */
+public class CommonCacheBaseTest {
+
+    private static class TestCache extends CommonCacheBase<String> {
+        private final long cacheTime;
+        private final long maxCacheLifeTime;
+
+        private TestCache(final long cacheTime, final long maxCacheLifeTime) {
+            this.cacheTime = cacheTime;
+            this.maxCacheLifeTime = maxCacheLifeTime;
+        }
+
+        @Override
+        protected long getCacheTime() {
+            return cacheTime;
+        }
+
+        @Override
+        protected long getMaxCacheLifeTime() {
+            return maxCacheLifeTime;
+        }
+    }
+
+    @Test
+    public void testOnlyOneThreadReloadsExpiredEntry() throws Exception {
+        final TestCache cache = new TestCache(50, 0);
+        cache.updateWith(1, 1, "name1", "object1");
+        Thread.sleep(100);
+        final int threads = 16;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        barrier.await();
+                        return cache.shouldCheckForUpdates(1);
+                    }
+                }));
+            }
+            int reloading = 0;
+            for (final Future<Boolean> future : futures) {
+                if (future.get()) {
+                    reloading++;
+                }
+            }
+            assertEquals("Only one thread should reload the expired entry.", 1, reloading);
+            assertEquals(1, cache.getReloadCount());
+        } finally {
+            executorService.shutdownNow();
+        }
+        // The other threads keep using the expired object while it is reloaded
+        assertEquals("object1", cache.getEntry(1));
+    }
+
+    @Test
+    public void testNameToIdMapping() {
+        final TestCache cache = new TestCache(60000, 0);
+        cache.updateWith(1, 1, "name1", "object1");
+        cache.updateWith(2, 1, "name2", "object2");
+        assertEquals(Integer.valueOf(1), cache.getNameToIdMap().get("name1"));
+        // Rename
+        cache.updateWith(1, 2, "renamed1", "object1");
+        assertNull(cache.getNameToIdMap().get("name1"));
+        assertEquals(Integer.valueOf(1), cache.getNameToIdMap().get("renamed1"));
+        assertEquals("renamed1", cache.getName(1));
+        // Same digest does not update the entry
+        cache.updateWith(2, 1, "other", "other");
+        assertEquals("object2", cache.getEntry(2));
+        cache.removeEntry(2);
+        assertNull(cache.getEntry(2));
+        assertEquals(1, cache.getNameToIdMap().size());
+        cache.updateWith(3, 1, "name3", "object3");
+        cache.replaceCacheWith(Arrays.asList(3));
+        assertNull(cache.getEntry(1));
+        assertEquals(1, cache.getNameToIdMap().size());
+        assertEquals(Integer.valueOf(3), cache.getNameToIdMap().get("name3"));
+        cache.flush();
+        assertTrue(cache.getNameToIdMap().isEmpty());
+        assertTrue(cache.getAllEntries().isEmpty());
+    }
+
+    @Test
+    public void testStaleEntriesArePurgedOnUpdate() throws InterruptedException {
+        final TestCache cache = new TestCache(10, 50);
+        cache.updateWith(1, 1, "name1", "object1");
+        Thread.sleep(100);
+        cache.updateWith(2, 1, "name2", "object2");
+        assertNull("Entry older than the max cache life time should have been purged.", cache.getEntry(1));
+        assertNull(cache.getNameToIdMap().get("name1"));
+        assertEquals("object2", cache.getEntry(2));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getUpdateCount());
+    }
+
+    @Test
+    public void testUnchangedUpdatesOnlyPurgePeriodically() throws InterruptedException {
+        final TestCache cache = new TestCache(10, 400);
+        cache.updateWith(1, 1, "name1", "object1");
+        Thread.sleep(300);
+        // Changed entry, so stale entries are purged. Entry 1 is not stale yet.
+        cache.updateWith(2, 1, "name2", "object2");
+        assertEquals("object1", cache.getEntry(1));
+        Thread.sleep(150);
+        // Entry 1 is stale now, but an update with the same digest does not scan the cache until half the max cache life time has passed
+        cache.updateWith(2, 1, "name2", "object2");
+        assertEquals("object1", cache.getEntry(1));
+        Thread.sleep(100);
+        cache.updateWith(2, 1, "name2", "object2");
+        assertNull("Stale entry should have been purged.", cache.getEntry(1));
+        assertEquals(2, cache.getUpdateCount());
+    }
+
+    @Test
+    public void testRevalidateByRowVersion() throws InterruptedException {
+        final TestCache cache = new TestCache(100, 0);
+        assertFalse("Empty cache should not be revalidated.", cache.shouldRevalidate());
+        cache.updateWith(1, 1, "name1", "object1");
+        cache.setRowVersion(1, 5);
+        cache.updateWith(2, 1, "name2", "object2");
+        cache.setRowVersion(2, 7);
+        cache.updateWith(3, 1, "name3", "object3");
+        cache.updateWith(4, 1, "name4", "object4");
+        cache.setRowVersion(4, 1);
+        assertTrue(cache.shouldRevalidate());
+        assertFalse("Only one caller should revalidate at a time.", cache.shouldRevalidate());
+        Thread.sleep(150);
+        final Map<Integer, Integer> rowVersions = new HashMap<>();
+        rowVersions.put(1, 5);
+        rowVersions.put(2, 8);
+        rowVersions.put(3, 1);
+        cache.revalidate(rowVersions);
+        assertEquals(1, cache.getRevalidationCount());
+        assertFalse("Unchanged entry should be kept for another cache time.", cache.shouldCheckForUpdates(1));
+        assertTrue("Changed entry should be reloaded.", cache.shouldCheckForUpdates(2));
+        assertTrue("Entry without a known row version should be reloaded.", cache.shouldCheckForUpdates(3));
+        assertNull("Entry that is no longer in the database should be removed.", cache.getEntry(4));
+        assertNull(cache.getNameToIdMap().get("name4"));
+        // Changed entries keep being used until they have been reloaded
+        assertEquals("object2", cache.getEntry(2));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        final TestCache cache = new TestCache(-1, 0);
+        cache.updateWith(1, 1, "name1", "object1");
+        assertNull(cache.getEntry(1));
+        assertTrue(cache.shouldCheckForUpdates(1));
+        assertFalse(cache.getNameToIdMap().containsKey("name1"));
+    }
+}
@@ -22,6 +22,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -338,13 +339,12 @@ public class RsaKeyValidatorTest {
 
         BigInteger modulus2048 = new BigInteger(
                 "135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781");
-        BigInteger modulus4096 = new BigInteger(
-                "135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781");
-        BigInteger modulus8192 = new BigInteger(
-                "135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781");
+        // Product of two primes, without small factors like a real RSA modulus
+        final Random random = new Random(4711);
+        BigInteger modulus4096 = BigInteger.probablePrime(2048, random).multiply(BigInteger.probablePrime(2048, random));
         // Can be a time consuming task!
         int factor = 1522342;
-        profileHasSmallerFactor(factor, new BigInteger[] { modulus2048, modulus4096, modulus8192 });
+        profileHasSmallerFactor(factor, new BigInteger[] { modulus2048, modulus4096 });
 
         log.trace("<test01HasSmallerFactorThan()");
     }
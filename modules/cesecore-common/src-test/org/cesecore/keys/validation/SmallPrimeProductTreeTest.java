@@ -0,0 +1,86 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.validation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SmallPrimeProductTree}.
+ */
+public class SmallPrimeProductTreeTest {
+
+    @Test
+    public void primesUpToBound() {
+        assertArrayEquals(new int[0], SmallPrimeProductTree.forPrimesUpTo(1).getPrimes());
+        assertArrayEquals(new int[] { 2 }, SmallPrimeProductTree.forPrimesUpTo(2).getPrimes());
+        assertArrayEquals(new int[] { 2, 3, 5, 7, 11, 13 }, SmallPrimeProductTree.forPrimesUpTo(16).getPrimes());
+        assertEquals(BigInteger.valueOf(2 * 3 * 5 * 7 * 11 * 13), SmallPrimeProductTree.forPrimesUpTo(13).getProduct());
+        assertEquals("There are 133 primes less than 753.", 133, SmallPrimeProductTree.forPrimesUpTo(753).getPrimes().length);
+        assertSame("Trees should be shared.", SmallPrimeProductTree.forPrimesUpTo(753), SmallPrimeProductTree.forPrimesUpTo(753));
+    }
+
+    @Test
+    public void commonFactor() {
+        final SmallPrimeProductTree tree = SmallPrimeProductTree.forPrimesUpTo(753);
+        assertTrue(tree.hasCommonFactor(BigInteger.ZERO));
+        assertFalse(tree.hasCommonFactor(BigInteger.ONE));
+        assertTrue(tree.hasCommonFactor(BigInteger.valueOf(751L * 757L)));
+        assertFalse(tree.hasCommonFactor(BigInteger.valueOf(757L * 761L)));
+        assertFalse(SmallPrimeProductTree.forPrimesUpTo(1).hasCommonFactor(BigInteger.ZERO));
+        // Same result as trial division
+        final Random random = new Random(4711);
+        for (int i = 0; i < 200; i++) {
+            final BigInteger n = new BigInteger(2048, random).setBit(0).multiply(BigInteger.valueOf(random.nextInt(2000) + 1));
+            boolean expected = false;
+            for (final int prime : tree.getPrimes()) {
+                expected |= n.mod(BigInteger.valueOf(prime)).signum() == 0;
+            }
+            assertEquals(n.toString(), expected, tree.hasCommonFactor(n));
+        }
+    }
+
+    @Test
+    public void reduce() {
+        final int[] primes = new int[] { 167, 3, 5, 7, 11, 13, 17 };
+        final SmallPrimeProductTree tree = SmallPrimeProductTree.forPrimes(primes);
+        assertEquals(BigInteger.valueOf(167L * 3 * 5 * 7 * 11 * 13 * 17), tree.getProduct());
+        final Random random = new Random(4711);
+        for (int i = 0; i < 50; i++) {
+            final BigInteger n = new BigInteger(4096, random);
+            for (final int prime : primes) {
+                assertEquals(n.mod(BigInteger.valueOf(prime)), tree.reduce(n).mod(BigInteger.valueOf(prime)));
+            }
+        }
+        assertEquals(tree.getProduct().subtract(BigInteger.ONE), tree.reduce(BigInteger.ONE.negate()));
+    }
+
+    @Test
+    public void onlyCurrentBoundIsKept() {
+        final SmallPrimeProductTree tree = SmallPrimeProductTree.forPrimesUpTo(100);
+        assertArrayEquals(new int[] { 2, 3, 5, 7 }, SmallPrimeProductTree.forPrimesUpTo(10).getPrimes());
+        final SmallPrimeProductTree replaced = SmallPrimeProductTree.forPrimesUpTo(100);
+        assertNotSame("Tree of the previous bound should not be kept", tree, replaced);
+        assertEquals(tree.getProduct(), replaced.getProduct());
+        assertSame(replaced, SmallPrimeProductTree.forPrimesUpTo(100));
+    }
+}
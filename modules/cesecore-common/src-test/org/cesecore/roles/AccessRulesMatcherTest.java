@@ -0,0 +1,89 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.roles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test of the compiled access rules, which must give the same result as {@link AccessRulesHelper#hasAccessToResource(HashMap, String)}.
+ *
+ * @version $Id$
+ */
+public class AccessRulesMatcherTest {
+
+    private static final String[] SEGMENTS = { "", "a", "b", "ab", "ca", "1", "-1", "administrator", "ra_functionality", "view_end_entity" };
+
+    @Test
+    public void testLongestPathWins() {
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/", Role.STATE_ALLOW);
+        accessRules.put("/ca/", Role.STATE_DENY);
+        accessRules.put("/ca/1/", Role.STATE_ALLOW);
+        accessRules.put("/ra_functionality", Role.STATE_DENY);
+        final AccessRulesMatcher accessRulesMatcher = new AccessRulesMatcher(accessRules);
+        assertTrue(accessRulesMatcher.hasAccessToResource("/"));
+        assertTrue(accessRulesMatcher.hasAccessToResource("/administrator"));
+        assertFalse(accessRulesMatcher.hasAccessToResource("/ca"));
+        assertFalse(accessRulesMatcher.hasAccessToResource("/ca/"));
+        assertFalse(accessRulesMatcher.hasAccessToResource("/ca/2"));
+        assertFalse(accessRulesMatcher.hasAccessToResource("/ca/11"));
+        assertTrue(accessRulesMatcher.hasAccessToResource("/ca/1"));
+        assertTrue(accessRulesMatcher.hasAccessToResource("/ca/1/"));
+        assertTrue(accessRulesMatcher.hasAccessToResource("/ca/1/x/y"));
+        assertFalse(accessRulesMatcher.hasAccessToResource("/ra_functionality/view_end_entity"));
+        assertTrue(accessRulesMatcher.hasAccessToResource("/ra_functionality_other"));
+        assertFalse(accessRulesMatcher.hasAccessToResource(null));
+        assertFalse(accessRulesMatcher.hasAccessToResource(""));
+        assertFalse(accessRulesMatcher.hasAccessToResource("ca/1"));
+        assertTrue(accessRulesMatcher.hasAccessToResources("/administrator", "/ca/1"));
+        assertFalse(accessRulesMatcher.hasAccessToResources("/administrator", "/ca/2"));
+        assertFalse(AccessRulesMatcher.EMPTY.hasAccessToResource("/"));
+    }
+
+    @Test
+    public void testSameResultAsAccessRulesHelper() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final HashMap<String, Boolean> accessRules = new HashMap<>();
+            final int ruleCount = random.nextInt(8);
+            for (int j = 0; j < ruleCount; j++) {
+                accessRules.put(randomResource(random), random.nextBoolean());
+            }
+            final AccessRulesMatcher accessRulesMatcher = new AccessRulesMatcher(accessRules);
+            for (int j = 0; j < 50; j++) {
+                final String resource = randomResource(random);
+                assertEquals("Different result for " + resource + " with rules " + accessRules, AccessRulesHelper.hasAccessToResource(accessRules, resource),
+                        accessRulesMatcher.hasAccessToResource(resource));
+            }
+        }
+    }
+
+    private String randomResource(final Random random) {
+        final StringBuilder sb = new StringBuilder();
+        final int depth = random.nextInt(4);
+        for (int i = 0; i < depth; i++) {
+            sb.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        if (sb.length() == 0 || random.nextBoolean()) {
+            sb.append('/');
+        }
+        return sb.toString();
+    }
+}
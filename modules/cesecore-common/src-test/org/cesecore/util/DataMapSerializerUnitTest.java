@@ -0,0 +1,157 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cesecore.certificates.certificateprofile.CertificatePolicy;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.crl.RevocationReasons;
+import org.junit.Test;
+
+/**
+ * Tests the binary format of {@link DataMapSerializer} and {@link LazyDataMap}.
+ */
+public class DataMapSerializerUnitTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void certificateProfileSameAsXml() throws IOException {
+        final CertificateProfile certificateProfile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        certificateProfile.setAvailableCAs(new ArrayList<>(Arrays.asList(-1, 4711)));
+        certificateProfile.setCRLDistributionPointURI("http://crl.example.com/crl?issuer=CN%3DÅäö CA");
+        certificateProfile.setCertificatePolicies(new ArrayList<>(Arrays.asList(new CertificatePolicy("2.5.29.32.0", null, null))));
+        final Map<Object, Object> putMap = new Base64PutHashMap();
+        putMap.putAll((Map<Object, Object>) certificateProfile.saveData());
+        final String binary = DataMapSerializer.encodeBinary(putMap);
+        final String xml = DataMapSerializer.encodeXml(putMap);
+        assertTrue(DataMapSerializer.isBinary(binary));
+        assertFalse(DataMapSerializer.isBinary(xml));
+        assertTrue("Binary data should be smaller than XML.", binary.length() < xml.length() / 2);
+        final LinkedHashMap<Object, Object> fromXml = DataMapSerializer.decode(xml);
+        final LinkedHashMap<Object, Object> fromBinary = DataMapSerializer.decode(binary);
+        assertTrue(fromBinary instanceof LazyDataMap);
+        // Compare before materializing, and then the string form which is used for database integrity protection
+        for (final Object key : fromXml.keySet()) {
+            assertEquals(String.valueOf(key), fromXml.get(key), fromBinary.get(key));
+        }
+        assertEquals(fromXml.toString(), fromBinary.toString());
+        assertEquals(new ArrayList<>(fromXml.keySet()), new ArrayList<>(fromBinary.keySet()));
+        // Loaded without copying, and still lazy
+        final CertificateProfile loaded = new CertificateProfile(0);
+        final LinkedHashMap<Object, Object> lazy = DataMapSerializer.decode(binary);
+        loaded.loadData(lazy);
+        assertTrue(loaded.getRawData() == lazy);
+        assertEquals(Arrays.asList(-1, 4711), loaded.getAvailableCAs());
+        assertEquals("http://crl.example.com/crl?issuer=CN%3DÅäö CA", loaded.getCRLDistributionPointURI());
+        assertEquals("2.5.29.32.0", loaded.getCertificatePolicies().get(0).getPolicyID());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lazyValues() throws IOException {
+        final Properties properties = new Properties();
+        properties.put("defaultKey", "signKey");
+        final Map<Object, Object> nested = new LinkedHashMap<>();
+        nested.put(1, new HashSet<>(Arrays.asList("a", "b")));
+        final Map<Object, Object> map = new Base64PutHashMap();
+        map.put("version", 2.5f);
+        map.put("null", null);
+        map.put("negative", -123456789012L);
+        map.put("date", new Date(1588783538788L));
+        map.put("double", Double.NaN);
+        map.put("nonprintable", "line1\nline2");
+        // Stored as an ArrayList, while XMLEncoder would leave it out
+        map.put("list", Arrays.asList(1, -2, Integer.MIN_VALUE));
+        map.put("properties", properties);
+        map.put("nested", nested);
+        map.put("enum", RevocationReasons.KEYCOMPROMISE);
+        map.put(42, Boolean.TRUE);
+        final LinkedHashMap<Object, Object> decoded = DataMapSerializer.decode(DataMapSerializer.encodeBinary(map));
+        assertEquals(11, decoded.size());
+        assertTrue(decoded.containsKey("null"));
+        assertFalse(decoded.containsKey("missing"));
+        assertNull(decoded.get("missing"));
+        assertEquals(2.5f, decoded.get("version"));
+        assertEquals(-123456789012L, decoded.get("negative"));
+        assertEquals(new Date(1588783538788L), decoded.get("date"));
+        assertEquals(Double.NaN, decoded.get("double"));
+        assertEquals("Base64 encoded strings should be decoded on get.", "line1\nline2", decoded.get("nonprintable"));
+        assertEquals(properties, decoded.get("properties"));
+        assertEquals(Properties.class, decoded.get("properties").getClass());
+        assertEquals(nested, decoded.get("nested"));
+        assertEquals(RevocationReasons.KEYCOMPROMISE, decoded.get("enum"));
+        assertEquals(Boolean.TRUE, decoded.get(42));
+        // Changes of values that were read before materializing are kept
+        final List<Integer> list = (List<Integer>) decoded.get("list");
+        assertEquals(Arrays.asList(1, -2, Integer.MIN_VALUE), list);
+        list.add(3);
+        decoded.put("added", "value");
+        assertEquals(Arrays.asList(1, -2, Integer.MIN_VALUE, 3), decoded.get("list"));
+        assertEquals(12, decoded.size());
+        assertEquals(Arrays.asList("version", "null", "negative", "date", "double", "nonprintable", "list", "properties", "nested", "enum", 42, "added"),
+                new ArrayList<>(decoded.keySet()));
+        assertEquals("B64:bGluZTEKbGluZTI=", decoded.entrySet().stream().filter(e -> "nonprintable".equals(e.getKey())).findFirst().get().getValue());
+    }
+
+    @Test
+    public void serializedAsPlainMap() throws Exception {
+        final Map<Object, Object> map = new Base64PutHashMap();
+        map.put("name", "Åäö");
+        final LinkedHashMap<Object, Object> decoded = DataMapSerializer.decode(DataMapSerializer.encodeBinary(map));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            out.writeObject(decoded);
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            final Object deserialized = in.readObject();
+            assertEquals(Base64GetHashMap.class, deserialized.getClass());
+            assertEquals("Åäö", ((Map<?, ?>) deserialized).get("name"));
+        }
+    }
+
+    @Test
+    public void legacyAndInvalidData() throws IOException {
+        final Map<Object, Object> map = new Base64PutHashMap();
+        map.put("version", 1.0f);
+        assertEquals(Base64GetHashMap.class, DataMapSerializer.decode(DataMapSerializer.encodeXml(map)).getClass());
+        for (final String invalid : Arrays.asList(DataMapSerializer.PREFIX + "!", DataMapSerializer.PREFIX + "AgE=", DataMapSerializer.PREFIX + "AQEBBQ==",
+                DataMapSerializer.PREFIX + "AQEFBQ==")) {
+            try {
+                DataMapSerializer.decode(invalid);
+                fail("Should not decode " + invalid);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cesecore.configuration.ConfigurationBase;
+
+/**
+ * The last sequence number of each node, up to which the integrity protected audit log has been verified without errors.
+ * Incremental verifications continue after these sequence numbers.
+ *
+ * @version $Id$
+ */
+public class AuditLogVerificationCheckpoint extends ConfigurationBase implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String CONFIGURATION_ID = "AUDIT_LOG_VERIFICATION";
+
+    private static final String NODE_KEY_PREFIX = "lastVerifiedSequenceNumber.";
+
+    @Override
+    public void upgrade() {
+    }
+
+    @Override
+    public String getConfigurationId() {
+        return CONFIGURATION_ID;
+    }
+
+    /** @return the last verified sequence number of the node, or -1 if no records of the node have been verified */
+    public long getLastVerifiedSequenceNumber(final String nodeId) {
+        final Object value = data.get(NODE_KEY_PREFIX + nodeId);
+        return value == null ? -1L : (Long) value;
+    }
+
+    /** Sets the last verified sequence number of the node, unless a later one has already been set */
+    public void setLastVerifiedSequenceNumber(final String nodeId, final long sequenceNumber) {
+        if (sequenceNumber > getLastVerifiedSequenceNumber(nodeId)) {
+            data.put(NODE_KEY_PREFIX + nodeId, Long.valueOf(sequenceNumber));
+        }
+    }
+
+    public Properties getAsProperties() {
+        final Properties properties = new Properties();
+        for (final Map.Entry<Object, Object> entry : data.entrySet()) {
+            if (entry.getKey().toString().startsWith(NODE_KEY_PREFIX)) {
+                properties.put(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        return properties;
+    }
+}
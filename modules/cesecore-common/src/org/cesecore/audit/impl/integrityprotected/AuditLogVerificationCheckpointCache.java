@@ -0,0 +1,87 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.configuration.ConfigurationBase;
+import org.cesecore.configuration.ConfigurationCache;
+
+/**
+ * Cache of the audit log verification checkpoint.
+ *
+ * @version $Id$
+ */
+public class AuditLogVerificationCheckpointCache implements ConfigurationCache {
+
+    /**
+     * This cache may be unsynchronized between multiple instances of EJBCA, but is common to all
+     * threads in the same VM. Set volatile to make it thread friendly.
+     */
+    private volatile AuditLogVerificationCheckpoint configurationCache = null;
+    /** help variable used to control that update isn't performed to often. */
+    private volatile long lastupdatetime = -1;
+
+    public AuditLogVerificationCheckpointCache() {}
+
+    @Override
+    public boolean needsUpdate() {
+        return configurationCache == null || lastupdatetime + CesecoreConfiguration.getCacheGlobalConfigurationTime() <= System.currentTimeMillis();
+    }
+
+    @Override
+    public void clearCache() {
+        configurationCache = null;
+    }
+
+    @Override
+    public String getConfigId() {
+        return AuditLogVerificationCheckpoint.CONFIGURATION_ID;
+    }
+
+    @Override
+    public void saveData() {
+        configurationCache.saveData();
+    }
+
+    @Override
+    public ConfigurationBase getConfiguration() {
+        return configurationCache;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public ConfigurationBase getConfiguration(HashMap data) {
+        ConfigurationBase returnval = new AuditLogVerificationCheckpoint();
+        returnval.loadData(data);
+        return returnval;
+    }
+
+    @Override
+    public void updateConfiguration(final ConfigurationBase configuration) {
+        this.configurationCache = (AuditLogVerificationCheckpoint) configuration;
+        lastupdatetime = System.currentTimeMillis();
+    }
+
+    @Override
+    public ConfigurationBase getNewConfiguration() {
+        return new AuditLogVerificationCheckpoint();
+    }
+
+    @Override
+    public Properties getAllProperties() {
+        return configurationCache.getAsProperties();
+    }
+}
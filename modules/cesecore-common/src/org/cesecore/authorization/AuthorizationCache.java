@@ -24,6 +24,7 @@ import org.cesecore.authentication.AuthenticationFailedException;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.access.AuthorizationCacheReload;
 import org.cesecore.authorization.access.AuthorizationCacheReloadListener;
+import org.cesecore.roles.AccessRulesMatcher;
 import org.cesecore.util.ValidityDate;
 
 /**
@@ -33,6 +34,7 @@ import org.cesecore.util.ValidityDate;
  * - Concurrent cache misses for the same AuthenticationToken will only lead to a single call-back while the other threads wait
  * - Never return stale entries (when signaled that newer data might be available)
  * - Supports background reload via the rebuild(...) method which also purges unused entries
+ * - Access rules are compiled into an {@link AccessRulesMatcher} once per entry, so authorization checks don't have to parse the rules
  * 
  * @version $Id$
  */
@@ -70,6 +72,7 @@ public enum AuthorizationCache {
     
     private class AuthorizationCacheEntry {
         HashMap<String, Boolean> accessRules;
+        AccessRulesMatcher accessRulesMatcher;
         int updateNumber = 0;
         long timeOfLastUse = 0L;
         AuthenticationToken authenticationToken;
@@ -159,6 +162,25 @@ public enum AuthorizationCache {
         if (authenticationToken==null || authorizationCacheCallback==null) {
             return new AuthorizationResult(new HashMap<String,Boolean>(), 0);
         }
+        final AuthorizationCacheEntry entry = getEntry(authenticationToken, authorizationCacheCallback);
+        return new AuthorizationResult(entry.accessRules, entry.updateNumber);
+    }
+
+    /**
+     * @return the compiled access rules granted to the specified authenticationToken using the callback to load them if needed. Never null.
+     * The same instance is returned until the access rules of the authenticationToken are reloaded.
+     */
+    public AccessRulesMatcher getAccessRulesMatcher(final AuthenticationToken authenticationToken, final AuthorizationCacheCallback authorizationCacheCallback) throws AuthenticationFailedException {
+        if (authenticationToken==null || authorizationCacheCallback==null) {
+            return AccessRulesMatcher.EMPTY;
+        }
+        final AccessRulesMatcher accessRulesMatcher = getEntry(authenticationToken, authorizationCacheCallback).accessRulesMatcher;
+        // Only null if loading the entry failed in another thread
+        return accessRulesMatcher==null ? AccessRulesMatcher.EMPTY : accessRulesMatcher;
+    }
+
+    /** @return the up to date cache entry for the authenticationToken, loading it with the callback if needed */
+    private AuthorizationCacheEntry getEntry(final AuthenticationToken authenticationToken, final AuthorizationCacheCallback authorizationCacheCallback) throws AuthenticationFailedException {
         final String key = authenticationToken.getUniqueId();
         final AuthorizationCacheEntry authorizationCacheEntry = new AuthorizationCacheEntry();
         AuthorizationCacheEntry ret = cacheMap.putIfAbsent(key, authorizationCacheEntry);
@@ -178,6 +200,7 @@ public enum AuthorizationCache {
                     // Cache a copy of the loaded access rules map
                     ret.accessRules.putAll(authorizationResult.accessRules);
                 }
+                ret.accessRulesMatcher = new AccessRulesMatcher(ret.accessRules);
             } finally {
                 // Ensure that we release any waiting thread
                 ret.countDownLatch.countDown();
@@ -203,13 +226,13 @@ public enum AuthorizationCache {
                         log.debug("Removed entry for key '" + key + "' since its updateNumber was " + ret.updateNumber + ".");
                     }
                 }
-                return getAuthorizationResult(authenticationToken, authorizationCacheCallback);
+                return getEntry(authenticationToken, authorizationCacheCallback);
             }
             // Don't care about last time of use here, just be happy that it was found if it was found 
         }
         // Weak indication of last use, so rebuild can eventually purge unused entries
         ret.timeOfLastUse = System.currentTimeMillis();
-        return new AuthorizationResult(ret.accessRules, ret.updateNumber);
+        return ret;
     }
     
     public int getLastUpdateNumber() {
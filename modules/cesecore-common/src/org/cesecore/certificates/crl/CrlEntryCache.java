@@ -0,0 +1,458 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+import org.apache.log4j.Logger;
+
+import com.keyfactor.util.CertTools;
+
+/**
+ * Node local cache of the encoded entries of the last base CRL of each CA and CRL partition, used to assemble the next base CRL
+ * incrementally.
+ * <p>
+ * For each CA and CRL partition, the cache holds the DER encoded revokedCertificates entries of the last base CRL in one file,
+ * sorted by serial number, and the serial number, expire date and fingerprint of each entry in an index file. The next base CRL
+ * is assembled by copying the encoded entries of the last one, while splicing in the entries of the certificates whose revocation
+ * status changed since then. Only the changed entries are read from the database and encoded, and only the TBSCertList header
+ * and the signature are computed for the whole CRL. Entries that expired before the last base CRL are included one last time,
+ * like for CRLs created from all revoked certificates, and are left out of the next CRL. The expire date limit is stored in the
+ * index file, so expired entries are removed even if archiving their certificates did not change their update time.
+ * <p>
+ * The cached entries of a CA and partition are only used if they were written for the last base CRL, as recorded in the index
+ * file, and with the same settings. Otherwise, e.g. when the last CRL was created on another node, the CRL is created from the
+ * database as usual, and the cache is rewritten from it.
+ * <p>
+ * Applying the same change twice gives the same result, so the changes may be read with a safety margin. Changes that are committed
+ * later than the margin after their update time are missed though, e.g. when many certificates are revoked in one long transaction.
+ * The number of entries is therefore compared with the number of revoked certificates in the database, and the cached entries are not
+ * used if they differ.
+ */
+public class CrlEntryCache {
+
+    private static final Logger log = Logger.getLogger(CrlEntryCache.class);
+
+    private static final int MAGIC = 0x43524c45;
+    private static final int VERSION = 2;
+    /**
+     * Magic, version, CRL number, options, incremental count, entry count, entries length, the time of the last read changes and
+     * the expire date before which entries were included for the last time
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 4 + 4 + 4 + 8 + 8 + 8;
+    private static final int CRL_NUMBER_OFFSET = 8;
+    /** CRL number of index files that have not been committed */
+    private static final int NO_CRL_NUMBER = -1;
+    private static final int OPTION_KEEP_EXPIRED_CERTS = 1;
+    private static final int OPTION_ALLOW_INVALIDITY_DATE = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+
+    /** @param directory directory of the cache files. It is created if it does not exist. */
+    public CrlEntryCache(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Prepares the entries of a base CRL that is created from all revoked certificates, and the cache files for the next CRL.
+     *
+     * @param issuerDN the issuer of the CRL
+     * @param crlPartitionIndex the CRL partition
+     * @param keepExpiredCertsOnCrl true if expired certificates are kept on the CRL
+     * @param allowInvalidityDate true if invalidity dates are included in the CRL
+     * @param revokedCertInfos all entries of the CRL, which must not contain expired certificates that should be dropped
+     * @param readTime the time (Date.getTime()) when reading the entries from the database started
+     * @param expiredBefore entries that expire before this date are included in this CRL for the last time, and their certificates are
+     *      archived by the caller. They are left out of the next CRL, unless expired certificates are kept on the CRL.
+     * @return the prepared entries. They must be committed or discarded.
+     * @throws IOException if the cache files could not be written
+     */
+    public IncrementalCrlEntries createEntries(final String issuerDN, final int crlPartitionIndex, final boolean keepExpiredCertsOnCrl,
+            final boolean allowInvalidityDate, final Collection<RevokedCertInfo> revokedCertInfos, final long readTime, final long expiredBefore)
+            throws IOException {
+        Files.createDirectories(directory);
+        return merge(getBaseName(issuerDN, crlPartitionIndex), null, toCollection(revokedCertInfos), keepExpiredCertsOnCrl ? Long.MIN_VALUE : expiredBefore,
+                false, getOptions(keepExpiredCertsOnCrl, allowInvalidityDate), 0, readTime);
+    }
+
+    /**
+     * Prepares the entries of a base CRL from the cached entries of the last base CRL and the changes since then.
+     *
+     * @param issuerDN the issuer of the CRL
+     * @param crlPartitionIndex the CRL partition
+     * @param keepExpiredCertsOnCrl true if expired certificates are kept on the CRL
+     * @param allowInvalidityDate true if invalidity dates are included in the CRL
+     * @param lastBaseCrlNumber the CRL number of the last base CRL
+     * @param fullInterval create every n:th base CRL from all revoked certificates, or 0 to never do so
+     * @param changesAfter returns the latest status of the certificates whose status changed after the given time (Date.getTime()),
+     *      which is when reading the changes for the cached entries started. Entries that are not revoked are removed from the CRL.
+     * @param revokedCount returns the number of revoked certificates in the database, which is read after the changes. If it does not
+     *      match the number of entries, some changes were missed and null is returned.
+     * @param expiredBefore entries that expire before this date are listed by {@link IncrementalCrlEntries#getExpiredFingerprints()},
+     *      unless expired certificates are kept on the CRL. Like for CRLs created from all revoked certificates, they are included in
+     *      this CRL one last time, and are left out of the next one.
+     * @return the prepared entries, which must be committed or discarded, or null if the cache can not be used for this CRL
+     * @throws IOException if the cache files could not be read or written
+     */
+    public IncrementalCrlEntries updateEntries(final String issuerDN, final int crlPartitionIndex, final boolean keepExpiredCertsOnCrl,
+            final boolean allowInvalidityDate, final int lastBaseCrlNumber, final int fullInterval,
+            final LongFunction<Collection<RevokedCertInfo>> changesAfter, final LongSupplier revokedCount, final long expiredBefore) throws IOException {
+        final String baseName = getBaseName(issuerDN, crlPartitionIndex);
+        final int options = getOptions(keepExpiredCertsOnCrl, allowInvalidityDate);
+        final Path indexFile = directory.resolve(baseName + ".idx");
+        final EntryReader previous;
+        try {
+            previous = new EntryReader(indexFile, null);
+        } catch (NoSuchFileException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("No cached CRL entries for '" + issuerDN + "' partition " + crlPartitionIndex + ".");
+            }
+            return null;
+        }
+        try {
+            final String reason;
+            if (previous.crlNumber != lastBaseCrlNumber) {
+                reason = "they belong to CRL number " + previous.crlNumber + " and the last base CRL is number " + lastBaseCrlNumber;
+            } else if (previous.options != options) {
+                reason = "the CRL settings of the CA have changed";
+            } else if (fullInterval > 0 && previous.incrementalCount + 1 >= fullInterval) {
+                reason = "every " + fullInterval + ":th base CRL is created from all revoked certificates";
+            } else {
+                reason = null;
+            }
+            if (reason != null) {
+                log.info("Not using the cached CRL entries for '" + issuerDN + "' partition " + crlPartitionIndex + ", since " + reason + ".");
+                return null;
+            }
+            previous.openEntries(directory.resolve(baseName + "-" + previous.crlNumber + ".der"));
+            final long readTime = System.currentTimeMillis();
+            final RevokedCertInfoCollection changes = toCollection(changesAfter.apply(previous.readTime));
+            final IncrementalCrlEntries entries = merge(baseName, previous, changes, keepExpiredCertsOnCrl ? Long.MIN_VALUE : expiredBefore, true,
+                    options, previous.incrementalCount + 1, readTime);
+            final long revoked = revokedCount.getAsLong();
+            if (revoked != entries.size()) {
+                log.info("Not using the cached CRL entries for '" + issuerDN + "' partition " + crlPartitionIndex + ", since they give " + entries.size()
+                        + " entries and there are " + revoked + " revoked certificates. Some changes were committed long after their update time,"
+                        + " or while the CRL was created.");
+                entries.discard();
+                return null;
+            }
+            return entries;
+        } finally {
+            previous.close();
+        }
+    }
+
+    /**
+     * Writes the entries of the previous CRL that did not change, and the changed entries that are revoked, in serial number order.
+     * Entries of the previous CRL that were included for the last time in it are left out.
+     *
+     * @param listExpired true to list the entries that expire before expiredBefore, so that the caller archives their certificates
+     */
+    private IncrementalCrlEntries merge(final String baseName, final EntryReader previous, final RevokedCertInfoCollection changes,
+            final long expiredBefore, final boolean listExpired, final int options, final int incrementalCount, final long readTime)
+            throws IOException {
+        final long startTime = System.currentTimeMillis();
+        changes.sortBySerialNumber();
+        final List<String> expiredFingerprints = new ArrayList<>();
+        int copied = 0;
+        int changed = 0;
+        int dropped = 0;
+        final EntryWriter writer = new EntryWriter(directory, baseName);
+        boolean success = false;
+        try {
+            boolean hasPrevious = previous != null && previous.next();
+            int index = 0;
+            while (hasPrevious || index < changes.size()) {
+                final int comparison;
+                if (!hasPrevious) {
+                    comparison = 1;
+                } else if (index == changes.size()) {
+                    comparison = -1;
+                } else {
+                    comparison = -changes.compareSerialNumberTo(index, previous.serialNumber, previous.serialNumberLength);
+                }
+                if (comparison < 0) {
+                    // An entry of the previous CRL that did not change
+                    if (previous.expireDate != 0 && previous.expireDate < previous.expiredBefore) {
+                        // Included for the last time in the previous CRL. Its certificate was archived after that CRL was created,
+                        // but archiving does not always show up as a change.
+                        dropped++;
+                        hasPrevious = previous.next();
+                        continue;
+                    }
+                    if (listExpired && previous.expireDate != 0 && previous.expireDate < expiredBefore && previous.fingerprint != null) {
+                        expiredFingerprints.add(previous.fingerprint);
+                    }
+                    writer.copy(previous);
+                    copied++;
+                    hasPrevious = previous.next();
+                    continue;
+                }
+                // The last change of a serial number is its current status
+                while (index + 1 < changes.size() && changes.compareSerialNumbers(index, index + 1) == 0) {
+                    index++;
+                }
+                if (comparison == 0) {
+                    hasPrevious = previous.next();
+                }
+                if (RevokedCertInfo.isRevoked(changes.getReason(index))) {
+                    final long expireDate = changes.getExpireDate(index);
+                    if (listExpired && expireDate != 0 && expireDate < expiredBefore && changes.getCertificateFingerprint(index) != null) {
+                        expiredFingerprints.add(changes.getCertificateFingerprint(index));
+                    }
+                    writer.write(changes, index);
+                    changed++;
+                }
+                index++;
+            }
+            final IncrementalCrlEntries entries = writer.finish(options, incrementalCount, readTime, expiredBefore, previous != null, expiredFingerprints);
+            if (log.isDebugEnabled()) {
+                log.debug("Prepared " + entries.size() + " CRL entries in " + (System.currentTimeMillis() - startTime) + " ms. " + copied
+                        + " entries were copied from the previous CRL, " + dropped + " expired entries were left out, " + changed
+                        + " were encoded and " + expiredFingerprints.size() + " have expired.");
+            }
+            success = true;
+            return entries;
+        } finally {
+            if (!success) {
+                writer.discard();
+            }
+        }
+    }
+
+    private static RevokedCertInfoCollection toCollection(final Collection<RevokedCertInfo> revokedCertInfos) {
+        return revokedCertInfos instanceof RevokedCertInfoCollection ? (RevokedCertInfoCollection) revokedCertInfos
+                : RevokedCertInfoCollection.copyOf(revokedCertInfos);
+    }
+
+    /** @return the name of the cache files of a CA and partition */
+    private static String getBaseName(final String issuerDN, final int crlPartitionIndex) {
+        return CertTools.getFingerprintAsString(issuerDN.getBytes(StandardCharsets.UTF_8)) + "-" + crlPartitionIndex;
+    }
+
+    private static int getOptions(final boolean keepExpiredCertsOnCrl, final boolean allowInvalidityDate) {
+        return (keepExpiredCertsOnCrl ? OPTION_KEEP_EXPIRED_CERTS : 0) | (allowInvalidityDate ? OPTION_ALLOW_INVALIDITY_DATE : 0);
+    }
+
+    /** Sets the CRL number in the header of an index file */
+    static void writeCrlNumber(final Path indexFile, final int crlNumber) throws IOException {
+        try (final FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(4).putInt(0, crlNumber);
+            channel.write(buffer, CRL_NUMBER_OFFSET);
+        }
+    }
+
+    /** Reads the entries of an index file and the corresponding file of encoded entries sequentially */
+    static class EntryReader implements Closeable {
+        final int crlNumber;
+        final int options;
+        final int incrementalCount;
+        final int entryCount;
+        final long entriesLength;
+        final long readTime;
+        final long expiredBefore;
+        private final DataInputStream index;
+        private InputStream entries;
+        private int read = 0;
+
+        byte[] serialNumber = new byte[32];
+        int serialNumberLength;
+        long expireDate;
+        String fingerprint;
+        byte[] encoded = new byte[256];
+        int encodedLength;
+
+        /**
+         * @param indexFile the index file
+         * @param entriesFile the file of encoded entries, or null to open it later with {@link #openEntries(Path)}
+         */
+        EntryReader(final Path indexFile, final Path entriesFile) throws IOException {
+            index = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), BUFFER_SIZE));
+            try {
+                if (index.readInt() != MAGIC || index.readInt() != VERSION) {
+                    throw new IOException("Unsupported CRL entry cache file " + indexFile + ".");
+                }
+                crlNumber = index.readInt();
+                options = index.readInt();
+                incrementalCount = index.readInt();
+                entryCount = index.readInt();
+                entriesLength = index.readLong();
+                readTime = index.readLong();
+                expiredBefore = index.readLong();
+                if (entriesFile != null) {
+                    openEntries(entriesFile);
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void openEntries(final Path entriesFile) throws IOException {
+            if (Files.size(entriesFile) != entriesLength) {
+                throw new IOException("The size of " + entriesFile + " does not match its index file.");
+            }
+            entries = new BufferedInputStream(Files.newInputStream(entriesFile), BUFFER_SIZE);
+        }
+
+        /** @return true if the next entry was read, false if there are no more entries */
+        boolean next() throws IOException {
+            if (read == entryCount) {
+                return false;
+            }
+            serialNumberLength = index.readUnsignedByte();
+            if (serialNumber.length < serialNumberLength) {
+                serialNumber = new byte[serialNumberLength];
+            }
+            index.readFully(serialNumber, 0, serialNumberLength);
+            expireDate = index.readLong();
+            final int fingerprintLength = index.readShort();
+            if (fingerprintLength < 0) {
+                fingerprint = null;
+            } else {
+                final byte[] fingerprintBytes = new byte[fingerprintLength];
+                index.readFully(fingerprintBytes);
+                fingerprint = new String(fingerprintBytes, StandardCharsets.UTF_8);
+            }
+            encodedLength = index.readInt();
+            if (encoded.length < encodedLength) {
+                encoded = new byte[encodedLength];
+            }
+            int offset = 0;
+            while (offset < encodedLength) {
+                final int count = entries.read(encoded, offset, encodedLength - offset);
+                if (count < 0) {
+                    throw new EOFException("Encoded CRL entries end before their index.");
+                }
+                offset += count;
+            }
+            read++;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                index.close();
+            } finally {
+                if (entries != null) {
+                    entries.close();
+                }
+            }
+        }
+    }
+
+    /** Writes a new index file and file of encoded entries to temporary files */
+    private static class EntryWriter {
+        private final Path directory;
+        private final String baseName;
+        private final Path indexFile;
+        private final Path entriesFile;
+        private final DataOutputStream index;
+        private final BufferedOutputStream entries;
+        private int entryCount = 0;
+        private long entriesLength = 0;
+        private final long now = System.currentTimeMillis();
+
+        private EntryWriter(final Path directory, final String baseName) throws IOException {
+            this.directory = directory;
+            this.baseName = baseName;
+            indexFile = Files.createTempFile(directory, baseName, ".idx.tmp");
+            entriesFile = Files.createTempFile(directory, baseName, ".der.tmp");
+            index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), BUFFER_SIZE));
+            entries = new BufferedOutputStream(Files.newOutputStream(entriesFile), BUFFER_SIZE);
+            // The header is written when all entries have been written
+            index.write(new byte[HEADER_LENGTH]);
+        }
+
+        private void copy(final EntryReader reader) throws IOException {
+            writeIndex(reader.serialNumber, reader.serialNumberLength, reader.expireDate, reader.fingerprint, reader.encodedLength);
+            entries.write(reader.encoded, 0, reader.encodedLength);
+            entriesLength += reader.encodedLength;
+        }
+
+        private void write(final RevokedCertInfoCollection collection, final int index) throws IOException {
+            final byte[] serialNumber = collection.getSerialNumberBytes(index);
+            final long revocationDate = collection.getRevocationDate(index);
+            final Long invalidityDate = collection.getInvalidityDate(index);
+            // Entries without revocation date are revoked now, the same way as for CRLs created from all revoked certificates
+            final byte[] encoded = StreamingCrlEncoder.encodeEntry(serialNumber, new Date(revocationDate == 0 ? now : revocationDate),
+                    collection.getReason(index), invalidityDate == null ? null : new Date(invalidityDate));
+            writeIndex(serialNumber, serialNumber.length, collection.getExpireDate(index), collection.getCertificateFingerprint(index), encoded.length);
+            entries.write(encoded);
+            entriesLength += encoded.length;
+        }
+
+        private void writeIndex(final byte[] serialNumber, final int serialNumberLength, final long expireDate, final String fingerprint,
+                final int encodedLength) throws IOException {
+            index.writeByte(serialNumberLength);
+            index.write(serialNumber, 0, serialNumberLength);
+            index.writeLong(expireDate);
+            if (fingerprint == null) {
+                index.writeShort(-1);
+            } else {
+                final byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+                index.writeShort(fingerprintBytes.length);
+                index.write(fingerprintBytes);
+            }
+            index.writeInt(encodedLength);
+            entryCount++;
+        }
+
+        private IncrementalCrlEntries finish(final int options, final int incrementalCount, final long readTime, final long expiredBefore,
+                final boolean incremental, final List<String> expiredFingerprints) throws IOException {
+            index.close();
+            entries.close();
+            try (final FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC).putInt(VERSION).putInt(NO_CRL_NUMBER).putInt(options).putInt(incrementalCount).putInt(entryCount)
+                        .putLong(entriesLength).putLong(readTime).putLong(expiredBefore);
+                header.flip();
+                channel.write(header, 0);
+            }
+            return new IncrementalCrlEntries(directory, baseName, indexFile, entriesFile, entryCount, entriesLength, incremental, expiredFingerprints);
+        }
+
+        private void discard() throws IOException {
+            try {
+                index.close();
+                entries.close();
+            } finally {
+                Files.deleteIfExists(indexFile);
+                Files.deleteIfExists(entriesFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.TBSCertList;
+
+/**
+ * The DER encoded revokedCertificates entries of a base CRL, prepared by {@link CrlEntryCache} and kept in files until the CRL
+ * has been stored. {@link StreamingCrlEncoder} signs the encoded entries as they are.
+ * <p>
+ * The files become the cached entries of the CA and partition when {@link #commit(int)} is called with the number of the stored
+ * CRL. Entries that are not committed must be discarded with {@link #discard()}.
+ */
+public class IncrementalCrlEntries extends AbstractCollection<RevokedCertInfo> {
+
+    private static final Logger log = Logger.getLogger(IncrementalCrlEntries.class);
+
+    private final Path directory;
+    private final String baseName;
+    private final Path indexFile;
+    private final Path entriesFile;
+    private final int entryCount;
+    private final long entriesLength;
+    private final boolean incremental;
+    private final List<String> expiredFingerprints;
+    private boolean committed = false;
+
+    IncrementalCrlEntries(final Path directory, final String baseName, final Path indexFile, final Path entriesFile, final int entryCount,
+            final long entriesLength, final boolean incremental, final List<String> expiredFingerprints) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.indexFile = indexFile;
+        this.entriesFile = entriesFile;
+        this.entryCount = entryCount;
+        this.entriesLength = entriesLength;
+        this.incremental = incremental;
+        this.expiredFingerprints = Collections.unmodifiableList(expiredFingerprints);
+    }
+
+    /** @return true if the entries were assembled from the cached entries of the last base CRL, false if from all revoked certificates */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /** @return fingerprints of the expired certificates that were dropped from the cached entries, and should be archived */
+    public List<String> getExpiredFingerprints() {
+        return expiredFingerprints;
+    }
+
+    /** @return the file of DER encoded entries, concatenated in serial number order */
+    Path getEntriesFile() {
+        return entriesFile;
+    }
+
+    /** @return the length of the file of DER encoded entries */
+    long getEntriesLength() {
+        return entriesLength;
+    }
+
+    @Override
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Decodes the entries. This is only needed by callers that process the entries themselves, since {@link StreamingCrlEncoder} reads
+     * the encoded entries directly.
+     */
+    @Override
+    public Iterator<RevokedCertInfo> iterator() {
+        final RevokedCertInfoCollection revokedCertInfos = new RevokedCertInfoCollection(entryCount);
+        try (final CrlEntryCache.EntryReader reader = new CrlEntryCache.EntryReader(indexFile, entriesFile)) {
+            while (reader.next()) {
+                final TBSCertList.CRLEntry entry = TBSCertList.CRLEntry.getInstance(
+                        ASN1Primitive.fromByteArray(Arrays.copyOf(reader.encoded, reader.encodedLength)));
+                int reason = RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED;
+                Long invalidityDate = null;
+                final Extensions extensions = entry.getExtensions();
+                if (extensions != null) {
+                    final Extension reasonCode = extensions.getExtension(Extension.reasonCode);
+                    if (reasonCode != null) {
+                        reason = ASN1Enumerated.getInstance(reasonCode.getParsedValue()).intValueExact();
+                    }
+                    final Extension invalidity = extensions.getExtension(Extension.invalidityDate);
+                    if (invalidity != null) {
+                        invalidityDate = ASN1GeneralizedTime.getInstance(invalidity.getParsedValue()).getDate().getTime();
+                    }
+                }
+                final byte[] fingerprint = reader.fingerprint == null ? null : reader.fingerprint.getBytes(StandardCharsets.UTF_8);
+                revokedCertInfos.add(fingerprint, entry.getUserCertificate().getValue().toByteArray(), entry.getRevocationDate().getDate().getTime(),
+                        reason, reader.expireDate, invalidityDate);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid invalidity date in cached CRL entry: " + e.getMessage(), e);
+        }
+        return revokedCertInfos.iterator();
+    }
+
+    /**
+     * Makes these entries the cached entries of the CA and partition, after the CRL has been stored.
+     *
+     * @param crlNumber the number of the stored CRL
+     * @throws IOException if the files could not be moved in place
+     */
+    public void commit(final int crlNumber) throws IOException {
+        CrlEntryCache.writeCrlNumber(indexFile, crlNumber);
+        final Path committedEntriesFile = directory.resolve(baseName + "-" + crlNumber + ".der");
+        // The entries file is moved first, so that the index file never refers to a file that does not exist
+        Files.move(entriesFile, committedEntriesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexFile, directory.resolve(baseName + ".idx"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+        try (final DirectoryStream<Path> previous = Files.newDirectoryStream(directory, baseName + "-*.der")) {
+            for (final Path file : previous) {
+                if (!file.equals(committedEntriesFile)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Cached " + entryCount + " entries of CRL number " + crlNumber + " in " + committedEntriesFile + ".");
+        }
+    }
+
+    /** Deletes the files of entries that were not committed. Does nothing if they were. */
+    public void discard() {
+        if (committed) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(entriesFile);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary CRL entry files in " + directory + ": " + e.getMessage());
+        }
+    }
+}
@@ -16,14 +16,11 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
-import org.cesecore.util.CompressedCollection;
 
 /**
  * Holds information about a revoked certificate. The information kept here is the
@@ -224,6 +221,28 @@ public class RevokedCertInfo implements Serializable {
         this.reason = reason;
     }
 
+    /** @return the fingerprint as stored, without copying */
+    byte[] getFingerprintBytes() {
+        return fingerprint;
+    }
+
+    /** @return the serial number as stored, without copying */
+    byte[] getUserCertificateBytes() {
+        return userCertificate;
+    }
+
+    long getRevocationDateMillis() {
+        return revocationDate;
+    }
+
+    long getExpireDateMillis() {
+        return expireDate;
+    }
+
+    Long getInvalidityDateMillis() {
+        return invalidityDate;
+    }
+
     @Override
     public String toString() {
         return String.format("(serial = %s, reason = %s)", 
@@ -307,60 +326,27 @@ public class RevokedCertInfo implements Serializable {
      * @param a First collection of RevokedCertInfo. May <b>not</b> contain duplicates for the same serial number.
      * @param b Second collection of RevokedCertInfo. May contain duplicates
      * @param lastBaseCrlDate Entries in unrevoked state will only be included if they are more recent than this date. (<= 0 means never include them)
-     * @return CompressionCollection of certificates. May simply be a reference to <code>a</code> if <code>b</code> is empty, or a new merged CompressedCollection with any duplicates removed.
+     * @return Collection of certificates. May simply be a reference to <code>a</code> if <code>b</code> is empty, or a new merged RevokedCertInfoCollection
+     * sorted by serial number with any duplicates removed. Note that <code>a</code> and <code>b</code> are sorted by serial number if they are RevokedCertInfoCollections.
      */
     public static Collection<RevokedCertInfo> mergeByDateAndStatus(final Collection<RevokedCertInfo> a, final Collection<RevokedCertInfo> b, final long lastBaseCrlDate) {
         // We can optimize this case, but not the reverse, since b can contain duplicates that should be filtered.
         if (b.isEmpty()) {
             return a;
         }
-        // Merge revocation information
-        final Map<BigInteger,RevokedCertInfo> permRevoked = new HashMap<>();
-        final Map<BigInteger,RevokedCertInfo> tempRevoked = new HashMap<>();
-        for (final RevokedCertInfo revoked : a) {
-            final BigInteger serial = revoked.getUserCertificate();
-            if (revoked.isPermanentlyRevoked()) {
-                permRevoked.put(serial, revoked);
-            } else {
-                tempRevoked.put(serial, revoked);
-            }
-        }
-        for (final RevokedCertInfo revoked : b) {
-            final BigInteger serial = revoked.getUserCertificate();
-            final Date revdate = revoked.getRevocationDate();
-            final RevokedCertInfo permDate = permRevoked.get(serial);
-            if (permDate != null) {
-                // Older permanent status changes win over newer ones
-                if (permDate.getRevocationDate().after(revdate) && revoked.isPermanentlyRevoked()) {
-                    permRevoked.put(serial, revoked);
-                    tempRevoked.remove(serial);
-                }
-                continue;
-            }
-            if (revoked.isPermanentlyRevoked()) {
-                // Permanently revoked wins over temporary revoked/re-activated
-                permRevoked.put(serial, revoked);
-                tempRevoked.remove(serial);
-                continue;
-            }
-            final RevokedCertInfo tempDate = tempRevoked.get(serial);
-            // More recent temporary status changes win over older ones 
-            if (tempDate == null || tempDate.getRevocationDate().before(revdate)) {
-                tempRevoked.put(serial, revoked);
-            }
-        }
-        final CompressedCollection<RevokedCertInfo> mergedRevokedData = new CompressedCollection<>(RevokedCertInfo.class);
-        mergedRevokedData.addAll(permRevoked.values()); // Permanently revoked entries are always added
-        for (final RevokedCertInfo revoked : tempRevoked.values()) {
-            if (!revoked.isRevoked() && (lastBaseCrlDate <= 0 || revoked.getRevocationDate().getTime() <= lastBaseCrlDate)) {
-                continue; // REMOVEFROMCRL entries are not added in Base CRLs (lastBaseCrlDate=0) or if already removed from the latest Base CRL
-            }
-            mergedRevokedData.add(revoked);
-        }
-        mergedRevokedData.closeForWrite();
+        // Merge revocation information by walking both collections in serial number order
+        final RevokedCertInfoCollection mergedRevokedData = RevokedCertInfoCollection.mergeByDateAndStatus(toRevokedCertInfoCollection(a),
+                toRevokedCertInfoCollection(b), lastBaseCrlDate);
         if (log.isDebugEnabled()) {
             log.debug("mergeByDateAndStatus: Merged to " + mergedRevokedData.size() + " entries");
         }
         return mergedRevokedData;
     }
+
+    private static RevokedCertInfoCollection toRevokedCertInfoCollection(final Collection<RevokedCertInfo> revokedCertInfos) {
+        if (revokedCertInfos instanceof RevokedCertInfoCollection) {
+            return (RevokedCertInfoCollection) revokedCertInfos;
+        }
+        return RevokedCertInfoCollection.copyOf(revokedCertInfos);
+    }
 }
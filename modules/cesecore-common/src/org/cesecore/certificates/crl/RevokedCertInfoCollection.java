@@ -0,0 +1,536 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Collection of {@link RevokedCertInfo} that keeps each field in a packed primitive array, instead of one object per entry.
+ * <p>
+ * The fingerprint and serial number of each entry are stored back to back in a single byte array, with hexadecimal fingerprints
+ * packed to half their size, and the dates and revocation reasons in arrays of their own. An entry with a SHA-1 fingerprint
+ * typically takes 50 to 60 bytes and no objects, so large CRLs put no load on the garbage collector, and unlike the Java
+ * serialized CompressedCollection nothing has to be decoded to read the fields of an entry.
+ * <p>
+ * The entries can be read without creating any objects through the index based getters. The iterator creates a new RevokedCertInfo
+ * for each entry, and changes to it are not written back to the collection.
+ * <p>
+ * Entries are iterated in the order they were added, or by serial number after {@link #sortBySerialNumber()}.
+ * The implementation is not thread safe.
+ */
+public class RevokedCertInfoCollection extends AbstractCollection<RevokedCertInfo> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger log = Logger.getLogger(RevokedCertInfoCollection.class);
+
+    private static final int DEFAULT_CAPACITY = 16;
+    /** Record header of an entry without fingerprint */
+    private static final byte NO_FINGERPRINT = Byte.MIN_VALUE;
+    /** Invalidity date of an entry without invalidity date */
+    private static final long NO_INVALIDITY_DATE = Long.MIN_VALUE;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private int size;
+    /**
+     * Records of fingerprint and serial number. Each record starts with a header byte that is either {@link #NO_FINGERPRINT},
+     * the length of the fingerprint as is, or the negated length of the fingerprint packed as hexadecimal. The fingerprint is
+     * followed by the serial number as returned by BigInteger.toByteArray(), which runs to the start of the next record.
+     */
+    private byte[] records;
+    private int recordsLength;
+    /** Start of each record in records */
+    private int[] recordOffsets;
+    private long[] revocationDates;
+    private long[] expireDates;
+    /** Allocated when the first entry with an invalidity date is added, since most entries have none */
+    private long[] invalidityDates;
+    private byte[] reasons;
+    /** Entry at each position when sorted, or null if the entries are iterated in the order they were added */
+    private int[] order;
+    private boolean sortedBySerialNumber;
+    private boolean closedForWrite;
+
+    public RevokedCertInfoCollection() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param initialCapacity number of entries to allocate room for */
+    public RevokedCertInfoCollection(final int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    /** @return a new collection with the same entries, in the same order */
+    public static RevokedCertInfoCollection copyOf(final Collection<RevokedCertInfo> revokedCertInfos) {
+        final RevokedCertInfoCollection copy = new RevokedCertInfoCollection(revokedCertInfos.size());
+        copy.addAll(revokedCertInfos);
+        return copy;
+    }
+
+    private void allocate(final int capacity) {
+        size = 0;
+        records = new byte[capacity * 32];
+        recordsLength = 0;
+        recordOffsets = new int[capacity];
+        revocationDates = new long[capacity];
+        expireDates = new long[capacity];
+        invalidityDates = null;
+        reasons = new byte[capacity];
+        order = null;
+        sortedBySerialNumber = false;
+        closedForWrite = false;
+    }
+
+    @Override
+    public boolean add(final RevokedCertInfo revokedCertInfo) {
+        if (revokedCertInfo == null) {
+            return false;
+        }
+        add(revokedCertInfo.getFingerprintBytes(), revokedCertInfo.getUserCertificateBytes(), revokedCertInfo.getRevocationDateMillis(),
+                revokedCertInfo.getReason(), revokedCertInfo.getExpireDateMillis(), revokedCertInfo.getInvalidityDateMillis());
+        return true;
+    }
+
+    /**
+     * Adds an entry, with the same parameters as the corresponding {@link RevokedCertInfo} constructor.
+     *
+     * @param fingerprint the fingerprint, String.getBytes(), or null
+     * @param serialNumber the serial number, BigInteger.toByteArray()
+     * @param revocationDate the revocation date in milliseconds, or 0 if it is not set
+     * @param reason the revocation reason, e.g. {@link RevokedCertInfo#REVOCATION_REASON_UNSPECIFIED}
+     * @param expireDate the expire date in milliseconds, or 0 if it is not set
+     * @param invalidityDate the invalidity date in milliseconds, or null
+     */
+    public void add(final byte[] fingerprint, final byte[] serialNumber, final long revocationDate, final int reason, final long expireDate,
+            final Long invalidityDate) {
+        if (closedForWrite) {
+            throw new IllegalStateException("closeForWrite() has already been called without clear() for this RevokedCertInfoCollection.");
+        }
+        if (reason < Byte.MIN_VALUE || reason > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid revocation reason " + reason + ".");
+        }
+        final boolean packHex = fingerprint != null && isPackableHex(fingerprint);
+        final int fingerprintLength = fingerprint == null ? 0 : packHex ? fingerprint.length / 2 : fingerprint.length;
+        if (fingerprintLength > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Fingerprint of " + fingerprint.length + " bytes is too long.");
+        }
+        final int serialNumberLength = serialNumber == null ? 0 : serialNumber.length;
+        ensureCapacity(size + 1, recordsLength + 1 + fingerprintLength + serialNumberLength);
+        recordOffsets[size] = recordsLength;
+        if (fingerprint == null) {
+            records[recordsLength++] = NO_FINGERPRINT;
+        } else if (packHex) {
+            records[recordsLength++] = (byte) -fingerprintLength;
+            for (int i = 0; i < fingerprint.length; i += 2) {
+                records[recordsLength++] = (byte) ((hexValue(fingerprint[i]) << 4) | hexValue(fingerprint[i + 1]));
+            }
+        } else {
+            records[recordsLength++] = (byte) fingerprintLength;
+            System.arraycopy(fingerprint, 0, records, recordsLength, fingerprintLength);
+            recordsLength += fingerprintLength;
+        }
+        if (serialNumber != null) {
+            System.arraycopy(serialNumber, 0, records, recordsLength, serialNumberLength);
+            recordsLength += serialNumberLength;
+        }
+        revocationDates[size] = revocationDate;
+        expireDates[size] = expireDate;
+        setInvalidityDate(size, invalidityDate == null ? NO_INVALIDITY_DATE : invalidityDate);
+        reasons[size] = (byte) reason;
+        size++;
+    }
+
+    private void setInvalidityDate(final int entry, final long invalidityDate) {
+        if (invalidityDates == null) {
+            if (invalidityDate == NO_INVALIDITY_DATE) {
+                return;
+            }
+            invalidityDates = new long[recordOffsets.length];
+            Arrays.fill(invalidityDates, NO_INVALIDITY_DATE);
+        }
+        invalidityDates[entry] = invalidityDate;
+    }
+
+    private static boolean isPackableHex(final byte[] fingerprint) {
+        if (fingerprint.length == 0 || fingerprint.length % 2 != 0) {
+            return false;
+        }
+        for (final byte b : fingerprint) {
+            if (hexValue(b) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the value of a lower case hexadecimal digit, or -1 */
+    private static int hexValue(final byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(final int entries, final int recordBytes) {
+        if (entries > recordOffsets.length) {
+            final int capacity = Math.max(entries, recordOffsets.length + (recordOffsets.length >> 1));
+            recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+            revocationDates = Arrays.copyOf(revocationDates, capacity);
+            expireDates = Arrays.copyOf(expireDates, capacity);
+            if (invalidityDates != null) {
+                invalidityDates = Arrays.copyOf(invalidityDates, capacity);
+            }
+            reasons = Arrays.copyOf(reasons, capacity);
+        }
+        if (recordBytes > records.length) {
+            records = Arrays.copyOf(records, Math.max(recordBytes, records.length + (records.length >> 1)));
+        }
+    }
+
+    /** Signal that no more entries will be added to this collection. Releases the memory allocated for further entries. */
+    public void closeForWrite() {
+        if (!closedForWrite) {
+            closedForWrite = true;
+            if (recordOffsets.length != size) {
+                recordOffsets = Arrays.copyOf(recordOffsets, size);
+                revocationDates = Arrays.copyOf(revocationDates, size);
+                expireDates = Arrays.copyOf(expireDates, size);
+                if (invalidityDates != null) {
+                    invalidityDates = Arrays.copyOf(invalidityDates, size);
+                }
+                reasons = Arrays.copyOf(reasons, size);
+            }
+            if (records.length != recordsLength) {
+                records = Arrays.copyOf(records, recordsLength);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Stored " + size + " entries in " + (recordsLength + size * (invalidityDates == null ? 21L : 29L)) + " bytes.");
+            }
+        }
+    }
+
+    /**
+     * Sorts the entries by serial number. Entries with the same serial number keep the order they were added in.
+     * Closes the collection for write.
+     */
+    public void sortBySerialNumber() {
+        closeForWrite();
+        if (sortedBySerialNumber) {
+            return;
+        }
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        // Bottom-up merge sort, which is stable and does not box the indices
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int from = 0; from < size; from += 2 * width) {
+                final int middle = Math.min(from + width, size);
+                final int to = Math.min(from + 2 * width, size);
+                int left = from;
+                int right = middle;
+                int target = from;
+                while (left < middle && right < to) {
+                    buffer[target++] = compareSerialNumbers(this, sorted[right], this, sorted[left]) < 0 ? sorted[right++] : sorted[left++];
+                }
+                while (left < middle) {
+                    buffer[target++] = sorted[left++];
+                }
+                while (right < to) {
+                    buffer[target++] = sorted[right++];
+                }
+            }
+            final int[] swap = sorted;
+            sorted = buffer;
+            buffer = swap;
+        }
+        order = sorted;
+        sortedBySerialNumber = true;
+    }
+
+    /**
+     * Compares the serial numbers of two entries numerically, without creating BigIntegers.
+     *
+     * @param a collection of the first entry
+     * @param entryA the first entry, as stored (not sorted)
+     * @param b collection of the second entry
+     * @param entryB the second entry, as stored (not sorted)
+     * @return a negative number, zero, or a positive number if the first serial number is less than, equal to, or greater than the second
+     */
+    private static int compareSerialNumbers(final RevokedCertInfoCollection a, final int entryA, final RevokedCertInfoCollection b, final int entryB) {
+        final int fromA = a.serialNumberOffset(entryA);
+        final int fromB = b.serialNumberOffset(entryB);
+        return compareSerialNumbers(a.records, fromA, a.recordEnd(entryA) - fromA, b.records, fromB, b.recordEnd(entryB) - fromB);
+    }
+
+    /**
+     * Compares two serial numbers in the format of BigInteger.toByteArray() numerically.
+     * @return a negative number, zero, or a positive number if the first serial number is less than, equal to, or greater than the second
+     */
+    static int compareSerialNumbers(final byte[] a, final int fromA, final int lengthA, final byte[] b, final int fromB, final int lengthB) {
+        // Two's complement, big-endian and as short as possible, so the sign and then the length decide unless they are equal
+        final boolean negativeA = lengthA > 0 && a[fromA] < 0;
+        final boolean negativeB = lengthB > 0 && b[fromB] < 0;
+        if (negativeA != negativeB) {
+            return negativeA ? -1 : 1;
+        }
+        if (lengthA != lengthB) {
+            return negativeA ? lengthB - lengthA : lengthA - lengthB;
+        }
+        for (int i = 0; i < lengthA; i++) {
+            final int difference = (a[fromA + i] & 0xff) - (b[fromB + i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /** Compares the serial numbers of the entries at two positions, see {@link #compareSerialNumbers(byte[], int, int, byte[], int, int)} */
+    int compareSerialNumbers(final int indexA, final int indexB) {
+        return compareSerialNumbers(this, entry(indexA), this, entry(indexB));
+    }
+
+    /** Compares the serial number of the entry at the given position to another one, see {@link #compareSerialNumbers(byte[], int, int, byte[], int, int)} */
+    int compareSerialNumberTo(final int index, final byte[] serialNumber, final int length) {
+        final int entry = entry(index);
+        final int from = serialNumberOffset(entry);
+        return compareSerialNumbers(records, from, recordEnd(entry) - from, serialNumber, 0, length);
+    }
+
+    /** @return the entry stored at the given position in the iteration order */
+    private int entry(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size + " entries.");
+        }
+        return order == null ? index : order[index];
+    }
+
+    private int recordEnd(final int entry) {
+        return entry + 1 < size ? recordOffsets[entry + 1] : recordsLength;
+    }
+
+    private int serialNumberOffset(final int entry) {
+        final int offset = recordOffsets[entry];
+        final byte header = records[offset];
+        return offset + 1 + (header == NO_FINGERPRINT ? 0 : Math.abs(header));
+    }
+
+    /** @return the serial number of the entry at the given position, as BigInteger.toByteArray(), or null */
+    public byte[] getSerialNumberBytes(final int index) {
+        final int entry = entry(index);
+        final int from = serialNumberOffset(entry);
+        final int to = recordEnd(entry);
+        return from == to ? null : Arrays.copyOfRange(records, from, to);
+    }
+
+    /** @return the fingerprint of the entry at the given position, or null */
+    public String getCertificateFingerprint(final int index) {
+        final int entry = entry(index);
+        final int offset = recordOffsets[entry];
+        final byte header = records[offset];
+        if (header == NO_FINGERPRINT) {
+            return null;
+        }
+        if (header >= 0) {
+            return new String(records, offset + 1, header);
+        }
+        final char[] fingerprint = new char[-header * 2];
+        for (int i = 0; i < -header; i++) {
+            final int b = records[offset + 1 + i] & 0xff;
+            fingerprint[2 * i] = HEX[b >>> 4];
+            fingerprint[2 * i + 1] = HEX[b & 0x0f];
+        }
+        return new String(fingerprint);
+    }
+
+    /** @return the revocation date of the entry at the given position in milliseconds, or 0 if it is not set */
+    public long getRevocationDate(final int index) {
+        return revocationDates[entry(index)];
+    }
+
+    /** @return the expire date of the entry at the given position in milliseconds, or 0 if it is not set */
+    public long getExpireDate(final int index) {
+        return expireDates[entry(index)];
+    }
+
+    /** @return the invalidity date of the entry at the given position in milliseconds, or null if it is not set */
+    public Long getInvalidityDate(final int index) {
+        final int entry = entry(index);
+        if (invalidityDates == null) {
+            return null;
+        }
+        final long invalidityDate = invalidityDates[entry];
+        return invalidityDate == NO_INVALIDITY_DATE ? null : invalidityDate;
+    }
+
+    /** @return the revocation reason of the entry at the given position */
+    public int getReason(final int index) {
+        return reasons[entry(index)];
+    }
+
+    /** @return a new RevokedCertInfo with the values of the entry at the given position */
+    public RevokedCertInfo get(final int index) {
+        final String fingerprint = getCertificateFingerprint(index);
+        return new RevokedCertInfo(fingerprint == null ? null : fingerprint.getBytes(), getSerialNumberBytes(index), getRevocationDate(index),
+                getReason(index), getExpireDate(index), getInvalidityDate(index));
+    }
+
+    /**
+     * Adds the entry at the given position of another collection, without creating any objects.
+     */
+    private void addEntry(final RevokedCertInfoCollection source, final int index) {
+        if (closedForWrite) {
+            throw new IllegalStateException("closeForWrite() has already been called without clear() for this RevokedCertInfoCollection.");
+        }
+        final int entry = source.entry(index);
+        final int from = source.recordOffsets[entry];
+        final int length = source.recordEnd(entry) - from;
+        ensureCapacity(size + 1, recordsLength + length);
+        recordOffsets[size] = recordsLength;
+        System.arraycopy(source.records, from, records, recordsLength, length);
+        recordsLength += length;
+        revocationDates[size] = source.revocationDates[entry];
+        expireDates[size] = source.expireDates[entry];
+        setInvalidityDate(size, source.invalidityDates == null ? NO_INVALIDITY_DATE : source.invalidityDates[entry]);
+        reasons[size] = source.reasons[entry];
+        size++;
+    }
+
+    /**
+     * Merges two collections with the rules of {@link RevokedCertInfo#mergeByDateAndStatus}. Both collections are sorted by serial
+     * number, and are then merged in a single pass without a map of all serial numbers.
+     *
+     * @param a entries without duplicate serial numbers
+     * @param b entries that may contain duplicate serial numbers
+     * @param lastBaseCrlDate entries in unrevoked state are only included if they are more recent than this date (<= 0 means never include them)
+     * @return a new collection sorted by serial number
+     */
+    static RevokedCertInfoCollection mergeByDateAndStatus(final RevokedCertInfoCollection a, final RevokedCertInfoCollection b, final long lastBaseCrlDate) {
+        a.sortBySerialNumber();
+        b.sortBySerialNumber();
+        final RevokedCertInfoCollection merged = new RevokedCertInfoCollection(Math.max(a.size, b.size));
+        int indexA = 0;
+        int indexB = 0;
+        while (indexA < a.size || indexB < b.size) {
+            // Pick the lowest serial number that remains in either collection
+            final boolean fromA;
+            if (indexA == a.size) {
+                fromA = false;
+            } else if (indexB == b.size) {
+                fromA = true;
+            } else {
+                fromA = compareSerialNumbers(a, a.entry(indexA), b, b.entry(indexB)) <= 0;
+            }
+            final RevokedCertInfoCollection first = fromA ? a : b;
+            final int firstIndex = fromA ? indexA : indexB;
+            // The winning permanent and temporary status changes of this serial number, or null
+            RevokedCertInfoCollection perm = null;
+            int permIndex = -1;
+            RevokedCertInfoCollection temp = null;
+            int tempIndex = -1;
+            while (indexA < a.size && compareSerialNumbers(a, a.entry(indexA), first, first.entry(firstIndex)) == 0) {
+                if (RevokedCertInfo.isPermanentlyRevoked(a.getReason(indexA))) {
+                    perm = a;
+                    permIndex = indexA;
+                } else {
+                    temp = a;
+                    tempIndex = indexA;
+                }
+                indexA++;
+            }
+            while (indexB < b.size && compareSerialNumbers(b, b.entry(indexB), first, first.entry(firstIndex)) == 0) {
+                final long revocationDate = b.getRevocationDate(indexB);
+                final boolean permanentlyRevoked = RevokedCertInfo.isPermanentlyRevoked(b.getReason(indexB));
+                if (perm != null) {
+                    // Older permanent status changes win over newer ones
+                    if (perm.getRevocationDate(permIndex) > revocationDate && permanentlyRevoked) {
+                        perm = b;
+                        permIndex = indexB;
+                        temp = null;
+                    }
+                } else if (permanentlyRevoked) {
+                    // Permanently revoked wins over temporary revoked/re-activated
+                    perm = b;
+                    permIndex = indexB;
+                    temp = null;
+                } else if (temp == null || temp.getRevocationDate(tempIndex) < revocationDate) {
+                    // More recent temporary status changes win over older ones
+                    temp = b;
+                    tempIndex = indexB;
+                }
+                indexB++;
+            }
+            if (perm != null) {
+                merged.addEntry(perm, permIndex);
+            }
+            if (temp != null) {
+                // REMOVEFROMCRL entries are not added in Base CRLs (lastBaseCrlDate=0) or if already removed from the latest Base CRL
+                if (RevokedCertInfo.isRevoked(temp.getReason(tempIndex)) || (lastBaseCrlDate > 0 && temp.getRevocationDate(tempIndex) > lastBaseCrlDate)) {
+                    merged.addEntry(temp, tempIndex);
+                }
+            }
+        }
+        merged.closeForWrite();
+        // The entries were added in serial number order
+        merged.sortedBySerialNumber = true;
+        return merged;
+    }
+
+    @Override
+    public Iterator<RevokedCertInfo> iterator() {
+        closeForWrite();
+        return new Iterator<RevokedCertInfo>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public RevokedCertInfo next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Removes all entries and releases the memory they used. The collection can be written to again afterwards. */
+    @Override
+    public void clear() {
+        allocate(1);
+    }
+}
@@ -0,0 +1,426 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1BitString;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+
+/**
+ * Encodes and signs an X.509 v2 CRL without building the ASN.1 structure of the revoked certificate entries in memory.
+ * <p>
+ * The encoding is identical to the one produced by BouncyCastle's X509v2CRLBuilder, but the CRL entries are DER encoded one
+ * at a time, straight from the collection of {@link RevokedCertInfo}, into a temporary file. The
+ * TBSCertList is then streamed from that file through the ContentSigner and finally to the destination, so the memory needed
+ * is independent of the number of revoked certificates, except for the resulting encoding if a byte array is requested.
+ */
+public class StreamingCrlEncoder {
+
+    private static final Logger log = Logger.getLogger(StreamingCrlEncoder.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** X.509 v2 CRLs are identified by version 1 */
+    private static final ASN1Integer VERSION_2 = new ASN1Integer(1);
+
+    private final X500Name issuer;
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    private final Extensions extensions;
+
+    /**
+     * @param issuer the issuer of the CRL
+     * @param thisUpdate thisUpdate of the CRL
+     * @param nextUpdate nextUpdate of the CRL, or null to omit it
+     * @param extensions the CRL extensions, or null if there are none
+     */
+    public StreamingCrlEncoder(final X500Name issuer, final Date thisUpdate, final Date nextUpdate, final Extensions extensions) {
+        this.issuer = issuer;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.extensions = extensions;
+    }
+
+    /**
+     * Signs the CRL and returns its DER encoding.
+     *
+     * @param revokedCertInfos the CRL entries, may be null. The collection is iterated once.
+     * @param signer the signer of the CRL
+     * @return the DER encoded CRL
+     * @throws IOException if the CRL could not be encoded or is too large to fit in a byte array
+     */
+    public byte[] encode(final Iterable<RevokedCertInfo> revokedCertInfos, final ContentSigner signer) throws IOException {
+        try (final SignedCrl signedCrl = sign(revokedCertInfos, signer)) {
+            if (signedCrl.length > Integer.MAX_VALUE - 8) {
+                throw new IOException("CRL of " + signedCrl.length + " bytes is too large to be returned as a byte array.");
+            }
+            final byte[] encoded = new byte[(int) signedCrl.length];
+            final ByteArrayWriter writer = new ByteArrayWriter(encoded);
+            signedCrl.writeTo(writer);
+            if (writer.position != encoded.length) {
+                throw new IllegalStateException("Wrote " + writer.position + " bytes of a CRL that was expected to be " + encoded.length + " bytes.");
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Signs the CRL and writes its DER encoding to the provided stream.
+     *
+     * @param revokedCertInfos the CRL entries, may be null. The collection is iterated once.
+     * @param signer the signer of the CRL
+     * @param out the stream to write the CRL to. The stream is not closed.
+     * @return the number of bytes written
+     * @throws IOException if the CRL could not be encoded or written
+     */
+    public long encode(final Iterable<RevokedCertInfo> revokedCertInfos, final ContentSigner signer, final OutputStream out) throws IOException {
+        try (final SignedCrl signedCrl = sign(revokedCertInfos, signer)) {
+            signedCrl.writeTo(out);
+            return signedCrl.length;
+        }
+    }
+
+    /**
+     * Wraps an encoded CRL in an X509CRLHolder that is parsed lazily, so that the revoked certificate entries are only decoded
+     * if they are accessed.
+     *
+     * @param encodedCrl a DER encoded CRL
+     * @return a holder of the CRL
+     * @throws IOException if the encoding is not a CRL
+     */
+    public static X509CRLHolder toX509CRLHolder(final byte[] encodedCrl) throws IOException {
+        try (final ASN1InputStream asn1InputStream = new ASN1InputStream(encodedCrl, true)) {
+            return new X509CRLHolder(CertificateList.getInstance(asn1InputStream.readObject()));
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new IOException("Malformed CRL: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Verifies the signature of an encoded CRL over the TBSCertList as it is encoded, without decoding the revoked certificate entries.
+     *
+     * @param encodedCrl a DER encoded CRL
+     * @param verifierProvider provider of a verifier for the public key of the issuer
+     * @return true if the signature is valid
+     * @throws IOException if the encoding is not a CRL
+     * @throws OperatorCreationException if no verifier could be created for the signature algorithm
+     */
+    public static boolean isSignatureValid(final byte[] encodedCrl, final ContentVerifierProvider verifierProvider)
+            throws IOException, OperatorCreationException {
+        // CertificateList ::= SEQUENCE { tbsCertList TBSCertList, signatureAlgorithm AlgorithmIdentifier, signatureValue BIT STRING }
+        final int tbsOffset = skipHeader(encodedCrl, 0, BERTags.SEQUENCE | BERTags.CONSTRUCTED);
+        final int tbsContentOffset = skipHeader(encodedCrl, tbsOffset, BERTags.SEQUENCE | BERTags.CONSTRUCTED);
+        final int tbsEnd = tbsContentOffset + readLength(encodedCrl, tbsOffset + 1);
+        if (tbsEnd > encodedCrl.length) {
+            throw new IOException("Malformed CRL: TBSCertList extends beyond the end of the encoding.");
+        }
+        final AlgorithmIdentifier signatureAlgorithm;
+        final ASN1BitString signature;
+        try (final ASN1InputStream asn1InputStream = new ASN1InputStream(Arrays.copyOfRange(encodedCrl, tbsEnd, encodedCrl.length))) {
+            signatureAlgorithm = AlgorithmIdentifier.getInstance(asn1InputStream.readObject());
+            signature = ASN1BitString.getInstance(asn1InputStream.readObject());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed CRL: " + e.getMessage(), e);
+        }
+        final ContentVerifier verifier = verifierProvider.get(signatureAlgorithm);
+        try (final OutputStream verifierOut = verifier.getOutputStream()) {
+            verifierOut.write(encodedCrl, tbsOffset, tbsEnd - tbsOffset);
+        }
+        return verifier.verify(signature.getOctets());
+    }
+
+    /** Encodes the entries to a temporary file and signs the TBSCertList */
+    private SignedCrl sign(final Iterable<RevokedCertInfo> revokedCertInfos, final ContentSigner signer) throws IOException {
+        if (revokedCertInfos instanceof IncrementalCrlEntries) {
+            // The entries are already encoded, and the file is owned by the caller
+            final IncrementalCrlEntries entries = (IncrementalCrlEntries) revokedCertInfos;
+            if (log.isDebugEnabled()) {
+                log.debug("Using " + entries.size() + " prepared CRL entries of " + entries.getEntriesLength() + " bytes.");
+            }
+            return sign(entries.getEntriesFile(), entries.isEmpty() ? -1 : entries.getEntriesLength(), false, signer);
+        }
+        final Path entriesFile = Files.createTempFile("crlentries", ".der");
+        boolean success = false;
+        try {
+            long entriesLength = 0;
+            long entryCount = 0;
+            if (revokedCertInfos != null) {
+                try (final OutputStream entriesOut = new BufferedOutputStream(Files.newOutputStream(entriesFile), BUFFER_SIZE)) {
+                    if (revokedCertInfos instanceof RevokedCertInfoCollection) {
+                        // Read the fields straight from the packed arrays, without creating a RevokedCertInfo for each entry
+                        final RevokedCertInfoCollection collection = (RevokedCertInfoCollection) revokedCertInfos;
+                        for (int i = 0; i < collection.size(); i++) {
+                            final long revocationDate = collection.getRevocationDate(i);
+                            final Long invalidityDate = collection.getInvalidityDate(i);
+                            final byte[] entry = encodeEntry(collection.getSerialNumberBytes(i), revocationDate == 0 ? null : new Date(revocationDate),
+                                    collection.getReason(i), invalidityDate == null ? null : new Date(invalidityDate));
+                            entriesOut.write(entry);
+                            entriesLength += entry.length;
+                            entryCount++;
+                        }
+                    } else {
+                        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+                            final byte[] entry = encodeEntry(revokedCertInfo);
+                            entriesOut.write(entry);
+                            entriesLength += entry.length;
+                            entryCount++;
+                        }
+                    }
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Encoded " + entryCount + " CRL entries to " + entriesLength + " bytes. Free memory=" + Runtime.getRuntime().freeMemory());
+            }
+            final SignedCrl signedCrl = sign(entriesFile, entryCount == 0 ? -1 : entriesLength, true, signer);
+            success = true;
+            return signedCrl;
+        } finally {
+            if (!success) {
+                Files.deleteIfExists(entriesFile);
+            }
+        }
+    }
+
+    /** Signs the TBSCertList with the encoded entries in the given file */
+    private SignedCrl sign(final Path entriesFile, final long entriesLength, final boolean deleteEntriesFile, final ContentSigner signer) throws IOException {
+        final AlgorithmIdentifier signatureAlgorithm = signer.getAlgorithmIdentifier();
+        final SignedCrl signedCrl = new SignedCrl(entriesFile, entriesLength, deleteEntriesFile, encodeTbsPrefix(signatureAlgorithm),
+                extensions == null ? null : new DERTaggedObject(true, 0, extensions).getEncoded(ASN1Encoding.DER),
+                signatureAlgorithm.getEncoded(ASN1Encoding.DER));
+        try (final OutputStream signerOut = signer.getOutputStream()) {
+            signedCrl.writeTbsTo(signerOut);
+        }
+        signedCrl.setSignature(new DERBitString(signer.getSignature()).getEncoded(ASN1Encoding.DER));
+        return signedCrl;
+    }
+
+    /** @return the version, signature, issuer, thisUpdate and nextUpdate fields of the TBSCertList */
+    private byte[] encodeTbsPrefix(final AlgorithmIdentifier signatureAlgorithm) throws IOException {
+        final ASN1EncodableVector prefix = new ASN1EncodableVector();
+        prefix.add(VERSION_2);
+        prefix.add(signatureAlgorithm);
+        prefix.add(issuer);
+        prefix.add(new Time(thisUpdate));
+        if (nextUpdate != null) {
+            prefix.add(new Time(nextUpdate));
+        }
+        // Encode as a sequence and strip the sequence header to get the concatenated encodings
+        final byte[] encoded = new DERSequence(prefix).getEncoded(ASN1Encoding.DER);
+        return Arrays.copyOfRange(encoded, skipHeader(encoded, 0, BERTags.SEQUENCE | BERTags.CONSTRUCTED), encoded.length);
+    }
+
+    /** @return the DER encoding of a revokedCertificates entry, the same way as X509v2CRLBuilder.addCRLEntry */
+    static byte[] encodeEntry(final RevokedCertInfo revokedCertInfo) throws IOException {
+        return encodeEntry(revokedCertInfo.getUserCertificate().toByteArray(), revokedCertInfo.getRevocationDate(), revokedCertInfo.getReason(),
+                revokedCertInfo.getInvalidityDate());
+    }
+
+    /** @return the DER encoding of a revokedCertificates entry with the given serial number, as BigInteger.toByteArray(), and fields */
+    static byte[] encodeEntry(final byte[] serialNumber, final Date revocationDate, final int reason, final Date invalidityDate) throws IOException {
+        final ASN1EncodableVector entry = new ASN1EncodableVector();
+        entry.add(new ASN1Integer(serialNumber));
+        entry.add(new Time(revocationDate));
+        final ExtensionsGenerator entryExtensions = new ExtensionsGenerator();
+        if (reason != 0) {
+            entryExtensions.addExtension(Extension.reasonCode, false, CRLReason.lookup(reason));
+        }
+        if (invalidityDate != null) {
+            entryExtensions.addExtension(Extension.invalidityDate, false, new ASN1GeneralizedTime(invalidityDate));
+        }
+        if (!entryExtensions.isEmpty()) {
+            entry.add(entryExtensions.generate());
+        }
+        return new DERSequence(entry).getEncoded(ASN1Encoding.DER);
+    }
+
+    /** @return the offset of the contents after the tag and length at the given offset */
+    private static int skipHeader(final byte[] encoded, final int offset, final int expectedTag) throws IOException {
+        if (encoded.length < offset + 2 || (encoded[offset] & 0xff) != expectedTag) {
+            throw new IOException("Malformed CRL: expected tag " + expectedTag + " at offset " + offset + ".");
+        }
+        final int first = encoded[offset + 1] & 0xff;
+        return offset + 2 + (first < 0x80 ? 0 : first & 0x7f);
+    }
+
+    /** @return the definite length starting at the given offset */
+    private static int readLength(final byte[] encoded, final int offset) throws IOException {
+        final int first = encoded[offset] & 0xff;
+        if (first < 0x80) {
+            return first;
+        }
+        final int count = first & 0x7f;
+        if (count == 0 || count > 4 || encoded.length < offset + 1 + count) {
+            throw new IOException("Malformed CRL: unsupported length encoding at offset " + offset + ".");
+        }
+        long length = 0;
+        for (int i = 1; i <= count; i++) {
+            length = (length << 8) | (encoded[offset + i] & 0xff);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed CRL: length too large at offset " + offset + ".");
+        }
+        return (int) length;
+    }
+
+    /** @return the number of bytes needed for the DER tag and length of contents of the given length */
+    private static int headerLength(final long contentLength) {
+        if (contentLength < 0x80) {
+            return 2;
+        }
+        int count = 1;
+        for (long remaining = contentLength >>> 8; remaining != 0; remaining >>>= 8) {
+            count++;
+        }
+        return 2 + count;
+    }
+
+    private static void writeHeader(final OutputStream out, final int tag, final long contentLength) throws IOException {
+        out.write(tag);
+        if (contentLength < 0x80) {
+            out.write((int) contentLength);
+        } else {
+            final int count = headerLength(contentLength) - 2;
+            out.write(0x80 | count);
+            for (int i = count - 1; i >= 0; i--) {
+                out.write((int) (contentLength >>> (8 * i)));
+            }
+        }
+    }
+
+    /** A signed CRL whose revoked certificate entries are kept in a temporary file until it has been written */
+    private static class SignedCrl implements AutoCloseable {
+        private final Path entriesFile;
+        /** Length of the encoded entries, or -1 if the revokedCertificates field should be omitted */
+        private final long entriesLength;
+        /** False if the file of entries is owned by the caller, see {@link IncrementalCrlEntries} */
+        private final boolean deleteEntriesFile;
+        private final byte[] tbsPrefix;
+        private final byte[] encodedExtensions;
+        private final byte[] encodedSignatureAlgorithm;
+        private final long tbsContentLength;
+        private byte[] encodedSignature;
+        private long contentLength;
+        private long length;
+
+        private SignedCrl(final Path entriesFile, final long entriesLength, final boolean deleteEntriesFile, final byte[] tbsPrefix,
+                final byte[] encodedExtensions, final byte[] encodedSignatureAlgorithm) {
+            this.entriesFile = entriesFile;
+            this.entriesLength = entriesLength;
+            this.deleteEntriesFile = deleteEntriesFile;
+            this.tbsPrefix = tbsPrefix;
+            this.encodedExtensions = encodedExtensions;
+            this.encodedSignatureAlgorithm = encodedSignatureAlgorithm;
+            long tbsContent = tbsPrefix.length;
+            if (entriesLength >= 0) {
+                tbsContent += headerLength(entriesLength) + entriesLength;
+            }
+            if (encodedExtensions != null) {
+                tbsContent += encodedExtensions.length;
+            }
+            this.tbsContentLength = tbsContent;
+        }
+
+        private long getTbsLength() {
+            return headerLength(tbsContentLength) + tbsContentLength;
+        }
+
+        private void setSignature(final byte[] encodedSignature) {
+            this.encodedSignature = encodedSignature;
+            this.contentLength = getTbsLength() + encodedSignatureAlgorithm.length + encodedSignature.length;
+            this.length = headerLength(contentLength) + contentLength;
+        }
+
+        private void writeTbsTo(final OutputStream out) throws IOException {
+            writeHeader(out, BERTags.SEQUENCE | BERTags.CONSTRUCTED, tbsContentLength);
+            out.write(tbsPrefix);
+            if (entriesLength >= 0) {
+                writeHeader(out, BERTags.SEQUENCE | BERTags.CONSTRUCTED, entriesLength);
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                try (final InputStream entriesIn = new BufferedInputStream(Files.newInputStream(entriesFile), BUFFER_SIZE)) {
+                    int read;
+                    while ((read = entriesIn.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+            }
+            if (encodedExtensions != null) {
+                out.write(encodedExtensions);
+            }
+        }
+
+        private void writeTo(final OutputStream out) throws IOException {
+            writeHeader(out, BERTags.SEQUENCE | BERTags.CONSTRUCTED, contentLength);
+            writeTbsTo(out);
+            out.write(encodedSignatureAlgorithm);
+            out.write(encodedSignature);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deleteEntriesFile) {
+                Files.deleteIfExists(entriesFile);
+            }
+        }
+    }
+
+    /** Writes into a preallocated array, so that the encoded CRL is not copied when it is complete */
+    private static class ByteArrayWriter extends OutputStream {
+        private final byte[] target;
+        private int position = 0;
+
+        private ByteArrayWriter(final byte[] target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(final int b) {
+            target[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            System.arraycopy(b, off, target, position, len);
+            position += len;
+        }
+    }
+}
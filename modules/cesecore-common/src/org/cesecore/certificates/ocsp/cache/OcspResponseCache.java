@@ -0,0 +1,295 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Bounded in-memory cache of signed OCSP responses, keyed on the CertID of the request (issuer name hash, issuer key hash,
+ * hash algorithm and serial number).
+ * <p>
+ * Only responses that can be served to any client are cached, i.e. single responses without nonce. Entries are served until
+ * the nextUpdate of the response and are dropped when the status of the certificate changes. The cache is bounded both by
+ * number of entries and by (approximate) memory usage, evicting the least recently used entries first.
+ * <p>
+ * To avoid caching a response built from a status that was changed while the response was being produced, callers should
+ * read {@link #getGeneration()} before the status lookup and pass it to {@link #putResponse}. The response is then only
+ * cached if nothing has been invalidated in between.
+ */
+public enum OcspResponseCache {
+    INSTANCE;
+
+    private final static Logger log = Logger.getLogger(OcspResponseCache.class);
+
+    private final ReentrantLock lock = new ReentrantLock(false);
+    /** Access ordered, so iteration starts at the least recently used entry */
+    private final LinkedHashMap<CacheKey, OcspResponseCacheEntry> cache = new LinkedHashMap<>(1024, 0.75f, true);
+    /** All keys cached for a certain serial number, so that all hash algorithm variants can be invalidated at once */
+    private final Map<BigInteger, List<CacheKey>> keysBySerialNumber = new HashMap<>();
+    private long currentSize = 0;
+    private volatile long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /** Key for a CertID. The hash algorithm is part of the key, since the name and key hashes depend on it. */
+    private static final class CacheKey {
+        private final byte[] issuerNameHash;
+        private final byte[] issuerKeyHash;
+        private final ASN1ObjectIdentifier hashAlgorithm;
+        private final BigInteger serialNumber;
+        private final int hashCode;
+
+        private CacheKey(final CertificateID certId) {
+            this.issuerNameHash = certId.getIssuerNameHash();
+            this.issuerKeyHash = certId.getIssuerKeyHash();
+            this.hashAlgorithm = certId.getHashAlgOID();
+            this.serialNumber = certId.getSerialNumber();
+            int result = Arrays.hashCode(issuerNameHash);
+            result = 31 * result + Arrays.hashCode(issuerKeyHash);
+            result = 31 * result + hashAlgorithm.hashCode();
+            result = 31 * result + serialNumber.hashCode();
+            this.hashCode = result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey other = (CacheKey) obj;
+            return hashCode == other.hashCode && serialNumber.equals(other.serialNumber) && hashAlgorithm.equals(other.hashAlgorithm)
+                    && Arrays.equals(issuerNameHash, other.issuerNameHash) && Arrays.equals(issuerKeyHash, other.issuerKeyHash);
+        }
+    }
+
+    /** @return true if the cache is enabled in the configuration */
+    public boolean isEnabled() {
+        return OcspConfiguration.isResponseCacheEnabled();
+    }
+
+    /** @return a value that changes every time something is invalidated in the cache */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param certId the CertID of the request
+     * @return a cached response that is still valid, or null if none exist
+     */
+    public OcspResponseCacheEntry getResponse(final CertificateID certId) {
+        final CacheKey key = new CacheKey(certId);
+        lock.lock();
+        try {
+            final OcspResponseCacheEntry entry = cache.get(key);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (entry.isExpired(System.currentTimeMillis())) {
+                removeEntry(key);
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a signed response to the cache, evicting the least recently used entries if the cache is full.
+     *
+     * @param certId the CertID of the request
+     * @param ocspResponse the DER encoded OCSPResp
+     * @param nextUpdate the nextUpdate of the single response in milliseconds since epoch
+     * @param maxAge the max-age in milliseconds the response was produced with
+     * @param signerCertificate the certificate that signed the response
+     * @param generation the value of {@link #getGeneration()} read before the certificate status was looked up
+     * @return true if the response was cached
+     */
+    public boolean putResponse(final CertificateID certId, final byte[] ocspResponse, final long nextUpdate, final long maxAge,
+            final X509Certificate signerCertificate, final long generation) {
+        final OcspResponseCacheEntry entry = new OcspResponseCacheEntry(ocspResponse, nextUpdate, maxAge, signerCertificate);
+        if (entry.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        final int maxEntries = OcspConfiguration.getResponseCacheMaxEntries();
+        final long maxSize = OcspConfiguration.getResponseCacheMaxSize();
+        if (maxEntries <= 0 || entry.getSize() > maxSize) {
+            return false;
+        }
+        final CacheKey key = new CacheKey(certId);
+        lock.lock();
+        try {
+            if (generation != this.generation) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Not caching OCSP response for serial number " + certId.getSerialNumber().toString(16)
+                            + " since the cache was invalidated while the response was produced.");
+                }
+                return false;
+            }
+            removeEntry(key);
+            cache.put(key, entry);
+            keysBySerialNumber.computeIfAbsent(key.serialNumber, k -> new ArrayList<>(2)).add(key);
+            currentSize += entry.getSize();
+            // Evict least recently used entries until we are within bounds again
+            final Iterator<Map.Entry<CacheKey, OcspResponseCacheEntry>> iterator = cache.entrySet().iterator();
+            while ((cache.size() > maxEntries || currentSize > maxSize) && iterator.hasNext()) {
+                final Map.Entry<CacheKey, OcspResponseCacheEntry> eldest = iterator.next();
+                iterator.remove();
+                removeFromSerialNumberIndex(eldest.getKey());
+                currentSize -= eldest.getValue().getSize();
+                evictions.incrementAndGet();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached responses for the given serial number, regardless of issuer and hash algorithm.
+     * Invoked when the revocation status of a certificate changes.
+     */
+    public void invalidate(final BigInteger serialNumber) {
+        lock.lock();
+        try {
+            generation++;
+            final List<CacheKey> keys = keysBySerialNumber.remove(serialNumber);
+            if (keys != null) {
+                for (final CacheKey key : keys) {
+                    final OcspResponseCacheEntry removed = cache.remove(key);
+                    if (removed != null) {
+                        currentSize -= removed.getSize();
+                        invalidations.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes all cached responses, e.g. when the OCSP signing cache or the status of a CA changes. */
+    public void flush() {
+        lock.lock();
+        try {
+            generation++;
+            invalidations.addAndGet(cache.size());
+            cache.clear();
+            keysBySerialNumber.clear();
+            currentSize = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the number of responses currently in the cache */
+    public int size() {
+        lock.lock();
+        try {
+            return cache.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the approximate number of bytes used by the cached responses */
+    public long getCurrentSize() {
+        lock.lock();
+        try {
+            return currentSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** @return the number of entries removed to stay within the configured bounds */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /** @return the number of entries removed since they had passed their nextUpdate */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /** @return the number of entries removed because of a status change or a flush */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /** @return a one-line summary of the cache statistics, suitable for health checks and logging */
+    public String getStatistics() {
+        return "OCSP response cache: enabled=" + isEnabled() + ", entries=" + size() + ", bytes=" + getCurrentSize() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ", expirations=" + getExpirations() + ", invalidations="
+                + getInvalidations();
+    }
+
+    /** Must be called while holding the lock */
+    private void removeEntry(final CacheKey key) {
+        final OcspResponseCacheEntry removed = cache.remove(key);
+        if (removed != null) {
+            currentSize -= removed.getSize();
+            removeFromSerialNumberIndex(key);
+        }
+    }
+
+    /** Must be called while holding the lock */
+    private void removeFromSerialNumberIndex(final CacheKey key) {
+        final List<CacheKey> keys = keysBySerialNumber.get(key.serialNumber);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysBySerialNumber.remove(key.serialNumber);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * A signed OCSP response held by {@link OcspResponseCache}, together with the information needed to serve it again.
+ */
+public class OcspResponseCacheEntry {
+
+    /** Rough per entry overhead of the cache key, map node and this object, used for the memory accounting. */
+    static final int ENTRY_OVERHEAD = 256;
+
+    private final byte[] ocspResponse;
+    private final long nextUpdate;
+    private final long maxAge;
+    private final X509Certificate signerCertificate;
+
+    public OcspResponseCacheEntry(final byte[] ocspResponse, final long nextUpdate, final long maxAge, final X509Certificate signerCertificate) {
+        this.ocspResponse = ocspResponse;
+        this.nextUpdate = nextUpdate;
+        this.maxAge = maxAge;
+        this.signerCertificate = signerCertificate;
+    }
+
+    /** @return the DER encoded OCSPResp */
+    public byte[] getOcspResponse() {
+        return ocspResponse;
+    }
+
+    /** @return the nextUpdate of the response in milliseconds since epoch, after which the entry must not be served */
+    public long getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /** @return the max-age in milliseconds the response was produced with */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public X509Certificate getSignerCertificate() {
+        return signerCertificate;
+    }
+
+    public boolean isExpired(final long now) {
+        return nextUpdate <= now;
+    }
+
+    /** @return approximate number of bytes this entry occupies in memory */
+    long getSize() {
+        return ocspResponse.length + ENTRY_OVERHEAD;
+    }
+}
@@ -0,0 +1,34 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.exception;
+
+import com.keyfactor.CesecoreException;
+
+/**
+ * Thrown when an OCSP response can not be signed right now, since all signing threads are busy and the signing queue is full.
+ * The client should be answered with "tryLater".
+ */
+public class OcspSigningOverloadException extends CesecoreException {
+
+    private static final long serialVersionUID = -2263914125394431750L;
+
+    /**
+     * Constructor used to create exception with an error message. Calls the same constructor in
+     * baseclass <code>Exception</code>.
+     *
+     * @param message Human readable error message, can not be NULL.
+     */
+    public OcspSigningOverloadException(final String message) {
+        super(message);
+    }
+}
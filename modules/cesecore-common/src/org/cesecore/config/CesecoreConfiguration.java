@@ -180,6 +180,15 @@ public final class CesecoreConfiguration {
         return getLongValue("globalconfiguration.cachetime", 30000L, "milliseconds to cache authorization");
     }
 
+    /**
+     * @return true if cached CAs, crypto tokens and profiles should be revalidated by reading the id and row version of all rows,
+     *         instead of reading and comparing each object when it has expired.
+     */
+    public static boolean isCacheRevalidationByRowVersion() {
+        final String value = ConfigurationHolder.getString("cache.revalidatebyrowversion");
+        return value!=null && Boolean.parseBoolean(value.trim());
+    }
+
     private static long getLongValue(final String propertyName, final long defaultValue, final String unit) {
         final String value = ConfigurationHolder.getString(propertyName);
         long time = defaultValue;
@@ -288,6 +297,15 @@ public final class CesecoreConfiguration {
         return value!=null && Boolean.parseBoolean(value.trim());
     }
 
+    /**
+     * @return true if the data of CAs, profiles, roles and internal key bindings should be stored in the compact binary format of
+     *         DataMapSerializer instead of as XML. Both formats are always read.
+     */
+    public static boolean useBinaryDataMaps() {
+        final String value = ConfigurationHolder.getString("database.useBinaryDataMaps");
+        return value!=null && Boolean.parseBoolean(value.trim());
+    }
+
     /** If database integrity protection should be used or not. */
     public static boolean useDatabaseIntegrityProtection(final String tableName) {
         // First check if we have explicit configuration for this entity
@@ -319,14 +337,6 @@ public final class CesecoreConfiguration {
         return (int) getLongValue("database.crlgenfetchsize", 500000L, "rows");
     }
 
-    /**
-     * Whether EJBCA should request ordered fetching of revoked certificates when generating CRLs.
-     * This is a workaround for MS-SQL.
-     */
-    public static boolean getDatabaseRevokedCertInfoFetchOrdered() {
-        return Boolean.TRUE.toString().equalsIgnoreCase(ConfigurationHolder.getString("database.crlgenfetchordered"));
-    }
-
     /** @return a list of enabled TLS protocol versions and cipher suites */
     /*
      * Java 6: http://docs.oracle.com/javase/6/docs/technotes/guides/security/SunProviders.html#SunJSSEProvider
@@ -62,6 +62,11 @@ public class OcspConfiguration {
     public static final String REVOKED_MAX_AGE = "ocsp.revoked.maxAge";
     public static final String INCLUDE_SIGNING_CERT = "ocsp.includesignercert";
     public static final String INCLUDE_CERT_CHAIN = "ocsp.includecertchain";
+    public static final String RESPONSE_CACHE_ENABLED = "ocsp.responsecache.enabled";
+    public static final String RESPONSE_CACHE_MAX_ENTRIES = "ocsp.responsecache.maxentries";
+    public static final String RESPONSE_CACHE_MAX_SIZE = "ocsp.responsecache.maxsize";
+    public static final String SIGNING_THREADS = "ocsp.signing.threads";
+    public static final String SIGNING_QUEUE_SIZE = "ocsp.signing.queuesize";
     
     @Deprecated //Remove this value once upgrading to 6.7.0 has been dropped
     public static final String RESPONDER_ID_TYPE = "ocsp.responderidtype";
@@ -392,6 +397,73 @@ public class OcspConfiguration {
         return !ConfigurationHolder.getString("ocsphealthcheck.checkSigningCertificateValidity").toLowerCase().contains("false");
     }
 
+    /**
+     * @return true if signed responses to nonce-less single requests should be kept in memory and re-used until their nextUpdate.
+     */
+    public static boolean isResponseCacheEnabled() {
+        return Boolean.parseBoolean(ConfigurationHolder.getString(RESPONSE_CACHE_ENABLED));
+    }
+
+    /**
+     * @return the maximum number of responses that are kept in the in-memory OCSP response cache. Default 100000.
+     */
+    public static int getResponseCacheMaxEntries() {
+        final int defaultValue = 100000;
+        try {
+            return Integer.parseInt(ConfigurationHolder.getString(RESPONSE_CACHE_MAX_ENTRIES));
+        } catch (NumberFormatException e) {
+            log.warn(RESPONSE_CACHE_MAX_ENTRIES + " is not a decimal integer. Using default value: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the approximate maximum number of bytes the in-memory OCSP response cache may use. Default 64 MiB.
+     */
+    public static long getResponseCacheMaxSize() {
+        final long defaultValue = 64L * 1024L * 1024L;
+        try {
+            return Long.parseLong(ConfigurationHolder.getString(RESPONSE_CACHE_MAX_SIZE));
+        } catch (NumberFormatException e) {
+            log.warn(RESPONSE_CACHE_MAX_SIZE + " is not a decimal integer. Using default value: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the number of worker threads signing OCSP responses for each OCSP signer (CA or key binding). Default 16.
+     */
+    public static int getSigningThreads() {
+        final int defaultValue = 16;
+        try {
+            final int value = Integer.parseInt(ConfigurationHolder.getString(SIGNING_THREADS));
+            if (value > 0) {
+                return value;
+            }
+            log.warn(SIGNING_THREADS + " must be a positive integer. Using default value: " + defaultValue);
+        } catch (NumberFormatException e) {
+            log.warn(SIGNING_THREADS + " is not a decimal integer. Using default value: " + defaultValue);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the number of OCSP responses that may wait for a signing thread before new requests are answered with "tryLater". Default 1024.
+     */
+    public static int getSigningQueueSize() {
+        final int defaultValue = 1024;
+        try {
+            final int value = Integer.parseInt(ConfigurationHolder.getString(SIGNING_QUEUE_SIZE));
+            if (value > 0) {
+                return value;
+            }
+            log.warn(SIGNING_QUEUE_SIZE + " must be a positive integer. Using default value: " + defaultValue);
+        } catch (NumberFormatException e) {
+            log.warn(SIGNING_QUEUE_SIZE + " is not a decimal integer. Using default value: " + defaultValue);
+        }
+        return defaultValue;
+    }
+
     public static boolean getLogSafer() {
         final String value = ConfigurationHolder.getString("ocsp.log-safer");
         return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
@@ -13,12 +13,14 @@
 package org.cesecore.internal;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.log4j.Logger;
 
@@ -29,17 +31,28 @@ import org.apache.log4j.Logger;
  * will prevent memory leaks to some extent through checking for stale data
  * during updates.
  * 
+ * Entries are replaced one at a time in concurrent maps, so readers are never blocked by updates and an update does not
+ * copy the whole cache. When an entry has expired, {@link #shouldCheckForUpdates(int)} only returns true for a single
+ * caller, so only one thread at a time reloads the object from the database while the others keep using the cached object.
+ * <p>
+ * Callers that know the row version of the database rows can instead revalidate all entries at once: when
+ * {@link #shouldRevalidate()} returns true, the caller reads the id and row version of all rows and passes them to
+ * {@link #revalidate(Map)}. Unchanged entries are then kept for another cache time without reading the objects, while
+ * changed entries expire so that the next {@link #shouldCheckForUpdates(int)} reloads them.
+ * 
  * @version $Id$
  */
 public abstract class CommonCacheBase<T> implements CommonCache<T> {
     
     private class CacheEntry {
-        long lastUpdate;
+        final AtomicLong lastUpdate;
         final int digest;
         final String name;
         final T object;
+        /** Row version of the database row the object was read from, or null if not known */
+        volatile Integer rowVersion;
         CacheEntry(long lastUpdate, int digest, String name, T object) {
-            this.lastUpdate = lastUpdate;
+            this.lastUpdate = new AtomicLong(lastUpdate);
             this.digest = digest;
             this.name = name;
             this.object = object;
@@ -47,8 +60,17 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     }
     
     private static final Logger log = Logger.getLogger(CommonCacheBase.class);
-    protected Map<Integer, CacheEntry> cache = new HashMap<>();
-    protected Map<String, Integer> nameToIdMap = new HashMap<>();
+    protected final Map<Integer, CacheEntry> cache = new ConcurrentHashMap<>();
+    protected final Map<String, Integer> nameToIdMap = new ConcurrentHashMap<>();
+    private final Map<String, Integer> nameToIdMapView = Collections.unmodifiableMap(nameToIdMap);
+    private final AtomicLong lastRevalidation = new AtomicLong();
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
 
     /** @return how long to cache objects in milliseconds. */
     protected abstract long getCacheTime();
@@ -60,8 +82,10 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     public T getEntry(final Integer id) {
         final CacheEntry cacheEntry = getCacheEntry(id);
         if (cacheEntry == null) {
+            misses.increment();
             return null;
         }
+        hits.increment();
         return cacheEntry.object;
     }
 
@@ -100,20 +124,79 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
             // No such object in cache, caller should check db
             return true;
         }
-        if (cacheEntry.lastUpdate+cacheTime<now) {
-            // We probably need to update, but re-check using synchronization
-            synchronized (cacheEntry) {
-                if (cacheEntry.lastUpdate+cacheTime<now) {
-                    // Object is present in cache, but cache has expired so the caller should update the cache
-                    // To prevent other threads to ask the database for the same thing, we reset the cache time.
-                    cacheEntry.lastUpdate = now;
-                    return true;
-                }
+        final long lastUpdate = cacheEntry.lastUpdate.get();
+        if (lastUpdate+cacheTime<now) {
+            // Object is present in cache, but cache has expired so the caller should update the cache
+            // To prevent other threads to ask the database for the same thing, we reset the cache time. Only the thread that
+            // manages to do so will reload the object.
+            if (cacheEntry.lastUpdate.compareAndSet(lastUpdate, now)) {
+                reloads.increment();
+                return true;
             }
         }
         return false;
     }
 
+    /**
+     * Checks if it is time to revalidate all entries with {@link #revalidate(Map)}. This is done twice per cache time, so that
+     * unchanged entries are confirmed before they expire. Only a single caller is asked to revalidate at a time.
+     * 
+     * @return true if the caller should read the row versions from the database and call {@link #revalidate(Map)}
+     */
+    public boolean shouldRevalidate() {
+        final long cacheTime = getCacheTime();
+        if (cacheTime <= 0 || cache.isEmpty()) {
+            // Every lookup checks the database anyway, or there is nothing to revalidate
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        final long last = lastRevalidation.get();
+        return last + cacheTime / 2 < now && lastRevalidation.compareAndSet(last, now);
+    }
+
+    /**
+     * Compares the row versions of the cached objects with the current row versions in the database. Unchanged entries are kept
+     * for another cache time, changed entries and entries without a known row version expire, and entries that no longer exist in
+     * the database are removed.
+     * 
+     * @param rowVersions map from id to row version of all rows in the database
+     */
+    public void revalidate(final Map<Integer, Integer> rowVersions) {
+        final long now = System.currentTimeMillis();
+        int expired = 0;
+        for (final Entry<Integer, CacheEntry> entry : cache.entrySet()) {
+            final CacheEntry cacheEntry = entry.getValue();
+            final Integer rowVersion = rowVersions.get(entry.getKey());
+            if (rowVersion == null) {
+                removeCacheEntry(entry.getKey(), cacheEntry);
+                expired++;
+            } else if (rowVersion.equals(cacheEntry.rowVersion)) {
+                cacheEntry.lastUpdate.accumulateAndGet(now, Math::max);
+            } else {
+                cacheEntry.lastUpdate.set(0);
+                expired++;
+            }
+        }
+        revalidations.increment();
+        if (log.isDebugEnabled()) {
+            log.debug("Revalidated " + cache.size() + " cache entries against " + rowVersions.size() + " database rows. " + expired
+                    + " entries had been changed or removed.");
+        }
+    }
+
+    /**
+     * Records the row version of the database row that the cached object was read from, for use by {@link #revalidate(Map)}.
+     * Call after {@link #updateWith(int, int, String, Object)}, also when the object did not change.
+     * 
+     * @param id the id of the cached object
+     * @param rowVersion the row version of the database row
+     */
+    public void setRowVersion(final int id, final int rowVersion) {
+        final CacheEntry cacheEntry = getCacheEntry(id);
+        if (cacheEntry != null) {
+            cacheEntry.rowVersion = rowVersion;
+        }
+    }
 
     @Override
     public void removeEntry(int id) {
@@ -137,21 +220,26 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     @Override
     public void updateWith(int id, int digest, String name, T object) {
         final Integer key = id;
+        boolean changed = false;
         if (name==null || object == null || getCacheTime()<0) {
             // Remove from cache
             setCacheEntry(key, null);
+            changed = true;
         } else {
             // Same version in cache as provided Object?
             if (willUpdate(id, digest)) {
+                changed = true;
                 final CacheEntry cacheEntry = getCacheEntry(key);
                 // Create new object and store it in the cache.
                 final CacheEntry newCacheEntry = new CacheEntry(System.currentTimeMillis(), digest, name, object);
                 setCacheEntry(key, newCacheEntry);
+                updates.increment();
                 if (log.isDebugEnabled()) {
                     log.debug("Updated " + object.getClass().getSimpleName() + " cache. Digest was " + digest + ", cacheEntry digest was " + (cacheEntry == null ? "null" : cacheEntry.digest));
                 }
             }
         }
+        purgeStaleEntries(changed);
     }
     
     @Override
@@ -165,73 +253,109 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
         return cache.get(key);
     }
     
-    /** Set or remove cache entry. */
+    /** Set or remove cache entry. Concurrent updates of the same entry are applied one at a time, together with the name mapping. */
     private void setCacheEntry(final Integer key, final CacheEntry cacheEntry) {
-        final Map<Integer, CacheEntry> cacheStage = new HashMap<>();
-        final Map<String, Integer> nameToIdMapStage = new HashMap<>();
-        final long maxCacheLifeTime = getMaxCacheLifeTime();
-        final long staleCutOffTime = System.currentTimeMillis()-maxCacheLifeTime;
-        synchronized (this) {
-            // Process all entries except for the one that will change
-            for (final Entry<Integer,CacheEntry> entry : cache.entrySet()) {
-                final Integer currentId = entry.getKey();
-                if (!key.equals(currentId)) {
-                    final CacheEntry currentCacheEntry = entry.getValue();
-                    // By flushing older entries we at least limit how much
-                    // this registry will grow when used for short-lived objects
-                    // in a clustered environment.
-                    if (maxCacheLifeTime<1 || currentCacheEntry.lastUpdate >= staleCutOffTime) {
-                        // Keep using the current entry in the new cache
-                        cacheStage.put(entry.getKey(), currentCacheEntry);
-                        nameToIdMapStage.put(currentCacheEntry.name, entry.getKey());
-                    }
-                }
+        cache.compute(key, (id, currentCacheEntry) -> {
+            if (currentCacheEntry != null && (cacheEntry == null || !currentCacheEntry.name.equals(cacheEntry.name))) {
+                // Only remove the name mapping if it has not already been taken over by another entry
+                nameToIdMap.remove(currentCacheEntry.name, id);
             }
-            // Process the one that will change
-            if (cacheEntry == null) {
-                // Don't add if to the new version of the cache if it existed (e.g. remove it)
-            } else {
-                cacheStage.put(key, cacheEntry);
-                nameToIdMapStage.put(cacheEntry.name, key);
+            if (cacheEntry != null) {
+                nameToIdMap.put(cacheEntry.name, id);
+            }
+            return cacheEntry;
+        });
+    }
+
+    /**
+     * By flushing older entries we at least limit how much this registry will grow when used for short-lived objects in a clustered environment.
+     * Since this scans the whole cache, it is only done when an entry has been changed, or else at most twice per max cache life time.
+     */
+    private void purgeStaleEntries(final boolean changed) {
+        final long maxCacheLifeTime = getMaxCacheLifeTime();
+        if (maxCacheLifeTime<1) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long last = lastPurge.get();
+        if (!changed && (last + maxCacheLifeTime / 2 >= now || !lastPurge.compareAndSet(last, now))) {
+            return;
+        }
+        if (changed) {
+            lastPurge.set(now);
+        }
+        final long staleCutOffTime = now-maxCacheLifeTime;
+        for (final Entry<Integer,CacheEntry> entry : cache.entrySet()) {
+            if (entry.getValue().lastUpdate.get() < staleCutOffTime) {
+                removeCacheEntry(entry.getKey(), entry.getValue());
             }
-            cache = cacheStage;
-            nameToIdMap = Collections.unmodifiableMap(nameToIdMapStage);
         }
     }
 
+    /** Remove the cache entry, unless it has been replaced by another thread. */
+    private void removeCacheEntry(final Integer key, final CacheEntry cacheEntry) {
+        cache.computeIfPresent(key, (id, currentCacheEntry) -> {
+            if (currentCacheEntry != cacheEntry) {
+                return currentCacheEntry;
+            }
+            nameToIdMap.remove(currentCacheEntry.name, id);
+            return null;
+        });
+    }
+
     @Override
     public Map<String,Integer> getNameToIdMap() {
-        return nameToIdMap;
+        return nameToIdMapView;
     }
 
     @Override
     public void flush() {
-        final Map<Integer, CacheEntry> cacheStage = new HashMap<>();
-        final Map<String, Integer> nameToIdMapStage = new HashMap<>();
-        replaceCache(cacheStage, nameToIdMapStage);
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing cache. " + getStatistics());
+        }
+        for (final Entry<Integer,CacheEntry> entry : cache.entrySet()) {
+            removeCacheEntry(entry.getKey(), entry.getValue());
+        }
     }
     
     @Override
     public void replaceCacheWith(List<Integer> keys) {
-        Map<Integer, CacheEntry> cacheStage = new HashMap<>();
-        Map<String, Integer> nameToIdMapStage = new HashMap<>();
-        
-        for(Integer key : keys) {
-            CacheEntry entry = cache.get(key);
-            cacheStage.put(key, entry);
-            
-            String name = entry.name;
-            nameToIdMapStage.put(name, nameToIdMap.get(name));
-        }
-        
-        replaceCache(cacheStage, nameToIdMapStage);
-    }
-    
-    private void replaceCache(Map<Integer, CacheEntry> cacheStage, Map<String, Integer> nameToIdMapStage) {
-        synchronized (this) {
-            cache = cacheStage;
-            nameToIdMap = nameToIdMapStage;
+        final Set<Integer> keysToKeep = new HashSet<>(keys);
+        for (final Entry<Integer,CacheEntry> entry : cache.entrySet()) {
+            if (!keysToKeep.contains(entry.getKey())) {
+                removeCacheEntry(entry.getKey(), entry.getValue());
+            }
         }
     }
-    
-}
\ No newline at end of file
+
+    /** @return the number of times {@link #getEntry(Integer)} found a cached object */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of times {@link #getEntry(Integer)} did not find a cached object */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return the number of times a cached object had expired and a single caller was asked to reload it */
+    public long getReloadCount() {
+        return reloads.sum();
+    }
+
+    /** @return the number of times a new or changed object was stored in the cache */
+    public long getUpdateCount() {
+        return updates.sum();
+    }
+
+    /** @return the number of times all entries were revalidated against the row versions in the database */
+    public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    /** @return a human readable summary of the cache size and the counters */
+    public String getStatistics() {
+        return "Entries: " + cache.size() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", reloads: " + getReloadCount()
+                + ", updates: " + getUpdateCount() + ", revalidations: " + getRevalidationCount();
+    }
+}
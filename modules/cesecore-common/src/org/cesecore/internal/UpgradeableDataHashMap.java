@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.cesecore.util.Base64GetHashMap;
+import org.cesecore.util.LazyDataMap;
 
 
 
@@ -93,7 +94,8 @@ public abstract class UpgradeableDataHashMap implements IUpgradeableData, Serial
     	// By creating a new LinkedHashMap (Base64GetHashMap) here we slip through a possible upgrade issue when upgrading
     	// from older implementation that used a plain HashMap instead.
     	// Both newer and older versions can be casted to HashMap.
-    	data = new Base64GetHashMap((HashMap<?, ?>)savedData);
+    	// A LazyDataMap is freshly decoded from the database, so it is used as it is to keep its values lazily decoded.
+    	data = savedData instanceof LazyDataMap ? (LazyDataMap) savedData : new Base64GetHashMap((HashMap<?, ?>)savedData);
     	if(Float.compare(getLatestVersion(), getVersion()) > 0) {
     		upgrade();
     		upgraded = true;
@@ -101,9 +101,13 @@ public class RocaBrokenKey {
 //        return true;
 //    }
 
+    private static final SmallPrimeProductTree primeTree = SmallPrimeProductTree.forPrimes(prims);
+
     public static boolean isAffected(BigInteger modulus) {
+        // One division of the (large) modulus by the product of all primes, so the remainders below are taken of a small number
+        final BigInteger reduced = primeTree.reduce(modulus);
         for (int i = 0; i < primes.length; i++) {
-            if (BigInteger.ONE.shiftLeft(modulus.remainder(primes[i]).intValue()).and(markers[i]).equals(BigInteger.ZERO)) {
+            if (!markers[i].testBit(reduced.remainder(primes[i]).intValue())) {
                 return false;
             }
         }
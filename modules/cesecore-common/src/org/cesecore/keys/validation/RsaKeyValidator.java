@@ -133,24 +133,16 @@ public class RsaKeyValidator extends KeyValidatorBase {
     }
 
     /**
-     * Gets the smallest factor of the positive natural number greater than 2.
+     * Tests if the number has a prime factor less than or equal to intFactor, with a single GCD with the product of those primes.
      * @param n the number
-     * @return the smallest factor or 2 for n=0.
+     * @param intFactor the largest factor to test, values less than 3 are not tested
+     * @return true if n has a factor 2..intFactor, including n=0.
      */
     protected static final boolean hasSmallerFactorThan(BigInteger n, int intFactor) {
-        final BigInteger two = new BigInteger("2");
         if (intFactor < 3) {
             return false;
         }
-        if (n.mod(two).equals(BigInteger.ZERO) && intFactor > 2) {
-            return true;
-        }
-        for (int i = intFactor; i > 2; i = i - 2) {
-            if (n.mod(BigInteger.valueOf(i)).equals(BigInteger.ZERO)) {
-                return true;
-            }
-        }
-        return false;
+        return SmallPrimeProductTree.forPrimesUpTo(intFactor).hasCommonFactor(n);
     }
 
 
@@ -667,7 +659,7 @@ public class RsaKeyValidator extends KeyValidatorBase {
             }
         }
         if (null != getPublicKeyModulusMinFactor()) {
-            if (hasSmallerFactorThan(publicKeyModulus, getPublicKeyModulusMinFactor() + 1)) {
+            if (hasSmallerFactorThan(publicKeyModulus, getPublicKeyModulusMinFactor() - 1)) {
                 messages.add("Invalid: RSA public key modulus smallest factor is less than " + getPublicKeyModulusMinFactor());
             } else {
                 log.trace("getPublicKeyModulusMinFactor passed");
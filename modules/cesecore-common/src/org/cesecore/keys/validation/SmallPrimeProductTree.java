@@ -0,0 +1,131 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.validation;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Product tree over a set of small primes, used to test RSA public key moduli for small factors.
+ * <p>
+ * The primes are multiplied pairwise, level by level like the nodes of a binary tree, so the root is the product of all primes (the
+ * primorial, for the primes up to a bound). Multiplying numbers of similar size is much faster than multiplying the primes one by one
+ * into an ever growing product. A modulus has a factor among the primes if and only if its greatest common divisor with the product
+ * is not 1, which costs a single GCD instead of one big number division per prime.
+ * <p>
+ * Instances are immutable and thread safe. The tree of the primes up to the most recently used bound is kept and shared by all
+ * validators, since all RSA key validators normally use the same bound.
+ */
+public final class SmallPrimeProductTree {
+
+    /** The tree of the primes up to the most recently used bound */
+    private static volatile SmallPrimeProductTree treeForBound = null;
+
+    /** The bound of the primes, or -1 if the primes were given explicitly */
+    private final int bound;
+    private final int[] primes;
+    private final BigInteger product;
+
+    private SmallPrimeProductTree(final int bound, final int[] primes) {
+        this.bound = bound;
+        this.primes = primes;
+        BigInteger[] nodes = new BigInteger[Math.max(1, primes.length)];
+        nodes[0] = BigInteger.ONE;
+        for (int i = 0; i < primes.length; i++) {
+            nodes[i] = BigInteger.valueOf(primes[i]);
+        }
+        while (nodes.length > 1) {
+            final BigInteger[] parents = new BigInteger[(nodes.length + 1) / 2];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = 2 * i + 1 < nodes.length ? nodes[2 * i].multiply(nodes[2 * i + 1]) : nodes[2 * i];
+            }
+            nodes = parents;
+        }
+        product = nodes[0];
+    }
+
+    /**
+     * @param bound the largest prime to include
+     * @return the product tree of all primes less than or equal to the bound
+     */
+    public static SmallPrimeProductTree forPrimesUpTo(final int bound) {
+        final int effectiveBound = Math.max(1, bound);
+        SmallPrimeProductTree ret = treeForBound;
+        if (ret == null || ret.bound != effectiveBound) {
+            // Two threads may both create the tree of a new bound, which is harmless since the trees are equal
+            ret = new SmallPrimeProductTree(effectiveBound, sieve(effectiveBound));
+            treeForBound = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @param primes the primes
+     * @return the product tree of the given primes
+     */
+    public static SmallPrimeProductTree forPrimes(final int... primes) {
+        return new SmallPrimeProductTree(-1, primes.clone());
+    }
+
+    /** @return the primes of the tree */
+    public int[] getPrimes() {
+        return primes.clone();
+    }
+
+    /** @return the product of all primes of the tree */
+    public BigInteger getProduct() {
+        return product;
+    }
+
+    /**
+     * @param n the number to test
+     * @return true if any of the primes of the tree divides n. Zero is divisible by all primes.
+     */
+    public boolean hasCommonFactor(final BigInteger n) {
+        return primes.length > 0 && !getProduct().gcd(reduce(n)).equals(BigInteger.ONE);
+    }
+
+    /**
+     * Reduces n modulo the product of all primes. The remainder of n by any of the primes is the same as the remainder of the reduced
+     * number, which is much cheaper to compute when n is a large modulus and only some of the remainders are needed.
+     *
+     * @param n the number to reduce
+     * @return n modulo the product of all primes of the tree
+     */
+    public BigInteger reduce(final BigInteger n) {
+        return n.mod(getProduct());
+    }
+
+    /** @return the primes less than or equal to the bound, with the sieve of Eratosthenes */
+    private static int[] sieve(final int bound) {
+        if (bound < 2) {
+            return new int[0];
+        }
+        final boolean[] composite = new boolean[bound + 1];
+        int[] ret = new int[64];
+        int count = 0;
+        for (int i = 2; i <= bound; i++) {
+            if (composite[i]) {
+                continue;
+            }
+            if (count == ret.length) {
+                ret = Arrays.copyOf(ret, count * 2);
+            }
+            ret[count++] = i;
+            for (long multiple = (long) i * i; multiple <= bound; multiple += i) {
+                composite[(int) multiple] = true;
+            }
+        }
+        return Arrays.copyOf(ret, count);
+    }
+}
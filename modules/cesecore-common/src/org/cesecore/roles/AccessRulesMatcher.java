@@ -0,0 +1,194 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.roles;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Immutable prefix trie of access rules, compiled from a map of access rules.
+ * <p>
+ * {@link #hasAccessToResource(String)} gives the same result as {@link AccessRulesHelper#hasAccessToResource(HashMap, String)}
+ * for the rules the matcher was compiled from, but walks the resource path one segment at a time without creating any
+ * substrings, so it does not allocate any objects. Use it where the same rules are checked many times, like the cached
+ * access rules of an authentication token.
+ *
+ * @version $Id$
+ */
+public final class AccessRulesMatcher {
+
+    private static final Logger log = Logger.getLogger(AccessRulesMatcher.class);
+
+    /** Matcher without any rules, which denies access to all resources */
+    public static final AccessRulesMatcher EMPTY = new AccessRulesMatcher(new HashMap<String, Boolean>());
+
+    /** A path in the resource tree, like "/a/b". The root node is the empty path. */
+    private static final class Node {
+        /** State of a rule that is equal to this path, e.g. "/a/b", or null if there is no such rule */
+        private Boolean state;
+        /** State of a rule with trailing slash for this path, e.g. "/a/b/", or null if there is no such rule */
+        private Boolean stateWithTrailingSlash;
+        /** Open addressing hash table of child path segments and nodes. Empty until frozen. */
+        private String[] childSegments = null;
+        private Node[] children = null;
+        private Map<String, Node> childrenToFreeze = new HashMap<>();
+
+        /** @return the state for this path, with the same precedence as AccessRulesHelper, or null if no rule applies */
+        private Boolean getState() {
+            return state != null ? state : stateWithTrailingSlash;
+        }
+
+        private Node getOrAddChild(final String segment) {
+            Node child = childrenToFreeze.get(segment);
+            if (child == null) {
+                child = new Node();
+                childrenToFreeze.put(segment, child);
+            }
+            return child;
+        }
+
+        /** Converts the children to a hash table with a load factor of at most 0.5, recursively */
+        private void freeze() {
+            if (!childrenToFreeze.isEmpty()) {
+                int size = 2;
+                while (size < childrenToFreeze.size() * 2) {
+                    size <<= 1;
+                }
+                childSegments = new String[size];
+                children = new Node[size];
+                for (final Entry<String, Node> entry : childrenToFreeze.entrySet()) {
+                    int index = spread(entry.getKey().hashCode()) & (size - 1);
+                    while (childSegments[index] != null) {
+                        index = (index + 1) & (size - 1);
+                    }
+                    childSegments[index] = entry.getKey();
+                    children[index] = entry.getValue();
+                    entry.getValue().freeze();
+                }
+            }
+            childrenToFreeze = null;
+        }
+
+        /** @return the child for the path segment resource[start, end), or null if there is none */
+        private Node getChild(final String resource, final int start, final int end) {
+            if (childSegments == null) {
+                return null;
+            }
+            // Same hash as String.hashCode() of the segment, which is cached in the stored segments
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + resource.charAt(i);
+            }
+            final int mask = childSegments.length - 1;
+            final int length = end - start;
+            for (int index = spread(hash) & mask;; index = (index + 1) & mask) {
+                final String segment = childSegments[index];
+                if (segment == null) {
+                    return null;
+                }
+                if (segment.length() == length && segment.hashCode() == hash && segment.regionMatches(0, resource, start, length)) {
+                    return children[index];
+                }
+            }
+        }
+
+        private static int spread(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Compiles the access rules. The map is not referenced after this call.
+     *
+     * @param accessRules map from resource to access state, in normalized or non-normalized form
+     */
+    public AccessRulesMatcher(final Map<String, Boolean> accessRules) {
+        for (final Entry<String, Boolean> entry : accessRules.entrySet()) {
+            final String resource = entry.getKey();
+            if (resource == null || entry.getValue() == null || (!resource.isEmpty() && resource.charAt(0) != '/')) {
+                // Resources are always checked from the root, so such a rule can never apply
+                continue;
+            }
+            if (resource.endsWith("/")) {
+                // "/a/b/" applies to the path "/a/b", but also to the path "/a/b/" of a resource like "/a/b//c"
+                getOrAddNode(resource.substring(0, resource.length() - 1)).stateWithTrailingSlash = entry.getValue();
+            }
+            getOrAddNode(resource).state = entry.getValue();
+        }
+        root.freeze();
+    }
+
+    /** @return the node for the path, which is empty or starts with a '/' */
+    private Node getOrAddNode(final String path) {
+        Node node = root;
+        int start = 1;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            node = node.getOrAddChild(path.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /** @return true if the compiled access rules allow access to all the given resources */
+    public boolean hasAccessToResources(final String... resources) {
+        if (resources != null) {
+            for (final String resource : resources) {
+                if (!hasAccessToResource(resource)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** @return true if the compiled access rules allow access to the given resource. The rule for the longest matching path applies. */
+    public boolean hasAccessToResource(final String resource) {
+        if (resource == null || resource.isEmpty() || resource.charAt(0) != '/') {
+            return false;
+        }
+        // Treat "/a/b/c" and "/a/b/c/" the same
+        final int length = resource.charAt(resource.length() - 1) == '/' ? resource.length() - 1 : resource.length();
+        Node node = root;
+        Boolean state = root.getState();
+        int start = 1;
+        while (start <= length) {
+            int end = resource.indexOf('/', start);
+            if (end == -1 || end > length) {
+                end = length;
+            }
+            node = node.getChild(resource, start, end);
+            if (node == null) {
+                break;
+            }
+            final Boolean nodeState = node.getState();
+            if (nodeState != null) {
+                state = nodeState;
+            }
+            start = end + 1;
+        }
+        final boolean ret = state != null && state.booleanValue();
+        if (log.isTraceEnabled()) {
+            log.trace("hasAccessToResource: " + resource + ", " + ret);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,427 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Serializes the data maps of {@link org.cesecore.internal.UpgradeableDataHashMap} based objects (CAs, profiles, roles and internal
+ * key bindings) in the database. The maps are written either with java.beans.XMLEncoder, or, if enabled with
+ * {@link CesecoreConfiguration#useBinaryDataMaps()}, in a compact tagged binary format. Both formats can always be read, so rows
+ * written by older versions are read as before.
+ * <p>
+ * The binary format is stored as text: {@value #PREFIX}, followed by the Base64 encoding of a version byte, the number of
+ * entries, and the entries in iteration order. Each entry is a tagged key, the length of the value and a tagged value, so that
+ * the values can be decoded lazily by {@link LazyDataMap}. Strings, numbers, booleans, dates and the common collection types are
+ * tagged, and other lists are stored as ArrayList. Any other value is stored as an XMLEncoder document of its own and read with
+ * {@link SecureXMLDecoder}, so that the same types are accepted in both formats.
+ *
+ * @version $Id$
+ */
+public final class DataMapSerializer {
+
+    /** Start of data in the binary format. XMLEncoder output always starts with '&lt;'. */
+    public static final String PREFIX = "BMAP:";
+    static final int VERSION = 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_FALSE = 4;
+    private static final int TAG_TRUE = 5;
+    private static final int TAG_FLOAT = 6;
+    private static final int TAG_DOUBLE = 7;
+    private static final int TAG_DATE = 8;
+    private static final int TAG_ARRAY_LIST = 9;
+    private static final int TAG_LINKED_LIST = 10;
+    private static final int TAG_HASH_SET = 11;
+    private static final int TAG_LINKED_HASH_SET = 12;
+    private static final int TAG_HASH_MAP = 13;
+    private static final int TAG_LINKED_HASH_MAP = 14;
+    private static final int TAG_PROPERTIES = 15;
+    private static final int TAG_XML = 16;
+
+    private DataMapSerializer() {}
+
+    /** @return true if the data is in the binary format, false if it is XML */
+    public static boolean isBinary(final String data) {
+        return data != null && data.startsWith(PREFIX);
+    }
+
+    /**
+     * Decodes a data map in either format. Base64 encoded string values are decoded when they are read from the map, like with
+     * {@link Base64GetHashMap}.
+     *
+     * @param data data written by {@link #encode(Map)}, or by XMLEncoder
+     * @return the map, which is a {@link LazyDataMap} if the data is in the binary format
+     * @throws IOException if the data can not be parsed
+     */
+    @SuppressWarnings("unchecked")
+    public static LinkedHashMap<Object, Object> decode(final String data) throws IOException {
+        if (isBinary(data)) {
+            return decodeBinary(data);
+        }
+        try (final SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)))) {
+            return new Base64GetHashMap((Map<?, ?>) decoder.readObject());
+        }
+    }
+
+    /**
+     * Encodes a data map in the binary format if {@link CesecoreConfiguration#useBinaryDataMaps()} is enabled, and otherwise with
+     * XMLEncoder. The map is written as it is, so string values that should be Base64 encoded must already be, for example by
+     * copying the map into a {@link Base64PutHashMap}.
+     *
+     * @param map map to encode
+     * @return the encoded map
+     */
+    public static String encode(final Map<?, ?> map) {
+        return CesecoreConfiguration.useBinaryDataMaps() ? encodeBinary(map) : encodeXml(map);
+    }
+
+    /** Encodes a data map with XMLEncoder. */
+    public static String encodeXml(final Object map) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final XMLEncoder encoder = new XMLEncoder(baos)) {
+            encoder.writeObject(map);
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Encodes a data map in the binary format. */
+    public static String encodeBinary(final Map<?, ?> map) {
+        final Output out = new Output(256);
+        final Output value = new Output(64);
+        out.write(VERSION);
+        out.writeVarint(map.size());
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey());
+            value.length = 0;
+            writeValue(value, entry.getValue());
+            out.writeVarint(value.length);
+            out.write(value.buffer, 0, value.length);
+        }
+        return PREFIX + Base64.getEncoder().encodeToString(Arrays.copyOf(out.buffer, out.length));
+    }
+
+    private static LazyDataMap decodeBinary(final String data) throws IOException {
+        final byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(data.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64 in binary data map.", e);
+        }
+        try {
+            final Input in = new Input(bytes, 0);
+            final int version = in.read();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary data map version " + version + ".");
+            }
+            final int count = in.readVarint();
+            if (count < 0 || count > bytes.length) {
+                throw new IOException("Corrupt binary data map.");
+            }
+            final Object[] keys = new Object[count];
+            final int[] valueOffsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = readValue(in);
+                final int valueLength = in.readVarint();
+                valueOffsets[i] = in.position;
+                in.position += valueLength;
+            }
+            if (in.position != bytes.length) {
+                throw new IOException("Corrupt binary data map.");
+            }
+            return new LazyDataMap(bytes, keys, valueOffsets);
+        } catch (IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IOException("Corrupt binary data map.", e);
+        }
+    }
+
+    /**
+     * Decodes a value of a binary data map.
+     * @param bytes binary data map
+     * @param offset offset of the tagged value
+     * @throws IllegalStateException if the value can not be parsed
+     */
+    static Object readValue(final byte[] bytes, final int offset) {
+        return readValue(new Input(bytes, offset));
+    }
+
+    private static void writeValue(final Output out, final Object value) {
+        final Class<?> type = value == null ? null : value.getClass();
+        if (type == null) {
+            out.write(TAG_NULL);
+        } else if (type == String.class) {
+            out.write(TAG_STRING);
+            final byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeVarint(utf8.length);
+            out.write(utf8, 0, utf8.length);
+        } else if (type == Integer.class) {
+            out.write(TAG_INTEGER);
+            final int i = (Integer) value;
+            out.writeVarint((i << 1) ^ (i >> 31));
+        } else if (type == Long.class) {
+            out.write(TAG_LONG);
+            out.writeVarLong((Long) value);
+        } else if (type == Boolean.class) {
+            out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (type == Float.class) {
+            out.write(TAG_FLOAT);
+            out.writeFixed(Float.floatToIntBits((Float) value), 4);
+        } else if (type == Double.class) {
+            out.write(TAG_DOUBLE);
+            out.writeFixed(Double.doubleToLongBits((Double) value), 8);
+        } else if (type == Date.class) {
+            out.write(TAG_DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (type == ArrayList.class) {
+            writeCollection(out, TAG_ARRAY_LIST, (Collection<?>) value);
+        } else if (type == LinkedList.class) {
+            writeCollection(out, TAG_LINKED_LIST, (Collection<?>) value);
+        } else if (type == HashSet.class) {
+            writeCollection(out, TAG_HASH_SET, (Collection<?>) value);
+        } else if (type == LinkedHashSet.class) {
+            writeCollection(out, TAG_LINKED_HASH_SET, (Collection<?>) value);
+        } else if (type == HashMap.class) {
+            writeMap(out, TAG_HASH_MAP, (Map<?, ?>) value);
+        } else if (type == LinkedHashMap.class) {
+            writeMap(out, TAG_LINKED_HASH_MAP, (Map<?, ?>) value);
+        } else if (type == Properties.class) {
+            writeMap(out, TAG_PROPERTIES, (Map<?, ?>) value);
+        } else if (value instanceof List) {
+            // Such as Arrays.asList, which XMLEncoder can not write at all
+            writeCollection(out, TAG_ARRAY_LIST, (Collection<?>) value);
+        } else {
+            // Enums, Class objects, nested Base64 maps and value objects like CertificatePolicy
+            out.write(TAG_XML);
+            final byte[] xml = encodeXml(value).getBytes(StandardCharsets.UTF_8);
+            out.writeVarint(xml.length);
+            out.write(xml, 0, xml.length);
+        }
+    }
+
+    private static void writeCollection(final Output out, final int tag, final Collection<?> collection) {
+        out.write(tag);
+        out.writeVarint(collection.size());
+        for (final Object element : collection) {
+            writeValue(out, element);
+        }
+    }
+
+    private static void writeMap(final Output out, final int tag, final Map<?, ?> map) {
+        out.write(tag);
+        out.writeVarint(map.size());
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Object readValue(final Input in) {
+        final int tag = in.read();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_STRING: {
+            final int length = in.readVarint();
+            final String s = new String(in.bytes, in.position, length, StandardCharsets.UTF_8);
+            in.position += length;
+            return s;
+        }
+        case TAG_INTEGER: {
+            final int i = in.readVarint();
+            return Integer.valueOf((i >>> 1) ^ -(i & 1));
+        }
+        case TAG_LONG:
+            return Long.valueOf(in.readVarLong());
+        case TAG_FALSE:
+            return Boolean.FALSE;
+        case TAG_TRUE:
+            return Boolean.TRUE;
+        case TAG_FLOAT:
+            return Float.valueOf(Float.intBitsToFloat((int) in.readFixed(4)));
+        case TAG_DOUBLE:
+            return Double.valueOf(Double.longBitsToDouble(in.readFixed(8)));
+        case TAG_DATE:
+            return new Date(in.readVarLong());
+        case TAG_ARRAY_LIST: {
+            final int size = in.readVarint();
+            return readCollection(in, new ArrayList<>(Math.min(size, in.remaining())), size);
+        }
+        case TAG_LINKED_LIST:
+            return readCollection(in, new LinkedList<>(), in.readVarint());
+        case TAG_HASH_SET:
+            return readCollection(in, new HashSet<>(), in.readVarint());
+        case TAG_LINKED_HASH_SET:
+            return readCollection(in, new LinkedHashSet<>(), in.readVarint());
+        case TAG_HASH_MAP:
+            return readMap(in, new HashMap<>());
+        case TAG_LINKED_HASH_MAP:
+            return readMap(in, new LinkedHashMap<>());
+        case TAG_PROPERTIES:
+            return readMap(in, new Properties());
+        case TAG_XML: {
+            final int length = in.readVarint();
+            try (final SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(in.bytes, in.position, length))) {
+                in.position += length;
+                return decoder.readObject();
+            } catch (EOFException e) {
+                // XMLEncoder could not write the value, which leaves an empty document
+                return null;
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to parse value in binary data map: " + e.getMessage(), e);
+            }
+        }
+        default:
+            throw new IllegalStateException("Unknown tag " + tag + " in binary data map.");
+        }
+    }
+
+    private static Collection<Object> readCollection(final Input in, final Collection<Object> collection, final int size) {
+        for (int i = 0; i < size; i++) {
+            collection.add(readValue(in));
+        }
+        return collection;
+    }
+
+    private static Map<Object, Object> readMap(final Input in, final Map<Object, Object> map) {
+        final int size = in.readVarint();
+        for (int i = 0; i < size; i++) {
+            final Object key = readValue(in);
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    /** Growable byte buffer, which unlike ByteArrayOutputStream can be reused and read without copying */
+    private static final class Output {
+        private byte[] buffer;
+        private int length = 0;
+
+        Output(final int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(final int b) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) b;
+        }
+
+        void write(final byte[] b, final int offset, final int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, offset, buffer, length, len);
+            length += len;
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        /** Writes a signed long, zigzag encoded so that small negative values are short as well */
+        void writeVarLong(final long signed) {
+            long value = (signed << 1) ^ (signed >> 63);
+            while ((value & ~0x7fL) != 0) {
+                write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeFixed(final long value, final int bytes) {
+            for (int i = bytes - 1; i >= 0; i--) {
+                write((int) (value >>> (8 * i)));
+            }
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(final byte[] bytes, final int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int read() {
+            return bytes[position++] & 0xff;
+        }
+
+        int remaining() {
+            return bytes.length - position;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final byte b = bytes[position++];
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Invalid varint in binary data map.");
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                final byte b = bytes[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return (value >>> 1) ^ -(value & 1);
+                }
+            }
+            throw new IllegalStateException("Invalid varint in binary data map.");
+        }
+
+        long readFixed(final int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+    }
+}
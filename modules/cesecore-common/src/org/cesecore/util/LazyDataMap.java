@@ -0,0 +1,281 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.keyfactor.util.StringTools;
+
+/**
+ * Data map read from the binary format of {@link DataMapSerializer}. Only the keys are decoded up front, and each value is decoded
+ * the first time it is read with {@link #get(Object)}, so loading a CA or profile only pays for the values that are used.
+ * <p>
+ * Reads with get, containsKey and size are lazy. Any other operation (modifications, iteration, equals, toString) first decodes
+ * all remaining values into the map, after which it behaves exactly like a {@link Base64GetHashMap} with the same contents.
+ * Values that were already read are kept, so modifications of a mutable value that was read before are not lost.
+ *
+ * @version $Id$
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public final class LazyDataMap extends Base64GetHashMap {
+
+    private static final long serialVersionUID = 1L;
+    private static final Object NOT_DECODED = new Object();
+
+    // Released when all values have been decoded
+    private transient byte[] bytes;
+    private transient Object[] keys;
+    private transient int[] valueOffsets;
+    private transient Object[] values;
+    /** Open addressing hash table of index + 1 into keys, 0 for free slots */
+    private transient int[] slots;
+    private volatile boolean materialized = false;
+
+    LazyDataMap(final byte[] bytes, final Object[] keys, final int[] valueOffsets) {
+        this.bytes = bytes;
+        this.keys = keys;
+        this.valueOffsets = valueOffsets;
+        this.values = new Object[keys.length];
+        Arrays.fill(values, NOT_DECODED);
+        this.slots = new int[Integer.highestOneBit(Math.max(2, keys.length * 2) - 1) << 1];
+        for (int i = 0; i < keys.length; i++) {
+            int slot = slotOf(keys[i]);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    @Override
+    public Object get(final Object key) {
+        if (!materialized) {
+            synchronized (this) {
+                if (!materialized) {
+                    final int index = indexOf(key);
+                    if (index < 0) {
+                        return null;
+                    }
+                    final Object o = value(index);
+                    // Same as Base64GetHashMap
+                    return o instanceof String ? StringTools.getBase64String((String) o) : o;
+                }
+            }
+        }
+        return super.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        if (!materialized) {
+            synchronized (this) {
+                if (!materialized) {
+                    return indexOf(key) >= 0;
+                }
+            }
+        }
+        return super.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        if (!materialized) {
+            synchronized (this) {
+                if (!materialized) {
+                    return keys.length;
+                }
+            }
+        }
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+        materialize();
+        return super.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public boolean containsValue(final Object value) {
+        materialize();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public Object put(final Object key, final Object value) {
+        materialize();
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(final Map m) {
+        materialize();
+        super.putAll(m);
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        materialize();
+        return super.remove(key);
+    }
+
+    @Override
+    public boolean remove(final Object key, final Object value) {
+        materialize();
+        return super.remove(key, value);
+    }
+
+    @Override
+    public void clear() {
+        materialize();
+        super.clear();
+    }
+
+    @Override
+    public Set keySet() {
+        materialize();
+        return super.keySet();
+    }
+
+    @Override
+    public Collection values() {
+        materialize();
+        return super.values();
+    }
+
+    @Override
+    public Set entrySet() {
+        materialize();
+        return super.entrySet();
+    }
+
+    @Override
+    public void forEach(final BiConsumer action) {
+        materialize();
+        super.forEach(action);
+    }
+
+    @Override
+    public void replaceAll(final BiFunction function) {
+        materialize();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public Object putIfAbsent(final Object key, final Object value) {
+        materialize();
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(final Object key, final Object oldValue, final Object newValue) {
+        materialize();
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public Object replace(final Object key, final Object value) {
+        materialize();
+        return super.replace(key, value);
+    }
+
+    @Override
+    public Object computeIfAbsent(final Object key, final Function mappingFunction) {
+        materialize();
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public Object computeIfPresent(final Object key, final BiFunction remappingFunction) {
+        materialize();
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public Object compute(final Object key, final BiFunction remappingFunction) {
+        materialize();
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Object merge(final Object key, final Object value, final BiFunction remappingFunction) {
+        materialize();
+        return super.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public Object clone() {
+        materialize();
+        return super.clone();
+    }
+
+    /** Serialized as a plain Base64GetHashMap, since the lazy state is transient */
+    private Object writeReplace() {
+        return new Base64GetHashMap(this);
+    }
+
+    /** Decodes all values that have not been read yet into the map */
+    private void materialize() {
+        if (materialized) {
+            return;
+        }
+        synchronized (this) {
+            if (!materialized) {
+                for (int i = 0; i < keys.length; i++) {
+                    super.put(keys[i], value(i));
+                }
+                bytes = null;
+                keys = null;
+                valueOffsets = null;
+                values = null;
+                slots = null;
+                materialized = true;
+            }
+        }
+    }
+
+    private int indexOf(final Object key) {
+        for (int slot = slotOf(key);; slot = (slot + 1) & (slots.length - 1)) {
+            final int index = slots[slot] - 1;
+            if (index < 0 || Objects.equals(keys[index], key)) {
+                return index;
+            }
+        }
+    }
+
+    private int slotOf(final Object key) {
+        final int h = Objects.hashCode(key);
+        return (h ^ (h >>> 16)) & (slots.length - 1);
+    }
+
+    private Object value(final int index) {
+        Object value = values[index];
+        if (value == NOT_DECODED) {
+            value = DataMapSerializer.readValue(bytes, valueOffsets[index]);
+            values[index] = value;
+        }
+        return value;
+    }
+}
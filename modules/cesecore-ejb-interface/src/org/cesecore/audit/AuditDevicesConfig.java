@@ -48,6 +48,8 @@ public class AuditDevicesConfig {
     private static Map<String, AuditLogDevice> loggers = null;
     private static final Map<String, Class<? extends AuditExporter>> exporters = new HashMap<String, Class<? extends AuditExporter>>();
     private static final Map<String, Properties> deviceProperties = new HashMap<String, Properties>();
+    /** Default maximum number of audit records written to the database in one transaction */
+    public static final int DEFAULT_BATCH_SIZE = 100;
 
     private static Map<String, AuditLogDevice> getLoggers() {
         setup();
@@ -201,11 +203,31 @@ public class AuditDevicesConfig {
         return getInt(properties, "validate.fetchsize", 1000);
     }
 
+    /** Parameter to specify the number of nodes whose logs are validated in parallel */
+    public static int getAuditLogValidationThreads(final Properties properties) {
+        return Math.max(1, getInt(properties, "validate.threads", 4));
+    }
+
+    /** Parameter to specify that validation continues after the entries that were validated without errors the last time */
+    public static boolean isAuditLogValidationIncremental(final Properties properties) {
+        return Boolean.parseBoolean(properties.getProperty("validate.incremental", "false"));
+    }
+
     /** Parameter to specify the number of logs to be fetched in each export round trip. */
     public static int getAuditLogExportFetchSize(final Properties properties) {
         return getInt(properties, "export.fetchsize", 1000);
     }
 
+    /** Parameter to specify the maximum number of audit records written to the database in one transaction. 1 writes every record on its own. */
+    public static int getAuditLogBatchSize(final Properties properties) {
+        return getInt(properties, "batch.size", DEFAULT_BATCH_SIZE);
+    }
+
+    /** Parameter to specify the milliseconds to wait for more audit records before writing a batch that is not full. */
+    public static long getAuditLogBatchFlushInterval(final Properties properties) {
+        return getInt(properties, "batch.flushinterval", 0);
+    }
+
     private static int getInt(final Properties properties, final String key, final int defaultValue) {
         int ret = defaultValue;
         try {
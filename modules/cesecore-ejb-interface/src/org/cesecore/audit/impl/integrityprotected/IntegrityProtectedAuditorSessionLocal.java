@@ -12,12 +12,15 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
 import org.cesecore.audit.Auditable;
+import org.cesecore.audit.audit.AuditLogValidationReport;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 
@@ -39,4 +42,15 @@ public interface IntegrityProtectedAuditorSessionLocal extends Auditable {
 	 * @throws AuthorizationDeniedException unless token has StandardRules.AUDITLOGEXPORT rights
 	 */
 	int deleteRows(AuthenticationToken token, Date timestamp, Properties properties) throws AuthorizationDeniedException;
+
+	/**
+	 * Verifies the logs of one node in a separate thread. Only for use by verifyLogsIntegrity.
+	 * @param report will be updated when a problem is found. Must not be shared with other nodes.
+	 * @param nodeId identifier of the node whose logs to verify
+	 * @param timestamp verify all entries up until this time
+	 * @param lastVerifiedSequenceNumber verify the entries after this sequence number, -1 to verify all
+	 * @param fetchSize entries per database query
+	 * @return the last sequence number that was processed
+	 */
+	Future<Long> verifyNode(AuditLogValidationReport report, String nodeId, Date timestamp, long lastVerifiedSequenceNumber, int fetchSize) throws IOException;
 }
@@ -12,13 +12,26 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.cesecore.audit.AuditLogger;
+import org.cesecore.audit.log.AuditRecordStorageException;
 
 /**
  * @version $Id$
  */
 @Local
 public interface IntegrityProtectedLoggerSessionLocal extends AuditLogger {
+
+    /**
+     * Persists a batch of audit records in a new transaction.
+     * <p>
+     * Internal method, do not use. Needs to be here for transaction management.
+     *
+     * @param auditRecords the records to persist, in sequence number order
+     * @throws AuditRecordStorageException if the records could not be persisted, in which case none of them are
+     */
+    void persistAuditRecords(List<AuditRecordData> auditRecords) throws AuditRecordStorageException;
 }
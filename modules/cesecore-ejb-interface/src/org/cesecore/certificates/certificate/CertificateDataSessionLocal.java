@@ -98,6 +98,26 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     
     /** @return return the query results as a Collection<RevokedCertInfo>. */
     Collection<RevokedCertInfo> getRevokedCertInfos(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate, boolean allowInvalidityDate);
+
+    /**
+     * Returns the current revocation status of the certificates that have been revoked at some point, and have been updated after the
+     * given time. Certificates that are no longer revoked, including archived ones, have the reason RevokedCertInfo.NOT_REVOKED or
+     * RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL.
+     *
+     * @param issuerDN the issuer of the certificates
+     * @param crlPartitionIndex the CRL Partition Index, or CertificateConstants.NO_CRL_PARTITION if not using a partitioned CRL.
+     * @param updatedAfter only certificates updated after this time (Date.getTime()) are returned
+     * @param allowInvalidityDate whether invalidity date for CRL generation is allowed in CA configuration
+     * @return the query results as a Collection<RevokedCertInfo>.
+     */
+    Collection<RevokedCertInfo> getRevokedCertInfosUpdatedAfter(String issuerDN, int crlPartitionIndex, long updatedAfter, boolean allowInvalidityDate);
+
+    /**
+     * @param issuerDN the issuer of the certificates
+     * @param crlPartitionIndex the CRL Partition Index, or CertificateConstants.NO_CRL_PARTITION if not using a partitioned CRL.
+     * @return the number of revoked certificates, i.e. the number of entries of a base CRL created from all revoked certificates
+     */
+    long countRevokedCertificates(String issuerDN, int crlPartitionIndex);
     
     /** @return return the query results as a List. */
     List<CertificateData> findByExpireDateWithLimit(long expireDate, int maxNumberOfResults);
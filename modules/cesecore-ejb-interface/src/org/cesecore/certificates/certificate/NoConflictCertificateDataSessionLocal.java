@@ -39,5 +39,14 @@ public interface NoConflictCertificateDataSessionLocal extends NoConflictCertifi
      */
     Collection<RevokedCertInfo> getRevokedCertInfosWithDuplicates(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate, boolean keepExpiredCertsOnCrl, 
             boolean allowInvalidityDate);
+
+    /**
+     * Returns the revocation status changes that were added after the given time. Since the NoConflictCertificateData table is append-only,
+     * the result may contain duplicate entries, that should be filtered by date and revocation status.
+     *
+     * @see CertificateDataSessionLocal#getRevokedCertInfosUpdatedAfter(String, int, long, boolean)
+     */
+    Collection<RevokedCertInfo> getRevokedCertInfosUpdatedAfterWithDuplicates(String issuerDN, int crlPartitionIndex, long updatedAfter,
+            boolean allowInvalidityDate);
     
 }
@@ -53,6 +53,19 @@ public interface NoConflictCertificateStoreSession  {
     /** @see CertificateStoreSession#listRevokedCertInfo */
     Collection<RevokedCertInfo> listRevokedCertInfo(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate, boolean keepExpiredCertsOnCrl, 
             boolean allowInvalidityDate);
+
+    /**
+     * Lists the current revocation status of the certificates whose status changed after the given time, from both CertificateData and
+     * NoConflictCertificateData. Used to update the entries of the last base CRL, see org.cesecore.certificates.crl.CrlEntryCache.
+     *
+     * @param issuerDN the dn of the certificates issuer.
+     * @param crlPartitionIndex the CRL Partition Index, or CertificateConstants.NO_CRL_PARTITION if not using a partitioned CRL.
+     * @param updatedAfter a date (Date.getTime()). Only certificates updated after this time are listed.
+     * @param allowInvalidityDate whether invalidity date for CRL generation is allowed in CA configuration
+     * @return Collection of RevokedCertInfo, with at most one entry per certificate. Entries of certificates that are no longer revoked
+     *         have a reason for which RevokedCertInfo.isRevoked returns false.
+     */
+    Collection<RevokedCertInfo> listRevokedCertInfoUpdatedAfter(String issuerDN, int crlPartitionIndex, long updatedAfter, boolean allowInvalidityDate);
     
     /** @see CertificateStoreSession#setStatus */
     boolean setStatus(AuthenticationToken admin, String fingerprint, int status) throws AuthorizationDeniedException;
@@ -0,0 +1,203 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cesecore.audit.audit.AuditExporter;
+import org.cesecore.audit.audit.AuditLogExportReport;
+import org.cesecore.audit.audit.AuditLogReportElem;
+import org.cesecore.audit.audit.AuditLogValidationReport;
+import org.cesecore.audit.enums.EventStatus;
+import org.cesecore.audit.enums.EventTypes;
+import org.cesecore.audit.enums.ModuleTypes;
+import org.cesecore.audit.enums.ServiceTypes;
+import org.cesecore.dbprotection.DatabaseProtectionException;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link AuditLogNodeVerification}
+ */
+public class AuditLogNodeVerificationUnitTest {
+
+    private static final String NODE_ID = "AuditLogNodeVerificationUnitTest";
+    private static final Date TIMESTAMP = new Date(1000000L);
+
+    /** Rows of the node, and the sequence numbers of the rows that fail the integrity check */
+    private final List<AuditRecordData> rows = new ArrayList<>();
+    private final Set<Long> badSequenceNumbers = new HashSet<>();
+    private int fetches = 0;
+    /** Sequence numbers written to the export */
+    private final List<Long> exported = new ArrayList<>();
+
+    @Test
+    public void badRowAtStartMiddleAndEnd() throws IOException {
+        addRows(0, 19);
+        badSequenceNumbers.addAll(Arrays.asList(0L, 10L, 19L));
+        final AuditLogExportReport report = new AuditLogExportReport();
+        assertEquals(19L, verify(report, -1L, 8));
+        assertEquals(3, report.warnings().size());
+        assertWarning(report.warnings().get(0), -1L, 0L, "could not be verified");
+        assertWarning(report.warnings().get(1), 9L, 10L, "could not be verified");
+        assertWarning(report.warnings().get(2), 18L, 19L, "could not be verified");
+        assertTrue(report.errors().isEmpty());
+        assertEquals("Rows that fail the check are still exported", sequence(0, 19), exported);
+        assertEquals(20, report.getExportCount());
+    }
+
+    @Test
+    public void shortFinalBatch() throws IOException {
+        addRows(0, 12);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        assertEquals(12L, verify(report, -1L, 5));
+        assertTrue(report.warnings().isEmpty());
+        assertEquals("Batches of 5, 5 and 3 rows", 3, fetches);
+    }
+
+    @Test
+    public void badRowInShortFinalBatch() throws IOException {
+        addRows(0, 12);
+        badSequenceNumbers.add(11L);
+        final AuditLogExportReport report = new AuditLogExportReport();
+        assertEquals(12L, verify(report, -1L, 5));
+        assertEquals(1, report.warnings().size());
+        assertWarning(report.warnings().get(0), 10L, 11L, "could not be verified");
+        assertEquals(sequence(0, 12), exported);
+    }
+
+    @Test
+    public void gapAfterCheckpoint() throws IOException {
+        addRows(0, 10);
+        addRows(12, 20);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        assertEquals(20L, verify(report, 10L, 4));
+        assertEquals(1, report.warnings().size());
+        assertWarning(report.warnings().get(0), 10L, 12L, "missing log with sequence number 11");
+    }
+
+    @Test
+    public void noNewRowsAfterCheckpoint() throws IOException {
+        addRows(0, 10);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        assertEquals(10L, verify(report, 10L, 4));
+        assertTrue(report.warnings().isEmpty());
+        assertEquals(1, fetches);
+    }
+
+    @Test
+    public void checkpointOnlyAdvancesForNodesWithoutFindings() {
+        final AuditLogVerificationCheckpoint checkpoint = new AuditLogVerificationCheckpoint();
+        checkpoint.setLastVerifiedSequenceNumber("clean", 10L);
+        checkpoint.setLastVerifiedSequenceNumber("warning", 10L);
+        checkpoint.setLastVerifiedSequenceNumber("error", 10L);
+        final Map<String, AuditLogValidationReport> nodeReports = new LinkedHashMap<>();
+        nodeReports.put("clean", new AuditLogValidationReport());
+        nodeReports.put("warning", new AuditLogValidationReport());
+        nodeReports.get("warning").warn(new AuditLogReportElem(10L, 12L, "missing log"));
+        nodeReports.put("error", new AuditLogValidationReport());
+        nodeReports.get("error").error(new AuditLogReportElem(10L, 11L, "error"));
+        nodeReports.put("new", new AuditLogValidationReport());
+        final Map<String, Long> lastSequenceNumbers = new LinkedHashMap<>();
+        lastSequenceNumbers.put("clean", 20L);
+        lastSequenceNumbers.put("warning", 20L);
+        lastSequenceNumbers.put("error", 20L);
+        lastSequenceNumbers.put("new", 5L);
+        assertTrue(AuditLogNodeVerification.advanceCheckpoint(checkpoint, nodeReports, lastSequenceNumbers));
+        assertEquals(20L, checkpoint.getLastVerifiedSequenceNumber("clean"));
+        assertEquals("Node with warnings should be verified again", 10L, checkpoint.getLastVerifiedSequenceNumber("warning"));
+        assertEquals("Node with errors should be verified again", 10L, checkpoint.getLastVerifiedSequenceNumber("error"));
+        assertEquals(5L, checkpoint.getLastVerifiedSequenceNumber("new"));
+        // Nothing new to save
+        assertFalse(AuditLogNodeVerification.advanceCheckpoint(checkpoint, nodeReports, lastSequenceNumbers));
+    }
+
+    private long verify(final AuditLogValidationReport report, final long lastVerifiedSequenceNumber, final int fetchSize) throws IOException {
+        final AuditExporter auditExporter = report instanceof AuditLogExportReport ? new SequenceNumberExporter() : null;
+        return new AuditLogNodeVerification(this::fetch, auditExporter, report, NODE_ID, TIMESTAMP, lastVerifiedSequenceNumber).verify(fetchSize);
+    }
+
+    /** Reads rows like the database, which fails the whole query if one of the rows fails the integrity check */
+    private List<AuditRecordData> fetch(final String nodeId, final Date timestamp, final long afterSequenceNumber, final int max)
+            throws DatabaseProtectionException {
+        assertEquals(NODE_ID, nodeId);
+        fetches++;
+        final List<AuditRecordData> result = new ArrayList<>();
+        for (final AuditRecordData row : rows) {
+            if (result.size() < max && row.getSequenceNumber() > afterSequenceNumber && row.getTimeStamp() <= timestamp.getTime()) {
+                if (badSequenceNumbers.contains(row.getSequenceNumber())) {
+                    throw new DatabaseProtectionException("Row protection verification failed", row);
+                }
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private void addRows(final long first, final long last) {
+        for (long sequenceNumber = first; sequenceNumber <= last; sequenceNumber++) {
+            rows.add(new AuditRecordData(NODE_ID, sequenceNumber, TIMESTAMP.getTime(), EventTypes.LOG_VERIFY, EventStatus.VOID, null,
+                    ServiceTypes.CORE, ModuleTypes.SECURITY_AUDIT, null, null, null, null));
+        }
+    }
+
+    private static List<Long> sequence(final long first, final long last) {
+        final List<Long> sequence = new ArrayList<>();
+        for (long sequenceNumber = first; sequenceNumber <= last; sequenceNumber++) {
+            sequence.add(sequenceNumber);
+        }
+        return sequence;
+    }
+
+    private static void assertWarning(final AuditLogReportElem warning, final long first, final long second, final String reason) {
+        assertEquals(Long.valueOf(first), warning.getFirst());
+        assertEquals(Long.valueOf(second), warning.getSecond());
+        assertTrue("Unexpected reason: " + warning.getReasons(), warning.getReasons().get(0).contains(reason));
+    }
+
+    /** Records the sequence numbers of the exported rows */
+    private class SequenceNumberExporter implements AuditExporter {
+        @Override
+        public void setOutputStream(final OutputStream outputStream) {}
+        @Override
+        public void startObjectLabel(final String label) {}
+        @Override
+        public void endObjectLabel() {}
+        @Override
+        public void writeStartObject() {}
+        @Override
+        public void writeField(final String key, final long value) {
+            if ("sequenceNumber".equals(key)) {
+                exported.add(value);
+            }
+        }
+        @Override
+        public void writeField(final String key, final String value) {}
+        @Override
+        public void writeEndObject() {}
+        @Override
+        public void close() {}
+    }
+}
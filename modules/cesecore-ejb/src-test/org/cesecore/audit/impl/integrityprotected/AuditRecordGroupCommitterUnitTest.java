@@ -0,0 +1,170 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cesecore.audit.enums.EventStatus;
+import org.cesecore.audit.enums.EventTypes;
+import org.cesecore.audit.enums.ModuleTypes;
+import org.cesecore.audit.enums.ServiceTypes;
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link AuditRecordGroupCommitter}
+ */
+public class AuditRecordGroupCommitterUnitTest {
+
+    private final AtomicLong sequenceNumber = new AtomicLong();
+    private ExecutorService executorService;
+
+    @Before
+    public void before() {
+        executorService = Executors.newFixedThreadPool(20);
+    }
+
+    @After
+    public void after() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareCommits() throws Exception {
+        final List<List<AuditRecordData>> batches = Collections.synchronizedList(new ArrayList<>());
+        final AuditRecordGroupCommitter.BatchWriter slowWriter = auditRecords -> {
+            batches.add(new ArrayList<>(auditRecords));
+            sleep(20);
+        };
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(executorService.submit(() -> AuditRecordGroupCommitter.INSTANCE.log(this::createAuditRecord, slowWriter, 8, 0)));
+        }
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+        final List<Long> written = new ArrayList<>();
+        for (final List<AuditRecordData> batch : batches) {
+            assertTrue("Batch larger than the batch size: " + batch.size(), batch.size() <= 8);
+            for (final AuditRecordData auditRecord : batch) {
+                written.add(auditRecord.getSequenceNumber());
+            }
+        }
+        assertEquals("All records should be written exactly once.", 200, written.size());
+        for (int i = 1; i < written.size(); i++) {
+            assertTrue("Records should be written in sequence number order.", written.get(i - 1) < written.get(i));
+        }
+        assertTrue("Concurrent records should be written in fewer transactions, but was " + batches.size(), batches.size() < 200);
+    }
+
+    @Test
+    public void failedBatchIsReportedToAllCallers() throws Exception {
+        final AtomicInteger writtenRecords = new AtomicInteger();
+        final AuditRecordGroupCommitter.BatchWriter failingWriter = auditRecords -> {
+            writtenRecords.addAndGet(auditRecords.size());
+            sleep(20);
+            throw new AuditRecordStorageException("Database is down.");
+        };
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executorService.submit(() -> AuditRecordGroupCommitter.INSTANCE.log(this::createAuditRecord, failingWriter, 100, 0)));
+        }
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+                fail("Caller should get the failure of its batch.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AuditRecordStorageException);
+            }
+        }
+        assertTrue("Each record should be written at most twice, in a batch and on its own.", writtenRecords.get() <= 40);
+    }
+
+    @Test
+    public void failedRecordIsOnlyReportedToItsCaller() throws Exception {
+        final long badSequenceNumber = sequenceNumber.get() + 5;
+        final List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        final AuditRecordGroupCommitter.BatchWriter writer = auditRecords -> {
+            for (final AuditRecordData auditRecord : auditRecords) {
+                if (auditRecord.getSequenceNumber() == badSequenceNumber) {
+                    throw new AuditRecordStorageException("Record " + badSequenceNumber + " can not be written.");
+                }
+            }
+            for (final AuditRecordData auditRecord : auditRecords) {
+                written.add(auditRecord.getSequenceNumber());
+            }
+        };
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // Collect all records in one batch
+            futures.add(executorService.submit(() -> AuditRecordGroupCommitter.INSTANCE.log(this::createAuditRecord, writer, 10, 10000)));
+        }
+        int failures = 0;
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AuditRecordStorageException);
+                failures++;
+            }
+        }
+        assertEquals("Only the caller of the record that can not be written should fail.", 1, failures);
+        assertEquals("All other records should be written.", 9, written.size());
+        assertFalse(written.contains(badSequenceNumber));
+    }
+
+    @Test
+    public void flushIntervalCollectsBatch() throws Exception {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final AuditRecordGroupCommitter.BatchWriter writer = auditRecords -> batchSizes.add(auditRecords.size());
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // The first caller waits up to 10 seconds, but the batch is written as soon as it is full
+            futures.add(executorService.submit(() -> AuditRecordGroupCommitter.INSTANCE.log(this::createAuditRecord, writer, 3, 10000)));
+        }
+        final long start = System.currentTimeMillis();
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+        assertTrue("Full batch should not wait for the flush interval.", System.currentTimeMillis() - start < 5000);
+        assertEquals(Collections.singletonList(3), batchSizes);
+    }
+
+    private AuditRecordData createAuditRecord() {
+        return new AuditRecordData("AuditRecordGroupCommitterUnitTest", sequenceNumber.incrementAndGet(), System.currentTimeMillis(), EventTypes.LOG_VERIFY,
+                EventStatus.VOID, null, ServiceTypes.CORE, ModuleTypes.SECURITY_AUDIT, null, null, null, null);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.config.ConfigurationHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BaseCertificateDataSessionBean}.
+ */
+public class BaseCertificateDataSessionBeanUnitTest {
+
+    private static final String SQL = "SELECT a.fingerprint as fingerprint FROM CertificateData a WHERE a.issuerDN=:issuerDN";
+
+    private final EntityManager entityManager = createMock(EntityManager.class);
+    private final BaseCertificateDataSessionBean bean = new BaseCertificateDataSessionBean() {
+        @Override
+        protected EntityManager getEntityManager() {
+            return entityManager;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        ConfigurationHolder.updateConfiguration("database.crlgenfetchsize", "2");
+    }
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.restoreConfiguration();
+    }
+
+    @Test
+    public void readsBatchesAfterTheLastKey() {
+        final Query firstQuery = createMock(Query.class);
+        final Query nextQuery = createMock(Query.class);
+        expect(entityManager.createNativeQuery(SQL + " ORDER BY a.fingerprint", "RevokedCertInfoSubset")).andReturn(firstQuery);
+        expect(entityManager.createNativeQuery(SQL + " AND a.fingerprint>:keysetKey ORDER BY a.fingerprint", "RevokedCertInfoSubset")).andReturn(nextQuery);
+        expect(firstQuery.setParameter("issuerDN", "CN=Test")).andReturn(firstQuery);
+        expect(nextQuery.setParameter("issuerDN", "CN=Test")).andReturn(nextQuery);
+        expect(firstQuery.setMaxResults(2)).andReturn(firstQuery);
+        expect(nextQuery.setMaxResults(2)).andReturn(nextQuery);
+        expect(firstQuery.getResultList()).andReturn(Arrays.asList(row("aa", 1), row("bb", 2)));
+        expect(nextQuery.setParameter("keysetKey", "bb")).andReturn(nextQuery);
+        expect(nextQuery.getResultList()).andReturn(Arrays.asList(row("cc", 3), row("dd", 4)));
+        expect(nextQuery.setParameter("keysetKey", "dd")).andReturn(nextQuery);
+        // A batch smaller than the fetch size is the last one
+        expect(nextQuery.getResultList()).andReturn(Collections.singletonList(row("ee", 5)));
+        replay(entityManager, firstQuery, nextQuery);
+
+        final List<String> serialNumbers = new ArrayList<>();
+        bean.readRevokedCertInfos(SQL, "RevokedCertInfoSubset", "fingerprint", 0, Collections.singletonMap("issuerDN", "CN=Test"), false,
+                revokedCertInfo -> serialNumbers.add(revokedCertInfo.getUserCertificate().toString()));
+
+        verify(entityManager, firstQuery, nextQuery);
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), serialNumbers);
+    }
+
+    @Test
+    public void emptyResult() {
+        final Query firstQuery = createMock(Query.class);
+        final Query nextQuery = createMock(Query.class);
+        expect(entityManager.createNativeQuery(SQL + " ORDER BY a.fingerprint", "RevokedCertInfoSubset")).andReturn(firstQuery);
+        expect(entityManager.createNativeQuery(SQL + " AND a.fingerprint>:keysetKey ORDER BY a.fingerprint", "RevokedCertInfoSubset")).andReturn(nextQuery);
+        expect(firstQuery.setMaxResults(2)).andReturn(firstQuery);
+        expect(nextQuery.setMaxResults(2)).andReturn(nextQuery);
+        expect(firstQuery.getResultList()).andReturn(Collections.emptyList());
+        replay(entityManager, firstQuery, nextQuery);
+
+        assertEquals(0, bean.getRevokedCertInfosInternal(SQL, "RevokedCertInfoSubset", "fingerprint", 0, Collections.emptyMap(), false).size());
+        verify(entityManager, firstQuery, nextQuery);
+    }
+
+    private static Object[] row(final String fingerprint, final int serialNumber) {
+        return new Object[] { fingerprint, String.valueOf(serialNumber), 1000L, 500L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, -1L };
+    }
+}
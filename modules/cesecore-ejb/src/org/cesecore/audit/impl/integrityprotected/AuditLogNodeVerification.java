@@ -0,0 +1,193 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.audit.AuditExporter;
+import org.cesecore.audit.audit.AuditLogExportReport;
+import org.cesecore.audit.audit.AuditLogReportElem;
+import org.cesecore.audit.audit.AuditLogValidationReport;
+import org.cesecore.dbprotection.DatabaseProtectionException;
+
+/**
+ * Verification, and optionally export, of the logs of one node, in batches in order of sequence number.
+ * <p>
+ * The rows are read through a {@link BatchFetcher}, which checks the database integrity protection of each row. If the check fails
+ * for a batch, the batch is split in two halves until the rows that fail are found.
+ */
+final class AuditLogNodeVerification {
+
+    private static final Logger log = Logger.getLogger(AuditLogNodeVerification.class);
+
+    /** Reads the logs of a node from the database */
+    interface BatchFetcher {
+        /**
+         * @param nodeId the node to read the logs of
+         * @param timestamp only logs up until this time are read
+         * @param afterSequenceNumber only logs with a higher sequence number are read
+         * @param max the maximum number of logs to read
+         * @return the logs, in order of sequence number
+         * @throws DatabaseProtectionException if the integrity verification fails for one of the logs
+         */
+        List<AuditRecordData> fetch(String nodeId, Date timestamp, long afterSequenceNumber, int max) throws DatabaseProtectionException;
+    }
+
+    private final BatchFetcher batchFetcher;
+    private final AuditExporter auditExporter;
+    private final AuditLogValidationReport report;
+    private final String nodeId;
+    private final Date timestamp;
+    private long lastSeqNumber;
+
+    /**
+     * @param auditExporter can be null if no export should take place
+     * @param report is a AuditLogValidationReport or AuditLogExportReport
+     * @param timestamp process all entries up until this time (should be epoch GMT)
+     * @param lastVerifiedSequenceNumber the sequence number to start after, or -1 to start from the beginning
+     */
+    AuditLogNodeVerification(final BatchFetcher batchFetcher, final AuditExporter auditExporter, final AuditLogValidationReport report,
+            final String nodeId, final Date timestamp, final long lastVerifiedSequenceNumber) {
+        this.batchFetcher = batchFetcher;
+        this.auditExporter = auditExporter;
+        this.report = report;
+        this.nodeId = nodeId;
+        this.timestamp = timestamp;
+        this.lastSeqNumber = lastVerifiedSequenceNumber;
+    }
+
+    /**
+     * Verifies all logs of the node. Results are added to the report.
+     * @param fetchSize entries per batch
+     * @return the last sequence number that was processed, or the last verified sequence number if there were no new entries
+     */
+    long verify(final int fetchSize) throws IOException {
+        while (verifyBatch(fetchSize) == fetchSize) {
+            // Continue until a batch is not full, since there is no more data for this node
+        }
+        return lastSeqNumber;
+    }
+
+    /**
+     * Verifies and optionally exports the next batch of logs of the node. If one of the entries fails the database integrity check,
+     * the batch is split in two halves that are processed one after another, so that only log(max) queries per failed entry are needed.
+     * @param max entries per batch
+     * @return the number of entries that were processed, less than max if there are no more entries
+     */
+    private int verifyBatch(final int max) throws IOException {
+        final List<AuditRecordData> queryResult;
+        try {
+            queryResult = verifyLogsIntegritySubset(max);
+        } catch (DatabaseProtectionException e) {
+            if (max == 1) {
+                final AuditRecordData auditRecordData = (AuditRecordData) e.getEntity();
+                // Add to report
+                report.warn(new AuditLogReportElem(lastSeqNumber, auditRecordData.getSequenceNumber(),
+                        "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
+                lastSeqNumber = auditRecordData.getSequenceNumber().longValue();
+                // We still export it
+                // TODO: It might make sense to make it configurable to export when verification fails..
+                export(auditRecordData);
+                return 1;
+            }
+            final int firstHalf = max / 2;
+            final int processed = verifyBatch(firstHalf);
+            if (processed < firstHalf) {
+                return processed;   // No more data for this node
+            }
+            return processed + verifyBatch(max - firstHalf);
+        }
+        for (final AuditRecordData auditRecordData : queryResult) {
+            export(auditRecordData);
+        }
+        return queryResult.size();
+    }
+
+    /**
+     * Fetch the next batch of log rows of the node (implying database integrity check) and verifies that all sequence numbers are
+     * present. Uses the sequence number of the last processed row instead of an offset, so that each batch is read directly from the
+     * (nodeId,sequenceNumber) index.
+     * @param max entries per batch
+     * @return the log entries we fetched from the database so the caller may export these
+     * @throws DatabaseProtectionException if the intregrity verification fails for one of the entries in the batch during fetch
+     */
+    private List<AuditRecordData> verifyLogsIntegritySubset(final int max) throws DatabaseProtectionException {
+        final List<AuditRecordData> queryResult = batchFetcher.fetch(nodeId, timestamp, lastSeqNumber, max);
+        // Loop through results and verify that the sequence order is correct
+        for (int i=0; i<queryResult.size(); i++) {
+            final long currentSeqNumber = queryResult.get(i).getSequenceNumber().longValue();
+            if (currentSeqNumber != lastSeqNumber + 1) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Log verification failure for log on node " + nodeId + ". Missing entry. Last sequenceNumber was " + lastSeqNumber + " and current is " + currentSeqNumber);
+                }
+                // Add to report
+                report.warn(new AuditLogReportElem(lastSeqNumber, currentSeqNumber, "missing log with sequence number " + (lastSeqNumber + 1) + " on nodeId " + nodeId));
+            }
+            lastSeqNumber = currentSeqNumber;
+        }
+        return queryResult;
+    }
+
+    /** Writes the entry to the export, if this is an export */
+    private void export(final AuditRecordData auditRecordData) throws IOException {
+        if (auditExporter != null) {
+            writeToExport(auditExporter, auditRecordData);
+            ((AuditLogExportReport) report).incExportCount();
+        }
+    }
+
+    /** We want to export exactly like it was stored in the database, to comply with requirements on logging systems where no altering of the original log data is allowed. */
+    private static void writeToExport(final AuditExporter auditExporter, final AuditRecordData auditRecordData) throws IOException {
+        auditExporter.writeStartObject();
+        auditExporter.writeField("pk", auditRecordData.getPk());
+        auditExporter.writeField("nodeId", auditRecordData.getNodeId());
+        auditExporter.writeField("sequenceNumber", auditRecordData.getSequenceNumber());
+        auditExporter.writeField("timestamp", auditRecordData.getTimeStamp());
+        auditExporter.writeField("eventType", auditRecordData.getEventTypeValue().toString());
+        auditExporter.writeField("eventStatus", auditRecordData.getEventStatusValue().toString());
+        auditExporter.writeField("authToken", auditRecordData.getAuthToken());
+        auditExporter.writeField("service", auditRecordData.getServiceTypeValue().toString());
+        auditExporter.writeField("module", auditRecordData.getModuleTypeValue().toString());
+        auditExporter.writeField("customId", auditRecordData.getCustomId());
+        auditExporter.writeField("searchDetail1", auditRecordData.getSearchDetail1());
+        auditExporter.writeField("searchDetail2", auditRecordData.getSearchDetail2());
+        auditExporter.writeField("additionalDetails", auditRecordData.getAdditionalDetails());
+        auditExporter.writeField("rowProtection", auditRecordData.getRowProtection());
+        auditExporter.writeEndObject();
+    }
+
+    /**
+     * Moves the checkpoint of each node that was verified without any findings forward. A node with errors or warnings keeps its
+     * checkpoint, so that its logs are verified again, and the findings reported again, until they have been dealt with.
+     * @param nodeReports the report of each node
+     * @param lastSequenceNumbers the last sequence number verified for each node
+     * @return true if the checkpoint was changed and needs to be saved
+     */
+    static boolean advanceCheckpoint(final AuditLogVerificationCheckpoint checkpoint, final Map<String, AuditLogValidationReport> nodeReports,
+            final Map<String, Long> lastSequenceNumbers) {
+        boolean changed = false;
+        for (final Map.Entry<String, Long> entry : lastSequenceNumbers.entrySet()) {
+            final AuditLogValidationReport nodeReport = nodeReports.get(entry.getKey());
+            if (nodeReport.errors().isEmpty() && nodeReport.warnings().isEmpty()
+                    && entry.getValue().longValue() > checkpoint.getLastVerifiedSequenceNumber(entry.getKey())) {
+                checkpoint.setLastVerifiedSequenceNumber(entry.getKey(), entry.getValue().longValue());
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,194 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.log.AuditRecordStorageException;
+
+/**
+ * Group commit of audit records from concurrent callers.
+ * <p>
+ * Each caller adds its record to a queue and waits. The first caller that finds no write in progress becomes the leader:
+ * it optionally waits up to the flush interval for more records, writes up to "batch size" queued records in a single
+ * transaction and wakes up the callers whose records were written. If more records were queued meanwhile, the oldest
+ * waiting caller becomes the next leader. No caller returns before its own record has been committed (or the write
+ * failed), so the audit trail is just as durable as when every record is written in a transaction of its own. If a batch
+ * can not be written, its records are written again one at a time, and only the callers whose records still fail get
+ * the failure.
+ * <p>
+ * Records are created, and thereby given their sequence number, while holding the queue lock, so the records are
+ * queued and written in sequence number order.
+ */
+public enum AuditRecordGroupCommitter {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(AuditRecordGroupCommitter.class);
+
+    /** Creates the audit record to log. Invoked while holding the queue lock, so it should not block. */
+    public interface RecordFactory {
+        AuditRecordData create();
+    }
+
+    /** Writes a batch of audit records in a single transaction. */
+    public interface BatchWriter {
+        void write(List<AuditRecordData> auditRecords) throws AuditRecordStorageException;
+    }
+
+    private static class Pending {
+        private final AuditRecordData auditRecord;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile boolean leader = false;
+        private volatile AuditRecordStorageException failure = null;
+
+        private Pending(final AuditRecordData auditRecord) {
+            this.auditRecord = auditRecord;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchFull = lock.newCondition();
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private boolean writeInProgress = false;
+
+    /**
+     * Logs an audit record and waits until it has been committed.
+     *
+     * @param recordFactory creates the record, including its sequence number
+     * @param batchWriter writes a batch of records in a new transaction
+     * @param maxBatchSize the maximum number of records to write in one transaction
+     * @param flushInterval milliseconds to wait for more records before writing a batch that is not full, 0 to write right away
+     * @throws AuditRecordStorageException if the record could not be written
+     */
+    public void log(final RecordFactory recordFactory, final BatchWriter batchWriter, final int maxBatchSize, final long flushInterval)
+            throws AuditRecordStorageException {
+        final Pending pending;
+        lock.lock();
+        try {
+            pending = new Pending(recordFactory.create());
+            queue.addLast(pending);
+            if (!writeInProgress) {
+                writeInProgress = true;
+                pending.leader = true;
+            } else if (queue.size() >= maxBatchSize) {
+                batchFull.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!pending.leader) {
+            awaitUninterruptibly(pending.latch);
+        }
+        if (pending.leader) {
+            writeBatch(batchWriter, Math.max(1, maxBatchSize), flushInterval);
+        }
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+    }
+
+    /** Writes one batch as the leader, which is always the first record in the queue, and then hands over to the next leader. */
+    private void writeBatch(final BatchWriter batchWriter, final int maxBatchSize, final long flushInterval) {
+        final List<Pending> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            if (flushInterval > 0) {
+                long nanosLeft = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                while (queue.size() < maxBatchSize && nanosLeft > 0) {
+                    nanosLeft = batchFull.awaitNanos(nanosLeft);
+                }
+            }
+            while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                batch.add(queue.pollFirst());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                batch.add(queue.pollFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+        final List<AuditRecordData> auditRecords = new ArrayList<>(batch.size());
+        for (final Pending pending : batch) {
+            auditRecords.add(pending.auditRecord);
+        }
+        final AuditRecordStorageException failure = write(batchWriter, auditRecords);
+        if (failure != null && batch.size() > 1) {
+            // Retry the records one at a time, so that one record that can not be written does not fail the others
+            log.info("Failed to write a batch of " + batch.size() + " audit records, writing them one at a time: " + failure.getMessage());
+            for (final Pending pending : batch) {
+                pending.failure = write(batchWriter, Collections.singletonList(pending.auditRecord));
+            }
+        } else {
+            for (final Pending pending : batch) {
+                pending.failure = failure;
+            }
+        }
+        // The leader's own record is first in the batch
+        for (final Pending pending : batch.subList(1, batch.size())) {
+            pending.latch.countDown();
+        }
+        lock.lock();
+        try {
+            final Pending next = queue.peekFirst();
+            if (next == null) {
+                writeInProgress = false;
+            } else {
+                next.leader = true;
+                next.latch.countDown();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the failure, or null if the records were written */
+    private static AuditRecordStorageException write(final BatchWriter batchWriter, final List<AuditRecordData> auditRecords) {
+        try {
+            batchWriter.write(auditRecords);
+            if (log.isTraceEnabled()) {
+                log.trace("Wrote a batch of " + auditRecords.size() + " audit records.");
+            }
+            return null;
+        } catch (AuditRecordStorageException e) {
+            return e;
+        } catch (RuntimeException e) {
+            return new AuditRecordStorageException(e.getMessage(), e);
+        }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                // The record is already queued, so we have to wait for the outcome
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
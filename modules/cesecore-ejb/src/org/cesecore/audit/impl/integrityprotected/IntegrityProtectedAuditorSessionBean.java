@@ -20,9 +20,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
@@ -39,7 +43,6 @@ import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.audit.audit.AuditExporter;
 import org.cesecore.audit.audit.AuditLogExportReport;
 import org.cesecore.audit.audit.AuditLogExporterException;
-import org.cesecore.audit.audit.AuditLogReportElem;
 import org.cesecore.audit.audit.AuditLogValidationReport;
 import org.cesecore.audit.audit.AuditLogValidatorException;
 import org.cesecore.audit.audit.SigningFileOutputStream;
@@ -48,8 +51,12 @@ import org.cesecore.audit.enums.EventTypes;
 import org.cesecore.audit.enums.ModuleTypes;
 import org.cesecore.audit.enums.ServiceTypes;
 import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
 import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.util.ValidityDate;
 import org.cesecore.util.query.Criteria;
@@ -65,9 +72,12 @@ import com.keyfactor.util.keys.token.CryptoToken;
  * instead of custom code for log singing.
  * 
  * The index
- *  "CREATE UNIQUE INDEX auditrecorddata_idx1 ON AuditRecordData (nodeId,timeStamp,sequenceNumber);"
+ *  "CREATE UNIQUE INDEX auditrecorddata_idx2 ON AuditRecordData (nodeId,sequenceNumber);"
  * should be present for proper validation and export performance.
  * 
+ * The logs of different nodes are verified in parallel (validate.threads). When validate.incremental is set, the last sequence number
+ * verified without errors for each node is kept in {@link AuditLogVerificationCheckpoint}, and the next verification continues from there.
+ * 
  * @version $Id$
  */
 @Stateless
@@ -81,6 +91,8 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     @Resource
     private SessionContext sessionContext;
     @EJB
+    private GlobalConfigurationSessionLocal globalConfigurationSession;
+    @EJB
     private SecurityEventsLoggerSessionLocal securityEventsLogger;
     // Myself needs to be injected in postConstruct
     private IntegrityProtectedAuditorSessionLocal integrityProtectedAuditorSession;
@@ -155,18 +167,81 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	public AuditLogValidationReport verifyLogsIntegrity(final AuthenticationToken token, final Date timestamp, final Properties properties) throws AuditLogValidatorException {
         final AuditLogValidationReport report = new AuditLogValidationReport();
         try {
-            verifyAndOptionalExport(null, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+            final boolean incremental = AuditDevicesConfig.isAuditLogValidationIncremental(properties);
+            final AuditLogVerificationCheckpoint checkpoint = incremental ?
+                    (AuditLogVerificationCheckpoint) globalConfigurationSession.getCachedConfiguration(AuditLogVerificationCheckpoint.CONFIGURATION_ID) : null;
+            final int fetchSize = AuditDevicesConfig.getAuditLogValidationFetchSize(properties);
+            final int threads = AuditDevicesConfig.getAuditLogValidationThreads(properties);
+            // Verify the nodes in parallel, each with its own report, but never more than 'threads' nodes at a time
+            final List<String> nodeIds = getNodeIds();
+            final Map<String, AuditLogValidationReport> nodeReports = new LinkedHashMap<>();
+            final Map<String, Future<Long>> pending = new LinkedHashMap<>();
+            final Map<String, Long> lastSequenceNumbers = new LinkedHashMap<>();
+            for (final String nodeId : nodeIds) {
+                final long lastVerifiedSequenceNumber = checkpoint == null ? -1L : checkpoint.getLastVerifiedSequenceNumber(nodeId);
+                final AuditLogValidationReport nodeReport = new AuditLogValidationReport();
+                nodeReports.put(nodeId, nodeReport);
+                if (threads == 1) {
+                    lastSequenceNumbers.put(nodeId, verifyAndOptionalExport(null, nodeReport, nodeId, timestamp, lastVerifiedSequenceNumber, fetchSize));
+                    continue;
+                }
+                if (pending.size() >= threads) {
+                    final String oldestNodeId = pending.keySet().iterator().next();
+                    lastSequenceNumbers.put(oldestNodeId, getNodeResult(pending.remove(oldestNodeId)));
+                }
+                pending.put(nodeId, integrityProtectedAuditorSession.verifyNode(nodeReport, nodeId, timestamp, lastVerifiedSequenceNumber, fetchSize));
+            }
+            for (final Map.Entry<String, Future<Long>> entry : pending.entrySet()) {
+                lastSequenceNumbers.put(entry.getKey(), getNodeResult(entry.getValue()));
+            }
+            for (final AuditLogValidationReport nodeReport : nodeReports.values()) {
+                report.errors().addAll(nodeReport.errors());
+                report.warnings().addAll(nodeReport.warnings());
+            }
         	// Log the success or failure depending on if verification returns error or not
         	logVerificationResult(report.errors().size(), timestamp, token);
+        	if (checkpoint != null) {
+        	    saveCheckpoint(checkpoint, nodeReports, lastSequenceNumbers);
+        	}
         } catch (final Exception e) {
         	throw new AuditLogValidatorException(e.getMessage(), e);
         }
         return report;
 	}
 
+    @Override
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Future<Long> verifyNode(final AuditLogValidationReport report, final String nodeId, final Date timestamp, final long lastVerifiedSequenceNumber,
+            final int fetchSize) throws IOException {
+        return new AsyncResult<>(verifyAndOptionalExport(null, report, nodeId, timestamp, lastVerifiedSequenceNumber, fetchSize));
+    }
+
+    /** @return the last sequence number verified by {@link #verifyNode} */
+    private long getNodeResult(final Future<Long> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Moves the checkpoint of each node that was verified without any findings forward */
+    private void saveCheckpoint(final AuditLogVerificationCheckpoint checkpoint, final Map<String, AuditLogValidationReport> nodeReports,
+            final Map<String, Long> lastSequenceNumbers) throws AuthorizationDeniedException {
+        if (AuditLogNodeVerification.advanceCheckpoint(checkpoint, nodeReports, lastSequenceNumbers)) {
+            globalConfigurationSession.saveConfiguration(new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("Audit log verification")), checkpoint);
+        }
+    }
+
 	/**
-	 * Read batches of logs from the database. If the database integrity check fails, the batch will be processed row by row.
-	 * Results are added to the report.
+	 * Read batches of logs from the database, in order of sequence number. If the database integrity check fails for a batch,
+	 * it is split in two halves until the rows that fail are found. Results are added to the report.
 	 * @param auditExporter can be null if no export should take place
 	 * @param report is a AuditLogValidationReport or AuditLogExportReport
 	 * @param timestamp process all entries up until this time (should be epoch GMT)
@@ -174,106 +249,35 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	private void verifyAndOptionalExport(AuditExporter auditExporter, AuditLogValidationReport report, Date timestamp, final int fetchSize) throws IOException {
     	// Get a list of the nodes that have data in the database
     	for (final String nodeId : getNodeIds()) {
-    		if (log.isDebugEnabled()) {
-    			log.debug("exportAuditLogs for nodeId " + nodeId);
-    		}
-    		// Assuming timeStamp is in UTC
-    		final QueryCriteria queryCriteria = QueryCriteria.create().add((Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())))).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
-    		int startIndex = 1;
-    		final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(-1L));
-    		while (true) {
-    			try {
-        			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, fetchSize, queryCriteria, report, lastSeqNumber, nodeId);
-    				final int results = queryResult.size();
-    				if (results == 0) {
-    					break;	// No more data for this node
-    				}
-    				startIndex += results;
-					if (auditExporter!=null) {
-						for (final AuditRecordData auditRecordData : queryResult) {
-							writeToExport(auditExporter, auditRecordData);
-        					((AuditLogExportReport) report).incExportCount();
-						}
-					}
-    			} catch (DatabaseProtectionException e) {
-    				// One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
-    				for (int i=0; i<fetchSize; i++) {
-        				try {
-                			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, 1, queryCriteria, report, lastSeqNumber, nodeId);
-            				final int results = queryResult.size();
-            				if (results != 1) {
-            					break;	// No more data for this node
-            				}
-        					if (auditExporter!=null) {
-        						writeToExport(auditExporter, queryResult.get(0));
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				} catch (DatabaseProtectionException e2) {
-        					final AuditRecordData auditRecordData = (AuditRecordData) e2.getEntity();
-        					// Add to report
-        					report.warn(new AuditLogReportElem(lastSeqNumber.get().longValue(), auditRecordData.getSequenceNumber(), "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
-        					lastSeqNumber.set(auditRecordData.getSequenceNumber());
-        					// We still export it
-        					// TODO: It might make sense to make it configurable to export when verification fails..
-        					if (auditExporter!=null) {
-            					writeToExport(auditExporter, auditRecordData);
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				}
-        				startIndex += 1;
-    				}
-    			}
-    		}
+    	    verifyAndOptionalExport(auditExporter, report, nodeId, timestamp, -1L, fetchSize);
     	}
 	}
 
-	/** We want to export exactly like it was stored in the database, to comply with requirements on logging systems where no altering of the original log data is allowed. */
-    private void writeToExport(final AuditExporter auditExporter, final AuditRecordData auditRecordData) throws IOException {
-        auditExporter.writeStartObject();
-        auditExporter.writeField("pk", auditRecordData.getPk());
-        auditExporter.writeField("nodeId", auditRecordData.getNodeId());
-        auditExporter.writeField("sequenceNumber", auditRecordData.getSequenceNumber());
-        auditExporter.writeField("timestamp", auditRecordData.getTimeStamp());
-        auditExporter.writeField("eventType", auditRecordData.getEventTypeValue().toString());
-        auditExporter.writeField("eventStatus", auditRecordData.getEventStatusValue().toString());
-        auditExporter.writeField("authToken", auditRecordData.getAuthToken());
-        auditExporter.writeField("service", auditRecordData.getServiceTypeValue().toString());
-        auditExporter.writeField("module", auditRecordData.getModuleTypeValue().toString());
-        auditExporter.writeField("customId", auditRecordData.getCustomId());
-        auditExporter.writeField("searchDetail1", auditRecordData.getSearchDetail1());
-        auditExporter.writeField("searchDetail2", auditRecordData.getSearchDetail2());
-        auditExporter.writeField("additionalDetails", auditRecordData.getAdditionalDetails());
-        auditExporter.writeField("rowProtection", auditRecordData.getRowProtection());
-        auditExporter.writeEndObject();
-    }
-    
+	/**
+	 * Read batches of logs of one node from the database, starting after the given sequence number.
+	 * @return the last sequence number that was processed, or lastVerifiedSequenceNumber if there were no new entries
+	 */
+	private long verifyAndOptionalExport(final AuditExporter auditExporter, final AuditLogValidationReport report, final String nodeId, final Date timestamp,
+	        final long lastVerifiedSequenceNumber, final int fetchSize) throws IOException {
+	    if (log.isDebugEnabled()) {
+	        log.debug("verifyAndOptionalExport for nodeId " + nodeId + " after sequenceNumber " + lastVerifiedSequenceNumber);
+	    }
+	    return new AuditLogNodeVerification(this::fetchBatch, auditExporter, report, nodeId, timestamp, lastVerifiedSequenceNumber).verify(fetchSize);
+	}
+
     /**
-     * Fetch a batch of log rows from the database (implying database integrity check) and verifies
-     * that all sequence numbers are present.
-     * @param startIndex start batch from this position 
-     * @param max entries per batch
-     * @param queryCriteria where clause
-     * @param report will be updated when a problem is found
-     * @param lastSeqNumber will be updated to the last sequence number processed in this subset
-     * @param nodeId identifier of which node that claims to have written this data
-     * @return the log entries we fetched from the database so the caller may export these
-     * @throws DatabaseProtectionException if the intregrity verification fails for one of the entries in the batch during fetch
+     * Fetch a batch of log rows of a node from the database, implying database integrity check. Uses the sequence number of the last
+     * processed row instead of an offset, so that each batch is read directly from the (nodeId,sequenceNumber) index.
+     * @see AuditLogNodeVerification.BatchFetcher#fetch
      */
-	private List<AuditRecordData> verifyLogsIntegritySubset(final int startIndex, final int max, final QueryCriteria queryCriteria, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
-		final List<AuditRecordData> queryResult = internalSelectAuditLogs(startIndex, max, queryCriteria);	// Might throw DatabaseProtectionException
-		// Loop through results and verify that the sequence order is correct
-		for (int i=0; i<queryResult.size(); i++) {
-			final long currentSeqNumber = queryResult.get(i).getSequenceNumber().longValue();
-			if (currentSeqNumber != lastSeqNumber.get().longValue() + 1) {
-				if (log.isDebugEnabled()) {
-					log.debug("Log verification failure for log on node " + nodeId + ". Missing entry. Last sequenceNumber was " + lastSeqNumber + " and current is " + currentSeqNumber);
-				}
-				// Add to report
-				report.warn(new AuditLogReportElem(lastSeqNumber.get(), Long.valueOf(currentSeqNumber), "missing log with sequence number " + (lastSeqNumber.get().longValue() + 1) + " on nodeId " + nodeId));
-			}
-			lastSeqNumber.set(Long.valueOf(currentSeqNumber));
-		}
-		return queryResult;
+	private List<AuditRecordData> fetchBatch(final String nodeId, final Date timestamp, final long afterSequenceNumber, final int max) throws DatabaseProtectionException {
+	    // Assuming timeStamp is in UTC
+	    final QueryCriteria queryCriteria = QueryCriteria.create()
+	            .add(Criteria.and(Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId),
+	                    Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())),
+	                    Criteria.grt(AuditLogEntry.FIELD_SEQUENCENUMBER, afterSequenceNumber)))
+	            .add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
+		return internalSelectAuditLogs(0, max, queryCriteria);	// Might throw DatabaseProtectionException
 	}
 	
 	/** Log the outcome of the verification to the secure audit log based on the supplied number of errors. */
@@ -328,12 +332,4 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         }
         return query;
     }
-    
-    /** Class used internally for holding an object that can updated by a method. */
-    private class Holder<T> {
-    	private T object;
-    	Holder(final T object) { set(object); }
-		public void set(final T object) { this.object = object; }
-		public T get() { return object; }
-    }
 }
@@ -12,10 +12,14 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -24,6 +28,7 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 
 import org.apache.log4j.Logger;
+import org.cesecore.audit.AuditDevicesConfig;
 import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.enums.EventType;
 import org.cesecore.audit.enums.ModuleType;
@@ -51,10 +56,15 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
+    @Resource
+    private SessionContext sessionContext;
+
+    private IntegrityProtectedLoggerSessionLocal loggerSession;
 
     @PostConstruct
     public void postConstruct() {
         CryptoProviderTools.installBCProviderIfNotAvailable();
+        loggerSession = sessionContext.getBusinessObject(IntegrityProtectedLoggerSessionLocal.class);
     }
 
     /**
@@ -81,8 +91,8 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
     };
 
     @Override
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    // Always persist audit log
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    // Always persist audit log, in a transaction of its own (see persistAuditRecords)
     public void log(final TrustedTime trustedTime, final EventType eventType, final EventStatus eventStatus, final ModuleType module,
             final ServiceType service, String authToken, final String customId, final String searchDetail1, final String searchDetail2,
             final Map<String, Object> additionalDetails, final Properties properties) throws AuditRecordStorageException {
@@ -90,17 +100,29 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             log.trace(String.format(">log:%s:%s:%s:%s:%s:%s", eventType, eventStatus, module, service, authToken, additionalDetails));
         }
         try {
-            final Long sequenceNumber = NodeSequenceHolder.INSTANCE.getNext(sequenceHolderInitialization);
-            // Make sure to use the Node Identifier that this log sequence was initialized with (for example hostnames reported by the system could change)
-            final String nodeId = NodeSequenceHolder.INSTANCE.getNodeId();
             final Long timeStamp = trustedTime.getTime().getTime();
             if(authToken.length() > MAX_AUTH_TOKEN_SIZE) {
                 additionalDetails.put("authToken", authToken);
                 authToken = "[trimmed] " + authToken.substring(0, MAX_AUTH_TOKEN_SIZE - 15);
             }
-            final AuditRecordData auditRecordData = new AuditRecordData(nodeId, sequenceNumber, timeStamp, eventType, eventStatus, authToken,
-                    service, module, customId, searchDetail1, searchDetail2, additionalDetails);
-            entityManager.persist(auditRecordData);
+            final String trimmedAuthToken = authToken;
+            final AuditRecordGroupCommitter.RecordFactory recordFactory = () -> {
+                final Long sequenceNumber = NodeSequenceHolder.INSTANCE.getNext(sequenceHolderInitialization);
+                // Make sure to use the Node Identifier that this log sequence was initialized with (for example hostnames reported by the system could change)
+                final String nodeId = NodeSequenceHolder.INSTANCE.getNodeId();
+                return new AuditRecordData(nodeId, sequenceNumber, timeStamp, eventType, eventStatus, trimmedAuthToken,
+                        service, module, customId, searchDetail1, searchDetail2, additionalDetails);
+            };
+            final int batchSize = properties == null ? AuditDevicesConfig.DEFAULT_BATCH_SIZE : AuditDevicesConfig.getAuditLogBatchSize(properties);
+            if (batchSize <= 1) {
+                loggerSession.persistAuditRecords(Collections.singletonList(recordFactory.create()));
+            } else {
+                final long flushInterval = properties == null ? 0 : AuditDevicesConfig.getAuditLogBatchFlushInterval(properties);
+                AuditRecordGroupCommitter.INSTANCE.log(recordFactory, loggerSession::persistAuditRecords, batchSize, flushInterval);
+            }
+        } catch (AuditRecordStorageException e) {
+            log.error(e.getMessage(), e);
+            throw e;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             throw new AuditRecordStorageException(e.getMessage(), e);
@@ -110,4 +132,19 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             }
         }
     }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void persistAuditRecords(final List<AuditRecordData> auditRecords) throws AuditRecordStorageException {
+        try {
+            for (final AuditRecordData auditRecordData : auditRecords) {
+                entityManager.persist(auditRecordData);
+            }
+            // Write the batch before the commit, so that a failure is reported to the callers rather than to the container
+            entityManager.flush();
+        } catch (Exception e) {
+            // AuditRecordStorageException causes a rollback of the whole batch
+            throw new AuditRecordStorageException(e.getMessage(), e);
+        }
+    }
 }
@@ -144,6 +144,15 @@ public class CaSessionBean implements CaSessionLocal, CaSessionRemote {
         return query.getResultList();
     }
     
+    /** @return map from CA id to row version of all CAs in the database */
+    private Map<Integer, Integer> findAllRowVersions() {
+        final Map<Integer, Integer> ret = new HashMap<>();
+        for (final Object[] row : entityManager.createQuery("SELECT a.caId, a.rowVersion FROM CAData a", Object[].class).getResultList()) {
+            ret.put((Integer) row[0], (Integer) row[1]);
+        }
+        return ret;
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<CAData> findAllCitsCa() {
@@ -995,6 +1004,10 @@ public class CaSessionBean implements CaSessionLocal, CaSessionRemote {
                 }
             }
         }
+        if (CesecoreConfiguration.isCacheRevalidationByRowVersion() && CaCache.INSTANCE.shouldRevalidate()) {
+            // Expire the cached CAs that have changed in the database, without reading the unchanged ones
+            CaCache.INSTANCE.revalidate(findAllRowVersions());
+        }
         // 1. Check (new) CaCache if it is time to sync-up with database (or it does not exist)
         if (CaCache.INSTANCE.shouldCheckForUpdates(caId)) {
             if (log.isDebugEnabled()) {
@@ -1011,6 +1024,7 @@ public class CaSessionBean implements CaSessionLocal, CaSessionRemote {
                     // CaCache.INSTANCE.removeEntry(caId); // TODO: remove later
                     // Note that we store using the "real" CAId in the cache.
                     CaCache.INSTANCE.updateWith(caData.getCaId(), digest, ca.getName(), ca);
+                    CaCache.INSTANCE.setRowVersion(caData.getCaId(), caData.getRowVersion());
                 }
                 // Since caching might be disabled, we return the value returned from the database here
                 return ca;
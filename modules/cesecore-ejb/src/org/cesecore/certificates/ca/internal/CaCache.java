@@ -31,7 +31,7 @@ public enum CaCache implements CommonCache<CACommon> {
 
     private static final org.apache.log4j.Logger log = Logger.getLogger(CaCache.class);
 
-    final private CommonCache<CACommon> caCache = new CommonCacheBase<CACommon>() {
+    final private CommonCacheBase<CACommon> caCache = new CommonCacheBase<CACommon>() {
         @Override
         protected long getCacheTime() {
             return CesecoreConfiguration.getCacheCaTimeInCaSession();
@@ -96,4 +96,19 @@ public enum CaCache implements CommonCache<CACommon> {
         return caCache.willUpdate(id, digest);
     }
 
+    /** @see CommonCacheBase#shouldRevalidate() */
+    public boolean shouldRevalidate() {
+        return caCache.shouldRevalidate();
+    }
+
+    /** @see CommonCacheBase#revalidate(Map) */
+    public void revalidate(final Map<Integer, Integer> rowVersions) {
+        caCache.revalidate(rowVersions);
+    }
+
+    /** @see CommonCacheBase#setRowVersion(int, int) */
+    public void setRowVersion(final int caId, final int rowVersion) {
+        caCache.setRowVersion(caId, rowVersion);
+    }
+
 }
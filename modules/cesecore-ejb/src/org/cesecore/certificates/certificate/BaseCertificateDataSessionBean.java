@@ -15,14 +15,16 @@ package org.cesecore.certificates.certificate;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoCollection;
 import org.cesecore.config.CesecoreConfiguration;
-import org.cesecore.util.CompressedCollection;
 import org.cesecore.util.ValueExtractor;
 
 /**
@@ -35,13 +37,48 @@ public abstract class BaseCertificateDataSessionBean {
     /** Returns the entity manager to use. */
     protected abstract EntityManager getEntityManager();
     
-    protected Collection<RevokedCertInfo> getRevokedCertInfosInternal(final Query query, final boolean allowInvalidityDate) {
+    /**
+     * Reads all revoked certificates matching a native query into a collection. See {@link #readRevokedCertInfos} for the parameters.
+     */
+    protected Collection<RevokedCertInfo> getRevokedCertInfosInternal(final String sql, final String resultSetMapping, final String keyColumn,
+            final int keyColumnIndex, final Map<String, Object> parameters, final boolean allowInvalidityDate) {
+        final RevokedCertInfoCollection revokedCertInfos = new RevokedCertInfoCollection();
+        readRevokedCertInfos(sql, resultSetMapping, keyColumn, keyColumnIndex, parameters, allowInvalidityDate, revokedCertInfos::add);
+        revokedCertInfos.closeForWrite();
+        return revokedCertInfos;
+    }
+
+    /**
+     * Reads all revoked certificates matching a native query, in batches of database.crlgenfetchsize rows, and passes them to
+     * the consumer one at a time as they are read.
+     * <p>
+     * The batches are read with keyset pagination: the rows are ordered by a unique key column, and each batch starts after the
+     * key of the last row of the previous batch. Unlike an offset, this lets the database seek directly to the start of each batch,
+     * so the time to read all rows grows linearly with the number of rows. It also gives a stable order, so no rows are returned twice
+     * or skipped between batches.
+     *
+     * @param sql native query selecting the columns of resultSetMapping, with a WHERE clause and without ORDER BY. Columns must be prefixed with "a.".
+     * @param resultSetMapping the result set mapping of the query
+     * @param keyColumn unique, non-null column to order and paginate by
+     * @param keyColumnIndex index of keyColumn in the result set mapping
+     * @param parameters parameters of the query
+     * @param allowInvalidityDate true if invalidity dates should be read
+     * @param consumer receives each revoked certificate
+     */
+    protected void readRevokedCertInfos(final String sql, final String resultSetMapping, final String keyColumn, final int keyColumnIndex,
+            final Map<String, Object> parameters, final boolean allowInvalidityDate, final Consumer<RevokedCertInfo> consumer) {
         final int maxResults = CesecoreConfiguration.getDatabaseRevokedCertInfoFetchSize();
-        query.setMaxResults(maxResults);
-        int firstResult = 0;
-        final CompressedCollection<RevokedCertInfo> revokedCertInfos = new CompressedCollection<>(RevokedCertInfo.class);
+        // The first batch has no lower bound, since an empty string is NULL in some databases
+        final Query firstQuery = getEntityManager().createNativeQuery(sql + " ORDER BY a." + keyColumn, resultSetMapping);
+        final Query nextQuery = getEntityManager().createNativeQuery(sql + " AND a." + keyColumn + ">:keysetKey ORDER BY a." + keyColumn, resultSetMapping);
+        for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            firstQuery.setParameter(parameter.getKey(), parameter.getValue());
+            nextQuery.setParameter(parameter.getKey(), parameter.getValue());
+        }
+        firstQuery.setMaxResults(maxResults);
+        nextQuery.setMaxResults(maxResults);
+        Query query = firstQuery;
         while (true) {
-            query.setFirstResult(firstResult);
             @SuppressWarnings("unchecked")
             final List<Object[]> incompleteCertificateDatas = query.getResultList();
             if (incompleteCertificateDatas.size()==0) {
@@ -51,26 +88,32 @@ public abstract class BaseCertificateDataSessionBean {
                 log.debug("Read batch of " + incompleteCertificateDatas.size() + " RevokedCertInfo.");
             }
             for (final Object[] current : incompleteCertificateDatas) {
-                // The order of the results are defined by the SqlResultSetMapping annotation
-                final byte[] fingerprint = ((String)current[0]).getBytes();
-                final byte[] serialNumber = new BigInteger((String)current[1]).toByteArray();
-                final long expireDate = ValueExtractor.extractLongValue(current[2]);
-                final long revocationDate = ValueExtractor.extractLongValue(current[3]);
-                int revocationReason = ValueExtractor.extractIntValue(current[4]);
-                if (revocationReason == -1) {
-                    revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
-                }
-                if (allowInvalidityDate) {
-                    final Long invalidityDate = ValueExtractor.extractLongValue(current[5]) == -1L ? null : ValueExtractor.extractLongValue(current[5]);
-                    revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate, invalidityDate));
-                } else {
-                    revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate));
-                }
+                consumer.accept(toRevokedCertInfo(current, allowInvalidityDate));
+            }
+            if (incompleteCertificateDatas.size() < maxResults) {
+                break;
             }
-            firstResult += maxResults;
+            query = nextQuery;
+            query.setParameter("keysetKey", incompleteCertificateDatas.get(incompleteCertificateDatas.size() - 1)[keyColumnIndex]);
+        }
+    }
+
+    private RevokedCertInfo toRevokedCertInfo(final Object[] current, final boolean allowInvalidityDate) {
+        // The order of the results are defined by the SqlResultSetMapping annotation
+        final byte[] fingerprint = ((String)current[0]).getBytes();
+        final byte[] serialNumber = new BigInteger((String)current[1]).toByteArray();
+        final long expireDate = ValueExtractor.extractLongValue(current[2]);
+        final long revocationDate = ValueExtractor.extractLongValue(current[3]);
+        int revocationReason = ValueExtractor.extractIntValue(current[4]);
+        if (revocationReason == -1) {
+            revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
+        }
+        if (allowInvalidityDate) {
+            final Long invalidityDate = ValueExtractor.extractLongValue(current[5]) == -1L ? null : ValueExtractor.extractLongValue(current[5]);
+            return new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate, invalidityDate);
+        } else {
+            return new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate);
         }
-        revokedCertInfos.closeForWrite();
-        return revokedCertInfos;
     }
     
 }
@@ -30,9 +30,11 @@ import javax.persistence.TypedQuery;
 import java.math.BigInteger;
 import java.security.cert.Certificate;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -251,55 +253,90 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
                     ", Allow Invalidity Date: " + allowInvalidityDate);
         }
         final String crlPartitionExpression;
-        final String ordering;
-        final Query query;
+        final String sql;
+        final Map<String, Object> parameters = new HashMap<>();
         if (crlPartitionIndex != 0) {
             crlPartitionExpression = " AND crlPartitionIndex = :crlPartitionIndex";
         } else {
             crlPartitionExpression = " AND (crlPartitionIndex = :crlPartitionIndex OR crlPartitionIndex IS NULL)";
         }
-        if (CesecoreConfiguration.getDatabaseRevokedCertInfoFetchOrdered()) {
-            ordering = " ORDER BY revocationDate, fingerprint ASC";
-        } else {
-            ordering = "";
-        }
         if (allowInvalidityDate && deltaCrl) {
             // For delta CRL generation with invalidityDate. Results will be filtered later. This is needed since we will need to compare the results with the revoked cert entries
             // in the last base CRL in order to figure out which certificates had their invalidity date changed since the last base CRL. We can't determine that in the query here.
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND a.updateTime>:lastBaseCrlDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + ordering,
-                    "RevokedCertInfoSubset");
-            query.setParameter("lastBaseCrlDate", lastBaseCrlDate);
-            query.setParameter("revocationDate", -1L);
-            query.setParameter("status1", CertificateConstants.CERT_REVOKED);
-            query.setParameter("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
-            query.setParameter("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration            
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND a.updateTime>:lastBaseCrlDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
+                    + crlPartitionExpression;
+            parameters.put("lastBaseCrlDate", lastBaseCrlDate);
+            parameters.put("revocationDate", -1L);
+            parameters.put("status1", CertificateConstants.CERT_REVOKED);
+            parameters.put("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
+            parameters.put("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration            
         }
         else if (deltaCrl) {
             // Delta CRL
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + ordering,
-                    "RevokedCertInfoSubset");
-            query.setParameter("revocationDate", lastBaseCrlDate);
-            query.setParameter("status1", CertificateConstants.CERT_REVOKED);
-            query.setParameter("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
-            query.setParameter("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
+                    + crlPartitionExpression;
+            parameters.put("revocationDate", lastBaseCrlDate);
+            parameters.put("status1", CertificateConstants.CERT_REVOKED);
+            parameters.put("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
+            parameters.put("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration
         } else {
             // Base CRL
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM CertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND a.status=:status"
-                            + crlPartitionExpression + ordering,
-                    "RevokedCertInfoSubset");
-            query.setParameter("status", CertificateConstants.CERT_REVOKED);
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM CertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND a.status=:status"
+                    + crlPartitionExpression;
+            parameters.put("status", CertificateConstants.CERT_REVOKED);
+        }
+        parameters.put("issuerDN", issuerDN);
+        parameters.put("crlPartitionIndex", crlPartitionIndex);
+        // The fingerprint is the primary key, and the first column of the result set mapping
+        return getRevokedCertInfosInternal(sql, "RevokedCertInfoSubset", "fingerprint", 0, parameters, allowInvalidityDate);
+    }
+
+    @Override
+    public Collection<RevokedCertInfo> getRevokedCertInfosUpdatedAfter(final String issuerDN, final int crlPartitionIndex, final long updatedAfter,
+            final boolean allowInvalidityDate) {
+        if (log.isDebugEnabled()) {
+            log.debug("Querying for revocation status changes. IssuerDN: '" + issuerDN + "'" +
+                    ", Updated after: " + FastDateFormat.getInstance(ValidityDate.ISO8601_DATE_FORMAT, TimeZone.getTimeZone("GMT")).format(updatedAfter) +
+                    ", Allow Invalidity Date: " + allowInvalidityDate);
+        }
+        final String crlPartitionExpression;
+        final Map<String, Object> parameters = new HashMap<>();
+        if (crlPartitionIndex != 0) {
+            crlPartitionExpression = " AND crlPartitionIndex = :crlPartitionIndex";
+        } else {
+            crlPartitionExpression = " AND (crlPartitionIndex = :crlPartitionIndex OR crlPartitionIndex IS NULL)";
         }
+        // Certificates that have ever been revoked have a revocation date. The ones that are no longer revoked, e.g. re-activated or archived, are
+        // returned as not revoked so that they are removed from the CRL
+        final String sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, "
+                + "CASE WHEN a.status=" + CertificateConstants.CERT_REVOKED + " THEN a.revocationReason ELSE " + RevokedCertInfo.NOT_REVOKED + " END as revocationReason, "
+                + "a.invalidityDate as invalidityDate FROM CertificateData a WHERE "
+                + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND a.updateTime>:updatedAfter"
+                + crlPartitionExpression;
+        parameters.put("issuerDN", issuerDN);
+        parameters.put("revocationDate", -1L);
+        parameters.put("updatedAfter", updatedAfter);
+        parameters.put("crlPartitionIndex", crlPartitionIndex);
+        return getRevokedCertInfosInternal(sql, "RevokedCertInfoSubset", "fingerprint", 0, parameters, allowInvalidityDate);
+    }
+
+    @Override
+    public long countRevokedCertificates(final String issuerDN, final int crlPartitionIndex) {
+        final String crlPartitionExpression;
+        if (crlPartitionIndex != 0) {
+            crlPartitionExpression = " AND a.crlPartitionIndex=:crlPartitionIndex";
+        } else {
+            crlPartitionExpression = " AND (a.crlPartitionIndex=:crlPartitionIndex OR a.crlPartitionIndex IS NULL)";
+        }
+        final TypedQuery<Long> query = entityManager.createQuery("SELECT COUNT(a) FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.status=:status"
+                + crlPartitionExpression, Long.class);
         query.setParameter("issuerDN", issuerDN);
+        query.setParameter("status", CertificateConstants.CERT_REVOKED);
         query.setParameter("crlPartitionIndex", crlPartitionIndex);
-        return getRevokedCertInfosInternal(query, allowInvalidityDate);
+        return query.getSingleResult();
     }
 
     @Override
@@ -408,8 +445,9 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
     @Override
     public List<Certificate> getCertificateList(final List<CertificateData> cdl) {
         final List<Certificate> cl = new LinkedList<>();
+        final Map<String, Base64CertData> base64CertDatas = Base64CertData.findByCertificateDatas(entityManager, cdl);
         for (final CertificateData cd : cdl) {
-            final Certificate cert = cd.getCertificate(entityManager);
+            final Certificate cert = cd.getCertificate(base64CertDatas.get(cd.getFingerprint()));
             if ( cert==null ) {
                 continue;
             }
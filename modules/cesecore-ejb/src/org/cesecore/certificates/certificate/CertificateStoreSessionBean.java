@@ -46,8 +46,12 @@ import javax.ejb.TimerService;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -74,6 +78,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
 import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.config.GlobalCesecoreConfiguration;
@@ -118,6 +123,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     // Myself needs to be looked up in postConstruct
     @Resource
     private SessionContext sessionContext;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
     private CertificateStoreSessionLocal certificateStoreSession;
     /* When the sessionContext is injected, the timerService should be looked up.
      * This is due to the Glassfish EJB verifier complaining.
@@ -431,6 +438,19 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return ret;
     }
 
+    /**
+     * Wraps the certificate datas. Certificates stored in the Base64CertData table are fetched with a few batched queries, instead of one
+     * query per certificate.
+     */
+    private List<CertificateDataWrapper> getCertificateDataWrappers(final List<CertificateData> certificateDatas) {
+        final Map<String, Base64CertData> base64CertDatas = Base64CertData.findByCertificateDatas(entityManager, certificateDatas);
+        final List<CertificateDataWrapper> ret = new ArrayList<>(certificateDatas.size());
+        for (final CertificateData certificateData : certificateDatas) {
+            ret.add(new CertificateDataWrapper(certificateData, base64CertDatas.get(certificateData.getFingerprint())));
+        }
+        return ret;
+    }
+
     @Override
     public List<CertificateDataWrapper> getCertificateDatasBySubjectAndIssuer(String subjectDN, String issuerDN, boolean onlyActive) {
         // First make a DN in our well-known format
@@ -439,7 +459,6 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (log.isDebugEnabled()) {
             log.debug("Looking for cert with (transformed)DN: " + dn);
         }
-        final List<CertificateDataWrapper> ret = new ArrayList<>();
         final Query query;
         if (onlyActive) {
             query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE " + "a.subjectDN=:subjectDN AND a.issuerDN=:issuerDN"
@@ -454,11 +473,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
         query.setParameter("subjectDN", dn);
         query.setParameter("issuerDN", issuerdn);
-        for (final Object certificateDataObject : query.getResultList()) {
-            final CertificateData certificateData = (CertificateData) certificateDataObject;
-            ret.add(new CertificateDataWrapper(certificateData, Base64CertData.findByFingerprint(entityManager, certificateData.getFingerprint())));
-        }
-        return ret;
+        @SuppressWarnings("unchecked")
+        final List<CertificateData> certificateDatas = query.getResultList();
+        return getCertificateDataWrappers(certificateDatas);
     }
 
     @Override
@@ -568,11 +585,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (log.isDebugEnabled()) {
             log.debug("Looking for cert with (transformed) DN: " + dn);
         }
-        final List<CertificateDataWrapper> ret = new ArrayList<>();
-        for (final CertificateData certificateData : certificateDataSession.findBySubjectDN(dn)) {
-            ret.add(new CertificateDataWrapper(certificateData, Base64CertData.findByFingerprint(entityManager, certificateData.getFingerprint())));
-        }
-        return ret;
+        return getCertificateDataWrappers(certificateDataSession.findBySubjectDN(dn));
     }
 
     @Override
@@ -646,8 +659,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             log.debug("Found " + certificateDatas.size() + " certificates that expire before " + expireTime);
         }
         final List<Certificate> ret = new ArrayList<>();
+        final Map<String, Base64CertData> base64CertDatas = Base64CertData.findByCertificateDatas(entityManager, certificateDatas);
         for (final CertificateData certificateData : certificateDatas) {
-            final Certificate certificate = certificateData.getCertificate(entityManager);
+            final Certificate certificate = certificateData.getCertificate(base64CertDatas.get(certificateData.getFingerprint()));
             if (certificate==null) {
                 if (log.isDebugEnabled()) {
                     log.debug("Skipping CertificateData with fingerprint '" + certificateData.getFingerprint() + "' since it has no stored certificate.");
@@ -675,8 +689,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             log.debug("Found " + certificateDatas.size() + " certificates that expire before " + expireTime);
         }
         final List<Certificate> ret = new ArrayList<>();
+        final Map<String, Base64CertData> base64CertDatas = Base64CertData.findByCertificateDatas(entityManager, certificateDatas);
         for (final CertificateData certificateData : certificateDatas) {
-            final Certificate certificate = certificateData.getCertificate(entityManager);
+            final Certificate certificate = certificateData.getCertificate(base64CertDatas.get(certificateData.getFingerprint()));
             if (certificate==null) {
                 if (log.isDebugEnabled()) {
                     log.debug("Skipping CertificateData with fingerprint '" + certificateData.getFingerprint() + "' since it has no stored certificate.");
@@ -703,8 +718,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         List<CertificateData> certificateDatas = certificateDataSession.findByExpireDateWithLimitAndOffset(expirationDate.getTime(), maxNumberOfResults, offset);
         log.debug("Found " + certificateDatas.size() + " certificates that expire before " + expirationDate);
         final List<Certificate> ret = new ArrayList<>();
+        final Map<String, Base64CertData> base64CertDatas = Base64CertData.findByCertificateDatas(entityManager, certificateDatas);
         for (final CertificateData certificateData : certificateDatas) {
-            final Certificate certificate = certificateData.getCertificate(entityManager);
+            final Certificate certificate = certificateData.getCertificate(base64CertDatas.get(certificateData.getFingerprint()));
             if (certificate == null) {
                 log.debug("Skipping CertificateData with fingerprint '" + certificateData.getFingerprint() + "' since it has no stored certificate.");
             } else {
@@ -728,8 +744,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             log.debug("Found " + coll.size() + " certificates that expire before " + expireTime + " and issuerDN " + issuerDN);
         }
         List<Certificate> ret = new ArrayList<>();
+        final Map<String, Base64CertData> base64CertDatas = Base64CertData.findByCertificateDatas(entityManager, coll);
         for(CertificateData certData : coll) {
-            ret.add(certData.getCertificate(entityManager));
+            ret.add(certData.getCertificate(base64CertDatas.get(certData.getFingerprint())));
         }
         if (log.isTraceEnabled()) {
             log.trace("<findCertificatesByExpireTimeWithLimit(), time=" + expireTime + "  issuerDN=" + issuerDN + "  - maxNumberOfResults=" + maxNumberOfResults);
@@ -750,8 +767,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             log.debug("Found " + coll.size() + " certificates that expire before " + expireTime + " and of type " + certificateType);
         }
         List<Certificate> ret = new ArrayList<>();
+        final Map<String, Base64CertData> base64CertDatas = Base64CertData.findByCertificateDatas(entityManager, coll);
         for(CertificateData certData : coll) {
-            ret.add(certData.getCertificate(entityManager));
+            ret.add(certData.getCertificate(base64CertDatas.get(certData.getFingerprint())));
         }
         if (log.isTraceEnabled()) {
             log.trace("<findCertificatesByExpireTimeAndTypeWithLimit(), time=" + expireTime + "  - type=" + certificateType + "  - maxNumberOfResults=" + maxNumberOfResults);
@@ -842,15 +860,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (certs.size()==0) {
             return null;
         }
-        final List<CertificateDataWrapper> cdws = new ArrayList<>();
-        for (final CertificateData certificateData : certs) {
-            if (CesecoreConfiguration.useBase64CertTable()) {
-                final Base64CertData base64CertData = Base64CertData.findByFingerprint(entityManager, certificateData.getFingerprint());
-                cdws.add(new CertificateDataWrapper(certificateData, base64CertData));
-            } else {
-                cdws.add(new CertificateDataWrapper(certificateData, null));
-            }
-        }
+        final List<CertificateDataWrapper> cdws = getCertificateDataWrappers(certs);
         Collections.sort(cdws);
         return cdws.get(0);
     }
@@ -926,11 +936,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (log.isTraceEnabled()) {
             log.trace(">findCertificatesBySerno(),  serno=" + serno);
         }
-        final List<CertificateDataWrapper> ret = new ArrayList<>();
-        final List<CertificateData> coll = certificateDataSession.findBySerialNumber(serno.toString());
-        for (final CertificateData certificateData : coll) {
-            ret.add(new CertificateDataWrapper(certificateData, Base64CertData.findByFingerprint(entityManager, certificateData.getFingerprint())));
-        }
+        final List<CertificateDataWrapper> ret = getCertificateDataWrappers(certificateDataSession.findBySerialNumber(serno.toString()));
         if (log.isTraceEnabled()) {
             log.trace("<findCertificatesBySerno(), serno=" + serno);
         }
@@ -952,7 +958,6 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     @SuppressWarnings("unchecked")
     @Override
     public List<CertificateDataWrapper> getCertificateDataByUsername(String username, boolean excludeExpired, List<Integer> excludedStatuses) {
-        final List<CertificateDataWrapper> ret = new ArrayList<>();
         final List<CertificateData> certificateDatas;
         if (excludeExpired) {
             if (excludedStatuses==null || excludedStatuses.isEmpty()) {
@@ -980,14 +985,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 certificateDatas = query.getResultList();
             }
         }
-        for (final CertificateData certificateData : certificateDatas) {
-            if (CesecoreConfiguration.useBase64CertTable()) {
-                ret.add(new CertificateDataWrapper(certificateData, Base64CertData.findByFingerprint(entityManager, certificateData.getFingerprint())));
-            } else {
-                ret.add(new CertificateDataWrapper(certificateData, null));
-            }
-        }
-        return ret;
+        return getCertificateDataWrappers(certificateDatas);
     }
 
     @Override
@@ -1262,6 +1260,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             } else {
                 entityManager.merge(certificateData);
             }
+            invalidateCachedOcspResponses(certificateData);
         }
         if (log.isTraceEnabled()) {
             log.trace("<private setRevokeStatusNoAuth(), issuerdn=" + issuerDn + ", serno=" + serialNumber);
@@ -1269,6 +1268,56 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return returnVal;
     }
 
+    /**
+     * Drops cached OCSP responses for a certificate whose status changed, both immediately and again when the transaction completes,
+     * so that no response produced from the old status (read before the commit) remains in the cache.
+     *
+     * @param certificateData the changed certificate, or null if the status of several certificates changed
+     */
+    private void invalidateCachedOcspResponses(final BaseCertificateData certificateData) {
+        if (certificateData == null) {
+            invalidateCachedOcspResponses(null, true);
+            return;
+        }
+        final int type = certificateData.getType();
+        final boolean isCa = (type & (CertificateConstants.CERTTYPE_SUBCA | CertificateConstants.CERTTYPE_ROOTCA)) != 0;
+        BigInteger serialNumber = null;
+        if (certificateData.getSerialNumber() != null) {
+            try {
+                serialNumber = new BigInteger(certificateData.getSerialNumber());
+            } catch (NumberFormatException e) {
+                // Not a decimal serial number, so we don't know which responses that could be affected
+            }
+        }
+        // The status of a CA certificate affects all responses for certificates issued by it
+        invalidateCachedOcspResponses(serialNumber, isCa || serialNumber == null);
+    }
+
+    private void invalidateCachedOcspResponses(final BigInteger serialNumber, final boolean flushAll) {
+        if (flushAll) {
+            OcspResponseCache.INSTANCE.flush();
+        } else {
+            OcspResponseCache.INSTANCE.invalidate(serialNumber);
+        }
+        if (transactionSynchronizationRegistry != null && transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                    // NOOP
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    if (flushAll) {
+                        OcspResponseCache.INSTANCE.flush();
+                    } else {
+                        OcspResponseCache.INSTANCE.invalidate(serialNumber);
+                    }
+                }
+            });
+        }
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public void revokeAllCertByCA(AuthenticationToken admin, String issuerdn, int reason) throws AuthorizationDeniedException {
@@ -1281,6 +1330,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         try {
             final int maxRows = 10000;
             int firstResult = 0;
+            final List<CertificateData> revokedDatas = new ArrayList<>();
             // Revoking all non revoked certificates.
             // Update 10000 records at a time
             List<CertificateData> list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
@@ -1290,11 +1340,19 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 	d.setStatus(CertificateConstants.CERT_REVOKED);
                 	d.setRevocationDate(System.currentTimeMillis());
                 	d.setRevocationReason(reason);
+                	revokedDatas.add(d);
                 	revoked++;
             	}
             	firstResult += maxRows;
             	list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
             }
+            // Incremental CRL generation finds the changed certificates by their update time, so it is set when all certificates have been
+            // revoked, just before this transaction commits, and not when the first of possibly millions of certificates was revoked
+            final long updateTime = System.currentTimeMillis();
+            for (final CertificateData d : revokedDatas) {
+                d.setUpdateTime(updateTime);
+            }
+            invalidateCachedOcspResponses(null);
             final String msg = INTRES.getLocalizedMessage("store.revokedallbyca", issuerdn, revoked, reason);
     		Map<String, Object> details = new LinkedHashMap<>();
     		details.put("msg", msg);
@@ -1317,6 +1375,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         final Query query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.status <> :status");
         query.setParameter("issuerDN", issuerDN);
         query.setParameter("status", CertificateConstants.CERT_REVOKED);
+        // The revoked certificates are written when the transaction commits, so that all of them get the same update time and the pages don't shift
+        query.setFlushMode(FlushModeType.COMMIT);
         query.setFirstResult(firstResult);
         query.setMaxResults(maxRows);
         return query.getResultList();
@@ -1441,6 +1501,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         authorizedToCA(admin, caid);
 
         certificateData.setStatus(status);
+        // Lets incremental CRL generation find archived certificates
+        certificateData.setUpdateTime(System.currentTimeMillis());
+        invalidateCachedOcspResponses(certificateData);
         final Certificate certificate = certificateData.getCertificate(this.entityManager);
         String serialNo;
         if (certificate==null) {
@@ -1695,6 +1758,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             final String msg = INTRES.getLocalizedMessage("caadmin.notauthorizedtoca", admin.toString(), caId);
             throw new AuthorizationDeniedException(msg);
         }
+        invalidateCachedOcspResponses(serialNumber, false);
         final String limitedFingerprint = getLimitedCertificateDataFingerprint(issuerDn, serialNumber);
         final CertificateDataWrapper cdw = getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
         if (cdw==null) {
@@ -81,6 +81,8 @@ public class NoConflictCertificateStoreSessionBean implements NoConflictCertific
     @EJB
     private CaSessionLocal caSession;
     @EJB
+    private CertificateDataSessionLocal certificateDataSession;
+    @EJB
     private CertificateProfileSessionLocal certificateProfileSession;
     @EJB
     private CertificateStoreSessionLocal certificateStoreSession;
@@ -216,6 +218,23 @@ public class NoConflictCertificateStoreSessionBean implements NoConflictCertific
         }
         return RevokedCertInfo.mergeByDateAndStatus(revokedInCertData, revokedInNoConflictData, lastBaseCrlDate);
     }
+
+    @Override
+    public Collection<RevokedCertInfo> listRevokedCertInfoUpdatedAfter(String issuerDN, int crlPartitionIndex, long updatedAfter, boolean allowInvalidityDate) {
+        if (log.isTraceEnabled()) {
+            log.trace(">listRevokedCertInfoUpdatedAfter('" + issuerDN + "', " + crlPartitionIndex + ", " + updatedAfter + ", " + allowInvalidityDate + ")");
+        }
+        final Collection<RevokedCertInfo> changedInCertData = certificateDataSession.getRevokedCertInfosUpdatedAfter(issuerDN, crlPartitionIndex, updatedAfter,
+                allowInvalidityDate);
+        final Collection<RevokedCertInfo> changedInNoConflictData = noConflictCertificateDataSession.getRevokedCertInfosUpdatedAfterWithDuplicates(issuerDN,
+                crlPartitionIndex, updatedAfter, allowInvalidityDate);
+        if (log.isDebugEnabled()) {
+            log.debug("listRevokedCertInfoUpdatedAfter: Got " + changedInCertData.size() + " entries from CertificateData and " + changedInNoConflictData.size()
+                    + " entries from NoConflictCertificateData");
+        }
+        // Keep the entries of certificates that are no longer revoked, so that they are removed from the CRL
+        return RevokedCertInfo.mergeByDateAndStatus(changedInCertData, changedInNoConflictData, 1);
+    }
     
     /**
      * Locates the most recent entry in NoConflictCertificateData for a given issuerdn/serial number combination.
@@ -15,6 +15,7 @@ package org.cesecore.certificates.certificateprofile;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.persistence.EntityManager;
@@ -35,6 +36,9 @@ import org.cesecore.config.CesecoreConfiguration;
  * 
  * The intention of this design is better throughput than fully ordered sequential updates.
  * 
+ * If cache.revalidatebyrowversion is enabled, an update that is not forced only reads the id and row version of all profiles,
+ * and reads only the profiles that have been added or changed since the last update.
+ * 
  * Probably based on EJBCA's org.ejbca.core.ejb.ca.store.CertificateProfileCache r11155
  * 
  * @version $Id$
@@ -56,6 +60,8 @@ public enum CertificateProfileCache {
     private volatile Map<String, Integer> nameIdMapCache = null;
     /** Cache of certificate profiles, with Id as keys */
     private volatile Map<Integer, CertificateProfile> profileCache = null;
+    /** Row versions of the cached certificate profiles, with Id as keys */
+    private volatile Map<Integer, Integer> rowVersionCache = null;
 
     private volatile long lastUpdate = 0;
 
@@ -106,26 +112,57 @@ public enum CertificateProfileCache {
         final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
         final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
         final Map<Integer, CertificateProfile> profCache = new HashMap<Integer, CertificateProfile>();
+        final Map<Integer, Integer> rowVersions = new HashMap<Integer, Integer>();
         try {
-            final List<CertificateProfileData> result = CertificateProfileData.findAll(entityManager);
-            for (final CertificateProfileData current : result) {
-                final Integer id = Integer.valueOf(current.getId());
-                final String certificateProfileName = current.getCertificateProfileName();
-                idNameCache.put(id, certificateProfileName);
-                nameIdCache.put(certificateProfileName, id);
-                profCache.put(id, current.getCertificateProfile());
+            if (!force && rowVersionCache != null && CesecoreConfiguration.isCacheRevalidationByRowVersion()) {
+                // Keep the profiles that have not changed, and only read the changed ones
+                final Map<Integer, String> cachedNames = idNameMapCache;
+                final Map<Integer, CertificateProfile> cachedProfiles = profileCache;
+                final Map<Integer, Integer> cachedRowVersions = rowVersionCache;
+                for (final Entry<Integer, Integer> entry : CertificateProfileData.findAllRowVersions(entityManager).entrySet()) {
+                    final Integer id = entry.getKey();
+                    if (entry.getValue().equals(cachedRowVersions.get(id))) {
+                        final String certificateProfileName = cachedNames.get(id);
+                        idNameCache.put(id, certificateProfileName);
+                        nameIdCache.put(certificateProfileName, id);
+                        profCache.put(id, cachedProfiles.get(id));
+                        rowVersions.put(id, entry.getValue());
+                    } else {
+                        final CertificateProfileData current = CertificateProfileData.findById(entityManager, id);
+                        if (current != null) {
+                            addProfile(current, idNameCache, nameIdCache, profCache, rowVersions);
+                        }
+                    }
+                }
+            } else {
+                final List<CertificateProfileData> result = CertificateProfileData.findAll(entityManager);
+                for (final CertificateProfileData current : result) {
+                    addProfile(current, idNameCache, nameIdCache, profCache, rowVersions);
+                }
             }
         } catch (Exception e) {
             LOG.error("Error reading certificate profiles: ", e);
+            rowVersions.clear();
         }
         idNameMapCache = idNameCache;
         nameIdMapCache = nameIdCache;
         profileCache = profCache;
+        rowVersionCache = rowVersions;
         if (LOG.isTraceEnabled()) {
             LOG.trace("<updateProfileCache");
         }
     }
 
+    private void addProfile(final CertificateProfileData current, final Map<Integer, String> idNameCache, final Map<String, Integer> nameIdCache,
+            final Map<Integer, CertificateProfile> profCache, final Map<Integer, Integer> rowVersions) {
+        final Integer id = Integer.valueOf(current.getId());
+        final String certificateProfileName = current.getCertificateProfileName();
+        idNameCache.put(id, certificateProfileName);
+        nameIdCache.put(certificateProfileName, id);
+        profCache.put(id, current.getCertificateProfile());
+        rowVersions.put(id, current.getRowVersion());
+    }
+
     /** @return the latest object from the cache or a current database representation if no caching is used. */
     public Map<Integer, CertificateProfile> getProfileCache(final EntityManager entityManager) {
         updateProfileCache(entityManager, false);
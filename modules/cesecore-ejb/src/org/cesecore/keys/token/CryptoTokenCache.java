@@ -29,7 +29,7 @@ import com.keyfactor.util.keys.token.CryptoToken;
 public enum CryptoTokenCache implements CommonCache<CryptoToken> {
     INSTANCE;
 
-    final private CommonCache<CryptoToken> cryptoTokenCache = new CommonCacheBase<CryptoToken>() {
+    final private CommonCacheBase<CryptoToken> cryptoTokenCache = new CommonCacheBase<CryptoToken>() {
         @Override
         protected long getCacheTime() {
             // We should never disable storage of CryptoTokens in the cache completely, since we want to keep any activation
@@ -95,4 +95,19 @@ public enum CryptoTokenCache implements CommonCache<CryptoToken> {
     public boolean willUpdate(int id, int digest) {
         return cryptoTokenCache.willUpdate(id, digest);
     }
+
+    /** @see CommonCacheBase#shouldRevalidate() */
+    public boolean shouldRevalidate() {
+        return cryptoTokenCache.shouldRevalidate();
+    }
+
+    /** @see CommonCacheBase#revalidate(Map) */
+    public void revalidate(final Map<Integer, Integer> rowVersions) {
+        cryptoTokenCache.revalidate(rowVersions);
+    }
+
+    /** @see CommonCacheBase#setRowVersion(int, int) */
+    public void setRowVersion(final int cryptoTokenId, final int rowVersion) {
+        cryptoTokenCache.setRowVersion(cryptoTokenId, rowVersion);
+    }
 }
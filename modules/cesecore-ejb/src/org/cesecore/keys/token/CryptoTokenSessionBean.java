@@ -87,6 +87,10 @@ public class CryptoTokenSessionBean implements CryptoTokenSessionLocal, CryptoTo
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     @Override
     public CryptoToken getCryptoToken(final int cryptoTokenId) {
+        if (CesecoreConfiguration.isCacheRevalidationByRowVersion() && CryptoTokenCache.INSTANCE.shouldRevalidate()) {
+            // Expire the cached CryptoTokens that have changed in the database, without reading the unchanged ones
+            CryptoTokenCache.INSTANCE.revalidate(readCryptoTokenRowVersions());
+        }
         // 1. Check (new) CryptoTokenCache if it is time to sync-up with database
         if (CryptoTokenCache.INSTANCE.shouldCheckForUpdates(cryptoTokenId)) {
             if (log.isDebugEnabled()) {
@@ -127,6 +131,7 @@ public class CryptoTokenSessionBean implements CryptoTokenSessionLocal, CryptoTo
                     }
                     CryptoTokenCache.INSTANCE.updateWith(cryptoTokenId, digest, tokenName, cryptoToken);                    
                 }
+                CryptoTokenCache.INSTANCE.setRowVersion(cryptoTokenId, cryptoTokenData.getRowVersion());
             }
         }
         // 5. Get CryptoToken from cache (or null) and be merry
@@ -262,6 +267,15 @@ public class CryptoTokenSessionBean implements CryptoTokenSessionLocal, CryptoTo
         return QueryResultWrapper.getSingleResult(query);
     }
 
+    /** @return map from id to row version of all CryptoTokens in the database */
+    private Map<Integer, Integer> readCryptoTokenRowVersions() {
+        final Map<Integer, Integer> ret = new HashMap<>();
+        for (final Object[] row : entityManager.createQuery("SELECT a.id, a.rowVersion FROM CryptoTokenData a", Object[].class).getResultList()) {
+            ret.put((Integer) row[0], (Integer) row[1]);
+        }
+        return ret;
+    }
+
     private CryptoTokenData createOrUpdateCryptoTokenData(final CryptoTokenData data) {
         return entityManager.merge(data);
     }
@@ -0,0 +1,120 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.cesecore.config.ConfigurationHolder;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Base64CertData}
+ */
+public class Base64CertDataTest {
+
+    private static final String QUERY = "SELECT a FROM Base64CertData a WHERE a.fingerprint IN (:fingerprints)";
+
+    @After
+    public void after() {
+        ConfigurationHolder.updateConfiguration("database.useSeparateCertificateTable", null);
+    }
+
+    @Test
+    public void findByCertificateDatasWithoutBase64CertTable() {
+        ConfigurationHolder.updateConfiguration("database.useSeparateCertificateTable", "false");
+        // No calls are expected on the entity manager
+        final EntityManager entityManager = createMock(EntityManager.class);
+        replay(entityManager);
+        final Map<String, Base64CertData> result = Base64CertData.findByCertificateDatas(entityManager,
+                createCertificateDatas(10, false));
+        assertTrue("Nothing should be read when the Base64CertData table is not used.", result.isEmpty());
+        verify(entityManager);
+    }
+
+    @Test
+    public void findByCertificateDatasInBatches() {
+        ConfigurationHolder.updateConfiguration("database.useSeparateCertificateTable", "true");
+        final List<CertificateData> certificateDatas = createCertificateDatas(1200, false);
+        // Certificates that are stored in the CertificateData row are not looked up
+        certificateDatas.addAll(createCertificateDatas(5, true));
+        final EntityManager entityManager = createMock(EntityManager.class);
+        @SuppressWarnings("unchecked")
+        final TypedQuery<Base64CertData> query = createMock(TypedQuery.class);
+        final Capture<Collection<String>> fingerprints = Capture.newInstance(CaptureType.ALL);
+        expect(entityManager.createQuery(QUERY, Base64CertData.class)).andReturn(query).times(3);
+        expect(query.setParameter(eq("fingerprints"), capture(fingerprints))).andReturn(query).times(3);
+        final Base64CertData found = new Base64CertData();
+        found.setFingerprint("fingerprint0");
+        expect(query.getResultList()).andReturn(Collections.singletonList(found)).andReturn(Collections.emptyList()).times(2);
+        replay(entityManager, query);
+        final Map<String, Base64CertData> result = Base64CertData.findByCertificateDatas(entityManager, certificateDatas);
+        verify(entityManager, query);
+        assertEquals(1, result.size());
+        assertSame(found, result.get("fingerprint0"));
+        assertEquals(3, fingerprints.getValues().size());
+        assertEquals(500, fingerprints.getValues().get(0).size());
+        assertEquals(500, fingerprints.getValues().get(1).size());
+        assertEquals(200, fingerprints.getValues().get(2).size());
+        for (final Collection<String> batch : fingerprints.getValues()) {
+            for (final String fingerprint : batch) {
+                assertTrue("Inline certificate should not be looked up: " + fingerprint, fingerprint.startsWith("fingerprint"));
+            }
+        }
+    }
+
+    @Test
+    public void findByCertificateDatasWithSingleCertificate() {
+        ConfigurationHolder.updateConfiguration("database.useSeparateCertificateTable", "true");
+        final EntityManager entityManager = createMock(EntityManager.class);
+        final Base64CertData found = new Base64CertData();
+        found.setFingerprint("fingerprint0");
+        // A single certificate is looked up by primary key, which may be served from the entity manager cache
+        expect(entityManager.find(eq(Base64CertData.class), anyObject())).andReturn(found);
+        replay(entityManager);
+        final Map<String, Base64CertData> result = Base64CertData.findByCertificateDatas(entityManager, createCertificateDatas(1, false));
+        verify(entityManager);
+        assertSame(found, result.get("fingerprint0"));
+    }
+
+    private static List<CertificateData> createCertificateDatas(final int count, final boolean inline) {
+        final List<CertificateData> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final CertificateData certificateData = new CertificateData();
+            certificateData.setFingerprint((inline ? "inline" : "fingerprint") + i);
+            certificateData.setBase64Cert(inline ? "MIIB" : null);
+            ret.add(certificateData);
+        }
+        return ret;
+    }
+}
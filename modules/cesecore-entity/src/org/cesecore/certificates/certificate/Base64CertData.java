@@ -15,6 +15,12 @@ package org.cesecore.certificates.certificate;
 import java.io.Serializable;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
@@ -24,9 +30,11 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
@@ -50,6 +58,9 @@ public class Base64CertData extends ProtectedData implements Serializable {
 
     private static final Logger log = Logger.getLogger(Base64CertData.class);
 
+    /** Maximum number of fingerprints in a single IN list. Some databases limit the number of expressions in a list, e.g. Oracle to 1000. */
+    private static final int MAX_FINGERPRINTS_PER_QUERY = 500;
+
     private String fingerprint = "";
     private String base64Cert;
 	private String certificateRequest;
@@ -209,6 +220,49 @@ public class Base64CertData extends ProtectedData implements Serializable {
         return entityManager.find(Base64CertData.class, fingerprint);
     }
 
+    /**
+     * Finds the Base64CertData rows of the certificates that are not stored in their own (NoConflict)CertificateData row.
+     * The rows are fetched with one query per {@link #MAX_FINGERPRINTS_PER_QUERY} certificates, instead of one query per certificate.
+     *
+     * @param entityManager entity manager
+     * @param certificateDatas the certificates to find Base64CertData rows for
+     * @return map from fingerprint to the found entity instances. Certificates without a Base64CertData row are not included, and the map
+     *      is always empty if the Base64CertData table is not used (database.useSeparateCertificateTable).
+     */
+    public static Map<String, Base64CertData> findByCertificateDatas(final EntityManager entityManager,
+            final Collection<? extends BaseCertificateData> certificateDatas) {
+        if (!CesecoreConfiguration.useBase64CertTable()) {
+            return Collections.emptyMap();
+        }
+        final List<String> fingerprints = new ArrayList<>();
+        for (final BaseCertificateData certificateData : certificateDatas) {
+            if (StringUtils.isEmpty(certificateData.getBase64Cert())) {
+                fingerprints.add(certificateData.getFingerprint());
+            }
+        }
+        if (fingerprints.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Base64CertData> ret = new HashMap<>();
+        if (fingerprints.size() == 1) {
+            // Use the entity manager cache if possible
+            final Base64CertData base64CertData = findByFingerprint(entityManager, fingerprints.get(0));
+            if (base64CertData != null) {
+                ret.put(base64CertData.getFingerprint(), base64CertData);
+            }
+            return ret;
+        }
+        for (int i = 0; i < fingerprints.size(); i += MAX_FINGERPRINTS_PER_QUERY) {
+            final TypedQuery<Base64CertData> query = entityManager.createQuery("SELECT a FROM Base64CertData a WHERE a.fingerprint IN (:fingerprints)",
+                    Base64CertData.class);
+            query.setParameter("fingerprints", fingerprints.subList(i, Math.min(i + MAX_FINGERPRINTS_PER_QUERY, fingerprints.size())));
+            for (final Base64CertData base64CertData : query.getResultList()) {
+                ret.put(base64CertData.getFingerprint(), base64CertData);
+            }
+        }
+        return ret;
+    }
+
     /** @return the number of entries with the given parameter */
     public static long getCount(EntityManager entityManager) {
         final Query countQuery = entityManager.createQuery("SELECT COUNT(a) FROM Base64CertData a");
@@ -13,6 +13,7 @@
 package org.cesecore.certificates.certificateprofile;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
@@ -204,6 +205,17 @@ public class CertificateProfileData extends ProtectedData implements Serializabl
         return query.getResultList();
     }
 
+    /** @return map from id to row version of all certificate profiles, without reading the profiles */
+    @SuppressWarnings("unchecked")
+    public static Map<Integer, Integer> findAllRowVersions(final EntityManager entityManager) {
+        final Query query = entityManager.createQuery("SELECT a.id, a.rowVersion FROM CertificateProfileData a");
+        final Map<Integer, Integer> ret = new HashMap<>();
+        for (final Object[] row : (List<Object[]>) query.getResultList()) {
+            ret.put((Integer) row[0], (Integer) row[1]);
+        }
+        return ret;
+    }
+
     //
     // Start Database integrity protection methods
     //
@@ -13,14 +13,10 @@
 
 package org.cesecore.keybind;
 
-import java.beans.XMLEncoder;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.PostLoad;
@@ -33,9 +29,8 @@ import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
-import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
-import org.cesecore.util.SecureXMLDecoder;
+import org.cesecore.util.DataMapSerializer;
 
 import com.keyfactor.util.StringTools;
 
@@ -183,13 +178,10 @@ public class InternalKeyBindingData extends ProtectedData implements Serializabl
     //
     
     @Transient
-    @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
-        try (SecureXMLDecoder decoder = new SecureXMLDecoder(new java.io.ByteArrayInputStream(getRawData().getBytes(StandardCharsets.UTF_8)))) {
-            final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
+        try {
             // Handle Base64 encoded string values
-            final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
-            return dataMap;
+            return DataMapSerializer.decode(getRawData());
         } catch (IOException e) {
             final String msg = "Failed to parse InternalKeyBindingData data map in database: " + e.getMessage();
             if (log.isDebugEnabled()) {
@@ -205,16 +197,7 @@ public class InternalKeyBindingData extends ProtectedData implements Serializabl
         // We must base64 encode string for UTF safety
         final LinkedHashMap<?, ?> a = new Base64PutHashMap();
         a.putAll((LinkedHashMap)dataMap);
-        final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        try {
-            try (XMLEncoder encoder = new XMLEncoder(baos)) {
-                encoder.writeObject(a);
-            }
-            final String data = baos.toString("UTF8");
-            setRawData(data);
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException(e);
-        }
+        setRawData(DataMapSerializer.encode(a));
     }
     
     @Transient
@@ -62,6 +62,15 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
                                   "ON ocsp.serialNumber = maxProducedAtTable.serialNumber AND ocsp.producedAt = maxProducedAtTable.maximumProducedAt " +
                                   "WHERE cAId = :caId AND ocsp.nextUpdate <= :expirationDate",
                           resultSetMapping = "OcspResponseData"),
+        // Same as above, but ordered by serial number so that a large number of responses can be paged through without an offset
+        @NamedNativeQuery(name = OcspResponseData.FIND_EXPIRING_OCSP_DATA_BY_CAID_AFTER_SERIALNUMBER,
+                          query = "SELECT * FROM OcspResponseData ocsp INNER JOIN (" +
+                                  "     SELECT serialNumber, MAX(producedAt) as maximumProducedAt FROM OcspResponseData GROUP BY serialNumber" +
+                                  ") maxProducedAtTable " +
+                                  "ON ocsp.serialNumber = maxProducedAtTable.serialNumber AND ocsp.producedAt = maxProducedAtTable.maximumProducedAt " +
+                                  "WHERE cAId = :caId AND ocsp.nextUpdate <= :expirationDate AND ocsp.serialNumber > :serialNumber " +
+                                  "ORDER BY ocsp.serialNumber",
+                          resultSetMapping = "OcspResponseData"),
 
         // ORACLE   : It doesn't support deleting directly using joins and subqueries.
         // MARIADB  : Current version requires another subquery "SELECT latestResponses.id FROM" when querying and deleting from the same table.
@@ -114,6 +123,7 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
 public class OcspResponseData extends ProtectedData implements Serializable {
 
     public static final String FIND_EXPIRING_OCPS_DATA_BY_CAID = "OcspResponseData.findExpiringOcpsDataByCaId";
+    public static final String FIND_EXPIRING_OCSP_DATA_BY_CAID_AFTER_SERIALNUMBER = "OcspResponseData.findExpiringOcspDataByCaIdAfterSerialNumber";
     public static final String DELETE_OLD_OCSP_DATA_BY_CAID = "OcspResponseData.deleteOldOcspDataByCaId";
     public static final String DELETE_OLD_OCSP_DATA = "OcspResponseData.deleteOldOcspData";
 
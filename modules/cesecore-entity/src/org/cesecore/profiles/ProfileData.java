@@ -12,16 +12,10 @@
  *************************************************************************/
 package org.cesecore.profiles;
 
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
-import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.Table;
@@ -30,9 +24,8 @@ import javax.persistence.Transient;
 import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
-import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
-import org.cesecore.util.SecureXMLDecoder;
+import org.cesecore.util.DataMapSerializer;
 
 /**
  * Implementation of the "ProfileData" table in the database
@@ -91,13 +84,10 @@ public class ProfileData extends ProtectedData implements Serializable {
     public void setRawData(String rawData) { this.rawData = rawData; }
 
     @Transient
-    @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
-        try (SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(getRawData().getBytes(StandardCharsets.UTF_8)))) {
-            final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
+        try {
             // Handle Base64 encoded string values
-            final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
-            return dataMap;
+            return DataMapSerializer.decode(getRawData());
         } catch (IOException e) {
             final String msg = "Failed to parse data map for " + profileType + " '" + profileName + "': " + e.getMessage();
             if (log.isDebugEnabled()) {
@@ -110,19 +100,10 @@ public class ProfileData extends ProtectedData implements Serializable {
     @Transient
     @SuppressWarnings({"rawtypes", "unchecked"})
     public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        try {
-            // We must base64 encode string for UTF safety
-            final LinkedHashMap<?, ?> a = new Base64PutHashMap();
-            a.putAll((LinkedHashMap)dataMap);
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try (XMLEncoder encoder = new XMLEncoder(baos)) {
-                encoder.writeObject(a);
-            }
-            final String data = baos.toString("UTF8");
-            setRawData(data);
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException(e);
-        }
+        // We must base64 encode string for UTF safety
+        final LinkedHashMap<?, ?> a = new Base64PutHashMap();
+        a.putAll((LinkedHashMap)dataMap);
+        setRawData(DataMapSerializer.encode(a));
     }
     
     //
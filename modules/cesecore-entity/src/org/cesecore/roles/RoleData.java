@@ -12,14 +12,9 @@
  *************************************************************************/
 package org.cesecore.roles;
 
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
-import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.PostLoad;
@@ -33,9 +28,8 @@ import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
-import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
-import org.cesecore.util.SecureXMLDecoder;
+import org.cesecore.util.DataMapSerializer;
 
 /**
  * Represents a role.
@@ -99,11 +93,10 @@ public class RoleData extends ProtectedData implements Serializable {
     public void setRawData(String rawData) { this.rawData = rawData; }
 
     @Transient
-    @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
-        try (final SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(getRawData().getBytes(StandardCharsets.UTF_8)));) {
+        try {
             // Handle Base64 encoded string values
-            return new Base64GetHashMap((Map<?, ?>)decoder.readObject());
+            return DataMapSerializer.decode(getRawData());
         } catch (IOException e) {
             final String msg = "Failed to parse data map for role '" + roleName + "': " + e.getMessage();
             if (log.isDebugEnabled()) {
@@ -115,12 +108,8 @@ public class RoleData extends ProtectedData implements Serializable {
 
     @Transient
     public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (final XMLEncoder encoder = new XMLEncoder(baos);){
-            // We must base64 encode string for UTF safety
-            encoder.writeObject(new Base64PutHashMap(dataMap));
-        }
-        setRawData(new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        // We must base64 encode string for UTF safety
+        setRawData(DataMapSerializer.encode(new Base64PutHashMap(dataMap)));
     }
 
     @Transient
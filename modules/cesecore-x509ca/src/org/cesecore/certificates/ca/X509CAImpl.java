@@ -85,10 +85,8 @@ import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.KeyUsage;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
-import org.bouncycastle.cert.CertException;
 import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
@@ -135,6 +133,7 @@ import org.cesecore.certificates.certificatetransparency.CTLogInfo;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparency;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparencyFactory;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlEncoder;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
@@ -2081,24 +2080,8 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
             }
         }
 
-        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(issuer, thisUpdate);
-        crlgen.setNextUpdate(nextUpdate);
-        if (certs != null) {
-            if (log.isDebugEnabled()) {
-                log.debug("Adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-            for (final RevokedCertInfo certinfo : certs) {
-                if (certinfo.getInvalidityDate() != null) {
-                    crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason(), certinfo.getInvalidityDate());
-                } else {
-                    crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
-                }
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Finished adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-        }
-
+        // The revoked certificates are added when the CRL is encoded, see StreamingCrlEncoder
+        final ExtensionsGenerator crlgen = new ExtensionsGenerator();
 
         // Authority key identifier
         if (getUseAuthorityKeyIdentifier()) {
@@ -2208,9 +2191,10 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
             }
         }
 
-        final X509CRLHolder crl;
+        final byte[] encodedCrl;
         if (log.isDebugEnabled()) {
-            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+            log.debug("Encoding and signing CRL with " + (certs == null ? 0 : certs.size()) + " revoked certificates. Free memory="
+                    + Runtime.getRuntime().freeMemory());
         }
         String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
         if (isMsCaCompatible() && partitionCaCert != null) {
@@ -2223,7 +2207,8 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
                 prov = CryptoProviderTools.getProviderNameFromAlg(sigAlg);
             }
             final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(prov).build(cryptoToken.getPrivateKey(alias)), X509CAImpl.SIGN_BUFFER_SIZE);
-            crl = crlgen.build(signer);
+            final StreamingCrlEncoder encoder = new StreamingCrlEncoder(issuer, thisUpdate, nextUpdate, crlgen.isEmpty() ? null : crlgen.generate());
+            encodedCrl = encoder.encode(certs, signer);
         } catch (OperatorCreationException e) {
             // Very fatal error
             throw new RuntimeException("Can not create Jca content signer: ", e);
@@ -2249,10 +2234,12 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
         }
         try {
             final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
-            if (!crl.isSignatureValid(verifier)) {
+            // Verify over the encoding, without decoding all revoked certificate entries again
+            if (!StreamingCrlEncoder.isSignatureValid(encodedCrl, verifier)) {
                 if (log.isTraceEnabled()) {
                     log.trace("The public key used to verify the CRL:" + System.lineSeparator() + KeyTools.getAsPem(verifyKey));
-                    log.trace("The CRL whose signature could not be verified:" + System.lineSeparator() + KeyTools.getAsPem(crl));
+                    log.trace("The CRL whose signature could not be verified:" + System.lineSeparator()
+                            + KeyTools.getAsPem(StreamingCrlEncoder.toX509CRLHolder(encodedCrl)));
                 }
                 throw new SignatureException("Cannot verify the signature of the CRL for issuer " + "'" + issuer
                         + "' using the public key with SHA-1 fingerprint " + CertTools.createPublicKeyFingerprint(verifyKey, "SHA-1")
@@ -2262,9 +2249,9 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
         } catch (OperatorCreationException e) {
             // Very fatal error
             throw new RuntimeException("Can not create Jca content signer: ", e);
-        } catch (CertException e) {
-            throw new SignatureException(e.getMessage(), e);
         }
+        // The revoked certificate entries are only decoded if the caller accesses them
+        final X509CRLHolder crl = StreamingCrlEncoder.toX509CRLHolder(encodedCrl);
         if (log.isDebugEnabled()) {
             log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
         }
@@ -0,0 +1,144 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.crlstore;
+
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import org.cesecore.certificates.ca.internal.CaCertificateCache;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.HashID;
+import org.cesecore.certificates.crl.CRLInfo;
+import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit tests for {@link CRLCache}
+ */
+public class CRLCacheUnitTest {
+
+    private static final String CA_DN = "CN=CRLCacheUnitTest,O=Test,C=SE";
+    private static final int PARTITION = CertificateConstants.NO_CRL_PARTITION;
+
+    private static X509Certificate caCertificate;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        caCertificate = CertTools.genSelfCert(CA_DN, 365, null, keys.getPrivate(), keys.getPublic(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        CaCertificateCache.INSTANCE.loadCertificates(Collections.singletonList(caCertificate));
+    }
+
+    @Test
+    public void crlIsReplacedWhenCrlNumberChanges() {
+        final String issuerDn = CertTools.getSubjectDN(caCertificate);
+        final CrlStoreSessionLocal crlStoreSession = createMock(CrlStoreSessionLocal.class);
+        final CRLCache crlCache = new CRLCache(crlStoreSession, CaCertificateCache.INSTANCE, null);
+        final HashID id = HashID.getFromSubjectDN(caCertificate);
+
+        expect(crlStoreSession.getLastCRLInfoLightWeight(issuerDn, PARTITION, false)).andReturn(crlInfo(issuerDn, 1, 1000000L)).times(2);
+        expect(crlStoreSession.getCRL(issuerDn, PARTITION, 1)).andReturn(new byte[] { 1 }).once();
+        replay(crlStoreSession);
+        final CachedCrl first = crlCache.findByIssuerDN(id, PARTITION, false, -1);
+        assertEquals(1, first.getCrlNumber());
+        assertEquals(1000000L, first.getLastModified());
+        assertSame("Same CRL number should be served from the cache", first, crlCache.findByIssuerDN(id, PARTITION, false, -1));
+        verify(crlStoreSession);
+
+        reset(crlStoreSession);
+        expect(crlStoreSession.getLastCRLInfoLightWeight(issuerDn, PARTITION, false)).andReturn(crlInfo(issuerDn, 2, 2000000L)).times(2);
+        expect(crlStoreSession.getCRL(issuerDn, PARTITION, 2)).andReturn(new byte[] { 2 }).once();
+        replay(crlStoreSession);
+        final CachedCrl second = crlCache.findBySubjectKeyIdentifier(HashID.getFromKeyID(caCertificate), PARTITION, false, -1);
+        assertNotSame("New CRL number should replace the cached CRL", first, second);
+        assertEquals(2, second.getCrlNumber());
+        assertEquals(2000000L, second.getLastModified());
+        assertFalse(first.getEtag().equals(second.getEtag()));
+        assertSame(second, crlCache.findByIssuerDN(id, PARTITION, false, -1));
+        verify(crlStoreSession);
+    }
+
+    @Test
+    public void unknownCaAndMissingCrl() {
+        final CrlStoreSessionLocal crlStoreSession = createMock(CrlStoreSessionLocal.class);
+        final CRLCache crlCache = new CRLCache(crlStoreSession, CaCertificateCache.INSTANCE, null);
+        expect(crlStoreSession.getLastCRLInfoLightWeight(anyString(), anyInt(), anyBoolean())).andReturn(null).once();
+        replay(crlStoreSession);
+        assertNull(crlCache.findByIssuerDN(HashID.getFromDNString("CN=Unknown"), PARTITION, false, -1));
+        assertNull(crlCache.findByIssuerDN(HashID.getFromSubjectDN(caCertificate), PARTITION, true, -1));
+        verify(crlStoreSession);
+    }
+
+    @Test
+    public void largeCrlIsKeptOnHeapWhenSpoolDirectoryCanNotBeCreated() throws IOException {
+        final Path notADirectory = Files.createTempFile("CRLCacheUnitTest", ".tmp");
+        try {
+            final Path spoolDirectory = CRLCache.createSpoolDirectory(notADirectory);
+            assertNull("Spool directory can not be created in a regular file", spoolDirectory);
+            final String issuerDn = CertTools.getSubjectDN(caCertificate);
+            final CrlStoreSessionLocal crlStoreSession = createMock(CrlStoreSessionLocal.class);
+            expect(crlStoreSession.getLastCRLInfoLightWeight(issuerDn, PARTITION, false)).andReturn(crlInfo(issuerDn, 1, 1000000L)).once();
+            expect(crlStoreSession.getCRL(eq(issuerDn), eq(PARTITION), eq(1))).andReturn(new byte[CachedCrl.SPOOL_THRESHOLD]).once();
+            replay(crlStoreSession);
+            final CachedCrl crl = new CRLCache(crlStoreSession, CaCertificateCache.INSTANCE, spoolDirectory)
+                    .findByIssuerDN(HashID.getFromSubjectDN(caCertificate), PARTITION, false, -1);
+            assertFalse("Large CRL should be kept on the heap without a spool directory", crl.isMapped());
+            assertEquals(CachedCrl.SPOOL_THRESHOLD, crl.getLength());
+            verify(crlStoreSession);
+        } finally {
+            Files.delete(notADirectory);
+        }
+    }
+
+    @Test
+    public void spoolDirectoryIsCreated() throws IOException {
+        final Path parent = Files.createTempDirectory("CRLCacheUnitTest");
+        try {
+            final Path spoolDirectory = CRLCache.createSpoolDirectory(parent);
+            assertEquals(parent, spoolDirectory.getParent());
+            Files.delete(spoolDirectory);
+        } finally {
+            Files.delete(parent);
+        }
+    }
+
+    private static CRLInfo crlInfo(final String issuerDn, final int crlNumber, final long thisUpdate) {
+        return new CRLInfo(issuerDn, PARTITION, crlNumber, thisUpdate, thisUpdate + 3600000L);
+    }
+}
@@ -0,0 +1,111 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.crlstore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CachedCrl}
+ */
+public class CachedCrlUnitTest {
+
+    private static final String CACHE_KEY = "CN=CachedCrlUnitTest;0";
+
+    private Path spoolDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        spoolDirectory = Files.createTempDirectory("CachedCrlUnitTest");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (final Stream<Path> files = Files.list(spoolDirectory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(spoolDirectory);
+    }
+
+    @Test
+    public void etagAndLastModified() {
+        final CachedCrl crl = CachedCrl.create(CACHE_KEY, 17, 1234567890000L, new byte[] { 1, 2, 3 }, spoolDirectory);
+        assertEquals("\"" + Integer.toHexString(CACHE_KEY.hashCode()) + "-17\"", crl.getEtag());
+        assertEquals(1234567890000L, crl.getLastModified());
+        assertEquals(17, crl.getCrlNumber());
+        assertNotEquals("Next CRL must have another ETag", crl.getEtag(), CachedCrl.create(CACHE_KEY, 18, 1234567890000L, new byte[] { 1, 2, 3 }, spoolDirectory).getEtag());
+        assertNotEquals("Delta CRL must have another ETag", crl.getEtag(), CachedCrl.create(CACHE_KEY + ";delta", 17, 1234567890000L, new byte[] { 1, 2, 3 }, spoolDirectory).getEtag());
+        assertEquals("Specific CRLs have no last modified time", -1, CachedCrl.create(CACHE_KEY, 17, -1, new byte[] { 1, 2, 3 }, null).getLastModified());
+    }
+
+    @Test
+    public void smallCrlIsKeptOnHeap() throws IOException {
+        final byte[] encoded = randomBytes(CachedCrl.SPOOL_THRESHOLD - 1);
+        final CachedCrl crl = CachedCrl.create(CACHE_KEY, 1, 0, encoded, spoolDirectory);
+        assertFalse("CRL below the threshold should be kept on the heap", crl.isMapped());
+        assertEquals(encoded.length, crl.getLength());
+        assertArrayEquals(encoded, write(crl));
+    }
+
+    @Test
+    public void largeCrlIsSpooled() throws IOException {
+        final byte[] encoded = randomBytes(CachedCrl.SPOOL_THRESHOLD);
+        final CachedCrl crl = CachedCrl.create(CACHE_KEY, 1, 0, encoded, spoolDirectory);
+        assertTrue("CRL of the threshold size should be memory-mapped", crl.isMapped());
+        assertEquals(encoded.length, crl.getLength());
+        assertArrayEquals(encoded, write(crl));
+        // Every write reads from the start of the mapping
+        assertArrayEquals(encoded, write(crl));
+        try (final Stream<Path> files = Files.list(spoolDirectory)) {
+            assertEquals("Spool file should be deleted after it has been mapped", 0, files.count());
+        }
+    }
+
+    @Test
+    public void largeCrlIsKeptOnHeapWithoutSpoolDirectory() throws IOException {
+        final byte[] encoded = randomBytes(CachedCrl.SPOOL_THRESHOLD);
+        assertFalse(CachedCrl.create(CACHE_KEY, 1, 0, encoded, null).isMapped());
+        // A spool directory that has been removed falls back to the heap
+        Files.delete(spoolDirectory);
+        final CachedCrl crl = CachedCrl.create(CACHE_KEY, 1, 0, encoded, spoolDirectory);
+        assertFalse("CRL should be kept on the heap when it can not be spooled", crl.isMapped());
+        assertArrayEquals(encoded, write(crl));
+        Files.createDirectory(spoolDirectory);
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] write(final CachedCrl crl) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        crl.writeTo(out);
+        return out.toByteArray();
+    }
+}
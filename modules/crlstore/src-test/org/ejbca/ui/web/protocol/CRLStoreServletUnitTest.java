@@ -0,0 +1,126 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.protocol;
+
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.ejbca.core.protocol.crlstore.CachedCrl;
+import org.junit.Test;
+
+/**
+ * Unit tests for the conditional requests of {@link CRLStoreServlet}
+ */
+public class CRLStoreServletUnitTest {
+
+    private static final long THIS_UPDATE = 1700000000000L;
+    private static final byte[] ENCODED = { 1, 2, 3, 4 };
+    private static final CachedCrl CRL = CachedCrl.create("CN=CRLStoreServletUnitTest;0", 5, THIS_UPDATE, ENCODED, null);
+
+    @Test
+    public void ifNoneMatch() {
+        final String etag = CRL.getEtag();
+        assertTrue("Matching ETag", CRLStoreServlet.isNotModified(CRL, request(etag, -1)));
+        assertTrue("ETag in a list", CRLStoreServlet.isNotModified(CRL, request("\"other-1\", " + etag + " ,\"other-2\"", -1)));
+        assertTrue("Any ETag", CRLStoreServlet.isNotModified(CRL, request("*", -1)));
+        assertTrue("Weak ETag", CRLStoreServlet.isNotModified(CRL, request("W/" + etag, -1)));
+        assertFalse("Other ETag", CRLStoreServlet.isNotModified(CRL, request("\"other-1\", \"other-2\"", -1)));
+        assertFalse("ETag of the previous CRL", CRLStoreServlet.isNotModified(CRL, request(etag.replace("-5\"", "-4\""), -1)));
+        assertFalse("Unquoted ETag", CRLStoreServlet.isNotModified(CRL, request(etag.replace("\"", ""), -1)));
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        assertFalse(CRLStoreServlet.isNotModified(CRL, request("\"other-1\"", THIS_UPDATE + 60000L)));
+        assertTrue(CRLStoreServlet.isNotModified(CRL, request(CRL.getEtag(), THIS_UPDATE - 60000L)));
+    }
+
+    @Test
+    public void ifModifiedSince() {
+        assertTrue("Same time", CRLStoreServlet.isNotModified(CRL, request(null, THIS_UPDATE)));
+        assertTrue("Same second", CRLStoreServlet.isNotModified(CRL, request(null, THIS_UPDATE - THIS_UPDATE % 1000)));
+        assertTrue("Later time", CRLStoreServlet.isNotModified(CRL, request(null, THIS_UPDATE + 60000L)));
+        assertFalse("Earlier time", CRLStoreServlet.isNotModified(CRL, request(null, THIS_UPDATE - 1000L)));
+        assertFalse("No conditional headers", CRLStoreServlet.isNotModified(CRL, request(null, -1)));
+        final CachedCrl unknownTime = CachedCrl.create("CN=CRLStoreServletUnitTest;0", 5, -1, ENCODED, null);
+        assertFalse("CRL without last modified time", CRLStoreServlet.isNotModified(unknownTime, request(null, THIS_UPDATE)));
+    }
+
+    @Test
+    public void notModifiedResponse() throws IOException {
+        final HttpServletResponse resp = createMock(HttpServletResponse.class);
+        resp.setContentType("application/pkix-crl");
+        resp.setHeader("Content-disposition", "attachment; filename=\"test.crl\"");
+        resp.setHeader("ETag", CRL.getEtag());
+        resp.setDateHeader("Last-Modified", THIS_UPDATE);
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        replay(resp);
+        new CRLStoreServlet().returnCrl(CRL, request(CRL.getEtag(), -1), resp, "test", CertificateConstants.NO_CRL_PARTITION, false);
+        verify(resp);
+    }
+
+    @Test
+    public void modifiedResponse() throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse resp = createMock(HttpServletResponse.class);
+        resp.setContentType("application/pkix-crl");
+        resp.setHeader("Content-disposition", "attachment; filename=\"deltatest_partition2.crl\"");
+        resp.setHeader("ETag", CRL.getEtag());
+        resp.setDateHeader("Last-Modified", THIS_UPDATE);
+        resp.setContentLength(ENCODED.length);
+        expect(resp.getOutputStream()).andReturn(new ServletOutputStream() {
+            @Override
+            public void write(final int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+            }
+        });
+        replay(resp);
+        new CRLStoreServlet().returnCrl(CRL, request(null, THIS_UPDATE - 1000L), resp, "test", 2, true);
+        verify(resp);
+        assertArrayEquals(ENCODED, body.toByteArray());
+    }
+
+    private static HttpServletRequest request(final String ifNoneMatch, final long ifModifiedSince) {
+        final HttpServletRequest req = createNiceMock(HttpServletRequest.class);
+        expect(req.getHeader("If-None-Match")).andReturn(ifNoneMatch).anyTimes();
+        expect(req.getDateHeader("If-Modified-Since")).andReturn(ifModifiedSince).anyTimes();
+        expect(req.getHeader(anyString())).andReturn(null).anyTimes();
+        replay(req);
+        return req;
+    }
+}
@@ -13,10 +13,13 @@
 
 package org.ejbca.core.protocol.crlstore;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -31,7 +34,10 @@ import com.keyfactor.util.CertTools;
 /**
  * An implementation of this is managing a cache of CRLs. The implementation should be optimized for quick lookups of CRLs that the 
  * VA responder needs to fetch.
- *
+ * <p>
+ * The latest CRL of each issuer and partition is held as an immutable {@link CachedCrl}, which is replaced atomically when a CRL
+ * with a higher CRL number is found in the database. Reading the cache takes no locks. Only the number of the latest CRL is read
+ * from the database for each lookup, the CRL itself is only read when it is not in the cache.
  */
 public class CRLCache {
 	private static final Logger log = Logger.getLogger(CRLCache.class);
@@ -41,44 +47,12 @@ public class CRLCache {
 	
 	private final CrlStoreSessionLocal crlStoreSession;
 	private final CaCertificateCache certCache;
-	private final Map<Integer, CRLEntity> crls = new HashMap<>();
-	private final Map<Integer, CRLEntity> deltaCrls = new HashMap<>();
-	private class CRLEntity {
-		final CRLInfo crlInfo;
-		final byte[] encoded;
-		/**
-		 * @param crlInfo
-		 * @param encoded
-		 */
-		CRLEntity(CRLInfo crlInfo, byte[] encoded) {
-			super();
-			this.crlInfo = crlInfo;
-			this.encoded = encoded;
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			if (o == this)
-				return true;
-			if (!(o instanceof CRLEntity)) {
-				return false;
-			}
-			CRLEntity crlEntity = (CRLEntity) o;
-			return Objects.equals(crlInfo.getSubjectDN(), crlEntity.crlInfo.getSubjectDN()) && crlInfo.getCrlPartitionIndex() == crlEntity.crlInfo.getCrlPartitionIndex();
-		}
-
-		@Override
-		public int hashCode() {
-			// Ignore CRL number. Always overwrite cache with latest CRL for the partition.
-			return Objects.hash(crlInfo.getSubjectDN(), crlInfo.getCrlPartitionIndex());
-		}
-
-	}
-	/** We need an object to synchronize around when rebuilding and reading the cache. When rebuilding the cache no thread
-	 * can be allowed to read the cache, since the cache will be in an inconsistent state. In the normal case we want to use
-	 * as fast objects as possible (HashMap) for reading fast.
-	 */
-	private final Lock rebuildlock = new ReentrantLock();
+	private final Map<String, CachedCrl> crls = new ConcurrentHashMap<>();
+	private final Map<String, CachedCrl> deltaCrls = new ConcurrentHashMap<>();
+	/** Used to make sure that only one thread reads a new CRL from the database, while other threads wait for it */
+	private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+	/** Directory for the spool files of large CRLs, or null if they are kept on the heap */
+	private final Path spoolDirectory;
 
 	 /**
      * @return  {@link CRLCache} for the CA.
@@ -103,18 +77,37 @@ public class CRLCache {
 	 * @param certStore references to needed CA certificates.
 	 */
 	private CRLCache(CrlStoreSessionLocal crlStoreSession, CaCertificateCache certCache) {
-		super();
+		this(crlStoreSession, certCache, createSpoolDirectory(Paths.get(System.getProperty("java.io.tmpdir"))));
+	}
+
+	/**
+	 * @param spoolDirectory directory for the spool files of large CRLs, or null to keep them on the heap
+	 */
+	CRLCache(final CrlStoreSessionLocal crlStoreSession, final CaCertificateCache certCache, final Path spoolDirectory) {
 		this.crlStoreSession = crlStoreSession;
 		this.certCache = certCache;
+		this.spoolDirectory = spoolDirectory;
+	}
+
+	/** @return a new spool directory in the given directory, or null if it can not be created */
+	static Path createSpoolDirectory(final Path parent) {
+		try {
+			final Path directory = Files.createTempDirectory(parent, "crlstore");
+			directory.toFile().deleteOnExit();
+			return directory;
+		} catch (IOException | SecurityException e) {
+			log.warn("Could not create spool directory for CRLs, large CRLs will be kept on the heap: " + e.getMessage());
+			return null;
+		}
 	}
 
 	/**
      * @param id The ID of the subject key identifier.
      * @param isDelta true if delta CRL
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
-     * @return CRL or null if the CRL does not exist in the cache.
+     * @return CRL or null if the CRL does not exist.
      */
-	public byte[] findBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+	public CachedCrl findBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findBySubjectKeyIdentifier(id), crlPartitionIndex, isDelta, crlNumber);
 	}
 
@@ -122,58 +115,67 @@ public class CRLCache {
      * @param id The ID of the issuer DN.
      * @param isDelta true if delta CRL
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
-     * @return CRL or null if the CRL does not exist in the cache.
+     * @return CRL or null if the CRL does not exist.
      */
-	public byte[] findByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+	public CachedCrl findByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findLatestBySubjectDN(id), crlPartitionIndex, isDelta, crlNumber);
 	}
 
-	private byte[] findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
+	private CachedCrl findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
 		if ( caCert==null ) {
 			if (log.isDebugEnabled()) {
 				log.debug("No CA certificate, returning null.");
 			}
-			return new byte[0];
+			return null;
 		}
 		final String issuerDN = CertTools.getSubjectDN(caCert);
-		this.rebuildlock.lock();
-		try {
-			final CRLInfo crlInfo = this.crlStoreSession.getLastCRLInfo(issuerDN, crlPartitionIndex, isDelta);
-			if ( crlInfo==null ) {
-				if (log.isDebugEnabled()) {
-					log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
-				}
-				return new byte[0];
+		// Only reads the CRL number and validity, not the CRL
+		final CRLInfo crlInfo = this.crlStoreSession.getLastCRLInfoLightWeight(issuerDN, crlPartitionIndex, isDelta);
+		if ( crlInfo==null ) {
+			if (log.isDebugEnabled()) {
+				log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
 			}
-			final Integer cacheId = new CRLEntity(crlInfo, null).hashCode();
-            final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
-			// If we have not specified a crlNumber we can try to find the latest CRL in the cache
-			if (crlNumber == -1) {
-			    final CRLEntity cachedCRL = usedCrls.get(cacheId);
-			    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
-			        if (log.isDebugEnabled()) {
-			            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
-			        }
-			        return cachedCRL.encoded;
-			    }
+			return null;
+		}
+		final String cacheKey = issuerDN + ";" + crlInfo.getCrlPartitionIndex() + (isDelta ? ";delta" : "");
+		if (crlNumber > -1) {
+			if (log.isDebugEnabled()) {
+				log.debug("Getting CRL with CRL number "+crlNumber);
 			}
-			final CRLEntity entry;
-			if (crlNumber > -1) {
-			    if (log.isDebugEnabled()) {
-			        log.debug("Getting CRL with CRL number "+crlNumber);
-			    }
-			    entry = new CRLEntity( crlInfo, this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlNumber) );
-			} else {
-			    entry = new CRLEntity( crlInfo, this.crlStoreSession.getLastCRL(issuerDN, crlPartitionIndex, isDelta) );
-			    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
-	            usedCrls.put(cacheId, entry);
+			// Don't cache specific CRLs, the latest ones are accessed regularly and we don't want to fill the cache with old CRLs
+			final byte[] encoded = this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlNumber);
+			return encoded == null ? null : CachedCrl.create(cacheKey, crlNumber, -1, encoded, null);
+		}
+		final Map<String, CachedCrl> usedCrls = isDelta ? this.deltaCrls : this.crls;
+		CachedCrl cachedCRL = usedCrls.get(cacheKey);
+		if (isLatest(cachedCRL, crlInfo)) {
+			if (log.isTraceEnabled()) {
+				log.trace("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+cachedCRL.getCrlNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
+			}
+			return cachedCRL;
+		}
+		synchronized (loadLocks.computeIfAbsent(cacheKey, key -> new Object())) {
+			// Another thread may have loaded the CRL while we were waiting
+			cachedCRL = usedCrls.get(cacheKey);
+			if (isLatest(cachedCRL, crlInfo)) {
+				return cachedCRL;
 			}
+			final byte[] encoded = this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlInfo.getLastCRLNumber());
+			if (encoded == null) {
+				return null;
+			}
+			final CachedCrl entry = CachedCrl.create(cacheKey, crlInfo.getLastCRLNumber(), crlInfo.getCreateDate().getTime(), encoded, spoolDirectory);
+			// Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
+			usedCrls.put(cacheKey, entry);
 			if (log.isDebugEnabled()) {
-				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
+				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+entry.getCrlNumber() + " and partition "
+						+ crlInfo.getCrlPartitionIndex() + ", " + entry.getLength() + " bytes.");
 			}
-			return entry.encoded;
-		} finally {
-			this.rebuildlock.unlock();
+			return entry;
 		}
 	}
+
+	private static boolean isLatest(final CachedCrl cachedCRL, final CRLInfo crlInfo) {
+		return cachedCRL != null && cachedCRL.getCrlNumber() >= crlInfo.getLastCRLNumber();
+	}
 }
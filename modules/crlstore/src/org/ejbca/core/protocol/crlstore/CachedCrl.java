@@ -0,0 +1,142 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.crlstore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An immutable CRL held by {@link CRLCache}, together with the validators used for conditional HTTP requests.
+ * <p>
+ * Large CRLs are written to a spool file and memory-mapped, so that they are kept outside of the Java heap. The spool file
+ * is deleted right after it has been mapped, and the memory is released when the CRL is no longer referenced.
+ */
+public final class CachedCrl {
+
+    private static final Logger log = Logger.getLogger(CachedCrl.class);
+
+    /** CRLs of at least this size are memory-mapped from a spool file instead of being kept on the heap */
+    static final int SPOOL_THRESHOLD = 1024 * 1024;
+
+    private final int crlNumber;
+    private final long lastModified;
+    private final String etag;
+    /** The CRL, if it is kept on the heap. Never modified. */
+    private final byte[] encoded;
+    /** The CRL, if it is memory-mapped. Always read through a duplicate so that the position is never shared between threads. */
+    private final ByteBuffer mapped;
+
+    private CachedCrl(final int crlNumber, final long lastModified, final String etag, final byte[] encoded, final ByteBuffer mapped) {
+        this.crlNumber = crlNumber;
+        this.lastModified = lastModified;
+        this.etag = etag;
+        this.encoded = encoded;
+        this.mapped = mapped;
+    }
+
+    /**
+     * @param cacheKey identifies the issuer, partition and type of the CRL
+     * @param crlNumber number of the CRL
+     * @param lastModified this update of the CRL in milliseconds, or -1 if unknown
+     * @param encoded the DER encoded CRL
+     * @param spoolDirectory directory for spool files of large CRLs, or null to keep all CRLs on the heap
+     */
+    public static CachedCrl create(final String cacheKey, final int crlNumber, final long lastModified, final byte[] encoded, final Path spoolDirectory) {
+        // A CRL with a given number never changes, so the CRL number is a strong validator
+        final String etag = "\"" + Integer.toHexString(cacheKey.hashCode()) + "-" + crlNumber + "\"";
+        if (spoolDirectory != null && encoded.length >= SPOOL_THRESHOLD) {
+            final ByteBuffer mapped = map(encoded, spoolDirectory);
+            if (mapped != null) {
+                return new CachedCrl(crlNumber, lastModified, etag, null, mapped);
+            }
+        }
+        return new CachedCrl(crlNumber, lastModified, etag, encoded, null);
+    }
+
+    private static ByteBuffer map(final byte[] encoded, final Path spoolDirectory) {
+        Path spoolFile = null;
+        try {
+            spoolFile = Files.createTempFile(spoolDirectory, "crl", ".der");
+            try (final FileChannel channel = FileChannel.open(spoolFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final ByteBuffer source = ByteBuffer.wrap(encoded);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+                // The mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, encoded.length);
+            }
+        } catch (IOException e) {
+            log.warn("Could not spool CRL to '" + spoolDirectory + "', keeping it on the heap: " + e.getMessage());
+            return null;
+        } finally {
+            if (spoolFile != null) {
+                try {
+                    Files.deleteIfExists(spoolFile);
+                } catch (IOException e) {
+                    // Mapped files can not be deleted on all platforms
+                    spoolFile.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /** @return the CRL number */
+    public int getCrlNumber() {
+        return crlNumber;
+    }
+
+    /** @return this update of the CRL in milliseconds, or -1 if unknown */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /** @return the entity tag of the CRL, including the quotes */
+    public String getEtag() {
+        return etag;
+    }
+
+    /** @return size of the encoded CRL in bytes */
+    public int getLength() {
+        return encoded != null ? encoded.length : mapped.capacity();
+    }
+
+    /** @return true if the CRL is memory-mapped, false if it is kept on the heap */
+    boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * Writes the encoded CRL to the given stream. CRLs on the heap are written directly from the cached array, without copying.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        if (encoded != null) {
+            out.write(encoded);
+            return;
+        }
+        final ByteBuffer source = mapped.duplicate();
+        final WritableByteChannel channel = Channels.newChannel(out);
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
@@ -23,13 +23,13 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.ejbca.core.protocol.crlstore.CRLCache;
+import org.ejbca.core.protocol.crlstore.CachedCrl;
 import org.ejbca.util.HTMLTools;
 
 import com.keyfactor.util.StringTools;
@@ -40,6 +40,8 @@ import com.keyfactor.util.StringTools;
  * Addition to RFC 4387 is the ability to specify delta CRL with the parameter "delta="
  * Addition to RFC 4387 is the ability to specify download of a specific CRL by crlNumber with the parameter "crlnumber=<number>"
  * Addition to RFC 4387 is the ability to specify a CRL partition number with the parameter "partition=<number>"
+ * CRLs are returned with an ETag and a Last-Modified header, and conditional requests are answered with "304 Not Modified"
+ * when the client already has the latest CRL.
  * 
  * 
  */
@@ -72,8 +74,8 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, iHash, crlPartitionIndex, isDelta(req));
+	    final CachedCrl crl = crlCache.findByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
+		returnCrl(crl, req, resp, iHash, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -84,8 +86,8 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, name, crlPartitionIndex, isDelta(req));
+	    final CachedCrl crl = crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
+		returnCrl(crl, req, resp, name, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -123,8 +125,36 @@ public class CRLStoreServlet extends StoreServletBase {
         return CertificateConstants.NO_CRL_PARTITION;
     }
 
-	private void returnCrl(final byte[] crl, HttpServletResponse resp, String name, final int crlPartitionIndex, boolean isDelta) throws IOException {
-		if (ArrayUtils.isEmpty(crl)) {
+	/**
+	 * @return true if the client already has the CRL, according to the If-None-Match or If-Modified-Since header of the request
+	 */
+	static boolean isNotModified(final CachedCrl crl, final HttpServletRequest req) {
+		final String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			// If-None-Match takes precedence over If-Modified-Since (RFC 7232 section 6)
+			for (final String etag : ifNoneMatch.split(",")) {
+				final String trimmed = etag.trim();
+				if (trimmed.equals("*") || trimmed.equals(crl.getEtag()) || trimmed.equals("W/" + crl.getEtag())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (crl.getLastModified() < 0) {
+			return false;
+		}
+		final long ifModifiedSince;
+		try {
+			ifModifiedSince = req.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		// HTTP dates have a resolution of seconds
+		return ifModifiedSince >= 0 && crl.getLastModified() / 1000 <= ifModifiedSince / 1000;
+	}
+
+	void returnCrl(final CachedCrl crl, final HttpServletRequest req, HttpServletResponse resp, String name, final int crlPartitionIndex, boolean isDelta) throws IOException {
+		if (crl == null || crl.getLength() == 0) {
 		    if (log.isDebugEnabled()) {
 		        log.debug("CRL was not found. Hash=" + name + ", DeltaCRL=" + isDelta + ", Partition=" + crlPartitionIndex);
 		    }
@@ -137,7 +167,15 @@ public class CRLStoreServlet extends StoreServletBase {
 		        StringTools.stripFilename(name) +
 		        (crlPartitionIndex != CertificateConstants.NO_CRL_PARTITION ? "_partition" + crlPartitionIndex : "") +
 		        ".crl\"");
-		resp.setContentLength(crl.length);
-		resp.getOutputStream().write(crl);
+		resp.setHeader("ETag", crl.getEtag());
+		if (crl.getLastModified() >= 0) {
+			resp.setDateHeader("Last-Modified", crl.getLastModified());
+		}
+		if (isNotModified(crl, req)) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		resp.setContentLength(crl.getLength());
+		crl.writeTo(resp.getOutputStream());
 	}
 }
@@ -0,0 +1,144 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionLocal;
+import org.ejbca.core.model.services.IWorker;
+import org.ejbca.core.model.services.ServiceConfiguration;
+import org.ejbca.core.model.services.ServiceExecutionResult;
+import org.ejbca.core.model.services.ServiceExecutionResult.Result;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link OcspResponseRefreshWorker}
+ */
+public class OcspResponseRefreshWorkerUnitTest {
+
+    private static final int PRE_PRODUCING_CA_ID = 100;
+    private static final int OTHER_CA_ID = 200;
+
+    private final X509Certificate caCertificate = createNiceMock(X509Certificate.class);
+    private CaSessionLocal caSession;
+    private OcspDataSessionLocal ocspDataSession;
+    private OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession;
+
+    @Before
+    public void before() {
+        caSession = createMock(CaSessionLocal.class);
+        ocspDataSession = createMock(OcspDataSessionLocal.class);
+        ocspResponseGeneratorSession = createMock(OcspResponseGeneratorSessionLocal.class);
+        expect(caSession.getCAInfoInternal(PRE_PRODUCING_CA_ID)).andReturn(createCaInfo("PreProducingCA", true));
+        expect(caSession.getCAInfoInternal(OTHER_CA_ID)).andReturn(createCaInfo("OtherCA", false));
+    }
+
+    @Test
+    public void responsesArePagedBySerialNumber() throws Exception {
+        // Each page starts after the last serial number of the previous page, until a page is not full
+        expect(ocspDataSession.findExpiringOcspDataAfter(eq(PRE_PRODUCING_CA_ID), anyLong(), eq(""), eq(2))).andReturn(Arrays.asList("10", "11"));
+        expect(ocspDataSession.findExpiringOcspDataAfter(eq(PRE_PRODUCING_CA_ID), anyLong(), eq("11"), eq(2))).andReturn(Arrays.asList("12"));
+        expect(ocspResponseGeneratorSession.preSignOcspResponses(caCertificate, Arrays.asList(BigInteger.valueOf(10), BigInteger.valueOf(11)), false,
+                true, "SHA1")).andReturn(2);
+        expect(ocspResponseGeneratorSession.preSignOcspResponses(caCertificate, Arrays.asList(BigInteger.valueOf(12)), false, true, "SHA1"))
+                .andReturn(1);
+        replay(caSession, ocspDataSession, ocspResponseGeneratorSession);
+        final ServiceExecutionResult result = createWorker("2", "TRUE", "SHA1").work(getEjbs());
+        verify(caSession, ocspDataSession, ocspResponseGeneratorSession);
+        assertEquals(Result.SUCCESS, result.getResult());
+        assertTrue("Unexpected result: " + result.getMessage(), result.getMessage().contains("refreshed 3 OCSP responses"));
+        assertTrue("Unexpected result: " + result.getMessage(), result.getMessage().endsWith("PreProducingCA"));
+    }
+
+    @Test
+    public void fullLastPageIsFollowedByEmptyPage() throws Exception {
+        expect(ocspDataSession.findExpiringOcspDataAfter(eq(PRE_PRODUCING_CA_ID), anyLong(), eq(""), eq(2))).andReturn(Arrays.asList("10", "11"));
+        expect(ocspDataSession.findExpiringOcspDataAfter(eq(PRE_PRODUCING_CA_ID), anyLong(), eq("11"), eq(2))).andReturn(Collections.emptyList());
+        expect(ocspResponseGeneratorSession.preSignOcspResponses(caCertificate, Arrays.asList(BigInteger.valueOf(10), BigInteger.valueOf(11)), false,
+                false, OcspResponseRefreshWorker.DEFAULT_CERTID_HASH_ALGORITHM)).andReturn(2);
+        replay(caSession, ocspDataSession, ocspResponseGeneratorSession);
+        final ServiceExecutionResult result = createWorker("2", null, null).work(getEjbs());
+        verify(caSession, ocspDataSession, ocspResponseGeneratorSession);
+        assertEquals(Result.SUCCESS, result.getResult());
+    }
+
+    @Test
+    public void noExpiringResponses() throws Exception {
+        expect(ocspDataSession.findExpiringOcspDataAfter(eq(PRE_PRODUCING_CA_ID), anyLong(), eq(""),
+                eq(OcspResponseRefreshWorker.DEFAULT_BATCH_SIZE))).andReturn(Collections.emptyList());
+        replay(caSession, ocspDataSession, ocspResponseGeneratorSession);
+        // An invalid batch size falls back to the default
+        final ServiceExecutionResult result = createWorker("-1", null, null).work(getEjbs());
+        verify(caSession, ocspDataSession, ocspResponseGeneratorSession);
+        assertEquals(Result.NO_ACTION, result.getResult());
+    }
+
+    private OcspResponseRefreshWorker createWorker(final String batchSize, final String includeExpired, final String certIdHashAlgorithm) {
+        final Properties properties = new Properties();
+        properties.setProperty(IWorker.PROP_CAIDSTOCHECK, PRE_PRODUCING_CA_ID + ";" + OTHER_CA_ID);
+        properties.setProperty(IWorker.PROP_TIMEUNIT, IWorker.UNIT_DAYS);
+        properties.setProperty(IWorker.PROP_TIMEBEFOREEXPIRING, "1");
+        properties.setProperty(OcspResponseRefreshWorker.PROP_BATCH_SIZE, batchSize);
+        if (includeExpired != null) {
+            properties.setProperty(OcspResponseRefreshWorker.PROP_INCLUDE_EXPIRED, includeExpired);
+        }
+        if (certIdHashAlgorithm != null) {
+            properties.setProperty(OcspResponseRefreshWorker.PROP_CERTID_HASH_ALGORITHM, certIdHashAlgorithm);
+        }
+        final ServiceConfiguration serviceConfiguration = new ServiceConfiguration();
+        serviceConfiguration.setWorkerProperties(properties);
+        final OcspResponseRefreshWorker worker = new OcspResponseRefreshWorker();
+        worker.init(null, serviceConfiguration, "OcspResponseRefreshWorkerUnitTest", 0, 0);
+        return worker;
+    }
+
+    private Map<Class<?>, Object> getEjbs() {
+        final Map<Class<?>, Object> ejbs = new HashMap<>();
+        ejbs.put(CaSessionLocal.class, caSession);
+        ejbs.put(OcspDataSessionLocal.class, ocspDataSession);
+        ejbs.put(OcspResponseGeneratorSessionLocal.class, ocspResponseGeneratorSession);
+        return ejbs;
+    }
+
+    private X509CAInfo createCaInfo(final String name, final boolean doPreProduceOcspResponses) {
+        final X509CAInfo caInfo = createNiceMock(X509CAInfo.class);
+        expect(caInfo.getName()).andReturn(name).anyTimes();
+        expect(caInfo.isDoPreProduceOcspResponses()).andReturn(doPreProduceOcspResponses).anyTimes();
+        expect(caInfo.getStatus()).andReturn(CAConstants.CA_ACTIVE).anyTimes();
+        expect(caInfo.getCertificateChain()).andReturn(Collections.<Certificate>singletonList(caCertificate)).anyTimes();
+        replay(caInfo);
+        return caInfo;
+    }
+}
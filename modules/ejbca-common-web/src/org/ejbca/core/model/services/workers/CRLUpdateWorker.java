@@ -20,6 +20,7 @@ import org.cesecore.certificates.ca.CAInfo;
 import org.cesecore.certificates.ca.CaSessionLocal;
 import org.cesecore.certificates.ca.catoken.CATokenConstants;
 import org.cesecore.keys.token.CryptoTokenManagementSessionLocal;
+import org.ejbca.core.ejb.crl.CrlGenerationResult;
 import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.services.BaseWorker;
@@ -33,6 +34,7 @@ import java.security.InvalidKeyException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -101,40 +103,51 @@ public class CRLUpdateWorker extends BaseWorker {
         final PublishingCrlSessionLocal publishingCrlSession = ((PublishingCrlSessionLocal)ejbs.get(PublishingCrlSessionLocal.class));
         CaSessionLocal caSession = (CaSessionLocal) ejbs.get(CaSessionLocal.class);
 
+        final List<CrlGenerationResult> results = new ArrayList<>();
         // A semaphore used to not run parallel CRL generation jobs if it is slow in generating CRLs, and this job runs very often
-        Set<Integer> updatedCas = new HashSet<>();
-        Set<Integer> updatedCasDelta = new HashSet<>();
         Set<Integer> caids = new HashSet<>(getAllCAIdsToCheck(caSession, true));
         if (lock(caids)) {
             try {
                 long polltime = getNextInterval();
                 // Use true here so the service works the same as before upgrade from 3.9.0 when this function of
                 // selecting CAs did not exist, no CA = Any CA.
-                updatedCas.addAll(publishingCrlSession.createCRLs(getAdmin(), caids, polltime*1000));
-                updatedCasDelta.addAll(publishingCrlSession.createDeltaCRLs(getAdmin(), caids, polltime*1000));
+                results.addAll(publishingCrlSession.createCrlsWithResults(getAdmin(), caids, polltime*1000));
+                results.addAll(publishingCrlSession.createDeltaCrlsWithResults(getAdmin(), caids, polltime*1000));
             } catch (AuthorizationDeniedException e) {
                 log.error("Internal authentication token was denied access to importing CRLs or revoking certificates.", e);
             } finally {
                 releaseLock(caids);
             }
-            if (updatedCas.isEmpty() && updatedCasDelta.isEmpty()) {
+            final Set<String> updatedCas = new LinkedHashSet<>();
+            final Set<String> updatedCasDelta = new LinkedHashSet<>();
+            final Set<String> failedCas = new LinkedHashSet<>();
+            for (final CrlGenerationResult result : results) {
+                if (result.isGenerated() || result.isFailed()) {
+                    log.info("CRL Update Worker " + serviceName + ": " + result);
+                } else if (log.isDebugEnabled()) {
+                    log.debug("CRL Update Worker " + serviceName + ": " + result);
+                }
+                if (result.isGenerated()) {
+                    (result.isDeltaCrl() ? updatedCasDelta : updatedCas).add(result.getCaName());
+                } else if (result.isFailed()) {
+                    failedCas.add(result.getCaName());
+                }
+            }
+            if (updatedCas.isEmpty() && updatedCasDelta.isEmpty() && failedCas.isEmpty()) {
                 return new ServiceExecutionResult(Result.NO_ACTION, "CRL Update Worker " + serviceName + " ran, but no CAs needed updating.");
             } else {
                 StringBuilder stringBuilder = new StringBuilder("CRL Update Worker " + serviceName + " ran.");
-                Map<Integer, String> caNameMap = caSession.getCAIdToNameMap();
                 if (!updatedCas.isEmpty()) {
-                    List<String> caNames = new ArrayList<>();
-                    for (int caid : updatedCas) {
-                        caNames.add(caNameMap.get(caid));
-                    }
-                    stringBuilder.append(" The following CA generated new CRLs: " + constructNameList(caNames) + ".");
+                    stringBuilder.append(" The following CA generated new CRLs: " + constructNameList(new ArrayList<>(updatedCas)) + ".");
                 }
                 if (!updatedCasDelta.isEmpty()) {
-                    List<String> deltaCaNames = new ArrayList<>();
-                    for (int caid : updatedCasDelta) {
-                        deltaCaNames.add(caNameMap.get(caid));
-                    }
-                    stringBuilder.append(" The following CA generated new delta CRLs: " + constructNameList(deltaCaNames) + ".");
+                    stringBuilder.append(" The following CA generated new delta CRLs: " + constructNameList(new ArrayList<>(updatedCasDelta)) + ".");
+                }
+                if (!failedCas.isEmpty()) {
+                    stringBuilder.append(" CRL generation failed for the following CA: " + constructNameList(new ArrayList<>(failedCas)) + ".");
+                }
+                if (updatedCas.isEmpty() && updatedCasDelta.isEmpty()) {
+                    return new ServiceExecutionResult(Result.NO_ACTION, stringBuilder.toString());
                 }
                 return new ServiceExecutionResult(Result.SUCCESS, stringBuilder.toString());
 
@@ -0,0 +1,147 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionLocal;
+import org.ejbca.core.model.services.BaseWorker;
+import org.ejbca.core.model.services.ServiceExecutionFailedException;
+import org.ejbca.core.model.services.ServiceExecutionResult;
+import org.ejbca.core.model.services.ServiceExecutionResult.Result;
+
+/**
+ * Worker re-signing the pre-produced OCSP responses that expire within the configured time, for the selected CAs
+ * (or all CAs if none are selected). CAs that do not pre-produce OCSP responses are skipped.
+ * <p>
+ * The expiring responses of each CA are fetched in batches, ordered by serial number, and each batch is re-signed in
+ * parallel and stored in a single transaction by {@link OcspResponseGeneratorSessionLocal#preSignOcspResponses}.
+ */
+public class OcspResponseRefreshWorker extends BaseWorker {
+
+    private static final Logger log = Logger.getLogger(OcspResponseRefreshWorker.class);
+
+    /** Number of responses to re-sign and store in each transaction */
+    public static final String PROP_BATCH_SIZE = "worker.ocsprefresh.batchsize";
+    /** Flag if responses for expired certificates should be refreshed as well */
+    public static final String PROP_INCLUDE_EXPIRED = "worker.ocsprefresh.includeexpired";
+    /** Hash algorithm used in the CertID of the refreshed responses, e.g. SHA1 or SHA256 */
+    public static final String PROP_CERTID_HASH_ALGORITHM = "worker.ocsprefresh.certidhashalgorithm";
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final String DEFAULT_CERTID_HASH_ALGORITHM = "SHA256";
+
+    @Override
+    public void canWorkerRun(final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        // Responses are signed with the OCSP signing cache, which handles offline signers gracefully
+    }
+
+    @Override
+    public ServiceExecutionResult work(final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        log.trace(">work");
+        final CaSessionLocal caSession = (CaSessionLocal) ejbs.get(CaSessionLocal.class);
+        final OcspDataSessionLocal ocspDataSession = (OcspDataSessionLocal) ejbs.get(OcspDataSessionLocal.class);
+        final OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession = (OcspResponseGeneratorSessionLocal) ejbs
+                .get(OcspResponseGeneratorSessionLocal.class);
+        final long startTime = System.currentTimeMillis();
+        final long expirationDate = startTime + getTimeBeforeExpire();
+        final int batchSize = getBatchSize();
+        final List<String> refreshedCas = new ArrayList<>();
+        int refreshed = 0;
+        for (final Integer caId : getAllCAIdsToCheck(caSession, true)) {
+            final CAInfo caInfo = caSession.getCAInfoInternal(caId);
+            if (!(caInfo instanceof X509CAInfo) || !((X509CAInfo) caInfo).isDoPreProduceOcspResponses()
+                    || caInfo.getStatus() != CAConstants.CA_ACTIVE || caInfo.getCertificateChain().isEmpty()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Not refreshing OCSP responses of CA " + caId + ", since it is not an active CA that pre-produces OCSP responses.");
+                }
+                continue;
+            }
+            final X509Certificate caCertificate = (X509Certificate) caInfo.getCertificateChain().get(0);
+            final int refreshedForCa = refreshResponses(ocspDataSession, ocspResponseGeneratorSession, caId, caCertificate, expirationDate, batchSize);
+            if (refreshedForCa > 0) {
+                refreshedCas.add(caInfo.getName());
+                refreshed += refreshedForCa;
+            }
+        }
+        final long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        log.trace("<work");
+        if (refreshed == 0) {
+            return new ServiceExecutionResult(Result.NO_ACTION, "OCSP Response Refresh Worker " + serviceName + " ran, but no OCSP responses needed refreshing.");
+        }
+        final String msg = "OCSP Response Refresh Worker " + serviceName + " refreshed " + refreshed + " OCSP responses in " + elapsed + " ms ("
+                + (refreshed * 1000L / elapsed) + " responses/s) for the following CAs: " + constructNameList(refreshedCas);
+        log.info(msg);
+        return new ServiceExecutionResult(Result.SUCCESS, msg);
+    }
+
+    /**
+     * Re-signs all responses of one CA that expire before the given date, one batch at a time.
+     * @return the number of refreshed responses
+     */
+    private int refreshResponses(final OcspDataSessionLocal ocspDataSession, final OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession,
+            final int caId, final X509Certificate caCertificate, final long expirationDate, final int batchSize) {
+        int refreshed = 0;
+        String lastSerialNumber = "";
+        while (true) {
+            final List<String> serialNumbers = ocspDataSession.findExpiringOcspDataAfter(caId, expirationDate, lastSerialNumber, batchSize);
+            if (serialNumbers.isEmpty()) {
+                break;
+            }
+            final List<BigInteger> serialNrs = new ArrayList<>(serialNumbers.size());
+            for (final String serialNumber : serialNumbers) {
+                // Serial numbers of the responses are stored in decimal
+                serialNrs.add(new BigInteger(serialNumber));
+            }
+            refreshed += ocspResponseGeneratorSession.preSignOcspResponses(caCertificate, serialNrs, false, isIncludeExpired(), getCertIdHashAlgorithm());
+            if (serialNumbers.size() < batchSize) {
+                break;
+            }
+            lastSerialNumber = serialNumbers.get(serialNumbers.size() - 1);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed " + refreshed + " OCSP responses for CA " + caId + ".");
+        }
+        return refreshed;
+    }
+
+    protected int getBatchSize() {
+        try {
+            final int batchSize = Integer.parseInt(properties.getProperty(PROP_BATCH_SIZE, String.valueOf(DEFAULT_BATCH_SIZE)));
+            return batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        } catch (NumberFormatException e) {
+            log.warn("Invalid batch size '" + properties.getProperty(PROP_BATCH_SIZE) + "' in service " + serviceName + ". Using "
+                    + DEFAULT_BATCH_SIZE + ".");
+            return DEFAULT_BATCH_SIZE;
+        }
+    }
+
+    protected boolean isIncludeExpired() {
+        return properties.getProperty(PROP_INCLUDE_EXPIRED, "FALSE").equalsIgnoreCase("TRUE");
+    }
+
+    protected String getCertIdHashAlgorithm() {
+        return StringUtils.defaultIfEmpty(properties.getProperty(PROP_CERTID_HASH_ALGORITHM), DEFAULT_CERTID_HASH_ALGORITHM);
+    }
+}
@@ -0,0 +1,144 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA: The OpenSource Certificate Authority                          *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Unit tests for {@link LdapConnectionPool}
+ */
+public class LdapConnectionPoolUnitTest {
+
+    @After
+    public void after() {
+        LdapConnectionPool.resetAll();
+    }
+
+    private LDAPConnection createConnection(final boolean expectDisconnect) throws Exception {
+        final LDAPConnection connection = EasyMock.createMock(LDAPConnection.class);
+        EasyMock.expect(connection.isConnected()).andReturn(true).anyTimes();
+        EasyMock.expect(connection.isBound()).andReturn(true).anyTimes();
+        if (expectDisconnect) {
+            connection.disconnect();
+        }
+        EasyMock.replay(connection);
+        return connection;
+    }
+
+    @Test
+    public void reuseConnections() throws Exception {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(1, "ldap1.example.com", "389", "cn=admin", 0, 5000);
+        assertSame("Same pool should be returned for the same publisher and server", pool,
+                LdapConnectionPool.getPool(1, "ldap1.example.com", "389", "cn=admin", 0, 5000));
+        assertNotSame("Each server should have its own pool", pool, LdapConnectionPool.getPool(1, "ldap2.example.com", "389", "cn=admin", 0, 5000));
+        assertNull("New pool should be empty", pool.borrow());
+        final LDAPConnection connection = createConnection(false);
+        pool.recordBorrow(1000000L, true);
+        pool.release(connection);
+        assertEquals(1, pool.getIdleCount());
+        assertSame("Released connection should be reused", connection, pool.borrow());
+        pool.recordBorrow(1000L, false);
+        assertNull(pool.borrow());
+        assertEquals(2, pool.getBorrows());
+        assertEquals(1, pool.getCreated());
+        assertTrue(LdapConnectionPool.getStatistics().contains("publisher 1 to ldap1.example.com:389: idle=0, borrows=2, created=1, discarded=0"));
+        EasyMock.verify(connection);
+    }
+
+    @Test
+    public void resetWhenConfigurationChanges() throws Exception {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(2, "ldap.example.com", "636", "cn=admin", 1, 5000);
+        final LDAPConnection connection = createConnection(true);
+        pool.release(connection);
+        final LdapConnectionPool changedPool = LdapConnectionPool.getPool(2, "ldap.example.com", "636", "cn=admin", 2, 5000);
+        assertNotSame("Pool should be replaced when the configuration changes", pool, changedPool);
+        assertEquals("Idle connections should be closed", 0, pool.getIdleCount());
+        assertEquals(1, pool.getDiscarded());
+        EasyMock.verify(connection);
+        // Connections that are in use when the pool is replaced are closed when they are given back
+        final LDAPConnection inUse = createConnection(true);
+        LdapConnectionPool.reset(2);
+        changedPool.release(inUse);
+        assertEquals(0, changedPool.getIdleCount());
+        EasyMock.verify(inUse);
+    }
+
+    @Test
+    public void discardFailedAndSurplusConnections() throws Exception {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(3, "ldap.example.com", "389", "cn=admin", 0, 5000);
+        final LDAPConnection failed = createConnection(true);
+        pool.discard(failed);
+        assertEquals(0, pool.getIdleCount());
+        final LDAPConnection[] connections = new LDAPConnection[9];
+        for (int i = 0; i < connections.length; i++) {
+            // The default size is 8, so the last one is closed
+            connections[i] = createConnection(i == connections.length - 1);
+            pool.release(connections[i]);
+        }
+        assertEquals(8, pool.getIdleCount());
+        assertEquals(2, pool.getDiscarded());
+        // Most recently used first
+        for (int i = connections.length - 2; i >= 0; i--) {
+            assertSame(connections[i], pool.borrow());
+        }
+        EasyMock.verify(failed);
+        EasyMock.verify((Object[]) connections);
+    }
+
+    @Test
+    public void discardIdleConnections() throws Exception {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(4, "ldap.example.com", "389", "cn=admin", 0, 5000);
+        final LDAPConnection first = createConnection(true);
+        final LDAPConnection second = createConnection(true);
+        pool.release(first);
+        pool.release(second);
+        pool.discardIdle();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, pool.getDiscarded());
+        assertNull(pool.borrow());
+        EasyMock.verify(first, second);
+    }
+
+    @Test
+    public void retryLostConnectionOnceOnEachServer() throws Exception {
+        final LdapPublisher publisher = new LdapPublisher();
+        publisher.setHostnames("ldap1.example.com;ldap2.example.com");
+        final LdapPublisher.ServerIterator servers = publisher.new ServerIterator();
+        final LDAPConnection connection = createConnection(false);
+        final LDAPException lost = new LDAPException("Connection lost", LDAPException.SERVER_DOWN, null);
+        assertEquals("ldap1.example.com", servers.next());
+        assertFalse("Failed connection attempts should not be retried", servers.retryOnNewConnection(null, lost));
+        assertFalse("Errors from the server should not be retried", servers.retryOnNewConnection(connection,
+                new LDAPException("No such object", LDAPException.NO_SUCH_OBJECT, null)));
+        assertTrue(servers.retryOnNewConnection(connection, lost));
+        assertEquals("Server should be tried again", "ldap1.example.com", servers.next());
+        assertFalse("Server should only be tried again once", servers.retryOnNewConnection(connection, lost));
+        assertEquals("ldap2.example.com", servers.next());
+        assertTrue(servers.retryOnNewConnection(connection, lost));
+        assertTrue(servers.hasNext());
+        assertEquals("ldap2.example.com", servers.next());
+        assertFalse(servers.hasNext());
+    }
+}
@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BulkRevocationSelector} and {@link BulkRevocationJob}
+ */
+public class BulkRevocationSelectorUnitTest {
+
+    @Test
+    public void readSerialNumbers() throws Exception {
+        final List<BigInteger> serialNumbers = BulkRevocationSelector.readSerialNumbers(new StringReader(
+                "# Compromised certificates\n\n1234ABCD\n  0x10782a83eef170d4 \n01:02:ff\n"));
+        assertEquals(Arrays.asList(new BigInteger("1234ABCD", 16), new BigInteger("10782a83eef170d4", 16), new BigInteger("0102ff", 16)),
+                serialNumbers);
+        try {
+            BulkRevocationSelector.readSerialNumbers(new StringReader("1234\n\nnot a serial number\n"));
+            fail("Invalid serial number should not be accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Message should give the line number: " + e.getMessage(), e.getMessage().startsWith("Line 3 "));
+        }
+    }
+
+    @Test
+    public void validate() {
+        new BulkRevocationSelector("CN=ExampleCA", null, null, null).validate();
+        new BulkRevocationSelector(null, 1, null, null).validate();
+        new BulkRevocationSelector(null, null, 1, null).validate();
+        new BulkRevocationSelector("CN=ExampleCA", null, null, Collections.singletonList(BigInteger.ONE)).validate();
+        try {
+            new BulkRevocationSelector().validate();
+            fail("Selector without criteria should not select all certificates");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            new BulkRevocationSelector(null, 1, null, Collections.singletonList(BigInteger.ONE)).validate();
+            fail("Serial numbers without issuer should not be accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void jobProgress() {
+        final BulkRevocationJob job = new BulkRevocationJob(1, new BulkRevocationSelector("CN=ExampleCA", null, null, null), 1, "admin");
+        job.start(5);
+        job.chunkCompleted(3, new BulkRevocationJob.ChunkResult(2, new HashSet<>(Arrays.asList(7)), new HashSet<>()), "ccc", 0);
+        final BulkRevocationJob snapshot = job.snapshot();
+        job.requestCancel();
+        job.finish(BulkRevocationJob.State.CANCELLED, "Cancelled");
+        assertEquals("Snapshot should not change", BulkRevocationJob.State.RUNNING, snapshot.getState());
+        assertFalse(snapshot.isCancelRequested());
+        assertEquals(3, snapshot.getProcessed());
+        assertEquals(2, snapshot.getRevoked());
+        assertEquals("Certificates that were not revoked should be counted as skipped", 1, snapshot.getSkipped());
+        assertEquals("ccc", snapshot.getLastFingerprint());
+        assertTrue(job.isResumable());
+        job.start(5);
+        assertFalse("Resumed job should not be cancelled", job.isCancelRequested());
+        assertEquals("Resumed job should continue from the last chunk", "ccc", job.getLastFingerprint());
+        job.chunkCompleted(2, new BulkRevocationJob.ChunkResult(2, new HashSet<>(Arrays.asList(8)), new HashSet<>()), "eee", 0);
+        job.finish(BulkRevocationJob.State.COMPLETED, null);
+        assertFalse(job.isResumable());
+        assertEquals(4, job.getRevoked());
+        assertEquals(new HashSet<>(Arrays.asList(7, 8)), new HashSet<>(job.getCaIds()));
+    }
+
+    @Test
+    public void serialNumberMatchingSeveralCertificates() {
+        final BulkRevocationJob job = new BulkRevocationJob(2, new BulkRevocationSelector("CN=ExampleCA", null, null,
+                Arrays.asList(BigInteger.ONE, BigInteger.valueOf(2), BigInteger.valueOf(3))), 1, "admin");
+        job.start(3);
+        // Serial number 1 matches two certificates, and serial number 3 is not found
+        job.chunkCompleted(3, new BulkRevocationJob.ChunkResult(3, 2, new HashSet<>(Arrays.asList(7)), new HashSet<>()), "", 3);
+        assertEquals(3, job.getProcessed());
+        assertEquals(3, job.getRevoked());
+        assertEquals("Only serial numbers without revoked certificates should be skipped", 1, job.getSkipped());
+    }
+}
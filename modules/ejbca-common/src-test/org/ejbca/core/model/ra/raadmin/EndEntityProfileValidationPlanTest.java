@@ -0,0 +1,201 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ra.raadmin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.util.DNFieldExtractor;
+import org.ejbca.core.model.SecConst;
+import org.ejbca.core.model.ra.raadmin.validators.RegexFieldValidator;
+import org.junit.Test;
+
+import com.keyfactor.util.certificate.DnComponents;
+
+/**
+ * Tests the compiled validation plan of end entity profiles. The validation itself is tested by {@link UserFulfillEndEntityProfileTest}.
+ */
+public class EndEntityProfileValidationPlanTest {
+
+    private static final int TEST_CA = 2;
+    private static final int ORGANIZATIONAL_UNITS = 40;
+    private static final int DNS_NAMES = 30;
+    private static final int ALLOWED_VALUES = 20;
+
+    private static final CertificateProfile certProfileEndUser = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+
+    @Test
+    public void testPlanIsKeptUntilProfileIsChanged() {
+        final EndEntityProfile profile = createLargeProfile();
+        final EndEntityProfileValidationPlan plan = profile.getValidationPlan();
+        assertSame("Plan should be kept while the profile is not changed.", plan, profile.getValidationPlan());
+        profile.compileValidationPlan();
+        assertSame(plan, profile.getValidationPlan());
+        profile.setValue(DnComponents.COUNTRY, 0, "SE");
+        assertNotSame("Plan should be discarded when a field is changed.", plan, profile.getValidationPlan());
+        final EndEntityProfileValidationPlan planAfterChange = profile.getValidationPlan();
+        profile.addField(DnComponents.COUNTRY);
+        assertNotSame("Plan should be discarded when a field is added.", planAfterChange, profile.getValidationPlan());
+        assertEquals(2, profile.getValidationPlan().getNumberOfField(DnComponents.dnIdToProfileId(DNFieldExtractor.C)));
+    }
+
+    @Test
+    public void testCloneSharesPlanUntilChanged() throws EndEntityProfileValidationException {
+        final EndEntityProfile profile = createLargeProfile();
+        final EndEntityProfileValidationPlan plan = profile.getValidationPlan();
+        final EndEntityProfile clone = (EndEntityProfile) profile.clone();
+        assertSame("Clone should share the immutable plan.", plan, clone.getValidationPlan());
+        clone.setModifyable(DnComponents.ORGANIZATIONALUNIT, 0, true);
+        assertNotSame(plan, clone.getValidationPlan());
+        assertSame("Changing the clone must not affect the original.", plan, profile.getValidationPlan());
+        // The clone accepts any value of the first OU now, but the original does not
+        final String dn = createDn("Any value");
+        validate(clone, dn);
+        try {
+            validate(profile, dn);
+            fail("Non-modifiable OU with a value that is not allowed should fail.");
+        } catch (EndEntityProfileValidationException e) {
+            assertEquals("End entity profile does not contain matching field for ORGANIZATIONALUNIT with value \"Any value\".", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPlanIndexesFieldRequirements() {
+        final EndEntityProfile profile = createLargeProfile();
+        profile.setRequired(DnComponents.ORGANIZATIONALUNIT, 1, false);
+        profile.setModifyable(DnComponents.ORGANIZATIONALUNIT, 2, true);
+        final EndEntityProfileValidationPlan plan = profile.getValidationPlan();
+        final int ou = DnComponents.dnIdToProfileId(DNFieldExtractor.OU);
+        assertEquals(ORGANIZATIONAL_UNITS, plan.getNumberOfField(ou));
+        assertEquals(ORGANIZATIONAL_UNITS - 1, plan.getNumberOfRequiredFields(ou));
+        final EndEntityProfileValidationPlan.FieldRule first = plan.getField(ou, 0);
+        assertTrue(first.isUse());
+        assertTrue(first.isRequired());
+        assertFalse(first.isModifiable());
+        assertTrue(first.hasTrimmedValue("OU0-" + (ALLOWED_VALUES - 1)));
+        assertFalse(first.hasTrimmedValue("OU1-0"));
+        assertEquals(ALLOWED_VALUES, first.getValues().size());
+        // Required and non-modifiable first, then required, then non-modifiable, in the order of the fields
+        final int[] matchOrder = plan.getMatchOrder(ou);
+        assertEquals(ORGANIZATIONAL_UNITS, matchOrder.length);
+        assertArrayEquals(new int[] { 0, 3, 4 }, new int[] { matchOrder[0], matchOrder[1], matchOrder[2] });
+        assertEquals(2, matchOrder[ORGANIZATIONAL_UNITS - 2]);
+        assertEquals(1, matchOrder[ORGANIZATIONAL_UNITS - 1]);
+        final int[] matchClasses = plan.getMatchClasses(ou);
+        matchClasses[0] = EndEntityProfileValidationPlan.MATCHED_FIELD;
+        assertEquals("Match classes must be copied for each validation.", EndEntityProfileValidationPlan.REQUIRED_FIELD
+                + EndEntityProfileValidationPlan.NONMODIFIABLE_FIELD, plan.getMatchClasses(ou)[0]);
+        // Fields that don't exist are neither used nor required
+        final EndEntityProfileValidationPlan.FieldRule absent = plan.getField(ou, ORGANIZATIONAL_UNITS);
+        assertFalse(absent.isUse());
+        assertFalse(absent.isRequired());
+        assertEquals("", absent.getValue());
+    }
+
+    @Test
+    public void testRegexValidatorsAreCompiled() throws EndEntityProfileValidationException {
+        final EndEntityProfile profile = createLargeProfile();
+        final EndEntityProfileValidationPlan plan = profile.getValidationPlan();
+        final Object regex = plan.getField(DnComponents.dnIdToProfileId(DNFieldExtractor.DNSNAME), 0).getValidation().get(RegexFieldValidator.class.getName());
+        assertTrue("Regex should have been compiled.", regex instanceof Pattern);
+        profile.setUseValidationForUsername(true);
+        profile.setUsernameDefaultValidation("user[0-9]+");
+        assertTrue(profile.getValidationPlan().getUsernameValidation().get(RegexFieldValidator.class.getName()) instanceof Pattern);
+        validate(profile, createDn(null));
+        try {
+            profile.checkUsernameWithValidators("admin");
+            fail("Username that does not match the regex should fail.");
+        } catch (EndEntityProfileValidationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("does not match regex user[0-9]+"));
+        }
+        try {
+            profile.doesUserFulfillEndEntityProfile("user1", "foo123", createDn(null), createAltName("host0.other.com"), "", "",
+                    CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER, false, false, false, SecConst.TOKEN_SOFT_BROWSERGEN, TEST_CA, null,
+                    certProfileEndUser, null);
+            fail("DNS name that does not match the regex should fail.");
+        } catch (EndEntityProfileValidationException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Did not pass validation of field DNSNAME (in SAN)."));
+        }
+    }
+
+    @Test
+    public void testMissingAvailableCertificateProfilesFailsParsing() {
+        final EndEntityProfile profile = createLargeProfile();
+        profile.setValue(EndEntityProfile.AVAILCERTPROFILES, 0, null);
+        try {
+            validate(profile, createDn(null));
+            fail("Profile without available certificate profiles should fail.");
+        } catch (EndEntityProfileValidationException e) {
+            assertEquals("Error parsing end entity profile.", e.getMessage());
+        }
+    }
+
+    /** @return a profile with many OUs with lists of allowed values, and many DNS names with regex validators */
+    private EndEntityProfile createLargeProfile() {
+        final EndEntityProfile profile = new EndEntityProfile();
+        profile.setAvailableCAs(Collections.singletonList(TEST_CA));
+        profile.addField(DnComponents.COUNTRY);
+        for (int i = 0; i < ORGANIZATIONAL_UNITS; i++) {
+            profile.addField(DnComponents.ORGANIZATIONALUNIT);
+            profile.setRequired(DnComponents.ORGANIZATIONALUNIT, i, true);
+            profile.setModifyable(DnComponents.ORGANIZATIONALUNIT, i, false);
+            final StringBuilder allowedValues = new StringBuilder();
+            for (int j = 0; j < ALLOWED_VALUES; j++) {
+                allowedValues.append(j == 0 ? "" : EndEntityProfile.SPLITCHAR).append("OU").append(i).append('-').append(j);
+            }
+            profile.setValue(DnComponents.ORGANIZATIONALUNIT, i, allowedValues.toString());
+        }
+        for (int i = 0; i < DNS_NAMES; i++) {
+            profile.addField(DnComponents.DNSNAME);
+            profile.setValidation(DnComponents.DNSNAME, i,
+                    EndEntityValidationHelper.getValidationMapFromRegex("[a-z0-9-]+\\.example\\.com", RegexFieldValidator.class.getName()));
+        }
+        return profile;
+    }
+
+    /** @return a DN with an allowed value for each OU, and the given value for the first OU if not null */
+    private String createDn(final String firstOrganizationalUnit) {
+        final StringBuilder dn = new StringBuilder("CN=John Smith");
+        for (int i = 0; i < ORGANIZATIONAL_UNITS; i++) {
+            dn.append(",OU=").append(i == 0 && firstOrganizationalUnit != null ? firstOrganizationalUnit : "OU" + i + "-" + (i % ALLOWED_VALUES));
+        }
+        return dn.append(",C=SE").toString();
+    }
+
+    private String createAltName(final String firstDnsName) {
+        final StringBuilder altName = new StringBuilder("dNSName=").append(firstDnsName);
+        for (int i = 1; i < DNS_NAMES; i++) {
+            altName.append(", dNSName=host").append(i).append(".example.com");
+        }
+        return altName.toString();
+    }
+
+    private void validate(final EndEntityProfile profile, final String dn) throws EndEntityProfileValidationException {
+        validate(profile, dn, createAltName("host0.example.com"));
+    }
+
+    private void validate(final EndEntityProfile profile, final String dn, final String altName) throws EndEntityProfileValidationException {
+        profile.doesUserFulfillEndEntityProfile("user1", "foo123", dn, altName, "", "", CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER,
+                false, false, false, SecConst.TOKEN_SOFT_BROWSERGEN, TEST_CA, null, certProfileEndUser, null);
+    }
+}
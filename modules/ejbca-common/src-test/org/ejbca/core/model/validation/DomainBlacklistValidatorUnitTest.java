@@ -21,6 +21,7 @@ import static org.junit.Assert.fail;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -73,6 +74,21 @@ public class DomainBlacklistValidatorUnitTest {
         assertNotNull("Upload date should be set", validator.getBlacklistDate());
     }
 
+    @Test
+    public void legacyBlacklistIsOnlyWrittenOnRequest() throws Exception {
+        final DomainBlacklistValidator validator = new DomainBlacklistValidator();
+        validator.changeBlacklist(BLACKLIST);
+        assertFalse("Blacklist in the old format should not be written by default.", validator.getDataMap().containsKey("blacklists"));
+        validator.writeLegacyBlacklist();
+        final Collection<?> legacyBlacklist = (Collection<?>) validator.getDataMap().get("blacklists");
+        assertNotNull("Blacklist in the old format should be written for nodes that have not been upgraded.", legacyBlacklist);
+        assertEquals(new HashSet<>(validator.getBlacklist()), new HashSet<>(legacyBlacklist));
+        assertTrue(validator.removeLegacyBlacklist());
+        assertFalse(validator.getDataMap().containsKey("blacklists"));
+        assertFalse("Nothing should be removed the second time.", validator.removeLegacyBlacklist());
+        assertEquals(5, validator.getBlacklistSize());
+    }
+
     @Test
     public void parseMalformedBlacklistFile() {
         final DomainBlacklistValidator validator = new DomainBlacklistValidator();
@@ -0,0 +1,158 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation.domainblacklist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests DomainBlacklistIndex and DomainBlacklistIndexBuilder.
+ */
+public class DomainBlacklistIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptyIndex() throws Exception {
+        final DomainBlacklistIndex index = DomainBlacklistIndex.create(new DomainBlacklistIndexBuilder()::writeTo);
+        assertEquals(0, index.size());
+        assertNull(index.get("example.com"));
+        assertTrue(index.entrySet().isEmpty());
+    }
+
+    @Test
+    public void lookupsInManyBlocks() throws Exception {
+        final DomainBlacklistIndexBuilder builder = new DomainBlacklistIndexBuilder();
+        final TreeMap<String,String> expected = new TreeMap<>();
+        // Added in reverse order, with shared prefixes and some normalized domains that differ from the uploaded ones
+        for (int i = 999; i >= 0; i--) {
+            final String domain = "phishing" + i + ".example" + (i % 7) + ".com";
+            final String normalizedDomain = i % 10 == 0 ? domain.replace('1', 'l') : domain;
+            builder.add(normalizedDomain, domain);
+            expected.put(normalizedDomain, domain);
+        }
+        final DomainBlacklistIndex index = DomainBlacklistIndex.create(builder::writeTo);
+        assertEquals(1000, index.size());
+        for (final Map.Entry<String,String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        }
+        assertNull(index.get("phishing"));
+        assertNull(index.get("phishing1000.example6.com"));
+        assertNull(index.get("a"));
+        assertNull(index.get("zzz"));
+        assertEquals("Entries should be iterated in order of the normalized domains", new ArrayList<>(expected.entrySet()), new ArrayList<>(index.entrySet()));
+    }
+
+    @Test
+    public void equalNormalizedDomains() throws Exception {
+        final DomainBlacklistIndexBuilder builder = new DomainBlacklistIndexBuilder();
+        builder.add("bank", "bank");
+        builder.add("examp1e.com", "examp1e.com");
+        builder.add("bank", "b4nk");
+        builder.add("bank", "bank");
+        final DomainBlacklistIndex index = DomainBlacklistIndex.create(builder::writeTo);
+        assertEquals(2, index.size());
+        assertEquals("The largest of the domains should be kept", "bank", index.get("bank"));
+        assertEquals(Arrays.asList("bank", "examp1e.com"), new ArrayList<>(index.values()));
+    }
+
+    @Test
+    public void memoryMappedIndex() throws Exception {
+        final Path directory = folder.getRoot().toPath().resolve("index");
+        final DomainBlacklistIndexBuilder builder = createBuilder("forbidden.example.com");
+        final String sha256 = sha256(builder);
+        final DomainBlacklistIndex index = DomainBlacklistIndex.open(directory, "abc123", sha256, builder::writeTo);
+        assertEquals("forbidden.example.com", index.get("forbidden.example.com"));
+        // An existing file with the expected hash is used as it is
+        final List<String> written = new ArrayList<>();
+        final DomainBlacklistIndex existing = DomainBlacklistIndex.open(directory, "abc123", sha256, out -> written.add("written"));
+        assertTrue("Index should not be written again", written.isEmpty());
+        assertEquals("forbidden.example.com", existing.get("forbidden.example.com"));
+        assertEquals(Arrays.asList("abc123.idx"), Arrays.asList(directory.toFile().list()));
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory)));
+        }
+    }
+
+    @Test
+    public void modifiedIndexIsWrittenAgain() throws Exception {
+        final Path directory = folder.getRoot().toPath().resolve("index");
+        final DomainBlacklistIndexBuilder builder = createBuilder("forbidden.example.com");
+        final String sha256 = sha256(builder);
+        DomainBlacklistIndex.open(directory, "abc123", sha256, builder::writeTo);
+        Files.write(directory.resolve("abc123.idx"), createIndex("allowed.example.com"));
+        final DomainBlacklistIndex index = DomainBlacklistIndex.open(directory, "abc123", sha256, builder::writeTo);
+        assertEquals("forbidden.example.com", index.get("forbidden.example.com"));
+        assertNull(index.get("allowed.example.com"));
+    }
+
+    @Test
+    public void hashOfDerivedIndexIsStoredNextToIt() throws Exception {
+        final Path directory = folder.getRoot().toPath().resolve("index");
+        final DomainBlacklistIndexBuilder builder = createBuilder("forbidden.example.com");
+        DomainBlacklistIndex.open(directory, "def456", null, builder::writeTo);
+        assertEquals(sha256(builder), new String(Files.readAllBytes(directory.resolve("def456.sha256")), StandardCharsets.US_ASCII));
+        Files.write(directory.resolve("def456.idx"), createIndex("allowed.example.com"));
+        final DomainBlacklistIndex index = DomainBlacklistIndex.open(directory, "def456", null, builder::writeTo);
+        assertEquals("forbidden.example.com", index.get("forbidden.example.com"));
+        assertNull(index.get("allowed.example.com"));
+    }
+
+    @Test
+    public void unexpectedContentIsKeptInMemory() throws Exception {
+        final Path directory = folder.getRoot().toPath().resolve("index");
+        final DomainBlacklistIndexBuilder builder = createBuilder("forbidden.example.com");
+        final DomainBlacklistIndex index = DomainBlacklistIndex.open(directory, "abc123", "0000", builder::writeTo);
+        assertEquals("forbidden.example.com", index.get("forbidden.example.com"));
+        assertFalse("Index with the wrong hash should not be stored", Files.exists(directory.resolve("abc123.idx")));
+    }
+
+    private static DomainBlacklistIndexBuilder createBuilder(final String domain) {
+        final DomainBlacklistIndexBuilder builder = new DomainBlacklistIndexBuilder();
+        builder.add(domain, domain);
+        return builder;
+    }
+
+    private static byte[] createIndex(final String domain) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createBuilder(domain).writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static String sha256(final DomainBlacklistIndexBuilder builder) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.writeTo(out);
+        return new String(Hex.encode(MessageDigest.getInstance("SHA-256").digest(out.toByteArray())), StandardCharsets.US_ASCII);
+    }
+}
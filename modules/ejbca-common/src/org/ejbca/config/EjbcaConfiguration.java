@@ -302,6 +302,81 @@ public final class EjbcaConfiguration {
         return getBooleanProperty("publish.parallel.enabled", true);
     }
 
+    /** @return the maximum number of idle connections kept for each LDAP publisher and server. 0 means that connections are not kept. */
+    public static int getLdapPublisherPoolSize() {
+        return Math.max(0, getIntProperty("publisher.ldap.pool.size", 8));
+    }
+
+    /** @return the number of milliseconds that an idle connection of an LDAP publisher is kept before it is closed. */
+    public static long getLdapPublisherPoolIdleTimeout() {
+        return Math.max(0L, getLongProperty("publisher.ldap.pool.idletimeout", 60000L));
+    }
+
+    /** @return the maximum number of CRLs and CRL partitions that are generated concurrently on this node. */
+    public static int getCrlGenerationThreads() {
+        return Math.max(1, getIntProperty("crlgeneration.threads", 4));
+    }
+
+    /** @return the maximum number of CRLs and CRL partitions that are generated concurrently using the same crypto token. */
+    public static int getCrlGenerationThreadsPerCryptoToken() {
+        return Math.max(1, getIntProperty("crlgeneration.threadspercryptotoken", 2));
+    }
+
+    /** @return the directory where the entries of the last base CRLs are cached for incremental CRL generation, or null if disabled. */
+    public static String getCrlGenerationIncrementalCacheDir() {
+        final String value = EjbcaConfigurationHolder.getExpandedString("crlgeneration.incremental.cachedir");
+        return StringUtils.isBlank(value) ? null : value.trim();
+    }
+
+    /** @return every n:th base CRL is created from all revoked certificates when using incremental CRL generation, 0 for never. */
+    public static int getCrlGenerationIncrementalFullInterval() {
+        return Math.max(0, getIntProperty("crlgeneration.incremental.fullinterval", 24));
+    }
+
+    /**
+     * @return milliseconds subtracted from the time of the last read, when reading the certificates whose revocation status changed
+     * for incremental CRL generation.
+     */
+    public static long getCrlGenerationIncrementalChangesMargin() {
+        return Math.max(0L, getLongProperty("crlgeneration.incremental.changesmargin", 600000L));
+    }
+
+    /**
+     * @return the number of certificates that a bulk revocation revokes in each transaction. At most 1000, since the serial numbers of
+     * a chunk are looked up with one IN expression, and some databases (like Oracle) do not allow more than 1000 values in it.
+     */
+    public static int getBulkRevocationChunkSize() {
+        return Math.min(1000, Math.max(1, getIntProperty("bulkrevocation.chunksize", 1000)));
+    }
+
+    /** @return the maximum number of enrollments that a REST bulk enrollment processes in parallel */
+    public static int getRestBulkEnrollmentThreads() {
+        return Math.max(1, getIntProperty("rest.bulkenroll.threads", 8));
+    }
+
+    /**
+     * @return the directory where the compiled block lists of Domain Block List Validators are memory-mapped from on this node. By default
+     * in the data directory of the application server, or in the temporary directory if the application server does not have one.
+     */
+    public static String getDomainBlacklistIndexDir() {
+        final String value = EjbcaConfigurationHolder.getExpandedString("validator.domainblacklist.indexdir");
+        if (StringUtils.isNotBlank(value)) {
+            return value.trim();
+        }
+        final String dataDir = System.getProperty("jboss.server.data.dir");
+        return (StringUtils.isNotBlank(dataDir) ? dataDir : System.getProperty("java.io.tmpdir")) + "/ejbca-domainblacklist";
+    }
+
+    /** @return the maximum number of threads used to search RA back ends (like peer connected CAs) in parallel. 1 means sequential searches. */
+    public static int getRaBackendThreads() {
+        return Math.max(1, getIntProperty("ra.backend.threads", 16));
+    }
+
+    /** @return the number of milliseconds to wait for all RA back ends to respond to a search, before returning a partial result. */
+    public static long getRaBackendSearchTimeout() {
+        return Math.max(0L, getLongProperty("ra.backend.searchtimeout", 30000L));
+    }
+
     /** @return true if TCP keep alive should be used for outgoing peer connections. */
     @Deprecated // EJBCA 6.3.0 safety for the new PeerConnector feature. Remove when default is considered stable.
     public static boolean isPeerSoKeepAlive() {
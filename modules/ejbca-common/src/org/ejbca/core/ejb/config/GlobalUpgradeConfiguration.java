@@ -34,6 +34,7 @@ public class GlobalUpgradeConfiguration extends ConfigurationBase implements Ser
     private static final String POST_UPGRADE_STARTED = "postUpgradeStarted";
     private static final String UPGRADED_FROM        = "upgradedFromVersion";
     private static final String VALIDITY_WITH_SECONDS_GRANULARITY = "validityWithSecondsGranularity";
+    private static final String DOMAIN_BLACKLIST_INDEX_ONLY = "domainBlacklistIndexOnly";
     
     public String getUpgradedToVersion() {
         return (String) data.get(UPGRADED_TO_VERSION);
@@ -73,6 +74,15 @@ public class GlobalUpgradeConfiguration extends ConfigurationBase implements Ser
         data.put(VALIDITY_WITH_SECONDS_GRANULARITY, Boolean.valueOf(value).toString());
     }
     
+    /** @return true if domain block lists are only stored as a compiled index, without the list in the old format (Added in 8.0.0) */
+    public boolean isDomainBlacklistIndexOnly() {
+        return Boolean.parseBoolean((String) data.get(DOMAIN_BLACKLIST_INDEX_ONLY));
+    }
+
+    public void setDomainBlacklistIndexOnly(final boolean value) {
+        data.put(DOMAIN_BLACKLIST_INDEX_ONLY, Boolean.valueOf(value).toString());
+    }
+
     @Override
     public void upgrade() {
         if(Float.compare(LATEST_VERSION, getVersion()) != 0) {
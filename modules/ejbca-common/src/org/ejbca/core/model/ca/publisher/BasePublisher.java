@@ -15,7 +15,9 @@ package org.ejbca.core.model.ca.publisher;
 
 import java.io.Serializable;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.certificates.certificate.Base64CertData;
@@ -33,7 +35,7 @@ import org.cesecore.util.ExternalScriptsAllowlist;
  *
  * @version $Id$
  */
-public abstract class BasePublisher extends UpgradeableDataHashMap implements Serializable, Cloneable, FullEntityPublisher {    
+public abstract class BasePublisher extends UpgradeableDataHashMap implements Serializable, Cloneable, FullEntityPublisher, BatchPublisher {    
 
     private static final long serialVersionUID = -735659148394853025L;
     public static final String TRUE  = "true";
@@ -252,6 +254,49 @@ public abstract class BasePublisher extends UpgradeableDataHashMap implements Se
         return false;
     }
 
+    @Override
+    public boolean isBatchPublishingSupported() {
+        return false;
+    }
+
+    /**
+     * Publishes the certificates one at a time with
+     * {@link #storeCertificate(AuthenticationToken, Certificate, String, String, String, String, int, int, long, int, String, int, long, ExtendedInformation)}.
+     * Publishers that support batch publishing override this method.
+     */
+    @Override
+    public List<Result> storeCertificates(final AuthenticationToken admin, final List<CertificateItem> certificates) throws PublisherException {
+        final List<Result> results = new ArrayList<>(certificates.size());
+        for (final CertificateItem item : certificates) {
+            try {
+                final boolean published = storeCertificate(admin, item.getCertificate(), item.getUsername(), item.getPassword(), item.getUserDN(),
+                        item.getCafp(), item.getStatus(), item.getType(), item.getRevocationDate(), item.getRevocationReason(), item.getTag(),
+                        item.getCertificateProfileId(), item.getLastUpdate(), item.getExtendedInformation());
+                results.add(published ? Result.success() : Result.failure());
+            } catch (PublisherException e) {
+                results.add(Result.failure(e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Publishes the OCSP responses one at a time with {@link #storeOcspResponseData(OcspResponseData)}. Publishers that support
+     * batch publishing override this method.
+     */
+    @Override
+    public List<Result> storeOcspResponses(final List<OcspResponseData> ocspResponses) throws PublisherException {
+        final List<Result> results = new ArrayList<>(ocspResponses.size());
+        for (final OcspResponseData ocspResponse : ocspResponses) {
+            try {
+                results.add(storeOcspResponseData(ocspResponse) ? Result.success() : Result.failure());
+            } catch (PublisherException e) {
+                results.add(Result.failure(e));
+            }
+        }
+        return results;
+    }
+
     /**
      * Returns true if the publisher calls external scripts, in which case setScriptWhiteList will be called to set a whitelist of allowed scripts.
      * 
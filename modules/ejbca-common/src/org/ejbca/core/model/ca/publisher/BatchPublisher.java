@@ -0,0 +1,151 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import java.io.Serializable;
+import java.security.cert.Certificate;
+import java.util.List;
+
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.certificates.endentity.ExtendedInformation;
+import org.cesecore.oscp.OcspResponseData;
+
+/**
+ * Publishers that implement this interface can publish several certificates or OCSP responses in one call, for example in one
+ * database transaction, one message broker send or one LDAP connection. It is optional for an {@link ICustomPublisher}, and is used
+ * by the publisher queue and when several OCSP responses are published directly. Publishers that do not implement it are called
+ * once per item as before.
+ * <p>
+ * The items of a batch are independent. If some of them can not be published, the publisher returns a failed {@link Result}
+ * for them and continues with the rest. A PublisherException means that nothing in the batch was published.
+ *
+ * @version $Id$
+ */
+public interface BatchPublisher {
+
+    /** @return true if this publisher supports batch publishing with its current configuration */
+    boolean isBatchPublishingSupported();
+
+    /**
+     * Publishes several certificates, in the same way as calling
+     * {@link ICustomPublisher#storeCertificate(AuthenticationToken, Certificate, String, String, String, String, int, int, long, int, String, int, long, ExtendedInformation)}
+     * for each of them.
+     *
+     * @param admin the administrator publishing the certificates
+     * @param certificates the certificates to publish
+     * @return one result per certificate, in the same order
+     * @throws PublisherException if a communication or other error occurs, so that none of the certificates were published.
+     */
+    List<Result> storeCertificates(AuthenticationToken admin, List<CertificateItem> certificates) throws PublisherException;
+
+    /**
+     * Publishes several OCSP responses, in the same way as calling {@link ICustomPublisher#storeOcspResponseData(OcspResponseData)}
+     * for each of them.
+     *
+     * @param ocspResponses the OCSP responses to publish
+     * @return one result per OCSP response, in the same order
+     * @throws PublisherException if a communication or other error occurs, so that none of the responses were published.
+     */
+    List<Result> storeOcspResponses(List<OcspResponseData> ocspResponses) throws PublisherException;
+
+    /** A certificate to publish, with the same information as the arguments of a single storeCertificate call */
+    final class CertificateItem implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Certificate certificate;
+        private final String username;
+        private final String password;
+        private final String userDN;
+        private final String cafp;
+        private final int status;
+        private final int type;
+        private final long revocationDate;
+        private final int revocationReason;
+        private final String tag;
+        private final int certificateProfileId;
+        private final long lastUpdate;
+        private final ExtendedInformation extendedInformation;
+
+        public CertificateItem(final Certificate certificate, final String username, final String password, final String userDN, final String cafp,
+                final int status, final int type, final long revocationDate, final int revocationReason, final String tag,
+                final int certificateProfileId, final long lastUpdate, final ExtendedInformation extendedInformation) {
+            this.certificate = certificate;
+            this.username = username;
+            this.password = password;
+            this.userDN = userDN;
+            this.cafp = cafp;
+            this.status = status;
+            this.type = type;
+            this.revocationDate = revocationDate;
+            this.revocationReason = revocationReason;
+            this.tag = tag;
+            this.certificateProfileId = certificateProfileId;
+            this.lastUpdate = lastUpdate;
+            this.extendedInformation = extendedInformation;
+        }
+
+        public Certificate getCertificate() { return certificate; }
+        public String getUsername() { return username; }
+        public String getPassword() { return password; }
+        public String getUserDN() { return userDN; }
+        public String getCafp() { return cafp; }
+        public int getStatus() { return status; }
+        public int getType() { return type; }
+        public long getRevocationDate() { return revocationDate; }
+        public int getRevocationReason() { return revocationReason; }
+        public String getTag() { return tag; }
+        public int getCertificateProfileId() { return certificateProfileId; }
+        public long getLastUpdate() { return lastUpdate; }
+        public ExtendedInformation getExtendedInformation() { return extendedInformation; }
+    }
+
+    /** Result of publishing one item of a batch */
+    final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final Result SUCCESS = new Result(true, null);
+        private static final Result NOT_PUBLISHED = new Result(false, null);
+
+        private final boolean success;
+        private final String message;
+
+        private Result(final boolean success, final String message) {
+            this.success = success;
+            this.message = message;
+        }
+
+        /** @return result of an item that was published */
+        public static Result success() {
+            return SUCCESS;
+        }
+
+        /** @return result of an item that was not published, like when storeCertificate returns false */
+        public static Result failure() {
+            return NOT_PUBLISHED;
+        }
+
+        /** @return result of an item that was not published, like when storeCertificate throws the exception */
+        public static Result failure(final PublisherException e) {
+            return new Result(false, e.getMessage());
+        }
+
+        /** @return true if the item was published */
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /** @return the error message of a failed item, or null */
+        public String getMessage() {
+            return message;
+        }
+    }
+}
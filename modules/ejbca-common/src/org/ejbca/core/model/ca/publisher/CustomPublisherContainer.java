@@ -355,6 +355,27 @@ public class CustomPublisherContainer extends BasePublisher {
         return this.getCustomPublisher().storeOcspResponseData(ocspResponseData);
     }
 
+    @Override
+    public boolean isBatchPublishingSupported() {
+        return getCustomPublisher() instanceof BatchPublisher && ((BatchPublisher) getCustomPublisher()).isBatchPublishingSupported();
+    }
+
+    @Override
+    public List<Result> storeCertificates(final AuthenticationToken admin, final List<CertificateItem> certificates) throws PublisherException {
+        if (isBatchPublishingSupported()) {
+            return ((BatchPublisher) getCustomPublisher()).storeCertificates(admin, certificates);
+        }
+        return super.storeCertificates(admin, certificates);
+    }
+
+    @Override
+    public List<Result> storeOcspResponses(final List<OcspResponseData> ocspResponses) throws PublisherException {
+        if (isBatchPublishingSupported()) {
+            return ((BatchPublisher) getCustomPublisher()).storeOcspResponses(ocspResponses);
+        }
+        return super.storeOcspResponses(ocspResponses);
+    }
+
     @Override
     public boolean isCallingExternalScript() {
         // Must be overridden, or we may get a loop
@@ -0,0 +1,334 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.ejbca.config.EjbcaConfiguration;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPSearchConstraints;
+
+/**
+ * Connected and bound LDAP connections that are kept between publishing operations, so that an {@link LdapPublisher} does not
+ * have to connect, negotiate TLS and bind for every certificate or CRL.
+ * <p>
+ * There is one pool for each publisher, server, port and login DN, so failover between the hostnames of a publisher works as
+ * before. A pool is replaced when the other connection settings of the publisher change, and pools that have not been used within
+ * the idle timeout are closed. The size and idle timeout are set with publisher.ldap.pool.size and publisher.ldap.pool.idletimeout,
+ * where a size of 0 disables pooling.
+ * <p>
+ * An idle connection is checked before it is used again: it must still be connected and bound, and if it has been idle longer than
+ * {@value #VALIDATE_AFTER_IDLE_MS} ms, the root DSE is read from the server. If a connection has been lost anyway, the publisher
+ * closes the idle connections to the server and tries the operation once more on a new connection.
+ *
+ * @version $Id$
+ */
+public final class LdapConnectionPool {
+
+    private static final Logger log = Logger.getLogger(LdapConnectionPool.class);
+
+    /** Idle connections are validated with a read from the server if they have not been used for this long */
+    static final long VALIDATE_AFTER_IDLE_MS = 1000L;
+    private static final String[] NO_ATTRIBUTES = { LDAPConnection.NO_ATTRS };
+
+    private static final ConcurrentMap<String, LdapConnectionPool> pools = new ConcurrentHashMap<>();
+    private static final AtomicLong lastSweep = new AtomicLong();
+
+    private final int publisherId;
+    private final String server;
+    private final int configuration;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final LDAPSearchConstraints validationConstraints = new LDAPSearchConstraints();
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+    private volatile long lastUsed = System.currentTimeMillis();
+    private boolean closed = false;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    private static final class IdleConnection {
+        private final LDAPConnection connection;
+        private final long idleSince;
+
+        private IdleConnection(final LDAPConnection connection, final long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private LdapConnectionPool(final int publisherId, final String server, final int configuration, final int maxSize, final long idleTimeout,
+            final int validationTimeout) {
+        this.publisherId = publisherId;
+        this.server = server;
+        this.configuration = configuration;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.validationConstraints.setTimeLimit(validationTimeout);
+    }
+
+    /**
+     * Returns the pool of a publisher for a server. If the configuration of the publisher has changed since the pool was created,
+     * the old pool is closed and a new one is returned.
+     *
+     * @param publisherId the id of the publisher
+     * @param server hostname of the server
+     * @param port port of the server
+     * @param loginDN the DN that the connections are bound with
+     * @param configuration hash of the other settings that the connections depend on, like the password and connection security
+     * @param connectionTimeout timeout in milliseconds for the validation of idle connections
+     * @return the pool, or null if connection pooling is disabled
+     */
+    public static LdapConnectionPool getPool(final int publisherId, final String server, final String port, final String loginDN,
+            final int configuration, final int connectionTimeout) {
+        final int maxSize = EjbcaConfiguration.getLdapPublisherPoolSize();
+        if (maxSize <= 0) {
+            return null;
+        }
+        sweep();
+        final String key = publisherId + ";" + server + ":" + port + ";" + loginDN;
+        LdapConnectionPool pool = pools.get(key);
+        if (pool == null || pool.configuration != configuration) {
+            final LdapConnectionPool[] replaced = new LdapConnectionPool[1];
+            pool = pools.compute(key, (k, current) -> {
+                if (current != null && current.configuration == configuration) {
+                    // Created by another thread at the same time
+                    return current;
+                }
+                replaced[0] = current;
+                return new LdapConnectionPool(publisherId, server + ":" + port, configuration, maxSize,
+                        EjbcaConfiguration.getLdapPublisherPoolIdleTimeout(), connectionTimeout);
+            });
+            if (replaced[0] != null) {
+                log.info("Configuration of publisher " + publisherId + " has changed, closing the LDAP connections to " + replaced[0].server + ".");
+                replaced[0].close();
+            }
+        }
+        pool.lastUsed = System.currentTimeMillis();
+        return pool;
+    }
+
+    /**
+     * Closes the pools of a publisher, for example when it has been changed or removed.
+     * @param publisherId the id of the publisher
+     */
+    public static void reset(final int publisherId) {
+        for (final Map.Entry<String, LdapConnectionPool> entry : pools.entrySet()) {
+            if (entry.getValue().publisherId == publisherId && pools.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().close();
+            }
+        }
+    }
+
+    /** Closes all pools. */
+    public static void resetAll() {
+        for (final Map.Entry<String, LdapConnectionPool> entry : pools.entrySet()) {
+            if (pools.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().close();
+            }
+        }
+    }
+
+    /** @return a summary of the statistics of all pools, one line per pool, suitable for health checks and logging */
+    public static String getStatistics() {
+        final StringBuilder sb = new StringBuilder("LDAP connection pools: size=").append(EjbcaConfiguration.getLdapPublisherPoolSize())
+                .append(", idleTimeout=").append(EjbcaConfiguration.getLdapPublisherPoolIdleTimeout()).append(", pools=").append(pools.size());
+        for (final LdapConnectionPool pool : new TreeMap<>(pools).values()) {
+            sb.append('\n').append(pool.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Takes an idle connection from the pool. Connections that have been idle too long, or are no longer connected, are closed.
+     * @return a connected and bound connection, or null if there is no usable idle connection
+     */
+    public LDAPConnection borrow() {
+        sweep();
+        lastUsed = System.currentTimeMillis();
+        while (true) {
+            final IdleConnection idle;
+            synchronized (this) {
+                idle = idleConnections.pollFirst();
+            }
+            if (idle == null) {
+                return null;
+            }
+            final long idleTime = System.currentTimeMillis() - idle.idleSince;
+            if (idleTime >= idleTimeout || !idle.connection.isConnected() || !idle.connection.isBound()) {
+                discard(idle.connection);
+            } else if (idleTime >= VALIDATE_AFTER_IDLE_MS && !isValid(idle.connection)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Idle LDAP connection to " + server + " is no longer usable.");
+                }
+                discard(idle.connection);
+            } else {
+                return idle.connection;
+            }
+        }
+    }
+
+    /**
+     * Returns a connection that was borrowed or created for this pool after it has been used successfully. The connection is closed
+     * instead if the pool is full or has been closed.
+     * @param connection a connected and bound connection
+     */
+    public void release(final LDAPConnection connection) {
+        sweep();
+        lastUsed = System.currentTimeMillis();
+        synchronized (this) {
+            if (!closed && idleConnections.size() < maxSize) {
+                // Most recently used first, so that surplus connections time out
+                idleConnections.addFirst(new IdleConnection(connection, System.currentTimeMillis()));
+                return;
+            }
+        }
+        discard(connection);
+    }
+
+    /**
+     * Closes a connection that was borrowed or created for this pool, for example after an error.
+     * @param connection the connection to close
+     */
+    public void discard(final LDAPConnection connection) {
+        discarded.incrementAndGet();
+        try {
+            connection.disconnect();
+        } catch (LDAPException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to disconnect LDAP connection to " + server + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections, for example after a borrowed connection was found to be lost, since the other connections that
+     * were made before are likely lost as well.
+     */
+    public void discardIdle() {
+        final List<IdleConnection> toClose;
+        synchronized (this) {
+            toClose = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+        }
+        for (final IdleConnection idle : toClose) {
+            discard(idle.connection);
+        }
+    }
+
+    /**
+     * Records the time it took to get a usable connection, whether it was taken from the pool or created.
+     * @param nanos time in nanoseconds
+     * @param isNewConnection true if a new connection had to be created
+     */
+    public void recordBorrow(final long nanos, final boolean isNewConnection) {
+        borrows.incrementAndGet();
+        borrowNanos.addAndGet(nanos);
+        if (isNewConnection) {
+            created.incrementAndGet();
+        }
+    }
+
+    /** @return the number of idle connections in the pool */
+    public synchronized int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    /** @return the number of connections that have been used */
+    public long getBorrows() {
+        return borrows.get();
+    }
+
+    /** @return the number of connections that have been created */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /** @return the number of connections that have been closed */
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /** @return the average time in milliseconds to get a usable connection */
+    public double getAverageBorrowMillis() {
+        final long count = borrows.get();
+        return count == 0 ? 0 : borrowNanos.get() / 1000000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return "LDAP connection pool for publisher " + publisherId + " to " + server + ": idle=" + getIdleCount() + ", borrows=" + getBorrows()
+                + ", created=" + getCreated() + ", discarded=" + getDiscarded() + ", averageBorrowMillis="
+                + String.format("%.3f", getAverageBorrowMillis());
+    }
+
+    private boolean isValid(final LDAPConnection connection) {
+        try {
+            connection.read("", NO_ATTRIBUTES, validationConstraints);
+            return true;
+        } catch (LDAPException e) {
+            return false;
+        }
+    }
+
+    private void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        discardIdle();
+    }
+
+    /**
+     * Closes the connections that have timed out, and the pools that have not been used within the idle timeout, at most once per second.
+     * Called whenever a pool is looked up, or a connection is borrowed or given back, so that idle connections are closed while a
+     * long publishing operation is using a pool.
+     */
+    private static void sweep() {
+        final long now = System.currentTimeMillis();
+        final long last = lastSweep.get();
+        if (now - last < 1000L || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (final Map.Entry<String, LdapConnectionPool> entry : pools.entrySet()) {
+            final LdapConnectionPool pool = entry.getValue();
+            if (now - pool.lastUsed >= pool.idleTimeout) {
+                if (pools.remove(entry.getKey(), pool)) {
+                    pool.close();
+                }
+                continue;
+            }
+            final List<LDAPConnection> timedOut = new ArrayList<>();
+            synchronized (pool) {
+                while (!pool.idleConnections.isEmpty() && now - pool.idleConnections.peekLast().idleSince >= pool.idleTimeout) {
+                    timedOut.add(pool.idleConnections.pollLast().connection);
+                }
+            }
+            for (final LDAPConnection connection : timedOut) {
+                pool.discard(connection);
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.StringTokenizer;
 
 import org.apache.commons.lang.StringUtils;
@@ -195,7 +196,6 @@ public class LdapPublisher extends BasePublisher {
         } else if (status == CertificateConstants.CERT_ACTIVE) {
             // Don't publish non-active certificates
     		int ldapVersion = LDAPConnection.LDAP_V3;
-    		LDAPConnection lc = createLdapConnection();
 
     		final String dn;
     		final String certdn;
@@ -222,7 +222,7 @@ public class LdapPublisher extends BasePublisher {
     		// To work well with the LdapSearchPublisher we need to pass the full certificate DN to the 
     		// search function, and not only the LDAP DN. The regular publisher should only use the LDAP DN though, 
     		// but the searchOldEntity function will take care of that.
-    		LDAPEntry oldEntry = searchOldEntity(username, ldapVersion, lc, certdn, userDN, email);
+    		LDAPEntry oldEntry = searchOldEntity(username, ldapVersion, certdn, userDN, email);
 
     		// PART 2: Create LDAP entry
     		LDAPEntry newEntry = null;
@@ -310,23 +310,14 @@ public class LdapPublisher extends BasePublisher {
 
     		// PART 3: MODIFICATION AND ADDITION OF NEW USERS
     		// Try all the listed servers
-    		Iterator<String> servers = getHostnameList().iterator();
+    		final ServerIterator servers = new ServerIterator();
     		boolean connectionFailed;
     		do {
     			connectionFailed = false;
     			String currentServer = servers.next();
+    			LDAPConnection lc = null;
     			try {
-    				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-    				lc.connect(currentServer, Integer.parseInt(getPort()));
-    				// Execute a STARTTLS handshake if it was requested.
-    				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("STARTTLS to LDAP server "+currentServer);
-                        }
-    				    lc.startTLS();
-    				}
-    				// authenticate to the server
-    				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+    				lc = connect(currentServer, ldapVersion);
     				// Add or modify the entry
     				if (oldEntry != null && getModifyExistingUsers()) {
     					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -372,6 +363,8 @@ public class LdapPublisher extends BasePublisher {
     				if (e.getResultCode() == LDAPException.ATTRIBUTE_OR_VALUE_EXISTS) {
                         final String msg = intres.getLocalizedMessage("publisher.certalreadyexists", CertTools.getFingerprintAsString(incert), dn, e.getMessage());
     				    log.info(msg);
+    				} else if (servers.retryOnNewConnection(lc, e)) {
+    					log.info("Lost the connection to " + currentServer + ". Trying again on a new connection.");
     				} else if (servers.hasNext()) {
     					log.warn("Failed to publish to " + currentServer + ". Trying next in list.");
     				} else {
@@ -384,13 +377,8 @@ public class LdapPublisher extends BasePublisher {
     				log.error(msg, e);
     				throw new PublisherException(msg);            
     			} finally {
-    				// disconnect with the server
-    				try {
-    					lc.disconnect(ldapDisconnectConstraints);
-    				} catch (LDAPException e) {
-    					String msg = intres.getLocalizedMessage("publisher.errordisconnect", getLoginPassword());
-    					log.error(msg, e);
-    				}
+    				// return the connection to the pool, or disconnect with the server
+    				disconnect(currentServer, lc, connectionFailed);
     			}
     		} while (connectionFailed && servers.hasNext()) ;
         } else {
@@ -495,10 +483,8 @@ public class LdapPublisher extends BasePublisher {
 			throw new PublisherException(msg);            
 		}
 
-		LDAPConnection lc = createLdapConnection();
-
 		// Check if the entry is already present, we will update it with the new CRL.
-		LDAPEntry oldEntry = searchOldEntity(null, ldapVersion, lc, crldn, userDN, null);
+		LDAPEntry oldEntry = searchOldEntity(null, ldapVersion, crldn, userDN, null);
 
 		LDAPEntry newEntry = null;
 		ArrayList<LDAPModification> modSet = new ArrayList<LDAPModification>();
@@ -534,24 +520,14 @@ public class LdapPublisher extends BasePublisher {
 			newEntry = new LDAPEntry(dn, attributeSet);
 		}
 		// Try all the listed servers
-		Iterator<String> servers = getHostnameList().iterator();
+		final ServerIterator servers = new ServerIterator();
 		boolean connectionFailed;
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
+			LDAPConnection lc = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = connect(currentServer, ldapVersion);
 				// Add or modify the entry
 				if (oldEntry != null) {
 					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -566,7 +542,9 @@ public class LdapPublisher extends BasePublisher {
 				}
 			} catch (LDAPException e) {
 				connectionFailed = true;
-				if (servers.hasNext()) {
+				if (servers.retryOnNewConnection(lc, e)) {
+					log.info("Lost the connection to " + currentServer + ". Trying again on a new connection.");
+				} else if (servers.hasNext()) {
 					log.warn("Failed to publish to " + currentServer + ". Trying next in list.");
 				} else {
 					String msg = intres.getLocalizedMessage("publisher.errorldapstore", "CRL", getCRLAttribute(), getCAObjectClass(), dn, e.getMessage());
@@ -579,13 +557,8 @@ public class LdapPublisher extends BasePublisher {
 				log.error(msg, e);
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// return the connection to the pool, or disconnect with the server
+				disconnect(currentServer, lc, connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		if (log.isTraceEnabled()) {
@@ -627,7 +600,6 @@ public class LdapPublisher extends BasePublisher {
 		}
 
 		int ldapVersion = LDAPConnection.LDAP_V3;
-		LDAPConnection lc = createLdapConnection();
 
 		final String dn;
 		final String certdn;
@@ -650,7 +622,7 @@ public class LdapPublisher extends BasePublisher {
 		ArrayList<LDAPModification> modSet = null;
 
 		if (!CertTools.isCA(cert)) {
-			oldEntry = searchOldEntity(username, ldapVersion, lc, certdn, userDN, email);
+			oldEntry = searchOldEntity(username, ldapVersion, certdn, userDN, email);
 			if (log.isDebugEnabled()) {
 				log.debug("Removing end user certificate from first available server of " + getHostnames());
 			}
@@ -680,7 +652,7 @@ public class LdapPublisher extends BasePublisher {
 		}
 
 		// Try all the listed servers
-		final Iterator<String> servers = getHostnameList().iterator();
+		final ServerIterator servers = new ServerIterator();
 		boolean isConnectionNotDone = true;
         if (log.isDebugEnabled() && (oldEntry == null)) {
             log.debug("Not modifying LDAP entry because there is no existing entry.");                      
@@ -688,21 +660,12 @@ public class LdapPublisher extends BasePublisher {
 		while ( oldEntry!=null && isConnectionNotDone && servers.hasNext()) {
 			isConnectionNotDone = false;
 			String currentServer = servers.next(); 
+			LDAPConnection lc = null;
 			if (log.isDebugEnabled()) {
 				log.debug("currentServer: "+currentServer);
 			}
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+				lc = connect(currentServer, ldapVersion);
 				// Add or modify the entry
 				if (modSet != null && getModifyExistingUsers()) {
 					if (removecert) {
@@ -727,7 +690,9 @@ public class LdapPublisher extends BasePublisher {
 				}
 			} catch (LDAPException e) {
 				isConnectionNotDone = true;
-				if (servers.hasNext()) {
+				if (servers.retryOnNewConnection(lc, e)) {
+					log.info("Lost the connection to " + currentServer + ". Trying again on a new connection.");
+				} else if (servers.hasNext()) {
 					log.warn("Failed to publish to " + currentServer + ". Trying next in list.");
 				} else {
 					String msg = intres.getLocalizedMessage("publisher.errorldapremove", dn);
@@ -739,13 +704,8 @@ public class LdapPublisher extends BasePublisher {
 				log.error(msg, e);
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// return the connection to the pool, or disconnect with the server
+				disconnect(currentServer, lc, isConnectionNotDone);
 			}
 		}
 		if (log.isTraceEnabled()) {
@@ -758,31 +718,21 @@ public class LdapPublisher extends BasePublisher {
 	 *  
 	 *  @param dn the DN from the certificate, can be used to extract search information or a LDAP DN
 	 */
-	protected LDAPEntry searchOldEntity(String username, int ldapVersion, LDAPConnection lc, String certDN, String userDN, String email) throws PublisherException {
+	protected LDAPEntry searchOldEntity(String username, int ldapVersion, String certDN, String userDN, String email) throws PublisherException {
 		LDAPEntry oldEntry = null; // return value
 		// Try all the listed servers
-		final Iterator<String> servers = getHostnameList().iterator();
+		final ServerIterator servers = new ServerIterator();
 		boolean connectionFailed;
 		do {
 			connectionFailed = false;
 			final String currentServer = servers.next();
+			LDAPConnection lc = null;
 			if (log.isDebugEnabled()) {
 				log.debug("Current server is: "+currentServer);
 			}
 			final String ldapdn = constructLDAPDN(certDN, userDN);
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = connect(currentServer, ldapVersion);
 				// try to read the old object
 				if (log.isDebugEnabled()) {
 					log.debug("Searching for old entry with DN '" + ldapdn+"'");
@@ -802,7 +752,9 @@ public class LdapPublisher extends BasePublisher {
 					}
 				} else {
 					connectionFailed = true;
-					if (servers.hasNext()) {
+					if (servers.retryOnNewConnection(lc, e)) {
+						log.info("Lost the connection to " + currentServer + ". Trying again on a new connection.");
+					} else if (servers.hasNext()) {
 						log.warn("Failed to publish to " + currentServer + ". Trying next in list.");
 					} else {
 						String msg = intres.getLocalizedMessage("publisher.errorldapbind", e.getMessage());
@@ -814,13 +766,8 @@ public class LdapPublisher extends BasePublisher {
 				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// return the connection to the pool, or disconnect with the server
+				disconnect(currentServer, lc, connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		return oldEntry;
@@ -890,14 +837,151 @@ public class LdapPublisher extends BasePublisher {
 		} while (connectionFailed && servers.hasNext()) ;
 	} 
 
-	protected LDAPConnection createLdapConnection() {
-		// Set timeouts
+	/**
+	 * Returns a connected and bound connection to an LDAP server. An idle connection from the pool of this publisher is used if
+	 * there is one, see {@link LdapConnectionPool}. The connection must be given back with {@link #disconnect(String, LDAPConnection, boolean)}.
+	 *
+	 * @param server hostname of the server
+	 * @param ldapVersion LDAP protocol version to bind with
+	 * @return a connected and bound connection
+	 * @throws LDAPException if the server could not be connected to or the bind failed
+	 * @throws UnsupportedEncodingException if the password could not be encoded
+	 */
+	protected LDAPConnection connect(final String server, final int ldapVersion) throws LDAPException, UnsupportedEncodingException {
+		final long start = System.nanoTime();
+		setTimeLimits();
+		final LdapConnectionPool pool = getConnectionPool(server);
+		LDAPConnection lc = pool == null ? null : pool.borrow();
+		if (lc != null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Using pooled connection to LDAP server " + server);
+			}
+			pool.recordBorrow(System.nanoTime() - start, false);
+			return lc;
+		}
+		lc = createLdapConnection();
+		try {
+			TCPTool.probeConnectionLDAP(server, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
+			// connect to the server
+			lc.connect(server, Integer.parseInt(getPort()));
+			// Execute a STARTTLS handshake if it was requested.
+			if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
+				if (log.isDebugEnabled()) {
+					log.debug("STARTTLS to LDAP server " + server);
+				}
+				lc.startTLS();
+			}
+			// authenticate to the server
+			lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+		} catch (LDAPException | UnsupportedEncodingException e) {
+			disconnect(server, lc, true);
+			throw e;
+		}
+		if (pool != null) {
+			pool.recordBorrow(System.nanoTime() - start, true);
+		}
+		return lc;
+	}
+
+	/**
+	 * Gives back a connection from {@link #connect(String, int)}. The connection is kept in the pool of this publisher for later
+	 * operations, unless pooling is disabled or the connection failed, in which case it is disconnected.
+	 *
+	 * @param server hostname of the server
+	 * @param lc the connection, or null if none was made
+	 * @param failed true if an operation on the connection failed
+	 */
+	protected void disconnect(final String server, final LDAPConnection lc, final boolean failed) {
+		if (lc == null) {
+			return;
+		}
+		final LdapConnectionPool pool = getConnectionPool(server);
+		if (pool != null) {
+			if (failed) {
+				pool.discard(lc);
+			} else {
+				pool.release(lc);
+			}
+			return;
+		}
+		try {
+			lc.disconnect(ldapDisconnectConstraints);
+		} catch (LDAPException e) {
+			String msg = intres.getLocalizedMessage("publisher.errordisconnect");
+			log.error(msg, e);
+		}
+	}
+
+	/**
+	 * Iterates the servers of this publisher, for trying an operation on each server until it succeeds. A server is returned
+	 * once more if the operation failed because a pooled connection had been lost, see {@link #retryOnNewConnection(LDAPConnection, LDAPException)}.
+	 */
+	protected class ServerIterator implements Iterator<String> {
+		private final Iterator<String> servers = getHostnameList().iterator();
+		private String currentServer = null;
+		private boolean retry = false;
+		private boolean retried = false;
+
+		@Override
+		public boolean hasNext() {
+			return retry || servers.hasNext();
+		}
+
+		@Override
+		public String next() {
+			if (retry) {
+				retry = false;
+				retried = true;
+			} else {
+				currentServer = servers.next();
+				retried = false;
+			}
+			return currentServer;
+		}
+
+		/**
+		 * Checks if an operation should be tried again on the current server, because the connection was lost after it was
+		 * connected and bound. This happens with pooled connections that the server has closed, for example when the server was
+		 * restarted or closed idle connections. The idle connections to the server are closed, so that the operation is tried again
+		 * on a new connection. An operation is only tried again once on each server.
+		 *
+		 * @param lc the connection that the operation failed on, or null if no connection was made
+		 * @param e the error of the operation
+		 * @return true if the current server is returned by {@link #next()} again
+		 */
+		public boolean retryOnNewConnection(final LDAPConnection lc, final LDAPException e) {
+			if (lc == null || retried || (e.getResultCode() != LDAPException.SERVER_DOWN && e.getResultCode() != LDAPException.CONNECT_ERROR)) {
+				return false;
+			}
+			final LdapConnectionPool pool = getConnectionPool(currentServer);
+			if (pool == null) {
+				return false;
+			}
+			pool.discardIdle();
+			retry = true;
+			return true;
+		}
+	}
+
+	/** @return the connection pool of this publisher for a server, or null if connection pooling is disabled */
+	private LdapConnectionPool getConnectionPool(final String server) {
+		// The connections depend on these settings as well, so the pool is replaced if they change
+		final int configuration = Objects.hash(getConnectionSecurity(), getLoginPassword(), getConnectionTimeOut(), getReadTimeOut(), getStoreTimeOut());
+		return LdapConnectionPool.getPool(getPublisherId(), server, getPort(), getLoginDN(), configuration, getConnectionTimeOut());
+	}
+
+	private void setTimeLimits() {
 		int connectiontimeout = getConnectionTimeOut();
 		ldapBindConstraints.setTimeLimit(connectiontimeout); 
 		ldapDisconnectConstraints.setTimeLimit(connectiontimeout);
 		ldapConnectionConstraints.setTimeLimit(connectiontimeout);
 		ldapSearchConstraints.setTimeLimit(getReadTimeOut());
 		ldapStoreConstraints.setTimeLimit(getStoreTimeOut());
+	}
+
+	protected LDAPConnection createLdapConnection() {
+		// Set timeouts
+		setTimeLimits();
 		if (log.isDebugEnabled()) {
 			log.debug("connecttimeout: "+ldapConnectionConstraints.getTimeLimit());
 			log.debug("bindtimeout: "+ldapBindConstraints.getTimeLimit());
@@ -20,7 +20,6 @@ import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.ejbca.core.model.InternalEjbcaResources;
-import org.ejbca.util.TCPTool;
 
 import com.keyfactor.util.CertTools;
 import com.novell.ldap.LDAPConnection;
@@ -73,34 +72,21 @@ public class LdapSearchPublisher extends LdapPublisher {
      *  @param certDN the DN from the certificate, can be used to extract search information or a LDAP DN
      *  @return an existing LDAPEntry, or null if not found
      */
-    protected LDAPEntry searchOldEntity(final String username, final int ldapVersion, final LDAPConnection lc, final String certDN, final String userDN, final String email) throws PublisherException {
+    protected LDAPEntry searchOldEntity(final String username, final int ldapVersion, final String certDN, final String userDN, final String email) throws PublisherException {
         LDAPEntry oldEntry = null; // return value
 
 		// Try all the listed servers
-		Iterator<String> servers = getHostnameList().iterator();
+		final ServerIterator servers = new ServerIterator();
 		boolean connectionFailed;
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
+			LDAPConnection lc = null;
 	        // PARTE 1: Search for an existing entry in the LDAP directory
 			//  If it exists, this will be returned to be populated
 			//  if not exist, nothing will be returned and a new LDAP entry created
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				log.debug("Connecting to " + currentServer);
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-
-				// authenticate to the server
-				log.debug("Logging in with BIND DN " + getLoginDN());
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = connect(currentServer, ldapVersion);
 				//searchFilter = "(&(objectclass=person)(uid=" + username + "))";
 				String searchFilter = getSearchFilter();
 				if (log.isDebugEnabled()) {
@@ -182,7 +168,9 @@ public class LdapSearchPublisher extends LdapPublisher {
 					log.info(msg);
 				} else {
 					connectionFailed = true;
-					if (servers.hasNext()) {
+					if (servers.retryOnNewConnection(lc, e)) {
+						log.info("Lost the connection to " + currentServer + ". Trying again on a new connection.");
+					} else if (servers.hasNext()) {
 						log.debug("Failed to publish to " + currentServer + ". Trying next in list.");
 					} else {
 		    			String msg = intres.getLocalizedMessage("publisher.errorldapbind", e.getMessage());
@@ -194,13 +182,8 @@ public class LdapSearchPublisher extends LdapPublisher {
 				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
 	            throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// return the connection to the pool, or disconnect with the server
+				disconnect(currentServer, lc, connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
         return oldEntry;
@@ -0,0 +1,260 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ra;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Progress of a bulk revocation. The matching certificates are revoked in chunks, and the job remembers where the last completed chunk
+ * ended, so that a job that has failed or been cancelled can be resumed from there.
+ * <p>
+ * The job object that is being updated is only used by the node that runs the job. Callers get copies from {@link #snapshot()}.
+ *
+ * @version $Id$
+ */
+public class BulkRevocationJob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum State {
+        /** Revoking certificates */
+        RUNNING,
+        /** Stopped at the end of a chunk after a request to cancel, can be resumed */
+        CANCELLED,
+        /** Stopped because a chunk failed, can be resumed */
+        FAILED,
+        /** All matching certificates have been processed */
+        COMPLETED
+    }
+
+    /** Result of revoking one chunk of certificates in a single transaction */
+    public static class ChunkResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int revoked;
+        private final int revokedSerialNumbers;
+        private final Set<Integer> caIds;
+        private final Set<Integer> publisherIds;
+
+        public ChunkResult(final int revoked, final Set<Integer> caIds, final Set<Integer> publisherIds) {
+            this(revoked, revoked, caIds, publisherIds);
+        }
+
+        public ChunkResult(final int revoked, final int revokedSerialNumbers, final Set<Integer> caIds, final Set<Integer> publisherIds) {
+            this.revoked = revoked;
+            this.revokedSerialNumbers = revokedSerialNumbers;
+            this.caIds = caIds;
+            this.publisherIds = publisherIds;
+        }
+
+        /** @return the number of certificates that were revoked */
+        public int getRevoked() {
+            return revoked;
+        }
+
+        /** @return the number of different serial numbers that certificates were revoked for. Several certificates can have the same
+         * serial number, for example certificates from an earlier CA with the same subject DN, or from both certificate tables. */
+        public int getRevokedSerialNumbers() {
+            return revokedSerialNumbers;
+        }
+
+        /** @return the ids of the CAs that issued the revoked certificates */
+        public Set<Integer> getCaIds() {
+            return caIds;
+        }
+
+        /** @return the ids of the publishers that the revocations were queued for */
+        public Set<Integer> getPublisherIds() {
+            return publisherIds;
+        }
+    }
+
+    private final int id;
+    private final BulkRevocationSelector selector;
+    private final int reason;
+    private final String administrator;
+    private final long created;
+    private State state = State.RUNNING;
+    private boolean cancelRequested = false;
+    private long total;
+    private long processed;
+    private long revoked;
+    private long skipped;
+    private String lastFingerprint = "";
+    private int serialNumberPosition = 0;
+    private final Set<Integer> caIds = new HashSet<>();
+    private long lastUpdate;
+    private String message;
+
+    public BulkRevocationJob(final int id, final BulkRevocationSelector selector, final int reason, final String administrator) {
+        this.id = id;
+        this.selector = selector;
+        this.reason = reason;
+        this.administrator = administrator;
+        this.created = System.currentTimeMillis();
+        this.lastUpdate = created;
+    }
+
+    private BulkRevocationJob(final BulkRevocationJob job) {
+        this.id = job.id;
+        this.selector = job.selector;
+        this.reason = job.reason;
+        this.administrator = job.administrator;
+        this.created = job.created;
+        this.state = job.state;
+        this.cancelRequested = job.cancelRequested;
+        this.total = job.total;
+        this.processed = job.processed;
+        this.revoked = job.revoked;
+        this.skipped = job.skipped;
+        this.lastFingerprint = job.lastFingerprint;
+        this.serialNumberPosition = job.serialNumberPosition;
+        this.caIds.addAll(job.caIds);
+        this.lastUpdate = job.lastUpdate;
+        this.message = job.message;
+    }
+
+    /** @return a copy of the current progress */
+    public synchronized BulkRevocationJob snapshot() {
+        return new BulkRevocationJob(this);
+    }
+
+    /** Starts or resumes the job from where the last completed chunk ended */
+    public synchronized void start(final long total) {
+        this.state = State.RUNNING;
+        this.cancelRequested = false;
+        this.total = total;
+        this.message = null;
+        this.lastUpdate = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a completed chunk.
+     *
+     * @param processed the number of certificates or serial numbers in the chunk
+     * @param result the result of the chunk
+     * @param lastFingerprint the fingerprint of the last certificate in the chunk, when selecting by criteria
+     * @param serialNumberPosition the position in the list of serial numbers after the chunk, when selecting by serial number
+     */
+    public synchronized void chunkCompleted(final int processed, final ChunkResult result, final String lastFingerprint,
+            final int serialNumberPosition) {
+        this.processed += processed;
+        this.revoked += result.getRevoked();
+        // A serial number can match several certificates, so only serial numbers without any revoked certificate are skipped
+        this.skipped += processed - (selector.isSerialNumberList() ? result.getRevokedSerialNumbers() : result.getRevoked());
+        this.caIds.addAll(result.getCaIds());
+        this.lastFingerprint = lastFingerprint;
+        this.serialNumberPosition = serialNumberPosition;
+        this.lastUpdate = System.currentTimeMillis();
+    }
+
+    /** Marks the job as stopped */
+    public synchronized void finish(final State state, final String message) {
+        this.state = state;
+        this.message = message;
+        this.lastUpdate = System.currentTimeMillis();
+    }
+
+    /** Asks the job to stop at the end of the current chunk */
+    public synchronized void requestCancel() {
+        this.cancelRequested = true;
+    }
+
+    public synchronized boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public BulkRevocationSelector getSelector() {
+        return selector;
+    }
+
+    /** @return the revocation reason, one of the RevokedCertInfo.REVOCATION_REASON_ constants */
+    public int getReason() {
+        return reason;
+    }
+
+    /** @return the administrator that started the job */
+    public String getAdministrator() {
+        return administrator;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /** @return true if the job has stopped before all certificates were processed */
+    public synchronized boolean isResumable() {
+        return state == State.CANCELLED || state == State.FAILED;
+    }
+
+    /** @return the number of certificates that matched the selector when the job was started or resumed */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /** @return the number of certificates or serial numbers that have been processed */
+    public synchronized long getProcessed() {
+        return processed;
+    }
+
+    public synchronized long getRevoked() {
+        return revoked;
+    }
+
+    /** @return the number of certificates or serial numbers that were processed but not revoked, because they were already revoked,
+     * could not be found, require approval or the administrator is not authorized to them */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /** @return the fingerprint of the last processed certificate, or an empty string if no chunk has been completed */
+    public synchronized String getLastFingerprint() {
+        return lastFingerprint;
+    }
+
+    /** @return the position in the list of serial numbers to continue from */
+    public synchronized int getSerialNumberPosition() {
+        return serialNumberPosition;
+    }
+
+    /** @return the ids of the CAs that have issued revoked certificates, which need a new CRL */
+    public synchronized Collection<Integer> getCaIds() {
+        return Collections.unmodifiableSet(new HashSet<>(caIds));
+    }
+
+    public synchronized long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /** @return a message explaining why the job failed, or a summary of the result */
+    public synchronized String getMessage() {
+        return message;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Bulk revocation " + id + " of " + selector + ": state=" + state + ", total=" + total + ", processed=" + processed + ", revoked="
+                + revoked + ", skipped=" + skipped + (message == null ? "" : ", message=" + message);
+    }
+}
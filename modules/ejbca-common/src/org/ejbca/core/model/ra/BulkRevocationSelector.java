@@ -0,0 +1,156 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ra;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Selects the certificates to revoke in a bulk revocation. The criteria are combined, so for example an issuer and a certificate profile
+ * selects the certificates issued by that CA with that profile. A list of serial numbers must be combined with an issuer.
+ *
+ * @version $Id$
+ */
+public class BulkRevocationSelector implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String issuerDn;
+    private Integer certificateProfileId;
+    private Integer endEntityProfileId;
+    private List<BigInteger> serialNumbers;
+
+    public BulkRevocationSelector() {
+    }
+
+    public BulkRevocationSelector(final String issuerDn, final Integer certificateProfileId, final Integer endEntityProfileId,
+            final List<BigInteger> serialNumbers) {
+        this.issuerDn = issuerDn;
+        this.certificateProfileId = certificateProfileId;
+        this.endEntityProfileId = endEntityProfileId;
+        this.serialNumbers = serialNumbers;
+    }
+
+    /** @return the DN of the issuing CA, or null to select from all CAs that the administrator is authorized to */
+    public String getIssuerDn() {
+        return issuerDn;
+    }
+
+    public void setIssuerDn(final String issuerDn) {
+        this.issuerDn = issuerDn;
+    }
+
+    /** @return the id of the certificate profile, or null to select certificates issued with any profile */
+    public Integer getCertificateProfileId() {
+        return certificateProfileId;
+    }
+
+    public void setCertificateProfileId(final Integer certificateProfileId) {
+        this.certificateProfileId = certificateProfileId;
+    }
+
+    /** @return the id of the end entity profile, or null to select certificates issued with any profile */
+    public Integer getEndEntityProfileId() {
+        return endEntityProfileId;
+    }
+
+    public void setEndEntityProfileId(final Integer endEntityProfileId) {
+        this.endEntityProfileId = endEntityProfileId;
+    }
+
+    /** @return the serial numbers to revoke, or null to select all certificates matching the other criteria */
+    public List<BigInteger> getSerialNumbers() {
+        return serialNumbers;
+    }
+
+    public void setSerialNumbers(final List<BigInteger> serialNumbers) {
+        this.serialNumbers = serialNumbers;
+    }
+
+    /** @return true if the certificates are selected from a list of serial numbers */
+    public boolean isSerialNumberList() {
+        return serialNumbers != null;
+    }
+
+    /**
+     * Checks that the selector does not select every certificate in the database by mistake.
+     * @throws IllegalArgumentException if no criteria are given, or if serial numbers are given without an issuer
+     */
+    public void validate() {
+        if (isSerialNumberList()) {
+            if (StringUtils.isEmpty(issuerDn)) {
+                throw new IllegalArgumentException("An issuer DN is required when revoking a list of serial numbers.");
+            }
+        } else if (StringUtils.isEmpty(issuerDn) && certificateProfileId == null && endEntityProfileId == null) {
+            throw new IllegalArgumentException("An issuer DN, certificate profile, end entity profile or list of serial numbers is required.");
+        }
+    }
+
+    /**
+     * Reads serial numbers from a file with one hexadecimal serial number per line. Empty lines and lines starting with '#' are ignored,
+     * and serial numbers may be written with a '0x' prefix or with colons between the bytes.
+     *
+     * @param reader the contents of the file
+     * @return the serial numbers, in the order they appear in the file
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if a line is not a hexadecimal number
+     */
+    public static List<BigInteger> readSerialNumbers(final Reader reader) throws IOException {
+        final List<BigInteger> ret = new ArrayList<>();
+        final BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String hex = StringUtils.remove(line, ':');
+            if (StringUtils.startsWithIgnoreCase(hex, "0x")) {
+                hex = hex.substring(2);
+            }
+            try {
+                ret.add(new BigInteger(hex, 16));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + " is not a hexadecimal serial number: " + line);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        final List<String> criteria = new ArrayList<>();
+        if (issuerDn != null) {
+            criteria.add("issuer '" + issuerDn + "'");
+        }
+        if (certificateProfileId != null) {
+            criteria.add("certificate profile " + certificateProfileId);
+        }
+        if (endEntityProfileId != null) {
+            criteria.add("end entity profile " + endEntityProfileId);
+        }
+        if (serialNumbers != null) {
+            criteria.add(serialNumbers.size() + " serial numbers");
+        }
+        return criteria.isEmpty() ? "no criteria" : StringUtils.join(criteria, ", ");
+    }
+}
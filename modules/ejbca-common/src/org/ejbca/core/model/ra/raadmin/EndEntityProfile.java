@@ -57,6 +57,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import static org.cesecore.certificates.certificate.ssh.SshEndEntityProfileFields.SSH_CRITICAL_OPTION_FORCE_COMMAND;
 import static org.cesecore.certificates.certificate.ssh.SshEndEntityProfileFields.SSH_CRITICAL_OPTION_FORCE_COMMAND_FIELD_NUMBER;
@@ -247,7 +248,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     public static final String TRUE  = "true";
     public static final String FALSE = "false";
     private static final String ERROR_PARSING_EEP = "Error parsing end entity profile.";
-    private static final String RELATIVE_TIME_FORMAT = "^\\d+:\\d?\\d:\\d?\\d$";
+    private static final Pattern RELATIVE_TIME_FORMAT = Pattern.compile("^\\d+:\\d?\\d:\\d?\\d$");
 
     // Constants used with field ordering
     public static final int FIELDTYPE = 0;
@@ -312,6 +313,9 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
             CertificateProfileConstants.CERTPROFILE_FIXED_SUBCA + ";" +
             CertificateProfileConstants.CERTPROFILE_FIXED_ROOTCA;
 
+    /** The field definitions compiled for validation of end entities. Discarded when a field is changed. */
+    private transient volatile EndEntityProfileValidationPlan validationPlan = null;
+
     /** Creates a new instance of EndEntity Profile with the default fields set. */
     public EndEntityProfile() {
     	super();
@@ -463,6 +467,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
 
     private void addFieldWithDefaults(final int parameter, final String parameterName, final String value, final Boolean required, final Boolean use,
             final Boolean modifyable, boolean copy, final LinkedHashMap<String,Object> validation) {
+        validationPlan = null;
     	final int size = getNumberOfField(parameter);
     	// Perform operations directly on "data" to save some cycles..
     	final int offset = (NUMBERBOUNDRARY*size) + parameter;
@@ -513,6 +518,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
      * @param number is the number of field.
      */
     public void removeField(final int parameter, final int number){
+        validationPlan = null;
     	// Remove field and move all file ids above.
     	final int size = getNumberOfField(parameter);
     	if (size > 0) {
@@ -601,6 +607,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
 	}
 
     public void setValue(final int parameter, final int number, final String value) {
+        validationPlan = null;
 		data.put(getFieldTypeBoundary(VALUE) + (NUMBERBOUNDRARY * number) + parameter, StringUtils.trim(value));
     }
 
@@ -609,6 +616,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     }
 
     public void setUse(final int parameter, final int number, final boolean use){
+        validationPlan = null;
     	data.put(getFieldTypeBoundary(USE) + (NUMBERBOUNDRARY * number) + parameter, use);
     }
 
@@ -617,6 +625,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     }
 
     public void setCopy(final int parameter, final int number, final boolean copy){
+        validationPlan = null;
         data.put(getFieldTypeBoundary(COPY) + (NUMBERBOUNDRARY * number) + parameter, copy);
     }
 
@@ -625,6 +634,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     }
 
     public void setRequired(final int parameter, final int number, final boolean required) {
+        validationPlan = null;
     	data.put(getFieldTypeBoundary(ISREQUIRED) + (NUMBERBOUNDRARY * number) + parameter, required);
     }
 
@@ -633,6 +643,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     }
 
     public void setModifyable(final int parameter, final int number, final boolean changeable) {
+        validationPlan = null;
     	data.put(getFieldTypeBoundary(MODIFYABLE) + (NUMBERBOUNDRARY * number) + parameter, changeable);
     }
 
@@ -641,6 +652,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     }
 
     public void setValidation(final int parameter, final int number, final Map<String,Serializable> validation){
+        validationPlan = null;
         Integer paramNum = getFieldTypeBoundary(VALIDATION) + (NUMBERBOUNDRARY * number) + parameter;
         if (validation != null) {
             data.put(paramNum, new LinkedHashMap<>(validation));
@@ -1767,6 +1779,12 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     	return (String) data.get(key);
     }
 
+    /** @return the default value, or list of allowed values, of a field, or null if there is none or if it is not a string */
+    String getValueOrNull(final int parameter, final int number) {
+        final Object value = data.get(getFieldTypeBoundary(VALUE) + (NUMBERBOUNDRARY * number) + parameter);
+        return value instanceof String ? (String) value : null;
+    }
+
     public void doesUserFulfillEndEntityProfile(final EndEntityInformation userData, final CertificateProfile certProfile, final boolean clearPwd, EABConfiguration eabConfiguration) throws EndEntityProfileValidationException {
         String subjectDirAttr = "";
         final ExtendedInformation ei = userData.getExtendedInformation();
@@ -1778,7 +1796,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     											userData.getCertificateProfileId(), clearPwd, userData.getKeyRecoverable(), userData.getSendNotification(),
     											userData.getTokenType(), userData.getCAId(), userData.getExtendedInformation(), certProfile, eabConfiguration);
         //Checking if the cardnumber is required and set
-        if (isRequired(CARDNUMBER, 0) && (userData.getCardNumber() == null || userData.getCardNumber().isEmpty())) {
+        if (getField(getValidationPlan(), CARDNUMBER, 0).isRequired() && (userData.getCardNumber() == null || userData.getCardNumber().isEmpty())) {
             throw new EndEntityProfileValidationException("Cardnumber is not set");
         }
     }
@@ -1786,6 +1804,9 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     public void doesUserFulfillEndEntityProfile(final String username, final String password, final String dn, final String subjectAltName, final String subjectDirAttr,
     		final String email, final int certificateProfileId, final boolean clearPwd, final boolean keyRecoverable, final boolean sendNotification, final int tokenType,
     		final int caId, final ExtendedInformation ei, final CertificateProfile certProfile, EABConfiguration eabConfiguration) throws EndEntityProfileValidationException {
+    	final EndEntityProfileValidationPlan plan = getValidationPlan();
+    	final EndEntityProfileValidationPlan.FieldRule passwordField = getField(plan, PASSWORD, 0);
+    	final boolean useMinPwdStrength = getField(plan, MINPWDSTRENGTH, 0).isUse();
     	if (useAutoGeneratedPasswd()) {
         	// Checks related to the use of auto generated passwords
     		if (password != null) {
@@ -1794,16 +1815,16 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     		if (log.isDebugEnabled()) {
     			log.debug("getAutoGenPwdStrength=" + getAutoGenPwdStrength() + " getMinPwdStrength=" + getMinPwdStrength());
     		}
-    		if (getUse(MINPWDSTRENGTH, 0) && (getAutoGenPwdStrength() < getMinPwdStrength())) {
+    		if (useMinPwdStrength && (getAutoGenPwdStrength() < getMinPwdStrength())) {
     			throw new EndEntityProfileValidationException("Generated password is not strong enough (" + getAutoGenPwdStrength() + " bits in generated password < " + getMinPwdStrength() + " bits required by end entity profile).");
     		}
     	} else {
         	// Checks related to the use of normal hashed passwords
-    		if (!isPasswordModifiable()) {
-    			if (!password.equals(getValue(PASSWORD, 0))) {
+    		if (!passwordField.isModifiable()) {
+    			if (!password.equals(passwordField.getValue())) {
     				throw new EndEntityProfileValidationException("Password didn't match requirement of it's profile.");
     			}
-    		} else if (isPasswordRequired() && StringUtils.isBlank(password)) {
+    		} else if (passwordField.isRequired() && StringUtils.isBlank(password)) {
     		    throw new EndEntityProfileValidationException("Password cannot be empty or null.");
     		}
     		// Assume a-zA-Z0-9 + 22 other printable chars = 72 different chars. Null password has 0 bits.
@@ -1811,19 +1832,20 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     		if (log.isDebugEnabled()) {
     			log.debug("passwordStrengthEstimate=" + passwordStrengthEstimate + " getMinPwdStrength=" + getMinPwdStrength());
     		}
-    		if (getUse(EndEntityProfile.MINPWDSTRENGTH, 0) && (passwordStrengthEstimate< getMinPwdStrength())) {
+    		if (useMinPwdStrength && (passwordStrengthEstimate< getMinPwdStrength())) {
     			throw new EndEntityProfileValidationException("Generated password is not strong enough (~" + passwordStrengthEstimate + " bits in specific password < " + getMinPwdStrength() + " bits required by end entity profile).");
     		}
     	}
     	// Checks related to the use of clear text passwords
-    	if (!getUse(CLEARTEXTPASSWORD, 0) && clearPwd) {
+    	final EndEntityProfileValidationPlan.FieldRule clearTextPasswordField = getField(plan, CLEARTEXTPASSWORD, 0);
+    	if (!clearTextPasswordField.isUse() && clearPwd) {
     		throw new EndEntityProfileValidationException("Clearpassword (used in batch processing) cannot be used.");
     	}
-    	if (isRequired(CLEARTEXTPASSWORD, 0)) {
-    		if (getValue(CLEARTEXTPASSWORD, 0).equals(TRUE) && !clearPwd) {
+    	if (clearTextPasswordField.isRequired()) {
+    		if (clearTextPasswordField.getValue().equals(TRUE) && !clearPwd) {
     			throw new EndEntityProfileValidationException("Clearpassword (used in batch processing) cannot be false.");
     		}
-    		if (getValue(CLEARTEXTPASSWORD, 0).equals(FALSE) && clearPwd) {
+    		if (clearTextPasswordField.getValue().equals(FALSE) && clearPwd) {
     			throw new EndEntityProfileValidationException("Clearpassword (used in batch processing) cannot be true.");
     		}
     	}
@@ -1841,106 +1863,78 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
             throw new EndEntityProfileValidationException("Certificate Profile ID " + certificateProfileId + ", referenced by End Entity, does not exist");
         }
     	
+    	final EndEntityProfileValidationPlan plan = getValidationPlan();
     	if(getProfileType()==PROFILE_TYPE_DEFAULT) {
-    	    validateDefaultProfileData(username, dn, subjectAltName, subjectDirAttr, email);
+    	    validateDefaultProfileData(plan, username, dn, subjectAltName, subjectDirAttr, email);
     	} else {
         	validateSshCertificateData(subjectAltName, ei);
     	}
     	// Check username against its regex validator.
         checkUsernameWithValidators(username);
     	// Check contents of username
-    	checkIfDataFulfillProfile(USERNAME, 0, username, "Username", null);
+    	checkIfDataFulfillProfile(plan, USERNAME, 0, username, "Username", null);
     	// Check Email address.
     	if (email == null) {
     		email = "";
     	}
-    	checkIfDomainFulfillProfile(EMAIL, 0, email, "Email");
+    	checkIfDomainFulfillProfile(plan, EMAIL, 0, email, "Email");
     	// Make sure that every value has a corresponding field in the entity profile
 
         
     	// Check for keyrecoverable flag.
-    	if (!getUse(KEYRECOVERABLE, 0) && keyRecoverable) {
+    	final EndEntityProfileValidationPlan.FieldRule keyRecoverableField = getField(plan, KEYRECOVERABLE, 0);
+    	if (!keyRecoverableField.isUse() && keyRecoverable) {
     		throw new EndEntityProfileValidationException("Key Recoverable cannot be used.");
     	}
-    	if (isRequired(KEYRECOVERABLE, 0) && getValue(KEYRECOVERABLE, 0).equals(TRUE)) {
+    	if (keyRecoverableField.isRequired() && keyRecoverableField.getValue().equals(TRUE)) {
     	    if(tokenType == SecConst.TOKEN_SOFT_BROWSERGEN) {
     	        throw new EndEntityProfileValidationException("Key Recoverable is required, but can't be used for User Generated Tokens.");
     	    }
-    		if (getValue(KEYRECOVERABLE, 0).equals(TRUE) && !keyRecoverable) {
+    		if (keyRecoverableField.getValue().equals(TRUE) && !keyRecoverable) {
     			throw new EndEntityProfileValidationException("Key Recoverable is required for this End Entity Profile.");
     		}
-    		if (getValue(KEYRECOVERABLE, 0).equals(FALSE) && keyRecoverable) {
+    		if (keyRecoverableField.getValue().equals(FALSE) && keyRecoverable) {
     			throw new EndEntityProfileValidationException("Key Recoverable cannot be set in current end entity profile.");
     		}
     	}
     	// Check for send notification flag.
-    	if (!getUse(SENDNOTIFICATION, 0) && sendNotification) {
+    	final EndEntityProfileValidationPlan.FieldRule sendNotificationField = getField(plan, SENDNOTIFICATION, 0);
+    	if (!sendNotificationField.isUse() && sendNotification) {
     		throw new EndEntityProfileValidationException("Email notification cannot be used.");
     	}
-    	if (isRequired(SENDNOTIFICATION, 0)) {
-    		if (getValue(SENDNOTIFICATION, 0).equals(TRUE) && !sendNotification) {
+    	if (sendNotificationField.isRequired()) {
+    		if (sendNotificationField.getValue().equals(TRUE) && !sendNotification) {
     			throw new EndEntityProfileValidationException("Email notification is required.");
     		}
-    		if (getValue(SENDNOTIFICATION, 0).equals(FALSE) && sendNotification) {
+    		if (sendNotificationField.getValue().equals(FALSE) && sendNotification) {
     			throw new EndEntityProfileValidationException("Email notification cannot be set in current end entity profile.");
     		}
     	}
     	// Check if certificate profile is among available certificate profiles.
-    	String[] availableCertProfiles;
-    	try {
-    		availableCertProfiles = getValue(AVAILCERTPROFILES, 0).split(SPLITCHAR);
-    	} catch (Exception e) {
+    	final EndEntityProfileValidationPlan.FieldRule availableCertProfiles = getField(plan, AVAILCERTPROFILES, 0);
+    	if (!availableCertProfiles.isValuePresent()) {
     		throw new EndEntityProfileValidationException(ERROR_PARSING_EEP);
     	}
-    	if (availableCertProfiles == null) {
-    		throw new EndEntityProfileValidationException("Error Available certificate profiles is null.");
-    	}
-    	final String certificateProfileIdString = String.valueOf(certificateProfileId);
-    	boolean certProfileFound = false;
-    	for (final String currentAvailableCertProfile : availableCertProfiles) {
-    		if (certificateProfileIdString.equals(currentAvailableCertProfile)) {
-    			certProfileFound = true;
-    			break;
-    		}
-    	}
-    	if (!certProfileFound) {
+    	if (!availableCertProfiles.hasValue(String.valueOf(certificateProfileId))) {
     		throw new EndEntityProfileValidationException("Couldn't find certificate profile (" + certificateProfileId + ") among available certificate profiles.");
     	}
     	// Check if tokentype is among available token types.
-    	String[] availableSoftTokenTypes;
-    	try {
-    		availableSoftTokenTypes = getValue(AVAILKEYSTORE, 0).split(SPLITCHAR);
-    	} catch (Exception e) {
+    	final EndEntityProfileValidationPlan.FieldRule availableTokenTypes = getField(plan, AVAILKEYSTORE, 0);
+    	if (!availableTokenTypes.isValuePresent()) {
     		throw new EndEntityProfileValidationException(ERROR_PARSING_EEP);
     	}
-    	if (availableSoftTokenTypes == null) {
-    		throw new EndEntityProfileValidationException("Error available  token types is null.");
-    	}
-    	final String tokenTypeString = String.valueOf(tokenType);
-    	boolean softTokenTypeFound = false;
-    	for (final String currentAvailableSoftTokenType : availableSoftTokenTypes) {
-    		if (tokenTypeString.equals(currentAvailableSoftTokenType)) {
-    			softTokenTypeFound = true;
-    			break;
-    		}
-    	}
-    	if (!softTokenTypeFound) {
+    	if (!availableTokenTypes.hasValue(String.valueOf(tokenType))) {
     		throw new EndEntityProfileValidationException("Soft token type is not available in End Entity Profile.");
     	}
     	// If soft token check for hardwaretoken issuer id = 0.
 
     	// Check if ca id is among available ca ids.
-    	String[] availableCaIds;
-    	try {
-    		availableCaIds = getValue(AVAILCAS, 0).split(SPLITCHAR);
-    	} catch (Exception e) {
+    	final EndEntityProfileValidationPlan.FieldRule availableCaIds = getField(plan, AVAILCAS, 0);
+    	if (!availableCaIds.isValuePresent()) {
     		throw new EndEntityProfileValidationException(ERROR_PARSING_EEP);
     	}
-    	if (availableCaIds == null) {
-    		throw new EndEntityProfileValidationException("Error End Entity Profiles Available CAs is null.");
-    	}
     	boolean caIdFound = false;
-    	for (final String currentAvailableCaId : availableCaIds) {
+    	for (final String currentAvailableCaId : availableCaIds.getValues()) {
     		final int tmp = Integer.parseInt(currentAvailableCaId);
     		if (tmp == caId || tmp == SecConst.ALLCAS) {
     			caIdFound = true;
@@ -1961,8 +1955,10 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     	}
     	final Date now = new Date();
     	Date startTimeDate = null;
-    	if (getUse(STARTTIME, 0) && startTime != null && !startTime.equals("")) {
-    		if (startTime.matches(RELATIVE_TIME_FORMAT)) { //relative time
+    	final boolean useStartTime = getField(plan, STARTTIME, 0).isUse();
+    	final boolean useEndTime = getField(plan, ENDTIME, 0).isUse();
+    	if (useStartTime && startTime != null && !startTime.equals("")) {
+    		if (RELATIVE_TIME_FORMAT.matcher(startTime).matches()) { //relative time
     			final String[] startTimeArray = startTime.split(":");
     			if (Long.parseLong(startTimeArray[0]) < 0 || Long.parseLong(startTimeArray[1]) < 0 || Long.parseLong(startTimeArray[2]) < 0) {
     				throw new EndEntityProfileValidationException("Cannot use negtive relative time.");
@@ -1980,8 +1976,8 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     		}
     	}
     	Date endTimeDate = null;
-    	if (getUse(ENDTIME, 0) && endTime != null && !endTime.equals("")) {
-    		if (endTime.matches(RELATIVE_TIME_FORMAT)) { //relative time
+    	if (useEndTime && endTime != null && !endTime.equals("")) {
+    		if (RELATIVE_TIME_FORMAT.matcher(endTime).matches()) { //relative time
     			final String[] endTimeArray = endTime.split(":");
     			if (Long.parseLong(endTimeArray[0]) < 0 || Long.parseLong(endTimeArray[1]) < 0 || Long.parseLong(endTimeArray[2]) < 0) {
     				throw new EndEntityProfileValidationException("Cannot use negtive relative time.");
@@ -2001,7 +1997,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     		}
     	}
     	if ((startTimeDate != null) && (endTimeDate != null)) {
-    		if (getUse(STARTTIME, 0) && getUse(ENDTIME, 0) && !startTimeDate.before(endTimeDate)) {
+    		if (useStartTime && useEndTime && !startTimeDate.before(endTimeDate)) {
     			throw new EndEntityProfileValidationException("Dates must be in right order. " + startTime + " " + endTime + " " +
     					ValidityDate.formatAsUTC(startTimeDate) + " " + ValidityDate.formatAsUTC(endTimeDate));
     		}
@@ -2019,19 +2015,21 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     	if (ei != null) {
     		issuanceRevReason = ei.getCustomData(ExtendedInformation.CUSTOM_REVOCATIONREASON);
     	}
-    	if ((issuanceRevReason != null) && !getUse(ISSUANCEREVOCATIONREASON, 0)) {
+    	final EndEntityProfileValidationPlan.FieldRule issuanceRevReasonField = getField(plan, ISSUANCEREVOCATIONREASON, 0);
+    	if ((issuanceRevReason != null) && !issuanceRevReasonField.isUse()) {
     		throw new EndEntityProfileValidationException("Issuance revocation reason used, but not permitted by profile.");
     	}
-    	if (getUse(ISSUANCEREVOCATIONREASON, 0) && !isModifyable(ISSUANCEREVOCATIONREASON, 0)) {
-    		final String value = getValue(ISSUANCEREVOCATIONREASON, 0);
+    	if (issuanceRevReasonField.isUse() && !issuanceRevReasonField.isModifiable()) {
+    		final String value = issuanceRevReasonField.getValue();
     		if (!StringUtils.equals(issuanceRevReason, value)) {
     			throw new EndEntityProfileValidationException("Issuance revocation reason '"+issuanceRevReason+"' does not match required value '"+value+"'.");
     		}
     	}
     	// Check maximum number of failed logins
-    	if (getUse(MAXFAILEDLOGINS, 0) && !isModifyable(MAXFAILEDLOGINS,0)) {
+    	final EndEntityProfileValidationPlan.FieldRule maxFailedLoginsField = getField(plan, MAXFAILEDLOGINS, 0);
+    	if (maxFailedLoginsField.isUse() && !maxFailedLoginsField.isModifiable()) {
     		// If we MUST have MAXFAILEDLOGINS, ei can not be null
-    		if ((ei == null) || !getValue(MAXFAILEDLOGINS, 0).equals(Integer.toString(ei.getMaxLoginAttempts()))) {
+    		if ((ei == null) || !maxFailedLoginsField.getValue().equals(Integer.toString(ei.getMaxLoginAttempts()))) {
     			throw new EndEntityProfileValidationException("Max failed logins is not modifiable.");
     		}
     	}
@@ -2058,8 +2056,8 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
         }
     }
     
-    private void validateDefaultProfileData(final String username, final String dn, final String subjectAltName, final String subjectDirAttr,
-            String email) throws EndEntityProfileValidationException {
+    private void validateDefaultProfileData(final EndEntityProfileValidationPlan plan, final String username, final String dn, final String subjectAltName,
+            final String subjectDirAttr, String email) throws EndEntityProfileValidationException {
         // get a DNFieldExtractor used to validate DN fields. Multi-value RDNs are "converted" into non-multi-value RDNs
         // just to re-use standard validation mechanisms.
         // DNFieldextractor validates (during construction) that only components valid for multi-value use are used.
@@ -2089,16 +2087,16 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
             throw new EndEntityProfileValidationException("Unsupported Subject Directory Attribute Field found in:" + subjectDirAttr);
         }
         // Make sure that all required fields exist
-        checkIfAllRequiredFieldsExists(subjectDnFields, subjectAltNames, subjectDirAttrs, username, email);
+        checkIfAllRequiredFieldsExists(plan, subjectDnFields, subjectAltNames, subjectDirAttrs, username, email);
         // Make sure that there are enough fields to cover all required in profile
-        checkIfForIllegalNumberOfFields(subjectDnFields, subjectAltNames, subjectDirAttrs);
+        checkIfForIllegalNumberOfFields(plan, subjectDnFields, subjectAltNames, subjectDirAttrs);
         // Check that all fields pass the validators (e.g. regex), if any
-        checkWithValidators(subjectDnFields, subjectAltNames);
+        checkWithValidators(plan, subjectDnFields, subjectAltNames);
         
-        checkIfFieldsMatch(subjectDnFields, DNFieldExtractor.TYPE_SUBJECTDN, email, null);
+        checkIfFieldsMatch(plan, subjectDnFields, DNFieldExtractor.TYPE_SUBJECTDN, email, null);
         final String commonName = subjectDnFields.getField(DNFieldExtractor.CN, 0);
         
-        checkIfFieldsMatch(subjectAltNames, DNFieldExtractor.TYPE_SUBJECTALTNAME, email, commonName);
+        checkIfFieldsMatch(plan, subjectAltNames, DNFieldExtractor.TYPE_SUBJECTALTNAME, email, commonName);
         // Check contents of Subject Directory Attributes fields.
         final HashMap<Integer,Integer> subjectDirAttrNumbers = subjectDirAttrs.getNumberOfFields();
         final List<Integer> dirAttrIds = DNFieldExtractor.getUseFields(DNFieldExtractor.TYPE_SUBJECTDIRATTR);
@@ -2109,19 +2107,19 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
                 checkForIllegalChars(field);
                 switch (dirAttrId) {
                 case DNFieldExtractor.COUNTRYOFCITIZENSHIP:
-                    checkIfISO3166FulfillProfile(DnComponents.COUNTRYOFCITIZENSHIP, j, field, "COUNTRYOFCITIZENSHIP");
+                    checkIfISO3166FulfillProfile(plan, DnComponents.COUNTRYOFCITIZENSHIP, j, field, "COUNTRYOFCITIZENSHIP");
                     break;
                 case DNFieldExtractor.COUNTRYOFRESIDENCE:
-                    checkIfISO3166FulfillProfile(DnComponents.COUNTRYOFRESIDENCE, j, field, "COUNTRYOFRESIDENCE");
+                    checkIfISO3166FulfillProfile(plan, DnComponents.COUNTRYOFRESIDENCE, j, field, "COUNTRYOFRESIDENCE");
                     break;
                 case DNFieldExtractor.DATEOFBIRTH:
-                    checkIfDateFulfillProfile(DnComponents.DATEOFBIRTH, j, field, "DATEOFBIRTH");
+                    checkIfDateFulfillProfile(plan, DnComponents.DATEOFBIRTH, j, field, "DATEOFBIRTH");
                     break;
                 case DNFieldExtractor.GENDER:
-                    checkIfGenderFulfillProfile(DnComponents.GENDER, j, field, "GENDER");
+                    checkIfGenderFulfillProfile(plan, DnComponents.GENDER, j, field, "GENDER");
                     break;
                 default:
-                    checkIfDataFulfillProfile(DnComponents.dnIdToProfileName(dirAttrId), j, field, DnComponents.getErrTextFromDnId(dirAttrId), email);
+                    checkIfDataFulfillProfile(plan, DnComponents.dnIdToProfileName(dirAttrId), j, field, DnComponents.getErrTextFromDnId(dirAttrId), email);
                 }
             }
         }
@@ -2265,33 +2263,36 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
      * This function tries to match each field in the profile to a corresponding field in the DN/AN/AD-fields.
      * Can not be used for DNFieldExtractor.TYPE_SUBJECTDIRATTR yet.
      *
+     * @param plan the compiled field definitions of this profile
      * @param fields fields
      * @param type One of DNFieldExtractor.TYPE_SUBJECTDN, DNFieldExtractor.TYPE_SUBJECTALTNAME
      * @param email The end entity's email address
      * @throws EndEntityProfileValidationException End entity profile validation exception
      */
-    private void checkIfFieldsMatch(final DNFieldExtractor fields, final int type, final String email, final String commonName) throws EndEntityProfileValidationException {
-    	final int REQUIRED_FIELD		= 2;
-    	final int NONMODIFYABLE_FIELD	= 1;
-    	final int MATCHED_FIELD			= -1;
+    private void checkIfFieldsMatch(final EndEntityProfileValidationPlan plan, final DNFieldExtractor fields, final int type, final String email,
+            final String commonName) throws EndEntityProfileValidationException {
+    	final int REQUIRED_FIELD		= EndEntityProfileValidationPlan.REQUIRED_FIELD;
+    	final int NONMODIFYABLE_FIELD	= EndEntityProfileValidationPlan.NONMODIFIABLE_FIELD;
+    	final int MATCHED_FIELD			= EndEntityProfileValidationPlan.MATCHED_FIELD;
     	final List<Integer> dnIds = DNFieldExtractor.getUseFields(type);
     	// For each type of field
         for (final int dnId : dnIds) {
             final int profileID = DnComponents.dnIdToProfileId(dnId);
             final int dnFieldExtractorID = DnComponents.profileIdToDnId(profileID);
             final int nof = fields.getNumberOfFields(dnFieldExtractorID);
-            final int numberOfProfileFields = getNumberOfField(profileID);
+            final int numberOfProfileFields = plan.getNumberOfField(profileID);
             if (nof == 0 && numberOfProfileFields == 0) {
                 continue;    // Nothing to see here..
             }
+            final String profileName = DnComponents.dnIdToProfileName(dnId);
             // Create array with all entries of that type
             final String[] subjectsToProcess = new String[nof];
             for (int j = 0; j < nof; j++) {
                 String fieldValue = fields.getField(dnFieldExtractorID, j);
                 // Only keep domain for comparison of RFC822NAME, DNEMAILADDRESS and UPN fields
-                if (DnComponents.RFC822NAME.equals(DnComponents.dnIdToProfileName(dnId)) || DnComponents.DNEMAILADDRESS.equals(DnComponents.dnIdToProfileName(dnId)) || DnComponents.UPN.equals(DnComponents.dnIdToProfileName(dnId))) {
+                if (DnComponents.RFC822NAME.equals(profileName) || DnComponents.DNEMAILADDRESS.equals(profileName) || DnComponents.UPN.equals(profileName)) {
                     //Don't split RFC822NAME addresses.
-                    if (!DnComponents.RFC822NAME.equals(DnComponents.dnIdToProfileName(dnId))) {
+                    if (!DnComponents.RFC822NAME.equals(profileName)) {
                         if (!StringUtils.contains(fieldValue, '@')) { 
                             throw new EndEntityProfileValidationException("Field value DNEMAIL and UPN must contain an @ character: " + fieldValue);
                         }
@@ -2299,77 +2300,64 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
                     }
                 } else {
                     // Check that postalAddress has #der_encoding_in_hex format, i.e. a full der sequence in hex format
-                    if (DnComponents.POSTALADDRESS.equals(DnComponents.dnIdToProfileName(dnId))) {
+                    if (DnComponents.POSTALADDRESS.equals(profileName)) {
                         if (!StringUtils.startsWith(fieldValue, "#30")) {
-                            throw new EndEntityProfileValidationException(DnComponents.dnIdToProfileName(dnId) + " (" + fieldValue + ") does not seem to be in #der_encoding_in_hex format. See \"End_Entity_Profiles.html\" for more information about the postalAddress (2.5.4.16) field.");
+                            throw new EndEntityProfileValidationException(profileName + " (" + fieldValue + ") does not seem to be in #der_encoding_in_hex format. See \"End_Entity_Profiles.html\" for more information about the postalAddress (2.5.4.16) field.");
                         }
                     }
                 }
                 subjectsToProcess[j] = fieldValue;
             }
             //	Create array with profile values 3 = required and non-mod, 2 = required, 1 = non-modifiable, 0 = neither
-            final int[] profileCrossOffList = new int[numberOfProfileFields];
-            for (int j = 0; j < getNumberOfField(profileID); j++) {
-                profileCrossOffList[j] += (isModifyable(profileID, j) ? 0 : NONMODIFYABLE_FIELD) + (isRequired(profileID, j) ? REQUIRED_FIELD : 0);
-            }
+            final int[] profileCrossOffList = plan.getMatchClasses(profileID);
+            // The profile fields in the order they are matched, required and non-modifiable first
+            final int[] matchOrder = plan.getMatchOrder(profileID);
             // Start by matching email strings
-            if (DnComponents.RFC822NAME.equals(DnComponents.dnIdToProfileName(dnId)) || DnComponents.DNEMAILADDRESS.equals(DnComponents.dnIdToProfileName(dnId))) {
-                for (int k = 3; k >= 0; k--) {
-                    //	For every value in profile
-                    for (int l = 0; l < profileCrossOffList.length; l++) {
-                        if (profileCrossOffList[l] == k) {
-                            //	Match with every value in field-array
-                            for (int m = 0; m < subjectsToProcess.length; m++) {
-                                if (subjectsToProcess[m] != null && profileCrossOffList[l] != MATCHED_FIELD) {
-                                    if (getUse(profileID, l) || !DnComponents.RFC822NAME.equals(DnComponents.dnIdToProfileName(dnId))) {
-                                        /*
-                                         * IF the component is E-Mail (not RFC822NAME)
-                                         * OR if it is RFC822NAME AND E-Mail field from DN should be used
-                                         */
-                                        if (fields.getField(dnFieldExtractorID, m).equals(email)) {
-                                            subjectsToProcess[m] = null;
-                                            profileCrossOffList[l] = MATCHED_FIELD;
-                                        }
-                                    }
+            if (DnComponents.RFC822NAME.equals(profileName) || DnComponents.DNEMAILADDRESS.equals(profileName)) {
+                //	For every value in profile
+                for (final int l : matchOrder) {
+                    //	Match with every value in field-array
+                    for (int m = 0; m < subjectsToProcess.length && profileCrossOffList[l] != MATCHED_FIELD; m++) {
+                        if (subjectsToProcess[m] != null) {
+                            if (plan.getField(profileID, l).isUse() || !DnComponents.RFC822NAME.equals(profileName)) {
+                                /*
+                                 * IF the component is E-Mail (not RFC822NAME)
+                                 * OR if it is RFC822NAME AND E-Mail field from DN should be used
+                                 */
+                                if (fields.getField(dnFieldExtractorID, m).equals(email)) {
+                                    subjectsToProcess[m] = null;
+                                    profileCrossOffList[l] = MATCHED_FIELD;
                                 }
                             }
                         }
                     }
                 }
             }
-            if (DnComponents.DNSNAME.equals(DnComponents.dnIdToProfileName(dnId))) {
-                verifyAltNameFieldMatchesCnValue(fields, commonName, MATCHED_FIELD, profileID, dnFieldExtractorID, subjectsToProcess, profileCrossOffList, DnComponents.DNSNAME);
+            if (DnComponents.DNSNAME.equals(profileName)) {
+                verifyAltNameFieldMatchesCnValue(plan, fields, commonName, MATCHED_FIELD, profileID, dnFieldExtractorID, subjectsToProcess, profileCrossOffList, matchOrder, DnComponents.DNSNAME);
             }
-            if (DnComponents.UPN.equals(DnComponents.dnIdToProfileName(dnId))) {
-                verifyAltNameFieldMatchesCnValue(fields, commonName, MATCHED_FIELD, profileID, dnFieldExtractorID, subjectsToProcess, profileCrossOffList, DnComponents.UPN);
+            if (DnComponents.UPN.equals(profileName)) {
+                verifyAltNameFieldMatchesCnValue(plan, fields, commonName, MATCHED_FIELD, profileID, dnFieldExtractorID, subjectsToProcess, profileCrossOffList, matchOrder, DnComponents.UPN);
             }
             // For every field of this type in profile (start with required and non-modifiable, 2 + 1)
-            for (int k = 3; k >= 0; k--) {
-                // For every value in profile
-                for (int l = 0; l < profileCrossOffList.length; l++) {
-                    if (profileCrossOffList[l] == k) {
-                        // Match with every value in field-array
-                        for (int m = 0; m < subjectsToProcess.length; m++) {
-                            if (subjectsToProcess[m] != null && profileCrossOffList[l] != MATCHED_FIELD) {
-                                // Match actual value if required + non-modifiable or non-modifiable
-                                if ((k == (REQUIRED_FIELD + NONMODIFYABLE_FIELD) || k == (NONMODIFYABLE_FIELD))) {
-                                    // Try to match with all possible values
-                                    String[] fixedValues = getValue(profileID, l).split(SPLITCHAR);
-                                    for (String fixedValue : fixedValues) {
-                                        if (subjectsToProcess[m] != null && subjectsToProcess[m].trim().equals(fixedValue.trim())) {
-                                            // Remove matched pair
-                                            subjectsToProcess[m] = null;
-                                            profileCrossOffList[l] = MATCHED_FIELD;
-                                            break;
-                                        }
-                                    }
-                                    // Otherwise just match present fields
-                                } else {
-                                    // Remove matched pair
-                                    subjectsToProcess[m] = null;
-                                    profileCrossOffList[l] = MATCHED_FIELD;
-                                }
+            for (final int l : matchOrder) {
+                final int k = profileCrossOffList[l];
+                // Match with every value in field-array
+                for (int m = 0; m < subjectsToProcess.length && profileCrossOffList[l] != MATCHED_FIELD; m++) {
+                    if (subjectsToProcess[m] != null) {
+                        // Match actual value if required + non-modifiable or non-modifiable
+                        if ((k == (REQUIRED_FIELD + NONMODIFYABLE_FIELD) || k == (NONMODIFYABLE_FIELD))) {
+                            // Try to match with all possible values
+                            if (plan.getField(profileID, l).hasTrimmedValue(subjectsToProcess[m].trim())) {
+                                // Remove matched pair
+                                subjectsToProcess[m] = null;
+                                profileCrossOffList[l] = MATCHED_FIELD;
                             }
+                            // Otherwise just match present fields
+                        } else {
+                            // Remove matched pair
+                            subjectsToProcess[m] = null;
+                            profileCrossOffList[l] = MATCHED_FIELD;
                         }
                     }
                 }
@@ -2378,45 +2366,42 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
             for (int j = 0; j < nof; j++) {
                 if (subjectsToProcess[j] != null) {
                     throw new EndEntityProfileValidationException("End entity profile does not contain matching field for " +
-                            DnComponents.dnIdToProfileName(dnId) + " with value \"" + subjectsToProcess[j] + "\".");
+                            profileName + " with value \"" + subjectsToProcess[j] + "\".");
                 }
             }
             // If not all required fields in profile were found in subject
-            for (int j = 0; j < getNumberOfField(profileID); j++) {
+            for (int j = 0; j < numberOfProfileFields; j++) {
                 if (profileCrossOffList[j] >= REQUIRED_FIELD) {
-                    throw new EndEntityProfileValidationException("Data does not contain required " + DnComponents.dnIdToProfileName(dnId) + " field.");
+                    throw new EndEntityProfileValidationException("Data does not contain required " + profileName + " field.");
                 }
             }
         }
     } // checkIfFieldsMatch
 
-    private void verifyAltNameFieldMatchesCnValue(final DNFieldExtractor fields, String commonName, final int matchedField, final int profileID,
-                                                  final int dnFieldExtractorID, String[] subjectsToProcess, int[] profileCrossOffList,
-                                                  String fieldName) {
-        //0,1,2,3 are combinations of modifiable and required
-        for (int k = 3; k >= 0; k--) {
-            //	For every value in profile
-            for (int l = 0; l < profileCrossOffList.length; l++) {
-                if (profileCrossOffList[l] == k) {
-                    //	Match with every value in field-array
-                    for (int m = 0; m < subjectsToProcess.length; m++) {
-                        if (subjectsToProcess[m] != null && profileCrossOffList[l] != matchedField) {
-                            if (getCopy(profileID, l)) {
-                                String expectedValue = commonName;
-                                if(DnComponents.UPN.equalsIgnoreCase(fieldName) && 
-                                        StringUtils.isNotBlank(getValue(profileID, l))) {
-                                    expectedValue += "@" + getValue(profileID, l);
-                                }
-                                 /*
-                                 * IF the component is DNSNAME and getCopy is true, value from CN should be used
-                                 * IF the component is UPN and getCopy is true, value from CN or CN@[value of UPN field] should be used
-                                 */
-                                if (fields.getField(dnFieldExtractorID, m).equals(expectedValue)) {
-                                    subjectsToProcess[m] = null;
-                                    profileCrossOffList[l] = matchedField;
-                                }
-                            }
-                        }
+    private void verifyAltNameFieldMatchesCnValue(final EndEntityProfileValidationPlan plan, final DNFieldExtractor fields, String commonName,
+                                                  final int matchedField, final int profileID, final int dnFieldExtractorID, String[] subjectsToProcess,
+                                                  int[] profileCrossOffList, final int[] matchOrder, String fieldName) {
+        //	For every value in profile, in the order of the combinations of modifiable and required
+        for (final int l : matchOrder) {
+            final EndEntityProfileValidationPlan.FieldRule fieldRule = plan.getField(profileID, l);
+            if (!fieldRule.isCopy()) {
+                continue;
+            }
+            //	Match with every value in field-array
+            for (int m = 0; m < subjectsToProcess.length && profileCrossOffList[l] != matchedField; m++) {
+                if (subjectsToProcess[m] != null) {
+                    String expectedValue = commonName;
+                    if(DnComponents.UPN.equalsIgnoreCase(fieldName) && 
+                            StringUtils.isNotBlank(fieldRule.getValue())) {
+                        expectedValue += "@" + fieldRule.getValue();
+                    }
+                     /*
+                     * IF the component is DNSNAME and getCopy is true, value from CN should be used
+                     * IF the component is UPN and getCopy is true, value from CN or CN@[value of UPN field] should be used
+                     */
+                    if (fields.getField(dnFieldExtractorID, m).equals(expectedValue)) {
+                        subjectsToProcess[m] = null;
+                        profileCrossOffList[l] = matchedField;
                     }
                 }
             }
@@ -2450,6 +2435,37 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
 		}
 	}
 
+    /**
+     * Compiles the field definitions of this profile for validation of end entities, see doesUserFulfillEndEntityProfile. The plan is
+     * kept until a field is changed, so this is used by the end entity profile cache to compile the plan once for each version of the profile.
+     */
+    public void compileValidationPlan() {
+        getValidationPlan();
+    }
+
+    /** @return the field definitions of this profile compiled for validation of end entities, compiling them if needed */
+    EndEntityProfileValidationPlan getValidationPlan() {
+        EndEntityProfileValidationPlan plan = validationPlan;
+        if (plan == null) {
+            @SuppressWarnings("unchecked")
+            final List<Integer> numberArray = (List<Integer>) data.get(NUMBERARRAY);
+            plan = new EndEntityProfileValidationPlan(this, DATA_CONSTANTS.values(), numberArray);
+            validationPlan = plan;
+        }
+        return plan;
+    }
+
+    /** @return the definition of one instance of a field in the validation plan */
+    private static EndEntityProfileValidationPlan.FieldRule getField(final EndEntityProfileValidationPlan plan, final String parameter, final int number) {
+        return plan.getField(getParameterNumber(parameter), number);
+    }
+
+    @Override
+    public void loadData(final Object savedData) {
+        validationPlan = null;
+        super.loadData(savedData);
+    }
+
 	@Override
     public Object clone() {
     	final EndEntityProfile clone = new EndEntityProfile(0);
@@ -2463,6 +2479,8 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     		}
     		clone.data.put(entry.getKey(), value);
     	}
+    	// The plan is immutable, and is discarded by the clone if it is changed
+    	clone.validationPlan = validationPlan;
     	return clone;
     }
 
@@ -2476,6 +2494,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
 	@Override
     public void upgrade() {
         log.trace(">upgrade");
+        validationPlan = null;
     	if (Float.compare(LATEST_VERSION, getVersion()) != 0) {
 			String msg = intres.getLocalizedMessage("ra.eeprofileupgrade", getVersion());
             log.info(msg);
@@ -2702,7 +2721,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
 
     /** @return true if argument is null, empty or in the relative time format. */
     private boolean isEmptyOrRelative(final String time) {
-    	return (time == null || time.length() == 0 || time.matches(RELATIVE_TIME_FORMAT));
+    	return (time == null || time.length() == 0 || RELATIVE_TIME_FORMAT.matcher(time).matches());
     }
 
     public static boolean isFieldImplemented(final int field) {
@@ -2746,30 +2765,19 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
      * Verify that the field contains an address and that data of non-modifyable domain-fields is available in profile
      * Used for email, upn and rfc822 fields
      */
-    private void checkIfDomainFulfillProfile(final String field, final int number, final String nameAndDomain, final String text) throws EndEntityProfileValidationException {
+    private void checkIfDomainFulfillProfile(final EndEntityProfileValidationPlan plan, final String field, final int number, final String nameAndDomain,
+            final String text) throws EndEntityProfileValidationException {
     	if (!nameAndDomain.trim().equals("") && nameAndDomain.indexOf('@') == -1) {
     		throw new EndEntityProfileValidationException("Invalid " + text + "(" + nameAndDomain + "). There must be a '@' character in the field.");
     	}
     	final String domain = nameAndDomain.substring(nameAndDomain.indexOf('@') + 1);
+    	final EndEntityProfileValidationPlan.FieldRule fieldRule = getField(plan, field, number);
     	// All fields except RFC822NAME has to be empty if not used flag is set.
-    	if (!DnComponents.RFC822NAME.equals(field) && !getUse(field,number) && !nameAndDomain.trim().equals("")) {
+    	if (!DnComponents.RFC822NAME.equals(field) && !fieldRule.isUse() && !nameAndDomain.trim().equals("")) {
     		throw new EndEntityProfileValidationException(text + " cannot be used in end entity profile.");
     	}
-    	if (!isModifyable(field, number) && !nameAndDomain.equals("")) {
-    		String[] values;
-    		try {
-    			values = getValue(field, number).split(SPLITCHAR);
-    		} catch (Exception e) {
-    			throw new EndEntityProfileValidationException(ERROR_PARSING_EEP);
-    		}
-    		boolean exists = false;
-    		for (final String value : values) {
-    			if(domain.equals(value.trim())) {
-    				exists = true;
-    				break;
-    			}
-    		}
-    		if (!exists) {
+    	if (!fieldRule.isModifiable() && !nameAndDomain.equals("")) {
+    		if (!fieldRule.hasTrimmedValue(domain)) {
     			throw new EndEntityProfileValidationException("Field " + text + " data didn't match requirement of end entity profile.");
     		}
     	}
@@ -2787,66 +2795,45 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     }
 
     /** Used for iso 3166 country codes. */
-    private void checkIfISO3166FulfillProfile(final String field, final int number, final String country, final String text) throws EndEntityProfileValidationException {
+    private void checkIfISO3166FulfillProfile(final EndEntityProfileValidationPlan plan, final String field, final int number, final String country,
+            final String text) throws EndEntityProfileValidationException {
     	final String countryTrim = country.trim();
     	final int countryTrimLength = countryTrim.length();
     	if (countryTrimLength != 0 && countryTrimLength != 2) {
     		throw new EndEntityProfileValidationException("Invalid " + text + ". Must be of length two.");
     	}
-    	if (!getUse(field,number) && countryTrimLength != 0) {
+    	final EndEntityProfileValidationPlan.FieldRule fieldRule = getField(plan, field, number);
+    	if (!fieldRule.isUse() && countryTrimLength != 0) {
     		throw new EndEntityProfileValidationException(text + " cannot be used in end entity profile.");
     	}
-    	if (!isModifyable(field,number) && countryTrimLength != 0) {
-    		String[] values;
-    		try {
-    			values = getValue(field, number).split(SPLITCHAR);
-    		} catch (Exception e) {
-    			throw new EndEntityProfileValidationException(ERROR_PARSING_EEP);
-    		}
-    		boolean exists = false;
-    		for (final String value : values) {
-    			if (country.equals(value.trim())) {
-    				exists = true;
-    				break;
-    			}
-    		}
-    		if (!exists) {
+    	if (!fieldRule.isModifiable() && countryTrimLength != 0) {
+    		if (!fieldRule.hasTrimmedValue(country)) {
     			throw new EndEntityProfileValidationException("Field " + text + " data didn't match requirement of end entity profile.");
     		}
     	}
     }
 
     /** Used to check if it is an M or an F */
-    private void checkIfGenderFulfillProfile(final String field, final int number, final String gender, final String text) throws EndEntityProfileValidationException {
+    private void checkIfGenderFulfillProfile(final EndEntityProfileValidationPlan plan, final String field, final int number, final String gender,
+            final String text) throws EndEntityProfileValidationException {
     	final boolean isGenerEmpty = gender.trim().isEmpty();
     	if (!isGenerEmpty && !(gender.equalsIgnoreCase("m") || gender.equalsIgnoreCase("f"))) {
     		throw new EndEntityProfileValidationException("Invalid " + text + ". Must be M or F.");
     	}
-    	if (!getUse(field,number) && !isGenerEmpty) {
+    	final EndEntityProfileValidationPlan.FieldRule fieldRule = getField(plan, field, number);
+    	if (!fieldRule.isUse() && !isGenerEmpty) {
     		throw new EndEntityProfileValidationException(text + " cannot be used in end entity profile.");
     	}
-    	if (!isModifyable(field,number) && !isGenerEmpty) {
-    		String[] values;
-    		try {
-    			values = getValue(field, number).split(SPLITCHAR);
-    		} catch(Exception e) {
-    			throw new EndEntityProfileValidationException(ERROR_PARSING_EEP);
-    		}
-    		boolean exists = false;
-    		for (final String value: values) {
-    			if (gender.equals(value.trim())) {
-    				exists = true;
-    				break;
-    			}
-    		}
-    		if (!exists) {
+    	if (!fieldRule.isModifiable() && !isGenerEmpty) {
+    		if (!fieldRule.hasTrimmedValue(gender)) {
     			throw new EndEntityProfileValidationException("Field " + text + " data didn't match requirement of end entity profile.");
     		}
     	}
     }
 
     /** Used for date strings, should be YYYYMMDD */
-    private void checkIfDateFulfillProfile(final String field, final int number, final String date, final String text) throws EndEntityProfileValidationException {
+    private void checkIfDateFulfillProfile(final EndEntityProfileValidationPlan plan, final String field, final int number, final String date,
+            final String text) throws EndEntityProfileValidationException {
     	final String dateTrim = date.trim();
     	final boolean isDateEmpty = dateTrim.isEmpty();
     	if (!isDateEmpty && dateTrim.length() != 8) {
@@ -2855,96 +2842,77 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     	if (!isDateEmpty && !StringUtils.isNumeric(dateTrim)) {
     		throw new EndEntityProfileValidationException("Invalid " + text + ". Must be only numbers.");
     	}
-    	if (!getUse(field,number) && !isDateEmpty) {
+    	final EndEntityProfileValidationPlan.FieldRule fieldRule = getField(plan, field, number);
+    	if (!fieldRule.isUse() && !isDateEmpty) {
     		throw new EndEntityProfileValidationException(text + " cannot be used in end entity profile.");
     	}
-    	if (!isModifyable(field,number) && !isDateEmpty) {
-    		String[] values;
-    		try {
-    			values = getValue(field, number).split(SPLITCHAR);
-    		} catch (Exception e) {
-    			throw new EndEntityProfileValidationException(ERROR_PARSING_EEP);
-    		}
-    		boolean exists = false;
-    		for (final String value : values) {
-    			if (date.equals(value.trim())) {
-    				exists = true;
-    				break;
-    			}
-    		}
-    		if (!exists) {
+    	if (!fieldRule.isModifiable() && !isDateEmpty) {
+    		if (!fieldRule.hasTrimmedValue(date)) {
     			throw new EndEntityProfileValidationException("Field " + text + " data didn't match requirement of end entity profile.");
     		}
     	}
     }
 
     // Verifies that non-modifiable data is available in profile.
-    private void checkIfDataFulfillProfile(final String field, final int number, final String value, final String text, final String email) throws EndEntityProfileValidationException {
+    private void checkIfDataFulfillProfile(final EndEntityProfileValidationPlan plan, final String field, final int number, final String value,
+            final String text, final String email) throws EndEntityProfileValidationException {
         //If USERNAME should be autogenerated skip this check
-        if (field.equals(USERNAME) && !isModifyable(USERNAME, 0)){
+        if (field.equals(USERNAME) && !getField(plan, USERNAME, 0).isModifiable()){
             return;
         }
     	if (value == null && !field.equals(EMAIL)) {
     		throw new EndEntityProfileValidationException("Field " +  text + " cannot be null.");
     	}
-    	if (value != null && !getUse(field,number) && !value.trim().isEmpty()) {
+    	final EndEntityProfileValidationPlan.FieldRule fieldRule = getField(plan, field, number);
+    	if (value != null && !fieldRule.isUse() && !value.trim().isEmpty()) {
     		throw new EndEntityProfileValidationException(text + " cannot be used in end entity profile.");
     	}
     	if (field.equals(DnComponents.DNEMAILADDRESS)) {
-    		if (isRequired(field,number) && !value.trim().equals(email.trim())) {
+    		if (fieldRule.isRequired() && !value.trim().equals(email.trim())) {
     			throw new EndEntityProfileValidationException("Field " + text + " data didn't match Email field.");
     		}
-    	} else if (field.equals(DnComponents.RFC822NAME) && isRequired(field,number) && getUse(field,number)) {
+    	} else if (field.equals(DnComponents.RFC822NAME) && fieldRule.isRequired() && fieldRule.isUse()) {
     		if (!value.trim().equals(email.trim())) {
     			throw new EndEntityProfileValidationException("Field " + text + " data didn't match Email field.");
     		}
     	} else {
-    		if (!isModifyable(field,number)) {
-    			final String[] allowedValues;
-    			try {
-    				allowedValues = getValue(field, number).split(SPLITCHAR);
-    			} catch (RuntimeException e) {
-    				throw new EndEntityProfileValidationException(ERROR_PARSING_EEP, e);
-    			}
-    			boolean exists = false;
-    			for (final String allowedValue : allowedValues) {
-                    if (value.equals(allowedValue.trim())) {
-                        exists = true;
-                        break;
-                    }
-    			}
-    			if (!exists) {
+    		if (!fieldRule.isModifiable()) {
+    			if (!fieldRule.hasTrimmedValue(value)) {
     				throw new EndEntityProfileValidationException("Field " + text + " data didn't match requirement of end entity profile.");
     			}
     		}
     	}
     }
 
-    private void checkIfAllRequiredFieldsExists(final DNFieldExtractor subjectDnFields, final DNFieldExtractor subjectAltNames, final DNFieldExtractor subjectDirAttrs,
-            final String username, final String email) throws EndEntityProfileValidationException {
+    private void checkIfAllRequiredFieldsExists(final EndEntityProfileValidationPlan plan, final DNFieldExtractor subjectDnFields,
+            final DNFieldExtractor subjectAltNames, final DNFieldExtractor subjectDirAttrs, final String username, final String email)
+            throws EndEntityProfileValidationException {
     	// Check if Username exists (if not modifiable skip the check)
-    	if (isRequired(USERNAME, 0) && isModifyable(USERNAME, 0) && (username == null || username.trim().isEmpty())) {
+    	final EndEntityProfileValidationPlan.FieldRule usernameField = getField(plan, USERNAME, 0);
+    	if (usernameField.isRequired() && usernameField.isModifiable() && (username == null || username.trim().isEmpty())) {
     		throw new EndEntityProfileValidationException("Username cannot be empty or null.");
     	}
     	// Check if required Email fields exists.
-    	if (isRequired(EMAIL, 0) && StringUtils.isBlank(email)) {
+    	if (getField(plan, EMAIL, 0).isRequired() && StringUtils.isBlank(email)) {
     		throw new EndEntityProfileValidationException("Email address cannot be empty or null.");
     	}
+    	final boolean reverseFieldChecks = getReverseFieldChecks();
     	// Check if all required subjectdn fields exists.
     	final List<String> dnFields = DnComponents.getDnProfileFields();
     	final List<Integer> dnFieldExtractorIds = DnComponents.getDnDnIds();
     	for (int i = 0; i < dnFields.size(); i++) {
     		final String currentDnField = dnFields.get(i);
-    		if (getReverseFieldChecks()) {
+    		final int parameter = getParameterNumber(currentDnField);
+    		if (reverseFieldChecks) {
     			final int nof = subjectDnFields.getNumberOfFields(dnFieldExtractorIds.get(i));
-    			final int numRequiredFields = getNumberOfRequiredFields(currentDnField);
+    			final int numRequiredFields = plan.getNumberOfRequiredFields(parameter);
     			if (nof < numRequiredFields) {
     				throw new EndEntityProfileValidationException("Subject DN field '" + currentDnField + "' must exist.");
     			}
     		} else {
-    			final int size = getNumberOfField(currentDnField);
+    			final int size = plan.getNumberOfField(parameter);
     			for (int j = 0; j < size; j++) {
-    				if (isRequired(currentDnField, j) && StringUtils.isBlank(subjectDnFields.getField(dnFieldExtractorIds.get(i), j))) {
+    				if (plan.getField(parameter, j).isRequired() && StringUtils.isBlank(subjectDnFields.getField(dnFieldExtractorIds.get(i), j))) {
     					throw new EndEntityProfileValidationException("Subject DN field '" + currentDnField + "' must exist.");
     				}
     			}
@@ -2957,16 +2925,17 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
         	final List<Integer> altNameFieldExtractorIds = DnComponents.getAltNameDnIds();
         	for (int i = 0; i < altNameFields.size(); i++) {
         		final String currentAnField = altNameFields.get(i);
-        		if (getReverseFieldChecks()) {
+        		final int parameter = getParameterNumber(currentAnField);
+        		if (reverseFieldChecks) {
         			final int nof = subjectAltNames.getNumberOfFields(altNameFieldExtractorIds.get(i));
-        			final int numRequiredFields = getNumberOfRequiredFields(currentAnField);
+        			final int numRequiredFields = plan.getNumberOfRequiredFields(parameter);
         			if (nof < numRequiredFields) {
         				throw new EndEntityProfileValidationException("Subject Alternative Name field '" + currentAnField + "' must exist.");
         			}
         		} else {
         			final int size = subjectAltNames.getNumberOfFields(altNameFieldExtractorIds.get(i));
         			for (int j = 0; j < size; j++) {
-        				if (isRequired(currentAnField, j) && StringUtils.isBlank(subjectAltNames.getField(altNameFieldExtractorIds.get(i), j))) {
+        				if (plan.getField(parameter, j).isRequired() && StringUtils.isBlank(subjectAltNames.getField(altNameFieldExtractorIds.get(i), j))) {
         					throw new EndEntityProfileValidationException("Subject Alterntive Name field '" + currentAnField + "' must exist.");
         				}
         			}
@@ -2978,37 +2947,23 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     	final List<Integer> dirAttrFieldExtractorIds = DnComponents.getDirAttrDnIds();
     	for (int i = 0; i < dirAttrFields.size(); i++) {
     		final String currentDaField = dirAttrFields.get(i);
-    		final int size = getNumberOfField(currentDaField);
+    		final int parameter = getParameterNumber(currentDaField);
+    		final int size = plan.getNumberOfField(parameter);
     		for (int j = 0; j < size; j++) {
-    			if (isRequired(currentDaField, j) && StringUtils.isBlank(subjectDirAttrs.getField(dirAttrFieldExtractorIds.get(i), j))) {
+    			if (plan.getField(parameter, j).isRequired() && StringUtils.isBlank(subjectDirAttrs.getField(dirAttrFieldExtractorIds.get(i), j))) {
     				throw new EndEntityProfileValidationException("Subject Directory Attribute field '" + currentDaField + "' must exist.");
     			}
     		}
     	}
     }
 
-    /**
-     * Method calculating the number of required fields of on kind that is configured for this profile.
-     * @param field one of the field constants
-     * @return The number of required fields of that kind.
-     */
-    private int getNumberOfRequiredFields(final String field) {
-    	int retval = 0;
-    	final int size = getNumberOfField(field);
-    	for (int j = 0; j < size; j++) {
-    		if (isRequired(field, j)) {
-    			retval++;
-    		}
-    	}
-    	return retval;
-    }
-
-    private void checkIfForIllegalNumberOfFields(final DNFieldExtractor subjectdnfields, final DNFieldExtractor subjectaltnames, final DNFieldExtractor subjectdirattrs) throws EndEntityProfileValidationException {
+    private void checkIfForIllegalNumberOfFields(final EndEntityProfileValidationPlan plan, final DNFieldExtractor subjectdnfields,
+            final DNFieldExtractor subjectaltnames, final DNFieldExtractor subjectdirattrs) throws EndEntityProfileValidationException {
     	// Check number of subjectdn fields.
     	final List<String> dnFields = DnComponents.getDnProfileFields();
     	final List<Integer> dnFieldExtractorIds = DnComponents.getDnDnIds();
     	for (int i = 0; i < dnFields.size(); i++) {
-    		if (getNumberOfField(dnFields.get(i)) < subjectdnfields.getNumberOfFields(dnFieldExtractorIds.get(i))) {
+    		if (plan.getNumberOfField(getParameterNumber(dnFields.get(i))) < subjectdnfields.getNumberOfFields(dnFieldExtractorIds.get(i))) {
     			throw new EndEntityProfileValidationException("Wrong number of " + dnFields.get(i) + " fields in Subject DN.");
     		}
     	}
@@ -3017,7 +2972,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
         	final List<String> altNameFields = DnComponents.getAltNameFields();
         	final List<Integer> altNameFieldExtractorIds = DnComponents.getAltNameDnIds();
         	for (int i = 0; i < altNameFields.size(); i++) {
-        		if (getNumberOfField(altNameFields.get(i)) < subjectaltnames.getNumberOfFields(altNameFieldExtractorIds.get(i))) {
+        		if (plan.getNumberOfField(getParameterNumber(altNameFields.get(i))) < subjectaltnames.getNumberOfFields(altNameFieldExtractorIds.get(i))) {
         			throw new EndEntityProfileValidationException("Wrong number of " + altNameFields.get(i) + " fields in Subject Alternative Name.");
         		}
         	}
@@ -3026,7 +2981,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
     	final List<String> dirAttrFields = DnComponents.getDirAttrFields();
     	final List<Integer> dirAttrFieldExtractorIds = DnComponents.getDirAttrDnIds();
     	for (int i = 0; i < dirAttrFields.size(); i++) {
-    		if (getNumberOfField(dirAttrFields.get(i)) < subjectdirattrs.getNumberOfFields(dirAttrFieldExtractorIds.get(i))) {
+    		if (plan.getNumberOfField(getParameterNumber(dirAttrFields.get(i))) < subjectdirattrs.getNumberOfFields(dirAttrFieldExtractorIds.get(i))) {
     			throw new EndEntityProfileValidationException("Wrong number of " + dirAttrFields.get(i) + " fields in Subject Directory Attributes.");
     		}
     	}
@@ -3038,10 +2993,8 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
      * @throws EndEntityProfileValidationException End entity profile validation exception
      */
     public void checkUsernameWithValidators(final String username) throws EndEntityProfileValidationException {
-        if (getUseValidationForUsername() && !isAutoGeneratedUsername()) {
-            final String usernameRegex = getUsernameDefaultValidation();
-            final LinkedHashMap<String, Serializable> validator = EndEntityValidationHelper.getValidationMapFromRegex(usernameRegex, RegexFieldValidator.class.getName());
-
+        final Map<String, Serializable> validator = getValidationPlan().getUsernameValidation();
+        if (validator != null && !isAutoGeneratedUsername()) {
             try {
                 EndEntityValidationHelper.checkValue(USERNAME, validator, username);
             } catch (EndEntityFieldValidatorException e) {
@@ -3050,7 +3003,8 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
         }
     }
 
-    private void checkWithValidators(final DNFieldExtractor subjectdnfields, final DNFieldExtractor subjectaltnames) throws EndEntityProfileValidationException {
+    private void checkWithValidators(final EndEntityProfileValidationPlan plan, final DNFieldExtractor subjectdnfields, final DNFieldExtractor subjectaltnames)
+            throws EndEntityProfileValidationException {
         final List<String> dnFields = DnComponents.getDnProfileFields();
         final List<Integer> dnFieldExtractorIds = DnComponents.getDnDnIds();
         for (int i = 0; i < dnFields.size(); i++) {
@@ -3059,7 +3013,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
             final String fieldName = dnFields.get(i);
             final int num = subjectdnfields.getNumberOfFields(dnId);
             for (int j = 0; j < num; j++) {
-                final Map<String,Serializable> validators = getValidation(profileId, j);
+                final Map<String,Serializable> validators = plan.getField(profileId, j).getValidation();
                 if (validators != null) {
                     final String fieldValue = subjectdnfields.getField(dnId, j);
                     try {
@@ -3082,7 +3036,7 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
             final String fieldName = sanFields.get(i);
             final int num = subjectaltnames.getNumberOfFields(dnId);
             for (int j = 0; j < num; j++) {
-                final Map<String,Serializable> validators = getValidation(profileId, j);
+                final Map<String,Serializable> validators = plan.getField(profileId, j).getValidation();
                 if (validators != null) {
                     final String fieldValue = subjectaltnames.getField(dnId, j);
                     try {
@@ -3131,12 +3085,14 @@ public class EndEntityProfile extends UpgradeableDataHashMap implements Serializ
 	}
 
     private void incrementFieldnumber(final int parameter){
+        validationPlan = null;
     	@SuppressWarnings("unchecked")
         final ArrayList<Integer> numberArray = (ArrayList<Integer>) data.get(NUMBERARRAY);
     	numberArray.set(parameter, numberArray.get(parameter) + 1);
     }
 
     private void decrementFieldnumber(final int parameter){
+        validationPlan = null;
     	@SuppressWarnings("unchecked")
         final ArrayList<Integer> numberArray = (ArrayList<Integer>) data.get(NUMBERARRAY);
     	numberArray.set(parameter, numberArray.get(parameter) - 1);
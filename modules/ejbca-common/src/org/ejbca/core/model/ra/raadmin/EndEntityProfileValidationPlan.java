@@ -0,0 +1,238 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ra.raadmin;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.ejbca.core.model.ra.raadmin.validators.RegexFieldValidator;
+
+/**
+ * The field definitions of an end entity profile, read once from the data map of the profile and indexed by field number, so that
+ * validation of end entities does not have to look up, split and compile the same values for every end entity.
+ * <p>
+ * A plan is immutable. It describes the profile as it was when the plan was created, and the profile discards its plan when a field
+ * is changed. See {@link EndEntityProfile#compileValidationPlan()}.
+ *
+ * @version $Id$
+ */
+final class EndEntityProfileValidationPlan {
+
+    /** Added to the match class of a field that is not modifiable */
+    static final int NONMODIFIABLE_FIELD = 1;
+    /** Added to the match class of a field that is required */
+    static final int REQUIRED_FIELD = 2;
+    /** Match class of a field that has been matched with a value of the end entity */
+    static final int MATCHED_FIELD = -1;
+
+    /** Returned for fields that do not exist in the profile. Has the same values as an empty data map. */
+    private static final FieldRule ABSENT = new FieldRule(false, false, false, false, null, null);
+
+    private final FieldRule[][] fields;
+    private final int[] numberOfFields;
+    private final int[] numberOfRequiredFields;
+    private final int[][] matchClasses;
+    private final int[][] matchOrders;
+    private final Map<String, Serializable> usernameValidation;
+
+    /**
+     * @param profile the profile to read the field definitions from
+     * @param parameters the numbers of all known fields. The first instance of each is always read, even if it has not been added to the profile.
+     * @param numberArray the number of instances of each field in the profile
+     */
+    EndEntityProfileValidationPlan(final EndEntityProfile profile, final Collection<Integer> parameters, final List<Integer> numberArray) {
+        int size = numberArray.size();
+        for (final int parameter : parameters) {
+            size = Math.max(size, parameter + 1);
+        }
+        final Set<Integer> knownParameters = new HashSet<>(parameters);
+        fields = new FieldRule[size][];
+        numberOfFields = new int[size];
+        numberOfRequiredFields = new int[size];
+        matchClasses = new int[size][];
+        matchOrders = new int[size][];
+        for (int parameter = 0; parameter < size; parameter++) {
+            numberOfFields[parameter] = parameter < numberArray.size() ? numberArray.get(parameter) : 0;
+            // Some fields, like start and end time, are used without being added to the profile
+            final int instances = knownParameters.contains(parameter) ? Math.max(numberOfFields[parameter], 1) : numberOfFields[parameter];
+            fields[parameter] = new FieldRule[instances];
+            for (int number = 0; number < instances; number++) {
+                final FieldRule field = new FieldRule(profile.getUse(parameter, number), profile.isRequired(parameter, number),
+                        profile.isModifyable(parameter, number), profile.getCopy(parameter, number), profile.getValueOrNull(parameter, number),
+                        compileValidation(profile.getValidation(parameter, number)));
+                fields[parameter][number] = field;
+                if (number < numberOfFields[parameter] && field.isRequired()) {
+                    numberOfRequiredFields[parameter]++;
+                }
+            }
+            matchClasses[parameter] = new int[numberOfFields[parameter]];
+            final List<Integer> matchOrder = new ArrayList<>();
+            for (int number = 0; number < numberOfFields[parameter]; number++) {
+                final FieldRule field = getField(parameter, number);
+                matchClasses[parameter][number] = (field.isModifiable() ? 0 : NONMODIFIABLE_FIELD) + (field.isRequired() ? REQUIRED_FIELD : 0);
+                matchOrder.add(number);
+            }
+            // Required and non-modifiable fields first, then required, then non-modifiable, and then the rest. Sorting is stable.
+            final int[] classes = matchClasses[parameter];
+            matchOrder.sort((first, second) -> Integer.compare(classes[second], classes[first]));
+            matchOrders[parameter] = matchOrder.stream().mapToInt(Integer::intValue).toArray();
+        }
+        usernameValidation = profile.getUseValidationForUsername() ? compileValidation(EndEntityValidationHelper.getValidationMapFromRegex(
+                profile.getUsernameDefaultValidation(), RegexFieldValidator.class.getName())) : null;
+    }
+
+    /**
+     * @param parameter the number of a field from profilemappings.properties
+     * @param number zero based index of the field
+     * @return the definition of the field, never null
+     */
+    FieldRule getField(final int parameter, final int number) {
+        if (parameter < 0 || parameter >= fields.length || number < 0 || number >= fields[parameter].length) {
+            return ABSENT;
+        }
+        return fields[parameter][number];
+    }
+
+    /** @return the number of one kind of field in the profile, or 0 if it does not exist. */
+    int getNumberOfField(final int parameter) {
+        return parameter < 0 || parameter >= numberOfFields.length ? 0 : numberOfFields[parameter];
+    }
+
+    /** @return the number of required fields of one kind in the profile */
+    int getNumberOfRequiredFields(final int parameter) {
+        return parameter < 0 || parameter >= numberOfRequiredFields.length ? 0 : numberOfRequiredFields[parameter];
+    }
+
+    /**
+     * @return a new array with the match class of each instance of one kind of field, a sum of {@link #REQUIRED_FIELD} and
+     *      {@link #NONMODIFIABLE_FIELD}. Used to cross off the fields that have been matched with values of the end entity.
+     */
+    int[] getMatchClasses(final int parameter) {
+        return parameter < 0 || parameter >= matchClasses.length ? new int[0] : matchClasses[parameter].clone();
+    }
+
+    /** @return the indexes of one kind of field, in the order they should be matched with values of the end entity. Must not be modified. */
+    int[] getMatchOrder(final int parameter) {
+        return parameter < 0 || parameter >= matchOrders.length ? new int[0] : matchOrders[parameter];
+    }
+
+    /** @return the regex validator of the username, compiled, or null if username validation is not used */
+    Map<String, Serializable> getUsernameValidation() {
+        return usernameValidation;
+    }
+
+    /** @return a copy of the validators, where the regexes of the RegexFieldValidator are compiled, or null if there are no validators. */
+    private static Map<String, Serializable> compileValidation(final Map<String, Serializable> validation) {
+        if (validation == null) {
+            return null;
+        }
+        final Map<String, Serializable> compiled = new LinkedHashMap<>(validation);
+        final Serializable regex = compiled.get(RegexFieldValidator.class.getName());
+        if (regex instanceof String) {
+            try {
+                compiled.put(RegexFieldValidator.class.getName(), Pattern.compile((String) regex));
+            } catch (PatternSyntaxException e) {
+                // Keep the regex as it is, so that validation fails the same way as before
+            }
+        }
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    /** The settings of one instance of a field in the profile */
+    static final class FieldRule {
+        private final boolean use;
+        private final boolean required;
+        private final boolean modifiable;
+        private final boolean copy;
+        private final String value;
+        private final boolean valuePresent;
+        private final List<String> values;
+        private final Set<String> valueSet;
+        private final Set<String> trimmedValueSet;
+        private final Map<String, Serializable> validation;
+
+        private FieldRule(final boolean use, final boolean required, final boolean modifiable, final boolean copy, final String value,
+                final Map<String, Serializable> validation) {
+            this.use = use;
+            this.required = required;
+            this.modifiable = modifiable;
+            this.copy = copy;
+            // Read as an empty string if missing, like EndEntityProfile.getValue
+            this.value = value == null ? "" : value;
+            this.valuePresent = value != null;
+            this.values = Collections.unmodifiableList(Arrays.asList(this.value.split(EndEntityProfile.SPLITCHAR)));
+            this.valueSet = new HashSet<>(values);
+            this.trimmedValueSet = new HashSet<>();
+            for (final String allowedValue : values) {
+                trimmedValueSet.add(allowedValue.trim());
+            }
+            this.validation = validation;
+        }
+
+        boolean isUse() {
+            return use;
+        }
+
+        boolean isRequired() {
+            return required;
+        }
+
+        boolean isModifiable() {
+            return modifiable;
+        }
+
+        boolean isCopy() {
+            return copy;
+        }
+
+        /** @return the default value, or list of allowed values, never null */
+        String getValue() {
+            return value;
+        }
+
+        /** @return false if the profile has no value for the field, or a value that is not a string */
+        boolean isValuePresent() {
+            return valuePresent;
+        }
+
+        /** @return the value split by {@link EndEntityProfile#SPLITCHAR} */
+        List<String> getValues() {
+            return values;
+        }
+
+        /** @return true if the given string is one of the values split by {@link EndEntityProfile#SPLITCHAR} */
+        boolean hasValue(final String string) {
+            return valueSet.contains(string);
+        }
+
+        /** @return true if the given string is one of the values split by {@link EndEntityProfile#SPLITCHAR} and trimmed */
+        boolean hasTrimmedValue(final String string) {
+            return trimmedValueSet.contains(string);
+        }
+
+        /** @return the validators, with compiled regexes, or null if there are no validators */
+        Map<String, Serializable> getValidation() {
+            return validation;
+        }
+    }
+}
@@ -42,12 +42,15 @@ public class RegexFieldValidator implements EndEntityFieldValidator {
         return true;
     }
 
+    /**
+     * @param validatorData the regex, or the compiled regex from the validation plan of the end entity profile
+     */
     @Override
     public void validate(final String field, final Serializable validatorData, final String value) throws EndEntityFieldValidatorException {
         // The DN component name is not used by this validator.
-        final String regex = (String)validatorData;
-        if (!Pattern.matches(regex, value == null ? "":value)) {
-            throw new EndEntityFieldValidatorException("Technical details: Value \""+value+"\" does not match regex "+regex);
+        final Pattern pattern = validatorData instanceof Pattern ? (Pattern) validatorData : Pattern.compile((String) validatorData);
+        if (!pattern.matcher(value == null ? "" : value).matches()) {
+            throw new EndEntityFieldValidatorException("Technical details: Value \""+value+"\" does not match regex "+pattern.pattern());
         }
     }
 
@@ -14,31 +14,40 @@ package org.ejbca.core.model.validation;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.ServiceLoader;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -56,12 +65,14 @@ import org.cesecore.util.ui.DynamicUiCallbackException;
 import org.cesecore.util.ui.DynamicUiModel;
 import org.cesecore.util.ui.DynamicUiProperty;
 import org.cesecore.util.ui.PropertyValidationException;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistChecker;
 import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistExactMatchChecker;
+import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistIndex;
+import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistIndexBuilder;
 import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistNormalizer;
 
 import com.keyfactor.CesecoreException;
-import com.keyfactor.util.CertTools;
 
 /**
  * A Domain Blacklist Validator checks DNSName fields against a set of blacklists.
@@ -87,8 +98,21 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
     private static final String NORMALIZATIONS_KEY = "normalizations";
     /** Checks to perform (e.g. exact match, domain component). List of Java class names */
     private static final String CHECKS_KEY = "checks";
-    /** Current blacklist. Set of strings (blacklisted domains and/or domain components) */
+    /**
+     * Blacklist in the format used before the compiled index was introduced. Set of strings (blacklisted domains and/or domain components).
+     * @deprecated but written next to the index by {@link #writeLegacyBlacklist()} until the post-upgrade is done, to allow 100% uptime
+     * during upgrades. Nodes that have not been upgraded yet only read this list. It is only read by this class if there is no index.
+     */
+    @Deprecated
     private static final String BLACKLISTS_KEY = "blacklists";
+    /** Current blacklist, compiled into a {@link DomainBlacklistIndex}. Deflated and Base64 encoded */
+    private static final String BLACKLIST_INDEX_KEY = "blacklist_index";
+    /** SHA-256 of the (not deflated) index, which is also the name of the memory-mapped index file on each node */
+    private static final String BLACKLIST_INDEX_SHA256_KEY = "blacklist_index_sha256";
+    /** Normalizations used for the keys of the index. List of Java class names */
+    private static final String BLACKLIST_INDEX_NORMALIZATIONS_KEY = "blacklist_index_normalizations";
+    /** Number of entries in the index */
+    private static final String BLACKLIST_SIZE_KEY = "blacklist_size";
     /** Information about the existing blacklist: Filename, date, SHA-256 */
     private static final String BLACKLIST_INFO_KEY = "blacklist_info"; // Used in GUI only
     private static final String BLACKLIST_DATE_KEY = "blacklist_date";     // Persisted
@@ -109,10 +133,13 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
         final boolean initializationFailure;
         final List<DomainBlacklistNormalizer> normalizers;
         final List<DomainBlacklistChecker> checkers;
-        public Cache(final boolean initializationFailure, final List<DomainBlacklistNormalizer> normalizers, final List<DomainBlacklistChecker> checkers) {
+        final Map<String,String> blacklist;
+        public Cache(final boolean initializationFailure, final List<DomainBlacklistNormalizer> normalizers, final List<DomainBlacklistChecker> checkers,
+                final Map<String,String> blacklist) {
             this.initializationFailure = initializationFailure;
             this.normalizers = normalizers;
             this.checkers = checkers;
+            this.blacklist = blacklist;
         }
     }
 
@@ -150,10 +177,21 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
     /** Replaces the existing domain blacklist with the uploaded one. Takes a byte array. 
      * @throws DomainListFileException */
     public void changeBlacklist(final byte[] bytes) throws DomainListFileException {
-        final Set<String> domainSet = new TreeSet<>(); // store entries sorted in database
+        changeBlacklist(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Replaces the existing domain blacklist with the uploaded one. The domains are compiled into the index as they are read, so the
+     * block list is never kept as a set of strings.
+     * @param inputStream stream with one domain per line. Closed when the whole stream has been read.
+     * @throws DomainListFileException if the file could not be read or contains an invalid domain
+     */
+    public void changeBlacklist(final InputStream inputStream) throws DomainListFileException {
+        final List<DomainBlacklistNormalizer> normalizers = createNormalizers();
+        final DomainBlacklistIndexBuilder indexBuilder = new DomainBlacklistIndexBuilder();
+        final MessageDigest fileDigest = createSha256Digest();
         try {
-            try (final InputStream domainBlacklistInputStream = new ByteArrayInputStream(bytes);
-                 final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(domainBlacklistInputStream, StandardCharsets.UTF_8))) {
+            try (final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new DigestInputStream(inputStream, fileDigest), StandardCharsets.UTF_8))) {
                 String line;
                 int lineNumber = 0;
                 while ((line = bufferedReader.readLine()) != null) {
@@ -167,14 +205,15 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
                         continue;
                     }
                     validateDomain(line, lineNumber);
-                    domainSet.add(line.toLowerCase(Locale.ROOT));
+                    final String domain = line.toLowerCase(Locale.ROOT);
+                    indexBuilder.add(normalizeDomain(normalizers, domain), domain);
                 }
+                final int size = setBlacklistIndex(indexBuilder);
                 if (log.isDebugEnabled()) {
-                    log.debug("Parsed domain block list with " + domainSet.size() + " entries (" + lineNumber + " lines)");
+                    log.debug("Parsed domain block list with " + size + " entries (" + lineNumber + " lines)");
                 }
-                setBlacklist(domainSet);
                 setBlacklistDate(new Date());
-                final String sha256 = new String(Hex.encode(CertTools.generateSHA256Fingerprint(bytes)), StandardCharsets.US_ASCII);
+                final String sha256 = new String(Hex.encode(fileDigest.digest()), StandardCharsets.US_ASCII);
                 setBlacklistSha256(sha256);
                 // The Validator cache is reloaded after saving, so that will trigger a reload of the cache here in DomainBlacklistValidator 
             }
@@ -199,8 +238,42 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
 
     private synchronized void reloadBlacklistData() {
         log.trace(">reloadBlacklistData");
-        boolean newInitializationFailure = false;
         // Instantiate classes
+        final List<DomainBlacklistNormalizer> newNormalizers = createNormalizers();
+        boolean newInitializationFailure = newNormalizers.size() != getNormalizations().size();
+        final List<DomainBlacklistChecker> newCheckers = new ArrayList<>();
+        for (final String checkerName : getChecks())  {
+            try {
+                final Class<?> checkerClass = Class.forName(checkerName);
+                final DomainBlacklistChecker checker = (DomainBlacklistChecker) checkerClass.getDeclaredConstructor().newInstance();
+                newCheckers.add(checker);
+            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+                log.error("Failed to load Domain Block List Checker '" + checkerName + "'.");
+                newInitializationFailure = true;
+            }
+        }
+        // Load (or compile) the memory-mapped blacklist
+        Map<String,String> domainMap;
+        try {
+            domainMap = loadBlacklistIndex(newNormalizers);
+        } catch (IOException e) {
+            log.error("Failed to load domain block list of Validator '" + getProfileName() + "': " + e.getMessage());
+            newInitializationFailure = true;
+            domainMap = Collections.emptyMap();
+        }
+        // Initialize checkers
+        for (final DomainBlacklistChecker checker : newCheckers) {
+            checker.initialize(data, domainMap);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Initialized cache for Validator '" + getProfileName() + "' with " + domainMap.size() + " domains, " + newCheckers.size() + " checkers, " + newNormalizers.size() + " normalizers.");
+        }
+        cache = new Cache(newInitializationFailure, newNormalizers, newCheckers, domainMap);
+        log.trace("<reloadBlacklistData");
+    }
+
+    /** @return the normalizers that could be loaded */
+    private List<DomainBlacklistNormalizer> createNormalizers() {
         final List<DomainBlacklistNormalizer> newNormalizers = new ArrayList<>();
         for (final String normalizerName : getNormalizations())  {
             try {
@@ -210,43 +283,96 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
                 newNormalizers.add(normalizer);
             } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
                 log.error("Failed to load Domain Block List Normalizer '" + normalizerName + "'.");
-                newInitializationFailure = true;
             }
         }
-        final List<DomainBlacklistChecker> newCheckers = new ArrayList<>();
-        for (final String checkerName : getChecks())  {
-            try {
-                final Class<?> checkerClass = Class.forName(checkerName);
-                final DomainBlacklistChecker checker = (DomainBlacklistChecker) checkerClass.getDeclaredConstructor().newInstance();
-                newCheckers.add(checker);
-            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-                log.error("Failed to load Domain Block List Checker '" + checkerName + "'.");
-                newInitializationFailure = true;
+        return newNormalizers;
+    }
+
+    /**
+     * Memory-maps the index of the current blacklist, writing the index file first if this node does not have it yet.
+     * If the normalizations have been changed since the blacklist was uploaded, a new index is compiled from the uploaded domains.
+     */
+    private Map<String,String> loadBlacklistIndex(final List<DomainBlacklistNormalizer> normalizers) throws IOException {
+        final String indexSha256 = getData(BLACKLIST_INDEX_SHA256_KEY, null);
+        if (indexSha256 == null) {
+            // Blacklist uploaded before the compiled index was introduced
+            final Collection<String> domains = getData(BLACKLISTS_KEY, Collections.emptyList());
+            if (log.isDebugEnabled()) {
+                log.debug("Normalizing " + domains.size() + " domains for Validator '" + getProfileName() + "'");
             }
+            return DomainBlacklistIndex.create(createIndexBuilder(normalizers, domains)::writeTo);
+        }
+        final Path directory = Paths.get(EjbcaConfiguration.getDomainBlacklistIndexDir());
+        final DomainBlacklistIndex index = DomainBlacklistIndex.open(directory, indexSha256, indexSha256, out -> inflateBlacklistIndex(indexSha256, out));
+        final List<String> normalizations = getNormalizations();
+        if (normalizations.equals(getData(BLACKLIST_INDEX_NORMALIZATIONS_KEY, Collections.emptyList()))) {
+            return index;
         }
-        // Create combined blacklist
-        final Collection<String> domainSetNotNormalized = getBlacklist(); 
-        final HashMap<String,String> domainMap = new HashMap<>((int)(domainSetNotNormalized.size()/0.75)+1); // keys: normalized domains. values: unmodified blacklisted domains
         if (log.isDebugEnabled()) {
-            log.debug("Normalizing " + domainSetNotNormalized.size() + " domains for Validator '" + getProfileName() + "'");
+            log.debug("Normalizing " + index.size() + " domains for Validator '" + getProfileName() + "'");
+        }
+        final MessageDigest digest = createSha256Digest();
+        digest.update(indexSha256.getBytes(StandardCharsets.US_ASCII));
+        for (final String normalization : normalizations) {
+            digest.update((byte) 0);
+            digest.update(normalization.getBytes(StandardCharsets.UTF_8));
         }
-        for (final String domain : domainSetNotNormalized) {
-            // Normalize before adding to combined list
-            final String normalizedDomain = normalizeDomain(newNormalizers, domain);
-            domainMap.put(normalizedDomain, domain);
+        final String name = new String(Hex.encode(digest.digest()), StandardCharsets.US_ASCII);
+        return DomainBlacklistIndex.open(directory, name, null, createIndexBuilder(normalizers, index.values())::writeTo);
+    }
+
+    private DomainBlacklistIndexBuilder createIndexBuilder(final List<DomainBlacklistNormalizer> normalizers, final Collection<String> domains) {
+        final DomainBlacklistIndexBuilder indexBuilder = new DomainBlacklistIndexBuilder();
+        for (final String domain : domains) {
+            final String normalizedDomain = normalizeDomain(normalizers, domain);
+            indexBuilder.add(normalizedDomain, domain);
             if (log.isTraceEnabled()) {
                 log.trace("Normalized domain '" + domain + "' to '" + normalizedDomain + "'");
             }
         }
-        // Initialize checkers
-        for (final DomainBlacklistChecker checker : newCheckers) {
-            checker.initialize(data, domainMap);
+        return indexBuilder;
+    }
+
+    /** Writes the index that is stored in the data map, after checking its hash */
+    private void inflateBlacklistIndex(final String indexSha256, final OutputStream out) throws IOException {
+        final String encoded = getData(BLACKLIST_INDEX_KEY, "");
+        final MessageDigest digest = createSha256Digest();
+        try (final InputStream in = new DigestInputStream(new InflaterInputStream(
+                Base64.getDecoder().wrap(new ByteArrayInputStream(encoded.getBytes(StandardCharsets.US_ASCII)))), digest)) {
+            IOUtils.copy(in, out);
         }
-        if (log.isDebugEnabled()) {
-            log.debug("Initialized cache for Validator '" + getProfileName() + "' with " + domainMap.size() + " domains, " + newCheckers.size() + " checkers, " + newNormalizers.size() + " normalizers.");
+        if (!indexSha256.equals(new String(Hex.encode(digest.digest()), StandardCharsets.US_ASCII))) {
+            throw new IOException("SHA-256 hash of the domain block list index does not match.");
+        }
+    }
+
+    /**
+     * Stores the compiled blacklist in the data map, replacing the current one.
+     * @return the number of entries in the blacklist
+     */
+    private int setBlacklistIndex(final DomainBlacklistIndexBuilder indexBuilder) throws IOException {
+        final MessageDigest digest = createSha256Digest();
+        final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        final int size;
+        try (final DigestOutputStream out = new DigestOutputStream(new DeflaterOutputStream(Base64.getEncoder().wrap(deflated)), digest)) {
+            size = indexBuilder.writeTo(out);
+        }
+        putData(BLACKLIST_INDEX_KEY, new String(deflated.toByteArray(), StandardCharsets.US_ASCII));
+        putData(BLACKLIST_INDEX_SHA256_KEY, new String(Hex.encode(digest.digest()), StandardCharsets.US_ASCII));
+        putData(BLACKLIST_INDEX_NORMALIZATIONS_KEY, new ArrayList<>(getNormalizations()));
+        putData(BLACKLIST_SIZE_KEY, size);
+        // Outdated, and only written again by writeLegacyBlacklist() when needed
+        data.remove(BLACKLISTS_KEY);
+        clearCache();
+        return size;
+    }
+
+    private static MessageDigest createSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        cache = new Cache(newInitializationFailure, newNormalizers, newCheckers); 
-        log.trace("<reloadBlacklistData");
     }
 
     /**
@@ -326,7 +452,7 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
         uiProperty.setTransientValue(true);
         try {
             final String text = intres.getLocalizedMessage("validator.domainblacklist.info_text",
-                    CollectionUtils.size(getBlacklist()), ValidityDate.formatAsUTC(blacklistDate), getBlacklistSha256());
+                    getBlacklistSize(), ValidityDate.formatAsUTC(blacklistDate), getBlacklistSha256());
             final String html = StringEscapeUtils.escapeHtml(text).replace("|", "<br />");
             uiProperty.setValue(html);
         } catch (PropertyValidationException e) {
@@ -487,13 +613,47 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
     }
 
 
+    /**
+     * Decodes the blacklisted domains. Intended for small block lists, since validation uses the memory-mapped index.
+     * @return the blacklisted domains, in order of the normalized domains
+     */
     public Collection<String> getBlacklist() {
-        return getData(BLACKLISTS_KEY, Collections.emptyList());
+        loadBlacklistData();
+        return new ArrayList<>(cache.blacklist.values());
     }
 
     public void setBlacklist(final Collection<String> domainMap) {
-        putData(BLACKLISTS_KEY, new ArrayList<>(domainMap));
-        clearCache();
+        try {
+            setBlacklistIndex(createIndexBuilder(createNormalizers(), domainMap));
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Only written to memory
+        }
+    }
+
+    /**
+     * Writes the blacklist in the format used before the compiled index was introduced, unless it is already there. Used until the
+     * post-upgrade is done, since nodes that have not been upgraded yet only read the blacklist in the old format.
+     * @throws IOException if the index in the data map can not be read
+     */
+    public void writeLegacyBlacklist() throws IOException {
+        final String indexSha256 = getData(BLACKLIST_INDEX_SHA256_KEY, null);
+        if (indexSha256 != null && !data.containsKey(BLACKLISTS_KEY)) {
+            putData(BLACKLISTS_KEY, new ArrayList<>(DomainBlacklistIndex.create(out -> inflateBlacklistIndex(indexSha256, out)).values()));
+        }
+    }
+
+    /**
+     * Removes the blacklist in the format used before the compiled index was introduced, if there is an index.
+     * @return true if the data map was changed
+     */
+    public boolean removeLegacyBlacklist() {
+        return data.containsKey(BLACKLIST_INDEX_SHA256_KEY) && data.remove(BLACKLISTS_KEY) != null;
+    }
+
+    /** @return the number of blacklisted domains (after removing domains that are equal after normalization) */
+    public int getBlacklistSize() {
+        final Integer size = getData(BLACKLIST_SIZE_KEY, null);
+        return size != null ? size : getData(BLACKLISTS_KEY, Collections.emptyList()).size();
     }
 
     public Date getBlacklistDate() {
@@ -516,7 +676,14 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
     public LinkedHashMap<Object,Object> getFilteredDataMapForLogging() {
         LinkedHashMap<Object,Object> map = getDataMap();
         final Collection<?> blacklists = (Collection<?>) map.get(BLACKLISTS_KEY);
-        if (blacklists == null || blacklists.size() <= MAX_LOG_DOMAINS) {
+        if (map.containsKey(BLACKLIST_INDEX_KEY)) {
+            map = new LinkedHashMap<>(map);
+            map.put(BLACKLIST_INDEX_KEY, "(" + getBlacklistSize() + " entries, not shown in the log)");
+            if (blacklists != null && blacklists.size() > MAX_LOG_DOMAINS) {
+                map.put(BLACKLISTS_KEY, "(" + blacklists.size() + " entries, not shown in the log)");
+            }
+            return map;
+        } else if (blacklists == null || blacklists.size() <= MAX_LOG_DOMAINS) {
             return map; // Just log as is
         } else {
             map = new LinkedHashMap<>(map);
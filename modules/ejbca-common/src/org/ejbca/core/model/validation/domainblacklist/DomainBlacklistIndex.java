@@ -0,0 +1,353 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA: The OpenSource Certificate Authority                          *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation.domainblacklist;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Immutable, compiled domain block list, created with {@link DomainBlacklistIndexBuilder}. It is a read-only map from normalized
+ * domains to block listed domains, so it can be given to any {@link DomainBlacklistChecker}, and is usually memory-mapped from a
+ * file on the local node instead of being kept on the heap.
+ * <p>
+ * The entries are sorted by normalized domain and stored in blocks of {@value #BLOCK_SIZE}, where each key shares a prefix with the
+ * previous key in the block. A lookup is a binary search over the first keys of the blocks, followed by a scan of one block.
+ * The index ends with the offsets of the blocks and a fixed size footer: table offset, block count, entry count, version, magic.
+ *
+ * @version $Id$
+ */
+public final class DomainBlacklistIndex extends AbstractMap<String, String> {
+
+    private static final Logger log = Logger.getLogger(DomainBlacklistIndex.class);
+
+    static final int MAGIC = 0x44424c49;
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 16;
+    private static final int FOOTER_LENGTH = 20;
+
+    /** Writes the contents of an index, for example with {@link DomainBlacklistIndexBuilder#writeTo(OutputStream)} */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final ByteBuffer buffer;
+    private final int tableOffset;
+    private final int blockCount;
+    private final int entryCount;
+    private Set<Entry<String, String>> entrySet;
+
+    /**
+     * @param buffer buffer with the index, from position 0 to the limit. Only absolute reads are made, so it may be shared.
+     * @throws IOException if the buffer does not contain an index
+     */
+    public DomainBlacklistIndex(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        final int limit = buffer.limit();
+        if (limit < FOOTER_LENGTH || buffer.getInt(limit - 4) != MAGIC) {
+            throw new IOException("Not a domain block list index.");
+        }
+        if (buffer.getInt(limit - 8) != VERSION) {
+            throw new IOException("Unsupported domain block list index version " + buffer.getInt(limit - 8) + ".");
+        }
+        tableOffset = buffer.getInt(limit - FOOTER_LENGTH);
+        blockCount = buffer.getInt(limit - 16);
+        entryCount = buffer.getInt(limit - 12);
+        if (tableOffset < 0 || blockCount < 0 || (long) tableOffset + 4L * blockCount != limit - FOOTER_LENGTH) {
+            throw new IOException("Corrupt domain block list index.");
+        }
+    }
+
+    /**
+     * Creates an index on the heap.
+     * @param content writes the index
+     * @return the index
+     * @throws IOException if the index could not be written or is invalid
+     */
+    public static DomainBlacklistIndex create(final Content content) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeTo(out);
+        return new DomainBlacklistIndex(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Memory-maps the index file with the given name in a directory, and writes the file first if it does not exist. An existing
+     * file is only used if its SHA-256 hash is the expected one, and is written again otherwise. Falls back to an index on the
+     * heap if the file can not be written.
+     * <p>
+     * The directory is created readable and writable by the owner only, where the file system supports it.
+     *
+     * @param directory directory of index files on this node
+     * @param name file name, without extension
+     * @param sha256 the expected SHA-256 hash of the index, in hex. If null, the hash is computed when the index is written, and
+     *      stored next to it in a file with the extension .sha256.
+     * @param content writes the index, if the file does not exist or does not have the expected hash
+     * @return the index
+     * @throws IOException if the index could not be written or is invalid
+     */
+    public static DomainBlacklistIndex open(final Path directory, final String name, final String sha256, final Content content) throws IOException {
+        final Path file = directory.resolve(name + ".idx");
+        final Path sha256File = directory.resolve(name + ".sha256");
+        if (Files.exists(file)) {
+            final String expectedSha256 = sha256 != null ? sha256 : readSha256File(sha256File);
+            final ByteBuffer buffer = map(file);
+            if (expectedSha256 != null && expectedSha256.equalsIgnoreCase(sha256(buffer))) {
+                return new DomainBlacklistIndex(buffer);
+            }
+            log.warn("Domain block list index " + file + " does not have the expected SHA-256 hash, and is written again.");
+        }
+        Path tempFile = null;
+        try {
+            createDirectory(directory);
+            tempFile = Files.createTempFile(directory, name, ".tmp");
+            final MessageDigest digest = createSha256Digest();
+            try (final OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)), digest)) {
+                content.writeTo(out);
+            }
+            final String writtenSha256 = new String(Hex.encode(digest.digest()), StandardCharsets.US_ASCII);
+            if (sha256 != null && !sha256.equalsIgnoreCase(writtenSha256)) {
+                throw new IOException("SHA-256 hash of the written domain block list index does not match.");
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (sha256 == null) {
+                final Path tempSha256File = Files.createTempFile(directory, name, ".tmp");
+                Files.write(tempSha256File, writtenSha256.getBytes(StandardCharsets.US_ASCII));
+                Files.move(tempSha256File, sha256File, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Wrote domain block list index " + file + " (" + Files.size(file) + " bytes).");
+            }
+        } catch (IOException e) {
+            log.warn("Could not write domain block list index to " + file + ", the block list will be kept in memory: " + e.getMessage());
+            return create(content);
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        return new DomainBlacklistIndex(map(file));
+    }
+
+    private static ByteBuffer map(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static String sha256(final ByteBuffer buffer) {
+        final MessageDigest digest = createSha256Digest();
+        digest.update(buffer.duplicate());
+        return new String(Hex.encode(digest.digest()), StandardCharsets.US_ASCII);
+    }
+
+    /** @return the hash in the file, or null if there is no such file */
+    private static String readSha256File(final Path sha256File) throws IOException {
+        return Files.exists(sha256File) ? new String(Files.readAllBytes(sha256File), StandardCharsets.US_ASCII).trim() : null;
+    }
+
+    private static void createDirectory(final Path directory) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    private static MessageDigest createSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return entryCount;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key normalized domain
+     * @return the block listed domain, or null if the normalized domain is not in the index
+     */
+    @Override
+    public String get(final Object key) {
+        if (!(key instanceof String) || blockCount == 0) {
+            return null;
+        }
+        final byte[] wanted = ((String) key).getBytes(StandardCharsets.UTF_8);
+        // Find the last block with a first key less than or equal to the wanted key
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            final Cursor first = new Cursor(blockOffset(middle));
+            first.nextKey();
+            if (first.compareKey(wanted) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        final Cursor cursor = new Cursor(blockOffset(low));
+        final int entries = Math.min(BLOCK_SIZE, entryCount - low * BLOCK_SIZE);
+        for (int i = 0; i < entries; i++) {
+            cursor.nextKey();
+            final int comparison = cursor.compareKey(wanted);
+            if (comparison == 0) {
+                return cursor.value((String) key);
+            } else if (comparison > 0) {
+                return null;
+            }
+            cursor.skipValue();
+        }
+        return null;
+    }
+
+    /** The entries in the order of the normalized domains. Decodes all entries, so this is intended for small block lists. */
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, String>>() {
+                @Override
+                public int size() {
+                    return entryCount;
+                }
+
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    @Override
+    public String put(final String key, final String value) {
+        throw new UnsupportedOperationException("Domain block list index is immutable.");
+    }
+
+    private int blockOffset(final int block) {
+        return buffer.getInt(tableOffset + 4 * block);
+    }
+
+    /** Reads the entries of the index sequentially. Not thread safe, so each lookup creates its own. */
+    private final class Cursor {
+        private int position;
+        private byte[] key = new byte[64];
+        private int keyLength = 0;
+
+        Cursor(final int position) {
+            this.position = position;
+        }
+
+        /** Reads the next key, which shares a prefix with the key that was read before it */
+        void nextKey() {
+            final int shared = readVarint();
+            final int suffixLength = readVarint();
+            if (shared + suffixLength > key.length) {
+                key = Arrays.copyOf(key, Math.max(key.length * 2, shared + suffixLength));
+            }
+            for (int i = 0; i < suffixLength; i++) {
+                key[shared + i] = buffer.get(position++);
+            }
+            keyLength = shared + suffixLength;
+        }
+
+        int compareKey(final byte[] other) {
+            return Arrays.compareUnsigned(key, 0, keyLength, other, 0, other.length);
+        }
+
+        String value(final String normalizedDomain) {
+            final int valueLength = readVarint();
+            if (valueLength == 0) {
+                return normalizedDomain;
+            }
+            final byte[] value = new byte[valueLength];
+            for (int i = 0; i < valueLength; i++) {
+                value[i] = buffer.get(position++);
+            }
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        void skipValue() {
+            final int valueLength = readVarint();
+            position += valueLength;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0;; shift += 7) {
+                final byte b = buffer.get(position++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+        private final Cursor cursor = new Cursor(blockCount == 0 ? 0 : blockOffset(0));
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            return next < entryCount;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next % BLOCK_SIZE == 0) {
+                cursor.position = blockOffset(next / BLOCK_SIZE);
+            }
+            next++;
+            cursor.nextKey();
+            final String normalizedDomain = new String(cursor.key, 0, cursor.keyLength, StandardCharsets.UTF_8);
+            return new SimpleImmutableEntry<>(normalizedDomain, cursor.value(normalizedDomain));
+        }
+    }
+}
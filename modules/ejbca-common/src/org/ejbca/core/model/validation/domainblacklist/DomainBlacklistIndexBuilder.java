@@ -0,0 +1,228 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA: The OpenSource Certificate Authority                          *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation.domainblacklist;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compiles a domain block list into the binary format of {@link DomainBlacklistIndex}.
+ * <p>
+ * The added domains are kept as UTF-8 bytes in one growing array, and are sorted by offset into that array, so that large
+ * block lists can be compiled without keeping a String object per domain. If several domains have the same normalized form,
+ * the largest unnormalized domain is kept.
+ *
+ * @version $Id$
+ */
+public class DomainBlacklistIndexBuilder {
+
+    private byte[] records = new byte[4096];
+    private int recordsLength = 0;
+    private int[] offsets = new int[256];
+    private int count = 0;
+
+    /**
+     * Adds a domain to the block list.
+     * @param normalizedDomain the domain after normalization, which is the lookup key in the index
+     * @param domain the block listed domain as it was uploaded
+     */
+    public void add(final String normalizedDomain, final String domain) {
+        final byte[] key = normalizedDomain.getBytes(StandardCharsets.UTF_8);
+        final byte[] value = domain.getBytes(StandardCharsets.UTF_8);
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = recordsLength;
+        ensureCapacity(key.length + value.length + 10);
+        recordsLength = writeVarint(records, recordsLength, key.length);
+        System.arraycopy(key, 0, records, recordsLength, key.length);
+        recordsLength += key.length;
+        recordsLength = writeVarint(records, recordsLength, value.length);
+        System.arraycopy(value, 0, records, recordsLength, value.length);
+        recordsLength += value.length;
+    }
+
+    /**
+     * Writes the compiled index.
+     * @param out stream to write to. Not closed.
+     * @return the number of entries in the index
+     * @throws IOException if writing fails
+     */
+    public int writeTo(final OutputStream out) throws IOException {
+        final int[] sorted = Arrays.copyOf(offsets, count);
+        mergeSort(sorted, new int[count], 0, count);
+        final CountingOutputStream counting = new CountingOutputStream(out);
+        final DataOutputStream dataOut = new DataOutputStream(counting);
+        int[] blockOffsets = new int[count / DomainBlacklistIndex.BLOCK_SIZE + 1];
+        int entries = 0;
+        int previous = -1;
+        for (int i = 0; i < count; i++) {
+            // Of equal keys, the last one in sort order (with the largest value) is kept
+            if (i + 1 < count && compareField(sorted[i], sorted[i + 1]) == 0) {
+                continue;
+            }
+            final int keyLength = readVarint(sorted[i]);
+            final int keyOffset = sorted[i] + varintLength(keyLength);
+            int shared = 0;
+            if (entries % DomainBlacklistIndex.BLOCK_SIZE == 0) {
+                blockOffsets[entries / DomainBlacklistIndex.BLOCK_SIZE] = counting.count;
+            } else {
+                final int previousLength = readVarint(previous);
+                final int previousOffset = previous + varintLength(previousLength);
+                final int max = Math.min(keyLength, previousLength);
+                while (shared < max && records[keyOffset + shared] == records[previousOffset + shared]) {
+                    shared++;
+                }
+            }
+            writeVarint(dataOut, shared);
+            writeVarint(dataOut, keyLength - shared);
+            dataOut.write(records, keyOffset + shared, keyLength - shared);
+            final int valueLengthOffset = keyOffset + keyLength;
+            final int valueLength = readVarint(valueLengthOffset);
+            final int valueOffset = valueLengthOffset + varintLength(valueLength);
+            if (valueLength == keyLength && Arrays.equals(records, keyOffset, keyOffset + keyLength, records, valueOffset, valueOffset + valueLength)) {
+                writeVarint(dataOut, 0); // Same as the key, which is the common case without normalizations
+            } else {
+                writeVarint(dataOut, valueLength);
+                dataOut.write(records, valueOffset, valueLength);
+            }
+            previous = sorted[i];
+            entries++;
+        }
+        final int blockCount = (entries + DomainBlacklistIndex.BLOCK_SIZE - 1) / DomainBlacklistIndex.BLOCK_SIZE;
+        final int tableOffset = counting.count;
+        for (int i = 0; i < blockCount; i++) {
+            dataOut.writeInt(blockOffsets[i]);
+        }
+        dataOut.writeInt(tableOffset);
+        dataOut.writeInt(blockCount);
+        dataOut.writeInt(entries);
+        dataOut.writeInt(DomainBlacklistIndex.VERSION);
+        dataOut.writeInt(DomainBlacklistIndex.MAGIC);
+        dataOut.flush();
+        return entries;
+    }
+
+    /** Sorts the record offsets by key, and then by value. Stable, and without boxing the offsets. */
+    private void mergeSort(final int[] a, final int[] tmp, final int from, final int to) {
+        if (to - from < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        mergeSort(a, tmp, from, middle);
+        mergeSort(a, tmp, middle, to);
+        if (compareRecords(a[middle - 1], a[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compareRecords(tmp[left], tmp[right]) <= 0)) {
+                a[i] = tmp[left++];
+            } else {
+                a[i] = tmp[right++];
+            }
+        }
+    }
+
+    private int compareRecords(final int a, final int b) {
+        final int keys = compareField(a, b);
+        if (keys != 0) {
+            return keys;
+        }
+        final int aKeyLength = readVarint(a);
+        final int bKeyLength = readVarint(b);
+        return compareField(a + varintLength(aKeyLength) + aKeyLength, b + varintLength(bKeyLength) + bKeyLength);
+    }
+
+    /** Compares two length prefixed fields as unsigned bytes */
+    private int compareField(final int a, final int b) {
+        final int aLength = readVarint(a);
+        final int bLength = readVarint(b);
+        return Arrays.compareUnsigned(records, a + varintLength(aLength), a + varintLength(aLength) + aLength,
+                records, b + varintLength(bLength), b + varintLength(bLength) + bLength);
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (recordsLength + extra > records.length) {
+            records = Arrays.copyOf(records, Math.max(records.length * 2, recordsLength + extra));
+        }
+    }
+
+    private int readVarint(int position) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            final byte b = records[position++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int varintLength(final int value) {
+        int length = 1;
+        for (int v = value >>> 7; v != 0; v >>>= 7) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int writeVarint(final byte[] buffer, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static void writeVarint(final OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Keeps track of the offsets of the blocks in the written index */
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private int count = 0;
+
+        CountingOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
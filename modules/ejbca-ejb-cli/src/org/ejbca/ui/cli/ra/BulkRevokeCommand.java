@@ -0,0 +1,154 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.cli.ra;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.certificateprofile.CertificateProfileSessionRemote;
+import org.cesecore.util.EjbRemoteHelper;
+import org.ejbca.core.ejb.ca.revoke.BulkRevocationSessionRemote;
+import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileSessionRemote;
+import org.ejbca.core.model.ra.BulkRevocationSelector;
+import org.ejbca.core.model.ra.raadmin.EndEntityProfileNotFoundException;
+import org.ejbca.ui.cli.infrastructure.command.CommandResult;
+import org.ejbca.ui.cli.infrastructure.parameter.Parameter;
+import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.MandatoryMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.ParameterMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.StandaloneMode;
+
+/**
+ * Starts revoking all certificates issued by a CA, with a certificate or end entity profile, or from a list of serial numbers.
+ *
+ * @version $Id$
+ */
+public class BulkRevokeCommand extends BaseRaCommand {
+
+    private static final Logger log = Logger.getLogger(BulkRevokeCommand.class);
+
+    private static final String DN_KEY = "--dn";
+    private static final String CERTIFICATE_PROFILE_KEY = "--certprofile";
+    private static final String END_ENTITY_PROFILE_KEY = "--eeprofile";
+    private static final String SERIALS_KEY = "--serials";
+    private static final String REASON_KEY = "-r";
+
+    {
+        registerParameter(new Parameter(DN_KEY, "Issuer DN", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
+                "Revoke certificates issued by the CA with this DN. Required with " + SERIALS_KEY + "."));
+        registerParameter(new Parameter(CERTIFICATE_PROFILE_KEY, "Certificate Profile", MandatoryMode.OPTIONAL, StandaloneMode.FORBID,
+                ParameterMode.ARGUMENT, "Revoke certificates issued with the certificate profile with this name."));
+        registerParameter(new Parameter(END_ENTITY_PROFILE_KEY, "End Entity Profile", MandatoryMode.OPTIONAL, StandaloneMode.FORBID,
+                ParameterMode.ARGUMENT, "Revoke certificates issued with the end entity profile with this name."));
+        registerParameter(new Parameter(SERIALS_KEY, "Serial Number File", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
+                "Revoke the certificates with the serial numbers in this file, one serial number in HEX per line."));
+        registerParameter(new Parameter(REASON_KEY, "Reason", MandatoryMode.MANDATORY, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
+                "Reason integer value: unused(0), keyCompromise(1), cACompromise(2), affiliationChanged(3),"
+                        + " superseded(4), cessationOfOperation(5), certficateHold(6), privilegeWithdrawn(9), aACompromise(10)."));
+    }
+
+    @Override
+    public String getMainCommand() {
+        return "bulkrevoke";
+    }
+
+    @Override
+    public CommandResult execute(ParameterContainer parameters) {
+        final int reason;
+        try {
+            reason = Integer.parseInt(parameters.get(REASON_KEY));
+        } catch (NumberFormatException e) {
+            log.error("ERROR: " + parameters.get(REASON_KEY) + " was not a number.");
+            return CommandResult.FUNCTIONAL_FAILURE;
+        }
+        if ((reason == 7) || (reason == 8) || (reason < 0) || (reason > 10)) {
+            log.error("ERROR: Reason must be an integer between 0 and 10 except 7 and 8.");
+            return CommandResult.FUNCTIONAL_FAILURE;
+        }
+        final BulkRevocationSelector selector = new BulkRevocationSelector();
+        selector.setIssuerDn(parameters.get(DN_KEY));
+        final String certificateProfile = parameters.get(CERTIFICATE_PROFILE_KEY);
+        if (certificateProfile != null) {
+            final int certificateProfileId = EjbRemoteHelper.INSTANCE.getRemoteSession(CertificateProfileSessionRemote.class)
+                    .getCertificateProfileId(certificateProfile);
+            if (certificateProfileId == CertificateProfileConstants.CERTPROFILE_NO_PROFILE) {
+                log.error("ERROR: Certificate Profile '" + certificateProfile + "' does not exist.");
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+            selector.setCertificateProfileId(certificateProfileId);
+        }
+        final String endEntityProfile = parameters.get(END_ENTITY_PROFILE_KEY);
+        if (endEntityProfile != null) {
+            try {
+                selector.setEndEntityProfileId(
+                        EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityProfileSessionRemote.class).getEndEntityProfileId(endEntityProfile));
+            } catch (EndEntityProfileNotFoundException e) {
+                log.error("ERROR: End Entity Profile '" + endEntityProfile + "' does not exist.");
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+        }
+        final String serialsFile = parameters.get(SERIALS_KEY);
+        if (serialsFile != null) {
+            try (final Reader reader = new InputStreamReader(new FileInputStream(serialsFile), StandardCharsets.UTF_8)) {
+                selector.setSerialNumbers(BulkRevocationSelector.readSerialNumbers(reader));
+            } catch (IOException e) {
+                log.error("ERROR: Could not read " + serialsFile + ": " + e.getMessage());
+                return CommandResult.FUNCTIONAL_FAILURE;
+            } catch (IllegalArgumentException e) {
+                log.error("ERROR: " + serialsFile + ": " + e.getMessage());
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+        }
+        try {
+            final int jobId = EjbRemoteHelper.INSTANCE.getRemoteSession(BulkRevocationSessionRemote.class).startBulkRevocation(getAuthenticationToken(),
+                    selector, reason);
+            log.info("Started bulk revocation " + jobId + " of " + selector + " with reason " + reason + ".");
+            log.info("Use 'ra bulkrevokestatus --id " + jobId + "' to follow the progress.");
+        } catch (AuthorizationDeniedException e) {
+            log.error("ERROR: CLI user not authorized to revoke the certificates: " + e.getMessage());
+            return CommandResult.AUTHORIZATION_FAILURE;
+        } catch (IllegalArgumentException e) {
+            log.error("ERROR: " + e.getMessage());
+            return CommandResult.FUNCTIONAL_FAILURE;
+        }
+        return CommandResult.SUCCESS;
+    }
+
+    @Override
+    public String getCommandDescription() {
+        return "Revokes all certificates issued by a CA, with a profile, or from a list of serial numbers.";
+    }
+
+    @Override
+    public String getFullHelpText() {
+        return getCommandDescription() + "\nThe criteria are combined, so '" + DN_KEY + "' and '" + CERTIFICATE_PROFILE_KEY
+                + "' revokes the certificates issued by the CA with the certificate profile. Certificates that are already revoked are not changed,"
+                + " and certificates that require approval to be revoked are skipped.\n"
+                + "The certificates are revoked in the background, in chunks of 'bulkrevocation.chunksize' certificates (in ejbca.properties)."
+                + " A CRL is created for each affected CA when all certificates have been revoked."
+                + " Use 'ra bulkrevokestatus' to follow the progress, or to cancel or resume the revocation.\n"
+                + "Example: ra bulkrevoke " + DN_KEY + " \"CN=ManagementCA\" " + SERIALS_KEY + " serials.txt " + REASON_KEY + " 1";
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+}
@@ -0,0 +1,133 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.cli.ra;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.util.EjbRemoteHelper;
+import org.cesecore.util.ValidityDate;
+import org.ejbca.core.ejb.ca.revoke.BulkRevocationSessionRemote;
+import org.ejbca.core.model.ra.BulkRevocationJob;
+import org.ejbca.ui.cli.infrastructure.command.CommandResult;
+import org.ejbca.ui.cli.infrastructure.parameter.Parameter;
+import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.MandatoryMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.ParameterMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.StandaloneMode;
+
+/**
+ * Shows the progress of bulk revocations, and cancels or resumes them.
+ *
+ * @version $Id$
+ */
+public class BulkRevokeStatusCommand extends BaseRaCommand {
+
+    private static final Logger log = Logger.getLogger(BulkRevokeStatusCommand.class);
+
+    private static final String ID_KEY = "--id";
+    private static final String CANCEL_KEY = "--cancel";
+    private static final String RESUME_KEY = "--resume";
+
+    {
+        registerParameter(new Parameter(ID_KEY, "Job ID", MandatoryMode.OPTIONAL, StandaloneMode.ALLOW, ParameterMode.ARGUMENT,
+                "The id of a bulk revocation. If omitted, all bulk revocations on this node are listed."));
+        registerParameter(new Parameter(CANCEL_KEY, "Cancel", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.FLAG,
+                "Stop the bulk revocation at the end of the current chunk."));
+        registerParameter(new Parameter(RESUME_KEY, "Resume", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.FLAG,
+                "Resume a cancelled or failed bulk revocation from the end of its last completed chunk."));
+    }
+
+    @Override
+    public String getMainCommand() {
+        return "bulkrevokestatus";
+    }
+
+    @Override
+    public CommandResult execute(ParameterContainer parameters) {
+        final BulkRevocationSessionRemote bulkRevocationSession = EjbRemoteHelper.INSTANCE.getRemoteSession(BulkRevocationSessionRemote.class);
+        final boolean cancel = parameters.get(CANCEL_KEY) != null;
+        final boolean resume = parameters.get(RESUME_KEY) != null;
+        try {
+            if (parameters.get(ID_KEY) == null) {
+                if (cancel || resume) {
+                    log.error("ERROR: " + ID_KEY + " is required with " + CANCEL_KEY + " and " + RESUME_KEY + ".");
+                    return CommandResult.FUNCTIONAL_FAILURE;
+                }
+                final List<BulkRevocationJob> jobs = bulkRevocationSession.getBulkRevocationJobs(getAuthenticationToken());
+                if (jobs.isEmpty()) {
+                    log.info("There are no bulk revocations on this node.");
+                }
+                for (final BulkRevocationJob job : jobs) {
+                    printJob(job);
+                }
+                return CommandResult.SUCCESS;
+            }
+            final int jobId;
+            try {
+                jobId = Integer.parseInt(parameters.get(ID_KEY));
+            } catch (NumberFormatException e) {
+                log.error("ERROR: " + parameters.get(ID_KEY) + " was not a number.");
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+            if (cancel && !bulkRevocationSession.cancelBulkRevocation(getAuthenticationToken(), jobId)) {
+                log.error("ERROR: Bulk revocation " + jobId + " is not running.");
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+            if (resume && !bulkRevocationSession.resumeBulkRevocation(getAuthenticationToken(), jobId)) {
+                log.error("ERROR: Bulk revocation " + jobId + " has not been cancelled or failed.");
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+            final BulkRevocationJob job = bulkRevocationSession.getBulkRevocationJob(getAuthenticationToken(), jobId);
+            if (job == null) {
+                log.error("ERROR: There is no bulk revocation with id " + jobId + " on this node.");
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+            printJob(job);
+        } catch (AuthorizationDeniedException e) {
+            log.error("ERROR: CLI user not authorized to revoke certificates.");
+            return CommandResult.AUTHORIZATION_FAILURE;
+        }
+        return CommandResult.SUCCESS;
+    }
+
+    private void printJob(final BulkRevocationJob job) {
+        log.info("Bulk revocation " + job.getId() + " of " + job.getSelector() + " with reason " + job.getReason() + ", started by "
+                + job.getAdministrator() + " at " + ValidityDate.formatAsISO8601ServerTZ(job.getCreated(), ValidityDate.TIMEZONE_SERVER));
+        log.info("    State: " + job.getState() + (job.isCancelRequested() ? " (cancelling)" : "") + ", last update: "
+                + ValidityDate.formatAsISO8601ServerTZ(job.getLastUpdate(), ValidityDate.TIMEZONE_SERVER));
+        log.info("    Processed " + job.getProcessed() + " of " + job.getTotal() + ", revoked " + job.getRevoked() + ", skipped " + job.getSkipped());
+        if (job.getMessage() != null) {
+            log.info("    " + job.getMessage());
+        }
+    }
+
+    @Override
+    public String getCommandDescription() {
+        return "Shows the progress of bulk revocations, and cancels or resumes them.";
+    }
+
+    @Override
+    public String getFullHelpText() {
+        return getCommandDescription() + "\nBulk revocations are started with 'ra bulkrevoke'. The progress is kept on the node that runs the"
+                + " revocation, until it is restarted. Certificates that are already revoked are not selected again, so a bulk revocation that was"
+                + " stopped by a restart can be continued by running 'ra bulkrevoke' again with the same criteria.";
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+}
@@ -23,6 +23,7 @@ import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.endentity.ExtendedInformation;
 import org.cesecore.oscp.OcspResponseData;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.ca.publisher.BatchPublisher;
 import org.ejbca.core.model.ca.publisher.CustomPublisherContainer;
 import org.ejbca.core.model.ca.publisher.PublisherException;
 import org.ejbca.core.model.ca.publisher.PublisherQueueData;
@@ -159,6 +160,32 @@ public interface PublisherQueueSessionLocal {
 	 * @throws PublisherException if a communication or other error occurs (storing in the queue due to publisher downtime is not an error).
 	 */
 	boolean publishOcspResponsesNonTransactional(final CustomPublisherContainer publisher, final AuthenticationToken admin, final OcspResponseData ocspResponseData) throws PublisherException;
+
+    /**
+     * Publishes several certificates in one call to a publisher that supports batch publishing. Publishers do not run as part of
+     * regular transactions and expect to run in auto-commit mode.
+     *
+     * @param publisher the publisher to store the certificates to
+     * @param admin the administrator publishing the certificates, it's up to the publisher to decide if authorization is needed or not
+     * @param certificates the certificates to publish
+     * @return one result per certificate, in the same order
+     * @throws PublisherException if a communication or other error occurs, so that none of the certificates were published.
+     */
+    List<BatchPublisher.Result> publishCertificatesNonTransactional(BasePublisher publisher, AuthenticationToken admin,
+            List<BatchPublisher.CertificateItem> certificates) throws PublisherException;
+
+    /**
+     * Publishes several OCSP responses in one call to a publisher that supports batch publishing. Publishers do not run as part of
+     * regular transactions and expect to run in auto-commit mode.
+     *
+     * @param publisher the publisher to store the OCSP responses to
+     * @param admin the administrator publishing the responses, it's up to the publisher to decide if authorization is needed or not
+     * @param ocspResponses the OCSP responses to publish
+     * @return one result per OCSP response, in the same order
+     * @throws PublisherException if a communication or other error occurs, so that none of the responses were published.
+     */
+    List<BatchPublisher.Result> publishOcspResponsesNonTransactional(CustomPublisherContainer publisher, AuthenticationToken admin,
+            List<OcspResponseData> ocspResponses) throws PublisherException;
 	
 	
     /**
@@ -22,6 +22,7 @@ import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.endentity.ExtendedInformation;
+import org.cesecore.oscp.OcspResponseData;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
 import org.ejbca.core.model.ca.publisher.PublisherConnectionException;
 
@@ -48,6 +49,20 @@ public interface PublisherSessionLocal extends PublisherSession {
      */
     void testConnection(int publisherid) throws PublisherConnectionException; // NOPMD: this is not a JUnit test
 
+    /**
+     * Publishes several OCSP responses to the given collection of publishers. Publishers that support batch publishing get all
+     * the responses in one call. Responses that could not be published are added to the publisher queue, if the publisher uses
+     * the queue for OCSP responses.
+     *
+     * @param admin administrator performing the operation (if any)
+     * @param publisherids a Collection (Integer) of publisher ids
+     * @param ocspResponses data to be published
+     * @return true if all responses were published, or queued, on all given publishers
+     * @throws AuthorizationDeniedException if access was denied to a CA of the responses
+     */
+    boolean storeOcspResponses(AuthenticationToken admin, Collection<Integer> publisherids, List<OcspResponseData> ocspResponses)
+            throws AuthorizationDeniedException;
+
     /**
      * Retrieves a Map of all Publishers
      * 
@@ -0,0 +1,81 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.revoke;
+
+import java.util.List;
+
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.ejbca.core.model.ra.BulkRevocationJob;
+import org.ejbca.core.model.ra.BulkRevocationSelector;
+
+/**
+ * Revokes large numbers of certificates in the background. The certificates are revoked in chunks, each in its own transaction, with one
+ * audit log entry per chunk and CA. The revocations are added to the publisher queue and published in batches, and a new CRL is created
+ * for each affected CA when the job has completed.
+ * <p>
+ * Only certificates that are not already revoked are selected, so running the same selector again continues where a previous job
+ * stopped, also after a restart. Certificates that require approval to be revoked are skipped. The progress of the jobs is kept on the
+ * node that runs them.
+ *
+ * @version $Id$
+ */
+public interface BulkRevocationSession {
+
+    /**
+     * Starts revoking the certificates matched by a selector in the background.
+     *
+     * @param admin the administrator, who must be authorized to revoke certificates and to the CAs
+     * @param selector the certificates to revoke
+     * @param reason the revocation reason, one of the RevokedCertInfo.REVOCATION_REASON_ constants
+     * @return the id of the new job
+     * @throws AuthorizationDeniedException if the administrator is not authorized to revoke the selected certificates
+     * @throws IllegalArgumentException if the selector or reason is not valid
+     */
+    int startBulkRevocation(AuthenticationToken admin, BulkRevocationSelector selector, int reason) throws AuthorizationDeniedException;
+
+    /**
+     * Resumes a job that has failed or been cancelled, from the end of its last completed chunk.
+     *
+     * @param admin the administrator, who must be authorized to revoke certificates
+     * @param jobId the id of the job
+     * @return true if the job was resumed, false if it does not exist or is running or completed
+     * @throws AuthorizationDeniedException if the administrator is not authorized to revoke certificates
+     */
+    boolean resumeBulkRevocation(AuthenticationToken admin, int jobId) throws AuthorizationDeniedException;
+
+    /**
+     * Asks a running job to stop at the end of the current chunk.
+     *
+     * @param admin the administrator, who must be authorized to revoke certificates
+     * @param jobId the id of the job
+     * @return true if the job is running and will stop
+     * @throws AuthorizationDeniedException if the administrator is not authorized to revoke certificates
+     */
+    boolean cancelBulkRevocation(AuthenticationToken admin, int jobId) throws AuthorizationDeniedException;
+
+    /**
+     * @param admin the administrator, who must be authorized to revoke certificates
+     * @param jobId the id of the job
+     * @return the current progress of the job, or null if there is no such job on this node
+     * @throws AuthorizationDeniedException if the administrator is not authorized to revoke certificates
+     */
+    BulkRevocationJob getBulkRevocationJob(AuthenticationToken admin, int jobId) throws AuthorizationDeniedException;
+
+    /**
+     * @param admin the administrator, who must be authorized to revoke certificates
+     * @return the current progress of the jobs on this node, most recent first
+     * @throws AuthorizationDeniedException if the administrator is not authorized to revoke certificates
+     */
+    List<BulkRevocationJob> getBulkRevocationJobs(AuthenticationToken admin) throws AuthorizationDeniedException;
+}
@@ -0,0 +1,49 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.revoke;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.ejb.Local;
+
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.ejbca.core.model.ra.BulkRevocationJob;
+
+/**
+ * @version $Id$
+ */
+@Local
+public interface BulkRevocationSessionLocal extends BulkRevocationSession {
+
+    /**
+     * Runs a job until all matching certificates have been processed, the job is cancelled or a chunk fails. Invoked asynchronously
+     * by {@link #startBulkRevocation} and {@link #resumeBulkRevocation}.
+     *
+     * @param admin the administrator that started the job
+     * @param jobId the id of the job
+     */
+    void runBulkRevocation(AuthenticationToken admin, int jobId);
+
+    /**
+     * Revokes one chunk of certificates in a new transaction, and adds the revocations to the publisher queue.
+     *
+     * @param admin the administrator that started the job
+     * @param jobId the id of the job, for the audit log
+     * @param fingerprints the certificates to revoke
+     * @param reason the revocation reason
+     * @param revocationDate the revocation date
+     * @return the number of revoked certificates, and the affected CAs and publishers
+     */
+    BulkRevocationJob.ChunkResult revokeChunk(AuthenticationToken admin, int jobId, List<String> fingerprints, int reason, Date revocationDate);
+}
@@ -0,0 +1,114 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import java.io.Serializable;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+
+/**
+ * Outcome of checking, and if needed generating, the CRL or delta CRL of a single CRL partition of a CA.
+ */
+public final class CrlGenerationResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int caId;
+    private final String caName;
+    private final int crlPartitionIndex;
+    private final boolean deltaCrl;
+    private final boolean generated;
+    private final String errorMessage;
+    private final long waitTime;
+    private final long generationTime;
+
+    /**
+     * @param caId ID of the CA
+     * @param caName name of the CA
+     * @param crlPartitionIndex CRL partition index, or {@link CertificateConstants#NO_CRL_PARTITION} for the main CRL
+     * @param deltaCrl true if this is the result of delta CRL generation
+     * @param generated true if a new CRL was generated
+     * @param errorMessage message describing why generation failed, or null if it did not fail
+     * @param waitTime milliseconds the job waited for a free thread and crypto token
+     * @param generationTime milliseconds spent checking and generating the CRL
+     */
+    public CrlGenerationResult(final int caId, final String caName, final int crlPartitionIndex, final boolean deltaCrl, final boolean generated,
+            final String errorMessage, final long waitTime, final long generationTime) {
+        this.caId = caId;
+        this.caName = caName;
+        this.crlPartitionIndex = crlPartitionIndex;
+        this.deltaCrl = deltaCrl;
+        this.generated = generated;
+        this.errorMessage = errorMessage;
+        this.waitTime = waitTime;
+        this.generationTime = generationTime;
+    }
+
+    public int getCaId() {
+        return caId;
+    }
+
+    public String getCaName() {
+        return caName;
+    }
+
+    /** @return the CRL partition index, or {@link CertificateConstants#NO_CRL_PARTITION} for the main CRL */
+    public int getCrlPartitionIndex() {
+        return crlPartitionIndex;
+    }
+
+    public boolean isDeltaCrl() {
+        return deltaCrl;
+    }
+
+    /** @return true if a new CRL was generated */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    /** @return true if CRL generation failed, for example because the crypto token was offline */
+    public boolean isFailed() {
+        return errorMessage != null;
+    }
+
+    /** @return the reason CRL generation failed, or null if it did not fail */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /** @return milliseconds the job waited for a free thread and for its crypto token */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    /** @return milliseconds spent checking and generating the CRL */
+    public long getGenerationTime() {
+        return generationTime;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(deltaCrl ? "Delta CRL" : "CRL").append(" of CA '").append(caName).append("' (").append(caId).append(")");
+        if (crlPartitionIndex != CertificateConstants.NO_CRL_PARTITION) {
+            sb.append(" partition ").append(crlPartitionIndex);
+        }
+        if (errorMessage != null) {
+            sb.append(" failed: ").append(errorMessage);
+        } else {
+            sb.append(generated ? " generated" : " not needed");
+        }
+        sb.append(" in ").append(generationTime).append(" ms (waited ").append(waitTime).append(" ms)");
+        return sb.toString();
+    }
+}
@@ -14,7 +14,9 @@ package org.ejbca.core.ejb.crl;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
@@ -66,6 +68,34 @@ public interface PublishingCrlSessionLocal extends PublishingCrlSession {
      * @return a set of all CAs that had CRLs created.               
      */
      Set<Integer> createDeltaCRLs(AuthenticationToken admin, Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException;
+
+    /**
+     * Same as {@link #createCRLs(AuthenticationToken, Collection, long)}, but returns the outcome for each CRL partition.
+     * <p>
+     * CRLs of different CAs and CRL partitions are generated concurrently, limited by the configuration properties crlgeneration.threads
+     * and crlgeneration.threadspercryptotoken.
+     *
+     * @param admin administrator performing the task
+     * @param caids list of CA ids (Integer) that will be checked, or null in which case ALL CAs will be checked
+     * @param addtocrloverlaptime given in milliseconds and added to the CRL overlap time, see {@link #createCRLs(AuthenticationToken, Collection, long)}
+     * @return the result and timing of each CRL partition of the CAs that issue CRLs
+     */
+    List<CrlGenerationResult> createCrlsWithResults(AuthenticationToken admin, Collection<Integer> caids, long addtocrloverlaptime)
+            throws AuthorizationDeniedException;
+
+    /**
+     * Same as {@link #createDeltaCRLs(AuthenticationToken, Collection, long)}, but returns the outcome for each CRL partition.
+     * <p>
+     * Delta CRLs of different CAs and CRL partitions are generated concurrently, limited by the configuration properties crlgeneration.threads
+     * and crlgeneration.threadspercryptotoken.
+     *
+     * @param admin administrator performing the task
+     * @param caids list of CA ids (Integer) that will be checked, or null in which case ALL CAs will be checked
+     * @param crloverlaptime A new delta CRL is created if the current one expires within the crloverlaptime given in milliseconds
+     * @return the result and timing of each CRL partition of the CAs that issue delta CRLs
+     */
+    List<CrlGenerationResult> createDeltaCrlsWithResults(AuthenticationToken admin, Collection<Integer> caids, long crloverlaptime)
+            throws AuthorizationDeniedException;
     
     /**
      * Method that checks if the delta CRL needs to be updated and then creates
@@ -83,6 +113,28 @@ public interface PublishingCrlSessionLocal extends PublishingCrlSession {
     boolean createDeltaCrlConditioned(AuthenticationToken admin, int caid, long crloverlaptime)
             throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException;
 
+    /**
+     * Internal method, do not use. Asynchronously checks if a CRL partition of an active CA needs a new CRL and creates it, in a transaction
+     * of its own. Called through the business proxy by the CRL generation jobs of {@link #createCrlsWithResults(AuthenticationToken, Collection, long)}.
+     *
+     * @param admin administrator performing the task
+     * @param caId the id of the CA this operation regards
+     * @param crlPartitionIndex CRL partition index, or CertificateConstants.NO_CRL_PARTITION if partitioning is not used
+     * @param now the time the check was started
+     * @param addToCrlOverlapTime given in milliseconds and added to the CRL overlap time
+     * @return a future that is true if a CRL was created
+     */
+    Future<Boolean> internalCreateCrlForCrlPartitionAsync(AuthenticationToken admin, int caId, int crlPartitionIndex, Date now, long addToCrlOverlapTime)
+            throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException;
+
+    /**
+     * Internal method, do not use. Delta CRL counterpart of {@link #internalCreateCrlForCrlPartitionAsync(AuthenticationToken, int, int, Date, long)}.
+     *
+     * @return a future that is true if a delta CRL was created
+     */
+    Future<Boolean> internalCreateDeltaCrlForCrlPartitionAsync(AuthenticationToken admin, int caId, int crlPartitionIndex, Date now, long addToCrlOverlapTime)
+            throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException;
+
     /** Internal method, do not use. Needs to be here for transaction management. */
     String internalCreateCRL(AuthenticationToken admin, CA ca, int crlPartitionIndex, CRLInfo lastBaseCrlInfo, final Date validFrom)
             throws CAOfflineException, CryptoTokenOfflineException, AuthorizationDeniedException;
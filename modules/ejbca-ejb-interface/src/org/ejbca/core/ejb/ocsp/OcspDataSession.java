@@ -70,4 +70,18 @@ public interface OcspDataSession {
      * @return Serial numbers of the expired responses.
      */
     List<String> findExpiringOcpsData(Integer caId, long expirationDate, int maxNumberOfResults, int offset);
+
+    /**
+     * Returns serial numbers of the responses expired at or before the given expirationDate, like
+     * {@link #findExpiringOcpsData(Integer, long, int, int)}, but ordered by serial number. Pass the last
+     * serial number of the previous page to get the next one. Unlike an offset, this is not affected by
+     * responses that are replaced while paging.
+     *
+     * @param caId of the CA which signed the OCSP response
+     * @param expirationDate date before OCSP response expires.
+     * @param afterSerialNumber only return serial numbers after this one (as stored, i.e. in decimal), or "" to start from the beginning.
+     * @param maxNumberOfResults Maximum number of results for this query.
+     * @return Serial numbers of the expired responses.
+     */
+    List<String> findExpiringOcspDataAfter(Integer caId, long expirationDate, String afterSerialNumber, int maxNumberOfResults);
 }
@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ocsp;
 
+import java.util.Collection;
+
 import javax.ejb.Local;
 
 import org.cesecore.oscp.OcspResponseData;
@@ -36,6 +38,12 @@ public interface OcspDataSessionLocal extends OcspDataSession {
      * @param ocspResponseData
      */
     void storeOcspData(final OcspResponseData ocspResponseData);
+
+    /**
+     * Saves a batch of OCSP data in the table, in a single transaction.
+     * @param ocspResponseDatas the responses to store
+     */
+    void storeOcspData(final Collection<OcspResponseData> ocspResponseDatas);
     
     /**
      * Deletes all the OCSP data from table corresponding to serialNumber.
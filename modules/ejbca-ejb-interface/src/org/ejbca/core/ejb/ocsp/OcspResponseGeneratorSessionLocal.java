@@ -14,9 +14,13 @@ package org.ejbca.core.ejb.ocsp;
 
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
+import org.cesecore.oscp.OcspResponseData;
+
 
 /**
  * Local interface for OcspResponseGeneratorSession
@@ -33,6 +37,9 @@ public interface OcspResponseGeneratorSessionLocal extends OcspResponseGenerator
 
     String healthCheck();
 
+    /** @return queue depth and signing latency of the OCSP signing threads, one line per OCSP signer */
+    String getSigningStatistics();
+
     /** @see org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache#flush() */
     void clearOcspRequestSignerRevocationStatusCache();
 
@@ -50,4 +57,27 @@ public interface OcspResponseGeneratorSessionLocal extends OcspResponseGenerator
      * @param certIDHashAlgorithm of the certId
      */
     void preSignOcspResponse(X509Certificate cacert, BigInteger serialNr, boolean issueFinalResponse, boolean includeExpiredCertificates, String certIDHashAlgorithm);
+
+    /**
+     * Pre-produces OCSP responses for many certificates of the provided CA, like {@link #preSignOcspResponse}. Up to ocsp.signing.threads
+     * responses are produced at a time by {@link #internalPreSignOcspResponseAsync}, and are then stored in a single transaction.
+     *
+     * @param cacert of the CA which signs the OCSP responses
+     * @param serialNrs of the certificates to produce responses for.
+     * @param issueFinalResponse see {@link #preSignOcspResponse}
+     * @param includeExpiredCertificates to include expired certificates in presigned OCSP responses
+     * @param certIDHashAlgorithm of the certIds
+     * @return the number of responses that were produced and stored
+     */
+    int preSignOcspResponses(X509Certificate cacert, List<BigInteger> serialNrs, boolean issueFinalResponse, boolean includeExpiredCertificates,
+            String certIDHashAlgorithm);
+
+    /**
+     * Internal method, do not use. Produces one of the responses of {@link #preSignOcspResponses} on a container managed thread,
+     * without storing it.
+     *
+     * @return the response to store, or null if no response was produced
+     */
+    Future<OcspResponseData> internalPreSignOcspResponseAsync(X509Certificate cacert, BigInteger serialNr, boolean issueFinalResponse,
+            boolean includeExpiredCertificates, String certIDHashAlgorithm);
 }
@@ -13,10 +13,18 @@
 package org.ejbca.core.model.era;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CADoesntExistsException;
+import org.cesecore.certificates.certificateprofile.CertificateProfileDoesNotExistException;
+import org.ejbca.core.EjbcaException;
+import org.ejbca.core.model.ra.raadmin.EndEntityProfileNotFoundException;
+import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
+import org.ejbca.core.protocol.rest.EnrollPkcs10CertificateRequest;
 
 /**
  * Interface for EJB access to the RaMasterApi proxy singleton
@@ -58,4 +66,14 @@ public interface RaMasterApiProxyBeanLocal extends RaMasterApi {
 
     /** Restores the changed made by enableFunctionTracingForTest. Simply does nothing if there is nothing to restore */
     void restoreFunctionTracingAfterTest();
+
+    /**
+     * Enrolls a certificate like {@link #createCertificateRest(AuthenticationToken, EnrollPkcs10CertificateRequest)}, but asynchronously on a
+     * thread managed by the container. Used by bulk enrollments, which run several enrollments in parallel.
+     *
+     * @return the DER encoded certificate. If the enrollment fails, get() throws an ExecutionException with the cause.
+     */
+    Future<byte[]> createCertificateRestAsync(AuthenticationToken authenticationToken, EnrollPkcs10CertificateRequest enrollCertificateRequest)
+            throws CertificateProfileDoesNotExistException, CADoesntExistsException, AuthorizationDeniedException, EndEntityProfileNotFoundException,
+            EjbcaException, EndEntityProfileValidationException;
 }
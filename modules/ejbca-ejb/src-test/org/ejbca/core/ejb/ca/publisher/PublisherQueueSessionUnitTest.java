@@ -12,6 +12,9 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ca.publisher;
 
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
@@ -20,13 +23,20 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.Arrays;
+
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.certificates.certificate.NoConflictCertificateStoreSessionLocal;
+import org.cesecore.oscp.OcspResponseData;
 import org.easymock.EasyMock;
 import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.ca.publisher.BatchPublisher;
+import org.ejbca.core.model.ca.publisher.CustomPublisherContainer;
+import org.ejbca.core.model.ca.publisher.PublisherConst;
 import org.ejbca.core.model.services.workers.PublishQueueProcessWorker;
 import org.junit.Before;
 import org.junit.Test;
@@ -109,6 +119,39 @@ public class PublisherQueueSessionUnitTest {
         verify(publisherQueueSessionMock);
     }
 
+    /** Tests that queued OCSP responses are published with one call to a publisher that supports batch publishing */
+    @Test
+    public void publishOcspResponsesInBatch() throws Exception {
+        final EntityManager entityManager = EasyMock.createNiceMock(EntityManager.class);
+        final Query query = EasyMock.createNiceMock(Query.class);
+        final CustomPublisherContainer batchPublisher = EasyMock.createNiceMock(CustomPublisherContainer.class);
+        final PublisherQueueSessionLocal session = new PublisherQueueSessionBean(entityManager, noConflictCertificateStoreSessionMock, ocspDataSessionMock,
+                publisherQueueSessionMock);
+        final PublisherQueueData[] queued = new PublisherQueueData[3];
+        final OcspResponseData[] responses = new OcspResponseData[3];
+        for (int i = 0; i < 3; i++) {
+            queued[i] = new PublisherQueueData(1, PublisherConst.PUBLISH_TYPE_OCSP_RESPONSE, "response" + i,
+                    null, PublisherConst.STATUS_PENDING, false);
+            responses[i] = new OcspResponseData("response" + i, 4711, "01", 0L, null, new byte[] { 1 });
+        }
+        expect(entityManager.createQuery(anyString())).andReturn(query);
+        expect(query.getResultList()).andReturn(Arrays.asList(queued));
+        expect(batchPublisher.getPublisherId()).andReturn(1).anyTimes();
+        expect(batchPublisher.isBatchPublishingSupported()).andReturn(true).anyTimes();
+        // The second response has been removed from the database, so it is not sent to the publisher
+        expect(ocspDataSessionMock.findOcspDataById("response0")).andReturn(responses[0]);
+        expect(ocspDataSessionMock.findOcspDataById("response1")).andReturn(null);
+        expect(ocspDataSessionMock.findOcspDataById("response2")).andReturn(responses[2]);
+        expect(publisherQueueSessionMock.publishOcspResponsesNonTransactional(same(batchPublisher), same(adminMock), eq(Arrays.asList(responses[0], responses[2]))))
+                .andReturn(Arrays.asList(BatchPublisher.Result.success(), BatchPublisher.Result.failure()));
+        expect(entityManager.find(anyObject(), eq(queued[0].getPk()))).andReturn(queued[0]);
+        entityManager.remove(same(queued[0]));
+        replay(entityManager, query, batchPublisher, ocspDataSessionMock, publisherQueueSessionMock);
+        final PublishingResult result = session.doChunk(adminMock, batchPublisher);
+        verify(entityManager, ocspDataSessionMock, publisherQueueSessionMock);
+        assertResult(1, 2, result);
+    }
+
     private void assertResult(int numSuccesses, int numFailures, final PublishingResult actualResult) {
         assertNotNull("Should have a result object", actualResult);
         assertEquals("Wrong number of successful fingerprints", numSuccesses, actualResult.getSuccesses());
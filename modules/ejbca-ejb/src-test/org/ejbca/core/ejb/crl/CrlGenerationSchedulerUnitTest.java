@@ -0,0 +1,204 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ejb.EJBException;
+
+import org.cesecore.certificates.ca.CAOfflineException;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.ejbca.config.EjbcaConfigurationHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link CrlGenerationScheduler}
+ */
+public class CrlGenerationSchedulerUnitTest {
+
+    private static final int HSM_TOKEN_ID = 1;
+    private static final int SOFT_TOKEN_ID = 2;
+
+    /** Runs the tasks, like the asynchronous threads of the container */
+    private ExecutorService asynchronousExecutor;
+
+    @Before
+    public void before() {
+        asynchronousExecutor = Executors.newCachedThreadPool();
+        EjbcaConfigurationHolder.updateConfiguration("crlgeneration.threads", "4");
+        EjbcaConfigurationHolder.updateConfiguration("crlgeneration.threadspercryptotoken", "2");
+    }
+
+    @After
+    public void after() {
+        EjbcaConfigurationHolder.updateConfiguration("crlgeneration.threads", null);
+        EjbcaConfigurationHolder.updateConfiguration("crlgeneration.threadspercryptotoken", null);
+        asynchronousExecutor.shutdownNow();
+    }
+
+    @Test
+    public void resultsAndExceptions() {
+        final List<CrlGenerationScheduler.Job> jobs = new ArrayList<>();
+        jobs.add(new CrlGenerationScheduler.Job(100, "GeneratedCA", SOFT_TOKEN_ID, CertificateConstants.NO_CRL_PARTITION, false, async(() -> true)));
+        jobs.add(new CrlGenerationScheduler.Job(100, "GeneratedCA", SOFT_TOKEN_ID, 1, false, async(() -> false)));
+        jobs.add(new CrlGenerationScheduler.Job(200, "OfflineCA", SOFT_TOKEN_ID, CertificateConstants.NO_CRL_PARTITION, true, async(() -> {
+            throw new CAOfflineException("CA is offline.");
+        })));
+        // The asynchronous call itself can fail too
+        jobs.add(new CrlGenerationScheduler.Job(300, "UnavailableCA", SOFT_TOKEN_ID, CertificateConstants.NO_CRL_PARTITION, false, () -> {
+            throw new EJBException("Asynchronous call was rejected.");
+        }));
+        CrlGenerationScheduler.run(jobs);
+        final CrlGenerationResult generated = jobs.get(0).getResult();
+        assertTrue(generated.isGenerated());
+        assertFalse(generated.isFailed());
+        assertNull(jobs.get(0).getException());
+        final CrlGenerationResult notNeeded = jobs.get(1).getResult();
+        assertFalse(notNeeded.isGenerated());
+        assertFalse(notNeeded.isFailed());
+        assertEquals(1, notNeeded.getCrlPartitionIndex());
+        final CrlGenerationResult failed = jobs.get(2).getResult();
+        assertFalse(failed.isGenerated());
+        assertTrue(failed.isFailed());
+        assertTrue(failed.isDeltaCrl());
+        assertEquals("CA is offline.", failed.getErrorMessage());
+        assertTrue(jobs.get(2).getException() instanceof CAOfflineException);
+        assertTrue(jobs.get(3).getResult().isFailed());
+        assertTrue(jobs.get(3).getException() instanceof EJBException);
+    }
+
+    @Test
+    public void slowCryptoTokenDoesNotBlockOtherCryptoTokens() {
+        final int softTokenJobs = 6;
+        final CountDownLatch softTokenJobsDone = new CountDownLatch(softTokenJobs);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger hsmRunning = new AtomicInteger();
+        final AtomicInteger maxHsmRunning = new AtomicInteger();
+        final List<CrlGenerationScheduler.Job> jobs = new ArrayList<>();
+        // The HSM jobs are first in line, and do not complete until all the soft token jobs have completed
+        for (int i = 0; i < 6; i++) {
+            jobs.add(new CrlGenerationScheduler.Job(100 + i, "HsmCA" + i, HSM_TOKEN_ID, CertificateConstants.NO_CRL_PARTITION, false, async(() -> {
+                enter(running, maxRunning);
+                enter(hsmRunning, maxHsmRunning);
+                try {
+                    return softTokenJobsDone.await(10, TimeUnit.SECONDS);
+                } finally {
+                    hsmRunning.decrementAndGet();
+                    running.decrementAndGet();
+                }
+            })));
+        }
+        for (int i = 0; i < softTokenJobs; i++) {
+            jobs.add(new CrlGenerationScheduler.Job(200 + i, "SoftCA" + i, SOFT_TOKEN_ID, CertificateConstants.NO_CRL_PARTITION, false, async(() -> {
+                enter(running, maxRunning);
+                try {
+                    Thread.sleep(10);
+                    return true;
+                } finally {
+                    running.decrementAndGet();
+                    softTokenJobsDone.countDown();
+                }
+            })));
+        }
+        CrlGenerationScheduler.run(jobs);
+        for (final CrlGenerationScheduler.Job job : jobs) {
+            assertTrue("CRL generation should not have waited for the slow crypto token: " + job.getResult(), job.getResult().isGenerated());
+        }
+        assertTrue("Too many concurrent jobs: " + maxRunning.get(), maxRunning.get() <= 4);
+        assertTrue("Too many concurrent jobs on the same crypto token: " + maxHsmRunning.get(), maxHsmRunning.get() <= 2);
+    }
+
+    @Test
+    public void crlPartitionsOfSameCaAreNotConcurrent() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger otherCaRunning = new AtomicInteger();
+        final AtomicInteger maxOtherCaRunning = new AtomicInteger();
+        final List<CrlGenerationScheduler.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            jobs.add(new CrlGenerationScheduler.Job(100, "PartitionedCA", SOFT_TOKEN_ID, i, false, async(() -> {
+                enter(running, maxRunning);
+                try {
+                    Thread.sleep(20);
+                    return true;
+                } finally {
+                    running.decrementAndGet();
+                }
+            })));
+            jobs.add(new CrlGenerationScheduler.Job(200 + i, "OtherCA" + i, HSM_TOKEN_ID, CertificateConstants.NO_CRL_PARTITION, false, async(() -> {
+                enter(otherCaRunning, maxOtherCaRunning);
+                try {
+                    Thread.sleep(20);
+                    return true;
+                } finally {
+                    otherCaRunning.decrementAndGet();
+                }
+            })));
+        }
+        CrlGenerationScheduler.run(jobs);
+        for (final CrlGenerationScheduler.Job job : jobs) {
+            assertTrue(job.getResult().toString(), job.getResult().isGenerated());
+        }
+        assertEquals("CRL partitions of the same CA should be generated one at a time.", 1, maxRunning.get());
+        assertTrue("Jobs of different CAs should run concurrently: " + maxOtherCaRunning.get(), maxOtherCaRunning.get() > 1);
+    }
+
+    @Test
+    public void sequentialWithOneThread() {
+        EjbcaConfigurationHolder.updateConfiguration("crlgeneration.threads", "1");
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<CrlGenerationScheduler.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // Different CAs, which would run concurrently with more threads
+            jobs.add(new CrlGenerationScheduler.Job(100 + i, "TestCA" + i, SOFT_TOKEN_ID + i, CertificateConstants.NO_CRL_PARTITION, false, async(() -> {
+                enter(running, maxRunning);
+                try {
+                    Thread.sleep(10);
+                    return true;
+                } finally {
+                    running.decrementAndGet();
+                }
+            })));
+        }
+        CrlGenerationScheduler.run(jobs);
+        for (final CrlGenerationScheduler.Job job : jobs) {
+            assertTrue(job.getResult().toString(), job.getResult().isGenerated());
+        }
+        assertEquals("Jobs should run one at a time.", 1, maxRunning.get());
+    }
+
+    private CrlGenerationScheduler.Task async(final Callable<Boolean> callable) {
+        return () -> asynchronousExecutor.submit(callable);
+    }
+
+    private static void enter(final AtomicInteger counter, final AtomicInteger max) {
+        final int value = counter.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+}
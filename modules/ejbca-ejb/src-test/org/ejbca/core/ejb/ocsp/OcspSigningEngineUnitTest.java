@@ -0,0 +1,201 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
+import org.cesecore.certificates.ocsp.exception.OcspSigningOverloadException;
+import org.cesecore.keybind.impl.OcspKeyBinding.ResponderIdType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
+
+/**
+ * Unit tests of {@link OcspSigningEngine}
+ */
+public class OcspSigningEngineUnitTest {
+
+    private static final long TIMEOUT_MILLIS = 500;
+
+    private static X509Certificate signerCertificate;
+    private static OcspSigningCacheEntry ocspSigningCacheEntry;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        signerCertificate = CertTools.genSelfCert("CN=OcspSigningEngineUnitTest", 1, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        ocspSigningCacheEntry = new OcspSigningCacheEntry(signerCertificate, CertificateStatus.OK, Collections.singletonList(signerCertificate), null,
+                keyPair.getPrivate(), "BC", null, ResponderIdType.KEYHASH);
+    }
+
+    @Test
+    public void signerIsReusedForEachAlgorithm() throws Exception {
+        final CountingEngine engine = new CountingEngine(1, 10);
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertValidSignature(engine.sign(createResponse(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, null));
+                assertValidSignature(engine.sign(createResponse(), AlgorithmConstants.SIGALG_SHA384_WITH_RSA, null));
+            }
+            assertEquals("Worker should reuse its signer for SHA256WithRSA.", 1, engine.getCreated(AlgorithmConstants.SIGALG_SHA256_WITH_RSA));
+            assertEquals("Worker should reuse its signer for SHA384WithRSA.", 1, engine.getCreated(AlgorithmConstants.SIGALG_SHA384_WITH_RSA));
+            assertEquals(6, engine.getSignedCount());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void hangingSignerTimesOutAndIsDiscarded() throws Exception {
+        final CountingEngine engine = new CountingEngine(1, 10);
+        engine.hangOnNextSigner = true;
+        try {
+            final long start = System.currentTimeMillis();
+            try {
+                engine.sign(createResponse(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, null);
+                fail("Signing with a hanging signer should time out.");
+            } catch (CryptoTokenOfflineException e) {
+                assertTrue("Signing should give up after the timeout.", System.currentTimeMillis() - start < 10 * TIMEOUT_MILLIS);
+            }
+            assertEquals(1, engine.getTimedOutCount());
+            // The worker was interrupted, so the next response is signed with a new signer
+            assertValidSignature(engine.sign(createResponse(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, null));
+            assertEquals("Signer of the timed out response should have been discarded.", 2,
+                    engine.getCreated(AlgorithmConstants.SIGALG_SHA256_WITH_RSA));
+            assertEquals(1, engine.getFailedCount());
+            assertEquals(1, engine.getSignedCount());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void fullQueueIsRejected() throws Exception {
+        final CountingEngine engine = new CountingEngine(1, 1);
+        engine.hangOnNextSigner = true;
+        try {
+            // One response hangs in the worker and one waits in the queue
+            final Thread first = new Thread(() -> signIgnoringFailure(engine));
+            first.start();
+            assertTrue(engine.hanging.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            final Thread second = new Thread(() -> signIgnoringFailure(engine));
+            second.start();
+            while (engine.getQueueDepth() == 0 && second.isAlive()) {
+                Thread.sleep(10);
+            }
+            try {
+                engine.sign(createResponse(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, null);
+                fail("Signing should be rejected when the queue is full.");
+            } catch (OcspSigningOverloadException e) {
+                assertEquals(1, engine.getRejectedCount());
+            }
+            first.join();
+            second.join();
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static BasicOCSPRespBuilder createResponse() {
+        return new BasicOCSPRespBuilder(ocspSigningCacheEntry.getRespId());
+    }
+
+    private static void assertValidSignature(final BasicOCSPResp response) throws Exception {
+        assertNotNull(response);
+        assertTrue("Response should be signed by the OCSP signer.",
+                response.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider("BC").build(signerCertificate.getPublicKey())));
+    }
+
+    private static void signIgnoringFailure(final OcspSigningEngine engine) {
+        try {
+            engine.sign(createResponse(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, null);
+        } catch (CryptoTokenOfflineException | OcspSigningOverloadException e) {
+            // Expected for the responses stuck behind the hanging signer
+        }
+    }
+
+    /** Counts the signers created for each algorithm, and can make the next signer hang like a deadlocked HSM */
+    private static class CountingEngine extends OcspSigningEngine {
+        private final Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+        private final CountDownLatch hanging = new CountDownLatch(1);
+        private volatile boolean hangOnNextSigner = false;
+
+        private CountingEngine(final int threads, final int queueCapacity) {
+            super(ocspSigningCacheEntry, threads, queueCapacity, TIMEOUT_MILLIS);
+        }
+
+        private int getCreated(final String signingAlgorithm) {
+            final AtomicInteger count = created.get(signingAlgorithm);
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        ContentSigner createContentSigner(final String signingAlgorithm) throws OperatorCreationException {
+            created.computeIfAbsent(signingAlgorithm, algorithm -> new AtomicInteger()).incrementAndGet();
+            final ContentSigner signer = super.createContentSigner(signingAlgorithm);
+            if (!hangOnNextSigner) {
+                return signer;
+            }
+            hangOnNextSigner = false;
+            return new ContentSigner() {
+                @Override
+                public AlgorithmIdentifier getAlgorithmIdentifier() {
+                    return signer.getAlgorithmIdentifier();
+                }
+
+                @Override
+                public OutputStream getOutputStream() {
+                    return signer.getOutputStream();
+                }
+
+                @Override
+                public byte[] getSignature() {
+                    hanging.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("HSM did not respond.");
+                }
+            };
+        }
+    }
+}
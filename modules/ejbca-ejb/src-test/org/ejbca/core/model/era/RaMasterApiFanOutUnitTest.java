@@ -0,0 +1,193 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.easymock.EasyMock;
+import org.ejbca.config.EjbcaConfigurationHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link RaMasterApiFanOut}
+ */
+public class RaMasterApiFanOutUnitTest {
+
+    private final RaMasterApi localApi = createRaMasterApi(true, 20);
+    private final RaMasterApi peerApi1 = createRaMasterApi(true, 20);
+    private final RaMasterApi peerApi2 = createRaMasterApi(true, 20);
+    private final Set<RaMasterApi> pooledApis = new HashSet<>(Arrays.asList(peerApi1, peerApi2));
+    /** Response time and response of each back end */
+    private final Map<RaMasterApi, Long> delays = new HashMap<>();
+    private final Map<RaMasterApi, String> responses = new HashMap<>();
+
+    @Before
+    public void before() {
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.threads", "4");
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.searchtimeout", "2000");
+        responses.put(localApi, "local");
+        responses.put(peerApi1, "peer1");
+        responses.put(peerApi2, "peer2");
+    }
+
+    @After
+    public void after() {
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.threads", null);
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.searchtimeout", null);
+    }
+
+    @Test
+    public void backendsAreSearchedInParallel() {
+        delays.put(localApi, 500L);
+        delays.put(peerApi1, 500L);
+        delays.put(peerApi2, 500L);
+        final List<String> merged = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        assertTrue(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, pooledApis, 0, this::search, collect(merged)));
+        final long time = System.currentTimeMillis() - start;
+        assertTrue("Back ends should be searched in parallel, but took " + time + " ms", time < 1400);
+        assertEquals("local", merged.get(0));
+        assertTrue(merged.containsAll(Arrays.asList("peer1", "peer2")));
+        assertEquals(3, merged.size());
+    }
+
+    @Test
+    public void slowBackendGivesPartialResult() {
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.searchtimeout", "300");
+        delays.put(peerApi1, 5000L);
+        final List<String> merged = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        assertFalse(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, pooledApis, 0, this::search, collect(merged)));
+        assertTrue("Should not wait for the slow back end.", System.currentTimeMillis() - start < 3000);
+        assertEquals(Arrays.asList("local", "peer2"), merged);
+    }
+
+    @Test
+    public void deadlineIncludesLocalBackend() {
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.searchtimeout", "800");
+        delays.put(localApi, 500L);
+        delays.put(peerApi1, 5000L);
+        final List<String> merged = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        assertFalse(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, pooledApis, 0, this::search, collect(merged)));
+        final long time = System.currentTimeMillis() - start;
+        // The slow local back end must not extend the time given to the peers
+        assertTrue("Should give up after the search timeout, but took " + time + " ms", time < 1200);
+        assertEquals(Arrays.asList("local", "peer2"), merged);
+    }
+
+    @Test
+    public void sequentialBackendsAreSkippedAfterDeadline() {
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.threads", "1");
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.searchtimeout", "300");
+        delays.put(localApi, 500L);
+        final List<String> merged = new ArrayList<>();
+        assertFalse(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, pooledApis, 0, this::search, collect(merged)));
+        assertEquals(Arrays.asList("local"), merged);
+    }
+
+    @Test
+    public void unavailableAndUnsupportedBackends() {
+        final RaMasterApi unavailableApi = createRaMasterApi(false, 20);
+        final RaMasterApi oldApi = createRaMasterApi(true, 1);
+        final List<String> merged = new ArrayList<>();
+        // Back ends that are not available or too old are not invoked at all
+        assertTrue(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, unavailableApi, oldApi }, localApi, pooledApis, 14, this::search, collect(merged)));
+        assertEquals(Arrays.asList("local"), merged);
+        merged.clear();
+        // Unsupported operations are skipped, but a back end that fails to respond makes the result partial
+        assertFalse(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, pooledApis, 0, raMasterApi -> {
+            if (raMasterApi == peerApi1) {
+                throw new UnsupportedOperationException();
+            } else if (raMasterApi == peerApi2) {
+                throw new RaMasterBackendUnavailableException();
+            }
+            return "local";
+        }, collect(merged)));
+        assertEquals(Arrays.asList("local"), merged);
+    }
+
+    @Test
+    public void sequentialWithOneThread() {
+        EjbcaConfigurationHolder.updateConfiguration("ra.backend.threads", "1");
+        final String callingThread = Thread.currentThread().getName();
+        final List<String> merged = new ArrayList<>();
+        assertTrue(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, pooledApis, 0,
+                raMasterApi -> callingThread.equals(Thread.currentThread().getName()) ? search(raMasterApi) : "other thread", collect(merged)));
+        assertEquals(Arrays.asList("local", "peer1", "peer2"), merged);
+    }
+
+    @Test
+    public void backendsNotInPoolAreInvokedInCallingThread() {
+        final String callingThread = Thread.currentThread().getName();
+        final List<String> merged = new ArrayList<>();
+        assertTrue(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, Collections.singleton(peerApi2), 0,
+                raMasterApi -> callingThread.equals(Thread.currentThread().getName()) == (raMasterApi != peerApi2) ? search(raMasterApi) : "wrong thread",
+                collect(merged)));
+        assertEquals(3, merged.size());
+        assertTrue(merged.containsAll(Arrays.asList("local", "peer1", "peer2")));
+    }
+
+    @Test
+    public void responsesAreHandledWithTheirBackend() {
+        delays.put(peerApi1, 500L);
+        final List<RaMasterApi> order = new ArrayList<>();
+        assertTrue(RaMasterApiFanOut.invokeAll(new RaMasterApi[] { localApi, peerApi1, peerApi2 }, localApi, pooledApis, 0, this::search,
+                (raMasterApi, response) -> {
+                    assertEquals(responses.get(raMasterApi), response);
+                    order.add(raMasterApi);
+                }));
+        // Handled in order of arrival
+        assertEquals(Arrays.asList(localApi, peerApi2, peerApi1), order);
+    }
+
+    private static RaMasterApiFanOut.ResponseHandler<String> collect(final List<String> merged) {
+        return (raMasterApi, response) -> merged.add(response);
+    }
+
+    private String search(final RaMasterApi raMasterApi) {
+        final Long delay = delays.get(raMasterApi);
+        if (delay != null) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "interrupted";
+            }
+        }
+        return responses.get(raMasterApi);
+    }
+
+    private static RaMasterApi createRaMasterApi(final boolean available, final int apiVersion) {
+        final RaMasterApi raMasterApi = EasyMock.createNiceMock(RaMasterApi.class);
+        expect(raMasterApi.isBackendAvailable()).andReturn(available).anyTimes();
+        expect(raMasterApi.getApiVersion()).andReturn(apiVersion).anyTimes();
+        replay(raMasterApi);
+        return raMasterApi;
+    }
+}
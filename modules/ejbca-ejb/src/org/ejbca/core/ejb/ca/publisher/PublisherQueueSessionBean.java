@@ -60,6 +60,7 @@ import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.ca.publisher.BatchPublisher;
 import org.ejbca.core.model.ca.publisher.CustomPublisherContainer;
 import org.ejbca.core.model.ca.publisher.PublisherConst;
 import org.ejbca.core.model.ca.publisher.PublisherException;
@@ -359,7 +360,11 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
             log.debug("Found " + publisherQueueData.size() + " certificates to republish for publisher " + publisherId);
         }
         final PublishingResult result = new PublishingResult();
-        for (PublisherQueueData pqd : publisherQueueData) {
+        Collection<PublisherQueueData> remainingQueueData = publisherQueueData;
+        if (publisher != null && publisher.isBatchPublishingSupported() && publisherQueueData.size() > 1) {
+            remainingQueueData = publishBatches(admin, publisher, publisherQueueData, result);
+        }
+        for (PublisherQueueData pqd : remainingQueueData) {
             String fingerprint = pqd.getFingerprint();
             int publishType = pqd.getPublishType();
             if (log.isDebugEnabled()) {
@@ -459,21 +464,7 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
                     connectionTimedOut = true;
                 }
             }
-            if (published) {
-                if (publisher.getKeepPublishedInQueue()) {
-                    // Update with information that publishing was successful
-                    updateData(pqd.getPk(), PublisherConst.STATUS_SUCCESS, pqd.getTryCounter());
-                } else {
-                    // We are done with this one.. nuke it!
-                    removeQueueData(pqd.getPk());
-                }
-                result.addSuccess(fingerprint); // jipeee update success counter
-            } else {
-                // Update with new tryCounter, but same status as before
-                int tryCount = pqd.getTryCounter() + 1;
-                updateData(pqd.getPk(), pqd.getPublishStatus(), tryCount);
-                result.addFailure(fingerprint);
-            }
+            updatePublishedQueueData(publisher, pqd, published, result);
             // Break out of the loop immediately if a connection timed out.
             // Publisher is not available for now, so we don't want to get stuck here for up to 99 timeouts.
             if (connectionTimedOut){
@@ -499,10 +490,158 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return result;
     }
 
-    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    @Override
-    public boolean publishCertificateNonTransactional(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper certWrapper,
-            String password, String userDN, ExtendedInformation extendedinformation) throws PublisherException {
+    /**
+     * Publishes the certificates and the OCSP responses among the queue entries with one call to the publisher for each kind.
+     * Certificates for publishers that use full entity publishing, and CRLs, are not published in batches.
+     *
+     * @return the entries that should be published one at a time, or an empty list if publishing should stop
+     */
+    private Collection<PublisherQueueData> publishBatches(final AuthenticationToken admin, final BasePublisher publisher,
+            final Collection<PublisherQueueData> publisherQueueData, final PublishingResult result) {
+        final List<PublisherQueueData> certificateQueueData = new ArrayList<>();
+        final List<BatchPublisher.CertificateItem> certificates = new ArrayList<>();
+        final List<PublisherQueueData> ocspResponseQueueData = new ArrayList<>();
+        final List<OcspResponseData> ocspResponses = new ArrayList<>();
+        final List<PublisherQueueData> remainingQueueData = new ArrayList<>();
+        for (final PublisherQueueData pqd : publisherQueueData) {
+            final String fingerprint = pqd.getFingerprint();
+            if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CERT && !publisher.isFullEntityPublishingSupported()) {
+                final CertificateDataWrapper certificateDataWrapper = noConflictCertificateStoreSession.getCertificateData(fingerprint);
+                if (certificateDataWrapper == null) {
+                    log.info(intres.getLocalizedMessage("publisher.errornocert", fingerprint));
+                    updatePublishedQueueData(publisher, pqd, false, result);
+                    continue;
+                }
+                final PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
+                certificateQueueData.add(pqd);
+                certificates.add(getCertificateItem(certificateDataWrapper, voldata == null ? null : voldata.getPassword(),
+                        voldata == null ? null : voldata.getUserDN(), voldata == null ? null : voldata.getExtendedInformation()));
+            } else if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_OCSP_RESPONSE && publisher instanceof CustomPublisherContainer) {
+                final OcspResponseData ocspResponseData = ocspDataSession.findOcspDataById(fingerprint);
+                if (ocspResponseData == null) {
+                    log.info(intres.getLocalizedMessage("publisher.errornocert", fingerprint));
+                    updatePublishedQueueData(publisher, pqd, false, result);
+                    continue;
+                }
+                ocspResponseQueueData.add(pqd);
+                ocspResponses.add(ocspResponseData);
+            } else {
+                remainingQueueData.add(pqd);
+            }
+        }
+        if (!certificateQueueData.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Publishing " + certificates.size() + " certificates in a batch to publisher " + publisher.getPublisherId());
+            }
+            if (!publishBatch(publisher, certificateQueueData, () -> publisherQueueSession.publishCertificatesNonTransactional(publisher, admin, certificates), result)) {
+                return Collections.emptyList();
+            }
+        }
+        if (!ocspResponseQueueData.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Publishing " + ocspResponses.size() + " OCSP responses in a batch to publisher " + publisher.getPublisherId());
+            }
+            if (!publishBatch(publisher, ocspResponseQueueData,
+                    () -> publisherQueueSession.publishOcspResponsesNonTransactional((CustomPublisherContainer) publisher, admin, ocspResponses), result)) {
+                return Collections.emptyList();
+            }
+        }
+        return remainingQueueData;
+    }
+
+    /** Call to a publisher with a batch of entries */
+    @FunctionalInterface
+    private interface BatchCall {
+        List<BatchPublisher.Result> call() throws PublisherException;
+    }
+
+    /**
+     * Makes a batch call and updates the queue entries with the results. If the call fails, none of the entries were published.
+     *
+     * @return false if publishing should stop, because the connection timed out or everything fails
+     */
+    private boolean publishBatch(final BasePublisher publisher, final List<PublisherQueueData> queueData, final BatchCall batchCall,
+            final PublishingResult result) {
+        List<BatchPublisher.Result> batchResults;
+        String message = null;
+        try {
+            try {
+                batchResults = batchCall.call();
+            } catch (EJBException e) {
+                final Throwable t = e.getCause();
+                if (t instanceof PublisherException) {
+                    throw (PublisherException) t;
+                } else {
+                    throw e;
+                }
+            }
+            if (batchResults == null || batchResults.size() != queueData.size()) {
+                throw new PublisherException("Publisher returned " + (batchResults == null ? 0 : batchResults.size()) + " results for "
+                        + queueData.size() + " entries.");
+            }
+        } catch (PublisherException e) {
+            // Publisher session have already logged this error nicely to getLogSession().log
+            log.debug(e.getMessage());
+            batchResults = Collections.nCopies(queueData.size(), BatchPublisher.Result.failure(e));
+            message = e.getMessage();
+        }
+        for (int i = 0; i < queueData.size(); i++) {
+            final BatchPublisher.Result batchResult = batchResults.get(i);
+            if (!batchResult.isSuccess() && batchResult.getMessage() != null) {
+                result.addFailure(queueData.get(i).getFingerprint(), batchResult.getMessage());
+            }
+            updatePublishedQueueData(publisher, queueData.get(i), batchResult.isSuccess(), result);
+        }
+        if (message != null && message.contains(TIMEOUT_MESSAGE_INDICATOR)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Connection timed out. Breaking out of publisher loop.");
+            }
+            return false;
+        }
+        if (result.shouldBreakPublishingOperation()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Breaking out of publisher loop because everything seems to fail (at least the first 10 entries)");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /** Removes or updates a queue entry after an attempt to publish it */
+    private void updatePublishedQueueData(final BasePublisher publisher, final PublisherQueueData pqd, final boolean published, final PublishingResult result) {
+        if (published) {
+            if (publisher.getKeepPublishedInQueue()) {
+                // Update with information that publishing was successful
+                updateData(pqd.getPk(), PublisherConst.STATUS_SUCCESS, pqd.getTryCounter());
+            } else {
+                // We are done with this one.. nuke it!
+                removeQueueData(pqd.getPk());
+            }
+            result.addSuccess(pqd.getFingerprint()); // jipeee update success counter
+        } else {
+            // Update with new tryCounter, but same status as before
+            int tryCount = pqd.getTryCounter() + 1;
+            updateData(pqd.getPk(), pqd.getPublishStatus(), tryCount);
+            result.addFailure(pqd.getFingerprint());
+        }
+    }
+
+    /** @return the arguments of a single certificate publishing call, as used for publishers without full entity publishing */
+    private BatchPublisher.CertificateItem getCertificateItem(final CertificateDataWrapper certWrapper, final String password, final String userDN,
+            final ExtendedInformation extendedinformation) {
+        final BaseCertificateData certificateData = certWrapper.getBaseCertificateData();
+        // ECA-9491 Tmp. until refactored.
+        if (extendedinformation != null) {
+            extendedinformation.setAccountBindingId(certificateData.getAccountBindingId());
+        }
+        return new BatchPublisher.CertificateItem(certWrapper.getCertificate(), certificateData.getUsername(), password, userDN,
+                certificateData.getCaFingerprint(), certificateData.getStatus(), certificateData.getType(), certificateData.getRevocationDate(),
+                certificateData.getRevocationReason(), certificateData.getTag(), certificateData.getCertificateProfileId(),
+                certificateData.getUpdateTime(), extendedinformation);
+    }
+
+    /** Sets the allow list of external scripts for publishers that call them, if external scripts are enabled */
+    private void setExternalScriptsAllowlist(final BasePublisher publisher) {
         if (publisher.isCallingExternalScript()) {
             final ExternalScriptsConfiguration externalScriptsConfiguration = (ExternalScriptsConfiguration) globalConfigurationSession.
                     getCachedConfiguration(GlobalConfiguration.GLOBAL_CONFIGURATION_ID);
@@ -517,6 +656,13 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
                 publisher.setExternalScriptsAllowlist(allowlist);
             }
         }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public boolean publishCertificateNonTransactional(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper certWrapper,
+            String password, String userDN, ExtendedInformation extendedinformation) throws PublisherException {
+        setExternalScriptsAllowlist(publisher);
         if (publisher.isFullEntityPublishingSupported()) {
             return publisher.storeCertificate(admin, certWrapper.getCertificateDataOrCopy(), certWrapper.getBase64CertData(), password, userDN, extendedinformation);
         } else {
@@ -544,16 +690,7 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
     @Override
     public boolean publishCRLNonTransactional(BasePublisher publisher, AuthenticationToken admin, byte[] incrl, String cafp, int number, String userDN)
             throws PublisherException {
-        if (publisher.isCallingExternalScript()) {
-            final ExternalScriptsConfiguration externalScriptsConfiguration = (ExternalScriptsConfiguration) globalConfigurationSession.
-                    getCachedConfiguration(GlobalConfiguration.GLOBAL_CONFIGURATION_ID);
-            if (externalScriptsConfiguration.getEnableExternalScripts()) {
-                final ExternalScriptsAllowlist allowlist = ExternalScriptsAllowlist.fromText(
-                        externalScriptsConfiguration.getExternalScriptsWhitelist(),
-                        externalScriptsConfiguration.getIsExternalScriptsWhitelistEnabled());                
-                publisher.setExternalScriptsAllowlist(allowlist);
-            }
-        }
+        setExternalScriptsAllowlist(publisher);
         return publisher.storeCRL(admin, incrl, cafp, number, userDN);
     }
     
@@ -561,19 +698,26 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
     @Override
     public boolean publishOcspResponsesNonTransactional(CustomPublisherContainer publisher, AuthenticationToken admin, OcspResponseData ocspResponseData)
             throws PublisherException {
-        if (publisher.isCallingExternalScript()) {
-            final ExternalScriptsConfiguration externalScriptsConfiguration = (ExternalScriptsConfiguration) globalConfigurationSession.
-                    getCachedConfiguration(GlobalConfiguration.GLOBAL_CONFIGURATION_ID);
-            if (externalScriptsConfiguration.getEnableExternalScripts()) {
-                final ExternalScriptsAllowlist allowlist = ExternalScriptsAllowlist.fromText(
-                        externalScriptsConfiguration.getExternalScriptsWhitelist(),
-                        externalScriptsConfiguration.getIsExternalScriptsWhitelistEnabled());                
-                publisher.setExternalScriptsAllowlist(allowlist);
-            }
-        }
+        setExternalScriptsAllowlist(publisher);
         return publisher.storeOcspResponseData(ocspResponseData);
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public List<BatchPublisher.Result> publishCertificatesNonTransactional(final BasePublisher publisher, final AuthenticationToken admin,
+            final List<BatchPublisher.CertificateItem> certificates) throws PublisherException {
+        setExternalScriptsAllowlist(publisher);
+        return publisher.storeCertificates(admin, certificates);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public List<BatchPublisher.Result> publishOcspResponsesNonTransactional(final CustomPublisherContainer publisher, final AuthenticationToken admin,
+            final List<OcspResponseData> ocspResponses) throws PublisherException {
+        setExternalScriptsAllowlist(publisher);
+        return publisher.storeOcspResponses(ocspResponses);
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
     public List<Object> publishCertificateNonTransactionalInternal(final List<BasePublisher> publishers, final AuthenticationToken admin,
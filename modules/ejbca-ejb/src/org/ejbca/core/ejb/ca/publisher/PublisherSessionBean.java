@@ -75,9 +75,11 @@ import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.authorization.AccessRulesConstants;
 import org.ejbca.core.model.ca.publisher.ActiveDirectoryPublisher;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.ca.publisher.BatchPublisher;
 import org.ejbca.core.model.ca.publisher.CustomPublisherContainer;
 import org.ejbca.core.model.ca.publisher.CustomPublisherProperty;
 import org.ejbca.core.model.ca.publisher.FatalPublisherConnectionException;
+import org.ejbca.core.model.ca.publisher.LdapConnectionPool;
 import org.ejbca.core.model.ca.publisher.LdapPublisher;
 import org.ejbca.core.model.ca.publisher.LdapSearchPublisher;
 import org.ejbca.core.model.ca.publisher.LegacyValidationAuthorityPublisher;
@@ -454,6 +456,73 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
         return true;
     }
     
+    @Override
+    public boolean storeOcspResponses(final AuthenticationToken admin, final Collection<Integer> publisherids, final List<OcspResponseData> ocspResponses)
+            throws AuthorizationDeniedException {
+        for (final int caid : ocspResponses.stream().map(OcspResponseData::getCaId).distinct().toArray(Integer[]::new)) {
+            if (!authorizationSession.isAuthorizedNoLogging(admin, StandardRules.CAACCESS.resource() + caid)) {
+                final String msg = intres.getLocalizedMessage("caadmin.notauthorizedtoca", admin.toString(), caid);
+                throw new AuthorizationDeniedException(msg);
+            }
+        }
+        if (CollectionUtils.isEmpty(publisherids) || ocspResponses.isEmpty()) {
+            return true; //Nothing to publish just return success
+        }
+        boolean returnval = true;
+        for (final int id : publisherids) {
+            final BasePublisher publ = getPublisherInternal(id, null, true);
+            if (publ == null) {
+                String msg = intres.getLocalizedMessage("publisher.nopublisher", id);
+                log.info(msg);
+                returnval = false;
+                continue;
+            }
+            if (!isOcspResponsePublisher(publ)) {
+                continue;
+            }
+            final String name = getPublisherName(id);
+            final boolean[] published = new boolean[ocspResponses.size()];
+            // If it should be published directly
+            if (!publ.getOnlyUseQueue()) {
+                if (publ.isBatchPublishingSupported() && ocspResponses.size() > 1) {
+                    try {
+                        final List<BatchPublisher.Result> results = publisherQueueSession.publishOcspResponsesNonTransactional((CustomPublisherContainer) publ,
+                                admin, ocspResponses);
+                        for (int i = 0; i < published.length && i < results.size(); i++) {
+                            published[i] = results.get(i).isSuccess();
+                        }
+                    } catch (PublisherException e) {
+                        logFailPublish(admin, name, e);
+                    }
+                } else {
+                    for (int i = 0; i < published.length; i++) {
+                        try {
+                            published[i] = publisherQueueSession.publishOcspResponsesNonTransactional((CustomPublisherContainer) publ, admin, ocspResponses.get(i));
+                        } catch (PublisherException e) {
+                            logFailPublish(admin, name, e);
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < published.length; i++) {
+                final int publishStatus = published[i] ? PublisherConst.STATUS_SUCCESS : PublisherConst.STATUS_PENDING;
+                if (published[i]) {
+                    try {
+                        logSuccessPublish(admin, name, publishStatus);
+                    } catch (AuditRecordStorageException e) {
+                        log.error("Error when loging audit data ", e);
+                    }
+                }
+                if ((!published[i] || publ.getKeepPublishedInQueue()) && publ.getUseQueueForOcspResponses()) {
+                    addOcspResponseQueueData(id, name, publishStatus, ocspResponses.get(i).getId());
+                } else if (!published[i]) {
+                    returnval = false;
+                }
+            }
+        }
+        return returnval;
+    }
+
     private void addOcspResponseQueueData(int id, String name, int publishStatus, String responseId) {
         // Write to the publisher queue either for audit reasons or
         // to be able try again
@@ -640,6 +709,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
             htp.setPublisher(publisher);
             // Since loading a Publisher is quite complex, we simple purge the cache here
             PublisherCache.INSTANCE.removeEntry(htp.getId());
+            LdapConnectionPool.reset(htp.getId());
             final String msg = intres.getLocalizedMessage("publisher.changedpublisher", name);
             final Map<String, Object> details = new LinkedHashMap<>();
             details.put("msg", msg);
@@ -711,6 +781,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
                 entityManager.remove(htp);
                 // Purge the cache here
                 PublisherCache.INSTANCE.removeEntry(htp.getId());
+                LdapConnectionPool.reset(htp.getId());
                 final String msg = intres.getLocalizedMessage("publisher.removedpublisher", name);
                 final Map<String, Object> details = new LinkedHashMap<>();
                 details.put("msg", msg);
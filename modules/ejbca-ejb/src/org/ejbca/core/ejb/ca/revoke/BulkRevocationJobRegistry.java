@@ -0,0 +1,77 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.revoke;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ejbca.core.model.ra.BulkRevocationJob;
+import org.ejbca.core.model.ra.BulkRevocationSelector;
+
+/**
+ * Holds the bulk revocation jobs of this node. Needed because EJB spec does not allow non-final static fields in session beans.
+ * <p>
+ * Jobs that have stopped are kept so that their result can be read, but only the {@value #MAX_STOPPED_JOBS} most recent ones.
+ *
+ * @version $Id$
+ */
+public enum BulkRevocationJobRegistry {
+    INSTANCE;
+
+    static final int MAX_STOPPED_JOBS = 100;
+
+    private final Map<Integer, BulkRevocationJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger lastJobId = new AtomicInteger();
+
+    /** @return a new running job */
+    public BulkRevocationJob create(final BulkRevocationSelector selector, final int reason, final String administrator) {
+        purgeStoppedJobs();
+        final BulkRevocationJob job = new BulkRevocationJob(lastJobId.incrementAndGet(), selector, reason, administrator);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    /** @return the job that is being updated, or null if there is no such job */
+    public BulkRevocationJob get(final int jobId) {
+        return jobs.get(jobId);
+    }
+
+    /** @return copies of the current progress of all jobs, most recent first */
+    public List<BulkRevocationJob> getSnapshots() {
+        final List<BulkRevocationJob> ret = new ArrayList<>();
+        for (final BulkRevocationJob job : jobs.values()) {
+            ret.add(job.snapshot());
+        }
+        ret.sort(Comparator.comparingInt(BulkRevocationJob::getId).reversed());
+        return ret;
+    }
+
+    private void purgeStoppedJobs() {
+        final List<BulkRevocationJob> stopped = new ArrayList<>();
+        for (final BulkRevocationJob job : jobs.values()) {
+            if (job.getState() != BulkRevocationJob.State.RUNNING) {
+                stopped.add(job);
+            }
+        }
+        if (stopped.size() >= MAX_STOPPED_JOBS) {
+            stopped.sort(Comparator.comparingInt(BulkRevocationJob::getId));
+            for (final BulkRevocationJob job : stopped.subList(0, stopped.size() - MAX_STOPPED_JOBS + 1)) {
+                jobs.remove(job.getId());
+            }
+        }
+    }
+}
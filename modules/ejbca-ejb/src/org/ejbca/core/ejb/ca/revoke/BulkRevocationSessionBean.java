@@ -0,0 +1,556 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.revoke;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.CreateException;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.audit.enums.EventStatus;
+import org.cesecore.audit.enums.EventTypes;
+import org.cesecore.audit.enums.ModuleTypes;
+import org.cesecore.audit.enums.ServiceTypes;
+import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.authorization.AuthorizationSessionLocal;
+import org.cesecore.authorization.control.StandardRules;
+import org.cesecore.certificates.ca.ApprovalRequestType;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.certificate.BaseCertificateData;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateData;
+import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.NoConflictCertificateData;
+import org.cesecore.certificates.certificate.NoConflictCertificateDataSessionLocal;
+import org.cesecore.certificates.certificate.NoConflictCertificateStoreSessionLocal;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.configuration.GlobalConfigurationSessionLocal;
+import org.cesecore.jndi.JndiConstants;
+import org.ejbca.config.EjbcaConfiguration;
+import org.ejbca.config.GlobalConfiguration;
+import org.ejbca.core.ejb.approval.ApprovalProfileSessionLocal;
+import org.ejbca.core.ejb.ca.publisher.PublisherQueueSessionLocal;
+import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
+import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
+import org.ejbca.core.model.InternalEjbcaResources;
+import org.ejbca.core.model.authorization.AccessRulesConstants;
+import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.ca.publisher.PublisherConst;
+import org.ejbca.core.model.ca.publisher.PublisherQueueVolatileInformation;
+import org.ejbca.core.model.ra.BulkRevocationJob;
+import org.ejbca.core.model.ra.BulkRevocationSelector;
+
+import com.keyfactor.util.CertTools;
+
+/**
+ * Revokes the certificates matched by a {@link BulkRevocationSelector} in chunks. The matching certificates are read by fingerprint order,
+ * so the fingerprint of the last certificate in a chunk is the position to continue from. Lists of serial numbers are read in slices of the
+ * chunk size instead.
+ * <p>
+ * Certificates of CAs that use the append-only NoConflictCertificateData table (throw away CAs) are selected from that table as well,
+ * in the same fingerprint order, and are revoked by appending a row with the revoked status.
+ * <p>
+ * The certificates are revoked directly in the database, like {@link org.cesecore.certificates.certificate.CertificateStoreSession#revokeAllCertByCA},
+ * and the revocations are added to the publisher queue. The queue of each publisher that does not only use the queue is processed after
+ * each chunk, so that publishers that support it get the revocations in batches.
+ *
+ * @version $Id$
+ */
+@Stateless(mappedName = JndiConstants.APP_JNDI_PREFIX + "BulkRevocationSessionRemote")
+@TransactionAttribute(TransactionAttributeType.REQUIRED)
+public class BulkRevocationSessionBean implements BulkRevocationSessionLocal, BulkRevocationSessionRemote {
+
+    private static final Logger log = Logger.getLogger(BulkRevocationSessionBean.class);
+
+    /** Internal localization of logs and errors */
+    private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
+
+    private static final String SELECT_STATUS = "a.status IN (" + CertificateConstants.CERT_ACTIVE + ", " + CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION + ")";
+
+    @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
+    private EntityManager entityManager;
+    @Resource
+    private SessionContext sessionContext;
+
+    @EJB
+    private ApprovalProfileSessionLocal approvalProfileSession;
+    @EJB
+    private AuthorizationSessionLocal authorizationSession;
+    @EJB
+    private SecurityEventsLoggerSessionLocal auditSession;
+    @EJB
+    private CaSessionLocal caSession;
+    @EJB
+    private CertificateProfileSessionLocal certificateProfileSession;
+    @EJB
+    private GlobalConfigurationSessionLocal globalConfigurationSession;
+    @EJB
+    private NoConflictCertificateDataSessionLocal noConflictCertificateDataSession;
+    @EJB
+    private NoConflictCertificateStoreSessionLocal noConflictCertificateStoreSession;
+    @EJB
+    private PublisherQueueSessionLocal publisherQueueSession;
+    @EJB
+    private PublisherSessionLocal publisherSession;
+    @EJB
+    private PublishingCrlSessionLocal publishCrlSession;
+
+    private BulkRevocationSessionLocal bulkRevocationSession;
+
+    @PostConstruct
+    public void postConstruct() {
+        bulkRevocationSession = sessionContext.getBusinessObject(BulkRevocationSessionLocal.class);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public int startBulkRevocation(final AuthenticationToken admin, final BulkRevocationSelector selector, final int reason)
+            throws AuthorizationDeniedException {
+        selector.validate();
+        if (!RevokedCertInfo.isRevoked(reason)) {
+            throw new IllegalArgumentException("Revocation reason " + reason + " does not revoke certificates.");
+        }
+        assertAuthorizedToRevoke(admin);
+        if (StringUtils.isNotEmpty(selector.getIssuerDn())) {
+            selector.setIssuerDn(CertTools.stringToBCDNString(selector.getIssuerDn()));
+            final int caId = selector.getIssuerDn().hashCode();
+            if (!authorizationSession.isAuthorizedNoLogging(admin, StandardRules.CAACCESS.resource() + caId)) {
+                throw new AuthorizationDeniedException(intres.getLocalizedMessage("ra.errorauthca", caId, admin.toString()));
+            }
+        }
+        if (selector.getEndEntityProfileId() != null && isEndEntityProfileLimitations()
+                && !authorizationSession.isAuthorizedNoLogging(admin, getRevokeRule(selector.getEndEntityProfileId()))) {
+            throw new AuthorizationDeniedException(intres.getLocalizedMessage("ra.errorauthprofile", selector.getEndEntityProfileId(), admin.toString()));
+        }
+        final BulkRevocationJob job = BulkRevocationJobRegistry.INSTANCE.create(selector, reason, admin.toString());
+        log.info(intres.getLocalizedMessage("ra.bulkrevocationstarted", job.getId(), selector, reason, admin.toString()));
+        bulkRevocationSession.runBulkRevocation(admin, job.getId());
+        return job.getId();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public boolean resumeBulkRevocation(final AuthenticationToken admin, final int jobId) throws AuthorizationDeniedException {
+        assertAuthorizedToRevoke(admin);
+        final BulkRevocationJob job = BulkRevocationJobRegistry.INSTANCE.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        synchronized (job) {
+            if (!job.isResumable()) {
+                return false;
+            }
+            job.start(job.getTotal());
+        }
+        bulkRevocationSession.runBulkRevocation(admin, jobId);
+        return true;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public boolean cancelBulkRevocation(final AuthenticationToken admin, final int jobId) throws AuthorizationDeniedException {
+        assertAuthorizedToRevoke(admin);
+        final BulkRevocationJob job = BulkRevocationJobRegistry.INSTANCE.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        synchronized (job) {
+            if (job.getState() != BulkRevocationJob.State.RUNNING) {
+                return false;
+            }
+            job.requestCancel();
+            return true;
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public BulkRevocationJob getBulkRevocationJob(final AuthenticationToken admin, final int jobId) throws AuthorizationDeniedException {
+        assertAuthorizedToRevoke(admin);
+        final BulkRevocationJob job = BulkRevocationJobRegistry.INSTANCE.get(jobId);
+        return job == null ? null : job.snapshot();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public List<BulkRevocationJob> getBulkRevocationJobs(final AuthenticationToken admin) throws AuthorizationDeniedException {
+        assertAuthorizedToRevoke(admin);
+        return BulkRevocationJobRegistry.INSTANCE.getSnapshots();
+    }
+
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public void runBulkRevocation(final AuthenticationToken admin, final int jobId) {
+        final BulkRevocationJob job = BulkRevocationJobRegistry.INSTANCE.get(jobId);
+        if (job == null) {
+            return;
+        }
+        final BulkRevocationSelector selector = job.getSelector();
+        final int chunkSize = EjbcaConfiguration.getBulkRevocationChunkSize();
+        try {
+            final List<String> issuerDns = getIssuerDns(admin, selector);
+            final List<String> noConflictIssuerDns = getNoConflictIssuerDns(issuerDns);
+            final List<BigInteger> serialNumbers = selector.getSerialNumbers();
+            if (selector.isSerialNumberList()) {
+                job.start(serialNumbers.size());
+            } else {
+                job.start(job.getProcessed() + countRemaining(selector, issuerDns, noConflictIssuerDns, job.getLastFingerprint()));
+            }
+            while (!job.isCancelRequested()) {
+                final List<String> fingerprints;
+                final int processed;
+                String lastFingerprint = job.getLastFingerprint();
+                int serialNumberPosition = job.getSerialNumberPosition();
+                if (selector.isSerialNumberList()) {
+                    if (serialNumberPosition >= serialNumbers.size()) {
+                        break;
+                    }
+                    final List<BigInteger> slice = serialNumbers.subList(serialNumberPosition, Math.min(serialNumbers.size(), serialNumberPosition + chunkSize));
+                    // A serial number can match several certificates, so all matches of the slice are revoked in this chunk
+                    fingerprints = findFingerprints(selector, issuerDns, noConflictIssuerDns, slice, null, 0);
+                    processed = slice.size();
+                    serialNumberPosition += slice.size();
+                } else {
+                    fingerprints = findFingerprints(selector, issuerDns, noConflictIssuerDns, null, lastFingerprint, chunkSize);
+                    if (fingerprints.isEmpty()) {
+                        break;
+                    }
+                    processed = fingerprints.size();
+                    lastFingerprint = fingerprints.get(fingerprints.size() - 1);
+                }
+                final BulkRevocationJob.ChunkResult result = fingerprints.isEmpty()
+                        ? new BulkRevocationJob.ChunkResult(0, new HashSet<>(), new HashSet<>())
+                        : bulkRevocationSession.revokeChunk(admin, jobId, fingerprints, job.getReason(), new Date());
+                if (result.getRevoked() > 0) {
+                    // Responses produced from the old status before the chunk was committed must not be served
+                    OcspResponseCache.INSTANCE.flush();
+                    publishQueuedRevocations(admin, result.getPublisherIds(), result.getRevoked());
+                }
+                job.chunkCompleted(processed, result, lastFingerprint, serialNumberPosition);
+                if (log.isDebugEnabled()) {
+                    log.debug(job.toString());
+                }
+            }
+            if (job.isCancelRequested()) {
+                final String msg = intres.getLocalizedMessage("ra.bulkrevocationcancelled", jobId, job.getProcessed());
+                log.info(msg);
+                job.finish(BulkRevocationJob.State.CANCELLED, msg);
+            } else {
+                createCrls(admin, job);
+                final String msg = intres.getLocalizedMessage("ra.bulkrevocationcompleted", jobId, job.getRevoked(), job.getSkipped());
+                log.info(msg);
+                job.finish(BulkRevocationJob.State.COMPLETED, msg);
+            }
+        } catch (RuntimeException e) { // NOPMD: the job must not be left running, whatever went wrong
+            final String msg = intres.getLocalizedMessage("ra.bulkrevocationfailed", jobId, job.getProcessed(), e.getMessage());
+            log.error(msg, e);
+            job.finish(BulkRevocationJob.State.FAILED, msg);
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public BulkRevocationJob.ChunkResult revokeChunk(final AuthenticationToken admin, final int jobId, final List<String> fingerprints,
+            final int reason, final Date revocationDate) {
+        final boolean endEntityProfileLimitations = isEndEntityProfileLimitations();
+        final Map<Integer, Boolean> authorizedCas = new HashMap<>();
+        final Map<Integer, Boolean> authorizedEndEntityProfiles = new HashMap<>();
+        final Map<String, Boolean> requiresApproval = new HashMap<>();
+        final Map<Integer, CertificateProfile> certificateProfiles = new HashMap<>();
+        final Map<Integer, BasePublisher> publishers = new HashMap<>();
+        final Map<Integer, List<String>> revokedSerialNumbers = new LinkedHashMap<>();
+        final Set<String> distinctSerialNumbers = new HashSet<>();
+        final Map<Integer, String> issuerDns = new HashMap<>();
+        final Set<Integer> publisherIds = new HashSet<>();
+        int revoked = 0;
+        for (final String fingerprint : fingerprints) {
+            final BaseCertificateData certificateData = findCertificateData(fingerprint);
+            // The status may have changed since the chunk was selected
+            if (certificateData == null || (certificateData.getStatus() != CertificateConstants.CERT_ACTIVE
+                    && certificateData.getStatus() != CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION)) {
+                continue;
+            }
+            final int caId = certificateData.getIssuerDN().hashCode();
+            final int certificateProfileId = certificateData.getCertificateProfileId() == null ? CertificateProfileConstants.CERTPROFILE_NO_PROFILE
+                    : certificateData.getCertificateProfileId();
+            final int endEntityProfileId = certificateData.getEndEntityProfileIdOrZero();
+            final boolean authorized = authorizedCas.computeIfAbsent(caId,
+                    id -> authorizationSession.isAuthorizedNoLogging(admin, StandardRules.CAACCESS.resource() + id))
+                    && (!endEntityProfileLimitations || authorizedEndEntityProfiles.computeIfAbsent(endEntityProfileId,
+                            id -> authorizationSession.isAuthorizedNoLogging(admin, getRevokeRule(id))));
+            final CertificateProfile certificateProfile = certificateProfiles.computeIfAbsent(certificateProfileId,
+                    id -> certificateProfileSession.getCertificateProfile(id));
+            if (!authorized || (endEntityProfileId != EndEntityConstants.NO_END_ENTITY_PROFILE
+                    && certificateProfileId != CertificateProfileConstants.CERTPROFILE_NO_PROFILE
+                    && requiresApproval.computeIfAbsent(caId + ";" + certificateProfileId, key -> isApprovalRequired(caId, certificateProfile)))) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Skipping certificate " + certificateData.getSerialNumberHex() + " from issuer '" + certificateData.getIssuerDN() + "', "
+                            + (authorized ? "revocation requires approval." : "administrator is not authorized."));
+                }
+                continue;
+            }
+            final long now = System.currentTimeMillis();
+            certificateData.setStatus(CertificateConstants.CERT_REVOKED);
+            certificateData.setRevocationDate(revocationDate.getTime());
+            certificateData.setRevocationReason(reason);
+            certificateData.setUpdateTime(now);
+            if (certificateData instanceof NoConflictCertificateData) {
+                entityManager.persist(certificateData); // Append-only, so the revocation is a new row
+            }
+            revoked++;
+            revokedSerialNumbers.computeIfAbsent(caId, id -> new ArrayList<>()).add(certificateData.getSerialNumberHex());
+            distinctSerialNumbers.add(certificateData.getSerialNumber());
+            issuerDns.put(caId, certificateData.getIssuerDN());
+            if (certificateProfile != null && certificateProfile.getPublisherList() != null) {
+                for (final int publisherId : certificateProfile.getPublisherList()) {
+                    final BasePublisher publisher = publishers.computeIfAbsent(publisherId, id -> publisherSession.getPublisher(id));
+                    if (publisher != null && publisher.willPublishCertificate(CertificateConstants.CERT_REVOKED, revocationDate.getTime())) {
+                        queueRevocation(publisher, certificateData);
+                        publisherIds.add(publisherId);
+                    }
+                }
+            }
+        }
+        for (final Map.Entry<Integer, List<String>> entry : revokedSerialNumbers.entrySet()) {
+            final Map<String, Object> details = new LinkedHashMap<>();
+            details.put("msg", intres.getLocalizedMessage("ra.bulkrevokedchunk", jobId, entry.getValue().size(), issuerDns.get(entry.getKey()),
+                    reason, StringUtils.join(entry.getValue(), ", ")));
+            auditSession.log(EventTypes.CERT_REVOKED, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, admin.toString(),
+                    String.valueOf(entry.getKey()), null, null, details);
+        }
+        return new BulkRevocationJob.ChunkResult(revoked, distinctSerialNumbers.size(), new HashSet<>(revokedSerialNumbers.keySet()), publisherIds);
+    }
+
+    /**
+     * @return the certificate with the given fingerprint. For a certificate in NoConflictCertificateData, a copy of its current row, with
+     * a new id so that it can be appended. Null if there is no such certificate.
+     */
+    private BaseCertificateData findCertificateData(final String fingerprint) {
+        final CertificateData certificateData = entityManager.find(CertificateData.class, fingerprint);
+        if (certificateData != null) {
+            return certificateData;
+        }
+        final List<NoConflictCertificateData> rows = noConflictCertificateDataSession.findByFingerprint(fingerprint);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        // Picks the row that decides the current status, in the same way as single revocations do
+        final CertificateDataWrapper current = noConflictCertificateStoreSession.getCertificateDataByIssuerAndSerno(rows.get(0).getIssuerDN(),
+                new BigInteger(rows.get(0).getSerialNumber()));
+        return current != null && current.getBaseCertificateData() instanceof NoConflictCertificateData ? current.getBaseCertificateData() : null;
+    }
+
+    private void assertAuthorizedToRevoke(final AuthenticationToken admin) throws AuthorizationDeniedException {
+        if (!authorizationSession.isAuthorizedNoLogging(admin, AccessRulesConstants.REGULAR_REVOKEENDENTITY)) {
+            throw new AuthorizationDeniedException(intres.getLocalizedMessage("ra.errorauthrevoke"));
+        }
+    }
+
+    private boolean isEndEntityProfileLimitations() {
+        final GlobalConfiguration globalConfiguration = (GlobalConfiguration) globalConfigurationSession
+                .getCachedConfiguration(GlobalConfiguration.GLOBAL_CONFIGURATION_ID);
+        return globalConfiguration.getEnableEndEntityProfileLimitations();
+    }
+
+    private static String getRevokeRule(final int endEntityProfileId) {
+        return AccessRulesConstants.ENDENTITYPROFILEPREFIX + endEntityProfileId + AccessRulesConstants.REVOKE_END_ENTITY;
+    }
+
+    private boolean isApprovalRequired(final int caId, final CertificateProfile certificateProfile) {
+        final CAInfo caInfo = caSession.getCAInfoInternal(caId);
+        return approvalProfileSession.getApprovalProfileForAction(ApprovalRequestType.REVOCATION, caInfo, certificateProfile) != null;
+    }
+
+    private void queueRevocation(final BasePublisher publisher, final BaseCertificateData certificateData) {
+        final PublisherQueueVolatileInformation volatileInformation = new PublisherQueueVolatileInformation();
+        volatileInformation.setUsername(certificateData.getUsername());
+        volatileInformation.setUserDN(certificateData.getSubjectDnNeverNull());
+        try {
+            publisherQueueSession.addQueueData(publisher.getPublisherId(), PublisherConst.PUBLISH_TYPE_CERT, certificateData.getFingerprint(),
+                    volatileInformation, PublisherConst.STATUS_PENDING, publisher.getSafeDirectPublishing());
+        } catch (CreateException e) {
+            throw new IllegalStateException("Could not add certificate " + certificateData.getFingerprint() + " to the queue of publisher "
+                    + publisher.getPublisherId() + ".", e);
+        }
+    }
+
+    /** Publishes the revocations of a chunk for the publishers that publish directly. The others are published by the queue process service. */
+    private void publishQueuedRevocations(final AuthenticationToken admin, final Set<Integer> publisherIds, final int revoked) {
+        for (final int publisherId : publisherIds) {
+            final BasePublisher publisher = publisherSession.getPublisher(publisherId);
+            if (publisher != null && !publisher.getOnlyUseQueue()) {
+                publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(admin, publisher, revoked);
+            }
+        }
+    }
+
+    /** @return the normalized DN of the CA in the selector, or of all CAs that the administrator is authorized to */
+    private List<String> getIssuerDns(final AuthenticationToken admin, final BulkRevocationSelector selector) {
+        final List<String> ret = new ArrayList<>();
+        if (StringUtils.isNotEmpty(selector.getIssuerDn())) {
+            ret.add(selector.getIssuerDn());
+        } else {
+            for (final int caId : caSession.getAuthorizedCaIds(admin)) {
+                final CAInfo caInfo = caSession.getCAInfoInternal(caId);
+                if (caInfo != null) {
+                    ret.add(CertTools.stringToBCDNString(caInfo.getSubjectDN()));
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** @return the DNs of the CAs that store certificates in NoConflictCertificateData */
+    private List<String> getNoConflictIssuerDns(final List<String> issuerDns) {
+        final List<String> ret = new ArrayList<>();
+        for (final String issuerDn : issuerDns) {
+            final CAInfo caInfo = caSession.getCAInfoInternal(issuerDn.hashCode());
+            if (caInfo != null && caInfo.isUseNoConflictCertificateData()) {
+                ret.add(issuerDn);
+            }
+        }
+        return ret;
+    }
+
+    private String getWhereClause(final BulkRevocationSelector selector, final boolean noConflict, final boolean bySerialNumber,
+            final boolean byFingerprint) {
+        final StringBuilder sb = new StringBuilder(" WHERE a.issuerDN IN (:issuerDNs) AND ").append(SELECT_STATUS);
+        if (noConflict) {
+            // Only the most recent row of a certificate has its current status
+            sb.append(" AND NOT EXISTS (SELECT b FROM NoConflictCertificateData b WHERE b.fingerprint=a.fingerprint AND b.updateTime>a.updateTime)");
+        }
+        if (selector.getCertificateProfileId() != null) {
+            sb.append(" AND a.certificateProfileId=:certificateProfileId");
+        }
+        if (selector.getEndEntityProfileId() != null) {
+            sb.append(" AND a.endEntityProfileId=:endEntityProfileId");
+        }
+        if (bySerialNumber) {
+            sb.append(" AND a.serialNumber IN (:serialNumbers)");
+        }
+        if (byFingerprint) {
+            sb.append(" AND a.fingerprint>:fingerprint");
+        }
+        return sb.toString();
+    }
+
+    private void setParameters(final Query query, final BulkRevocationSelector selector, final List<String> issuerDns,
+            final List<BigInteger> serialNumbers, final String fingerprint) {
+        query.setParameter("issuerDNs", issuerDns);
+        if (selector.getCertificateProfileId() != null) {
+            query.setParameter("certificateProfileId", selector.getCertificateProfileId());
+        }
+        if (selector.getEndEntityProfileId() != null) {
+            query.setParameter("endEntityProfileId", selector.getEndEntityProfileId());
+        }
+        if (serialNumbers != null) {
+            final List<String> decimalSerialNumbers = new ArrayList<>(serialNumbers.size());
+            for (final BigInteger serialNumber : serialNumbers) {
+                decimalSerialNumbers.add(serialNumber.toString());
+            }
+            query.setParameter("serialNumbers", decimalSerialNumbers);
+        }
+        if (fingerprint != null) {
+            query.setParameter("fingerprint", fingerprint);
+        }
+    }
+
+    private long countRemaining(final BulkRevocationSelector selector, final List<String> issuerDns, final List<String> noConflictIssuerDns,
+            final String lastFingerprint) {
+        long ret = 0;
+        if (!issuerDns.isEmpty()) {
+            final Query query = entityManager.createQuery("SELECT COUNT(a) FROM CertificateData a" + getWhereClause(selector, false, false, true));
+            setParameters(query, selector, issuerDns, null, lastFingerprint);
+            ret += ((Number) query.getSingleResult()).longValue();
+        }
+        if (!noConflictIssuerDns.isEmpty()) {
+            final Query query = entityManager.createQuery("SELECT COUNT(DISTINCT a.fingerprint) FROM NoConflictCertificateData a"
+                    + getWhereClause(selector, true, false, true));
+            setParameters(query, selector, noConflictIssuerDns, null, lastFingerprint);
+            ret += ((Number) query.getSingleResult()).longValue();
+        }
+        return ret;
+    }
+
+    /**
+     * @param maxResults the maximum number of fingerprints to return, or 0 for no limit
+     * @return the fingerprints of the next certificates to revoke from CertificateData and NoConflictCertificateData, in fingerprint order
+     */
+    private List<String> findFingerprints(final BulkRevocationSelector selector, final List<String> issuerDns, final List<String> noConflictIssuerDns,
+            final List<BigInteger> serialNumbers, final String lastFingerprint, final int maxResults) {
+        final TreeSet<String> ret = new TreeSet<>();
+        if (!issuerDns.isEmpty()) {
+            final TypedQuery<String> query = entityManager.createQuery("SELECT a.fingerprint FROM CertificateData a"
+                    + getWhereClause(selector, false, serialNumbers != null, lastFingerprint != null) + " ORDER BY a.fingerprint", String.class);
+            setParameters(query, selector, issuerDns, serialNumbers, lastFingerprint);
+            if (maxResults > 0) {
+                query.setMaxResults(maxResults);
+            }
+            ret.addAll(query.getResultList());
+        }
+        if (!noConflictIssuerDns.isEmpty()) {
+            final TypedQuery<String> query = entityManager.createQuery("SELECT DISTINCT a.fingerprint FROM NoConflictCertificateData a"
+                    + getWhereClause(selector, true, serialNumbers != null, lastFingerprint != null) + " ORDER BY a.fingerprint", String.class);
+            setParameters(query, selector, noConflictIssuerDns, serialNumbers, lastFingerprint);
+            if (maxResults > 0) {
+                query.setMaxResults(maxResults);
+            }
+            ret.addAll(query.getResultList());
+        }
+        // The first fingerprints of both tables, so that the next chunk continues after the last one
+        final List<String> fingerprints = new ArrayList<>(ret);
+        return maxResults > 0 && fingerprints.size() > maxResults ? new ArrayList<>(fingerprints.subList(0, maxResults)) : fingerprints;
+    }
+
+    private void createCrls(final AuthenticationToken admin, final BulkRevocationJob job) {
+        for (final int caId : job.getCaIds()) {
+            try {
+                publishCrlSession.forceCRL(admin, caId);
+            } catch (Exception e) { // NOPMD: the certificates are revoked, so a CRL that can not be created now is created by the CRL Update Worker
+                log.warn("Bulk revocation " + job.getId() + " could not create a CRL for CA " + caId + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.ca.CAInfo;
+import org.ejbca.config.EjbcaConfiguration;
+
+/**
+ * Runs CRL generation jobs, one for each CA and CRL partition, concurrently on the asynchronous threads of the container.
+ * <p>
+ * Each job is started with an {@link javax.ejb.Asynchronous} call through the business proxy of {@link PublishingCrlSessionLocal},
+ * which gives each CRL partition a container transaction of its own, and the calling thread collects the {@link Future}s. The number
+ * of jobs started and not yet collected is bounded by crlgeneration.threads, and the number of jobs using the same crypto token by
+ * crlgeneration.threadspercryptotoken. Jobs are only started when their crypto token has a free permit, and are collected in the order
+ * they complete, so a slow HSM does not occupy all asynchronous threads while CAs on other crypto tokens are waiting. Jobs of the same CA are never run at the same time, since
+ * the CRL partitions of a CA are created from the same (not thread safe) CA object.
+ */
+final class CrlGenerationScheduler {
+
+    private static final Logger log = Logger.getLogger(CrlGenerationScheduler.class);
+
+    /** Time to wait for the oldest running job, before checking if any of the other running jobs has completed */
+    private static final long POLL_MILLIS = 50;
+
+    /** Permits by crypto token id, shared by all CRL generation running on this node */
+    private static final Map<Integer, Semaphore> cryptoTokenPermits = new ConcurrentHashMap<>();
+    /** A single permit by CA id, so that the CRL partitions of a CA are created one at a time */
+    private static final Map<Integer, Semaphore> caPermits = new ConcurrentHashMap<>();
+
+    private CrlGenerationScheduler() {}
+
+    /** Starts checking, and if needed generating, a CRL for a single CRL partition */
+    interface Task {
+        /** @return a future that is true if a CRL was generated */
+        Future<Boolean> start() throws Exception;
+    }
+
+    /** A CRL generation job for one CRL partition of a CA. */
+    static final class Job {
+        private final int caId;
+        private final String caName;
+        private final int cryptoTokenId;
+        private final int crlPartitionIndex;
+        private final boolean deltaCrl;
+        private final Task task;
+        private Semaphore caPermit;
+        private Semaphore cryptoTokenPermit;
+        private Future<Boolean> future;
+        private long startNanos;
+        private Exception exception;
+        private CrlGenerationResult result;
+
+        Job(final CAInfo caInfo, final int crlPartitionIndex, final boolean deltaCrl, final Task task) {
+            this(caInfo.getCAId(), caInfo.getName(), caInfo.getCAToken().getCryptoTokenId(), crlPartitionIndex, deltaCrl, task);
+        }
+
+        Job(final int caId, final String caName, final int cryptoTokenId, final int crlPartitionIndex, final boolean deltaCrl, final Task task) {
+            this.caId = caId;
+            this.caName = caName;
+            this.cryptoTokenId = cryptoTokenId;
+            this.crlPartitionIndex = crlPartitionIndex;
+            this.deltaCrl = deltaCrl;
+            this.task = task;
+        }
+
+        int getCaId() {
+            return caId;
+        }
+
+        /** @return the exception thrown by the job, or null if it did not fail */
+        Exception getException() {
+            return exception;
+        }
+
+        /** @return the result of the job, which is a failure if the job has not completed */
+        CrlGenerationResult getResult() {
+            final CrlGenerationResult ret = result;
+            if (ret == null) {
+                return new CrlGenerationResult(caId, caName, crlPartitionIndex, deltaCrl, false, "CRL generation was interrupted.", 0, 0);
+            }
+            return ret;
+        }
+
+        private void start(final Semaphore caPermit, final Semaphore cryptoTokenPermit) {
+            this.caPermit = caPermit;
+            this.cryptoTokenPermit = cryptoTokenPermit;
+            startNanos = System.nanoTime();
+            try {
+                future = task.start();
+            } catch (Exception e) {
+                exception = e;
+            }
+        }
+
+        /** Waits for the job to complete and releases its permits */
+        private void complete(final long scheduledNanos) throws InterruptedException {
+            boolean generated = false;
+            try {
+                if (future != null) {
+                    generated = Boolean.TRUE.equals(future.get());
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    exception = (Exception) e.getCause();
+                } else {
+                    // Tasks only throw exceptions, so this is an Error
+                    log.error("CRL generation failed: " + e.getMessage(), e);
+                    exception = e;
+                }
+            } finally {
+                releasePermits();
+            }
+            final long endNanos = System.nanoTime();
+            final String errorMessage = exception == null ? null : exception.getMessage() == null ? exception.getClass().getName() : exception.getMessage();
+            result = new CrlGenerationResult(caId, caName, crlPartitionIndex, deltaCrl, generated, errorMessage,
+                    TimeUnit.NANOSECONDS.toMillis(startNanos - scheduledNanos), TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+            if (log.isDebugEnabled()) {
+                log.debug(result.toString());
+            }
+        }
+
+        private void releasePermits() {
+            if (cryptoTokenPermit != null) {
+                cryptoTokenPermit.release();
+                cryptoTokenPermit = null;
+            }
+            if (caPermit != null) {
+                caPermit.release();
+                caPermit = null;
+            }
+        }
+    }
+
+    /**
+     * Runs the jobs and waits for all of them to complete. Exceptions thrown by the jobs are not propagated, but are available from
+     * {@link Job#getException()} afterwards.
+     *
+     * @param jobs the jobs to run, in the order they should be started
+     */
+    static void run(final List<Job> jobs) {
+        final long scheduledNanos = System.nanoTime();
+        final int threads = EjbcaConfiguration.getCrlGenerationThreads();
+        final LinkedList<Job> pending = new LinkedList<>(jobs);
+        final Deque<Job> running = new ArrayDeque<>();
+        try {
+            if (threads <= 1 || jobs.size() <= 1) {
+                while (!pending.isEmpty()) {
+                    final Job job = pending.removeFirst();
+                    job.start(null, null);
+                    running.add(job);
+                    running.removeFirst().complete(scheduledNanos);
+                }
+                return;
+            }
+            while (!pending.isEmpty() || !running.isEmpty()) {
+                // Start all jobs that have a free slot, no other job running for their CA and a free permit for their crypto token
+                for (final Iterator<Job> iterator = pending.iterator(); iterator.hasNext() && running.size() < threads;) {
+                    final Job job = iterator.next();
+                    final Semaphore caPermit = getCaPermit(job.caId);
+                    if (caPermit.tryAcquire()) {
+                        final Semaphore permits = getCryptoTokenPermits(job.cryptoTokenId);
+                        if (permits.tryAcquire()) {
+                            iterator.remove();
+                            job.start(caPermit, permits);
+                            running.addLast(job);
+                        } else {
+                            caPermit.release();
+                        }
+                    }
+                }
+                if (running.isEmpty()) {
+                    // The CAs or crypto tokens of all pending jobs are busy generating CRLs for some other caller.
+                    // The CA permit is always taken before the crypto token permit, so waiting for both can not deadlock.
+                    final Job job = pending.removeFirst();
+                    final Semaphore caPermit = getCaPermit(job.caId);
+                    caPermit.acquire();
+                    final Semaphore permits = getCryptoTokenPermits(job.cryptoTokenId);
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        caPermit.release();
+                        throw e;
+                    }
+                    job.start(caPermit, permits);
+                    running.addLast(job);
+                }
+                // Collect a completed job, which frees a slot and its permits
+                takeCompleted(running).complete(scheduledNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Interrupted while waiting for " + (pending.size() + running.size()) + " CRL generation jobs.");
+            for (final Job job : running) {
+                job.releasePermits();
+            }
+        }
+    }
+
+    /** @return the first running job that has completed, waiting for one if needed. The job is removed from running. */
+    private static Job takeCompleted(final Deque<Job> running) throws InterruptedException {
+        while (true) {
+            for (final Iterator<Job> iterator = running.iterator(); iterator.hasNext();) {
+                final Job job = iterator.next();
+                if (job.future == null || job.future.isDone()) {
+                    iterator.remove();
+                    return job;
+                }
+            }
+            // The futures of asynchronous session bean methods can't notify anyone when they complete
+            try {
+                running.getFirst().future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // Failures are handled when the job is collected, and a timeout means that we check the others again
+            }
+        }
+    }
+
+    private static Semaphore getCaPermit(final int caId) {
+        return caPermits.computeIfAbsent(caId, id -> new Semaphore(1));
+    }
+
+    private static Semaphore getCryptoTokenPermits(final int cryptoTokenId) {
+        return cryptoTokenPermits.computeIfAbsent(cryptoTokenId, id -> new Semaphore(EjbcaConfiguration.getCrlGenerationThreadsPerCryptoToken()));
+    }
+}
@@ -13,6 +13,7 @@
 package org.ejbca.core.ejb.crl;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.security.cert.CRLException;
 import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
@@ -26,9 +27,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.FinderException;
@@ -66,12 +70,15 @@ import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.NoConflictCertificateStoreSessionLocal;
 import org.cesecore.certificates.crl.CRLInfo;
 import org.cesecore.certificates.crl.CrlCreateSessionLocal;
+import org.cesecore.certificates.crl.CrlEntryCache;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.IncrementalCrlEntries;
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoCollection;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
-import org.cesecore.util.CompressedCollection;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 
 import com.keyfactor.CesecoreException;
@@ -132,60 +139,168 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
 
     @Override
     public Set<Integer> createCRLs(final AuthenticationToken admin, final Collection<Integer> caids, final long addtocrloverlaptime) throws AuthorizationDeniedException {
+        return getCaIdsWithAllCrlsGenerated(createCrlsWithResults(admin, caids, addtocrloverlaptime));
+    }
+
+    @Override
+    public Set<Integer> createDeltaCRLs(final AuthenticationToken admin, final Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException {
+        return getCaIdsWithAllCrlsGenerated(createDeltaCrlsWithResults(admin, caids, crloverlaptime));
+    }
+
+    @Override
+    public List<CrlGenerationResult> createCrlsWithResults(final AuthenticationToken admin, final Collection<Integer> caids, final long addtocrloverlaptime)
+            throws AuthorizationDeniedException {
+        return createCrlsInParallel(admin, caids, addtocrloverlaptime, false);
+    }
+
+    @Override
+    public List<CrlGenerationResult> createDeltaCrlsWithResults(final AuthenticationToken admin, final Collection<Integer> caids, final long crloverlaptime)
+            throws AuthorizationDeniedException {
+        return createCrlsInParallel(admin, caids, crloverlaptime, true);
+    }
+
+    /**
+     * Checks all given CAs and schedules one job for each CRL partition that may need a new CRL. The jobs are run concurrently by
+     * {@link CrlGenerationScheduler}, and each job creates its CRL in a transaction of its own.
+     */
+    private List<CrlGenerationResult> createCrlsInParallel(final AuthenticationToken admin, final Collection<Integer> caids, final long addToCrlOverlapTime,
+            final boolean deltaCrl) throws AuthorizationDeniedException {
         final Collection<Integer> caIdsToProcess;
         if (caids==null || caids.contains(Integer.valueOf(CAConstants.ALLCAS))) {
             caIdsToProcess = caSession.getAllCaIds();
         } else {
             caIdsToProcess = caids;
         }
-        Set<Integer> createdcrls = new HashSet<>();
+        final Date now = new Date();
+        final List<CrlGenerationScheduler.Job> jobs = new ArrayList<>();
         for (final int caid : caIdsToProcess) {
             if (log.isDebugEnabled()) {
-                log.debug("createCRLs for caid: " + caid);
+                log.debug((deltaCrl ? "createDeltaCRLs" : "createCRLs") + " for caid: " + caid);
             }
-            try {
-                if (publishingCrlSession.createCRLNewConditioned(admin, caid, addtocrloverlaptime)) {
-                    createdcrls.add(caid);
+            // Get CA checks authorization to the CA
+            final CA ca = (CA) caSession.getCA(admin, caid);
+            if (ca == null) {
+                log.error(intres.getLocalizedMessage("createcrl.errorcreate", caid, "CA does not exist."));
+                continue;
+            }
+            final CAInfo cainfo = ca.getCAInfo();
+            final Certificate cacert = getCaCertificateIfCrlIsIssued(cainfo, now, deltaCrl);
+            if (cacert == null) {
+                continue;
+            }
+            final List<Integer> crlPartitionIndexes = new ArrayList<>();
+            crlPartitionIndexes.add(CertificateConstants.NO_CRL_PARTITION);
+            final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
+            if (crlPartitions != null) {
+                for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
+                    crlPartitionIndexes.add(crlPartitionIndex);
+                }
+            }
+            // The jobs are started as asynchronous calls through the business proxy
+            for (final int crlPartitionIndex : crlPartitionIndexes) {
+                if (deltaCrl) {
+                    jobs.add(new CrlGenerationScheduler.Job(cainfo, crlPartitionIndex, true,
+                            () -> publishingCrlSession.internalCreateDeltaCrlForCrlPartitionAsync(admin, caid, crlPartitionIndex, now, addToCrlOverlapTime)));
+                } else {
+                    jobs.add(new CrlGenerationScheduler.Job(cainfo, crlPartitionIndex, false,
+                            () -> publishingCrlSession.internalCreateCrlForCrlPartitionAsync(admin, caid, crlPartitionIndex, now, addToCrlOverlapTime)));
                 }
-            } catch (CryptoTokenOfflineException | CAOfflineException | CADoesntExistsException e) {
+            }
+        }
+        CrlGenerationScheduler.run(jobs);
+        final List<CrlGenerationResult> results = new ArrayList<>(jobs.size());
+        AuthorizationDeniedException authorizationDeniedException = null;
+        for (final CrlGenerationScheduler.Job job : jobs) {
+            final Exception e = job.getException();
+            if (e instanceof AuthorizationDeniedException) {
+                authorizationDeniedException = (AuthorizationDeniedException) e;
+            } else if (e instanceof CesecoreException) {
                 // Don't fail all generation just because one of the CAs had token offline or similar.
                 // Continue working with the others, but log an error message in system logs, use error logging
                 // since it might be something that should call for attention of the operators, CRL generation is important.
-                String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
-                log.error(msg, e);
+                if (e instanceof CryptoTokenOfflineException) {
+                    log.warn("Crypto token is offline for CA "+job.getCaId()+" generating CRL.");
+                }
+                logCrlCreationFailure(admin, job.getCaId(), deltaCrl, (CesecoreException) e);
+            } else if (e != null) {
+                log.error(intres.getLocalizedMessage("createcrl.errorcreate", job.getCaId(), e.getMessage()), e);
             }
+            results.add(job.getResult());
+        }
+        if (authorizationDeniedException != null) {
+            throw authorizationDeniedException;
         }
-        return createdcrls;
+        return results;
     }
 
-    @Override
-    public Set<Integer> createDeltaCRLs(final AuthenticationToken admin, final Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException {
-        final Collection<Integer> caIdsToProcess;
-        if (caids==null || caids.contains(Integer.valueOf(CAConstants.ALLCAS))) {
-            caIdsToProcess = caSession.getAllCaIds();
-        } else {
-            caIdsToProcess = caids;
+    private void logCrlCreationFailure(final AuthenticationToken admin, final int caid, final boolean deltaCrl, final CesecoreException e) {
+        final String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
+        log.error(msg, e);
+        if (deltaCrl) {
+            final Map<String, Object> details = new LinkedHashMap<>();
+            details.put("msg", msg);
+            logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
         }
-        Set<Integer> createddeltacrls = new HashSet<>();
-        for (final int caid : caIdsToProcess) {
+    }
+
+    /** @return the IDs of the CAs for which a new CRL was generated for every CRL partition */
+    private Set<Integer> getCaIdsWithAllCrlsGenerated(final List<CrlGenerationResult> results) {
+        final Set<Integer> generated = new HashSet<>();
+        final Set<Integer> notGenerated = new HashSet<>();
+        for (final CrlGenerationResult result : results) {
+            (result.isGenerated() ? generated : notGenerated).add(result.getCaId());
+        }
+        generated.removeAll(notGenerated);
+        return generated;
+    }
+
+    /**
+     * Checks if the CA is in a state where it issues CRLs, i.e. it is an active X.509 CA with a CA certificate that has not expired.
+     *
+     * @param cainfo the CA to check
+     * @param now the current time
+     * @param deltaCrl true if delta CRLs should be checked, which also requires the CA to have a delta CRL period
+     * @return the CA certificate, or null if no CRL should be created for the CA
+     */
+    private Certificate getCaCertificateIfCrlIsIssued(final CAInfo cainfo, final Date now, final boolean deltaCrl) {
+        final String crlType = deltaCrl ? "delta CRL" : "CRL";
+        if (cainfo.getStatus() == CAConstants.CA_EXTERNAL) {
             if (log.isDebugEnabled()) {
-                log.debug("createDeltaCRLs for caid: " + caid);
+                log.debug("Not trying to generate "+crlType+" for external CA "+cainfo.getName());
             }
-            try {
-                if (publishingCrlSession.createDeltaCrlConditioned(admin, caid, crloverlaptime)) {
-                    createddeltacrls.add(caid);
+        } else if (cainfo.getStatus() == CAConstants.CA_WAITING_CERTIFICATE_RESPONSE) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not trying to generate "+crlType+" for CA "+cainfo.getName() +" awaiting certificate response.");
+            }
+        } else if (cainfo.getStatus() == CAConstants.CA_REVOKED) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not trying to generate "+crlType+" for CA "+cainfo.getName() +" that is revoked.");
+            }
+        } else if (cainfo.getStatus() == CAConstants.CA_UNINITIALIZED) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not trying to generate "+crlType+" for CA "+cainfo.getName() +" that is uninitialized.");
+            }
+        } else if (cainfo instanceof X509CAInfo) {
+            final Certificate cacert = getCaCertificate(cainfo);
+            // Don't create CRLs if the CA has expired
+            if (cacert != null && CertTools.getNotAfter(cacert).after(now)) {
+                if (deltaCrl && cainfo.getDeltaCRLPeriod() <= 0) {
+                    return null;
                 }
-            } catch (CesecoreException e) {
-                // Don't fail all generation just because one of the CAs had token offline or similar.
-                // Continue working with the others, but log a warning message in system logs.
-                final String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
-                log.error(msg, e);
-                final Map<String, Object> details = new LinkedHashMap<>();
-                details.put("msg", msg);
-                logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
+                if (cainfo.getStatus() == CAConstants.CA_OFFLINE) {
+                    // Normal event to not create CRLs for CAs that are deliberately set off line
+                    String msg = intres.getLocalizedMessage("createcrl.caoffline", cainfo.getName(), Integer.valueOf(cainfo.getCAId()));
+                    log.info(msg);
+                    return null;
+                }
+                return cacert;
+            } else if (log.isDebugEnabled() && cacert != null) {
+                log.debug("Not creating "+crlType+" for expired CA "+cainfo.getName()+". CA subjectDN='"+CertTools.getSubjectDN(cacert)+"', expired: "+CertTools.getNotAfter(cacert));
+            } else if (log.isDebugEnabled()) {
+                log.debug("Not creating "+crlType+" for CA without CA certificate: "+cainfo.getName());
             }
         }
-        return createddeltacrls;
+        return null;
     }
 
     @Override
@@ -194,50 +309,19 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         // Get CA checks authorization to the CA
         final CA ca = (CA) caSession.getCA(admin, caId);
         final CAInfo cainfo = ca.getCAInfo();
+        final Certificate cacert = getCaCertificateIfCrlIsIssued(cainfo, now, false);
+        if (cacert == null) {
+            return false;
+        }
         try {
-            if (cainfo.getStatus() == CAConstants.CA_EXTERNAL) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate CRL for external CA "+cainfo.getName());
-                }
-            } else if (cainfo.getStatus() == CAConstants.CA_WAITING_CERTIFICATE_RESPONSE) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate CRL for CA "+cainfo.getName() +" awaiting certificate response.");
-                }
-            } else if (cainfo.getStatus() == CAConstants.CA_REVOKED) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate CRL for CA "+cainfo.getName() +" that is revoked.");
-                }
-            } else if (cainfo.getStatus() == CAConstants.CA_UNINITIALIZED) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate CRL for CA "+cainfo.getName() +" that is uninitialized.");
-                }
-            } else {
-                if (cainfo instanceof X509CAInfo) {
-                    final Certificate cacert = getCaCertificate(cainfo);
-                    // Don't create CRLs if the CA has expired
-                    if (cacert != null && CertTools.getNotAfter(cacert).after(now)) {
-                        if (cainfo.getStatus() == CAConstants.CA_OFFLINE )  {
-                            // Normal event to not create CRLs for CAs that are deliberately set off line
-                            String msg = intres.getLocalizedMessage("createcrl.caoffline", cainfo.getName(), Integer.valueOf(cainfo.getCAId()));
-                            log.info(msg);
-                        } else {
-                            boolean result = createCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
-                            final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
-                            if (crlPartitions != null) {
-                                for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
-                                    result &= createCrlForActiveCa(admin, ca, cacert, crlPartitionIndex, now, addToCrlOverlapTime);
-                                }
-                            }
-                            return result;
-                        }
-                    } else if (log.isDebugEnabled() && cacert != null) {
-                        log.debug("Not creating CRL for expired CA "+cainfo.getName()+". CA subjectDN='"+CertTools.getSubjectDN(cacert)+"', expired: "+CertTools.getNotAfter(cacert));
-                    } else if (log.isDebugEnabled()) {
-                        log.debug("Not creating CRL for CA without CA certificate: "+cainfo.getName());
-                    }
+            boolean result = createCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
+            final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
+            if (crlPartitions != null) {
+                for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
+                    result &= createCrlForActiveCa(admin, ca, cacert, crlPartitionIndex, now, addToCrlOverlapTime);
                 }
             }
-            return false;
+            return result;
         } catch (CryptoTokenOfflineException e) {
             log.warn("Crypto token is offline for CA "+caId+" generating CRL.");
             throw e;
@@ -306,68 +390,60 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             if (log.isDebugEnabled()) {
                 log.debug("Creating CRL for CA, because:"+(now.getTime()+overlap)+" >= "+nextScheduledUpdate);
             }
-            return (internalCreateCRL(admin, ca, crlPartitionIndex, lastBaseCrlInfo, new Date()) != null);
+            return (publishingCrlSession.internalCreateCRL(admin, ca, crlPartitionIndex, lastBaseCrlInfo, new Date()) != null);
         }
         return false;
     }
 
+    @Override
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Future<Boolean> internalCreateCrlForCrlPartitionAsync(final AuthenticationToken admin, final int caId, final int crlPartitionIndex,
+            final Date now, final long addToCrlOverlapTime)
+            throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException {
+        final CA ca = (CA) caSession.getCA(admin, caId);
+        if (ca == null) {
+            throw new CADoesntExistsException("CA with ID " + caId + " does not exist.");
+        }
+        return new AsyncResult<>(createCrlForActiveCa(admin, ca, getCaCertificate(ca.getCAInfo()), crlPartitionIndex, now, addToCrlOverlapTime));
+    }
+
+    @Override
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Future<Boolean> internalCreateDeltaCrlForCrlPartitionAsync(final AuthenticationToken admin, final int caId, final int crlPartitionIndex,
+            final Date now, final long addToCrlOverlapTime)
+            throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException {
+        final CA ca = (CA) caSession.getCA(admin, caId);
+        if (ca == null) {
+            throw new CADoesntExistsException("CA with ID " + caId + " does not exist.");
+        }
+        return new AsyncResult<>(createDeltaCrlForActiveCa(admin, ca, getCaCertificate(ca.getCAInfo()), crlPartitionIndex, now, addToCrlOverlapTime));
+    }
+
     @Override
     public boolean createDeltaCrlConditioned(AuthenticationToken admin, int caid, long addToCrlOverlapTime)
             throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException {
-        boolean ret = false;
         final Date now = new Date();
         final CA ca = (CA) caSession.getCA(admin, caid);
         final CAInfo cainfo = ca.getCAInfo();
-        try{
-            if (cainfo.getStatus() == CAConstants.CA_EXTERNAL) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate delta CRL for external CA "+cainfo.getName());
-                }
-            } else if (cainfo.getStatus() == CAConstants.CA_WAITING_CERTIFICATE_RESPONSE) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate delta CRL for CA "+cainfo.getName() +" awaiting certificate response.");
-                }
-            } else if (cainfo.getStatus() == CAConstants.CA_REVOKED) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate delta CRL for CA "+cainfo.getName() +" that is revoked.");
-                }
-            } else if (cainfo.getStatus() == CAConstants.CA_UNINITIALIZED) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Not trying to generate delta CRL for CA "+cainfo.getName() +" that is uninitialized.");
-                }
-            } else {
-                if (cainfo instanceof X509CAInfo) {
-                    final Certificate cacert = getCaCertificate(cainfo);
-                    // Don't create CRLs if the CA has expired
-                    if (cacert != null && CertTools.getNotAfter(cacert).after(now)) {
-                        if (cainfo.getDeltaCRLPeriod() > 0) {
-                            if (cainfo.getStatus() == CAConstants.CA_OFFLINE) {
-                                // Normal event to not create CRLs for CAs that are deliberately set off line
-                                String msg = intres.getLocalizedMessage("createcrl.caoffline", cainfo.getName(), Integer.valueOf(cainfo.getCAId()));
-                                log.info(msg);
-                            } else {
-                                boolean result = createDeltaCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
-                                final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
-                                if (crlPartitions != null) {
-                                    for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
-                                        result &= createDeltaCrlForActiveCa(admin, ca, cacert, crlPartitionIndex, now, addToCrlOverlapTime);
-                                    }
-                                }
-                                return result;
-                            }
-                        }
-                    } else if (log.isDebugEnabled() && cacert != null) {
-                        log.debug("Not creating delta CRL for expired CA "+cainfo.getName()+". CA subjectDN='"+CertTools.getSubjectDN(cacert)+"', expired: "+CertTools.getNotAfter(cacert));
-                    } else if (log.isDebugEnabled()) {
-                        log.debug("Not creating delta CRL for CA without CA certificate: "+cainfo.getName());
-                    }
+        final Certificate cacert = getCaCertificateIfCrlIsIssued(cainfo, now, true);
+        if (cacert == null) {
+            return false;
+        }
+        try {
+            boolean result = createDeltaCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
+            final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
+            if (crlPartitions != null) {
+                for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
+                    result &= createDeltaCrlForActiveCa(admin, ca, cacert, crlPartitionIndex, now, addToCrlOverlapTime);
                 }
             }
+            return result;
         } catch (CryptoTokenOfflineException e) {
             log.warn("Crypto token is offline for CA "+caid+" generating CRL.");
             throw e;
         }
-        return ret;
     }
 
     /** Creates a Delta CRL for a CRL partition. The CA is assumed to be active (no checks are performed) */
@@ -484,11 +560,23 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             }
             // We can not create a CRL for a CA that is waiting for certificate response
             if ( caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE )  {
+                final CrlEntryCache crlEntryCache = getCrlEntryCache(ca);
+                if (crlEntryCache != null && lastBaseCrlInfo != null) {
+                    final byte[] crlBytes = createCrlFromCachedEntries(admin, ca, crlEntryCache, caCertSubjectDN, crlPartitionIndex, lastBaseCrlInfo,
+                            keepExpiredCertsOnCrl, validFrom);
+                    if (crlBytes != null) {
+                        if (log.isTraceEnabled()) {
+                            log.trace("<internalCreateCRL()");
+                        }
+                        return CertTools.getFingerprintAsString(crlBytes);
+                    }
+                }
                 // Find all revoked certificates for a complete CRL
                 if (log.isDebugEnabled()) {
                     final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
                     log.debug("Listing revoked certificates. Free memory=" + freeMemory);
                 }
+                final long readTime = System.currentTimeMillis();
                 revokedCertificates = noConflictCertificateStoreSession.listRevokedCertInfo(caCertSubjectDN, false,
                         crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, getAllowInvalidityDate(cainfo));
 
@@ -513,9 +601,9 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             }
                         }
                     }
-                    //Make sure new compressed collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
+                    //Make sure new collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
                     Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revokedCertificates;
-                    revokedCertificates = new CompressedCollection<>(RevokedCertInfo.class);
+                    revokedCertificates = new RevokedCertInfoCollection();
                     if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
                         revokedCertificates.addAll(revokedCertificatesBeforeLastCANameChange);
                     }
@@ -568,10 +656,26 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                         }
                     }
                 }
-                // a full CRL
-                final byte[] crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, revokedCertificates, lastBaseCrlInfo, false, validFrom);
-                if (crlBytes != null) {
-                    ret = CertTools.getFingerprintAsString(crlBytes);
+                // a full CRL, which also replaces the cached entries
+                IncrementalCrlEntries cachedEntries = null;
+                if (crlEntryCache != null) {
+                    try {
+                        cachedEntries = crlEntryCache.createEntries(caCertSubjectDN, crlPartitionIndex, keepExpiredCertsOnCrl, getAllowInvalidityDate(cainfo),
+                                revokedCertificates, readTime, lastBaseCrlCreationDate.getTime());
+                    } catch (IOException e) {
+                        log.warn("Could not cache the entries of the CRL for '" + caCertSubjectDN + "': " + e.getMessage());
+                    }
+                }
+                try {
+                    final byte[] crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, cachedEntries != null ? cachedEntries : revokedCertificates,
+                            lastBaseCrlInfo, false, validFrom);
+                    if (crlBytes != null) {
+                        ret = CertTools.getFingerprintAsString(crlBytes);
+                    }
+                } finally {
+                    if (cachedEntries != null) {
+                        cachedEntries.discard();
+                    }
                 }
                 // This debug logging is very, very heavy if you have large CRLs. Please don't use it :-)
                 //              if (log.isDebugEnabled()) {
@@ -591,7 +695,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             log.error(e);
             throw new EJBException(e);
         } finally {
-            // Special treatment of our CompressedCollection to ensure that we release all resources
+            // Clear the collection to release its memory right away
             if (revokedCertificates!=null) {
                 revokedCertificates.clear();
             }
@@ -636,7 +740,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         }
         byte[] crlBytes = null;
         Collection<RevokedCertInfo> revcertinfos = null;
-        CompressedCollection<RevokedCertInfo> certs = null;
+        RevokedCertInfoCollection certs = null;
         try {
             final Certificate cacert = getCaCertificate(cainfo);
             final String caCertSubjectDN = cacert==null ? null : CertTools.getSubjectDN(cacert);
@@ -707,9 +811,9 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             }
                         }
                     }
-                    //Make sure new compressed collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
+                    //Make sure new collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
                     Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revcertinfos;
-                    revcertinfos = new CompressedCollection<>(RevokedCertInfo.class);
+                    revcertinfos = new RevokedCertInfoCollection();
                     if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
                         revcertinfos.addAll(revokedCertificatesBeforeLastCANameChange);
                     }
@@ -720,7 +824,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                     log.debug("Found "+revcertinfos.size()+" revoked certificates.");
                 }
                 // Go through them and create a CRL, i.e. add to cert list to be included in CRL
-                certs = new CompressedCollection<>(RevokedCertInfo.class);
+                certs = new RevokedCertInfoCollection();
                 for (final RevokedCertInfo ci : revcertinfos) {
                     final boolean certificateIsReleasedFromHold = ci.getReason() == RevocationReasons.REMOVEFROMCRL.getDatabaseValue();
                     final boolean certificateAppearsOnBaseCrl = lastBaseCrlInfo.getCrl().getRevokedCertificate(ci.getUserCertificate()) != null;
@@ -755,7 +859,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             log.error(e);
             throw new EJBException(e);
         } finally {
-            // Special treatment of our CompressedCollections to ensure that we release all resources
+            // Clear the collections to release their memory right away
             if (revcertinfos!=null) {
                 revcertinfos.clear();
             }
@@ -811,10 +915,72 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         // nextCrlNumber: The highest number of last CRL (full or delta) and increased by 1 (both full CRLs and deltaCRLs share the same series of CRL Number)
         final int nextCrlNumber = ( fullcrlnumber > deltacrlnumber ? fullcrlnumber : deltacrlnumber ) +1;
         final byte[] crlBytes = crlCreateSession.generateAndStoreCRL(admin, ca, crlPartitionIndex, certs, delta?fullcrlnumber:-1, nextCrlNumber, validFrom);
+        if (certs instanceof IncrementalCrlEntries) {
+            try {
+                ((IncrementalCrlEntries) certs).commit(nextCrlNumber);
+            } catch (IOException e) {
+                log.warn("Could not cache the entries of CRL number " + nextCrlNumber + " for '" + certSubjectDN + "': " + e.getMessage());
+            }
+        }
         this.publisherSession.storeCRL(admin, ca.getCRLPublishers(), crlBytes, cafp, nextCrlNumber, certSubjectDN);
         return crlBytes;
     }
 
+    /** @return the cache of CRL entries to use for the CA, or null if CRLs should be created from all revoked certificates */
+    private CrlEntryCache getCrlEntryCache(final CA ca) {
+        final String cacheDir = EjbcaConfiguration.getCrlGenerationIncrementalCacheDir();
+        // CAs that have gone through a name change also list the certificates revoked under their previous names, and the revoked
+        // certificates in NoConflictCertificateData can't be counted to check that no changes were missed
+        if (cacheDir == null || ca.getCAType() != CAInfo.CATYPE_X509 || ((X509CA) ca).getNameChanged() || ca.getCAInfo().isUseNoConflictCertificateData()) {
+            return null;
+        }
+        return new CrlEntryCache(Paths.get(cacheDir));
+    }
+
+    /**
+     * Creates a base CRL from the cached entries of the last base CRL and the certificates whose revocation status changed since then,
+     * and archives the expired certificates.
+     *
+     * @return the CRL, or null if the cached entries can not be used and the CRL should be created from all revoked certificates
+     */
+    private byte[] createCrlFromCachedEntries(final AuthenticationToken admin, final CA ca, final CrlEntryCache crlEntryCache, final String caCertSubjectDN,
+            final int crlPartitionIndex, final CRLInfo lastBaseCrlInfo, final boolean keepExpiredCertsOnCrl, final Date validFrom)
+            throws CryptoTokenOfflineException, AuthorizationDeniedException {
+        final boolean allowInvalidityDate = getAllowInvalidityDate(ca.getCAInfo());
+        final IncrementalCrlEntries entries;
+        try {
+            // Certificates may be updated by transactions that started before the last read, or on nodes with a slightly different clock.
+            // Changes committed later than the margin after their update time are missed, but then the number of entries does not match
+            // the number of revoked certificates, and the CRL is created from all revoked certificates.
+            final long changesMargin = EjbcaConfiguration.getCrlGenerationIncrementalChangesMargin();
+            entries = crlEntryCache.updateEntries(caCertSubjectDN, crlPartitionIndex, keepExpiredCertsOnCrl, allowInvalidityDate,
+                    lastBaseCrlInfo.getLastCRLNumber(), EjbcaConfiguration.getCrlGenerationIncrementalFullInterval(),
+                    changesAfter -> noConflictCertificateStoreSession.listRevokedCertInfoUpdatedAfter(caCertSubjectDN, crlPartitionIndex,
+                            changesAfter - changesMargin, allowInvalidityDate),
+                    () -> certificateDataSession.countRevokedCertificates(caCertSubjectDN, crlPartitionIndex), lastBaseCrlInfo.getCreateDate().getTime());
+        } catch (IOException e) {
+            log.warn("Could not read the cached CRL entries for '" + caCertSubjectDN + "', creating the CRL from all revoked certificates: " + e.getMessage());
+            return null;
+        }
+        if (entries == null) {
+            return null;
+        }
+        try {
+            final byte[] crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, entries, lastBaseCrlInfo, false, validFrom);
+            // The same rules as for CRLs created from all revoked certificates, see internalCreateCRL
+            final AuthenticationToken archiveAdmin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("CrlCreateSession.archive_expired"));
+            for (final String fingerprint : entries.getExpiredFingerprints()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Archiving certificate with fp=" + fingerprint + ".");
+                }
+                noConflictCertificateStoreSession.setStatus(archiveAdmin, fingerprint, CertificateConstants.CERT_ARCHIVED);
+            }
+            return crlBytes;
+        } finally {
+            entries.discard();
+        }
+    }
+
     private Certificate getCaCertificate(final CAInfo caInfo) {
         final Collection<Certificate> certificateChain = caInfo.getCertificateChain();
         return certificateChain.isEmpty() ? null : certificateChain.iterator().next();
@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ocsp;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -51,6 +52,18 @@ public class OcspDataSessionBean implements OcspDataSessionLocal, OcspDataSessio
         log.trace("<persistOcspData");
     }
 
+    @Override
+    public void storeOcspData(final Collection<OcspResponseData> ocspResponseDatas) {
+        log.trace(">storeOcspData");
+        for (final OcspResponseData responseData : ocspResponseDatas) {
+            this.entityManager.persist(responseData);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Stored " + ocspResponseDatas.size() + " OCSP responses.");
+        }
+        log.trace("<storeOcspData");
+    }
+
     @Override
     public List<OcspResponseData> findOcspDataByCaId(final Integer caId) {
         log.trace(">findOcspDataByCaId");
@@ -118,6 +131,26 @@ public class OcspDataSessionBean implements OcspDataSessionLocal, OcspDataSessio
                            .collect(Collectors.toList());
     }
     
+    @Override
+    public List<String> findExpiringOcspDataAfter(final Integer caId, final long expirationDate, final String afterSerialNumber,
+            final int maxNumberOfResults) {
+        log.trace(">findExpiringOcspDataAfter");
+        final TypedQuery<OcspResponseData> query = this.entityManager.createNamedQuery(OcspResponseData.FIND_EXPIRING_OCSP_DATA_BY_CAID_AFTER_SERIALNUMBER,
+                OcspResponseData.class);
+        query.setParameter("caId", caId);
+        query.setParameter("expirationDate", expirationDate);
+        query.setParameter("serialNumber", afterSerialNumber == null ? "" : afterSerialNumber);
+        query.setMaxResults(maxNumberOfResults);
+        final List<String> result = query.getResultList()
+                .stream()
+                .map(response -> response.getSerialNumber())
+                .collect(Collectors.toList());
+        if (log.isTraceEnabled()) {
+            log.trace("<findExpiringOcspDataAfter(" + caId + ", " + expirationDate + ", " + afterSerialNumber + ") yielded " + result.size() + " results.");
+        }
+        return result;
+    }
+
     @Override
     public void deleteOcspDataByCaId(final Integer caId) {
         log.trace(">deleteOcspDataByCaId");
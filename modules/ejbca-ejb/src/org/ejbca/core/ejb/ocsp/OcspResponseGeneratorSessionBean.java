@@ -38,12 +38,14 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -56,14 +58,12 @@ import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.SessionContext;
@@ -110,6 +110,7 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
 import org.bouncycastle.cert.ocsp.Req;
 import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
 import org.bouncycastle.cert.ocsp.UnknownStatus;
 import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
 import org.bouncycastle.operator.OperatorCreationException;
@@ -146,12 +147,15 @@ import org.cesecore.certificates.ocsp.cache.OcspDataConfigCache;
 import org.cesecore.certificates.ocsp.cache.OcspDataConfigCacheEntry;
 import org.cesecore.certificates.ocsp.cache.OcspExtensionsCache;
 import org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCacheEntry;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
 import org.cesecore.certificates.ocsp.exception.CryptoProviderException;
 import org.cesecore.certificates.ocsp.exception.IllegalNonceException;
 import org.cesecore.certificates.ocsp.exception.MalformedRequestException;
 import org.cesecore.certificates.ocsp.exception.OcspFailureException;
+import org.cesecore.certificates.ocsp.exception.OcspSigningOverloadException;
 import org.cesecore.certificates.ocsp.extension.OCSPExtension;
 import org.cesecore.certificates.ocsp.extension.OCSPExtensionType;
 import org.cesecore.certificates.ocsp.logging.AuditLogger;
@@ -186,7 +190,6 @@ import org.cesecore.util.ValidityDate;
 import org.cesecore.util.log.ProbableErrorHandler;
 import org.cesecore.util.provider.EkuPKIXCertPathChecker;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
-import org.ejbca.core.model.ca.publisher.PublisherException;
 
 import com.keyfactor.util.CeSecoreNameStyle;
 import com.keyfactor.util.CertTools;
@@ -215,9 +218,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     private static final Logger log = Logger.getLogger(OcspResponseGeneratorSessionBean.class);
 
     private static final InternalResources intres = InternalResources.getInstance();
-    
-    private static volatile ExecutorService service = Executors.newCachedThreadPool();
-    
+
     @Resource
     private SessionContext sessionContext;
     /* When the sessionContext is injected, the timerService should be looked up.
@@ -492,6 +493,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 }
                 OcspSigningCache.INSTANCE.stagingCommit(ocspConfiguration.getOcspDefaultResponderReference());
                 OcspDataConfigCache.INSTANCE.stagingCommit();
+                // Signing keys, CA statuses or key binding settings may have changed, so previously signed responses can no longer be trusted
+                OcspResponseCache.INSTANCE.flush();
+                // Stop the signing threads of OCSP signers that were removed or replaced
+                OcspSigningEngine.retainAll(OcspSigningCache.INSTANCE.getEntries());
             } finally {
                 OcspSigningCache.INSTANCE.stagingRelease();
             }
@@ -1335,6 +1340,19 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             String xForwardedFor, StringBuffer requestUrl, final AuditLogger auditLogger, final TransactionLogger transactionLogger,
             boolean isPreSigning, boolean issueFinalResponse, boolean includeExpiredCertificates)
             throws MalformedRequestException, OCSPException {
+        return getOcspResponse(request, requestCertificates, remoteAddress, xForwardedFor, requestUrl, auditLogger, transactionLogger, isPreSigning,
+                issueFinalResponse, includeExpiredCertificates, null);
+    }
+
+    /**
+     * @param preProducedResponses if not null, responses to be stored as pre-produced responses are added to this collection instead of
+     *      being stored and published right away.
+     * @see #getOcspResponse(byte[], X509Certificate[], String, String, StringBuffer, AuditLogger, TransactionLogger, boolean, boolean, boolean)
+     */
+    private OcspResponseInformation getOcspResponse(final byte[] request, final X509Certificate[] requestCertificates, String remoteAddress,
+            String xForwardedFor, StringBuffer requestUrl, final AuditLogger auditLogger, final TransactionLogger transactionLogger,
+            boolean isPreSigning, boolean issueFinalResponse, boolean includeExpiredCertificates, final Collection<OcspResponseData> preProducedResponses)
+            throws MalformedRequestException, OCSPException {
         //Check parameters
         if (auditLogger == null) {
             throw new InvalidParameterException("Illegal to pass a null audit logger to OcspResponseSession.getOcspResponse");
@@ -1364,6 +1382,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         X509Certificate signerCert = null;
         String serialNrForResponseStore = null;
         int caIdForResponseStore = 0;
+        CertificateID certIdForResponseCache = null;
+        final long responseCacheGeneration = OcspResponseCache.INSTANCE.getGeneration();
         try {
             req = translateRequestFromByteArray(request, remoteAddress, transactionLogger);
             // Get the certificate status requests that are inside this OCSP req
@@ -1454,6 +1474,25 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     }
                 }
                                 
+                // Serve responses to single requests from the in-memory response cache, if enabled
+                if (!isPreSigning && ocspRequests.length == 1 && isResponseCacheable(req, ocspSigningCacheEntry)) {
+                    final OcspResponseCacheEntry cachedResponse = OcspResponseCache.INSTANCE.getResponse(certId);
+                    if (cachedResponse != null) {
+                        try {
+                            final OCSPResp ocspResp = new OCSPResp(cachedResponse.getOcspResponse());
+                            if (log.isDebugEnabled()) {
+                                log.debug("Returning cached OCSP response for cert serial " + certId.getSerialNumber().toString(16));
+                            }
+                            logPreviouslySignedResponse(ocspResp, cachedResponse.getOcspResponse(), ocspSigningCacheEntry, auditLogger, transactionLogger);
+                            return new OcspResponseInformation(ocspResp, cachedResponse.getMaxAge(), cachedResponse.getSignerCertificate());
+                        } catch (IOException e) {
+                            log.warn("Cached OCSP response for certificate with serialNr '" + certId.getSerialNumber() + "' was malformed. Producing new response.");
+                            OcspResponseCache.INSTANCE.invalidate(certId.getSerialNumber());
+                        }
+                    }
+                    certIdForResponseCache = certId;
+                }
+
                 // We only store pre-produced single responses
                 if (ocspRequests.length == 1 && ocspDataConfig != null && ocspDataConfig.isPreProductionEnabled()) {
                     
@@ -1475,33 +1514,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                                 log.debug("Returning pre-produced OCSP response for CA " + ocspResponseData.getCaId() + " and cert serial "
                                         + ocspResponseData.getSerialNumber());
                             }
-
-                            // Audit ant transaction log before returning the response info (if not a pre-signing situation).
-                            if (auditLogger.isEnabled()) {
-                                auditLogger.paramPut(AuditLogger.OCSPRESPONSE, StringTools.hex(ocspResponseData.getOcspResponse()));
-                                auditLogger.writeln();
-                                auditLogger.flush();
-                            }
-
-                            if (transactionLogger.isEnabled()) {
-                                if (ocspSigningCacheEntry != null) {
-                                    transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN,
-                                            ocspSigningCacheEntry.getSigningCertificateIssuerDn());
-                                    transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN_RAW,
-                                            ocspSigningCacheEntry.getSigningCertificateIssuerDnRaw());
-                                    // Issuer of the requested certificate is not logged to save database lookup
-                                }
-                                org.bouncycastle.cert.ocsp.CertificateStatus status = ((BasicOCSPResp) ocspResp.getResponseObject()).getResponses()[0]
-                                        .getCertStatus();
-
-                                transactionLogger.paramPut(TransactionLogger.CERT_STATUS, fetchCertStatus(status));
-
-                                if (!Objects.isNull(status) && ((RevokedStatus) status).hasRevocationReason()) {
-                                    transactionLogger.paramPut(TransactionLogger.REV_REASON, ((RevokedStatus) status).getRevocationReason());
-                                }
-                                transactionLogger.writeln();
-                                transactionLogger.flush();
-                            }
+                            logPreviouslySignedResponse(ocspResp, ocspResponseData.getOcspResponse(), ocspSigningCacheEntry, auditLogger, transactionLogger);
                             return new OcspResponseInformation(ocspResp, maxAge, signerCert);
                         } catch (IOException e) {
                             log.warn("Pre-produced OCSP response for certificate with serialNr '" + certId.getSerialNumber()
@@ -1743,6 +1756,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
 
                     final String sStatus;
                     if (status.equals(CertificateStatus.NOT_AVAILABLE)) {
+                        // The response for non existing certificates may depend on the request URL, so don't cache it
+                        certIdForResponseCache = null;
                         // No revocation info available for this cert, handle it
                         if (log.isDebugEnabled()) {
                             log.debug("Unable to find revocation information for certificate with serial '" + certId.getSerialNumber().toString(16)
@@ -2003,6 +2018,25 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             if (!isPreSigning && auditLogger.isEnabled()) {
                 auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.MALFORMED_REQUEST);
             }
+        } catch (OcspSigningOverloadException e) {
+            if (!isPreSigning && transactionLogger.isEnabled()) {
+                transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+            }
+            if (!isPreSigning && auditLogger.isEnabled()) {
+                auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+            }
+            // Rejections are counted per signer and reported by the health check, so only log them at debug level
+            if (log.isDebugEnabled()) {
+                log.debug(intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage()));
+            }
+            // RFC 2560: responseBytes are not set on error.
+            ocspResponse = responseGenerator.build(OCSPRespBuilder.TRY_LATER, null);
+            if (!isPreSigning && transactionLogger.isEnabled()) {
+                transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.TRY_LATER);
+            }
+            if (!isPreSigning && auditLogger.isEnabled()) {
+                auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.TRY_LATER);
+            }
         } catch (NoSuchAlgorithmException | CertificateException | CryptoTokenOfflineException e) {
             ocspResponse = processDefaultError(isPreSigning, responseGenerator, transactionLogger, auditLogger, e);
         }
@@ -2041,14 +2075,85 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (serialNrForResponseStore != null && caIdForResponseStore != 0 && 
                 ocspResponse.getStatus() == OCSPRespBuilder.SUCCESSFUL) { 
             try {
-                storeOcspResponse(caIdForResponseStore, serialNrForResponseStore, ocspResponse);
+                storeOcspResponse(caIdForResponseStore, serialNrForResponseStore, ocspResponse, preProducedResponses);
             } catch (OCSPException | IOException e) {
                 // Log the error and reply anyway
                 log.warn("Error storing OCSP response for certificate with serialNr '" + serialNrForResponseStore);
             }
         }
+        if (certIdForResponseCache != null && ocspResponse.getStatus() == OCSPRespBuilder.SUCCESSFUL) {
+            cacheOcspResponse(certIdForResponseCache, ocspResponse, maxAge, signerCert, responseCacheGeneration);
+        }
         return new OcspResponseInformation(ocspResponse, maxAge, signerCert);
     }
+
+    /**
+     * Audit and transaction logs a response that was signed earlier, i.e. a pre-produced response or one from the in-memory response cache.
+     */
+    private void logPreviouslySignedResponse(final OCSPResp ocspResp, final byte[] encodedResponse, final OcspSigningCacheEntry ocspSigningCacheEntry,
+            final AuditLogger auditLogger, final TransactionLogger transactionLogger) throws OCSPException {
+        // Audit ant transaction log before returning the response info (if not a pre-signing situation).
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(AuditLogger.OCSPRESPONSE, StringTools.hex(encodedResponse));
+            auditLogger.writeln();
+            auditLogger.flush();
+        }
+
+        if (transactionLogger.isEnabled()) {
+            if (ocspSigningCacheEntry != null) {
+                transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN,
+                        ocspSigningCacheEntry.getSigningCertificateIssuerDn());
+                transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN_RAW,
+                        ocspSigningCacheEntry.getSigningCertificateIssuerDnRaw());
+                // Issuer of the requested certificate is not logged to save database lookup
+            }
+            org.bouncycastle.cert.ocsp.CertificateStatus status = ((BasicOCSPResp) ocspResp.getResponseObject()).getResponses()[0]
+                    .getCertStatus();
+
+            transactionLogger.paramPut(TransactionLogger.CERT_STATUS, fetchCertStatus(status));
+
+            if (!Objects.isNull(status) && ((RevokedStatus) status).hasRevocationReason()) {
+                transactionLogger.paramPut(TransactionLogger.REV_REASON, ((RevokedStatus) status).getRevocationReason());
+            }
+            transactionLogger.writeln();
+            transactionLogger.flush();
+        }
+    }
+
+    /**
+     * @return true if the response to this request may be served from, and stored in, the in-memory response cache. That is the case
+     *   when the cache is enabled, the request has no extensions that would make the response specific to the client and no OCSP
+     *   extensions plugins (that may depend on the client) are configured for the responder.
+     */
+    private boolean isResponseCacheable(final OCSPReq req, final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        if (ocspSigningCacheEntry == null || !OcspResponseCache.INSTANCE.isEnabled()) {
+            return false;
+        }
+        final OcspKeyBinding ocspKeyBinding = ocspSigningCacheEntry.getOcspKeyBinding();
+        if (ocspKeyBinding != null) {
+            for (final String extensionOid : ocspKeyBinding.getOcspExtensions()) {
+                if (!OCSPObjectIdentifiers.id_pkix_ocsp_archive_cutoff.getId().equals(extensionOid)) {
+                    return false;
+                }
+            }
+        }
+        return reqHasExtensionsOkToStoreResponse(req, ocspSigningCacheEntry);
+    }
+
+    /** Stores a successful response in the in-memory response cache, if it has a nextUpdate. */
+    private void cacheOcspResponse(final CertificateID certId, final OCSPResp ocspResponse, final long maxAge, final X509Certificate signerCert,
+            final long responseCacheGeneration) {
+        try {
+            final SingleResp[] singleResponses = ((BasicOCSPResp) ocspResponse.getResponseObject()).getResponses();
+            if (singleResponses.length != 1 || singleResponses[0].getNextUpdate() == null) {
+                return;
+            }
+            OcspResponseCache.INSTANCE.putResponse(certId, ocspResponse.getEncoded(), singleResponses[0].getNextUpdate().getTime(), maxAge,
+                    signerCert, responseCacheGeneration);
+        } catch (OCSPException | IOException e) {
+            log.warn("Unable to cache OCSP response for certificate with serialNr '" + certId.getSerialNumber().toString(16) + "': " + e.getMessage());
+        }
+    }
     
     private int fetchCertStatus(org.bouncycastle.cert.ocsp.CertificateStatus certStatus) {
         if (Objects.isNull(certStatus)) {
@@ -2060,7 +2165,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
     }
 
-    private void storeOcspResponse(final int caId, final String serialNr, final OCSPResp ocspResponse) throws OCSPException, IOException {
+    private void storeOcspResponse(final int caId, final String serialNr, final OCSPResp ocspResponse, final Collection<OcspResponseData> preProducedResponses)
+            throws OCSPException, IOException {
         // Redundantly storing producedAt and nextUpdate, next to the canned response itself for faster querying. 
         // Assuming this is a single response (we don't store it otherwise), we can safely pick nextUpdate from first index.
         long producedAt = ((BasicOCSPResp)ocspResponse.getResponseObject()).getProducedAt().getTime();
@@ -2072,11 +2178,20 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
         nextUpdate = nextUpdateDate.getTime();
         final OcspResponseData responseData = new OcspResponseData(UUID.randomUUID().toString(), caId, serialNr, producedAt, nextUpdate, ocspResponse.getEncoded());
+        if (preProducedResponses != null) {
+            // Stored and published in bulk by the caller
+            preProducedResponses.add(responseData);
+            return;
+        }
         ocspDataSession.storeOcspData(responseData);
         publishOcspResponse(caId, responseData);
     }
     
     private void publishOcspResponse(final int caId, final OcspResponseData responseData) {
+        publishOcspResponses(caId, Collections.singletonList(responseData));
+    }
+
+    private void publishOcspResponses(final int caId, final Collection<OcspResponseData> responseDatas) {
         AuthenticationToken authenticationToken = new AlwaysAllowLocalAuthenticationToken(
                 new UsernamePrincipal(OcspResponseGeneratorSessionBean.class.getSimpleName()));
         CAInfo caInfo = caSession.getCAInfoInternal(caId);
@@ -2086,12 +2201,13 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             return; // Just return if no publishers set for the CA.
         }
         
+        final List<OcspResponseData> responseDataList = new ArrayList<>(responseDatas);
         CompletableFuture.runAsync(() -> {
             try {
-                publisherSession.storeOcspResponses(authenticationToken, cAPublishers, responseData);
-            } catch (PublisherException | AuthorizationDeniedException e) {
+                publisherSession.storeOcspResponses(authenticationToken, cAPublishers, responseDataList);
+            } catch (AuthorizationDeniedException e) {
                 log.warn("Error publishing OCSP response data for certificate with caId '" + caId, e);
-            } 
+            }
         });
     }
 
@@ -2291,6 +2407,66 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     
     @Override
     public void preSignOcspResponse(X509Certificate cacert, final BigInteger serialNr, boolean issueFinalResponse, boolean includeExpiredCertificates, String certIDHashAlgorithm) {
+        preSignOcspResponse(cacert, serialNr, issueFinalResponse, includeExpiredCertificates, certIDHashAlgorithm, null);
+    }
+
+    @Override
+    public int preSignOcspResponses(final X509Certificate cacert, final List<BigInteger> serialNrs, final boolean issueFinalResponse,
+            final boolean includeExpiredCertificates, final String certIDHashAlgorithm) {
+        // The responses are produced on container managed threads, through the business proxy. At most ocsp.signing.threads responses
+        // are requested at a time, so that a large batch does not occupy all asynchronous threads of the application server.
+        final OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession = sessionContext.getBusinessObject(OcspResponseGeneratorSessionLocal.class);
+        final int maxRunning = OcspConfiguration.getSigningThreads();
+        final List<OcspResponseData> preProducedResponses = new ArrayList<>(serialNrs.size());
+        final Deque<Future<OcspResponseData>> running = new ArrayDeque<>(maxRunning);
+        for (final BigInteger serialNr : serialNrs) {
+            if (running.size() >= maxRunning) {
+                addPreProducedResponse(running.removeFirst(), preProducedResponses);
+            }
+            running.addLast(ocspResponseGeneratorSession.internalPreSignOcspResponseAsync(cacert, serialNr, issueFinalResponse, includeExpiredCertificates,
+                    certIDHashAlgorithm));
+        }
+        while (!running.isEmpty()) {
+            addPreProducedResponse(running.removeFirst(), preProducedResponses);
+        }
+        if (preProducedResponses.isEmpty()) {
+            return 0;
+        }
+        ocspDataSession.storeOcspData(preProducedResponses);
+        publishOcspResponses(preProducedResponses.iterator().next().getCaId(), preProducedResponses);
+        if (log.isDebugEnabled()) {
+            log.debug("Stored " + preProducedResponses.size() + " of " + serialNrs.size() + " pre-produced OCSP responses for CA '"
+                    + CertTools.getSubjectDN(cacert) + "'.");
+        }
+        return preProducedResponses.size();
+    }
+
+    @Asynchronous
+    @Override
+    public Future<OcspResponseData> internalPreSignOcspResponseAsync(final X509Certificate cacert, final BigInteger serialNr,
+            final boolean issueFinalResponse, final boolean includeExpiredCertificates, final String certIDHashAlgorithm) {
+        final List<OcspResponseData> preProducedResponses = new ArrayList<>(1);
+        preSignOcspResponse(cacert, serialNr, issueFinalResponse, includeExpiredCertificates, certIDHashAlgorithm, preProducedResponses);
+        return new AsyncResult<>(preProducedResponses.isEmpty() ? null : preProducedResponses.get(0));
+    }
+
+    private void addPreProducedResponse(final Future<OcspResponseData> future, final List<OcspResponseData> preProducedResponses) {
+        try {
+            final OcspResponseData responseData = future.get();
+            if (responseData != null) {
+                preProducedResponses.add(responseData);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EJBException(e);
+        } catch (ExecutionException e) {
+            // preSignOcspResponse logs its own errors, so this is unexpected
+            log.warn("Pre-producing OCSP response failed: " + e.getCause().getMessage());
+        }
+    }
+
+    private void preSignOcspResponse(X509Certificate cacert, final BigInteger serialNr, boolean issueFinalResponse, boolean includeExpiredCertificates,
+            String certIDHashAlgorithm, final Collection<OcspResponseData> preProducedResponses) {
         final OCSPReq req;
         final OCSPReqBuilder gen = new OCSPReqBuilder();
         final int localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
@@ -2313,7 +2489,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
 
             gen.addRequest(certId);
             req = gen.build();
-            getOcspResponse(req.getEncoded(), null, remoteAddress, null, null, auditLogger, transactionLogger, true, issueFinalResponse, includeExpiredCertificates);
+            getOcspResponse(req.getEncoded(), null, remoteAddress, null, null, auditLogger, transactionLogger, true, issueFinalResponse, includeExpiredCertificates,
+                    preProducedResponses);
         } catch (Throwable e) {
             final String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
             log.info(errMsg);
@@ -2329,7 +2506,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     }
     
     private BasicOCSPResp signOcspResponse(OCSPReq req, List<OCSPResponseItem> responseList, Extensions exts, 
-            final OcspSigningCacheEntry ocspSigningCacheEntry, Date producedAt) throws CryptoTokenOfflineException {
+            final OcspSigningCacheEntry ocspSigningCacheEntry, Date producedAt) throws CryptoTokenOfflineException, OcspSigningOverloadException {
         assertAcceptableResponseExtension(req);
         if (!ocspSigningCacheEntry.isSigningCertificateForOcspSigning()) {
             log.warn("Signing with non OCSP certificate (no 'OCSP Signing' Extended Key Usage) bound by OcspKeyBinding '" + ocspSigningCacheEntry.getOcspKeyBinding().getName() + "'.");
@@ -2357,9 +2534,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     
     private BasicOCSPResp generateBasicOcspResp(Extensions exts, List<OCSPResponseItem> responses, String sigAlg,
                         X509Certificate signerCert, OcspSigningCacheEntry ocspSigningCacheEntry, Date producedAt)
-                                throws OCSPException, CryptoTokenOfflineException {
-        final PrivateKey signerKey = ocspSigningCacheEntry.getPrivateKey();
-        final String provider = ocspSigningCacheEntry.getSignatureProviderName();
+                                throws OCSPException, CryptoTokenOfflineException, OcspSigningOverloadException {
         BasicOCSPResp returnval = null;
         BasicOCSPRespBuilder basicRes = new BasicOCSPRespBuilder(ocspSigningCacheEntry.getRespId());
         if (responses != null) {
@@ -2379,27 +2554,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (log.isDebugEnabled()) {
             log.debug("The response certificate chain contains " + chain.length + " certificates");
         }
-        /*
-         * The below code breaks the EJB standard by creating its own thread pool and creating a single thread (of the HsmResponseThread 
-         * type). The reason for this is that the HSM may deadlock when requesting an OCSP response, which we need to guard against. Since 
-         * there is no way of performing this action within the EJB3.0 standard, we are consciously creating threads here. 
-         * 
-         * Note that this does in no way break the spirit of the EJB standard, which is to not interrupt EJB's transaction handling by 
-         * competing with its own thread pool, since these operations have no database impact.
-         */
-        final Future<BasicOCSPResp> task = service.submit(new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt));
-        try {
-            returnval = task.get(HsmResponseThread.HSM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            task.cancel(true);
-            throw new Error("OCSP response retrieval was interrupted while running. This should not happen", e);
-        } catch (ExecutionException e) {
-            task.cancel(true);
-            throw new OcspFailureException("Failure encountered while retrieving OCSP response.", e);
-        } catch (TimeoutException e) {
-            task.cancel(true);
-            throw new CryptoTokenOfflineException("HSM timed out while trying to get OCSP response", e);
-        }
+        // Signing is done by the worker threads of the OCSP signer, guarding against a deadlocked HSM
+        returnval = OcspSigningEngine.getInstance(ocspSigningCacheEntry).sign(basicRes, sigAlg, producedAt);
         if (log.isDebugEnabled()) {
             log.debug("Signing OCSP response with OCSP signer cert: " + signerCert.getSubjectDN().getName());
         }
@@ -2794,6 +2950,11 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         return dataMap;
     }
     
+    @Override
+    public String getSigningStatistics() {
+        return OcspSigningEngine.getAllStatistics();
+    }
+
     @Override
     public String healthCheck() {
         final StringBuilder sb = new StringBuilder();
@@ -2892,6 +3053,5 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
         return sb.toString();
     }
-
 }
 
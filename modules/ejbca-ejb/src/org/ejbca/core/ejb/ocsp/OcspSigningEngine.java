@@ -0,0 +1,315 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.operator.BufferingContentSigner;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
+import org.cesecore.certificates.ocsp.exception.OcspFailureException;
+import org.cesecore.certificates.ocsp.exception.OcspSigningOverloadException;
+import org.cesecore.config.OcspConfiguration;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
+
+/**
+ * Signs OCSP responses for one OCSP signer (an {@link OcspSigningCacheEntry}) using a fixed number of worker threads.
+ * <p>
+ * Signing is done outside of the calling thread for the sole purpose of catching deadlocks in the HSM hardware: a caller
+ * waits at most {@link #HSM_TIMEOUT_SECONDS} for its signature. The number of threads is bounded by ocsp.signing.threads
+ * and the number of waiting responses by ocsp.signing.queuesize. When the queue is full new responses are rejected with
+ * {@link OcspSigningOverloadException}, so that a burst of requests is answered with "tryLater" instead of creating an
+ * unbounded number of threads all waiting for the same HSM.
+ * <p>
+ * Each worker thread keeps its own ContentSigner for each signature algorithm. The workers take queued responses one
+ * after the other, so under load a batch of responses is signed with the same ContentSigner, without allocating a new
+ * signer and buffer for each response.
+ * <p>
+ * Note that this breaks the EJB standard by creating its own threads. Since there is no way of guarding against a hanging
+ * HSM within the EJB standard, we are consciously creating threads here. This does in no way break the spirit of the EJB
+ * standard, which is to not interrupt EJB's transaction handling by competing with its own thread pool, since these
+ * operations have no database impact.
+ */
+public class OcspSigningEngine {
+
+    private static final Logger log = Logger.getLogger(OcspSigningEngine.class);
+
+    public static final long HSM_TIMEOUT_SECONDS = 30;
+
+    /*
+     * BufferingContentSigner defaults to allocating a 4096 bytes buffer. Since a rather large OCSP response (e.g. signed with 4K
+     * RSA key, nonce and a one level chain) is less then 2KiB, this is generally plenty. In high performance environments, the full
+     * OCSP response should in general be smaller than 1492 bytes to fit in a single Ethernet frame.
+     * Larger responses are still handled, they are just passed to the signer in several chunks.
+     */
+    private static final int SIGNER_BUFFER_SIZE = 4096;
+    /** Idle worker threads are stopped after this time, so that unused signers do not keep any threads */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final Map<OcspSigningCacheEntry, OcspSigningEngine> engines = new ConcurrentHashMap<>();
+
+    private final OcspSigningCacheEntry ocspSigningCacheEntry;
+    private final String name;
+    private final PrivateKey signerKey;
+    private final String provider;
+    private final JcaX509CertificateHolder[] chain;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    /** ContentSigners of the current worker thread, by signature algorithm. ContentSigners are not thread safe. */
+    private final ThreadLocal<Map<String, ContentSigner>> contentSigners = ThreadLocal.withInitial(HashMap::new);
+
+    private final AtomicLong signed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalSigningNanos = new AtomicLong();
+    private final AtomicLong maxSigningNanos = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    private OcspSigningEngine(final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        this(ocspSigningCacheEntry, OcspConfiguration.getSigningThreads(), OcspConfiguration.getSigningQueueSize(),
+                TimeUnit.SECONDS.toMillis(HSM_TIMEOUT_SECONDS));
+    }
+
+    /** Creates an engine that is not registered with {@link #getInstance(OcspSigningCacheEntry)}. Used by tests. */
+    OcspSigningEngine(final OcspSigningCacheEntry ocspSigningCacheEntry, final int threads, final int queueCapacity, final long timeoutMillis) {
+        this.ocspSigningCacheEntry = ocspSigningCacheEntry;
+        if (ocspSigningCacheEntry.getOcspKeyBinding() != null) {
+            this.name = ocspSigningCacheEntry.getOcspKeyBinding().getName();
+        } else {
+            this.name = CertTools.getSubjectDN(ocspSigningCacheEntry.getSigningCertificate());
+        }
+        this.signerKey = ocspSigningCacheEntry.getPrivateKey();
+        this.provider = ocspSigningCacheEntry.getSignatureProviderName();
+        try {
+            this.chain = CertTools.convertToX509CertificateHolder(ocspSigningCacheEntry.getResponseCertChain());
+        } catch (CertificateEncodingException e) {
+            throw new OcspFailureException(e);
+        }
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new SigningThreadFactory(name));
+        this.executor.allowCoreThreadTimeOut(true);
+        if (log.isDebugEnabled()) {
+            log.debug("Created OCSP signing engine for '" + name + "' with " + threads + " threads and a queue size of " + queueCapacity + ".");
+        }
+    }
+
+    /**
+     * @param ocspSigningCacheEntry the OCSP signer to sign with
+     * @return the signing engine of the OCSP signer, which is created on first use
+     */
+    public static OcspSigningEngine getInstance(final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        return engines.computeIfAbsent(ocspSigningCacheEntry, OcspSigningEngine::new);
+    }
+
+    /**
+     * Shuts down the engines of OCSP signers that are no longer in use, i.e. after the OCSP signing cache has been reloaded.
+     * Responses already queued on a stopped engine are still signed.
+     *
+     * @param ocspSigningCacheEntries the OCSP signers that are currently in use
+     */
+    public static void retainAll(final Collection<OcspSigningCacheEntry> ocspSigningCacheEntries) {
+        final Set<OcspSigningCacheEntry> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(ocspSigningCacheEntries);
+        for (final Iterator<Map.Entry<OcspSigningCacheEntry, OcspSigningEngine>> iterator = engines.entrySet().iterator(); iterator.hasNext();) {
+            final Map.Entry<OcspSigningCacheEntry, OcspSigningEngine> entry = iterator.next();
+            if (!current.contains(entry.getKey())) {
+                iterator.remove();
+                entry.getValue().shutdown();
+            }
+        }
+    }
+
+    /** @return the statistics of all signing engines, one line per OCSP signer */
+    public static String getAllStatistics() {
+        final StringBuilder sb = new StringBuilder();
+        for (final OcspSigningEngine engine : engines.values()) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(engine.getStatistics());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Signs an OCSP response, waiting at most {@link #HSM_TIMEOUT_SECONDS} for the signature.
+     *
+     * @param basicRes the response to sign
+     * @param signingAlgorithm the signature algorithm to use
+     * @param producedAt the producedAt time of the response, or null for the current time
+     * @return the signed response
+     * @throws CryptoTokenOfflineException if the signature was not produced in time
+     * @throws OcspSigningOverloadException if the signing queue is full
+     */
+    public BasicOCSPResp sign(final BasicOCSPRespBuilder basicRes, final String signingAlgorithm, final Date producedAt)
+            throws CryptoTokenOfflineException, OcspSigningOverloadException {
+        final long submitted = System.nanoTime();
+        final Future<BasicOCSPResp> task;
+        try {
+            task = executor.submit(() -> signInWorker(basicRes, signingAlgorithm, producedAt, submitted));
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                // The OCSP signing cache was reloaded after we got this engine. The signer is still valid for the ongoing request,
+                // and an engine created for it now will be stopped at the next reload.
+                return getInstance(ocspSigningCacheEntry).sign(basicRes, signingAlgorithm, producedAt);
+            }
+            rejected.incrementAndGet();
+            throw new OcspSigningOverloadException("All " + executor.getMaximumPoolSize() + " signing threads of OCSP signer '" + name
+                    + "' are busy and " + queueCapacity + " responses are already waiting.");
+        }
+        try {
+            return task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw new Error("OCSP response retrieval was interrupted while running. This should not happen", e);
+        } catch (ExecutionException e) {
+            task.cancel(true);
+            throw new OcspFailureException("Failure encountered while retrieving OCSP response.", e);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            timedOut.incrementAndGet();
+            throw new CryptoTokenOfflineException("HSM timed out while trying to get OCSP response", e);
+        }
+    }
+
+    private BasicOCSPResp signInWorker(final BasicOCSPRespBuilder basicRes, final String signingAlgorithm, final Date producedAt,
+            final long submitted) throws OCSPException {
+        final long started = System.nanoTime();
+        totalQueueNanos.addAndGet(started - submitted);
+        final Map<String, ContentSigner> signers = contentSigners.get();
+        boolean success = false;
+        try {
+            ContentSigner signer = signers.get(signingAlgorithm);
+            if (signer == null) {
+                signer = createContentSigner(signingAlgorithm);
+                signers.put(signingAlgorithm, signer);
+            }
+            final BasicOCSPResp response = basicRes.build(signer, chain, producedAt != null ? producedAt : new Date());
+            success = true;
+            return response;
+        } catch (OperatorCreationException e) {
+            throw new OcspFailureException(e);
+        } finally {
+            final long elapsed = System.nanoTime() - started;
+            if (success) {
+                signed.incrementAndGet();
+                totalSigningNanos.addAndGet(elapsed);
+                maxSigningNanos.accumulateAndGet(elapsed, Math::max);
+            } else {
+                failed.incrementAndGet();
+                // The state of a signer that failed (or was interrupted) half way through a signature is unknown
+                signers.remove(signingAlgorithm);
+            }
+        }
+    }
+
+    /** @return a new ContentSigner for the private key of the OCSP signer. Only used by the worker thread that will keep it. */
+    ContentSigner createContentSigner(final String signingAlgorithm) throws OperatorCreationException {
+        return new BufferingContentSigner(new JcaContentSignerBuilder(signingAlgorithm).setProvider(provider).build(signerKey), SIGNER_BUFFER_SIZE);
+    }
+
+    /** Stops the worker threads once the queued responses have been signed */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /** @return the number of responses waiting for a signing thread */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /** @return the number of responses signed successfully */
+    public long getSignedCount() {
+        return signed.get();
+    }
+
+    /** @return the number of responses that could not be signed, including those that timed out */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /** @return the number of responses that were not signed within the timeout */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /** @return the number of responses rejected since the signing queue was full */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /** @return the average time in milliseconds it took to sign a response, not counting time spent in the queue */
+    public double getAverageSigningMillis() {
+        final long count = signed.get();
+        return count == 0 ? 0 : totalSigningNanos.get() / (count * 1000000.0);
+    }
+
+    /** @return a one-line summary of the engine statistics, suitable for health checks and logging */
+    public String getStatistics() {
+        final long count = signed.get() + failed.get();
+        final double averageQueueMillis = count == 0 ? 0 : totalQueueNanos.get() / (count * 1000000.0);
+        return String.format("OCSP signer '%s': threads=%d, active=%d, queued=%d/%d, signed=%d, failed=%d, rejected=%d, timeouts=%d, "
+                + "avgSignMs=%.2f, maxSignMs=%.2f, avgQueueMs=%.2f", name, executor.getPoolSize(), executor.getActiveCount(), getQueueDepth(),
+                queueCapacity, signed.get(), failed.get(), rejected.get(), timedOut.get(), getAverageSigningMillis(), maxSigningNanos.get() / 1000000.0,
+                averageQueueMillis);
+    }
+
+    private static class SigningThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        private SigningThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "OcspSigner-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -15,12 +15,14 @@ package org.ejbca.core.ejb.ra.raadmin;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.persistence.EntityManager;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.config.CesecoreConfiguration;
 import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
@@ -38,6 +40,11 @@ import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
  * 
  * The intention of this design is better throughput than fully ordered sequential updates.
  * 
+ * If cache.revalidatebyrowversion is enabled, an update that is not forced only reads the id and row version of all profiles,
+ * and reads only the profiles that have been added or changed since the last update.
+ * 
+ * The validation plan of each cached profile is compiled when the profile is read, so it is compiled once for each version of the profile.
+ * 
  * @version $Id$
  */
 public enum EndEntityProfileCache {
@@ -59,6 +66,8 @@ public enum EndEntityProfileCache {
     private volatile Map<String, Integer> nameIdMapCache = null;
     /** Cache of end entity profiles, with Id as keys */
     private volatile Map<Integer, EndEntityProfile> profileCache = null;
+    /** Row versions of the cached end entity profiles, with Id as keys */
+    private volatile Map<Integer, Integer> rowVersionCache = null;
     
     private volatile long lastUpdate = 0;
 
@@ -103,27 +112,66 @@ public enum EndEntityProfileCache {
         final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
         final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
         final Map<Integer, EndEntityProfile> profCache = new HashMap<Integer, EndEntityProfile>();
+        final Map<Integer, Integer> rowVersions = new HashMap<Integer, Integer>();
         try {
-        	final List<EndEntityProfileData> result = EndEntityProfileData.findAll(entityManager);
-        	for (final EndEntityProfileData next : result) {
-        		final Integer id = Integer.valueOf(next.getId());
-        		final String profileName = next.getProfileName();
-        		idNameCache.put(id, profileName);
-        		nameIdCache.put(profileName, id);
-        		profCache.put(id, next.getProfile());
-        	}
+            if (!force && rowVersionCache != null && CesecoreConfiguration.isCacheRevalidationByRowVersion()) {
+                // Keep the profiles that have not changed, and only read the changed ones
+                final Map<Integer, String> cachedNames = idNameMapCache;
+                final Map<Integer, EndEntityProfile> cachedProfiles = profileCache;
+                final Map<Integer, Integer> cachedRowVersions = rowVersionCache;
+                for (final Entry<Integer, Integer> entry : EndEntityProfileData.findAllRowVersions(entityManager).entrySet()) {
+                    final Integer id = entry.getKey();
+                    if (entry.getValue().equals(cachedRowVersions.get(id))) {
+                        final String profileName = cachedNames.get(id);
+                        idNameCache.put(id, profileName);
+                        nameIdCache.put(profileName, id);
+                        profCache.put(id, cachedProfiles.get(id));
+                        rowVersions.put(id, entry.getValue());
+                    } else {
+                        final EndEntityProfileData next = EndEntityProfileData.findById(entityManager, id);
+                        if (next != null) {
+                            addProfile(next, idNameCache, nameIdCache, profCache, rowVersions);
+                        }
+                    }
+                }
+            } else {
+                final List<EndEntityProfileData> result = EndEntityProfileData.findAll(entityManager);
+                for (final EndEntityProfileData next : result) {
+                    addProfile(next, idNameCache, nameIdCache, profCache, rowVersions);
+                }
+            }
         } catch (Exception e) {
         	LOG.error(INTRES.getLocalizedMessage("ra.errorreadprofiles"), e);
+        	rowVersions.clear();
         }
         idNameMapCache = idNameCache;
         nameIdMapCache = nameIdCache;
         profileCache = profCache;
+        rowVersionCache = rowVersions;
         if (LOG.isTraceEnabled()) {
             final long end = System.currentTimeMillis();
             LOG.trace("<updateProfileCache took: "+(end-now)+"ms");
         }
 	}
 
+	private void addProfile(final EndEntityProfileData next, final Map<Integer, String> idNameCache, final Map<String, Integer> nameIdCache,
+	        final Map<Integer, EndEntityProfile> profCache, final Map<Integer, Integer> rowVersions) {
+		final Integer id = Integer.valueOf(next.getId());
+		final String profileName = next.getProfileName();
+		idNameCache.put(id, profileName);
+		nameIdCache.put(profileName, id);
+		final EndEntityProfile profile = next.getProfile();
+		// Compile the validation plan once for each version of the profile, instead of when the first end entity is validated
+		try {
+		    profile.compileValidationPlan();
+		} catch (RuntimeException e) {
+		    // The profile is still cached, and fails the same way when an end entity is validated
+		    LOG.warn("Could not compile validation plan of end entity profile '" + profileName + "': " + e.getMessage());
+		}
+		profCache.put(id, profile);
+		rowVersions.put(id, next.getRowVersion());
+	}
+
 	/** @return the latest object from the cache or a current database representation if no caching is used. */
 	public Map<Integer, EndEntityProfile> getProfileCache(final EntityManager entityManager) {
 		updateProfileCache(entityManager, false);
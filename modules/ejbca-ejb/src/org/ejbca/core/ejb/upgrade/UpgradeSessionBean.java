@@ -107,6 +107,8 @@ import org.cesecore.keybind.InternalKeyBindingRules;
 import org.cesecore.keybind.InternalKeyBindingTrustEntry;
 import org.cesecore.keybind.impl.OcspKeyBinding;
 import org.cesecore.keys.token.CryptoTokenSessionLocal;
+import org.cesecore.keys.validation.KeyValidatorSessionLocal;
+import org.cesecore.keys.validation.Validator;
 import org.cesecore.roles.AccessRulesHelper;
 import org.cesecore.roles.AccessRulesMigrator;
 import org.cesecore.roles.AdminGroupData;
@@ -153,6 +155,7 @@ import org.ejbca.core.model.ca.publisher.GeneralPurposeCustomPublisher;
 import org.ejbca.core.model.ca.publisher.upgrade.BasePublisherConverter;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileNotFoundException;
+import org.ejbca.core.model.validation.DomainBlacklistValidator;
 import org.ejbca.util.JDBCUtil;
 
 
@@ -208,6 +211,8 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
     @EJB
     private InternalKeyBindingDataSessionLocal internalKeyBindingDataSession;
     @EJB
+    private KeyValidatorSessionLocal keyValidatorSession;
+    @EJB
     private OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession;
     @EJB
     private PublisherSessionLocal publisherSession;
@@ -326,6 +331,12 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
         guc.setCustomCertificateWithSecondsGranularity(value);
         setGlobalUpgradeConfiguration(guc);
     }
+
+    private void setDomainBlacklistIndexOnly(final boolean value) {
+        final GlobalUpgradeConfiguration guc = getGlobalUpgradeConfiguration();
+        guc.setDomainBlacklistIndexOnly(value);
+        setGlobalUpgradeConfiguration(guc);
+    }
     
     private GlobalUpgradeConfiguration getGlobalUpgradeConfiguration() {
         return (GlobalUpgradeConfiguration) globalConfigurationSession.getCachedConfiguration(GlobalUpgradeConfiguration.CONFIGURATION_ID);
@@ -363,9 +374,10 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
                 globalConfigurationSession.saveConfiguration(authenticationToken, globalConfig);
                 setEndEntityProfileInCertificateData(true);
                 setCustomCertificateValidityWithSecondsGranularity(true);
+                setDomainBlacklistIndexOnly(true);
                 // Since we know that this is a brand new installation, no upgrade should be needed
                 setLastUpgradedToVersion(InternalConfiguration.getAppVersionNumber());
-                setLastPostUpgradedToVersion("7.11.0");
+                setLastPostUpgradedToVersion("8.0.0");
             } else {
                 // Ensure that we save currently known oldest installation version before any upgrade is invoked
                 if(getLastUpgradedToVersion() != null) {
@@ -699,6 +711,12 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
             }
             setLastPostUpgradedToVersion("7.11.0");
         }
+        if (isLesserThan(oldVersion, "8.0.0")) {
+            if (!postMigrateDatabase800()) {
+                return false;
+            }
+            setLastPostUpgradedToVersion("8.0.0");
+        }
         
         // NOTE: If you add additional post upgrade tasks here, also modify isPostUpgradeNeeded() and performPreUpgrade()
         //setLastPostUpgradedToVersion(InternalConfiguration.getAppVersionNumber());
@@ -895,7 +913,7 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
     public boolean isPostUpgradeNeeded() {
-        return isLesserThan(getLastPostUpgradedToVersion(), "7.11.0");
+        return isLesserThan(getLastPostUpgradedToVersion(), "8.0.0");
     }
 
     /**
@@ -1946,6 +1964,28 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
         log.info("Post upgrade to 7.11.0 complete.");
         return true;
     }
+
+    /**
+     * Removes the domain block lists in the old format, which were written next to the compiled index for nodes that had not been
+     * upgraded yet. From now on only the index is written.
+     */
+    private boolean postMigrateDatabase800() {
+        log.info("Starting post upgrade to 8.0.0");
+        try {
+            setDomainBlacklistIndexOnly(true);
+            for (final Validator validator : keyValidatorSession.getAllKeyValidators().values()) {
+                if (validator instanceof DomainBlacklistValidator && ((DomainBlacklistValidator) validator).removeLegacyBlacklist()) {
+                    log.debug("Removing the domain block list in the old format from Validator '" + validator.getProfileName() + "'");
+                    keyValidatorSession.changeKeyValidator(authenticationToken, validator);
+                }
+            }
+        } catch (Exception e) {
+            log.error(e);
+            return false;
+        }
+        log.info("Post upgrade to 8.0.0 complete.");
+        return true;
+    }
     
     private boolean postMigrateDatabase6101() {
         log.info("Starting post upgrade to 6.10.1.");
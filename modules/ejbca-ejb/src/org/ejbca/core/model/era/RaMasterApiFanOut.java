@@ -0,0 +1,210 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.ejbca.config.EjbcaConfiguration;
+
+/**
+ * Invokes a read-only operation on several RaMasterApi back ends in parallel and hands the responses to the caller as they arrive.
+ * <p>
+ * The back ends selected by the caller (the downstream peers) are invoked from a shared thread pool, while all other back ends are
+ * invoked in the calling thread. The deadline (ra.backend.searchtimeout) is counted from before any back end is invoked, so a slow local back end does not
+ * give the peers more time. Back ends that have not responded before the deadline are abandoned, and the result is then reported
+ * as partial. When the thread pool is busy, or ra.backend.threads is 1, the back ends are invoked sequentially in the calling thread
+ * instead, and back ends that have not been invoked when the deadline has passed are skipped.
+ * <p>
+ * The pool threads are not managed by the container, so they must not use any container services themselves. Only back ends that
+ * are known not to do so may be selected for the pool, which is currently only the downstream peer back end
+ * (RaMasterApiPeerDownstreamImpl). It forwards the request over an outgoing peer connection and carries the authentication token
+ * in the request, so it needs neither the transaction nor the security context of the calling thread. The local back end is an EJB,
+ * and the upstream peer back end (RaMasterApiPeerUpstreamImpl) answers requests from the CA over an incoming connection, so they
+ * are always invoked in the calling thread.
+ */
+final class RaMasterApiFanOut {
+
+    private static final Logger log = Logger.getLogger(RaMasterApiFanOut.class);
+
+    /** Idle threads are stopped after this time */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static volatile ThreadPoolExecutor executor = null;
+
+    private RaMasterApiFanOut() {}
+
+    /** A read-only operation on a single back end */
+    interface BackendCall<T> {
+        T invoke(RaMasterApi raMasterApi);
+    }
+
+    /** Merges the response from a single back end. Always invoked in the calling thread. */
+    interface ResponseHandler<T> {
+        /**
+         * @param raMasterApi the back end that responded. Responses are handled in order of arrival, not in the order of the back ends.
+         * @param response the response of the back end, never null
+         */
+        void handle(RaMasterApi raMasterApi, T response);
+    }
+
+    /**
+     * Invokes the call on all available back ends, and merges the responses.
+     *
+     * @param raMasterApis the back ends to invoke, in order of preference
+     * @param localRaMasterApi the back end that is always invoked, even when the deadline has passed, or null
+     * @param pooledRaMasterApis the back ends that may be invoked from the thread pool. The others are invoked in the calling thread.
+     * @param minApiVersion back ends with a lower API version are not invoked
+     * @param backendCall the operation to perform on each back end
+     * @param responseHandler merges each non-null response
+     * @return false if the result is partial, because at least one back end timed out or was unavailable
+     * @throws RuntimeException any other exception thrown by a back end than UnsupportedOperationException and RaMasterBackendUnavailableException
+     */
+    static <T> boolean invokeAll(final RaMasterApi[] raMasterApis, final RaMasterApi localRaMasterApi, final Set<RaMasterApi> pooledRaMasterApis,
+            final int minApiVersion, final BackendCall<T> backendCall, final ResponseHandler<T> responseHandler) {
+        // Counted from before any back end is invoked, including the local back end in the calling thread
+        final long deadline = System.currentTimeMillis() + EjbcaConfiguration.getRaBackendSearchTimeout();
+        final int threads = EjbcaConfiguration.getRaBackendThreads();
+        boolean complete = true;
+        final CompletionService<T> completionService = threads > 1 ? new ExecutorCompletionService<T>(getExecutor(threads)) : null;
+        final Map<Future<T>, RaMasterApi> futures = new IdentityHashMap<>();
+        final List<RaMasterApi> inCallingThread = new ArrayList<>();
+        for (final RaMasterApi raMasterApi : raMasterApis) {
+            if (completionService == null || !pooledRaMasterApis.contains(raMasterApi)) {
+                inCallingThread.add(raMasterApi);
+            } else {
+                try {
+                    futures.put(completionService.submit(() -> invoke(raMasterApi, minApiVersion, backendCall)), raMasterApi);
+                } catch (RejectedExecutionException e) {
+                    log.debug("All RA back end threads are busy. Invoking back end in the calling thread.");
+                    inCallingThread.add(raMasterApi);
+                }
+            }
+        }
+        try {
+            for (final RaMasterApi raMasterApi : inCallingThread) {
+                if (raMasterApi != localRaMasterApi && System.currentTimeMillis() > deadline) {
+                    log.info("RA back end search timeout of " + EjbcaConfiguration.getRaBackendSearchTimeout()
+                            + " ms has passed. Skipping remaining back ends and returning partial result.");
+                    complete = false;
+                    break;
+                }
+                try {
+                    handle(raMasterApi, invoke(raMasterApi, minApiVersion, backendCall), responseHandler);
+                } catch (RaMasterBackendUnavailableException e) {
+                    logUnavailable(e);
+                    complete = false;
+                }
+            }
+            for (int remaining = futures.size(); remaining > 0; remaining--) {
+                final Future<T> future = completionService.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    log.info(remaining + " RA back end(s) did not respond within " + EjbcaConfiguration.getRaBackendSearchTimeout()
+                            + " ms. Returning partial result.");
+                    complete = false;
+                    break;
+                }
+                try {
+                    handle(futures.get(future), future.get(), responseHandler);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RaMasterBackendUnavailableException) {
+                        logUnavailable((RaMasterBackendUnavailableException) e.getCause());
+                        complete = false;
+                    } else if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    } else {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete = false;
+        } finally {
+            for (final Future<T> future : futures.keySet()) {
+                future.cancel(true);
+            }
+        }
+        return complete;
+    }
+
+    /** @return the response of the back end, or null if it is unavailable or does not support the operation */
+    private static <T> T invoke(final RaMasterApi raMasterApi, final int minApiVersion, final BackendCall<T> backendCall) {
+        if (!raMasterApi.isBackendAvailable() || raMasterApi.getApiVersion() < minApiVersion) {
+            return null;
+        }
+        try {
+            return backendCall.invoke(raMasterApi);
+        } catch (UnsupportedOperationException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Trouble during back end invocation: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private static <T> void handle(final RaMasterApi raMasterApi, final T response, final ResponseHandler<T> responseHandler) {
+        if (response != null) {
+            responseHandler.handle(raMasterApi, response);
+        }
+    }
+
+    private static void logUnavailable(final RaMasterBackendUnavailableException e) {
+        if (log.isDebugEnabled()) {
+            log.debug("Timeout during back end invocation.", e);
+        }
+    }
+
+    /** @return the thread pool (creating one if needed). Tasks are rejected instead of queued when all threads are busy. */
+    private static ThreadPoolExecutor getExecutor(final int threads) {
+        ThreadPoolExecutor ret = executor;
+        if (ret == null || ret.getMaximumPoolSize() != threads) {
+            synchronized (RaMasterApiFanOut.class) {
+                ret = executor;
+                if (ret == null) {
+                    ret = new ThreadPoolExecutor(0, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), new RaBackendThreadFactory());
+                    executor = ret;
+                } else if (ret.getMaximumPoolSize() != threads) {
+                    ret.setMaximumPoolSize(threads);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** Creates daemon threads, so that a hanging back end never prevents the JVM from shutting down. */
+    private static class RaBackendThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "RaBackend-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -47,8 +47,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.DependsOn;
@@ -199,6 +202,8 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
      */
     private RaMasterApi[] raMasterApis = null;
     private RaMasterApi[] raMasterApisLocalFirst = null;
+    /** Back ends that may be invoked from the RA back end thread pool by read-only operations, see {@link RaMasterApiFanOut} */
+    private Set<RaMasterApi> raMasterApisInPool = Collections.emptySet();
 
     // Used in tests
     private RaMasterApi[] savedRaMasterApisBeforeTest;
@@ -229,7 +234,9 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         try {
             // Load downstream peer implementation if available in this version of EJBCA
             final Class<?> c = Class.forName("org.ejbca.peerconnector.ra.RaMasterApiPeerDownstreamImpl");
-            implementations.add((RaMasterApi) c.getDeclaredConstructor().newInstance());
+            final RaMasterApi raMasterApiPeerDownstream = (RaMasterApi) c.getDeclaredConstructor().newInstance();
+            implementations.add(raMasterApiPeerDownstream);
+            raMasterApisInPool = Collections.singleton(raMasterApiPeerDownstream);
         } catch (ClassNotFoundException e) {
             log.debug("RaMasterApi over Peers is not available on this system.");
         } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
@@ -774,19 +781,19 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         return false;
     }
 
+    /** Invokes a read-only operation on all back ends, see {@link RaMasterApiFanOut#invokeAll} */
+    private <T> boolean invokeAllLocalFirst(final int minApiVersion, final RaMasterApiFanOut.BackendCall<T> backendCall,
+            final RaMasterApiFanOut.ResponseHandler<T> responseHandler) {
+        return RaMasterApiFanOut.invokeAll(raMasterApisLocalFirst, raMasterApiSession, raMasterApisInPool, minApiVersion, backendCall, responseHandler);
+    }
+
     @Override
     public RaRequestsSearchResponse searchForApprovalRequests(AuthenticationToken authenticationToken,
             RaRequestsSearchRequest raRequestsSearchRequest) {
         final RaRequestsSearchResponse searchResponse = new RaRequestsSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    searchResponse.merge(raMasterApi.searchForApprovalRequests(authenticationToken, raRequestsSearchRequest));
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
-                }
-            }
-        }
+        // As before searching in parallel, back ends that are unavailable or too slow are left out without flagging the response
+        invokeAllLocalFirst(0, raMasterApi -> raMasterApi.searchForApprovalRequests(authenticationToken, raRequestsSearchRequest),
+                (raMasterApi, response) -> searchResponse.merge(response));
         return searchResponse;
     }
 
@@ -901,23 +908,10 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaCertificateSearchResponse searchForCertificates(AuthenticationToken authenticationToken,
             RaCertificateSearchRequest raCertificateSearchRequest) {
         final RaCertificateSearchResponse ret = new RaCertificateSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForCertificates(authenticationToken, raCertificateSearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
-                }
-            }
+        if (!invokeAllLocalFirst(0, raMasterApi -> raMasterApi.searchForCertificates(authenticationToken, raCertificateSearchRequest),
+                (raMasterApi, response) -> ret.merge(response))) {
+            // If a back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+            ret.setMightHaveMoreResults(true);
         }
         return ret;
     }
@@ -926,22 +920,8 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaCertificateSearchResponseV2 searchForCertificatesV2(AuthenticationToken authenticationToken,
             RaCertificateSearchRequestV2 raCertificateSearchRequest) {
         final RaCertificateSearchResponseV2 ret = new RaCertificateSearchResponseV2();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForCertificatesV2(authenticationToken, raCertificateSearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                }
-            }
-        }
+        invokeAllLocalFirst(0, raMasterApi -> raMasterApi.searchForCertificatesV2(authenticationToken, raCertificateSearchRequest),
+                (raMasterApi, response) -> ret.merge(response));
         return ret;
     }
 
@@ -958,15 +938,9 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaRoleSearchResponse searchForRoles(AuthenticationToken authenticationToken,
             RaRoleSearchRequest raRoleSearchRequest) {
         final RaRoleSearchResponse ret = new RaRoleSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 1) {
-                try {
-                    ret.merge(raMasterApi.searchForRoles(authenticationToken, raRoleSearchRequest));
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
-                }
-            }
-        }
+        // As before searching in parallel, back ends that are unavailable or too slow are left out without flagging the response
+        invokeAllLocalFirst(1, raMasterApi -> raMasterApi.searchForRoles(authenticationToken, raRoleSearchRequest),
+                (raMasterApi, response) -> ret.merge(response));
         return ret;
     }
 
@@ -974,15 +948,9 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaRoleMemberSearchResponse searchForRoleMembers(AuthenticationToken authenticationToken,
             RaRoleMemberSearchRequest raRoleMemberSearchRequest) {
         final RaRoleMemberSearchResponse ret = new RaRoleMemberSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 1) {
-                try {
-                    ret.merge(raMasterApi.searchForRoleMembers(authenticationToken, raRoleMemberSearchRequest));
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
-                }
-            }
-        }
+        // As before searching in parallel, back ends that are unavailable or too slow are left out without flagging the response
+        invokeAllLocalFirst(1, raMasterApi -> raMasterApi.searchForRoleMembers(authenticationToken, raRoleMemberSearchRequest),
+                (raMasterApi, response) -> ret.merge(response));
         return ret;
     }
 
@@ -990,23 +958,10 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaEndEntitySearchResponse searchForEndEntities(AuthenticationToken authenticationToken,
             RaEndEntitySearchRequest raEndEntitySearchRequest) {
         final RaEndEntitySearchResponse ret = new RaEndEntitySearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForEndEntities(authenticationToken, raEndEntitySearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
-                }
-            }
+        if (!invokeAllLocalFirst(0, raMasterApi -> raMasterApi.searchForEndEntities(authenticationToken, raEndEntitySearchRequest),
+                (raMasterApi, response) -> ret.merge(response))) {
+            // If a back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+            ret.setMightHaveMoreResults(true);
         }
         return ret;
     }
@@ -1015,25 +970,19 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaEndEntitySearchResponseV2 searchForEndEntitiesV2(AuthenticationToken authenticationToken, 
             RaEndEntitySearchRequestV2 raEndEntitySearchRequestV2) {
         final RaEndEntitySearchResponseV2 retMerged = new RaEndEntitySearchResponseV2();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 14) {
-                try {
-                    RaEndEntitySearchResponseV2 retNode = raMasterApi.searchForEndEntitiesV2(authenticationToken, raEndEntitySearchRequestV2);
+        final int[] summaryIndex = { -1 };
+        if (!invokeAllLocalFirst(14, raMasterApi -> raMasterApi.searchForEndEntitiesV2(authenticationToken, raEndEntitySearchRequestV2),
+                (raMasterApi, retNode) -> {
                     retMerged.merge(retNode);
-                    retMerged.setSearchSummary(retNode.getSearchSummary());
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
+                    // Responses arrive in any order, so take the summary from the back end that is last in order, as when searching sequentially
+                    final int index = ArrayUtils.indexOf(raMasterApisLocalFirst, raMasterApi);
+                    if (index > summaryIndex[0]) {
+                        summaryIndex[0] = index;
+                        retMerged.setSearchSummary(retNode.getSearchSummary());
                     }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    retMerged.setMightHaveMoreResults(true);
-                }
-            }
+                })) {
+            // If a back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+            retMerged.setMightHaveMoreResults(true);
         }
         retMerged.sortMergedMembers();
         return retMerged;
@@ -1837,6 +1786,14 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         return null;
     }
 
+    @Asynchronous
+    @Override
+    public Future<byte[]> createCertificateRestAsync(final AuthenticationToken authenticationToken, final EnrollPkcs10CertificateRequest enrollCertificateRequest)
+            throws CertificateProfileDoesNotExistException, CADoesntExistsException, AuthorizationDeniedException, EndEntityProfileNotFoundException,
+            EjbcaException, EndEntityProfileValidationException {
+        return new AsyncResult<>(createCertificateRest(authenticationToken, enrollCertificateRequest));
+    }
+
     @Override
     public void keyRecoverWS(AuthenticationToken authenticationToken, String username, String certSNinHex, String issuerDN)
             throws EjbcaException, AuthorizationDeniedException, WaitingForApprovalException, CADoesntExistsException {
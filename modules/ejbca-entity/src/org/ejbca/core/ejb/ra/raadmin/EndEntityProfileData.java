@@ -215,4 +215,15 @@ public class EndEntityProfileData extends ProtectedData implements Serializable
 		Query query = entityManager.createQuery("SELECT a FROM EndEntityProfileData a");
 		return query.getResultList();
 	}
+
+	/** @return map from id to row version of all end entity profiles, without reading the profiles */
+	@SuppressWarnings("unchecked")
+	public static Map<Integer, Integer> findAllRowVersions(EntityManager entityManager) {
+		Query query = entityManager.createQuery("SELECT a.id, a.rowVersion FROM EndEntityProfileData a");
+		final Map<Integer, Integer> ret = new HashMap<>();
+		for (final Object[] row : (List<Object[]>) query.getResultList()) {
+			ret.put((Integer) row[0], (Integer) row[1]);
+		}
+		return ret;
+	}
 }
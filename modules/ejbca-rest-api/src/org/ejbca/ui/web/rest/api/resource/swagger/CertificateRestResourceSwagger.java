@@ -36,6 +36,7 @@ import org.ejbca.ui.web.rest.api.io.request.EnrollCertificateRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.FinalizeRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.KeyStoreRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.SearchCertificatesRestRequest;
+import org.ejbca.ui.web.rest.api.io.response.BulkEnrollmentRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.CertificateRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.ExpiringCertificatesRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.RestResourceStatusRestResponse;
@@ -60,6 +61,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -85,6 +87,9 @@ import java.security.cert.CertificateException;
 @Stateless
 public class CertificateRestResourceSwagger extends CertificateRestResource {
 
+    /** Newline delimited JSON */
+    private static final String BULK_ENROLLMENT_MEDIA_TYPE = "application/x-ndjson";
+
     @GET
     @Path("/status")
     @Produces(MediaType.APPLICATION_JSON)
@@ -110,6 +115,22 @@ public class CertificateRestResourceSwagger extends CertificateRestResource {
         return super.enrollPkcs10Certificate(requestContext, enrollCertificateRestRequest);
     }
 
+    @POST
+    @Path("/bulkenroll")
+    @Consumes(BULK_ENROLLMENT_MEDIA_TYPE)
+    @Produces(BULK_ENROLLMENT_MEDIA_TYPE)
+    @ApiOperation(value = "Enrollment of many certificates with client generated keys, using CSR subject",
+            notes = "Enroll for certificates given a stream of enrollment requests, one JSON object per line, with the same fields as in "
+                    + "pkcs10enroll. The enrollments are processed in parallel, and the result of each one is streamed back as one JSON line "
+                    + "as soon as it has completed, with the index of the request and either the certificate or the error.",
+            response = BulkEnrollmentRestResponse.class)
+    @Override
+    public Response bulkEnroll(@Context HttpServletRequest requestContext,
+                               @ApiParam(value = "Enrollment requests, one JSON object per line") final InputStream inputStream)
+            throws RestException, AuthorizationDeniedException {
+        return super.bulkEnroll(requestContext, inputStream);
+    }
+
     @POST
     @Path("/certificaterequest")
     @Consumes(MediaType.APPLICATION_JSON)
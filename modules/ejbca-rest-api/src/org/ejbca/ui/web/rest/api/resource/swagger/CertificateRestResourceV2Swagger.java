@@ -20,7 +20,10 @@ import io.swagger.annotations.SwaggerDefinition;
 import io.swagger.annotations.SwaggerDefinition.Scheme;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.ejbca.ui.web.rest.api.exception.RestException;
+import org.ejbca.ui.web.rest.api.io.request.BulkRevocationRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.SearchCertificatesRestRequestV2;
+import org.ejbca.ui.web.rest.api.io.response.BulkRevocationRestResponse;
+import org.ejbca.ui.web.rest.api.io.response.BulkRevocationsRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.CertificateProfileInfoRestResponseV2;
 import org.ejbca.ui.web.rest.api.io.response.RestResourceStatusRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.SearchCertificatesRestResponseV2;
@@ -32,6 +35,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -112,4 +116,67 @@ public class CertificateRestResourceV2Swagger extends CertificateRestResourceV2
         return super.getCertificateProfileInfo(requestContext, certProfileName);
     }
 
+    @POST
+    @Path("/bulkrevoke")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Revokes all certificates issued by a CA, with a profile, or from a list of serial numbers.",
+            notes = "The certificates are revoked in the background, in chunks. Certificates that are already revoked are not changed, and certificates that require approval to be revoked are skipped. A CRL is created for each affected CA when all certificates have been revoked.",
+            response = BulkRevocationRestResponse.class
+    )
+    @Override
+    public Response startBulkRevocation(
+            @Context HttpServletRequest requestContext,
+            @ApiParam(value = "The certificates to revoke and the revocation reason.") final BulkRevocationRestRequest request
+    ) throws AuthorizationDeniedException, RestException {
+        return super.startBulkRevocation(requestContext, request);
+    }
+
+    @GET
+    @Path("/bulkrevoke")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Get the progress of the bulk revocations on this node.", response = BulkRevocationsRestResponse.class)
+    @Override
+    public Response getBulkRevocations(@Context HttpServletRequest requestContext) throws AuthorizationDeniedException, RestException {
+        return super.getBulkRevocations(requestContext);
+    }
+
+    @GET
+    @Path("/bulkrevoke/{job_id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Get the progress of a bulk revocation.", response = BulkRevocationRestResponse.class)
+    @Override
+    public Response getBulkRevocation(
+            @Context HttpServletRequest requestContext,
+            @ApiParam(value = "Id of the bulk revocation") @PathParam("job_id") int jobId
+    ) throws AuthorizationDeniedException, RestException {
+        return super.getBulkRevocation(requestContext, jobId);
+    }
+
+    @PUT
+    @Path("/bulkrevoke/{job_id}/cancel")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Stop a bulk revocation at the end of the current chunk.", response = BulkRevocationRestResponse.class)
+    @Override
+    public Response cancelBulkRevocation(
+            @Context HttpServletRequest requestContext,
+            @ApiParam(value = "Id of the bulk revocation") @PathParam("job_id") int jobId
+    ) throws AuthorizationDeniedException, RestException {
+        return super.cancelBulkRevocation(requestContext, jobId);
+    }
+
+    @PUT
+    @Path("/bulkrevoke/{job_id}/resume")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Resume a cancelled or failed bulk revocation from the end of its last completed chunk.",
+            response = BulkRevocationRestResponse.class)
+    @Override
+    public Response resumeBulkRevocation(
+            @Context HttpServletRequest requestContext,
+            @ApiParam(value = "Id of the bulk revocation") @PathParam("job_id") int jobId
+    ) throws AuthorizationDeniedException, RestException {
+        return super.resumeBulkRevocation(requestContext, jobId);
+    }
+
 }
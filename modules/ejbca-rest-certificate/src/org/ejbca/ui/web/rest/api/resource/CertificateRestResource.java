@@ -15,6 +15,7 @@ package org.ejbca.ui.web.rest.api.resource;
 import static org.ejbca.ui.web.rest.api.resource.CertificateRestResourceUtil.authorizeSearchCertificatesRestRequestReferences;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -31,8 +32,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import javax.ejb.EJB;
@@ -143,6 +146,49 @@ public class CertificateRestResource extends BaseRestResource {
         }
     }
 
+    /**
+     * Enrolls the certificates in a stream of enrollment requests, one JSON object per line, and streams back the result of each one.
+     *
+     * @see BulkEnrollmentStreamingOutput
+     */
+    public Response bulkEnroll(final HttpServletRequest requestContext, final InputStream inputStream)
+            throws RestException, AuthorizationDeniedException {
+        final AuthenticationToken authenticationToken = getAdmin(requestContext, false);
+        final Map<String, List<Certificate>> certificateChains = new HashMap<>();
+        final BulkEnrollmentStreamingOutput streamingOutput = new BulkEnrollmentStreamingOutput(inputStream, new BulkEnrollmentStreamingOutput.Enroller() {
+            @Override
+            public Future<byte[]> start(final EnrollCertificateRestRequest enrollCertificateRestRequest) throws Exception {
+                return raMasterApi.createCertificateRestAsync(authenticationToken,
+                        EnrollCertificateRestRequest.converter().toEnrollPkcs10CertificateRequest(enrollCertificateRestRequest));
+            }
+
+            @Override
+            public CertificateRestResponse toResponse(final EnrollCertificateRestRequest enrollCertificateRestRequest, final byte[] certificateBytes)
+                    throws Exception {
+                final X509Certificate certificate = CertTools.getCertfromByteArray(certificateBytes, X509Certificate.class);
+                // The CA chains rarely change, so they are only fetched once for each stream
+                final List<Certificate> certificateChain = enrollCertificateRestRequest.getIncludeChain()
+                        ? getLastCaChain(authenticationToken, enrollCertificateRestRequest.getCertificateAuthorityName(), certificateChains)
+                        : null;
+                return CertificateRestResponse.converter().toRestResponse(certificateChain, certificate);
+            }
+        });
+        return Response.ok(streamingOutput).build();
+    }
+
+    private List<Certificate> getLastCaChain(final AuthenticationToken authenticationToken, final String caName,
+            final Map<String, List<Certificate>> certificateChains) throws AuthorizationDeniedException, CADoesntExistsException {
+        List<Certificate> certificateChain = certificateChains.get(caName);
+        if (certificateChain == null) {
+            certificateChain = raMasterApi.getLastCaChain(authenticationToken, caName)
+                    .stream()
+                    .map(certificateWrapper -> certificateWrapper.getCertificate())
+                    .collect(Collectors.toList());
+            certificateChains.put(caName, certificateChain);
+        }
+        return certificateChain;
+    }
+
     public Response certificateRequest(final HttpServletRequest requestContext, final CertificateRequestRestRequest certificateRequestRestRequest)
             throws RestException, AuthorizationDeniedException, CesecoreException, IOException, SignatureException, ConstructionException, NoSuchFieldException {
         try {
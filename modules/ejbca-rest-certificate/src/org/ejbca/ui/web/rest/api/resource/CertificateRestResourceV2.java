@@ -16,13 +16,24 @@ import org.apache.log4j.Logger;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.certificate.InternalCertificateRestSessionLocal;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
+import org.cesecore.certificates.crl.RevocationReasons;
 import org.ejbca.config.GlobalConfiguration;
+import org.ejbca.core.ejb.ca.revoke.BulkRevocationSessionLocal;
+import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileSessionLocal;
 import org.ejbca.core.model.era.RaCertificateProfileResponseV2;
 import org.ejbca.core.model.era.RaCertificateSearchRequestV2;
 import org.ejbca.core.model.era.RaCertificateSearchResponseV2;
 import org.ejbca.core.model.era.RaMasterApiProxyBeanLocal;
+import org.ejbca.core.model.ra.BulkRevocationJob;
+import org.ejbca.core.model.ra.BulkRevocationSelector;
+import org.ejbca.core.model.ra.raadmin.EndEntityProfileNotFoundException;
 import org.ejbca.ui.web.rest.api.exception.RestException;
+import org.ejbca.ui.web.rest.api.io.request.BulkRevocationRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.SearchCertificatesRestRequestV2;
+import org.ejbca.ui.web.rest.api.io.response.BulkRevocationRestResponse;
+import org.ejbca.ui.web.rest.api.io.response.BulkRevocationsRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.CertificateCountResponse;
 import org.ejbca.ui.web.rest.api.io.response.CertificateProfileInfoRestResponseV2;
 import org.ejbca.ui.web.rest.api.io.response.RestResourceStatusRestResponse;
@@ -34,10 +45,15 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Response;
+import java.math.BigInteger;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateParsingException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import com.keyfactor.util.StringTools;
+
 /**
  * JAX-RS resource handling certificate-related requests version 2.
  */
@@ -54,6 +70,12 @@ public class CertificateRestResourceV2 extends BaseRestResource {
 
     @EJB
     private InternalCertificateRestSessionLocal certificateSessionLocal;
+    @EJB
+    private BulkRevocationSessionLocal bulkRevocationSession;
+    @EJB
+    private CertificateProfileSessionLocal certificateProfileSession;
+    @EJB
+    private EndEntityProfileSessionLocal endEntityProfileSession;
     
     @Override
     public Response status() {
@@ -143,4 +165,132 @@ public class CertificateRestResourceV2 extends BaseRestResource {
         CertificateProfileInfoRestResponseV2 response = new CertificateProfileInfoRestResponseV2().convert().toCertificateProfileInfoRestResponse(raResponse);
         return response;
     }
+
+    /**
+     * Starts revoking the certificates matched by the request in the background.
+     *
+     * @param requestContext the HTTP request context
+     * @param request the certificates to revoke and the revocation reason
+     * @return HTTP Response containing the progress of the new bulk revocation
+     * @throws AuthorizationDeniedException if not authorized to revoke the selected certificates
+     * @throws RestException if the request is not valid
+     */
+    public Response startBulkRevocation(final HttpServletRequest requestContext, final BulkRevocationRestRequest request)
+            throws AuthorizationDeniedException, RestException {
+        final AuthenticationToken authenticationToken = getAdmin(requestContext, false);
+        if (request == null) {
+            throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Missing request body.");
+        }
+        final RevocationReasons reason = RevocationReasons.getFromCliValue(request.getReason());
+        if (reason == null) {
+            throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid revocation reason.");
+        }
+        final BulkRevocationSelector selector = new BulkRevocationSelector();
+        selector.setIssuerDn(request.getIssuerDn());
+        if (request.getCertificateProfileName() != null) {
+            final int certificateProfileId = certificateProfileSession.getCertificateProfileId(request.getCertificateProfileName());
+            if (certificateProfileId == CertificateProfileConstants.CERTPROFILE_NO_PROFILE) {
+                throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Unknown certificate profile.");
+            }
+            selector.setCertificateProfileId(certificateProfileId);
+        }
+        if (request.getEndEntityProfileName() != null) {
+            try {
+                selector.setEndEntityProfileId(endEntityProfileSession.getEndEntityProfileId(request.getEndEntityProfileName()));
+            } catch (EndEntityProfileNotFoundException e) {
+                throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Unknown end entity profile.");
+            }
+        }
+        if (request.getSerialNumbers() != null) {
+            final List<BigInteger> serialNumbers = new ArrayList<>(request.getSerialNumbers().size());
+            for (final String serialNumber : request.getSerialNumbers()) {
+                try {
+                    serialNumbers.add(StringTools.getBigIntegerFromHexString(serialNumber));
+                } catch (NumberFormatException e) {
+                    throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid serial number format '" + serialNumber
+                            + "'. Should be HEX encoded (optionally with '0x' prefix) e.g. '0x10782a83eef170d4'");
+                }
+            }
+            selector.setSerialNumbers(serialNumbers);
+        }
+        final int jobId;
+        try {
+            jobId = bulkRevocationSession.startBulkRevocation(authenticationToken, selector, reason.getDatabaseValue());
+        } catch (IllegalArgumentException e) {
+            throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage());
+        }
+        return Response.status(Response.Status.ACCEPTED)
+                .entity(BulkRevocationRestResponse.converter().toRestResponse(bulkRevocationSession.getBulkRevocationJob(authenticationToken, jobId)))
+                .build();
+    }
+
+    /**
+     * @param requestContext the HTTP request context
+     * @return HTTP Response containing the progress of the bulk revocations on this node
+     * @throws AuthorizationDeniedException if not authorized to revoke certificates
+     * @throws RestException if the request is not valid
+     */
+    public Response getBulkRevocations(final HttpServletRequest requestContext) throws AuthorizationDeniedException, RestException {
+        final AuthenticationToken authenticationToken = getAdmin(requestContext, true);
+        return Response.ok(new BulkRevocationsRestResponse(
+                BulkRevocationRestResponse.converter().toRestResponses(bulkRevocationSession.getBulkRevocationJobs(authenticationToken)))).build();
+    }
+
+    /**
+     * @param requestContext the HTTP request context
+     * @param jobId the id of the bulk revocation
+     * @return HTTP Response containing the progress of the bulk revocation
+     * @throws AuthorizationDeniedException if not authorized to revoke certificates
+     * @throws RestException if there is no such bulk revocation on this node
+     */
+    public Response getBulkRevocation(final HttpServletRequest requestContext, final int jobId) throws AuthorizationDeniedException, RestException {
+        final AuthenticationToken authenticationToken = getAdmin(requestContext, true);
+        return Response.ok(BulkRevocationRestResponse.converter().toRestResponse(getBulkRevocationJob(authenticationToken, jobId))).build();
+    }
+
+    /**
+     * Asks a bulk revocation to stop at the end of the current chunk.
+     *
+     * @param requestContext the HTTP request context
+     * @param jobId the id of the bulk revocation
+     * @return HTTP Response containing the progress of the bulk revocation
+     * @throws AuthorizationDeniedException if not authorized to revoke certificates
+     * @throws RestException if there is no such bulk revocation on this node, or it is not running
+     */
+    public Response cancelBulkRevocation(final HttpServletRequest requestContext, final int jobId) throws AuthorizationDeniedException, RestException {
+        final AuthenticationToken authenticationToken = getAdmin(requestContext, false);
+        getBulkRevocationJob(authenticationToken, jobId);
+        if (!bulkRevocationSession.cancelBulkRevocation(authenticationToken, jobId)) {
+            throw new RestException(Response.Status.CONFLICT.getStatusCode(), "Bulk revocation " + jobId + " is not running.");
+        }
+        return Response.ok(BulkRevocationRestResponse.converter().toRestResponse(getBulkRevocationJob(authenticationToken, jobId))).build();
+    }
+
+    /**
+     * Resumes a cancelled or failed bulk revocation from the end of its last completed chunk.
+     *
+     * @param requestContext the HTTP request context
+     * @param jobId the id of the bulk revocation
+     * @return HTTP Response containing the progress of the bulk revocation
+     * @throws AuthorizationDeniedException if not authorized to revoke certificates
+     * @throws RestException if there is no such bulk revocation on this node, or it has not been cancelled or failed
+     */
+    public Response resumeBulkRevocation(final HttpServletRequest requestContext, final int jobId) throws AuthorizationDeniedException, RestException {
+        final AuthenticationToken authenticationToken = getAdmin(requestContext, false);
+        getBulkRevocationJob(authenticationToken, jobId);
+        if (!bulkRevocationSession.resumeBulkRevocation(authenticationToken, jobId)) {
+            throw new RestException(Response.Status.CONFLICT.getStatusCode(), "Bulk revocation " + jobId + " has not been cancelled or failed.");
+        }
+        return Response.status(Response.Status.ACCEPTED)
+                .entity(BulkRevocationRestResponse.converter().toRestResponse(getBulkRevocationJob(authenticationToken, jobId))).build();
+    }
+
+    private BulkRevocationJob getBulkRevocationJob(final AuthenticationToken authenticationToken, final int jobId)
+            throws AuthorizationDeniedException, RestException {
+        final BulkRevocationJob job = bulkRevocationSession.getBulkRevocationJob(authenticationToken, jobId);
+        if (job == null) {
+            throw new RestException(Response.Status.NOT_FOUND.getStatusCode(), "There is no bulk revocation with id " + jobId + " on this node.");
+        }
+        return job;
+    }
 }
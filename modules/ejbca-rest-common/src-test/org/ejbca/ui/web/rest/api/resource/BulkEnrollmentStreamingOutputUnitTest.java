@@ -0,0 +1,174 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ejbca.ui.web.rest.api.exception.RestException;
+import org.ejbca.ui.web.rest.api.io.request.EnrollCertificateRestRequest;
+import org.ejbca.ui.web.rest.api.io.response.CertificateRestResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for {@link BulkEnrollmentStreamingOutput}.
+ */
+public class BulkEnrollmentStreamingOutputUnitTest {
+
+    private static final int THREADS = 4;
+
+    /** Enrolls a single certificate */
+    private interface TestEnroller {
+        CertificateRestResponse enroll(EnrollCertificateRestRequest request) throws Exception;
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        // More threads than enrollments in progress, like the container, so that the limit is the one of the streaming output
+        executor = Executors.newFixedThreadPool(3 * THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldStreamResultOfEachEnrollment() throws IOException {
+        // given
+        final StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            requests.append("{\"username\":\"user").append(i).append("\",\"certificate_request\":\"csr\"}\n");
+            if (i % 10 == 0) {
+                requests.append("\n");
+            }
+        }
+        // when
+        final Map<Long, JsonNode> results = bulkEnroll(requests.toString(), request -> CertificateRestResponse.builder()
+                .setSerialNumber(request.getUsername())
+                .setResponseFormat("DER")
+                .build());
+        // then
+        assertEquals("Blank lines should be skipped.", 50, results.size());
+        for (long i = 0; i < 50; i++) {
+            final JsonNode result = results.get(i);
+            assertNotNull("Missing result for request " + i, result);
+            assertEquals("user" + i, result.get("username").asText());
+            assertEquals(201, result.get("status_code").asInt());
+            assertEquals("user" + i, result.get("certificate").get("serial_number").asText());
+            assertFalse(result.has("error_message"));
+        }
+    }
+
+    @Test
+    public void shouldReportErrorsPerRequest() throws IOException {
+        // given
+        final String requests = "{\"username\":\"good\"}\n"
+                + "not json\n"
+                + "{\"username\":\"denied\"}\n"
+                + "{\"username\":\"broken\"}\n";
+        // when
+        final Map<Long, JsonNode> results = bulkEnroll(requests, request -> {
+            if ("denied".equals(request.getUsername())) {
+                throw new RestException(403, "Not authorized");
+            } else if ("broken".equals(request.getUsername())) {
+                throw new IllegalStateException("Unexpected");
+            }
+            return CertificateRestResponse.builder().setResponseFormat("DER").build();
+        });
+        // then
+        assertEquals(4, results.size());
+        assertEquals(201, results.get(0L).get("status_code").asInt());
+        assertEquals(400, results.get(1L).get("status_code").asInt());
+        assertNull("Unparsable request has no username.", results.get(1L).get("username"));
+        assertTrue(results.get(1L).get("error_message").asText().startsWith("Invalid enrollment request"));
+        assertEquals(403, results.get(2L).get("status_code").asInt());
+        assertEquals("Not authorized", results.get(2L).get("error_message").asText());
+        assertFalse(results.get(2L).has("certificate"));
+        assertEquals(500, results.get(3L).get("status_code").asInt());
+        assertEquals("broken", results.get(3L).get("username").asText());
+    }
+
+    @Test
+    public void shouldLimitEnrollmentsInProgress() throws IOException {
+        // given
+        final StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            requests.append("{\"username\":\"user").append(i).append("\"}\n");
+        }
+        final AtomicInteger inProgress = new AtomicInteger();
+        final AtomicInteger maxInProgress = new AtomicInteger();
+        // when
+        final Map<Long, JsonNode> results = bulkEnroll(requests.toString(), request -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            inProgress.decrementAndGet();
+            return CertificateRestResponse.builder().setResponseFormat("DER").build();
+        });
+        // then
+        assertEquals(40, results.size());
+        assertTrue("Too many enrollments in progress: " + maxInProgress.get(), maxInProgress.get() <= THREADS);
+        assertEquals("All enrollments should have completed before returning.", 0, inProgress.get());
+    }
+
+    private Map<Long, JsonNode> bulkEnroll(final String requests, final TestEnroller testEnroller) throws IOException {
+        final Map<EnrollCertificateRestRequest, CertificateRestResponse> responses = Collections.synchronizedMap(new IdentityHashMap<>());
+        // Enrolls on the executor, like the asynchronous session bean method
+        final BulkEnrollmentStreamingOutput.Enroller enroller = new BulkEnrollmentStreamingOutput.Enroller() {
+            @Override
+            public Future<byte[]> start(final EnrollCertificateRestRequest request) {
+                return executor.submit(() -> {
+                    responses.put(request, testEnroller.enroll(request));
+                    return new byte[0];
+                });
+            }
+
+            @Override
+            public CertificateRestResponse toResponse(final EnrollCertificateRestRequest request, final byte[] certificateBytes) {
+                return responses.get(request);
+            }
+        };
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new BulkEnrollmentStreamingOutput(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), enroller, THREADS).write(outputStream);
+        final Map<Long, JsonNode> results = new HashMap<>();
+        for (final String line : new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            final JsonNode result = objectMapper.readTree(line);
+            assertNull("Duplicate result for request " + result.get("index"), results.put(result.get("index").asLong(), result));
+        }
+        return results;
+    }
+}
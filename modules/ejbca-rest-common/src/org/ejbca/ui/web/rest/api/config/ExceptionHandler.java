@@ -52,10 +52,25 @@ public class ExceptionHandler implements ExceptionMapper<Exception> {
     
     @Override
     public Response toResponse(Exception exception) {
-        ExceptionErrorRestResponse exceptionErrorRestResponse = null;
         if (logger.isTraceEnabled()) {
             logger.trace("toResponse(" + exception.getClass().getName() + " exception)");
         }
+        // Map managed exception
+        if (!(exception instanceof EjbcaException) && !(exception instanceof CesecoreException) && mapManagedException(exception) != null) {
+            return getExceptionResponse(mapManagedException(exception));
+        }
+        return getExceptionResponse(toErrorRestResponse(exception));
+    }
+
+    /**
+     * Maps an exception to an error code and message, like in error responses. Used where the errors of several operations are reported
+     * in one response, like in bulk enrollment. Managed exceptions, like WaitingForApprovalException, are mapped to the default error.
+     *
+     * @param exception the exception to map
+     * @return the error code and message, never null
+     */
+    public ExceptionErrorRestResponse toErrorRestResponse(final Exception exception) {
+        ExceptionErrorRestResponse exceptionErrorRestResponse = null;
         // Map through EjbcaException
         if (exception instanceof EjbcaException) {
             exceptionErrorRestResponse = mapEjbcaException((EjbcaException) exception);
@@ -64,10 +79,6 @@ public class ExceptionHandler implements ExceptionMapper<Exception> {
         else if (exception instanceof CesecoreException) {
             exceptionErrorRestResponse = mapCesecoreException((CesecoreException) exception);
         }
-        // Map managed exception
-        else if (mapManagedException(exception) != null) {
-            return getExceptionResponse(mapManagedException(exception));
-        }
         // Map through WebApplicationException
         else if (exception instanceof WebApplicationException) {
             final WebApplicationException webApplicationException = (WebApplicationException) exception;
@@ -96,7 +107,7 @@ public class ExceptionHandler implements ExceptionMapper<Exception> {
                     .errorMessage(DEFAULT_ERROR_MESSAGE)
                     .build();
         }
-        return getExceptionResponse(exceptionErrorRestResponse);
+        return exceptionErrorRestResponse;
     }
 
     // Map managed exceptions (not of error nature)
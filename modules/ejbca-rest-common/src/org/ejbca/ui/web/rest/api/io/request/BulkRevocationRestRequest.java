@@ -0,0 +1,80 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.request;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * JSON input representation of a bulk revocation request through REST API.
+ */
+@ApiModel(description = "Bulk revocation request. The criteria are combined, and at least one is required. Serial numbers require an issuer DN.")
+public class BulkRevocationRestRequest {
+
+    @ApiModelProperty(value = "Revoke certificates issued by the CA with this DN", example = "CN=ExampleCA")
+    private String issuerDn;
+    @ApiModelProperty(value = "Revoke certificates issued with this certificate profile", example = "ENDUSER")
+    private String certificateProfileName;
+    @ApiModelProperty(value = "Revoke certificates issued with this end entity profile", example = "ExampleEEP")
+    private String endEntityProfileName;
+    @ApiModelProperty(value = "Revoke the certificates with these HEX serial numbers", example = "[\"1234567890ABCDEF\"]")
+    private List<String> serialNumbers;
+    @ApiModelProperty(value = "RFC5280 revocation reason", example = "KEY_COMPROMISE",
+            allowableValues = "UNSPECIFIED, KEY_COMPROMISE, CA_COMPROMISE, AFFILIATION_CHANGED, SUPERSEDED, CESSATION_OF_OPERATION, "
+                    + "CERTIFICATE_HOLD, PRIVILEGES_WITHDRAWN, AA_COMPROMISE")
+    private String reason;
+
+    public BulkRevocationRestRequest() {}
+
+    public String getIssuerDn() {
+        return issuerDn;
+    }
+
+    public void setIssuerDn(String issuerDn) {
+        this.issuerDn = issuerDn;
+    }
+
+    public String getCertificateProfileName() {
+        return certificateProfileName;
+    }
+
+    public void setCertificateProfileName(String certificateProfileName) {
+        this.certificateProfileName = certificateProfileName;
+    }
+
+    public String getEndEntityProfileName() {
+        return endEntityProfileName;
+    }
+
+    public void setEndEntityProfileName(String endEntityProfileName) {
+        this.endEntityProfileName = endEntityProfileName;
+    }
+
+    public List<String> getSerialNumbers() {
+        return serialNumbers;
+    }
+
+    public void setSerialNumbers(List<String> serialNumbers) {
+        this.serialNumbers = serialNumbers;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * The result of one enrollment in a bulk enrollment. Is written as one line of the streamed response.
+ */
+public class BulkEnrollmentRestResponse {
+
+    @ApiModelProperty(value = "Position of the enrollment request in the stream, starting from 0", example = "0")
+    private long index;
+    @ApiModelProperty(value = "Username", example = "JohnDoe")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String username;
+    @ApiModelProperty(value = "HTTP status code of the enrollment", example = "201")
+    private int statusCode;
+    @ApiModelProperty(value = "Enrolled certificate")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private CertificateRestResponse certificate;
+    @ApiModelProperty(value = "Error message, if the enrollment failed", example = "Wrong username or password")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String errorMessage;
+
+    public BulkEnrollmentRestResponse() {
+    }
+
+    private BulkEnrollmentRestResponse(final long index, final String username, final int statusCode, final CertificateRestResponse certificate,
+            final String errorMessage) {
+        this.index = index;
+        this.username = username;
+        this.statusCode = statusCode;
+        this.certificate = certificate;
+        this.errorMessage = errorMessage;
+    }
+
+    /** @return the result of a successful enrollment */
+    public static BulkEnrollmentRestResponse success(final long index, final String username, final CertificateRestResponse certificate) {
+        return new BulkEnrollmentRestResponse(index, username, 201, certificate, null);
+    }
+
+    /** @return the result of a failed enrollment */
+    public static BulkEnrollmentRestResponse failure(final long index, final String username, final ExceptionErrorRestResponse error) {
+        return new BulkEnrollmentRestResponse(index, username, error.getErrorCode(), null, error.getErrorMessage());
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public CertificateRestResponse getCertificate() {
+        return certificate;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
@@ -0,0 +1,151 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.response;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.cesecore.certificates.crl.RevocationReasons;
+import org.ejbca.core.model.ra.BulkRevocationJob;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * JSON output holder for the progress of a bulk revocation.
+ */
+public class BulkRevocationRestResponse {
+
+    @ApiModelProperty(value = "Id of the bulk revocation", example = "1")
+    private int id;
+    @ApiModelProperty(value = "Selected certificates", example = "issuer 'CN=ExampleCA', certificate profile 1")
+    private String selector;
+    @ApiModelProperty(value = "RFC5280 revocation reason", example = "KEY_COMPROMISE")
+    private String revocationReason;
+    @ApiModelProperty(value = "State", example = "RUNNING", allowableValues = "RUNNING, CANCELLED, FAILED, COMPLETED")
+    private String state;
+    @ApiModelProperty(value = "True if the bulk revocation has been asked to stop at the end of the current chunk", example = "false")
+    private boolean cancelRequested;
+    @ApiModelProperty(value = "Number of certificates that matched when the bulk revocation was started or resumed", example = "100000")
+    private long total;
+    @ApiModelProperty(value = "Number of certificates or serial numbers processed", example = "25000")
+    private long processed;
+    @ApiModelProperty(value = "Number of certificates revoked", example = "24990")
+    private long revoked;
+    @ApiModelProperty(value = "Number of certificates or serial numbers that were not revoked", example = "10")
+    private long skipped;
+    @ApiModelProperty(value = "Administrator that started the bulk revocation")
+    private String administrator;
+    @ApiModelProperty(value = "Creation date", example = "1970-01-01T00:00:00Z")
+    private Date created;
+    @ApiModelProperty(value = "Date of the last progress", example = "1970-01-01T00:00:00Z")
+    private Date lastUpdate;
+    @ApiModelProperty(value = "Result or reason of failure")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String message;
+
+    public BulkRevocationRestResponse() {}
+
+    /**
+     * Returns a converter instance for this class.
+     *
+     * @return instance of converter for this class.
+     */
+    public static BulkRevocationRestResponseConverter converter() {
+        return new BulkRevocationRestResponseConverter();
+    }
+
+    public static class BulkRevocationRestResponseConverter {
+
+        public BulkRevocationRestResponse toRestResponse(final BulkRevocationJob job) {
+            final BulkRevocationRestResponse response = new BulkRevocationRestResponse();
+            final RevocationReasons reason = RevocationReasons.getFromDatabaseValue(job.getReason());
+            response.id = job.getId();
+            response.selector = job.getSelector().toString();
+            response.revocationReason = reason == null ? String.valueOf(job.getReason()) : reason.getStringValue();
+            response.state = job.getState().name();
+            response.cancelRequested = job.isCancelRequested();
+            response.total = job.getTotal();
+            response.processed = job.getProcessed();
+            response.revoked = job.getRevoked();
+            response.skipped = job.getSkipped();
+            response.administrator = job.getAdministrator();
+            response.created = new Date(job.getCreated());
+            response.lastUpdate = new Date(job.getLastUpdate());
+            response.message = job.getMessage();
+            return response;
+        }
+
+        public List<BulkRevocationRestResponse> toRestResponses(final List<BulkRevocationJob> jobs) {
+            final List<BulkRevocationRestResponse> responses = new ArrayList<>();
+            for (final BulkRevocationJob job : jobs) {
+                responses.add(toRestResponse(job));
+            }
+            return responses;
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public String getRevocationReason() {
+        return revocationReason;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getRevoked() {
+        return revoked;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public String getAdministrator() {
+        return administrator;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,39 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A container class of the bulk revocations on a node.
+ */
+public class BulkRevocationsRestResponse {
+
+    private List<BulkRevocationRestResponse> bulkRevocations = new ArrayList<>();
+
+    public BulkRevocationsRestResponse() {
+    }
+
+    public BulkRevocationsRestResponse(final List<BulkRevocationRestResponse> bulkRevocations) {
+        this.bulkRevocations = bulkRevocations;
+    }
+
+    public List<BulkRevocationRestResponse> getBulkRevocations() {
+        return bulkRevocations;
+    }
+
+    public void setBulkRevocations(List<BulkRevocationRestResponse> bulkRevocations) {
+        this.bulkRevocations = bulkRevocations;
+    }
+}
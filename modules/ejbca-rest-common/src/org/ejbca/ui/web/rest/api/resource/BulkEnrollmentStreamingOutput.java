@@ -0,0 +1,226 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.ejbca.config.EjbcaConfiguration;
+import org.ejbca.ui.web.rest.api.config.ExceptionHandler;
+import org.ejbca.ui.web.rest.api.config.ObjectMapperContextResolver;
+import org.ejbca.ui.web.rest.api.io.request.EnrollCertificateRestRequest;
+import org.ejbca.ui.web.rest.api.io.response.BulkEnrollmentRestResponse;
+import org.ejbca.ui.web.rest.api.io.response.CertificateRestResponse;
+import org.ejbca.ui.web.rest.api.io.response.ExceptionErrorRestResponse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads a stream of enrollment requests, one JSON object per line (NDJSON), and writes the result of each enrollment as one JSON line
+ * as soon as it has completed. The results are therefore not in the same order as the requests, but each result has the index of its
+ * request. A request that fails, or can't be parsed, gives a result with the error, and the stream continues with the next request.
+ * <p>
+ * The enrollments are started with an asynchronous session bean method, so they run on threads managed by the container. At most
+ * rest.bulkenroll.threads enrollments of each stream are in progress at the same time, so that the client is not read faster than
+ * the enrollments complete. The request thread reads the requests, collects the completed enrollments and writes their results.
+ */
+public class BulkEnrollmentStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = Logger.getLogger(BulkEnrollmentStreamingOutput.class);
+
+    /** How long to wait for the oldest enrollment in progress, before checking if any of the others has completed */
+    private static final long POLL_MILLIS = 20;
+
+    /** Enrolls certificates */
+    public interface Enroller {
+        /** Starts an enrollment, which runs asynchronously. The certificate, or the failure, is returned by the Future. */
+        Future<byte[]> start(EnrollCertificateRestRequest request) throws Exception;
+
+        /** @return the result of an enrollment that has completed. Invoked on the request thread. */
+        CertificateRestResponse toResponse(EnrollCertificateRestRequest request, byte[] certificateBytes) throws Exception;
+    }
+
+    private static class Enrollment {
+        private final long index;
+        private final EnrollCertificateRestRequest request;
+        private final Future<byte[]> future;
+
+        private Enrollment(final long index, final EnrollCertificateRestRequest request, final Future<byte[]> future) {
+            this.index = index;
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapperContextResolver().getContext(null);
+    private final ExceptionHandler exceptionHandler = new ExceptionHandler();
+    private final InputStream inputStream;
+    private final Enroller enroller;
+    private final int maxInProgress;
+    /** Set when the client has gone away. No more requests are read after that. */
+    private IOException writeFailure = null;
+
+    /**
+     * @param inputStream the enrollment requests
+     * @param enroller performs each enrollment, with the authentication token of the requesting administrator
+     */
+    public BulkEnrollmentStreamingOutput(final InputStream inputStream, final Enroller enroller) {
+        this(inputStream, enroller, EjbcaConfiguration.getRestBulkEnrollmentThreads());
+    }
+
+    BulkEnrollmentStreamingOutput(final InputStream inputStream, final Enroller enroller, final int maxInProgress) {
+        this.inputStream = inputStream;
+        this.enroller = enroller;
+        this.maxInProgress = maxInProgress;
+    }
+
+    @Override
+    public void write(final OutputStream outputStream) throws IOException {
+        final Deque<Enrollment> running = new ArrayDeque<>();
+        long index = 0;
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            while (writeFailure == null) {
+                // Write the results that are ready. Wait for more if too many enrollments are in progress, or if the client has not sent
+                // the next request yet, since the results would not be written while blocked reading it.
+                writeCompleted(outputStream, running);
+                while (!running.isEmpty() && (running.size() >= maxInProgress || !reader.ready())) {
+                    writeResult(outputStream, complete(takeCompleted(running)));
+                }
+                final String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                final long requestIndex = index++;
+                final EnrollCertificateRestRequest request;
+                try {
+                    request = objectMapper.readValue(line, EnrollCertificateRestRequest.class);
+                } catch (IOException e) {
+                    final String message = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage();
+                    writeResult(outputStream, BulkEnrollmentRestResponse.failure(requestIndex, null, ExceptionErrorRestResponse.builder()
+                            .errorCode(Status.BAD_REQUEST.getStatusCode())
+                            .errorMessage("Invalid enrollment request: " + message)
+                            .build()));
+                    continue;
+                }
+                try {
+                    running.addLast(new Enrollment(requestIndex, request, enroller.start(request)));
+                } catch (Exception e) {
+                    writeResult(outputStream, failure(requestIndex, request, e));
+                }
+            }
+            // Wait for the enrollments in progress, since the response is closed when this method returns
+            while (!running.isEmpty()) {
+                writeResult(outputStream, complete(takeCompleted(running)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + running.size() + " enrollments.");
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Bulk enrollment of " + index + " requests completed.");
+        }
+    }
+
+    private void writeCompleted(final OutputStream outputStream, final Deque<Enrollment> running) {
+        for (final Iterator<Enrollment> iterator = running.iterator(); iterator.hasNext();) {
+            final Enrollment enrollment = iterator.next();
+            if (enrollment.future.isDone()) {
+                iterator.remove();
+                writeResult(outputStream, complete(enrollment));
+            }
+        }
+    }
+
+    /** @return the first enrollment that has completed, waiting for one if needed. The enrollment is removed from running. */
+    private static Enrollment takeCompleted(final Deque<Enrollment> running) throws InterruptedException {
+        while (true) {
+            for (final Iterator<Enrollment> iterator = running.iterator(); iterator.hasNext();) {
+                final Enrollment enrollment = iterator.next();
+                if (enrollment.future.isDone()) {
+                    iterator.remove();
+                    return enrollment;
+                }
+            }
+            // The futures of asynchronous session bean methods can't notify anyone when they complete
+            try {
+                running.getFirst().future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // Failures are handled when the enrollment is collected, and a timeout means that we check the others again
+            }
+        }
+    }
+
+    /** @return the result of an enrollment that has completed */
+    private BulkEnrollmentRestResponse complete(final Enrollment enrollment) {
+        try {
+            final byte[] certificateBytes = enrollment.future.get();
+            return BulkEnrollmentRestResponse.success(enrollment.index, enrollment.request.getUsername(),
+                    enroller.toResponse(enrollment.request, certificateBytes));
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            return failure(enrollment.index, enrollment.request, cause instanceof Exception ? (Exception) cause : e);
+        } catch (InterruptedException e) {
+            // The enrollment has completed, so this does not happen
+            Thread.currentThread().interrupt();
+            return failure(enrollment.index, enrollment.request, e);
+        } catch (Exception e) {
+            return failure(enrollment.index, enrollment.request, e);
+        }
+    }
+
+    private BulkEnrollmentRestResponse failure(final long index, final EnrollCertificateRestRequest request, final Exception e) {
+        if (log.isDebugEnabled()) {
+            log.debug("Bulk enrollment of '" + request.getUsername() + "' failed: " + e.getMessage());
+        }
+        return BulkEnrollmentRestResponse.failure(index, request.getUsername(), exceptionHandler.toErrorRestResponse(e));
+    }
+
+    /** Writes and flushes one result, unless the client has already gone away */
+    private void writeResult(final OutputStream outputStream, final BulkEnrollmentRestResponse result) {
+        if (writeFailure != null) {
+            return;
+        }
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(result));
+            outputStream.write('\n');
+            outputStream.flush();
+        } catch (IOException e) {
+            log.info("Bulk enrollment client has gone away: " + e.getMessage());
+            writeFailure = e;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
 import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ca.caadmin.CAAdminSessionLocal;
@@ -39,6 +40,7 @@ import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.ejb.config.HealthCheckSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
+import org.ejbca.core.model.ca.publisher.LdapConnectionPool;
 
 import com.keyfactor.util.CryptoProviderTools;
 
@@ -57,6 +59,10 @@ import com.keyfactor.util.CryptoProviderTools;
  * 
  * * Optionally you can configure the CAToken test to also make a test signature, not only check if the token status is active.
  * 
+ * If the request parameter ocspstats=true is given, the statistics of the in-memory OCSP response cache and of the OCSP signing
+ * threads are appended to the OK message. If ldappoolstats=true is given, the statistics of the LDAP publisher connection pools
+ * are appended.
+ * 
  * @version $Id$
  */
 public class HealthCheckServlet extends HttpServlet {
@@ -108,7 +114,8 @@ public class HealthCheckServlet extends HttpServlet {
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
         if (isAuthorized(request, response)) {
-            respond(getRateLimitedResult(request), response);
+            respond(getRateLimitedResult(request), response, Boolean.parseBoolean(request.getParameter("ocspstats")),
+                    Boolean.parseBoolean(request.getParameter("ldappoolstats")));
         }
     }
     
@@ -144,13 +151,23 @@ public class HealthCheckServlet extends HttpServlet {
         return result.getValue();
     }
     
-    private void respond(String status, HttpServletResponse resp) {
+    private void respond(String status, HttpServletResponse resp, final boolean includeOcspStatistics, final boolean includeLdapPoolStatistics) {
         resp.setContentType("text/plain");
         try {
             final Writer out = resp.getWriter();
             if (status == null) {
                 // Return ok message
                 out.write(EjbcaConfiguration.getOkMessage());
+                if (includeOcspStatistics) {
+                    out.write("\n" + OcspResponseCache.INSTANCE.getStatistics());
+                    final String signingStatistics = ocspResponseGeneratorSession.getSigningStatistics();
+                    if (!signingStatistics.isEmpty()) {
+                        out.write("\n" + signingStatistics);
+                    }
+                }
+                if (includeLdapPoolStatistics) {
+                    out.write("\n" + LdapConnectionPool.getStatistics());
+                }
             } else {
                 // Check if we return a static error message or the more informative
                 final String customErrorMessage = EjbcaConfiguration.getCustomErrorMessage();
@@ -17,6 +17,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -65,6 +66,36 @@ public class OcspDataSessionBeanTest {
         log.trace("<testFindExpiringOcpsDataReturnsCorrectResponses");
     }
 
+    @Test
+    public void testFindExpiringOcspDataAfterPagesBySerialNumber() throws InterruptedException {
+        log.trace(">testFindExpiringOcspDataAfterPagesBySerialNumber");
+
+        final long now = System.currentTimeMillis();
+        final long hourAgo = now - 3600000L;
+        final long future = now + 3600000L;
+        for (int i = 1; i <= 5; i++) {
+            ocspDataProxySessionRemote.storeOcspData(new OcspResponseData("test-page-id-" + i, certificateAuthOne, "test-page-sn-" + i, now, hourAgo, new byte[0]));
+        }
+        // Not expiring, and expiring but not the latest response for its serial number
+        ocspDataProxySessionRemote.storeOcspData(new OcspResponseData("test-page-id-6", certificateAuthOne, "test-page-sn-6", now, future, new byte[0]));
+        ocspDataProxySessionRemote.storeOcspData(new OcspResponseData("test-page-id-7", certificateAuthOne, "test-page-sn-6", hourAgo, hourAgo, new byte[0]));
+        // Other CA
+        ocspDataProxySessionRemote.storeOcspData(new OcspResponseData("test-page-id-8", certificateAuthTwo, "test-page-sn-0", now, hourAgo, new byte[0]));
+        Thread.sleep(2000);
+
+        List<String> page = ocspDataSessionRemote.findExpiringOcspDataAfter(certificateAuthOne, now, "", 2);
+        assertEquals(Arrays.asList("test-page-sn-1", "test-page-sn-2"), page);
+        page = ocspDataSessionRemote.findExpiringOcspDataAfter(certificateAuthOne, now, page.get(1), 2);
+        assertEquals(Arrays.asList("test-page-sn-3", "test-page-sn-4"), page);
+        // Replacing a response that was already returned must not shift the next page
+        ocspDataProxySessionRemote.storeOcspData(new OcspResponseData("test-page-id-9", certificateAuthOne, "test-page-sn-1", now + 1, future, new byte[0]));
+        Thread.sleep(1000);
+        page = ocspDataSessionRemote.findExpiringOcspDataAfter(certificateAuthOne, now, page.get(1), 2);
+        assertEquals(Arrays.asList("test-page-sn-5"), page);
+
+        log.trace("<testFindExpiringOcspDataAfterPagesBySerialNumber");
+    }
+
     @Test
     public void testFindOcspDataByCaId() throws InterruptedException {
         log.trace(">testfindOcspDataByCaId");